@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+import org.eclipse.kapua.service.authentication.shiro.token.AccessTokenManager;
+import org.eclipse.kapua.service.authentication.shiro.token.TokenClaims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * Per request authentication cost of the REST API: the basic credentials check (BCrypt, with the cost the credentials are hashed with)
+ * against the bearer access token check. Run with several threads, so the throughput is the number of requests per second the
+ * authentication alone allows.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AccessTokenBenchmark
+{
+    private static final String PASSWORD = "kapua-password";
+
+    private String              passwordHash;
+    private AccessTokenManager  tokenManager;
+    private String              accessToken;
+
+    @Setup
+    public void setUp()
+    {
+        // same cost as the stored credentials
+        passwordHash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(12));
+
+        tokenManager = new AccessTokenManager("0123456789abcdef0123456789abcdef".getBytes(), TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(2));
+        KapuaEid scopeId = new KapuaEid(BigInteger.ONE);
+        accessToken = tokenManager.issue(new KapuaEid(BigInteger.valueOf(42)), scopeId, scopeId, "kapua-sys").getTokenId();
+    }
+
+    @Benchmark
+    public boolean basicCredentials()
+    {
+        return BCrypt.checkpw(PASSWORD, passwordHash);
+    }
+
+    @Benchmark
+    public TokenClaims bearerToken()
+        throws KapuaAuthenticationException
+    {
+        return tokenManager.verify(accessToken);
+    }
+}
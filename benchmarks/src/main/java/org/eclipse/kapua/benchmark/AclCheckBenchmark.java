@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.EmptyBroker;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.apache.activemq.util.ByteSequence;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.plugin.AclConstants;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptorLoader;
+import org.eclipse.kapua.broker.core.plugin.KapuaPrincipalImpl;
+import org.eclipse.kapua.broker.core.plugin.KapuaSecurityBrokerFilter;
+import org.eclipse.kapua.broker.core.plugin.KapuaSecurityContext;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.service.authentication.AccessToken;
+import org.eclipse.kapua.service.authentication.KapuaPrincipal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Authorization path of the {@link KapuaSecurityBrokerFilter} on every send and on every subscription of a device connection: security context
+ * lookup, ACL check, message properties and metrics. The next broker of the filter does nothing.<br>
+ * The connection security context is built as the filter builds it on connection for a device with the connect and data view permissions, with the
+ * authorization entries created by the filter itself (the login requires the authentication services and is not part of the measured path).
+ * The denied sends log a warning: the filter logger level is raised in the benchmarks log4j.properties.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class AclCheckBenchmark
+{
+    private BenchmarkSecurityBrokerFilter filter;
+    private ConnectionContext             connectionContext;
+    private ProducerBrokerExchange        producerExchange;
+
+    private ActiveMQBytesMessage          dataMessage;
+    private ActiveMQBytesMessage          lifecycleMessage;
+    private ActiveMQBytesMessage          forbiddenMessage;
+    private ConsumerInfo                  controlSubscription;
+    private ConsumerInfo                  forbiddenSubscription;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        BenchmarkLocator.setUp();
+        String accountName = BenchmarkLocator.ACCOUNT_NAME;
+        String clientId = BenchmarkLocator.CLIENT_ID;
+        String fullClientId = MessageFormat.format(AclConstants.MULTI_ACCOUNT_CLIENT_ID, accountName, clientId);
+
+        AccessToken accessToken = mock(AccessToken.class);
+        when(accessToken.getScopeId()).thenReturn(BenchmarkLocator.SCOPE_ID);
+        when(accessToken.getUserId()).thenReturn(BenchmarkLocator.DEVICE_ID);
+        when(accessToken.getTokenId()).thenReturn("bench-token");
+        KapuaPrincipal principal = new KapuaPrincipalImpl(accessToken, "bench-user", clientId, "127.0.0.1");
+
+        filter = new BenchmarkSecurityBrokerFilter();
+        DefaultAuthorizationMap authMap = filter.buildDeviceAuthMap(principal, accountName, clientId, fullClientId);
+
+        // the security context takes a copy of the Kapua session of the connecting thread
+        KapuaSecurityContext securityContext;
+        KapuaSecurityUtils.setSession(new KapuaSession());
+        try {
+            securityContext = new KapuaSecurityContext(principal,
+                                                       authMap,
+                                                       BenchmarkLocator.DEVICE_ID,
+                                                       new ConnectionId("bench-connection"),
+                                                       ConnectorDescriptorLoader.loadConnectorDescriptors().get("mqtt"));
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+        }
+
+        connectionContext = new ConnectionContext();
+        connectionContext.setSecurityContext(securityContext);
+        connectionContext.setClientId(fullClientId);
+        producerExchange = new ProducerBrokerExchange();
+        producerExchange.setConnectionContext(connectionContext);
+
+        dataMessage = message("VirtualTopic." + accountName + "." + clientId + ".sensors.environment.room1");
+        lifecycleMessage = message("VirtualTopic.$EDC." + accountName + "." + clientId + ".MQTT.BIRTH");
+        forbiddenMessage = message("VirtualTopic.other-account." + clientId + ".sensors");
+        controlSubscription = subscription("VirtualTopic.$EDC." + accountName + "." + clientId + ".CONF-V1.>");
+        forbiddenSubscription = subscription("VirtualTopic.$EDC.other-account." + clientId + ".CONF-V1.>");
+    }
+
+    @Benchmark
+    public boolean sendData()
+        throws Exception
+    {
+        return send(dataMessage);
+    }
+
+    @Benchmark
+    public boolean sendLifecycle()
+        throws Exception
+    {
+        return send(lifecycleMessage);
+    }
+
+    @Benchmark
+    public boolean sendForbidden()
+        throws Exception
+    {
+        return send(forbiddenMessage);
+    }
+
+    @Benchmark
+    public boolean subscribeControl()
+        throws Exception
+    {
+        return subscribe(controlSubscription);
+    }
+
+    @Benchmark
+    public boolean subscribeForbidden()
+        throws Exception
+    {
+        return subscribe(forbiddenSubscription);
+    }
+
+    private boolean send(ActiveMQBytesMessage message)
+        throws Exception
+    {
+        try {
+            filter.send(producerExchange, message);
+            return true;
+        }
+        catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    private boolean subscribe(ConsumerInfo consumerInfo)
+        throws Exception
+    {
+        try {
+            filter.addConsumer(connectionContext, consumerInfo);
+            return true;
+        }
+        catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    private static ActiveMQBytesMessage message(String topic)
+    {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
+        message.setContent(new ByteSequence(new byte[256]));
+        return message;
+    }
+
+    private static ConsumerInfo subscription(String topic)
+    {
+        ConsumerInfo consumerInfo = new ConsumerInfo(new ConsumerId("bench-session:1:1"));
+        consumerInfo.setDestination(ActiveMQDestination.createDestination(topic, ActiveMQDestination.TOPIC_TYPE));
+        return consumerInfo;
+    }
+
+    /**
+     * Security filter in front of a broker doing nothing, exposing the authorization entries building
+     */
+    private static class BenchmarkSecurityBrokerFilter extends KapuaSecurityBrokerFilter
+    {
+        BenchmarkSecurityBrokerFilter()
+            throws KapuaException
+        {
+            super(new EmptyBroker());
+        }
+
+        /**
+         * Same entries the filter builds on connection for a device with the connect and data view permissions
+         */
+        @SuppressWarnings("rawtypes")
+        DefaultAuthorizationMap buildDeviceAuthMap(KapuaPrincipal principal, String accountName, String clientId, String fullClientId)
+        {
+            List<String> authDestinations = new ArrayList<>();
+            List<DestinationMapEntry> entries = new ArrayList<>();
+            entries.addAll(createAuthorizationEntries(authDestinations, AclConstants.ACL_AMQ_ADVISORY,
+                                                      principal, clientId, fullClientId, false, true, true));
+            entries.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_CLI, accountName, clientId),
+                                                      principal, clientId, fullClientId, true, true, true));
+            entries.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC, accountName),
+                                                      principal, clientId, fullClientId, true, false, true));
+            entries.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_DATA_ACC_CLI, accountName, clientId),
+                                                      principal, clientId, fullClientId, false, true, false));
+            entries.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_REPLY, accountName),
+                                                      principal, clientId, fullClientId, false, true, true));
+            entries.addAll(createAuthorizationEntries(authDestinations, MessageFormat.format(AclConstants.ACL_CTRL_ACC_NOTIFY, accountName, clientId),
+                                                      principal, clientId, fullClientId, false, true, false));
+            return new DefaultAuthorizationMap(entries);
+        }
+    }
+}
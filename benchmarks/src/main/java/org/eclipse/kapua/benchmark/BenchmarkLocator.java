@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.commons.configuration.metatype.KapuaMetatypeFactoryImpl;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.message.KapuaMessageFactory;
+import org.eclipse.kapua.message.internal.KapuaMessageFactoryImpl;
+import org.eclipse.kapua.model.config.metatype.KapuaMetatypeFactory;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+
+/**
+ * Benchmark services set up.<br>
+ * The benchmarks run without database, broker or Elasticsearch: the {@link MockedLocator} (selected by the {@code locator.class.impl} system
+ * property set on every fork) returns the real metric service and object factories and Mockito mocks for the services backed by the database.
+ *
+ * @since 1.0
+ */
+public final class BenchmarkLocator
+{
+    public static final String LOCATOR_PROPERTY = "-D" + KapuaLocator.LOCATOR_CLASS_NAME_SYSTEM_PROPERTY + "=org.eclipse.kapua.test.MockedLocator";
+
+    public static final String ACCOUNT_NAME     = "kapua-bench";
+    public static final String CLIENT_ID        = "bench-device";
+    public static final KapuaId SCOPE_ID        = new KapuaEid(BigInteger.valueOf(42));
+    public static final KapuaId DEVICE_ID       = new KapuaEid(BigInteger.valueOf(4242));
+
+    private static boolean initialized;
+
+    private BenchmarkLocator()
+    {
+    }
+
+    /**
+     * Set up the mocked locator (once per fork)
+     *
+     * @throws Exception
+     */
+    public static synchronized void setUp()
+        throws Exception
+    {
+        if (initialized) {
+            return;
+        }
+        KapuaLocator locator = KapuaLocator.getInstance();
+        if (!(locator instanceof MockedLocator)) {
+            throw new IllegalStateException("Benchmarks must run with " + LOCATOR_PROPERTY);
+        }
+        MockedLocator mockedLocator = (MockedLocator) locator;
+
+        mockedLocator.setMockedService(MetricsService.class, new MetricsServiceImpl());
+        mockedLocator.setMockedFactory(KapuaMessageFactory.class, new KapuaMessageFactoryImpl());
+        mockedLocator.setMockedFactory(KapuaMetatypeFactory.class, new KapuaMetatypeFactoryImpl());
+
+        Account account = mock(Account.class);
+        when(account.getId()).thenReturn(SCOPE_ID);
+        when(account.getName()).thenReturn(ACCOUNT_NAME);
+        AccountService accountService = mock(AccountService.class);
+        when(accountService.findByName(anyString())).thenReturn(account);
+        mockedLocator.setMockedService(AccountService.class, accountService);
+
+        Device device = mock(Device.class);
+        when(device.getId()).thenReturn(DEVICE_ID);
+        when(device.getScopeId()).thenReturn(SCOPE_ID);
+        when(device.getClientId()).thenReturn(CLIENT_ID);
+        DeviceRegistryService deviceRegistryService = mock(DeviceRegistryService.class);
+        when(deviceRegistryService.findByClientId(any(KapuaId.class), anyString())).thenReturn(device);
+        mockedLocator.setMockedService(DeviceRegistryService.class, deviceRegistryService);
+
+        initialized = true;
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Elasticsearch documents (message, topic, asset and metrics) building for a stored message.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class EsDocumentBuilderBenchmark
+{
+    @Param({ "5", "50" })
+    private int            metricCount;
+
+    private MessageImpl    message;
+    private StorableIdImpl messageId;
+    private Date           indexedOn;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        KuraDataPayload kuraPayload = KuraPayloadBenchmark.newPayload(metricCount);
+
+        PayloadImpl payload = new PayloadImpl();
+        payload.setCollectedOn(kuraPayload.getTimestamp());
+        payload.setMetrics(kuraPayload.getMetrics());
+        payload.setBody(new byte[128]);
+
+        PositionImpl position = new PositionImpl();
+        position.setLatitude(45.6);
+        position.setLongitude(13.7);
+        position.setAltitude(120.0);
+        position.setSatellites(9);
+        position.setTimestamp(new Date());
+        payload.setPosition(position);
+
+        messageId = new StorableIdImpl(UUID.randomUUID().toString());
+        indexedOn = new Date();
+        message = new MessageImpl(messageId, indexedOn, BenchmarkLocator.ACCOUNT_NAME + "/" + BenchmarkLocator.CLIENT_ID + "/sensors/environment/room1");
+        message.setReceivedOn(indexedOn);
+        message.setPayload(payload);
+    }
+
+    @Benchmark
+    public EsDocumentBuilder buildMessage()
+        throws Exception
+    {
+        return new EsDocumentBuilder().build(BenchmarkLocator.ACCOUNT_NAME, messageId, message, indexedOn, indexedOn);
+    }
+}
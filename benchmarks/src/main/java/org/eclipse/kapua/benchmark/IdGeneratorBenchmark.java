@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.model.id.IdGeneratorStrategy;
+import org.eclipse.kapua.commons.model.id.RandomIdGeneratorStrategy;
+import org.eclipse.kapua.commons.model.id.TimeOrderedIdGeneratorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Entity identifier generation, alone and followed by the insert of a row in an H2 table (concurrent inserts, the table grows during
+ * the iteration, so the primary key index locality counts).
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class IdGeneratorBenchmark
+{
+    private static final String DB_URL = "jdbc:h2:mem:id_benchmark;DB_CLOSE_DELAY=-1";
+
+    @Param({ "random", "time_ordered" })
+    private String strategyName;
+
+    private IdGeneratorStrategy strategy;
+    private Connection          setupConnection;
+
+    @Setup(Level.Trial)
+    public void setup()
+        throws SQLException
+    {
+        strategy = "random".equals(strategyName) ? new RandomIdGeneratorStrategy(8) : new TimeOrderedIdGeneratorStrategy(1);
+        // keeps the in memory database open
+        setupConnection = DriverManager.getConnection(DB_URL);
+    }
+
+    @Setup(Level.Iteration)
+    public void createTable()
+        throws SQLException
+    {
+        try (Statement statement = setupConnection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_entity");
+            statement.execute("CREATE TABLE bench_entity (scope_id BIGINT NOT NULL, id BIGINT NOT NULL, created_on TIMESTAMP, name VARCHAR(255), PRIMARY KEY (id))");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+        throws SQLException
+    {
+        setupConnection.close();
+    }
+
+    /**
+     * Per thread connection
+     */
+    @State(Scope.Thread)
+    public static class Inserter
+    {
+        private Connection        connection;
+        private PreparedStatement insert;
+
+        @Setup(Level.Iteration)
+        public void setup()
+            throws SQLException
+        {
+            connection = DriverManager.getConnection(DB_URL);
+            insert = connection.prepareStatement("INSERT INTO bench_entity (scope_id, id, created_on, name) VALUES (1, ?, CURRENT_TIMESTAMP(), 'entity')");
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown()
+            throws SQLException
+        {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public BigInteger generate()
+    {
+        return strategy.generate();
+    }
+
+    @Benchmark
+    public int generateAndInsert(Inserter inserter)
+        throws SQLException
+    {
+        inserter.insert.setLong(1, strategy.generate().longValue());
+        return inserter.insert.executeUpdate();
+    }
+}
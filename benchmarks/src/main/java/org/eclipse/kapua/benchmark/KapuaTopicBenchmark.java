@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.util.TopicTokenizer;
+import org.eclipse.kapua.commons.util.TopicTokens;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaTopic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Topic parsing, done for every stored message.<br>
+ * The {@link String#split(String)} baseline is compared with the shared topic tokenizer: run with {@code -prof gc} to compare the allocations per message too.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class KapuaTopicBenchmark
+{
+    @Param({ "kapua-bench/bench-device/sensors/environment/room1",
+             "$EDC/kapua-bench/bench-device/MQTT/BIRTH",
+             "kapua-bench/bench-device/a/b/c/d/e/f/g/h" })
+    private String topic;
+
+    @Benchmark
+    public KapuaTopic parse()
+        throws Exception
+    {
+        return new KapuaTopic(topic);
+    }
+
+    @Benchmark
+    public String parseSemanticTopic()
+        throws Exception
+    {
+        return new KapuaTopic(topic).getSemanticTopic();
+    }
+
+    @Benchmark
+    public String[] splitBaseline()
+    {
+        return topic.split(KapuaTopic.TOPIC_SEPARATOR);
+    }
+
+    @Benchmark
+    public TopicTokens tokenize()
+    {
+        return TopicTokenizer.getInstance('/').parse(topic);
+    }
+}
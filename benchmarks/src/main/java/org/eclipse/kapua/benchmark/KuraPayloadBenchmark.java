@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.service.device.call.message.kura.KuraPosition;
+import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataPayload;
+import org.eclipse.kapua.service.device.call.message.kura.utils.GZIPUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Kura payload decoding (protobuf, optionally GZIP compressed) and encoding.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class KuraPayloadBenchmark
+{
+    @Param({ "5", "50" })
+    private int             metricCount;
+
+    @Param({ "false", "true" })
+    private boolean         compressed;
+
+    private KuraDataPayload payload;
+    private byte[]          bytes;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        payload = newPayload(metricCount);
+        bytes = payload.toByteArray();
+        if (compressed) {
+            bytes = GZIPUtils.compress(bytes);
+        }
+    }
+
+    @Benchmark
+    public KuraDataPayload decode()
+        throws Exception
+    {
+        KuraDataPayload decoded = new KuraDataPayload();
+        decoded.readFromByteArray(bytes);
+        return decoded;
+    }
+
+    @Benchmark
+    public byte[] encode()
+        throws Exception
+    {
+        byte[] encoded = payload.toByteArray();
+        return compressed ? GZIPUtils.compress(encoded) : encoded;
+    }
+
+    /**
+     * Build a payload like the ones published by a Kura gateway: timestamp, position and a mix of metric types
+     *
+     * @param metricCount
+     * @return
+     */
+    static KuraDataPayload newPayload(int metricCount)
+    {
+        KuraDataPayload payload = new KuraDataPayload();
+        payload.setTimestamp(new Date());
+
+        KuraPosition position = new KuraPosition();
+        position.setLatitude(45.6);
+        position.setLongitude(13.7);
+        position.setAltitude(120.0);
+        position.setSatellites(9);
+        position.setTimestamp(new Date());
+        payload.setPosition(position);
+
+        for (int i = 0; i < metricCount; i++) {
+            switch (i % 5) {
+            case 0:
+                payload.getMetrics().put("temperature_" + i, 21.5 + i);
+                break;
+            case 1:
+                payload.getMetrics().put("counter_" + i, (long) i * 1000);
+                break;
+            case 2:
+                payload.getMetrics().put("status_" + i, "running");
+                break;
+            case 3:
+                payload.getMetrics().put("enabled_" + i, i % 2 == 0);
+                break;
+            default:
+                payload.getMetrics().put("level_" + i, i);
+            }
+        }
+        return payload;
+    }
+}
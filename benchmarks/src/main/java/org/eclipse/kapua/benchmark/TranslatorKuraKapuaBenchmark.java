@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.message.device.data.KapuaDataMessage;
+import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataChannel;
+import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataMessage;
+import org.eclipse.kapua.translator.kura.kapua.TranslatorDataKuraKapua;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Kura to Kapua data message translation.<br>
+ * The account and device lookups are served by mocked services, so after the first invocation the benchmark measures the translation with
+ * the resolver cache hit, which is the steady state of the broker.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class TranslatorKuraKapuaBenchmark
+{
+    @Param({ "5", "50" })
+    private int                     metricCount;
+
+    private TranslatorDataKuraKapua translator;
+    private KuraDataMessage         kuraMessage;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        BenchmarkLocator.setUp();
+        translator = new TranslatorDataKuraKapua();
+
+        KuraDataChannel channel = new KuraDataChannel();
+        channel.setScope(BenchmarkLocator.ACCOUNT_NAME);
+        channel.setClientId(BenchmarkLocator.CLIENT_ID);
+        channel.setSemanticChannelParts(Arrays.asList("sensors", "environment", "room1"));
+        kuraMessage = new KuraDataMessage(channel, new Date(), KuraPayloadBenchmark.newPayload(metricCount));
+    }
+
+    @Benchmark
+    public KapuaDataMessage translateData()
+        throws Exception
+    {
+        return translator.translate(kuraMessage);
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.benchmark;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+
+import org.eclipse.kapua.commons.configuration.metatype.TscalarImpl;
+import org.eclipse.kapua.commons.util.xml.XmlUtil;
+import org.eclipse.kapua.model.config.metatype.KapuaTad;
+import org.eclipse.kapua.model.config.metatype.KapuaTdesignate;
+import org.eclipse.kapua.model.config.metatype.KapuaTicon;
+import org.eclipse.kapua.model.config.metatype.KapuaTmetadata;
+import org.eclipse.kapua.model.config.metatype.KapuaTobject;
+import org.eclipse.kapua.model.config.metatype.KapuaTocd;
+import org.eclipse.kapua.model.config.metatype.KapuaToption;
+import org.eclipse.kapua.model.config.metatype.MetatypeXmlRegistry;
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Xml marshalling and unmarshalling, as done for the service configurations and by the REST API, of the message store service metatype.
+ *
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = BenchmarkLocator.LOCATOR_PROPERTY)
+public class XmlUtilBenchmark
+{
+    private static final String METATYPE_RESOURCE = "META-INF/metatypes/org.eclipse.kapua.service.datastore.MessageStoreService.xml";
+
+    private String              xml;
+    private KapuaTmetadata      metadata;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        BenchmarkLocator.setUp();
+        JAXBContext context = JAXBContextFactory.createContext(new Class<?>[] {
+                                                                                KapuaTmetadata.class,
+                                                                                KapuaTocd.class,
+                                                                                KapuaTad.class,
+                                                                                KapuaTicon.class,
+                                                                                TscalarImpl.class,
+                                                                                KapuaToption.class,
+                                                                                KapuaTdesignate.class,
+                                                                                KapuaTobject.class,
+                                                                                MetatypeXmlRegistry.class
+        }, null);
+        XmlUtil.setContextProvider(() -> context);
+
+        try (InputStream is = XmlUtilBenchmark.class.getClassLoader().getResourceAsStream(METATYPE_RESOURCE);
+             Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name())) {
+            xml = scanner.useDelimiter("\\A").next();
+        }
+        metadata = XmlUtil.unmarshal(xml, KapuaTmetadata.class);
+    }
+
+    @Benchmark
+    public KapuaTmetadata unmarshal()
+        throws Exception
+    {
+        return XmlUtil.unmarshal(xml, KapuaTmetadata.class);
+    }
+
+    @Benchmark
+    public String marshal()
+        throws Exception
+    {
+        return XmlUtil.marshal(metadata);
+    }
+}
@@ -20,7 +20,10 @@ import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.config.Ini;
 import org.apache.shiro.config.IniSecurityManagerFactory;
 import org.eclipse.kapua.broker.core.plugin.KapuaSecurityBrokerFilter;
+import org.eclipse.kapua.commons.metric.MetricsExporter;
 import org.eclipse.kapua.commons.util.ResourceUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +63,9 @@ public class KapuaBrokerSecurityPlugin implements BrokerPlugin
             org.apache.shiro.mgt.SecurityManager securityManager = factory.getInstance();
             SecurityUtils.setSecurityManager(securityManager);
 
+            // expose the broker metrics (if enabled)
+            MetricsExporter.startIfEnabled(KapuaLocator.getInstance().getService(MetricsService.class).getMetricRegistry());
+
             // install the filters
             broker = new KapuaSecurityBrokerFilter(broker);
             return broker;
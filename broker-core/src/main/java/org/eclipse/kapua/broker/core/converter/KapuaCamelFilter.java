@@ -3,6 +3,7 @@ package org.eclipse.kapua.broker.core.converter;
 import org.apache.camel.Exchange;
 import org.apache.shiro.util.ThreadContext;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterSession;
 import org.eclipse.kapua.broker.core.listener.AbstractListener;
 import org.eclipse.kapua.broker.core.message.MessageConstants;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
@@ -20,7 +21,8 @@ public class KapuaCamelFilter extends AbstractListener
     }
 
     /**
-     * Bind the Kapua session retrieved from the message header (with key {@link MessageConstants#HEADER_KAPUA_SESSION}) to the current thread context.
+     * Bind the Kapua session retrieved from the message header (with key {@link MessageConstants#HEADER_KAPUA_SESSION}) to the current thread context.<br>
+     * The session of a replayed dead letter is bound again from the ids stored in the dead letter (see {@link DeadLetterSession}).
      * 
      * @param exchange
      * @param value
@@ -29,6 +31,7 @@ public class KapuaCamelFilter extends AbstractListener
     public void bindSession(Exchange exchange, Object value) throws KapuaException
     {
         ThreadContext.unbindSubject();
+        DeadLetterSession.restore(exchange.getIn());
         KapuaSession kapuaSession = exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_SESSION, KapuaSession.class);
         KapuaSecurityUtils.setSession((KapuaSession) kapuaSession);
     }
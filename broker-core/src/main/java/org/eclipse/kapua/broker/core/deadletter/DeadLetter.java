@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+
+/**
+ * A message failed by a broker route, with everything needed to route it again: the queue it was consumed from, its headers and its payload,
+ * plus the failure cause.<br>
+ * The dead letter is encoded as a single self contained record, so the same bytes are stored in the dead letter queue and in the journal.
+ * Header values other than strings and primitive wrappers are stored with the Java serialization only if their class is one of an explicit
+ * list of id and date classes (other values are skipped), and only those classes are accepted back. The Kapua session is never stored,
+ * see {@link DeadLetterSession}.
+ *
+ * @since 1.0
+ */
+public class DeadLetter
+{
+    private static final int    FORMAT_VERSION = 1;
+
+    private static final byte   TYPE_STRING    = 'S';
+    private static final byte   TYPE_BOOLEAN   = 'Z';
+    private static final byte   TYPE_BYTE      = 'B';
+    private static final byte   TYPE_SHORT     = 'H';
+    private static final byte   TYPE_INTEGER   = 'I';
+    private static final byte   TYPE_LONG      = 'J';
+    private static final byte   TYPE_FLOAT     = 'F';
+    private static final byte   TYPE_DOUBLE    = 'D';
+    private static final byte   TYPE_OBJECT    = 'O';
+
+    // header value classes stored with the Java serialization
+    private static final Set<String> SERIALIZED_CLASSES = new HashSet<>(Arrays.asList(BigInteger.class.getName(),
+                                                                                       Date.class.getName(),
+                                                                                       KapuaEid.class.getName()));
+
+    // classes accepted back: the stored classes and the classes they serialize (Number is the superclass of BigInteger)
+    private static final Set<String> TRUSTED_CLASSES = new HashSet<>(Arrays.asList(Number.class.getName(),
+                                                                                    BigInteger.class.getName(),
+                                                                                    Date.class.getName(),
+                                                                                    KapuaEid.class.getName()));
+
+    private final String              id;
+    private final long                failedOn;
+    private final String              destination;
+    private final String              service;
+    private final String              failureEndpoint;
+    private final String              cause;
+    private final Map<String, Object> headers;
+    private final byte[]              payload;
+
+    /**
+     * Constructor
+     *
+     * @param id unique (and stable through replays) dead letter id
+     * @param failedOn failure time
+     * @param destination qualified name of the destination the message was consumed from
+     * @param service the route service that failed
+     * @param failureEndpoint the endpoint that failed
+     * @param cause the failure stack trace
+     * @param headers the message headers
+     * @param payload the message payload
+     */
+    public DeadLetter(String id, long failedOn, String destination, String service, String failureEndpoint, String cause, Map<String, Object> headers, byte[] payload)
+    {
+        this.id = id;
+        this.failedOn = failedOn;
+        this.destination = destination;
+        this.service = service;
+        this.failureEndpoint = failureEndpoint;
+        this.cause = cause;
+        this.headers = headers != null ? headers : Collections.<String, Object> emptyMap();
+        this.payload = payload != null ? payload : new byte[0];
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public long getFailedOn()
+    {
+        return failedOn;
+    }
+
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    public String getService()
+    {
+        return service;
+    }
+
+    public String getFailureEndpoint()
+    {
+        return failureEndpoint;
+    }
+
+    public String getCause()
+    {
+        return cause;
+    }
+
+    public Map<String, Object> getHeaders()
+    {
+        return headers;
+    }
+
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    /**
+     * Return the stack trace of the throwable (or null if the throwable is null)
+     *
+     * @param t
+     * @return
+     */
+    public static String toCause(Throwable t)
+    {
+        if (t == null) {
+            return null;
+        }
+        StringWriter writer = new StringWriter();
+        t.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    /**
+     * Encode the dead letter.<br>
+     * The header values that cannot be encoded are skipped.
+     *
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode()
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, id);
+        out.writeLong(failedOn);
+        writeString(out, destination);
+        writeString(out, service);
+        writeString(out, failureEndpoint);
+        writeString(out, cause);
+
+        Map<String, byte[]> objects = new LinkedHashMap<>();
+        int count = 0;
+        for (Entry<String, Object> header : headers.entrySet()) {
+            Object value = header.getValue();
+            if (isPrimitive(value)) {
+                count++;
+            }
+            else if (value != null && SERIALIZED_CLASSES.contains(value.getClass().getName())) {
+                objects.put(header.getKey(), serialize(value));
+                count++;
+            }
+        }
+
+        out.writeInt(count);
+        for (Entry<String, Object> header : headers.entrySet()) {
+            Object value = header.getValue();
+            if (isPrimitive(value)) {
+                writeString(out, header.getKey());
+                writePrimitive(out, value);
+            }
+            else if (objects.containsKey(header.getKey())) {
+                writeString(out, header.getKey());
+                out.writeByte(TYPE_OBJECT);
+                writeBytes(out, objects.get(header.getKey()));
+            }
+        }
+        writeBytes(out, payload);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a dead letter previously encoded by {@link #encode()}
+     *
+     * @param record
+     * @return
+     * @throws IOException if the record is not a valid dead letter
+     */
+    public static DeadLetter decode(byte[] record)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported dead letter format version " + version);
+        }
+        String id = readString(in);
+        long failedOn = in.readLong();
+        String destination = readString(in);
+        String service = readString(in);
+        String failureEndpoint = readString(in);
+        String cause = readString(in);
+
+        int count = in.readInt();
+        Map<String, Object> headers = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            headers.put(name, readValue(in));
+        }
+        byte[] payload = readBytes(in);
+        return new DeadLetter(id, failedOn, destination, service, failureEndpoint, cause, headers, payload);
+    }
+
+    static boolean isPrimitive(Object value)
+    {
+        return value instanceof String || value instanceof Boolean || value instanceof Byte || value instanceof Short ||
+               value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double;
+    }
+
+    private static void writePrimitive(DataOutputStream out, Object value)
+        throws IOException
+    {
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        }
+        else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in)
+        throws IOException
+    {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_BOOLEAN:
+            return in.readBoolean();
+        case TYPE_BYTE:
+            return in.readByte();
+        case TYPE_SHORT:
+            return in.readShort();
+        case TYPE_INTEGER:
+            return in.readInt();
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_FLOAT:
+            return in.readFloat();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_OBJECT:
+            return deserialize(readBytes(in));
+        default:
+            throw new IOException("Unknown dead letter header type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+        throws IOException
+    {
+        // writeUTF is limited to 64KB, stack traces may be longer
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static String readString(DataInputStream in)
+        throws IOException
+    {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value)
+        throws IOException
+    {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in)
+        throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Truncated dead letter record");
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static byte[] serialize(Object value)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] value)
+        throws IOException
+    {
+        try (ObjectInputStream in = new TrustedObjectInputStream(new ByteArrayInputStream(value))) {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException e) {
+            throw new IOException("Cannot decode the dead letter header", e);
+        }
+    }
+
+    /**
+     * Object input stream resolving only the trusted classes
+     */
+    private static class TrustedObjectInputStream extends ObjectInputStream
+    {
+        TrustedObjectInputStream(InputStream in)
+            throws IOException
+        {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException
+        {
+            String name = desc.getName();
+            // primitive arrays (i.e. the BigInteger magnitude) are named like [B
+            if (!name.matches("^\\[+[ZBCSIJFD]$") && !TRUSTED_CLASSES.contains(name)) {
+                throw new InvalidClassException(name, "Class not allowed in a dead letter");
+            }
+            // the Kapua classes are not visible to the default (system) class loader inside the broker
+            return Class.forName(name, false, DeadLetter.class.getClassLoader());
+        }
+    }
+}
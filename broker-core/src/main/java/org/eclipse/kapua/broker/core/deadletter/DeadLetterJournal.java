@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only file of dead letter records, used when the dead letter queue cannot be written.<br>
+ * Every record is written as its length, its CRC32 and its bytes, so a record partially written by a crash is detected and ignored.<br>
+ * <br>
+ * The journal is drained by renaming it: new records go to a new journal while the renamed one is read in batches.
+ * The offset of the last batch handed over is saved after every batch, so an interrupted drain restarts from there
+ * (the batch in flight when the drain was interrupted is handed over again).
+ *
+ * @since 1.0
+ */
+public class DeadLetterJournal
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterJournal.class);
+
+    private static final String JOURNAL_FILE_NAME  = "dead-letter.journal";
+    private static final String DRAINING_FILE_NAME = "dead-letter.journal.draining";
+    private static final String OFFSET_FILE_NAME   = "dead-letter.journal.draining.offset";
+
+    private static final int    RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Consumer of a batch of drained records
+     */
+    public interface BatchHandler
+    {
+        /**
+         * Handle the batch. If the handler throws the drain is stopped and the batch will be handed over again by the next drain.
+         *
+         * @param records
+         * @throws Exception
+         */
+        void handle(List<byte[]> records)
+            throws Exception;
+    }
+
+    private final File    journalFile;
+    private final File    drainingFile;
+    private final File    offsetFile;
+    private final boolean sync;
+    private final long    maxSize;
+    private final Object  drainLock = new Object();
+
+    // guarded by this
+    private FileChannel   channel;
+
+    /**
+     * Constructor
+     *
+     * @param directory the journal directory (created if missing)
+     * @param sync force every record to the disk before returning from {@link #append(byte[])}
+     * @param maxSize the maximum journal size in bytes
+     */
+    public DeadLetterJournal(File directory, boolean sync, long maxSize)
+    {
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.drainingFile = new File(directory, DRAINING_FILE_NAME);
+        this.offsetFile = new File(directory, OFFSET_FILE_NAME);
+        this.sync = sync;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Append a record to the journal
+     *
+     * @param record
+     * @return false if the record was not appended because the journal is full
+     * @throws IOException
+     */
+    public synchronized boolean append(byte[] record)
+        throws IOException
+    {
+        FileChannel ch = openChannel();
+        if (ch.size() + RECORD_HEADER_SIZE + record.length > maxSize) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+        if (sync) {
+            ch.force(false);
+        }
+        return true;
+    }
+
+    /**
+     * Hand over all the records of the journal to the handler, in batches of at most batchSize records.<br>
+     * The records appended while draining are left for the next drain.
+     *
+     * @param batchSize
+     * @param handler
+     * @return the number of records handed over
+     * @throws Exception if the handler failed (the drain can be retried)
+     */
+    public long drain(int batchSize, BatchHandler handler)
+        throws Exception
+    {
+        synchronized (drainLock) {
+            return drainLocked(batchSize, handler);
+        }
+    }
+
+    private long drainLocked(int batchSize, BatchHandler handler)
+        throws Exception
+    {
+        synchronized (this) {
+            // a left over draining file (interrupted drain) is completed first, otherwise the current journal is moved aside
+            if (!drainingFile.exists()) {
+                closeChannel();
+                if (!journalFile.exists() || journalFile.length() == 0) {
+                    return 0;
+                }
+                Files.move(journalFile.toPath(), drainingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                writeOffset(0);
+            }
+        }
+
+        long count = 0;
+        long offset = readOffset();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(drainingFile)))) {
+            skipFully(in, offset);
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            long batchEnd = offset;
+            for (;;) {
+                byte[] record = readRecord(in);
+                if (record != null) {
+                    batch.add(record);
+                    batchEnd += RECORD_HEADER_SIZE + record.length;
+                }
+                if (!batch.isEmpty() && (record == null || batch.size() >= batchSize)) {
+                    handler.handle(batch);
+                    count += batch.size();
+                    writeOffset(batchEnd);
+                    batch = new ArrayList<>(batchSize);
+                }
+                if (record == null) {
+                    break;
+                }
+            }
+        }
+
+        Files.delete(drainingFile.toPath());
+        Files.deleteIfExists(offsetFile.toPath());
+        logger.info("Dead letter journal drained: {} records", count);
+        return count;
+    }
+
+    /**
+     * Close the journal
+     */
+    public synchronized void close()
+    {
+        closeChannel();
+    }
+
+    private FileChannel openChannel()
+        throws IOException
+    {
+        if (channel == null) {
+            journalFile.getParentFile().mkdirs();
+            @SuppressWarnings("resource")
+            RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+            channel = file.getChannel();
+            // drop a record partially written by a crash, otherwise the records appended after it would never be read back
+            long validLength = validLength(journalFile);
+            if (validLength < channel.size()) {
+                logger.warn("Dead letter journal truncated to the last complete record ({} bytes)", validLength);
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+        }
+        return channel;
+    }
+
+    private void closeChannel()
+    {
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.warn("Cannot close the dead letter journal: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static long validLength(File file)
+        throws IOException
+    {
+        long length = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] record;
+            while ((record = readRecord(in)) != null) {
+                length += RECORD_HEADER_SIZE + record.length;
+            }
+        }
+        return length;
+    }
+
+    private static byte[] readRecord(DataInputStream in)
+        throws IOException
+    {
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0) {
+                logger.warn("Corrupted dead letter journal record, the rest of the journal is skipped");
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+
+            CRC32 actualCrc = new CRC32();
+            actualCrc.update(record);
+            if ((int) actualCrc.getValue() != crc) {
+                logger.warn("Corrupted dead letter journal record, the rest of the journal is skipped");
+                return null;
+            }
+            return record;
+        }
+        catch (EOFException e) {
+            // end of the journal or record partially written
+            return null;
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long bytes)
+        throws IOException
+    {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Dead letter journal shorter than its drain offset");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private long readOffset()
+        throws IOException
+    {
+        if (!offsetFile.exists()) {
+            return 0;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    private void writeOffset(long offset)
+        throws IOException
+    {
+        File tmp = new File(offsetFile.getPath() + ".tmp");
+        Files.write(tmp.toPath(), Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
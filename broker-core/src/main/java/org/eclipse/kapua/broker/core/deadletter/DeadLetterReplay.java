@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.quota.TokenBucket;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Throttled bulk replay of the dead letters.<br>
+ * The journal is moved to the dead letter queue first, then every dead letter is sent back, with its original headers and payload, to the queue
+ * it was consumed from, so it goes through the normal route again. Only the dead letters failed before the replay started are replayed:
+ * a message failing again during the replay is stored again and left for the next replay.<br>
+ * <br>
+ * The dead letters are moved in local transactions (consume from the dead letter queue and send to the route queue, committed every batch size
+ * messages), so a dead letter is never lost nor replayed twice by an interrupted replay. The dead letter ids already replayed are remembered
+ * (up to the duplicate window) to drop the copies that an interrupted journal drain may have queued twice.<br>
+ * <br>
+ * The replayed messages are sent as persistent, so a replayed dead letter survives a broker restart as it did in the dead letter queue.
+ * They carry only the primitive headers of the dead letter: the session and connection headers are bound again by the route from the ids
+ * stored in the dead letter (see {@link DeadLetterSession}).
+ *
+ * @since 1.0
+ */
+public class DeadLetterReplay
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplay.class);
+
+    private static final String METRIC_MODULE_NAME = "deadletter";
+
+    private static final DeadLetterReplay instance = new DeadLetterReplay();
+
+    private final DeadLetterStore store;
+    private final long            defaultRate;
+    private final int             batchSize;
+    private final long            receiveTimeout;
+    private final int             duplicateWindow;
+
+    private final AtomicBoolean   running = new AtomicBoolean();
+    private volatile boolean      stopRequested;
+    private final ExecutorService executor;
+
+    private final Counter         metricReplayed;
+    private final Counter         metricDuplicated;
+    private final Counter         metricDiscarded;
+
+    private DeadLetterReplay()
+    {
+        BrokerSetting setting = BrokerSetting.getInstance();
+        store = DeadLetterStore.getInstance();
+        defaultRate = setting.getLong(BrokerSettingKey.DEAD_LETTER_REPLAY_RATE, 500L);
+        batchSize = setting.getInt(BrokerSettingKey.DEAD_LETTER_REPLAY_BATCH_SIZE, 100);
+        receiveTimeout = setting.getLong(BrokerSettingKey.DEAD_LETTER_REPLAY_RECEIVE_TIMEOUT, 1000L);
+        duplicateWindow = setting.getInt(BrokerSettingKey.DEAD_LETTER_REPLAY_DUPLICATE_WINDOW, 100000);
+
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "kapua-dead-letter-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricReplayed = metricsService.getCounter(METRIC_MODULE_NAME, "replay", "replayed", "count");
+        metricDuplicated = metricsService.getCounter(METRIC_MODULE_NAME, "replay", "duplicated", "count");
+        metricDiscarded = metricsService.getCounter(METRIC_MODULE_NAME, "replay", "discarded", "count");
+    }
+
+    public static DeadLetterReplay getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Start a replay in background
+     *
+     * @param maxMessages maximum number of dead letters to be replayed (no limit if not positive)
+     * @param rate maximum number of dead letters replayed per second (the configured rate if not positive)
+     * @return false if a replay is already running
+     */
+    public boolean start(long maxMessages, long rate)
+    {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        stopRequested = false;
+        long replayRate = rate > 0 ? rate : defaultRate;
+        executor.execute(() -> {
+            try {
+                replay(maxMessages > 0 ? maxMessages : Long.MAX_VALUE, replayRate);
+            }
+            catch (Exception e) {
+                logger.error("Dead letter replay failed", e);
+            }
+            finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Ask the running replay (if any) to stop, the dead letters already replayed are committed
+     */
+    public void stop()
+    {
+        stopRequested = true;
+    }
+
+    public boolean isRunning()
+    {
+        return running.get();
+    }
+
+    /**
+     * Replay the dead letters in the calling thread
+     *
+     * @param maxMessages
+     * @param rate
+     * @return the number of dead letters replayed
+     * @throws Exception
+     */
+    long replay(long maxMessages, long rate)
+        throws Exception
+    {
+        long startedOn = System.currentTimeMillis();
+        logger.info("Dead letter replay started: at most {} messages, {} messages/s", maxMessages, rate);
+
+        long drained = store.drainJournal(batchSize);
+        if (drained > 0) {
+            logger.info("Moved {} dead letters from the journal to the queue {}", drained, store.getQueueName());
+        }
+
+        TokenBucket bucket = new TokenBucket(rate, Math.max(1, Math.min(rate, batchSize)));
+        DuplicateFilter duplicates = new DuplicateFilter(duplicateWindow);
+        long replayed = 0;
+
+        Connection connection = store.getConnectionFactory().createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(store.getQueueName()),
+                                                              MessageConstants.PROPERTY_DEAD_LETTER_FAILED_ON + " <= " + startedOn);
+            MessageProducer producer = session.createProducer(null);
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+
+            int pending = 0;
+            int pendingReplayed = 0;
+            while (replayed < maxMessages && !stopRequested) {
+                Message message = consumer.receive(receiveTimeout);
+                if (message == null) {
+                    break;
+                }
+                try {
+                    DeadLetter deadLetter = DeadLetter.decode(readBody((BytesMessage) message));
+                    if (!duplicates.add(deadLetter.getId())) {
+                        metricDuplicated.inc();
+                    }
+                    else if (deadLetter.getDestination() == null) {
+                        logger.warn("Dead letter {} discarded: unknown destination", deadLetter.getId());
+                        metricDiscarded.inc();
+                    }
+                    else {
+                        acquire(bucket);
+                        ActiveMQDestination destination = ActiveMQDestination.createDestination(deadLetter.getDestination(), ActiveMQDestination.QUEUE_TYPE);
+                        producer.send(destination, toMessage(session, deadLetter));
+                        replayed++;
+                        pendingReplayed++;
+                    }
+                }
+                catch (IOException | ClassCastException e) {
+                    logger.warn("Dead letter {} discarded: {}", message.getJMSMessageID(), e.getMessage());
+                    metricDiscarded.inc();
+                }
+
+                if (++pending >= batchSize) {
+                    session.commit();
+                    metricReplayed.inc(pendingReplayed);
+                    pending = 0;
+                    pendingReplayed = 0;
+                }
+            }
+            session.commit();
+            metricReplayed.inc(pendingReplayed);
+        }
+        finally {
+            // an uncommitted batch is rolled back and left in the dead letter queue
+            connection.close();
+        }
+
+        logger.info("Dead letter replay completed: {} messages replayed in {} ms", replayed, System.currentTimeMillis() - startedOn);
+        return replayed;
+    }
+
+    private static BytesMessage toMessage(Session session, DeadLetter deadLetter)
+        throws JMSException, IOException
+    {
+        BytesMessage message = session.createBytesMessage();
+        for (Entry<String, Object> header : deadLetter.getHeaders().entrySet()) {
+            // object values cannot be stored by the broker
+            if (DeadLetter.isPrimitive(header.getValue())) {
+                message.setObjectProperty(header.getKey(), header.getValue());
+            }
+        }
+        message.setStringProperty(MessageConstants.HEADER_KAPUA_DEAD_LETTER_ID, deadLetter.getId());
+        message.writeBytes(deadLetter.getPayload());
+        return message;
+    }
+
+    private static byte[] readBody(BytesMessage message)
+        throws JMSException
+    {
+        byte[] body = new byte[(int) message.getBodyLength()];
+        message.readBytes(body);
+        return body;
+    }
+
+    private void acquire(TokenBucket bucket)
+        throws InterruptedException
+    {
+        long pause = Math.max(1, TimeUnit.SECONDS.toMillis(1) / bucket.getRate());
+        while (!bucket.tryAcquire(1)) {
+            Thread.sleep(pause);
+        }
+    }
+
+    /**
+     * Bounded set of the last replayed dead letter ids
+     */
+    private static class DuplicateFilter extends LinkedHashMap<String, Boolean>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        DuplicateFilter(int maxSize)
+        {
+            super(16, 0.75f, false);
+            this.maxSize = maxSize;
+        }
+
+        boolean add(String id)
+        {
+            return put(id, Boolean.TRUE) == null;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+        {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import java.util.Map;
+
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor;
+import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptorLoader;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Session headers of the dead letters.<br>
+ * The session and connection objects set by the security filter are not stored in the dead letter: the session holds the access token of the
+ * device connection, and neither of them can be stored by the broker. The dead letter keeps their ids as plain string headers instead, and the
+ * session and connection headers are bound again from those ids when the replayed message goes through the route.
+ *
+ * @since 1.0
+ */
+public class DeadLetterSession
+{
+    private static final Map<String, ConnectorDescriptor> connectorDescriptors = ConnectorDescriptorLoader.loadConnectorDescriptors();
+
+    private DeadLetterSession()
+    {
+    }
+
+    /**
+     * Return true if the header is a session or connection object header, that must not be stored in the dead letter
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isSessionHeader(String name)
+    {
+        return MessageConstants.HEADER_KAPUA_SESSION.equals(name) ||
+               MessageConstants.HEADER_KAPUA_CONNECTION_ID.equals(name) ||
+               MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL.equals(name);
+    }
+
+    /**
+     * Put in the dead letter headers the ids of the session and connection headers of the failed message
+     *
+     * @param messageHeaders the failed message headers
+     * @param deadLetterHeaders the dead letter headers
+     */
+    public static void store(Map<String, Object> messageHeaders, Map<String, Object> deadLetterHeaders)
+    {
+        Object session = messageHeaders.get(MessageConstants.HEADER_KAPUA_SESSION);
+        if (session instanceof KapuaSession) {
+            KapuaSession kapuaSession = (KapuaSession) session;
+            putId(deadLetterHeaders, MessageConstants.HEADER_KAPUA_DEAD_LETTER_SCOPE_ID, kapuaSession.getScopeId());
+            putId(deadLetterHeaders, MessageConstants.HEADER_KAPUA_DEAD_LETTER_RUN_AS_SCOPE_ID, kapuaSession.getRunAsScopeId());
+            putId(deadLetterHeaders, MessageConstants.HEADER_KAPUA_DEAD_LETTER_USER_ID, kapuaSession.getUserId());
+            if (kapuaSession.getUsername() != null) {
+                deadLetterHeaders.put(MessageConstants.HEADER_KAPUA_DEAD_LETTER_USERNAME, kapuaSession.getUsername());
+            }
+        }
+        Object connectionId = messageHeaders.get(MessageConstants.HEADER_KAPUA_CONNECTION_ID);
+        if (connectionId instanceof KapuaId) {
+            putId(deadLetterHeaders, MessageConstants.HEADER_KAPUA_DEAD_LETTER_CONNECTION_ID, (KapuaId) connectionId);
+        }
+        Object connectorDescriptor = messageHeaders.get(MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL);
+        if (connectorDescriptor instanceof ConnectorDescriptor) {
+            deadLetterHeaders.put(MessageConstants.HEADER_KAPUA_DEAD_LETTER_CONNECTOR, ((ConnectorDescriptor) connectorDescriptor).getConnectorName());
+        }
+    }
+
+    /**
+     * Bind again the session and connection headers of a replayed message from the ids stored in the dead letter.<br>
+     * A message that already has a session (i.e. a message not coming from a replay) is left untouched.
+     *
+     * @param message
+     */
+    public static void restore(org.apache.camel.Message message)
+    {
+        if (message.getHeader(MessageConstants.HEADER_KAPUA_SESSION) != null) {
+            return;
+        }
+        KapuaId userId = getId(message, MessageConstants.HEADER_KAPUA_DEAD_LETTER_USER_ID);
+        if (userId == null) {
+            return;
+        }
+        message.setHeader(MessageConstants.HEADER_KAPUA_SESSION, new KapuaSession(null,
+                                                                                  getId(message, MessageConstants.HEADER_KAPUA_DEAD_LETTER_RUN_AS_SCOPE_ID),
+                                                                                  getId(message, MessageConstants.HEADER_KAPUA_DEAD_LETTER_SCOPE_ID),
+                                                                                  userId,
+                                                                                  message.getHeader(MessageConstants.HEADER_KAPUA_DEAD_LETTER_USERNAME, String.class)));
+        KapuaId connectionId = getId(message, MessageConstants.HEADER_KAPUA_DEAD_LETTER_CONNECTION_ID);
+        if (connectionId != null) {
+            message.setHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID, connectionId);
+        }
+        String connectorName = message.getHeader(MessageConstants.HEADER_KAPUA_DEAD_LETTER_CONNECTOR, String.class);
+        if (connectorName != null && connectorDescriptors.containsKey(connectorName)) {
+            message.setHeader(MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL, connectorDescriptors.get(connectorName));
+        }
+    }
+
+    private static void putId(Map<String, Object> headers, String name, KapuaId id)
+    {
+        if (id != null) {
+            headers.put(name, id.toCompactId());
+        }
+    }
+
+    private static KapuaId getId(org.apache.camel.Message message, String name)
+    {
+        String compactId = message.getHeader(name, String.class);
+        return compactId != null ? KapuaEid.parseCompactId(compactId) : null;
+    }
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Durable store of the messages failed by the broker routes.<br>
+ * The dead letters are sent (persistent and synchronous) to the dead letter queue. If the queue cannot be written (i.e. the broker store is full
+ * and the send times out) the dead letter is appended to the {@link DeadLetterJournal}, which is moved to the queue at the next replay.<br>
+ * <br>
+ * Storing is serialized on a single producer: it is only called on the error path, so the simplicity is preferred over the throughput.
+ *
+ * @since 1.0
+ */
+public class DeadLetterStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterStore.class);
+
+    private static final String METRIC_MODULE_NAME = "deadletter";
+
+    private static final DeadLetterStore instance = new DeadLetterStore();
+
+    /**
+     * Dead letter store outcome
+     */
+    public enum Outcome
+    {
+        /**
+         * Stored in the dead letter queue
+         */
+        QUEUED,
+        /**
+         * Stored in the journal
+         */
+        JOURNALED,
+        /**
+         * Not stored (the store is disabled or both the queue and the journal failed)
+         */
+        LOST
+    }
+
+    private final boolean                   enabled;
+    private final String                    queueName;
+    private final ActiveMQConnectionFactory connectionFactory;
+    private final DeadLetterJournal         journal;
+
+    private final Counter                   metricQueued;
+    private final Counter                   metricJournaled;
+    private final Counter                   metricLost;
+
+    // guarded by this
+    private Connection                      connection;
+    private Session                         session;
+    private MessageProducer                 producer;
+
+    private DeadLetterStore()
+    {
+        BrokerSetting setting = BrokerSetting.getInstance();
+        enabled = setting.getBoolean(BrokerSettingKey.DEAD_LETTER_ENABLED, true);
+        queueName = setting.getString(BrokerSettingKey.DEAD_LETTER_QUEUE_NAME, "KapuaDeadLetter");
+
+        connectionFactory = new ActiveMQConnectionFactory(setting.getString(BrokerSettingKey.DEAD_LETTER_CONNECTION_URI, "vm://kapua?create=false&waitForStart=10000"));
+        // the dead letter must be on the disk when the failed message is acknowledged
+        connectionFactory.setUseAsyncSend(false);
+        connectionFactory.setAlwaysSyncSend(true);
+        // do not block the route consumers on a full broker store, use the journal instead
+        connectionFactory.setSendTimeout(setting.getInt(BrokerSettingKey.DEAD_LETTER_SEND_TIMEOUT, 5000));
+
+        String journalDir = setting.getString(BrokerSettingKey.DEAD_LETTER_JOURNAL_DIR, "");
+        if (journalDir == null || journalDir.trim().isEmpty()) {
+            journalDir = new File(System.getProperty("activemq.data", System.getProperty("java.io.tmpdir")), "dead-letter").getPath();
+        }
+        journal = new DeadLetterJournal(new File(journalDir),
+                                        setting.getBoolean(BrokerSettingKey.DEAD_LETTER_JOURNAL_SYNC, true),
+                                        setting.getLong(BrokerSettingKey.DEAD_LETTER_JOURNAL_MAX_SIZE, 1024L * 1024 * 1024));
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricQueued = metricsService.getCounter(METRIC_MODULE_NAME, "store", "queued", "count");
+        metricJournaled = metricsService.getCounter(METRIC_MODULE_NAME, "store", "journaled", "count");
+        metricLost = metricsService.getCounter(METRIC_MODULE_NAME, "store", "lost", "count");
+    }
+
+    public static DeadLetterStore getInstance()
+    {
+        return instance;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public String getQueueName()
+    {
+        return queueName;
+    }
+
+    ActiveMQConnectionFactory getConnectionFactory()
+    {
+        return connectionFactory;
+    }
+
+    /**
+     * Store the dead letter
+     *
+     * @param deadLetter
+     * @return where the dead letter has been stored
+     */
+    public Outcome store(DeadLetter deadLetter)
+    {
+        if (!enabled) {
+            return Outcome.LOST;
+        }
+
+        byte[] record;
+        try {
+            record = deadLetter.encode();
+        }
+        catch (IOException e) {
+            logger.error("Cannot encode the dead letter {}: {}", deadLetter.getId(), e.getMessage());
+            metricLost.inc();
+            return Outcome.LOST;
+        }
+
+        synchronized (this) {
+            try {
+                ensureProducer();
+                producer.send(toMessage(session, deadLetter, record));
+                metricQueued.inc();
+                return Outcome.QUEUED;
+            }
+            catch (JMSException e) {
+                logger.warn("Cannot send the dead letter {} to the queue {}, falling back to the journal: {}",
+                            new Object[] { deadLetter.getId(), queueName, e.getMessage() });
+                closeProducer();
+            }
+        }
+
+        try {
+            if (journal.append(record)) {
+                metricJournaled.inc();
+                return Outcome.JOURNALED;
+            }
+            logger.error("Dead letter journal full, dead letter {} lost", deadLetter.getId());
+        }
+        catch (IOException e) {
+            logger.error("Cannot write the dead letter {} to the journal", deadLetter.getId(), e);
+        }
+        metricLost.inc();
+        return Outcome.LOST;
+    }
+
+    /**
+     * Move the dead letters of the journal to the dead letter queue
+     *
+     * @param batchSize number of dead letters sent in a single transaction
+     * @return the number of dead letters moved
+     * @throws Exception
+     */
+    public long drainJournal(int batchSize)
+        throws Exception
+    {
+        Connection drainConnection = connectionFactory.createConnection();
+        try {
+            Session drainSession = drainConnection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageProducer drainProducer = drainSession.createProducer(drainSession.createQueue(queueName));
+            drainProducer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            return journal.drain(batchSize, (List<byte[]> records) -> {
+                try {
+                    for (byte[] record : records) {
+                        drainProducer.send(toMessage(drainSession, DeadLetter.decode(record), record));
+                    }
+                    drainSession.commit();
+                }
+                catch (Exception e) {
+                    drainSession.rollback();
+                    throw e;
+                }
+            });
+        }
+        finally {
+            drainConnection.close();
+        }
+    }
+
+    /**
+     * Close the dead letter queue producer and the journal
+     */
+    public synchronized void close()
+    {
+        closeProducer();
+        journal.close();
+    }
+
+    private static BytesMessage toMessage(Session session, DeadLetter deadLetter, byte[] record)
+        throws JMSException
+    {
+        BytesMessage message = session.createBytesMessage();
+        // the properties are for the replay selector and for browsing the queue, the record is self contained
+        message.setStringProperty(MessageConstants.HEADER_KAPUA_DEAD_LETTER_ID, deadLetter.getId());
+        message.setLongProperty(MessageConstants.PROPERTY_DEAD_LETTER_FAILED_ON, deadLetter.getFailedOn());
+        message.setStringProperty(MessageConstants.PROPERTY_DEAD_LETTER_SERVICE, deadLetter.getService());
+        message.setStringProperty(MessageConstants.PROPERTY_DEAD_LETTER_DESTINATION, deadLetter.getDestination());
+        message.setStringProperty(MessageConstants.PROPERTY_DEAD_LETTER_ENDPOINT, deadLetter.getFailureEndpoint());
+        message.writeBytes(record);
+        return message;
+    }
+
+    private void ensureProducer()
+        throws JMSException
+    {
+        if (producer == null) {
+            connection = connectionFactory.createConnection();
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(session.createQueue(queueName));
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        }
+    }
+
+    private void closeProducer()
+    {
+        if (connection != null) {
+            try {
+                connection.close();
+            }
+            catch (JMSException e) {
+                logger.warn("Cannot close the dead letter queue connection: {}", e.getMessage());
+            }
+        }
+        connection = null;
+        session = null;
+        producer = null;
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.listener;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.UriEndpoint;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterReplay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Dead letter replay control endpoint.<br>
+ * Every message received starts a {@link DeadLetterReplay} (if none is already running) or stops the running one if the {@link #HEADER_STOP}
+ * header is true. The replay limits are read from the optional {@link #HEADER_MAX_MESSAGES} and {@link #HEADER_RATE} headers.
+ *
+ * @since 1.0
+ */
+@UriEndpoint(title = "dead letter replay processor", syntax = "bean:deadLetterReplayListener", scheme = "bean")
+public class DeadLetterReplayListener extends AbstractListener
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterReplayListener.class);
+
+    public static final String HEADER_MAX_MESSAGES = "maxMessages";
+    public static final String HEADER_RATE         = "rate";
+    public static final String HEADER_STOP         = "stop";
+
+    private Counter metricReplayRequest;
+
+    public DeadLetterReplayListener()
+    {
+        super("deadLetterReplay");
+        metricReplayRequest = registerCounter("requests", "count");
+    }
+
+    /**
+     * Process a replay request
+     *
+     * @param exchange
+     * @param message
+     */
+    public void processReplayRequest(Exchange exchange, Object message)
+    {
+        metricReplayRequest.inc();
+        DeadLetterReplay replay = DeadLetterReplay.getInstance();
+        org.apache.camel.Message in = exchange.getIn();
+        if (Boolean.TRUE.equals(in.getHeader(HEADER_STOP, Boolean.class))) {
+            logger.info("Dead letter replay stop requested");
+            replay.stop();
+            return;
+        }
+
+        Long maxMessages = in.getHeader(HEADER_MAX_MESSAGES, Long.class);
+        Long rate = in.getHeader(HEADER_RATE, Long.class);
+        if (!replay.start(maxMessages != null ? maxMessages : 0, rate != null ? rate : 0)) {
+            logger.warn("Dead letter replay already running, request ignored");
+        }
+    }
+}
@@ -12,9 +12,15 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.listener;
 
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
 import org.apache.camel.spi.UriEndpoint;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.broker.core.message.CamelKapuaMessage;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.pool.JmsAssistantBatchProducer;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.lifecycle.KapuaAppsMessage;
 import org.eclipse.kapua.message.device.lifecycle.KapuaBirthMessage;
@@ -32,7 +38,8 @@ import com.codahale.metrics.Counter;
  * Device messages listener (device life cycle).<br>
  * Manage:<br>
  * - BIRTH/DC/LWT/APPS/NOTIFY device messages<br>
- * Republish of the lifecycle messages (once processed by the broker) isn't supported yet (see #136).
+ * Once processed, the BIRTH/DC/LWT messages are republished (with the original payload) as MQTT/CONNECT, MQTT/DISCONNECT and MQTT/MISSING
+ * notifications on the device topic, through the {@link JmsAssistantBatchProducer}.
  *
  * @since 1.0
  */
@@ -44,6 +51,14 @@ public class DeviceMessageListener extends AbstractListener
 
     private static DeviceLifeCycleService deviceLifeCycleService = KapuaLocator.getInstance().getService(DeviceLifeCycleService.class);
 
+    static final String NOTIFICATION_CONNECT    = "CONNECT";
+    static final String NOTIFICATION_DISCONNECT = "DISCONNECT";
+    static final String NOTIFICATION_MISSING    = "MISSING";
+
+    private static final String VIRTUAL_TOPIC_PREFIX = "VirtualTopic.";
+
+    private final boolean notificationEnabled = BrokerSetting.getInstance().getBoolean(BrokerSettingKey.LIFECYCLE_NOTIFICATION_ENABLED, true);
+
     // metrics
     private Counter metricDeviceBirthMessage;
     private Counter metricDeviceDisconnectMessage;
@@ -52,6 +67,9 @@ public class DeviceMessageListener extends AbstractListener
     private Counter metricDeviceNotifyMessage;
     private Counter metricDeviceUnmatchedMessage;
     private Counter metricDeviceErrorMessage;
+    private Counter metricNotificationSent;
+    private Counter metricNotificationError;
+    private Counter metricNotificationIgnored;
 
     public DeviceMessageListener()
     {
@@ -63,58 +81,38 @@ public class DeviceMessageListener extends AbstractListener
         metricDeviceNotifyMessage = registerCounter("messages", "notify", "count");
         metricDeviceUnmatchedMessage = registerCounter("messages", "unmatched", "count");
         metricDeviceErrorMessage = registerCounter("messages", "error", "count");
+        metricNotificationSent = registerCounter("notifications", "sent", "count");
+        metricNotificationError = registerCounter("notifications", "error", "count");
+        metricNotificationIgnored = registerCounter("notifications", "ignored", "count");
     }
 
     /**
      * Process a birth message.
      * 
+     * @param exchange
      * @param birthMessage
      */
-    public void processBirthMessage(CamelKapuaMessage<KapuaBirthMessage> birthMessage)
+    public void processBirthMessage(Exchange exchange, CamelKapuaMessage<KapuaBirthMessage> birthMessage)
     {
         try {
             deviceLifeCycleService.birth(birthMessage.getConnectionId(), birthMessage.getMessage());
             metricDeviceBirthMessage.inc();
-            // //republish BA
-            // Date now = new Date();
-            // KapuaPayload kapuaPayload = birthMessage.getMessage().getPayload();
-            // kapuaPayload.getProperties().put("server_event_time", Long.toString(now.getTime()));
-            //
-            // birthMessage.getMessage().setSemanticChannel(BIRTH_SEMANTIC_TOPIC);
-            // try {
-            // logger.debug("MESSAGE: {}", kapuaPayload);
-            // JmsAssistantProducerPool pool = JmsAssistantProducerPool.getIOnstance(DESTINATIONS.NO_DESTINATION);
-            // JmsAssistantProducerWrapper producer = null;
-            // try {
-            // producer = pool.borrowObject();
-            // producer.sendRawMessage(birthMessage);
-            // }
-            // finally {
-            // pool.returnObject(producer);
-            // }
-            // }
-            // catch (JMSException e) {
-            // logger.error("An error occurred while publishing device history event: {}", e.getMessage());
-            // return;
-            // }
-            // catch (Throwable t) {
-            // logger.warn("Cannot send birth life cycle message {}! {}", new Object[]{birthMessage.getMessage().getChannel().toString(), t.getMessage()}, t);
-            // return;
-            // }
         }
         catch (KapuaException e) {
             metricDeviceErrorMessage.inc();
             logger.error("Error while processing device birth life-cycle event", e);
             return;
         }
+        publishNotification(exchange, NOTIFICATION_CONNECT);
     }
 
     /**
      * Process a disconnect message.
      * 
+     * @param exchange
      * @param disconnectMessage
      */
-    public void processDisconnectMessage(CamelKapuaMessage<KapuaDisconnectMessage> disconnectMessage)
+    public void processDisconnectMessage(Exchange exchange, CamelKapuaMessage<KapuaDisconnectMessage> disconnectMessage)
     {
         try {
             deviceLifeCycleService.death(disconnectMessage.getConnectionId(), disconnectMessage.getMessage());
@@ -125,6 +123,7 @@ public class DeviceMessageListener extends AbstractListener
             logger.error("Error while processing device disconnect life-cycle event", e);
             return;
         }
+        publishNotification(exchange, NOTIFICATION_DISCONNECT);
     }
 
     /**
@@ -148,9 +147,10 @@ public class DeviceMessageListener extends AbstractListener
     /**
      * Process a missing message.
      * 
+     * @param exchange
      * @param missingMessage
      */
-    public void processMissingMessage(CamelKapuaMessage<KapuaMissingMessage> missingMessage)
+    public void processMissingMessage(Exchange exchange, CamelKapuaMessage<KapuaMissingMessage> missingMessage)
     {
         try {
             deviceLifeCycleService.missing(missingMessage.getConnectionId(), missingMessage.getMessage());
@@ -161,6 +161,7 @@ public class DeviceMessageListener extends AbstractListener
             logger.error("Error while processing device missing life-cycle event", e);
             return;
         }
+        publishNotification(exchange, NOTIFICATION_MISSING);
     }
 
     /**
@@ -187,4 +188,60 @@ public class DeviceMessageListener extends AbstractListener
         metricDeviceUnmatchedMessage.inc();
     }
 
+    /**
+     * Process a lifecycle notification published by the broker itself (nothing to do, the notification is for the applications only)
+     * 
+     * @param exchange
+     * @param value
+     */
+    public void processNotificationMessage(Exchange exchange, Object value)
+    {
+        metricNotificationIgnored.inc();
+    }
+
+    /**
+     * Republish the original payload of the processed lifecycle message as a notification.<br>
+     * The notification is best effort: a failure is logged and does not fail the lifecycle message.
+     */
+    private void publishNotification(Exchange exchange, String notification)
+    {
+        if (!notificationEnabled) {
+            return;
+        }
+        String topic = notificationTopic(exchange.getIn().getHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC, String.class), notification);
+        Message original = exchange.getUnitOfWork() != null ? exchange.getUnitOfWork().getOriginalInMessage() : null;
+        byte[] payload = original != null ? original.getBody(byte[].class) : null;
+        if (topic == null || payload == null) {
+            metricNotificationError.inc();
+            logger.warn("Cannot publish the {} notification: topic or payload not available", notification);
+            return;
+        }
+        try {
+            // the MQTT subscriptions are bound to the virtual topics
+            JmsAssistantBatchProducer.getInstance().send(VIRTUAL_TOPIC_PREFIX + topic, payload);
+            metricNotificationSent.inc();
+        }
+        catch (Exception e) {
+            metricNotificationError.inc();
+            logger.warn("Cannot publish the {} notification on {}: {}", new Object[] { notification, topic, e.getMessage() });
+        }
+    }
+
+    /**
+     * Return the notification topic of a lifecycle message topic, replacing its last level
+     * (i.e. <code>$EDC.account.client.MQTT.BIRTH</code> to <code>$EDC.account.client.MQTT.CONNECT</code>)
+     * 
+     * @param lifeCycleTopic the lifecycle message topic (jms format)
+     * @param notification
+     * @return the notification topic or null if the lifecycle topic is not valid
+     */
+    static String notificationTopic(String lifeCycleTopic, String notification)
+    {
+        if (lifeCycleTopic == null) {
+            return null;
+        }
+        int index = lifeCycleTopic.lastIndexOf('.');
+        return index > 0 ? lifeCycleTopic.substring(0, index + 1) + notification : null;
+    }
+
 }
@@ -12,9 +12,19 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.listener;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.camel.Exchange;
 import org.apache.camel.spi.UriEndpoint;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetter;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterSession;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterStore;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,7 +32,9 @@ import com.codahale.metrics.Counter;
 
 @UriEndpoint(title = "error message processor", syntax = "bean:errorMessageListener", scheme = "bean")
 /**
- * Error message listener endpoint.
+ * Error message listener endpoint.<br>
+ * The failed messages are stored, with their headers, payload and failure cause, in the {@link DeadLetterStore} so they can be replayed later.
+ * The session header (which holds the access token) is not stored, see {@link DeadLetterSession}.
  * 
  * @since 1.0
  */
@@ -31,9 +43,13 @@ public class ErrorMessageListener extends AbstractListener
 
     private static final Logger s_logger = LoggerFactory.getLogger(ErrorMessageListener.class);
 
+    private static final String HEADER_JMS_MESSAGE_ID = "JMSMessageID";
+
     private Counter metricError;
     private Counter metricErrorLifeCycleMessage;
 
+    private final DeadLetterStore deadLetterStore = DeadLetterStore.getInstance();
+
     public ErrorMessageListener()
     {
         super("error");
@@ -52,6 +68,7 @@ public class ErrorMessageListener extends AbstractListener
     {
         metricError.inc();
         logError(exchange, message, "generic");
+        storeDeadLetter(exchange, "generic");
     }
 
     /**
@@ -65,6 +82,7 @@ public class ErrorMessageListener extends AbstractListener
     {
         metricErrorLifeCycleMessage.inc();
         logError(exchange, message, "LifeCycle");
+        storeDeadLetter(exchange, "LifeCycle");
     }
 
     /**
@@ -91,6 +109,53 @@ public class ErrorMessageListener extends AbstractListener
                                      t.getMessage() });
         s_logger.warn("Exception: ", t);
     }
+    private void storeDeadLetter(Exchange exchange, String serviceName)
+    {
+        if (!deadLetterStore.isEnabled()) {
+            return;
+        }
+
+        org.apache.camel.Message in = exchange.getIn();
+        // the id is kept by the replay, so a message failing again is stored with the same id
+        String id = in.getHeader(MessageConstants.HEADER_KAPUA_DEAD_LETTER_ID, String.class);
+        if (id == null) {
+            id = in.getHeader(HEADER_JMS_MESSAGE_ID, String.class);
+        }
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+        }
+
+        Object destination = in.getHeader(CamelConstants.JMS_HEADER_DESTINATION);
+        Object failureEndpoint = exchange.getProperty(CamelConstants.JMS_EXCHANGE_FAILURE_ENDPOINT);
+
+        // JMS and Camel headers are set again by the broker and by the route on replay, the session is stored by ids only
+        Map<String, Object> headers = new LinkedHashMap<>();
+        for (Entry<String, Object> header : in.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if (header.getValue() != null &&
+                !name.startsWith("JMS") &&
+                !name.startsWith("Camel") &&
+                !name.equals(Exchange.BREADCRUMB_ID) &&
+                !name.equals(MessageConstants.HEADER_KAPUA_DEAD_LETTER_ID) &&
+                !name.equals(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION) &&
+                !DeadLetterSession.isSessionHeader(name)) {
+                headers.put(name, header.getValue());
+            }
+        }
+        DeadLetterSession.store(in.getHeaders(), headers);
+
+        DeadLetter deadLetter = new DeadLetter(id,
+                                               System.currentTimeMillis(),
+                                               destination instanceof ActiveMQDestination ? ((ActiveMQDestination) destination).getQualifiedName() : null,
+                                               serviceName,
+                                               failureEndpoint != null ? failureEndpoint.toString() : null,
+                                               DeadLetter.toCause((Throwable) exchange.getProperty(CamelConstants.JMS_EXCHANGE_FAILURE_EXCEPTION)),
+                                               headers,
+                                               in.getBody(byte[].class));
+        DeadLetterStore.Outcome outcome = deadLetterStore.store(deadLetter);
+        s_logger.debug("Dead letter {} {}", id, outcome);
+    }
+
     private void logUnmatched(Exchange exchange, Object message, String serviceName)
 
     {
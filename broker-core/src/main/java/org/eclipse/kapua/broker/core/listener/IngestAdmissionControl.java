@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.listener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.component.jms.JmsMessage;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterSession;
+import org.eclipse.kapua.broker.core.message.CamelKapuaMessage;
+import org.eclipse.kapua.broker.core.message.CamelUtil;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.quota.AccountIngestQuota;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.metric.MetricLabels;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.message.KapuaPayload;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.DatastoreQuotaService;
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Data messages admission control.<br>
+ * Placed in the route right after the data message conversion, it enforces the per account message rate and byte rate quotas
+ * (see {@link DatastoreQuotaService#getIngestQuota(KapuaId)}) before the message reaches the storage.<br>
+ * The outcome is set in the {@link MessageConstants#HEADER_KAPUA_INGEST_ADMISSION} header: an over quota message is either shed
+ * or diverted to a slower queue, depending on the configured {@link OverQuotaPolicy}.<br>
+ * The slower queue is a persistent broker queue: a diverted message is acknowledged to the source queue only once the broker has stored
+ * it in the slower queue, so it is not lost on a broker restart.
+ *
+ * @since 1.0
+ */
+public class IngestAdmissionControl extends AbstractListener
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestAdmissionControl.class);
+
+    /**
+     * Admission outcome
+     */
+    public enum Admission
+    {
+        ADMITTED, DIVERTED, SHED
+    }
+
+    /**
+     * What to do with the over quota messages
+     */
+    public enum OverQuotaPolicy
+    {
+        SHED, DIVERT
+    }
+
+    private final DatastoreQuotaService datastoreQuotaService;
+
+    private final boolean         enabled;
+    private final int             burstSeconds;
+    private final long            planRefreshIntervalNanos;
+    private final OverQuotaPolicy overQuotaPolicy;
+    private final int             divertedMaxPending;
+
+    private final Map<KapuaId, AccountIngestQuota> quotas          = new ConcurrentHashMap<>();
+    private final AtomicInteger                    divertedPending = new AtomicInteger();
+
+    // metrics
+    private Counter metricAdmittedMessage;
+    private Counter metricDivertedMessage;
+    private Counter metricShedMessage;
+    private Counter metricPlanLoadError;
+
+    public IngestAdmissionControl()
+    {
+        this(KapuaLocator.getInstance().getService(DatastoreQuotaService.class));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param datastoreQuotaService the source of the account quotas
+     */
+    public IngestAdmissionControl(DatastoreQuotaService datastoreQuotaService)
+    {
+        super("admission");
+        this.datastoreQuotaService = datastoreQuotaService;
+
+        BrokerSetting setting = BrokerSetting.getInstance();
+        enabled = setting.getBoolean(BrokerSettingKey.INGEST_QUOTA_ENABLED, true);
+        burstSeconds = setting.getInt(BrokerSettingKey.INGEST_QUOTA_BURST_SECONDS, 2);
+        planRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(setting.getLong(BrokerSettingKey.INGEST_QUOTA_PLAN_REFRESH_INTERVAL, 60000L));
+        overQuotaPolicy = OverQuotaPolicy.valueOf(setting.getString(BrokerSettingKey.INGEST_QUOTA_OVER_QUOTA_POLICY, OverQuotaPolicy.DIVERT.name()));
+        divertedMaxPending = setting.getInt(BrokerSettingKey.INGEST_QUOTA_DIVERTED_MAX_PENDING, 1000);
+
+        metricAdmittedMessage = registerCounter("messages", "admitted", "count");
+        metricDivertedMessage = registerCounter("messages", "diverted", "count");
+        metricShedMessage = registerCounter("messages", "shed", "count");
+        metricPlanLoadError = registerCounter("plan", "error", "count");
+    }
+
+    /**
+     * Check the message against the quota of its account and set the outcome in the {@link MessageConstants#HEADER_KAPUA_INGEST_ADMISSION} header
+     *
+     * @param exchange
+     * @param message
+     */
+    public void admit(Exchange exchange, CamelKapuaMessage<?> message)
+    {
+        Admission admission = Admission.ADMITTED;
+        if (enabled) {
+            long now = System.nanoTime();
+            AccountIngestQuota quota = getQuota(message.getMessage().getScopeId(), now);
+            if (!quota.admit(getSize(exchange, message), now)) {
+                admission = overQuota();
+            }
+        }
+
+        if (admission == Admission.ADMITTED) {
+            metricAdmittedMessage.inc();
+        }
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION, admission.name());
+    }
+
+    /**
+     * Prepare a diverted message to be sent to the slower queue.<br>
+     * The body is set back to the original (not yet converted) message and the session and connection headers, which cannot be stored by
+     * the broker, are replaced by their ids as for the dead letters (see {@link DeadLetterSession}). The original queued time is kept in the
+     * {@link MessageConstants#HEADER_KAPUA_DIVERTED_QUEUED_ON} header, the topic in the {@link MessageConstants#PROPERTY_ORIGINAL_TOPIC} header.
+     *
+     * @param exchange
+     * @param value
+     * @throws KapuaException if the message topic cannot be read
+     */
+    public void divert(Exchange exchange, Object value)
+        throws KapuaException
+    {
+        Message in = exchange.getIn();
+        if (in.getHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC) == null) {
+            try {
+                in.setHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC, CamelUtil.getTopic(in));
+            }
+            catch (JMSException e) {
+                throw KapuaException.internalError(e, "Cannot read the topic of the diverted message");
+            }
+        }
+        Message original = exchange.getUnitOfWork() != null ? exchange.getUnitOfWork().getOriginalInMessage() : null;
+        if (original != null) {
+            in.setBody(original.getBody(byte[].class));
+        }
+        Long queuedOn = in.getHeader(CamelConstants.JMS_HEADER_TIMESTAMP, Long.class);
+        if (queuedOn != null) {
+            in.setHeader(MessageConstants.HEADER_KAPUA_DIVERTED_QUEUED_ON, queuedOn);
+        }
+        DeadLetterSession.store(in.getHeaders(), in.getHeaders());
+        in.removeHeader(MessageConstants.HEADER_KAPUA_SESSION);
+        in.removeHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID);
+        in.removeHeader(MessageConstants.HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL);
+        in.removeHeader(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION);
+    }
+
+    /**
+     * Signal that a diverted message has been taken from the slower queue, and set back its original queued time.<br>
+     * Must be the first step of the route consuming the diverted messages (before the session is bound).
+     *
+     * @param exchange
+     * @param value
+     */
+    public void dequeueDiverted(Exchange exchange, Object value)
+    {
+        // the pending count restarts from zero with the broker, while the queue may still hold messages
+        divertedPending.updateAndGet(pending -> pending > 0 ? pending - 1 : 0);
+        Long queuedOn = exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_DIVERTED_QUEUED_ON, Long.class);
+        if (queuedOn != null) {
+            exchange.getIn().setHeader(CamelConstants.JMS_HEADER_TIMESTAMP, queuedOn);
+        }
+    }
+
+    private Admission overQuota()
+    {
+        if (overQuotaPolicy == OverQuotaPolicy.DIVERT) {
+            // bound the slower queue: once full, the over quota messages are shed
+            if (divertedPending.incrementAndGet() <= divertedMaxPending) {
+                metricDivertedMessage.inc();
+                return Admission.DIVERTED;
+            }
+            divertedPending.decrementAndGet();
+        }
+        metricShedMessage.inc();
+        return Admission.SHED;
+    }
+
+    private AccountIngestQuota getQuota(KapuaId scopeId, long now)
+    {
+        AccountIngestQuota quota = quotas.get(scopeId);
+        if (quota == null) {
+            quota = quotas.computeIfAbsent(scopeId, id -> {
+                String account = MetricLabels.label("account", id.toCompactId());
+                AccountIngestQuota newQuota = new AccountIngestQuota(id,
+                                                                     registerCounter(account, "messages", "admitted", "count"),
+                                                                     registerCounter(account, "bytes", "admitted", "count"),
+                                                                     registerCounter(account, "messages", "throttled", "count"));
+                loadQuota(newQuota, now);
+                return newQuota;
+            });
+        }
+        else if (quota.isExpired(now, planRefreshIntervalNanos) && quota.startLoad()) {
+            try {
+                loadQuota(quota, now);
+            }
+            finally {
+                quota.endLoad();
+            }
+        }
+        return quota;
+    }
+
+    private void loadQuota(AccountIngestQuota quota, long now)
+    {
+        try {
+            KapuaId scopeId = quota.getScopeId();
+            IngestQuota ingestQuota = KapuaSecurityUtils.doPriviledge(() -> datastoreQuotaService.getIngestQuota(scopeId));
+            quota.update(ingestQuota.getMessageRate(), ingestQuota.getByteRate(), burstSeconds, now);
+        }
+        catch (Exception e) {
+            // keep the current limits (no limit at the first load) until the next refresh
+            metricPlanLoadError.inc();
+            logger.warn("Cannot load the ingest quota of account {}: {}", quota.getScopeId(), e.getMessage());
+            quota.postpone(now);
+        }
+    }
+
+    private static long getSize(Exchange exchange, CamelKapuaMessage<?> message)
+    {
+        // the size on the wire, if the original message is still available
+        if (exchange.getIn() instanceof JmsMessage && ((JmsMessage) exchange.getIn()).getJmsMessage() instanceof BytesMessage) {
+            try {
+                return ((BytesMessage) ((JmsMessage) exchange.getIn()).getJmsMessage()).getBodyLength();
+            }
+            catch (JMSException e) {
+                logger.debug("Cannot read the message length: {}", e.getMessage());
+            }
+        }
+        KapuaPayload payload = message.getMessage().getPayload();
+        return payload != null && payload.getBody() != null ? payload.getBody().length : 0;
+    }
+}
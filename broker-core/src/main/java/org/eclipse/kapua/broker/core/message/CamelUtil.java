@@ -18,7 +18,6 @@ import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.camel.Message;
 import org.eclipse.kapua.broker.core.listener.CamelConstants;
-import org.eclipse.kapua.broker.core.plugin.AclConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +48,7 @@ public class CamelUtil
             ActiveMQDestination destination = message.getHeader(CamelConstants.JMS_HEADER_DESTINATION, ActiveMQDestination.class);
             if (destination instanceof ActiveMQTopic) {
                 ActiveMQTopic destinationTopic = (ActiveMQTopic) destination;
-                return destinationTopic.getTopicName().substring(AclConstants.VT_TOPIC_PREFIX.length());
+                return JmsUtil.getVirtualTopic(destinationTopic.getTopicName());
             }
             else {
                 logger.warn("jmsMessage destination is not a Topic or Queue: {}", destination.toString());
@@ -26,6 +26,7 @@ import org.eclipse.kapua.broker.core.converter.AbstractKapuaConverter;
 import org.eclipse.kapua.broker.core.plugin.AclConstants;
 import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor;
 import org.eclipse.kapua.broker.core.plugin.ConnectorDescriptor.MESSAGE_TYPE;
+import org.eclipse.kapua.commons.util.TopicTokenizer;
 import org.eclipse.kapua.message.KapuaMessage;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.DeviceMessage;
@@ -49,6 +50,9 @@ public class JmsUtil
     public static final Logger logger = LoggerFactory.getLogger(JmsUtil.class);
 
     @SuppressWarnings("rawtypes")
+    // virtual topic destinations are parsed with the JMS level separator
+    private final static TopicTokenizer                                       topicTokenizer       = TopicTokenizer.getInstance('.');
+
     private final static Map<String, Translator<JmsMessage, DeviceMessage>>   translatorFromJmsMap = new HashMap<String, Translator<JmsMessage, DeviceMessage>>();
     @SuppressWarnings("rawtypes")
     private final static Map<String, Translator<DeviceMessage, KapuaMessage>> translatorToKapuaMap = new HashMap<String, Translator<DeviceMessage, KapuaMessage>>();
@@ -58,6 +62,18 @@ public class JmsUtil
     @SuppressWarnings("rawtypes")
     private final static Map<String, Translator<DeviceMessage, JmsMessage>>   translatorToJmsMap     = new HashMap<String, Translator<DeviceMessage, JmsMessage>>();
 
+    /**
+     * Return the topic of the virtual topic destination name (the destination name without the virtual topic prefix).<br>
+     * The topics are taken from the shared {@link TopicTokenizer} table so the same topic is not copied again for every message.
+     * 
+     * @param destinationName
+     * @return
+     */
+    public static String getVirtualTopic(String destinationName)
+    {
+        return topicTokenizer.parse(destinationName, AclConstants.VT_TOPIC_PREFIX.length()).getTopic();
+    }
+
     /**
      * Return the topic for the message's destination
      * 
@@ -69,7 +85,7 @@ public class JmsUtil
     {
         String jmsTopic = null;
         if (jmsMessage.getDestination().isTopic()) {
-            jmsTopic = ((Topic) jmsMessage.getJMSDestination()).getTopicName().substring(AclConstants.VT_TOPIC_PREFIX.length());
+            jmsTopic = getVirtualTopic(((Topic) jmsMessage.getJMSDestination()).getTopicName());
         }
         else if (jmsMessage.getDestination().isQueue()) {
             jmsTopic = jmsMessage.getStringProperty(MessageConstants.PROPERTY_ORIGINAL_TOPIC);
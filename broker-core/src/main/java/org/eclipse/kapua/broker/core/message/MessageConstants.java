@@ -35,5 +35,22 @@ public class MessageConstants
     public static final String HEADER_KAPUA_CONNECTION_ID             = "KAPUA_CONNECTION_ID";
     public static final String HEADER_KAPUA_CONNECTOR_DEVICE_PROTOCOL = "KAPUA_DEVICE_PROTOCOL";
     public static final String HEADER_KAPUA_SESSION                   = "KAPUA_SESSION";
+    public static final String HEADER_KAPUA_INGEST_ADMISSION          = "KAPUA_INGEST_ADMISSION";
+    public static final String HEADER_KAPUA_DEAD_LETTER_ID            = "KAPUA_DEAD_LETTER_ID";
+    public static final String HEADER_KAPUA_DIVERTED_QUEUED_ON        = "KAPUA_DIVERTED_QUEUED_ON";
+
+    // identity of a dead letter (the session is not stored, it is bound again from these headers on replay)
+    public static final String HEADER_KAPUA_DEAD_LETTER_SCOPE_ID        = "KAPUA_DEAD_LETTER_SCOPE_ID";
+    public static final String HEADER_KAPUA_DEAD_LETTER_RUN_AS_SCOPE_ID = "KAPUA_DEAD_LETTER_RUN_AS_SCOPE_ID";
+    public static final String HEADER_KAPUA_DEAD_LETTER_USER_ID         = "KAPUA_DEAD_LETTER_USER_ID";
+    public static final String HEADER_KAPUA_DEAD_LETTER_USERNAME        = "KAPUA_DEAD_LETTER_USERNAME";
+    public static final String HEADER_KAPUA_DEAD_LETTER_CONNECTION_ID   = "KAPUA_DEAD_LETTER_CONNECTION_ID";
+    public static final String HEADER_KAPUA_DEAD_LETTER_CONNECTOR       = "KAPUA_DEAD_LETTER_CONNECTOR";
+
+    // dead letter queue message properties
+    public static final String PROPERTY_DEAD_LETTER_FAILED_ON   = "deadLetterFailedOn";
+    public static final String PROPERTY_DEAD_LETTER_SERVICE     = "deadLetterService";
+    public static final String PROPERTY_DEAD_LETTER_DESTINATION = "deadLetterDestination";
+    public static final String PROPERTY_DEAD_LETTER_ENDPOINT    = "deadLetterEndpoint";
 
 }
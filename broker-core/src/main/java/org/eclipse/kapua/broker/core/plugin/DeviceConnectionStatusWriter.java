@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionFactory;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * Background writer of the device connection status changes.<br>
+ * The status changes are queued by device connection id: a change of a device connection already waiting replaces the older one, so only the
+ * last status of a device connecting and disconnecting quickly is written. The queued changes are written in batches by
+ * {@link DeviceConnectionService#updateStatus(List)}.<br>
+ * <br>
+ * The queue is bounded: if it is full the caller waits for a while and then writes its change directly. A batch and a direct write never run
+ * concurrently and a direct write drops the queued change of the same device connection, so an older status never overwrites a newer one.
+ * A failed batch is queued again (unless a newer change arrived meanwhile) and retried.<br>
+ * The change of a device connection not found (i.e. deleted meanwhile while its id was cached) is written to the device connection of the
+ * same client id, created if missing.
+ *
+ * @since 1.0
+ */
+public class DeviceConnectionStatusWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeviceConnectionStatusWriter.class);
+
+    private static final String METRIC_MODULE_NAME    = "security";
+    private static final String METRIC_COMPONENT_NAME = "connection_writer";
+
+    private final DeviceConnectionService        deviceConnectionService;
+    private final DeviceConnectionFactory        deviceConnectionFactory;
+    private final Consumer<DeviceConnection>     idChangeHandler;
+
+    private final boolean                        enabled;
+    private final int                            maxPending;
+    private final int                            batchSize;
+    private final long                           batchDelay;
+    private final long                           offerTimeout;
+    private final long                           retryDelay;
+    private final long                           stopTimeout;
+
+    // guarded by this
+    private final Map<KapuaId, DeviceConnection> pending = new LinkedHashMap<>();
+    private boolean                              running;
+    private Thread                               thread;
+    // batches and direct writes are serialized on it (acquired before this)
+    private final Object                         writeLock = new Object();
+
+    private final Counter                        metricQueued;
+    private final Counter                        metricCoalesced;
+    private final Counter                        metricDirect;
+    private final Counter                        metricWritten;
+    private final Counter                        metricNotFound;
+    private final Counter                        metricFailed;
+    private final Timer                          metricBatchTime;
+
+    /**
+     * Constructor
+     *
+     * @param deviceConnectionService
+     * @param deviceConnectionFactory
+     * @param idChangeHandler called with the change of a device connection not found, once written to the device connection of the same client id
+     *            (the id of the change is the new one)
+     */
+    public DeviceConnectionStatusWriter(DeviceConnectionService deviceConnectionService,
+                                        DeviceConnectionFactory deviceConnectionFactory,
+                                        Consumer<DeviceConnection> idChangeHandler)
+    {
+        this(deviceConnectionService,
+             deviceConnectionFactory,
+             idChangeHandler,
+             BrokerSetting.getInstance().getBoolean(BrokerSettingKey.CONNECTION_WRITER_ENABLED, true),
+             BrokerSetting.getInstance().getInt(BrokerSettingKey.CONNECTION_WRITER_MAX_PENDING, 10000),
+             BrokerSetting.getInstance().getInt(BrokerSettingKey.CONNECTION_WRITER_BATCH_SIZE, 500),
+             BrokerSetting.getInstance().getLong(BrokerSettingKey.CONNECTION_WRITER_BATCH_DELAY, 100L),
+             BrokerSetting.getInstance().getLong(BrokerSettingKey.CONNECTION_WRITER_OFFER_TIMEOUT, 1000L),
+             BrokerSetting.getInstance().getLong(BrokerSettingKey.CONNECTION_WRITER_RETRY_DELAY, 1000L),
+             BrokerSetting.getInstance().getLong(BrokerSettingKey.CONNECTION_WRITER_STOP_TIMEOUT, 10000L));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param deviceConnectionService
+     * @param deviceConnectionFactory
+     * @param idChangeHandler called with the change of a device connection not found, once written to the device connection of the same client id
+     *            (the id of the change is the new one)
+     * @param enabled if false the changes are always written directly
+     * @param maxPending maximum number of changes queued
+     * @param batchSize maximum number of changes written by a batch
+     * @param batchDelay time (milliseconds) the changes are left to accumulate before a batch
+     * @param offerTimeout time (milliseconds) a change waits for the queue to have room before being written directly
+     * @param retryDelay time (milliseconds) before a failed batch is retried
+     * @param stopTimeout time (milliseconds) the pending changes are waited for on stop
+     */
+    public DeviceConnectionStatusWriter(DeviceConnectionService deviceConnectionService,
+                                        DeviceConnectionFactory deviceConnectionFactory,
+                                        Consumer<DeviceConnection> idChangeHandler,
+                                        boolean enabled,
+                                        int maxPending,
+                                        int batchSize,
+                                        long batchDelay,
+                                        long offerTimeout,
+                                        long retryDelay,
+                                        long stopTimeout)
+    {
+        this.deviceConnectionService = deviceConnectionService;
+        this.deviceConnectionFactory = deviceConnectionFactory;
+        this.idChangeHandler = idChangeHandler;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.offerTimeout = offerTimeout;
+        this.retryDelay = retryDelay;
+        this.stopTimeout = stopTimeout;
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricQueued = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "queued", "count");
+        metricCoalesced = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "coalesced", "count");
+        metricDirect = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "direct", "count");
+        metricWritten = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "written", "count");
+        metricNotFound = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "not_found", "count");
+        metricFailed = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "failed", "count");
+        metricBatchTime = metricsService.getTimer(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "batch", "time", "s");
+        try {
+            metricsService.registerGauge((Gauge<Integer>) () -> getPendingCount(), METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "pending");
+        }
+        catch (KapuaException e) {
+            // the writer has already been created once (i.e. broker restarted in the same JVM)
+            logger.debug("Cannot register gauge: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Start the writer thread
+     */
+    public synchronized void start()
+    {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "kapua-device-connection-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the writer thread, waiting for the pending changes to be written (up to the stop timeout)
+     */
+    public void stop()
+    {
+        Thread writerThread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            writerThread = thread;
+            thread = null;
+            notifyAll();
+        }
+        try {
+            writerThread.join(stopTimeout);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = getPendingCount();
+        if (left > 0) {
+            logger.warn("Device connection writer stopped with {} status changes not written", left);
+        }
+    }
+
+    /**
+     * Write the device connection status change.<br>
+     * The device connection must have id, scope id, client id, status, user id, client ip, server ip and protocol set.
+     *
+     * @param deviceConnection
+     * @throws KapuaException if the change is written directly and the write fails
+     */
+    public void write(DeviceConnection deviceConnection)
+        throws KapuaException
+    {
+        if (offer(deviceConnection)) {
+            return;
+        }
+
+        metricDirect.inc();
+        synchronized (writeLock) {
+            synchronized (this) {
+                pending.remove(deviceConnection.getId());
+            }
+            writeBatch(Collections.singletonList(deviceConnection));
+        }
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    private synchronized boolean offer(DeviceConnection deviceConnection)
+    {
+        if (!running) {
+            return false;
+        }
+        if (pending.containsKey(deviceConnection.getId())) {
+            pending.put(deviceConnection.getId(), deviceConnection);
+            metricCoalesced.inc();
+            return true;
+        }
+
+        long deadline = System.currentTimeMillis() + offerTimeout;
+        long wait;
+        while (running && pending.size() >= maxPending && (wait = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // a change queued meanwhile for the same device connection is replaced anyway
+        if (!running || (pending.size() >= maxPending && !pending.containsKey(deviceConnection.getId()))) {
+            return false;
+        }
+        if (pending.put(deviceConnection.getId(), deviceConnection) != null) {
+            metricCoalesced.inc();
+        }
+        else {
+            metricQueued.inc();
+        }
+        notifyAll();
+        return true;
+    }
+
+    private void run()
+    {
+        for (;;) {
+            synchronized (this) {
+                while (running && pending.isEmpty()) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        // stop() is the only way out
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                // let the changes accumulate, unless a full batch is ready or the writer is stopping (every queued change notifies)
+                long deadline = System.currentTimeMillis() + batchDelay;
+                long wait;
+                while (running && pending.size() < batchSize && (wait = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        wait(wait);
+                    }
+                    catch (InterruptedException e) {
+                        // go on writing
+                        break;
+                    }
+                }
+            }
+
+            synchronized (writeLock) {
+                List<DeviceConnection> batch = drain();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                try {
+                    writeBatch(batch);
+                }
+                catch (Exception e) {
+                    metricFailed.inc(batch.size());
+                    logger.warn("Cannot write {} device connection status changes, retrying in {} ms: {}", new Object[] { batch.size(), retryDelay, e.getMessage() });
+                    requeue(batch);
+                    if (!pause()) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized List<DeviceConnection> drain()
+    {
+        List<DeviceConnection> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<DeviceConnection> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        notifyAll();
+        return batch;
+    }
+
+    private synchronized void requeue(List<DeviceConnection> batch)
+    {
+        for (DeviceConnection deviceConnection : batch) {
+            // a newer change queued meanwhile wins
+            pending.putIfAbsent(deviceConnection.getId(), deviceConnection);
+        }
+    }
+
+    /**
+     * Wait for the retry delay
+     *
+     * @return false if the writer has been stopped meanwhile (the pending changes are left not written)
+     */
+    private synchronized boolean pause()
+    {
+        if (running) {
+            try {
+                wait(retryDelay);
+            }
+            catch (InterruptedException e) {
+                // check the running flag
+            }
+        }
+        return running;
+    }
+
+    private void writeBatch(List<DeviceConnection> batch)
+        throws KapuaException
+    {
+        Context context = metricBatchTime.time();
+        try {
+            List<DeviceConnection> updated = doPrivileged(() -> deviceConnectionService.updateStatus(batch));
+            metricWritten.inc(updated.size());
+            if (updated.size() < batch.size()) {
+                Set<KapuaId> updatedIds = new HashSet<>();
+                for (DeviceConnection deviceConnection : updated) {
+                    updatedIds.add(deviceConnection.getId());
+                }
+                for (DeviceConnection deviceConnection : batch) {
+                    if (!updatedIds.contains(deviceConnection.getId())) {
+                        writeNotFound(deviceConnection);
+                    }
+                }
+            }
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Write the change of a device connection not found to the device connection of the same client id, creating it if missing
+     *
+     * @param deviceConnection
+     * @throws KapuaException
+     */
+    private void writeNotFound(DeviceConnection deviceConnection)
+        throws KapuaException
+    {
+        metricNotFound.inc();
+        KapuaId scopeId = deviceConnection.getScopeId();
+        DeviceConnection storedDeviceConnection = doPrivileged(() -> deviceConnectionService.findByClientId(scopeId, deviceConnection.getClientId()));
+        boolean created = storedDeviceConnection == null;
+        if (created) {
+            DeviceConnectionCreator deviceConnectionCreator = deviceConnectionFactory.newCreator(scopeId);
+            deviceConnectionCreator.setClientId(deviceConnection.getClientId());
+            deviceConnectionCreator.setClientIp(deviceConnection.getClientIp());
+            deviceConnectionCreator.setServerIp(deviceConnection.getServerIp());
+            deviceConnectionCreator.setProtocol(deviceConnection.getProtocol());
+            deviceConnectionCreator.setUserId(deviceConnection.getUserId());
+            storedDeviceConnection = doPrivileged(() -> deviceConnectionService.create(deviceConnectionCreator));
+        }
+        logger.info("Device connection {} of client id {} not found, writing its status to device connection {}",
+                    new Object[] { deviceConnection.getId(), deviceConnection.getClientId(), storedDeviceConnection.getId() });
+
+        DeviceConnection newDeviceConnection = deviceConnectionFactory.newDeviceConnection(scopeId);
+        newDeviceConnection.setId(storedDeviceConnection.getId());
+        newDeviceConnection.setClientId(deviceConnection.getClientId());
+        newDeviceConnection.setStatus(deviceConnection.getStatus());
+        newDeviceConnection.setUserId(deviceConnection.getUserId());
+        newDeviceConnection.setClientIp(deviceConnection.getClientIp());
+        newDeviceConnection.setServerIp(deviceConnection.getServerIp());
+        newDeviceConnection.setProtocol(deviceConnection.getProtocol());
+        // a new device connection is created connected
+        if (!created || deviceConnection.getStatus() != DeviceConnectionStatus.CONNECTED) {
+            doPrivileged(() -> deviceConnectionService.updateStatus(Collections.singletonList(newDeviceConnection)));
+        }
+        metricWritten.inc();
+        idChangeHandler.accept(newDeviceConnection);
+    }
+
+    private static <T> T doPrivileged(Callable<T> action)
+        throws KapuaException
+    {
+        try {
+            return KapuaSecurityUtils.doPriviledge(action);
+        }
+        catch (KapuaException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw KapuaException.internalError(e);
+        }
+    }
+}
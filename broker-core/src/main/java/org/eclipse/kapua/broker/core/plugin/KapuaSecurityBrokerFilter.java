@@ -12,13 +12,14 @@
  *******************************************************************************/
 package org.eclipse.kapua.broker.core.plugin;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.security.auth.login.CredentialException;
@@ -45,7 +46,11 @@ import org.apache.shiro.util.ThreadContext;
 import org.eclipse.kapua.KapuaErrorCode;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaIllegalAccessException;
+import org.eclipse.kapua.broker.core.message.JmsUtil;
 import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.cache.LocalCache;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.commons.security.KapuaSession;
 import org.eclipse.kapua.commons.setting.system.SystemSetting;
@@ -102,6 +107,11 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
 
     private final static Map<String, ConnectionId> connectionMap = new ConcurrentHashMap<String, ConnectionId>();
 
+    // device connection id by full client id, so the reconnect of a known device does not read the database
+    private LocalCache<String, KapuaId>  deviceConnectionIdCache;
+    private DeviceConnectionStatusWriter deviceConnectionStatusWriter;
+    private String                       serverIp;
+
     // login
     private Counter metricLoginSuccess;
     private Counter metricLoginFailure;
@@ -152,6 +162,26 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
 
         connectorsDescriptorMap = ConnectorDescriptorLoader.loadConnectorDescriptors();
 
+        BrokerSetting setting = BrokerSetting.getInstance();
+        deviceConnectionIdCache = new LocalCache<>(setting.getInt(BrokerSettingKey.CONNECTION_ID_CACHE_SIZE, 100000),
+                                                   setting.getInt(BrokerSettingKey.CONNECTION_ID_CACHE_EXPIRE_AFTER, 3600),
+                                                   null);
+        deviceConnectionStatusWriter = new DeviceConnectionStatusWriter(deviceConnectionService,
+                                                                        deviceConnectionFactory,
+                                                                        deviceConnection -> deviceConnectionIdCache.put(getFullClientId(deviceConnection.getScopeId(),
+                                                                                                                                        deviceConnection.getClientId()),
+                                                                                                                        deviceConnection.getId()));
+        serverIp = setting.getString(BrokerSettingKey.SERVER_IP, null);
+        if (serverIp == null || serverIp.isEmpty()) {
+            try {
+                serverIp = InetAddress.getLocalHost().getHostAddress();
+            }
+            catch (UnknownHostException e) {
+                logger.warn("Cannot resolve the server ip, the device connections will have none: {}", e.getMessage());
+                serverIp = null;
+            }
+        }
+
         // login
         metricLoginSuccess = metricsService.getCounter("security", "login", "success", "count");
         metricLoginFailure = metricsService.getCounter("security", "login", "failure", "count");
@@ -195,6 +225,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
         throws Exception
     {
         super.start();
+        deviceConnectionStatusWriter.start();
     }
 
     @Override
@@ -202,6 +233,8 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
         throws Exception
     {
         logger.info(">>> Security broker filter: calling stop...");
+        // write the pending device connection status changes while the services are still available
+        deviceConnectionStatusWriter.stop();
         super.stop();
     }
 
@@ -350,13 +383,13 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
             // long accountId = kapuaSession.getSessionAccountId();
 
             // multiple account stealing link fix
-            String fullClientId = MessageFormat.format(AclConstants.MULTI_ACCOUNT_CLIENT_ID, scopeId.getId().longValue(), clientId);
+            String fullClientId = getFullClientId(scopeId, clientId);
 
             KapuaPrincipal principal = new KapuaPrincipalImpl(accessToken,
                                                               username,
                                                               clientId,
                                                               clientIp);
-            DeviceConnection deviceConnection = null;
+            KapuaId deviceConnectionId = null;
             // 3) check authorization
             DefaultAuthorizationMap authMap = null;
             if (isAdminUser(username)) {
@@ -388,7 +421,11 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
 
                 // 4) find device
                 Context loginFindClientIdTimeContext = metricLoginFindClientIdTime.time();
-                deviceConnection = deviceConnectionService.findByClientId(scopeId, clientId);
+                deviceConnectionId = deviceConnectionIdCache.get(fullClientId);
+                DeviceConnection deviceConnection = null;
+                if (deviceConnectionId == null) {
+                    deviceConnection = deviceConnectionService.findByClientId(scopeId, clientId);
+                }
                 loginFindClientIdTimeContext.stop();
 
                 Context loginFindDevTimeContext = metricLoginFindDevTime.time();
@@ -398,22 +435,23 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
                 boolean stealingLinkDetected = (previousConnectionId != null);
                 // Update map for stealing link detection on disconnect
                 connectionMap.put(fullClientId, info.getConnectionId());
-                if (deviceConnection == null) {
+                if (deviceConnectionId == null && deviceConnection == null) {
                     DeviceConnectionCreator deviceConnectionCreator = deviceConnectionFactory.newCreator(scopeId);
                     deviceConnectionCreator.setClientId(clientId);
                     deviceConnectionCreator.setClientIp(clientIp);
                     deviceConnectionCreator.setProtocol("MQTT");
-                    deviceConnectionCreator.setServerIp(null);// TODO to be filled with the proper value
+                    deviceConnectionCreator.setServerIp(serverIp);
                     deviceConnectionCreator.setUserId(userId);
                     deviceConnection = deviceConnectionService.create(deviceConnectionCreator);
+                    deviceConnectionId = deviceConnection.getId();
+                    deviceConnectionIdCache.put(fullClientId, deviceConnectionId);
                 }
                 else {
-                    deviceConnection.setClientIp(clientIp);
-                    deviceConnection.setProtocol("MQTT");
-                    deviceConnection.setServerIp(null);// TODO to be filled with the proper value
-                    deviceConnection.setUserId(userId);
-                    deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
-                    deviceConnectionService.update(deviceConnection);
+                    if (deviceConnectionId == null) {
+                        deviceConnectionId = deviceConnection.getId();
+                        deviceConnectionIdCache.put(fullClientId, deviceConnectionId);
+                    }
+                    deviceConnectionStatusWriter.write(newDeviceConnectionStatus(scopeId, deviceConnectionId, clientId, DeviceConnectionStatus.CONNECTED, userId, clientIp));
                     // TODO implement the banned status
                     // if (DeviceStatus.DISABLED.equals(device.getStatus())) {
                     // throw new KapuaIllegalAccessException("clientId - This client ID is disabled and cannot connect");
@@ -440,7 +478,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
             ConnectorDescriptor connectorDescriptor = connectorsDescriptorMap.get((((TransportConnector) context.getConnector()).getName()));
             KapuaSecurityContext securityCtx = new KapuaSecurityContext(principal,
                                                                         authMap,
-                                                                        (deviceConnection != null ? deviceConnection.getId() : null),
+                                                                        deviceConnectionId,
                                                                         connectionId,
                                                                         connectorDescriptor);
             context.setSecurityContext(securityCtx);
@@ -543,35 +581,24 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
                                     new Object[] { clientId, accountId, connectionId, info.getConnectionId(), info.getClientIp() });
                     }
                     else {
-                        DeviceConnection deviceConnection = null;
-                        try {
-                            deviceConnection = KapuaSecurityUtils.doPriviledge(new Callable<DeviceConnection>() {
-
-                                @Override
-                                public DeviceConnection call()
-                                    throws Exception
-                                {
-                                    return deviceConnectionService.findByClientId(scopeId, clientId);
-                                }
-                            });
-                        }
-                        catch (Exception e) {
-                            throw new ShiroException("Error while looking for device connection on updating the device!", e);
-                        }
-                        // the device connection must be not null
-                        // update device connection
-                        final DeviceConnection deviceConnectionToUpdate = deviceConnection;
-                        if (error == null) {
-                            deviceConnectionToUpdate.setStatus(DeviceConnectionStatus.DISCONNECTED);
-                        }
-                        else {
-                            deviceConnectionToUpdate.setStatus(DeviceConnectionStatus.MISSING);
+                        // the device connection id was set on connect
+                        KapuaId deviceConnectionId = kapuaSecurityContext.getConnectionId();
+                        if (deviceConnectionId == null) {
+                            try {
+                                DeviceConnection deviceConnection = KapuaSecurityUtils.doPriviledge(() -> deviceConnectionService.findByClientId(scopeId, clientId));
+                                deviceConnectionId = deviceConnection.getId();
+                            }
+                            catch (Exception e) {
+                                throw new ShiroException("Error while looking for device connection on updating the device!", e);
+                            }
                         }
                         try {
-                            KapuaSecurityUtils.doPriviledge(() -> {
-                                deviceConnectionService.update(deviceConnectionToUpdate);
-                                return null;
-                            });
+                            deviceConnectionStatusWriter.write(newDeviceConnectionStatus(scopeId,
+                                                                                         deviceConnectionId,
+                                                                                         clientId,
+                                                                                         error == null ? DeviceConnectionStatus.DISCONNECTED : DeviceConnectionStatus.MISSING,
+                                                                                         kapuaPrincipal.getUserId(),
+                                                                                         kapuaPrincipal.getClientIp()));
                         }
                         catch (Exception e) {
                             throw new ShiroException("Error while updating the device connection status!", e);
@@ -599,6 +626,24 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
         context.setSecurityContext(null);
     }
 
+    private static String getFullClientId(KapuaId scopeId, String clientId)
+    {
+        return MessageFormat.format(AclConstants.MULTI_ACCOUNT_CLIENT_ID, scopeId.getId().longValue(), clientId);
+    }
+
+    private DeviceConnection newDeviceConnectionStatus(KapuaId scopeId, KapuaId deviceConnectionId, String clientId, DeviceConnectionStatus status, KapuaId userId, String clientIp)
+    {
+        DeviceConnection deviceConnection = deviceConnectionFactory.newDeviceConnection(scopeId);
+        deviceConnection.setId(deviceConnectionId);
+        deviceConnection.setClientId(clientId);
+        deviceConnection.setStatus(status);
+        deviceConnection.setUserId(userId);
+        deviceConnection.setClientIp(clientIp);
+        deviceConnection.setServerIp(serverIp);
+        deviceConnection.setProtocol("MQTT");
+        return deviceConnection;
+    }
+
     // ------------------------------------------------------------------
     //
     // Destinations
@@ -663,7 +708,7 @@ public class KapuaSecurityBrokerFilter extends BrokerFilter
         ActiveMQDestination destination = messageSend.getDestination();
         if (destination instanceof ActiveMQTopic) {
             ActiveMQTopic destinationTopic = (ActiveMQTopic) destination;
-            messageSend.setProperty(MessageConstants.PROPERTY_ORIGINAL_TOPIC, destinationTopic.getTopicName().substring(AclConstants.VT_TOPIC_PREFIX.length()));
+            messageSend.setProperty(MessageConstants.PROPERTY_ORIGINAL_TOPIC, JmsUtil.getVirtualTopic(destinationTopic.getTopicName()));
         }
         metricPublishAllowedMessages.inc();
         super.send(producerExchange, messageSend);
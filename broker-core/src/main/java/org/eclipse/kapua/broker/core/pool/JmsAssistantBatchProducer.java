@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+
+import org.eclipse.kapua.broker.core.pool.JmsAssistantProducerPool.DESTINATIONS;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * Batching producer for the messages published by the broker itself (notification and lifecycle messages).<br>
+ * The messages are queued and sent by a single thread on a transacted session, committing every batch size messages (or every batch delay
+ * milliseconds), so the broker persists and dispatches them per batch instead of per message.<br>
+ * If the batching is disabled, or the queue is full, the message is sent directly by a producer of the
+ * {@link JmsAssistantProducerPool} ({@link DESTINATIONS#NO_DESTINATION}).<br>
+ * <br>
+ * The send is best effort (as the asynchronous send of the pooled producers): a batch failing twice is dropped.
+ *
+ * @since 1.0
+ */
+public class JmsAssistantBatchProducer
+{
+    private static Logger s_logger = LoggerFactory.getLogger(JmsAssistantBatchProducer.class);
+
+    private static final String METRIC_MODULE_NAME    = "producer_pool";
+    private static final String METRIC_COMPONENT_NAME = "batch";
+
+    private static final JmsAssistantBatchProducer instance = new JmsAssistantBatchProducer();
+
+    private final boolean                      enabled;
+    private final int                          batchSize;
+    private final long                         batchDelay;
+    private final BlockingQueue<PendingMessage> queue;
+
+    // guarded by this
+    private Thread                             thread;
+    private volatile boolean                   running;
+
+    // used by the sender thread only
+    private JmsAssistantProducerWrapper        producer;
+
+    private final Counter                      metricSent;
+    private final Counter                      metricDirect;
+    private final Counter                      metricDropped;
+    private final Histogram                    metricBatchSize;
+    private final Timer                        metricBatchTime;
+
+    private JmsAssistantBatchProducer()
+    {
+        BrokerSetting setting = BrokerSetting.getInstance();
+        enabled = setting.getBoolean(BrokerSettingKey.BATCH_PRODUCER_ENABLED, true);
+        batchSize = setting.getInt(BrokerSettingKey.BATCH_PRODUCER_BATCH_SIZE, 100);
+        batchDelay = setting.getLong(BrokerSettingKey.BATCH_PRODUCER_BATCH_DELAY, 50L);
+        queue = new ArrayBlockingQueue<>(setting.getInt(BrokerSettingKey.BATCH_PRODUCER_MAX_PENDING, 10000));
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricSent = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "sent", "count");
+        metricDirect = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "direct", "count");
+        metricDropped = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "dropped", "count");
+        metricBatchSize = metricsService.getHistogram(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "size", "messages");
+        metricBatchTime = metricsService.getTimer(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "time", "s");
+    }
+
+    public static JmsAssistantBatchProducer getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Send the message to the topic.<br>
+     * The sender thread is started by the first message (the embedded broker must be started).
+     *
+     * @param topic the topic (in the mqtt format)
+     * @param payload
+     * @throws Exception if the message is sent directly and the send fails
+     */
+    public void send(String topic, byte[] payload) throws Exception
+    {
+        if (enabled && ensureStarted() && queue.offer(new PendingMessage(topic, payload))) {
+            return;
+        }
+
+        metricDirect.inc();
+        JmsAssistantProducerPool pool = JmsAssistantProducerPool.getIOnstance(DESTINATIONS.NO_DESTINATION);
+        JmsAssistantProducerWrapper pooledProducer = pool.borrowObject();
+        try {
+            pooledProducer.sendMessage(topic, payload);
+            pool.returnObject(pooledProducer);
+        }
+        catch (JMSException e) {
+            pool.invalidateObject(pooledProducer);
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the sender thread, sending the queued messages
+     */
+    public void close()
+    {
+        Thread senderThread;
+        synchronized (this) {
+            running = false;
+            senderThread = thread;
+            thread = null;
+        }
+        if (senderThread != null) {
+            senderThread.interrupt();
+            try {
+                senderThread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized boolean ensureStarted()
+    {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::run, "kapua-batch-producer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return running;
+    }
+
+    private void run()
+    {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            }
+            catch (InterruptedException e) {
+                // stopping: send what is queued without waiting
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                sendBatch(batch);
+                batch.clear();
+            }
+        }
+        closeProducer();
+    }
+
+    /**
+     * Wait for the first message, then for the batch to be full up to the batch delay
+     */
+    private void collect(List<PendingMessage> batch) throws InterruptedException
+    {
+        PendingMessage first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || wait <= 0) {
+                break;
+            }
+            PendingMessage next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void sendBatch(List<PendingMessage> batch)
+    {
+        Context context = metricBatchTime.time();
+        try {
+            // a failure may be caused by a broken session: retry once with a new producer
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    if (producer == null) {
+                        producer = new JmsAssistantProducerWrapperFactory(null, true).create();
+                    }
+                    for (PendingMessage message : batch) {
+                        producer.sendMessage(message.topic, message.payload);
+                    }
+                    producer.commit();
+                    metricSent.inc(batch.size());
+                    metricBatchSize.update(batch.size());
+                    return;
+                }
+                catch (Exception e) {
+                    s_logger.warn("Cannot send a batch of {} messages: {}", batch.size(), e.getMessage());
+                    closeProducer();
+                }
+            }
+            s_logger.error("Batch of {} messages dropped", batch.size());
+            metricDropped.inc(batch.size());
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+    private void closeProducer()
+    {
+        if (producer != null) {
+            producer.close();
+            producer = null;
+        }
+    }
+
+    private static class PendingMessage
+    {
+        private final String topic;
+        private final byte[] payload;
+
+        PendingMessage(String topic, byte[] payload)
+        {
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+}
@@ -14,14 +14,23 @@ package org.eclipse.kapua.broker.core.pool;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
-import org.eclipse.kapua.commons.setting.system.SystemSetting;
-import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
 /**
  * This class is needed by {@link org.eclipse.kapua.broker.core.plugin.KapuaSecurityBrokerFilter} to handle a vm connection.<BR>
  * Indeed this bundle is instantiated during the broker startup then if {@link org.eclipse.kapua.broker.core.plugin.KapuaSecurityBrokerFilter} try to instantiate a connection receive an error from the
@@ -44,6 +53,8 @@ public class JmsAssistantProducerPool extends GenericObjectPool<JmsAssistantProd
 
     private static Logger s_logger = LoggerFactory.getLogger(JmsAssistantProducerPool.class);
 
+    private static final String METRIC_MODULE_NAME = "producer_pool";
+
     public enum DESTINATIONS
     {
         /**
@@ -59,6 +70,9 @@ public class JmsAssistantProducerPool extends GenericObjectPool<JmsAssistantProd
 
     private static Map<DESTINATIONS, JmsAssistantProducerPool> pools;
 
+    private final Timer   metricBorrowTime;
+    private final Counter metricBorrowTimeout;
+
     static {
         pools = new HashMap<JmsAssistantProducerPool.DESTINATIONS, JmsAssistantProducerPool>();
         s_logger.info("Create pools for broker assistants (kapua server instance)");
@@ -67,10 +81,10 @@ public class JmsAssistantProducerPool extends GenericObjectPool<JmsAssistantProd
         // pools.put(DESTINATIONS.KAPUA_SERVICE,
         // new JmsAssistantProducerPool(new JmsAssistantProducerWrapperFactory(KapuaEnvironmentConfig.getInstance().getString(KapuaEnvironmentConfigKeys.SERVICE_QUEUE_NAME))));
         pools.put(DESTINATIONS.KAPUA_SERVICE,
-                  new JmsAssistantProducerPool(new JmsAssistantProducerWrapperFactory("KapuaService")));
+                  new JmsAssistantProducerPool(new JmsAssistantProducerWrapperFactory("KapuaService"), "kapua_service"));
         s_logger.info("Create NoDestination pool...");
         pools.put(DESTINATIONS.NO_DESTINATION,
-                  new JmsAssistantProducerPool(new JmsAssistantProducerWrapperFactory(null)));
+                  new JmsAssistantProducerPool(new JmsAssistantProducerWrapperFactory(null), "no_destination"));
         s_logger.info("Create pools... done.");
     }
 
@@ -78,30 +92,65 @@ public class JmsAssistantProducerPool extends GenericObjectPool<JmsAssistantProd
      * Create a JmsAssistantProducerPool from the given factory
      * 
      * @param factory
+     * @param name the pool name (used by the metrics)
      */
-    protected JmsAssistantProducerPool(JmsAssistantProducerWrapperFactory factory)
+    protected JmsAssistantProducerPool(JmsAssistantProducerWrapperFactory factory, String name)
     {
         super(factory);
-        // TODO parameter to be added to configuration
-        // int totalMaxSize = KapuaEnvironmentConfig.getInstance().getString(KapuaEnvironmentConfigKeys.POOL_TOTAL_MAX_SIZE);
-        // int maxSize = KapuaEnvironmentConfig.getInstance().getString(KapuaEnvironmentConfigKeys.POOL_MAX_SIZE);
-        // int minSize = KapuaEnvironmentConfig.getInstance().getString(KapuaEnvironmentConfigKeys.POOL_MIN_SIZE);
-        int totalMaxSize = 25;
-        int maxSize = 25;
-        int minSize = 10;
+        BrokerSetting setting = BrokerSetting.getInstance();
 
         GenericObjectPoolConfig jmsPoolConfig = new GenericObjectPoolConfig();
-        jmsPoolConfig.setMaxTotal(totalMaxSize);
-        jmsPoolConfig.setMaxIdle(maxSize);
-        jmsPoolConfig.setMinIdle(minSize);
-        s_logger.info("Set test on return to true for JmsAssistantProducerPool");
-        jmsPoolConfig.setTestOnReturn(true);
-        s_logger.info("Set test on borrow to true for JmsAssistantProducerPool");
-        jmsPoolConfig.setTestOnBorrow(true);
-        s_logger.info("Set block when exausted to true for JmsAssistantProducerPool");
+        jmsPoolConfig.setMaxTotal(setting.getInt(BrokerSettingKey.PRODUCER_POOL_MAX_TOTAL, 25));
+        jmsPoolConfig.setMaxIdle(setting.getInt(BrokerSettingKey.PRODUCER_POOL_MAX_IDLE, 25));
+        jmsPoolConfig.setMinIdle(setting.getInt(BrokerSettingKey.PRODUCER_POOL_MIN_IDLE, 10));
         jmsPoolConfig.setBlockWhenExhausted(true);
+        jmsPoolConfig.setMaxWaitMillis(setting.getLong(BrokerSettingKey.PRODUCER_POOL_MAX_WAIT, 10000L));
+        // the producers are validated by the evictor while idle instead of on every borrow and return
+        jmsPoolConfig.setTestOnBorrow(setting.getBoolean(BrokerSettingKey.PRODUCER_POOL_TEST_ON_BORROW, false));
+        jmsPoolConfig.setTestOnReturn(setting.getBoolean(BrokerSettingKey.PRODUCER_POOL_TEST_ON_RETURN, false));
+        jmsPoolConfig.setTestWhileIdle(setting.getBoolean(BrokerSettingKey.PRODUCER_POOL_TEST_WHILE_IDLE, true));
+        jmsPoolConfig.setTimeBetweenEvictionRunsMillis(setting.getLong(BrokerSettingKey.PRODUCER_POOL_EVICTION_INTERVAL, 30000L));
+        jmsPoolConfig.setMinEvictableIdleTimeMillis(setting.getLong(BrokerSettingKey.PRODUCER_POOL_MIN_EVICTABLE_IDLE_TIME, 600000L));
+        jmsPoolConfig.setNumTestsPerEvictionRun(setting.getInt(BrokerSettingKey.PRODUCER_POOL_TESTS_PER_EVICTION_RUN, 5));
+        s_logger.info("Pool {} configuration: max total {} - max idle {} - min idle {} - test on borrow {} - test on return {} - test while idle {} - eviction interval {} ms",
+                      new Object[] { name, jmsPoolConfig.getMaxTotal(), jmsPoolConfig.getMaxIdle(), jmsPoolConfig.getMinIdle(), jmsPoolConfig.getTestOnBorrow(),
+                                     jmsPoolConfig.getTestOnReturn(), jmsPoolConfig.getTestWhileIdle(), jmsPoolConfig.getTimeBetweenEvictionRunsMillis() });
 
         setConfig(jmsPoolConfig);
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricBorrowTime = metricsService.getTimer(METRIC_MODULE_NAME, name, "borrow", "time", "s");
+        metricBorrowTimeout = metricsService.getCounter(METRIC_MODULE_NAME, name, "borrow", "timeout", "count");
+        registerGauge(metricsService, (Gauge<Integer>) () -> getNumActive(), name, "active");
+        registerGauge(metricsService, (Gauge<Integer>) () -> getNumIdle(), name, "idle");
+        registerGauge(metricsService, (Gauge<Integer>) () -> getNumWaiters(), name, "waiters");
+    }
+
+    @Override
+    public JmsAssistantProducerWrapper borrowObject(long borrowMaxWaitMillis) throws Exception
+    {
+        Context context = metricBorrowTime.time();
+        try {
+            return super.borrowObject(borrowMaxWaitMillis);
+        }
+        catch (NoSuchElementException e) {
+            metricBorrowTimeout.inc();
+            throw e;
+        }
+        finally {
+            context.stop();
+        }
+    }
+
+    private static void registerGauge(MetricsService metricsService, Gauge<?> gauge, String component, String... names)
+    {
+        try {
+            metricsService.registerGauge(gauge, METRIC_MODULE_NAME, component, names);
+        }
+        catch (KapuaException e) {
+            // the pool has already been created once (i.e. broker restarted in the same JVM)
+            s_logger.debug("Cannot register gauge: {}", e.getMessage());
+        }
     }
 
     /**
@@ -121,6 +170,8 @@ public class JmsAssistantProducerPool extends GenericObjectPool<JmsAssistantProd
     public static void closePools()
     {
         if (pools != null) {
+            s_logger.info("Close batch producer...");
+            JmsAssistantBatchProducer.getInstance().close();
             s_logger.info("Close Service pool...");
             pools.get(DESTINATIONS.KAPUA_SERVICE).close();
             s_logger.info("Close NoDestination pool...");
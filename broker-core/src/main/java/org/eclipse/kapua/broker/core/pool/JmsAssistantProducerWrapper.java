@@ -72,4 +72,43 @@ public class JmsAssistantProducerWrapper extends JmsProducerWrapper
         producer.send(message);
     }
 
+    // ==========================================================
+    // Messages to be send to a topic
+    // ==========================================================
+    /**
+     * Send the message to the topic.<br>
+     * The producer must not be bound to a destination.
+     * 
+     * @param topic the topic (in the mqtt format)
+     * @param payload
+     * @throws JMSException
+     */
+    public void sendMessage(String topic, byte[] payload) throws JMSException
+    {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload);
+
+        producer.send(session.createTopic(JmsUtil.convertMqttWildCardToJms(topic)), message);
+    }
+
+    /**
+     * Commit the messages sent so far (transacted producers only)
+     * 
+     * @throws JMSException
+     */
+    public void commit() throws JMSException
+    {
+        session.commit();
+    }
+
+    /**
+     * Discard the messages sent so far (transacted producers only)
+     * 
+     * @throws JMSException
+     */
+    public void rollback() throws JMSException
+    {
+        session.rollback();
+    }
+
 }
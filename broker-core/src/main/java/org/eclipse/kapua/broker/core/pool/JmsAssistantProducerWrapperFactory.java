@@ -31,17 +31,29 @@ public class JmsAssistantProducerWrapperFactory extends BasePooledObjectFactory<
 
     private static Logger s_logger = LoggerFactory.getLogger(JmsAssistantProducerWrapperFactory.class);
 
-    private String destination;
+    private String  destination;
+    private boolean transacted;
 
     public JmsAssistantProducerWrapperFactory(String destination)
+    {
+        this(destination, false);
+    }
+
+    /**
+     * 
+     * @param destination
+     * @param transacted create producers with a transacted session (the messages are sent on commit)
+     */
+    public JmsAssistantProducerWrapperFactory(String destination, boolean transacted)
     {
         this.destination = destination;
+        this.transacted = transacted;
     }
 
     @Override
     public JmsAssistantProducerWrapper create() throws Exception
     {
-        return new JmsAssistantProducerWrapper(JmsConnectionFactory.vmConnFactory, destination, false, false);
+        return new JmsAssistantProducerWrapper(JmsConnectionFactory.vmConnFactory, destination, transacted, false);
     }
 
     @Override
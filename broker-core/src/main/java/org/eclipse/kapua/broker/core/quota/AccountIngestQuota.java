@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.quota;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Ingest quota of an account: the message rate and byte rate token buckets plus the account throughput metrics.<br>
+ * A null bucket means no limit. The buckets are replaced only when the account limits change, so reloading the same limits
+ * does not give the account a fresh burst.
+ *
+ * @since 1.0
+ */
+public class AccountIngestQuota
+{
+    /**
+     * Rate value meaning no limit
+     */
+    public static final long UNLIMITED = IngestQuota.UNLIMITED;
+
+    private final KapuaId         scopeId;
+    private final Counter         admittedMessages;
+    private final Counter         admittedBytes;
+    private final Counter         throttledMessages;
+
+    private volatile TokenBucket  messageBucket;
+    private volatile TokenBucket  byteBucket;
+    private volatile boolean      disabled;
+    private volatile long         loadedOn;
+    private final AtomicBoolean   loading = new AtomicBoolean();
+
+    /**
+     * Create an unlimited quota
+     *
+     * @param scopeId
+     * @param admittedMessages
+     * @param admittedBytes
+     * @param throttledMessages
+     */
+    public AccountIngestQuota(KapuaId scopeId, Counter admittedMessages, Counter admittedBytes, Counter throttledMessages)
+    {
+        this.scopeId = scopeId;
+        this.admittedMessages = admittedMessages;
+        this.admittedBytes = admittedBytes;
+        this.throttledMessages = throttledMessages;
+    }
+
+    /**
+     * Try to admit a message of the given size, updating the account metrics
+     *
+     * @param size message size in bytes
+     * @param now current time as returned by {@link System#nanoTime()}
+     * @return true if the message is within the quota
+     */
+    public boolean admit(long size, long now)
+    {
+        if (disabled) {
+            throttledMessages.inc();
+            return false;
+        }
+
+        TokenBucket messages = messageBucket;
+        TokenBucket bytes = byteBucket;
+        if (messages != null && !messages.tryAcquire(1, now)) {
+            throttledMessages.inc();
+            return false;
+        }
+        if (bytes != null && !bytes.tryAcquire(size, now)) {
+            if (messages != null) {
+                messages.release(1);
+            }
+            throttledMessages.inc();
+            return false;
+        }
+
+        admittedMessages.inc();
+        admittedBytes.inc(size);
+        return true;
+    }
+
+    /**
+     * Set the account limits
+     *
+     * @param messageRate messages per second, {@link #UNLIMITED} or 0 (nothing admitted)
+     * @param byteRate bytes per second, {@link #UNLIMITED} or 0 (nothing admitted)
+     * @param burstSeconds number of seconds of traffic at full rate admitted at once
+     * @param now current time as returned by {@link System#nanoTime()}
+     */
+    public void update(long messageRate, long byteRate, int burstSeconds, long now)
+    {
+        disabled = messageRate == 0 || byteRate == 0;
+        messageBucket = newBucket(messageBucket, messageRate, burstSeconds, now);
+        byteBucket = newBucket(byteBucket, byteRate, burstSeconds, now);
+        loadedOn = now;
+    }
+
+    /**
+     * Keep the current limits for another refresh interval
+     *
+     * @param now current time as returned by {@link System#nanoTime()}
+     */
+    public void postpone(long now)
+    {
+        loadedOn = now;
+    }
+
+    /**
+     * Check if the limits are older than the given interval
+     *
+     * @param now current time as returned by {@link System#nanoTime()}
+     * @param intervalNanos
+     * @return
+     */
+    public boolean isExpired(long now, long intervalNanos)
+    {
+        return now - loadedOn > intervalNanos;
+    }
+
+    /**
+     * Acquire the right to reload the limits: only one thread at a time reloads them, the others keep using the current ones
+     *
+     * @return true if the caller has to reload the limits and then call {@link #endLoad()}
+     */
+    public boolean startLoad()
+    {
+        return loading.compareAndSet(false, true);
+    }
+
+    public void endLoad()
+    {
+        loading.set(false);
+    }
+
+    public KapuaId getScopeId()
+    {
+        return scopeId;
+    }
+
+    private static TokenBucket newBucket(TokenBucket current, long rate, int burstSeconds, long now)
+    {
+        if (rate <= 0) {
+            return null;
+        }
+        long capacity = Math.max(1, rate * Math.max(1, burstSeconds));
+        if (current != null && current.getRate() == rate && current.getCapacity() == capacity) {
+            return current;
+        }
+        return new TokenBucket(rate, capacity, now);
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.quota;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.<br>
+ * The bucket is refilled with rate tokens per second up to its capacity. Instead of counting the available tokens the bucket keeps
+ * the (nano) time at which it will be full again, so taking tokens is a single compare and set and no refill task is needed.
+ *
+ * @since 1.0
+ */
+public class TokenBucket
+{
+    private final long       rate;
+    private final long       capacity;
+    private final double     nanosPerToken;
+    private final long       capacityNanos;
+
+    // time at which the bucket will be full again
+    private final AtomicLong fullAt;
+
+    /**
+     * Create a full bucket
+     *
+     * @param rate tokens added per second (must be positive)
+     * @param capacity maximum number of tokens in the bucket (must be positive)
+     */
+    public TokenBucket(long rate, long capacity)
+    {
+        this(rate, capacity, System.nanoTime());
+    }
+
+    /**
+     * Create a bucket full at the given time
+     *
+     * @param rate tokens added per second (must be positive)
+     * @param capacity maximum number of tokens in the bucket (must be positive)
+     * @param now current time as returned by {@link System#nanoTime()}
+     */
+    public TokenBucket(long rate, long capacity, long now)
+    {
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Token bucket rate and capacity must be positive");
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.nanosPerToken = (double) TimeUnit.SECONDS.toNanos(1) / rate;
+        this.capacityNanos = (long) (capacity * nanosPerToken);
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Take the tokens from the bucket, if available
+     *
+     * @param tokens
+     * @return true if the tokens were available
+     */
+    public boolean tryAcquire(long tokens)
+    {
+        return tryAcquire(tokens, System.nanoTime());
+    }
+
+    /**
+     * Take the tokens from the bucket, if available at the given time.<br>
+     * A request for more tokens than the bucket capacity is served as a request for the whole capacity.
+     *
+     * @param tokens
+     * @param now current time as returned by {@link System#nanoTime()}
+     * @return true if the tokens were available
+     */
+    public boolean tryAcquire(long tokens, long now)
+    {
+        long cost = toNanos(tokens);
+        for (;;) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + cost;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back tokens previously acquired and not used
+     *
+     * @param tokens
+     */
+    public void release(long tokens)
+    {
+        fullAt.addAndGet(-toNanos(tokens));
+    }
+
+    public long getRate()
+    {
+        return rate;
+    }
+
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    private long toNanos(long tokens)
+    {
+        return (long) (Math.min(Math.max(tokens, 0), capacity) * nanosPerToken);
+    }
+}
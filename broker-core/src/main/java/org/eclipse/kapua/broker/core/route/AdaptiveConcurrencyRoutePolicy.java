@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.route;
+
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.DestinationFilter;
+import org.apache.camel.Consumer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Route;
+import org.apache.camel.component.jms.JmsConsumer;
+import org.apache.camel.support.RoutePolicySupport;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.route.ConsumerConcurrencyController.Decision;
+import org.eclipse.kapua.broker.core.setting.BrokerSetting;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.datastore.DatastoreLoadService;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.listener.AbstractMessageListenerContainer;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+
+/**
+ * Route policy scaling the consumers of a JMS route between the configured bounds.<br>
+ * Every sample interval the policy measures the backlog of the consumed queues (wildcards included), its drain rate, the exchanges throughput
+ * and average processing time and the datastore back pressure (see {@link DatastoreLoadService}), and lets the {@link ConsumerConcurrencyController} decide the number of consumers.
+ * The number is applied as the maximum concurrent consumers of the route listener container: the container starts a new consumer when all
+ * the running ones are busy, up to that maximum, and stops the idle consumers down to the minimum.<br>
+ * <br>
+ * The route endpoint must set maxMessagesPerTask, otherwise the consumers never return to the container and are never stopped.
+ *
+ * @since 1.0
+ */
+public class AdaptiveConcurrencyRoutePolicy extends RoutePolicySupport
+{
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyRoutePolicy.class);
+
+    private static final String METRIC_MODULE_NAME    = "route";
+    private static final String METRIC_COMPONENT_NAME = "concurrency";
+
+    private static final String PROPERTY_STARTED_ON   = "KapuaRouteStartedOn";
+
+    private final boolean                         enabled;
+    private final long                            sampleInterval;
+    private final int                             minConsumers;
+    private final ConsumerConcurrencyController   controller;
+    private final DatastoreLoadService            datastoreLoadService;
+
+    private final LongAdder                       processed       = new LongAdder();
+    private final LongAdder                       processingNanos = new LongAdder();
+
+    private final Counter                         metricScaleUp;
+    private final Counter                         metricScaleDown;
+    private final Counter                         metricBackOff;
+    private final Counter                         metricHold;
+
+    private volatile DefaultMessageListenerContainer container;
+    private volatile long                         backlog;
+    private ActiveMQDestination                   destination;
+    private ScheduledExecutorService              scheduler;
+    private long                                  previousBacklog = -1;
+    private long                                  previousRejected;
+
+    public AdaptiveConcurrencyRoutePolicy()
+    {
+        this(KapuaLocator.getInstance().getService(DatastoreLoadService.class));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param datastoreLoadService the datastore back pressure signal
+     */
+    public AdaptiveConcurrencyRoutePolicy(DatastoreLoadService datastoreLoadService)
+    {
+        this.datastoreLoadService = datastoreLoadService;
+
+        BrokerSetting setting = BrokerSetting.getInstance();
+        enabled = setting.getBoolean(BrokerSettingKey.ROUTE_CONCURRENCY_ENABLED, true);
+        sampleInterval = setting.getLong(BrokerSettingKey.ROUTE_CONCURRENCY_SAMPLE_INTERVAL, 5000L);
+        minConsumers = setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_MIN, 2);
+        int initialConsumers = setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_INITIAL, 10);
+        int maxConsumers = setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_MAX, 0);
+        if (maxConsumers <= 0) {
+            maxConsumers = Math.max(Math.max(minConsumers, initialConsumers), 4 * Runtime.getRuntime().availableProcessors());
+        }
+        controller = new ConsumerConcurrencyController(minConsumers,
+                                                       maxConsumers,
+                                                       initialConsumers,
+                                                       setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_SCALE_UP_STEP, 2),
+                                                       setting.getLong(BrokerSettingKey.ROUTE_CONCURRENCY_HIGH_WATERMARK, 100L),
+                                                       setting.getLong(BrokerSettingKey.ROUTE_CONCURRENCY_LOW_WATERMARK, 10L),
+                                                       setting.getLong(BrokerSettingKey.ROUTE_CONCURRENCY_TARGET_DRAIN_TIME, 10000L),
+                                                       setting.getDouble(BrokerSettingKey.ROUTE_CONCURRENCY_MAX_LATENCY, 500d),
+                                                       setting.getDouble(BrokerSettingKey.ROUTE_CONCURRENCY_BACK_PRESSURE_THRESHOLD, 0.9d),
+                                                       setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_COOLDOWN_SAMPLES, 2),
+                                                       setting.getInt(BrokerSettingKey.ROUTE_CONCURRENCY_SCALE_DOWN_SAMPLES, 3));
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricScaleUp = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "decision", "scale_up", "count");
+        metricScaleDown = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "decision", "scale_down", "count");
+        metricBackOff = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "decision", "back_off", "count");
+        metricHold = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, "decision", "hold", "count");
+        registerGauge(metricsService, (Gauge<Integer>) () -> controller.getConsumers(), "consumers", "max");
+        registerGauge(metricsService, (Gauge<Integer>) () -> container != null ? container.getActiveConsumerCount() : 0, "consumers", "active");
+        registerGauge(metricsService, (Gauge<Long>) () -> backlog, "backlog");
+    }
+
+    @Override
+    public void onStart(Route route)
+    {
+        if (!enabled) {
+            return;
+        }
+        Consumer consumer = route.getConsumer();
+        AbstractMessageListenerContainer listenerContainer = null;
+        try {
+            if (consumer instanceof JmsConsumer) {
+                listenerContainer = ((JmsConsumer) consumer).getListenerContainer();
+            }
+        }
+        catch (Exception e) {
+            logger.warn("Cannot get the listener container of the route {}: {}", route.getId(), e.getMessage());
+        }
+        if (!(listenerContainer instanceof DefaultMessageListenerContainer)) {
+            logger.warn("Route {} does not consume through a default JMS listener container, adaptive concurrency disabled", route.getId());
+            return;
+        }
+
+        DefaultMessageListenerContainer defaultContainer = (DefaultMessageListenerContainer) listenerContainer;
+        if (defaultContainer.getMaxMessagesPerTask() <= 0) {
+            logger.warn("Route {} does not set maxMessagesPerTask, the consumers will be scaled up but never down", route.getId());
+        }
+        destination = ActiveMQDestination.createDestination(((JmsConsumer) consumer).getEndpoint().getDestinationName(), ActiveMQDestination.QUEUE_TYPE);
+        defaultContainer.setConcurrentConsumers(minConsumers);
+        defaultContainer.setMaxConcurrentConsumers(controller.getConsumers());
+        container = defaultContainer;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kapua-route-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sample, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+        logger.info("Adaptive concurrency enabled on route {}: {} consumers (minimum {})", new Object[] { route.getId(), controller.getConsumers(), minConsumers });
+    }
+
+    @Override
+    public void onStop(Route route)
+    {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        container = null;
+    }
+
+    @Override
+    public void onExchangeBegin(Route route, Exchange exchange)
+    {
+        exchange.setProperty(PROPERTY_STARTED_ON, System.nanoTime());
+    }
+
+    @Override
+    public void onExchangeDone(Route route, Exchange exchange)
+    {
+        Long startedOn = exchange.getProperty(PROPERTY_STARTED_ON, Long.class);
+        if (startedOn != null) {
+            processingNanos.add(System.nanoTime() - startedOn);
+            processed.increment();
+        }
+    }
+
+    private void sample()
+    {
+        try {
+            DefaultMessageListenerContainer currentContainer = container;
+            BrokerService broker = BrokerRegistry.getInstance().findFirst();
+            if (currentContainer == null || broker == null) {
+                return;
+            }
+
+            long currentBacklog = getBacklog(broker);
+            double drainRate = previousBacklog >= 0 ? (previousBacklog - currentBacklog) * 1000d / sampleInterval : 0;
+            previousBacklog = currentBacklog;
+            backlog = currentBacklog;
+
+            long count = processed.sumThenReset();
+            long nanos = processingNanos.sumThenReset();
+            double latency = count > 0 ? TimeUnit.NANOSECONDS.toMicros(nanos / count) / 1000d : 0;
+            double throughput = count * 1000d / sampleInterval;
+
+            long rejected = datastoreLoadService.getIngestRejectedCount();
+            boolean newRejections = rejected > previousRejected;
+            previousRejected = rejected;
+
+            int consumers = controller.getConsumers();
+            Decision decision = controller.decide(currentBacklog, drainRate, throughput, latency, datastoreLoadService.getIngestLoad(), newRejections);
+            switch (decision) {
+            case SCALE_UP:
+                metricScaleUp.inc();
+                break;
+            case SCALE_DOWN:
+                metricScaleDown.inc();
+                break;
+            case BACK_OFF:
+                metricBackOff.inc();
+                break;
+            default:
+                metricHold.inc();
+                return;
+            }
+
+            currentContainer.setMaxConcurrentConsumers(controller.getConsumers());
+            logger.info("Route consumers {}: {} -> {} (backlog {}, drain rate {}/s, latency {} ms)",
+                        new Object[] { decision, consumers, controller.getConsumers(), currentBacklog, (long) drainRate, latency });
+        }
+        catch (Exception e) {
+            logger.warn("Route concurrency sample failed: {}", e.getMessage());
+        }
+    }
+
+    private long getBacklog(BrokerService broker)
+    {
+        DestinationFilter filter = DestinationFilter.parseFilter(destination);
+        long total = 0;
+        for (Entry<ActiveMQDestination, Destination> entry : broker.getRegionBroker().getDestinationMap(destination).entrySet()) {
+            if (filter.matches(entry.getKey())) {
+                total += entry.getValue().getDestinationStatistics().getMessages().getCount();
+            }
+        }
+        return total;
+    }
+
+    private static void registerGauge(MetricsService metricsService, Gauge<?> gauge, String... names)
+    {
+        try {
+            metricsService.registerGauge(gauge, METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, names);
+        }
+        catch (KapuaException e) {
+            // the policy has already been created once (i.e. broker restarted in the same JVM)
+            logger.debug("Cannot register gauge: {}", e.getMessage());
+        }
+    }
+}
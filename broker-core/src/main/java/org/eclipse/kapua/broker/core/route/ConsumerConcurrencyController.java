@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.route;
+
+/**
+ * Route consumers concurrency control law.<br>
+ * Every sample the controller decides the new number of consumers, between the configured bounds:
+ * <ul>
+ * <li>back off (multiplicative decrease) if the datastore signals back pressure or the processing latency exceeds its limit:
+ * more consumers would only wait longer on the same saturated resource</li>
+ * <li>scale up if the backlog is above the high watermark and is not going to be drained within the target drain time
+ * at the current drain rate (backlog decrease per second, not positive if the backlog is growing). The step is the configured one
+ * or half the current consumers, whichever is bigger, so a burst is caught up in a few samples</li>
+ * <li>scale down by one consumer once the backlog stayed below the low watermark for a number of consecutive samples and one consumer
+ * less would still be loaded less than {@value #SCALE_DOWN_UTILIZATION} (the busy consumers are estimated as throughput times latency)</li>
+ * <li>hold otherwise</li>
+ * </ul>
+ * The gap between the watermarks and the cool down samples after every change keep the controller from oscillating:
+ * the effect of a change is observed before the next one.
+ *
+ * @since 1.0
+ */
+public class ConsumerConcurrencyController
+{
+    /**
+     * Scaling decision
+     */
+    public enum Decision
+    {
+        SCALE_UP, SCALE_DOWN, BACK_OFF, HOLD
+    }
+
+    private static final double BACK_OFF_FACTOR        = 0.75;
+    private static final double SCALE_DOWN_UTILIZATION = 0.75;
+
+    private final int    minConsumers;
+    private final int    maxConsumers;
+    private final int    scaleUpStep;
+    private final long   highWatermark;
+    private final long   lowWatermark;
+    private final long   targetDrainTime;
+    private final double maxLatency;
+    private final double backPressureThreshold;
+    private final int    cooldownSamples;
+    private final int    scaleDownSamples;
+
+    private int          consumers;
+    private int          cooldown;
+    private int          idleSamples;
+
+    /**
+     * Constructor
+     *
+     * @param minConsumers minimum number of consumers
+     * @param maxConsumers maximum number of consumers
+     * @param initialConsumers number of consumers before the first sample (bounded by the minimum and the maximum)
+     * @param scaleUpStep consumers added by a scale up
+     * @param highWatermark backlog (messages) above which the consumers may be scaled up
+     * @param lowWatermark backlog (messages) below which the consumers may be scaled down
+     * @param targetDrainTime time (milliseconds) the backlog should be drained within
+     * @param maxLatency maximum average processing time (milliseconds) before backing off
+     * @param backPressureThreshold datastore load (0 to 1) above which the consumers back off
+     * @param cooldownSamples samples held after every change
+     * @param scaleDownSamples consecutive samples below the low watermark before a scale down
+     */
+    public ConsumerConcurrencyController(int minConsumers,
+                                         int maxConsumers,
+                                         int initialConsumers,
+                                         int scaleUpStep,
+                                         long highWatermark,
+                                         long lowWatermark,
+                                         long targetDrainTime,
+                                         double maxLatency,
+                                         double backPressureThreshold,
+                                         int cooldownSamples,
+                                         int scaleDownSamples)
+    {
+        if (minConsumers < 1 || maxConsumers < minConsumers) {
+            throw new IllegalArgumentException(String.format("Invalid consumers bounds [%d, %d]", minConsumers, maxConsumers));
+        }
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.scaleUpStep = Math.max(1, scaleUpStep);
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.targetDrainTime = targetDrainTime;
+        this.maxLatency = maxLatency;
+        this.backPressureThreshold = backPressureThreshold;
+        this.cooldownSamples = cooldownSamples;
+        this.scaleDownSamples = Math.max(1, scaleDownSamples);
+        this.consumers = Math.max(minConsumers, Math.min(maxConsumers, initialConsumers));
+    }
+
+    /**
+     * Return the current number of consumers
+     *
+     * @return
+     */
+    public synchronized int getConsumers()
+    {
+        return consumers;
+    }
+
+    /**
+     * Decide the number of consumers for the next sample interval
+     *
+     * @param backlog messages waiting to be consumed
+     * @param drainRate backlog decrease per second during the last interval
+     * @param throughput messages processed per second during the last interval
+     * @param latency average processing time (milliseconds) during the last interval
+     * @param backPressure datastore load, from 0 (idle) to 1 (saturated)
+     * @param rejected true if the datastore rejected requests during the last interval
+     * @return the decision, {@link #getConsumers()} returns the resulting number of consumers
+     */
+    public synchronized Decision decide(long backlog, double drainRate, double throughput, double latency, double backPressure, boolean rejected)
+    {
+        if (backlog < lowWatermark) {
+            idleSamples++;
+        }
+        else {
+            idleSamples = 0;
+        }
+
+        // back pressure is applied even during the cool down, the saturation must not last
+        if (rejected || backPressure >= backPressureThreshold || (maxLatency > 0 && latency > maxLatency)) {
+            return change(Math.max(minConsumers, (int) Math.floor(consumers * BACK_OFF_FACTOR)), Decision.BACK_OFF);
+        }
+
+        if (cooldown > 0) {
+            cooldown--;
+            return Decision.HOLD;
+        }
+
+        if (backlog > highWatermark && !drainsInTime(backlog, drainRate)) {
+            return change(Math.min(maxConsumers, consumers + Math.max(scaleUpStep, consumers / 2)), Decision.SCALE_UP);
+        }
+
+        if (idleSamples >= scaleDownSamples && throughput * latency / 1000 < (consumers - 1) * SCALE_DOWN_UTILIZATION) {
+            idleSamples = 0;
+            return change(Math.max(minConsumers, consumers - 1), Decision.SCALE_DOWN);
+        }
+        return Decision.HOLD;
+    }
+
+    private boolean drainsInTime(long backlog, double drainRate)
+    {
+        return drainRate > 0 && backlog / drainRate * 1000 <= targetDrainTime;
+    }
+
+    private Decision change(int newConsumers, Decision decision)
+    {
+        if (newConsumers == consumers) {
+            return Decision.HOLD;
+        }
+        consumers = newConsumers;
+        cooldown = cooldownSamples;
+        return decision;
+    }
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.setting;
+
+import org.eclipse.kapua.commons.setting.AbstractKapuaSetting;
+
+/**
+ * Broker settings
+ *
+ * @since 1.0
+ */
+public class BrokerSetting extends AbstractKapuaSetting<BrokerSettingKey>
+{
+    private static final String BROKER_CONFIG_RESOURCE = "kapua-broker-setting.properties";
+
+    private static final BrokerSetting instance = new BrokerSetting();
+
+    private BrokerSetting()
+    {
+        super(BROKER_CONFIG_RESOURCE);
+    }
+
+    public static BrokerSetting getInstance()
+    {
+        return instance;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.setting;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Broker setting keys
+ *
+ * @since 1.0
+ */
+public enum BrokerSettingKey implements SettingKey
+{
+    INGEST_QUOTA_ENABLED("broker.ingest.quota.enabled"),
+    INGEST_QUOTA_BURST_SECONDS("broker.ingest.quota.burst_seconds"),
+    INGEST_QUOTA_PLAN_REFRESH_INTERVAL("broker.ingest.quota.plan_refresh_interval"),
+    INGEST_QUOTA_OVER_QUOTA_POLICY("broker.ingest.quota.over_quota_policy"),
+    INGEST_QUOTA_DIVERTED_MAX_PENDING("broker.ingest.quota.diverted.max_pending"),
+    DEAD_LETTER_ENABLED("broker.dead_letter.enabled"),
+    DEAD_LETTER_QUEUE_NAME("broker.dead_letter.queue_name"),
+    DEAD_LETTER_CONNECTION_URI("broker.dead_letter.connection_uri"),
+    DEAD_LETTER_SEND_TIMEOUT("broker.dead_letter.send_timeout"),
+    DEAD_LETTER_JOURNAL_DIR("broker.dead_letter.journal.dir"),
+    DEAD_LETTER_JOURNAL_SYNC("broker.dead_letter.journal.sync"),
+    DEAD_LETTER_JOURNAL_MAX_SIZE("broker.dead_letter.journal.max_size"),
+    DEAD_LETTER_REPLAY_RATE("broker.dead_letter.replay.rate"),
+    DEAD_LETTER_REPLAY_BATCH_SIZE("broker.dead_letter.replay.batch_size"),
+    DEAD_LETTER_REPLAY_RECEIVE_TIMEOUT("broker.dead_letter.replay.receive_timeout"),
+    DEAD_LETTER_REPLAY_DUPLICATE_WINDOW("broker.dead_letter.replay.duplicate_window"),
+    ROUTE_CONCURRENCY_ENABLED("broker.route.concurrency.enabled"),
+    ROUTE_CONCURRENCY_MIN("broker.route.concurrency.min"),
+    ROUTE_CONCURRENCY_MAX("broker.route.concurrency.max"),
+    ROUTE_CONCURRENCY_INITIAL("broker.route.concurrency.initial"),
+    ROUTE_CONCURRENCY_SAMPLE_INTERVAL("broker.route.concurrency.sample_interval"),
+    ROUTE_CONCURRENCY_SCALE_UP_STEP("broker.route.concurrency.scale_up_step"),
+    ROUTE_CONCURRENCY_HIGH_WATERMARK("broker.route.concurrency.backlog.high_watermark"),
+    ROUTE_CONCURRENCY_LOW_WATERMARK("broker.route.concurrency.backlog.low_watermark"),
+    ROUTE_CONCURRENCY_TARGET_DRAIN_TIME("broker.route.concurrency.backlog.target_drain_time"),
+    ROUTE_CONCURRENCY_MAX_LATENCY("broker.route.concurrency.max_latency"),
+    ROUTE_CONCURRENCY_BACK_PRESSURE_THRESHOLD("broker.route.concurrency.back_pressure_threshold"),
+    ROUTE_CONCURRENCY_COOLDOWN_SAMPLES("broker.route.concurrency.cooldown_samples"),
+    ROUTE_CONCURRENCY_SCALE_DOWN_SAMPLES("broker.route.concurrency.scale_down_samples"),
+    SERVER_IP("broker.server_ip"),
+    CONNECTION_WRITER_ENABLED("broker.connection_writer.enabled"),
+    CONNECTION_WRITER_MAX_PENDING("broker.connection_writer.max_pending"),
+    CONNECTION_WRITER_BATCH_SIZE("broker.connection_writer.batch_size"),
+    CONNECTION_WRITER_BATCH_DELAY("broker.connection_writer.batch_delay"),
+    CONNECTION_WRITER_OFFER_TIMEOUT("broker.connection_writer.offer_timeout"),
+    CONNECTION_WRITER_RETRY_DELAY("broker.connection_writer.retry_delay"),
+    CONNECTION_WRITER_STOP_TIMEOUT("broker.connection_writer.stop_timeout"),
+    CONNECTION_ID_CACHE_SIZE("broker.connection_id_cache.size"),
+    CONNECTION_ID_CACHE_EXPIRE_AFTER("broker.connection_id_cache.expire_after"),
+    PRODUCER_POOL_MAX_TOTAL("broker.producer_pool.max_total"),
+    PRODUCER_POOL_MAX_IDLE("broker.producer_pool.max_idle"),
+    PRODUCER_POOL_MIN_IDLE("broker.producer_pool.min_idle"),
+    PRODUCER_POOL_MAX_WAIT("broker.producer_pool.max_wait"),
+    PRODUCER_POOL_TEST_ON_BORROW("broker.producer_pool.test_on_borrow"),
+    PRODUCER_POOL_TEST_ON_RETURN("broker.producer_pool.test_on_return"),
+    PRODUCER_POOL_TEST_WHILE_IDLE("broker.producer_pool.test_while_idle"),
+    PRODUCER_POOL_EVICTION_INTERVAL("broker.producer_pool.eviction.interval"),
+    PRODUCER_POOL_MIN_EVICTABLE_IDLE_TIME("broker.producer_pool.eviction.min_idle_time"),
+    PRODUCER_POOL_TESTS_PER_EVICTION_RUN("broker.producer_pool.eviction.tests_per_run"),
+    BATCH_PRODUCER_ENABLED("broker.batch_producer.enabled"),
+    BATCH_PRODUCER_MAX_PENDING("broker.batch_producer.max_pending"),
+    BATCH_PRODUCER_BATCH_SIZE("broker.batch_producer.batch_size"),
+    BATCH_PRODUCER_BATCH_DELAY("broker.batch_producer.batch_delay"),
+    LIFECYCLE_NOTIFICATION_ENABLED("broker.lifecycle_notification.enabled");
+
+    private String key;
+
+    private BrokerSettingKey(String key)
+    {
+        this.key = key;
+    }
+
+    @Override
+    public String key()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeadLetterJournalTest
+{
+    private File directory;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        directory = Files.createTempDirectory("kapua-dead-letter-journal").toFile();
+    }
+
+    @Test
+    public void testAppendDrain()
+        throws Exception
+    {
+        DeadLetterJournal journal = new DeadLetterJournal(directory, false, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(journal.append(record(i)));
+        }
+
+        List<String> drained = new ArrayList<>();
+        List<Integer> batches = new ArrayList<>();
+        long count = journal.drain(2, records -> {
+            batches.add(records.size());
+            records.forEach(record -> drained.add(new String(record, StandardCharsets.UTF_8)));
+        });
+
+        assertEquals(5, count);
+        assertEquals(Arrays.asList("record-0", "record-1", "record-2", "record-3", "record-4"), drained);
+        assertEquals(Arrays.asList(2, 2, 1), batches);
+        assertEquals(0, journal.drain(2, records -> fail("Journal not empty")));
+    }
+
+    @Test
+    public void testTornTailIsTruncated()
+        throws Exception
+    {
+        DeadLetterJournal journal = new DeadLetterJournal(directory, true, 1024 * 1024);
+        journal.append(record(0));
+        journal.append(record(1));
+        journal.close();
+        long validLength = journalFile().length();
+
+        // a crash in the middle of a record: the header and part of the bytes only
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write(new byte[10]);
+        }
+
+        // the journal is opened again after the restart
+        journal = new DeadLetterJournal(directory, true, 1024 * 1024);
+        journal.append(record(2));
+        journal.close();
+
+        assertEquals(validLength + 8 + record(2).length, journalFile().length());
+        assertEquals(Arrays.asList("record-0", "record-1", "record-2"), drain(journal));
+    }
+
+    @Test
+    public void testCorruptedTailIsTruncated()
+        throws Exception
+    {
+        DeadLetterJournal journal = new DeadLetterJournal(directory, true, 1024 * 1024);
+        journal.append(record(0));
+        journal.close();
+
+        // a complete record with a wrong checksum
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+            file.seek(file.length());
+            byte[] record = record(1);
+            file.writeInt(record.length);
+            file.writeInt(0);
+            file.write(record);
+        }
+
+        journal = new DeadLetterJournal(directory, true, 1024 * 1024);
+        journal.append(record(2));
+
+        assertEquals(Arrays.asList("record-0", "record-2"), drain(journal));
+    }
+
+    @Test
+    public void testInterruptedDrainIsResumed()
+        throws Exception
+    {
+        DeadLetterJournal journal = new DeadLetterJournal(directory, false, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            journal.append(record(i));
+        }
+
+        List<String> drained = new ArrayList<>();
+        try {
+            journal.drain(2, records -> {
+                if (!drained.isEmpty()) {
+                    throw new IllegalStateException("queue unavailable");
+                }
+                records.forEach(record -> drained.add(new String(record, StandardCharsets.UTF_8)));
+            });
+            fail("Drain not interrupted");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        // appended while the drain was interrupted: left for the next drain
+        journal.append(record(5));
+
+        assertEquals(Arrays.asList("record-2", "record-3", "record-4"), drain(journal));
+        assertEquals(Arrays.asList("record-5"), drain(journal));
+    }
+
+    @Test
+    public void testFullJournalRejectsRecords()
+        throws Exception
+    {
+        DeadLetterJournal journal = new DeadLetterJournal(directory, false, 8 + record(0).length);
+
+        assertTrue(journal.append(record(0)));
+        assertFalse(journal.append(record(1)));
+    }
+
+    private File journalFile()
+    {
+        return new File(directory, "dead-letter.journal");
+    }
+
+    private static List<String> drain(DeadLetterJournal journal)
+        throws Exception
+    {
+        List<String> drained = new ArrayList<>();
+        journal.drain(100, records -> records.forEach(record -> drained.add(new String(record, StandardCharsets.UTF_8))));
+        return drained;
+    }
+
+    private static byte[] record(int index)
+    {
+        return ("record-" + index).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.eclipse.kapua.broker.core.listener.CamelConstants;
+import org.eclipse.kapua.broker.core.listener.ErrorMessageListener;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.broker.core.setting.BrokerSettingKey;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Failed messages go from the {@link ErrorMessageListener} to the dead letter queue and are replayed by the {@link DeadLetterReplay}, on an
+ * embedded broker named as the one the dead letter store connects to
+ */
+public class DeadLetterReplayTest
+{
+    private static final String    TARGET_QUEUE = "Test.DeadLetterReplay";
+    private static final KapuaEid  SCOPE_ID     = new KapuaEid(BigInteger.ONE);
+    private static final KapuaEid  USER_ID      = new KapuaEid(BigInteger.valueOf(42));
+
+    private static BrokerService   broker;
+    private static DefaultCamelContext camelContext;
+
+    @BeforeClass
+    public static void startBroker()
+        throws Exception
+    {
+        System.setProperty(BrokerSettingKey.DEAD_LETTER_JOURNAL_DIR.key(), Files.createTempDirectory("kapua-dead-letter").toString());
+        ((MockedLocator) KapuaLocator.getInstance()).setMockedService(MetricsService.class, new MetricsServiceImpl());
+
+        broker = new BrokerService();
+        broker.setBrokerName("kapua");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        camelContext = new DefaultCamelContext();
+    }
+
+    @AfterClass
+    public static void stopBroker()
+        throws Exception
+    {
+        DeadLetterStore.getInstance().close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    public void testReplay()
+        throws Exception
+    {
+        // Given 20 failed messages, 5 of them stored twice (an interrupted journal drain)
+        ErrorMessageListener errorMessageListener = new ErrorMessageListener();
+        for (int i = 0; i < 20; i++) {
+            errorMessageListener.processMessage(failedExchange("message-" + i), null);
+        }
+        for (int i = 0; i < 5; i++) {
+            errorMessageListener.processMessage(failedExchange("message-" + i), null);
+        }
+        assertSessionNotStored();
+
+        // When
+        long replayed = DeadLetterReplay.getInstance().replay(Long.MAX_VALUE, 100000);
+
+        // Then
+        assertEquals(20, replayed);
+        Set<String> payloads = new HashSet<>();
+        Connection connection = DeadLetterStore.getInstance().getConnectionFactory().createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(TARGET_QUEUE));
+            Message message;
+            while ((message = consumer.receive(1000)) != null) {
+                assertEquals(DeliveryMode.PERSISTENT, message.getJMSDeliveryMode());
+                assertReplayedHeaders((ActiveMQMessage) message);
+                byte[] body = new byte[(int) ((BytesMessage) message).getBodyLength()];
+                ((BytesMessage) message).readBytes(body);
+                assertTrue(payloads.add(new String(body, StandardCharsets.UTF_8)));
+            }
+            assertEquals(20, payloads.size());
+
+            MessageConsumer deadLetters = session.createConsumer(session.createQueue(DeadLetterStore.getInstance().getQueueName()));
+            assertNull(deadLetters.receive(500));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static Exchange failedExchange(String messageId)
+    {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setHeader("JMSMessageID", messageId);
+        exchange.getIn().setHeader(CamelConstants.JMS_HEADER_DESTINATION, new ActiveMQQueue(TARGET_QUEUE));
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_SESSION, new KapuaSession(null, SCOPE_ID, SCOPE_ID, USER_ID, "device-user"));
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID, new KapuaEid(BigInteger.TEN));
+        exchange.getIn().setHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC, "account.device.data");
+        exchange.getIn().setBody(messageId.getBytes(StandardCharsets.UTF_8));
+        exchange.setProperty(CamelConstants.JMS_EXCHANGE_FAILURE_EXCEPTION, new IllegalStateException("failed"));
+        return exchange;
+    }
+
+    private static void assertSessionNotStored()
+        throws Exception
+    {
+        Connection connection = DeadLetterStore.getInstance().getConnectionFactory().createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            @SuppressWarnings("unchecked")
+            Enumeration<Message> messages = session.createBrowser(session.createQueue(DeadLetterStore.getInstance().getQueueName())).getEnumeration();
+            int count = 0;
+            for (Message message : Collections.list(messages)) {
+                byte[] record = new byte[(int) ((BytesMessage) message).getBodyLength()];
+                ((BytesMessage) message).readBytes(record);
+                DeadLetter deadLetter = DeadLetter.decode(record);
+                assertFalse(deadLetter.getHeaders().containsKey(MessageConstants.HEADER_KAPUA_SESSION));
+                assertFalse(deadLetter.getHeaders().containsKey(MessageConstants.HEADER_KAPUA_CONNECTION_ID));
+                assertEquals(USER_ID.toCompactId(), deadLetter.getHeaders().get(MessageConstants.HEADER_KAPUA_DEAD_LETTER_USER_ID));
+                count++;
+            }
+            assertEquals(25, count);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static void assertReplayedHeaders(ActiveMQMessage message)
+        throws Exception
+    {
+        assertNull(message.getProperty(MessageConstants.HEADER_KAPUA_SESSION));
+        assertEquals("account.device.data", message.getStringProperty(MessageConstants.PROPERTY_ORIGINAL_TOPIC));
+        // only primitive properties: the message can be written to the broker store
+        new OpenWireFormat().marshal(message);
+
+        // the route binds the session again
+        org.apache.camel.Message routeMessage = new DefaultExchange(camelContext).getIn();
+        routeMessage.setHeaders(message.getProperties());
+        DeadLetterSession.restore(routeMessage);
+
+        KapuaSession session = routeMessage.getHeader(MessageConstants.HEADER_KAPUA_SESSION, KapuaSession.class);
+        assertNotNull(session);
+        assertNull(session.getAccessToken());
+        assertEquals(SCOPE_ID, session.getScopeId());
+        assertEquals(USER_ID, session.getUserId());
+        assertEquals("device-user", session.getUsername());
+        assertEquals(new KapuaEid(BigInteger.TEN), routeMessage.getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID));
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.deadletter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.junit.Test;
+
+public class DeadLetterTest
+{
+    @Test
+    public void testEncodeDecode()
+        throws Exception
+    {
+        Map<String, Object> headers = new LinkedHashMap<>();
+        headers.put("string", "value");
+        headers.put("boolean", true);
+        headers.put("byte", (byte) 1);
+        headers.put("short", (short) 2);
+        headers.put("integer", 3);
+        headers.put("long", 4L);
+        headers.put("float", 5.5f);
+        headers.put("double", 6.5d);
+        headers.put("id", new KapuaEid(BigInteger.valueOf(42)));
+        headers.put("date", new Date(1000));
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        DeadLetter deadLetter = new DeadLetter("id-1", 1000L, "queue://Test", "generic", "bean:test", "cause", headers, payload);
+
+        DeadLetter decoded = DeadLetter.decode(deadLetter.encode());
+
+        assertEquals("id-1", decoded.getId());
+        assertEquals(1000L, decoded.getFailedOn());
+        assertEquals("queue://Test", decoded.getDestination());
+        assertEquals("generic", decoded.getService());
+        assertEquals("bean:test", decoded.getFailureEndpoint());
+        assertEquals("cause", decoded.getCause());
+        assertEquals(headers, decoded.getHeaders());
+        assertEquals(Arrays.asList(headers.keySet().toArray()), Arrays.asList(decoded.getHeaders().keySet().toArray()));
+        assertArrayEquals(payload, decoded.getPayload());
+    }
+
+    @Test
+    public void testEncodeDecodeEmpty()
+        throws Exception
+    {
+        DeadLetter decoded = DeadLetter.decode(new DeadLetter("id-1", 0L, null, null, null, null, null, null).encode());
+
+        assertNull(decoded.getDestination());
+        assertNull(decoded.getService());
+        assertNull(decoded.getFailureEndpoint());
+        assertNull(decoded.getCause());
+        assertEquals(0, decoded.getHeaders().size());
+        assertEquals(0, decoded.getPayload().length);
+    }
+
+    @Test
+    public void testLongCause()
+        throws Exception
+    {
+        // longer than the 64KB limit of writeUTF
+        char[] cause = new char[100000];
+        Arrays.fill(cause, 'x');
+
+        DeadLetter decoded = DeadLetter.decode(new DeadLetter("id-1", 0L, null, null, null, new String(cause), null, null).encode());
+
+        assertEquals(new String(cause), decoded.getCause());
+    }
+
+    @Test
+    public void testUntrustedHeaderIsNotEncoded()
+        throws Exception
+    {
+        Map<String, Object> headers = new LinkedHashMap<>();
+        headers.put("list", new ArrayList<>(Arrays.asList("a", "b")));
+        headers.put("string", "value");
+
+        DeadLetter decoded = DeadLetter.decode(new DeadLetter("id-1", 0L, null, null, null, null, headers, null).encode());
+
+        assertFalse(decoded.getHeaders().containsKey("list"));
+        assertEquals("value", decoded.getHeaders().get("string"));
+    }
+
+    @Test
+    public void testUntrustedClassIsRejected()
+        throws Exception
+    {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(new ArrayList<>(Arrays.asList("a", "b")));
+        }
+
+        try {
+            DeadLetter.decode(record(1, serialized.toByteArray()));
+            fail("Untrusted class accepted");
+        }
+        catch (InvalidClassException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnsupportedVersionIsRejected()
+    {
+        try {
+            DeadLetter.decode(record(99, null));
+            fail("Unsupported version accepted");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordIsRejected()
+        throws Exception
+    {
+        byte[] record = new DeadLetter("id-1", 0L, "queue://Test", null, null, null, null, new byte[100]).encode();
+
+        try {
+            DeadLetter.decode(Arrays.copyOf(record, record.length - 10));
+            fail("Truncated record accepted");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A record with a single object header
+     */
+    private static byte[] record(int version, byte[] object)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(version);
+            writeBytes(out, "id-1".getBytes(StandardCharsets.UTF_8));
+            out.writeLong(0L);
+            for (int i = 0; i < 4; i++) {
+                writeBytes(out, null);
+            }
+            out.writeInt(1);
+            writeBytes(out, "object".getBytes(StandardCharsets.UTF_8));
+            out.writeByte('O');
+            writeBytes(out, object);
+            writeBytes(out, new byte[0]);
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value)
+        throws IOException
+    {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DeviceMessageListenerTest
+{
+    @BeforeClass
+    public static void setUpClass()
+    {
+        // the listeners get the metrics service when their class is loaded
+        ((MockedLocator) KapuaLocator.getInstance()).setMockedService(MetricsService.class, new MetricsServiceImpl());
+    }
+
+    @Test
+    public void testNotificationTopic()
+    {
+        assertEquals("$EDC.account.client.MQTT.CONNECT",
+                     DeviceMessageListener.notificationTopic("$EDC.account.client.MQTT.BIRTH", DeviceMessageListener.NOTIFICATION_CONNECT));
+        assertEquals("$EDC.account.client.MQTT.DISCONNECT",
+                     DeviceMessageListener.notificationTopic("$EDC.account.client.MQTT.DC", DeviceMessageListener.NOTIFICATION_DISCONNECT));
+        assertEquals("$EDC.account.client.MQTT.MISSING",
+                     DeviceMessageListener.notificationTopic("$EDC.account.client.MQTT.LWT", DeviceMessageListener.NOTIFICATION_MISSING));
+        assertNull(DeviceMessageListener.notificationTopic(null, DeviceMessageListener.NOTIFICATION_CONNECT));
+        assertNull(DeviceMessageListener.notificationTopic("BIRTH", DeviceMessageListener.NOTIFICATION_CONNECT));
+    }
+}
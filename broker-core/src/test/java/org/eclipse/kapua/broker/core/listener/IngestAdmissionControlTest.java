@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.listener;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.DefaultUnitOfWork;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.broker.core.deadletter.DeadLetterSession;
+import org.eclipse.kapua.broker.core.listener.IngestAdmissionControl.Admission;
+import org.eclipse.kapua.broker.core.message.CamelKapuaMessage;
+import org.eclipse.kapua.broker.core.message.MessageConstants;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.message.internal.device.data.KapuaDataMessageImpl;
+import org.eclipse.kapua.message.internal.device.data.KapuaDataPayloadImpl;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.DatastoreQuotaService;
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Every account is admitted within its own quota, with the default settings (2 seconds of burst, over quota messages diverted)
+ */
+public class IngestAdmissionControlTest
+{
+    private static final KapuaEid      LIMITED_ACCOUNT       = new KapuaEid(BigInteger.valueOf(10));
+    private static final KapuaEid      OTHER_LIMITED_ACCOUNT = new KapuaEid(BigInteger.valueOf(11));
+    private static final KapuaEid      UNLIMITED_ACCOUNT     = new KapuaEid(BigInteger.valueOf(12));
+    private static final KapuaEid      DISABLED_ACCOUNT      = new KapuaEid(BigInteger.valueOf(13));
+
+    private static DefaultCamelContext camelContext;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        ((MockedLocator) KapuaLocator.getInstance()).setMockedService(MetricsService.class, new MetricsServiceImpl());
+        camelContext = new DefaultCamelContext();
+    }
+
+    @Test
+    public void testAccountsAreIsolated()
+        throws Exception
+    {
+        Map<KapuaId, IngestQuota> quotas = new HashMap<>();
+        quotas.put(LIMITED_ACCOUNT, quota(5, IngestQuota.UNLIMITED));
+        quotas.put(OTHER_LIMITED_ACCOUNT, quota(5, IngestQuota.UNLIMITED));
+        quotas.put(UNLIMITED_ACCOUNT, quota(IngestQuota.UNLIMITED, IngestQuota.UNLIMITED));
+        quotas.put(DISABLED_ACCOUNT, quota(IngestQuota.DISABLED, IngestQuota.UNLIMITED));
+        IngestAdmissionControl admissionControl = new IngestAdmissionControl(scopeId -> quotas.get(scopeId));
+
+        // the limited account exhausts its burst (5 messages per second for 2 seconds)
+        assertEquals(Arrays.asList(10, 5), admit(admissionControl, LIMITED_ACCOUNT, 15));
+
+        // the others are not affected
+        assertEquals(Arrays.asList(10, 5), admit(admissionControl, OTHER_LIMITED_ACCOUNT, 15));
+        assertEquals(Arrays.asList(1000, 0), admit(admissionControl, UNLIMITED_ACCOUNT, 1000));
+        assertEquals(Arrays.asList(0, 5), admit(admissionControl, DISABLED_ACCOUNT, 5));
+    }
+
+    @Test
+    public void testByteRate()
+        throws Exception
+    {
+        Map<KapuaId, IngestQuota> quotas = new HashMap<>();
+        quotas.put(LIMITED_ACCOUNT, quota(IngestQuota.UNLIMITED, 500));
+        IngestAdmissionControl admissionControl = new IngestAdmissionControl(scopeId -> quotas.get(scopeId));
+
+        // 2 seconds of 500 bytes per second
+        assertEquals(Arrays.asList(10, 5), admit(admissionControl, LIMITED_ACCOUNT, 15));
+    }
+
+    @Test
+    public void testQuotaLoadFailure()
+        throws Exception
+    {
+        // the account is not limited until its quota can be loaded
+        IngestAdmissionControl admissionControl = new IngestAdmissionControl(scopeId -> {
+            throw KapuaException.internalError("datastore unavailable");
+        });
+
+        assertEquals(Arrays.asList(100, 0), admit(admissionControl, LIMITED_ACCOUNT, 100));
+    }
+
+    @Test
+    public void testDivertedMessageKeepsTheOriginal()
+        throws Exception
+    {
+        IngestAdmissionControl admissionControl = new IngestAdmissionControl(scopeId -> quota(IngestQuota.UNLIMITED, IngestQuota.UNLIMITED));
+        KapuaEid userId = new KapuaEid(BigInteger.valueOf(20));
+        byte[] raw = new byte[] { 1, 2, 3 };
+
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(raw);
+        exchange.getIn().setHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC, "account.client.app");
+        exchange.getIn().setHeader(CamelConstants.JMS_HEADER_TIMESTAMP, 1000L);
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_SESSION, new KapuaSession(null, LIMITED_ACCOUNT, LIMITED_ACCOUNT, userId, "user"));
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID, new KapuaEid(BigInteger.valueOf(30)));
+        exchange.setUnitOfWork(new DefaultUnitOfWork(exchange));
+        // the route has converted the message before the admission
+        exchange.getIn().setBody("converted");
+        exchange.getIn().setHeader(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION, Admission.DIVERTED.name());
+
+        admissionControl.divert(exchange, null);
+
+        // only plain headers are sent to the broker queue
+        assertArrayEquals(raw, exchange.getIn().getBody(byte[].class));
+        assertNull(exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_SESSION));
+        assertNull(exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID));
+        assertNull(exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION));
+        assertEquals("account.client.app", exchange.getIn().getHeader(MessageConstants.PROPERTY_ORIGINAL_TOPIC));
+
+        // consumed from the queue: the broker sets a new timestamp
+        Exchange dequeued = new DefaultExchange(camelContext);
+        dequeued.getIn().setHeaders(exchange.getIn().getHeaders());
+        dequeued.getIn().setHeader(CamelConstants.JMS_HEADER_TIMESTAMP, 2000L);
+        admissionControl.dequeueDiverted(dequeued, null);
+        DeadLetterSession.restore(dequeued.getIn());
+
+        assertEquals(Long.valueOf(1000L), dequeued.getIn().getHeader(CamelConstants.JMS_HEADER_TIMESTAMP, Long.class));
+        assertEquals(userId, dequeued.getIn().getHeader(MessageConstants.HEADER_KAPUA_SESSION, KapuaSession.class).getUserId());
+        assertEquals(new KapuaEid(BigInteger.valueOf(30)), dequeued.getIn().getHeader(MessageConstants.HEADER_KAPUA_CONNECTION_ID));
+    }
+
+    /**
+     * Admit messages of 100 bytes
+     *
+     * @return the number of admitted and diverted messages
+     */
+    private static List<Integer> admit(IngestAdmissionControl admissionControl, KapuaId scopeId, int count)
+    {
+        int admitted = 0;
+        int diverted = 0;
+        for (int i = 0; i < count; i++) {
+            KapuaDataPayloadImpl payload = new KapuaDataPayloadImpl();
+            payload.setBody(new byte[100]);
+            KapuaDataMessageImpl message = new KapuaDataMessageImpl();
+            message.setScopeId(scopeId);
+            message.setPayload(payload);
+
+            Exchange exchange = new DefaultExchange(camelContext);
+            admissionControl.admit(exchange, new CamelKapuaMessage<>(message, null, null));
+
+            Admission admission = Admission.valueOf(exchange.getIn().getHeader(MessageConstants.HEADER_KAPUA_INGEST_ADMISSION, String.class));
+            if (admission == Admission.ADMITTED) {
+                admitted++;
+            }
+            else if (admission == Admission.DIVERTED) {
+                diverted++;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(admitted, diverted));
+    }
+
+    private static IngestQuota quota(long messageRate, long byteRate)
+    {
+        return new IngestQuota() {
+
+            @Override
+            public long getMessageRate()
+            {
+                return messageRate;
+            }
+
+            @Override
+            public long getByteRate()
+            {
+                return byteRate;
+            }
+        };
+    }
+}
@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.query.KapuaListResult;
+import org.eclipse.kapua.model.query.KapuaQuery;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
+import org.eclipse.kapua.service.device.registry.connection.internal.DeviceConnectionFactoryImpl;
+import org.eclipse.kapua.service.device.registry.connection.internal.DeviceConnectionImpl;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DeviceConnectionStatusWriterTest
+{
+    private static final KapuaEid SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final KapuaEid USER_ID  = new KapuaEid(BigInteger.valueOf(42));
+
+    private final DeviceConnectionFactoryImpl    deviceConnectionFactory = new DeviceConnectionFactoryImpl();
+    private final List<DeviceConnection>         idChanges               = Collections.synchronizedList(new ArrayList<>());
+
+    private InMemoryDeviceConnectionService      deviceConnectionService;
+    private DeviceConnectionStatusWriter         writer;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        ((MockedLocator) KapuaLocator.getInstance()).setMockedService(MetricsService.class, new MetricsServiceImpl());
+    }
+
+    @Before
+    public void setUp()
+    {
+        deviceConnectionService = new InMemoryDeviceConnectionService();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testChangesOfTheSameConnectionAreCoalesced()
+        throws Exception
+    {
+        // Given a batch delay longer than the test
+        DeviceConnection first = deviceConnectionService.store("first");
+        DeviceConnection second = deviceConnectionService.store("second");
+        startWriter(60000);
+
+        // When
+        writer.write(change(first, DeviceConnectionStatus.CONNECTED));
+        writer.write(change(second, DeviceConnectionStatus.CONNECTED));
+        writer.write(change(first, DeviceConnectionStatus.DISCONNECTED));
+        writer.write(change(first, DeviceConnectionStatus.MISSING));
+        assertEquals(2, writer.getPendingCount());
+        writer.stop();
+
+        // Then a single batch, in the order of the first change of every connection, with the last status
+        assertEquals(Arrays.asList(Arrays.asList(first.getId() + ":MISSING", second.getId() + ":CONNECTED")), deviceConnectionService.batches);
+        assertEquals(DeviceConnectionStatus.MISSING, deviceConnectionService.find(SCOPE_ID, first.getId()).getStatus());
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    public void testChangeQueuedDuringABatchIsWrittenAfterIt()
+        throws Exception
+    {
+        // Given a batch in progress
+        DeviceConnection connection = deviceConnectionService.store("client");
+        CountDownLatch release = deviceConnectionService.blockNextBatch(false);
+        startWriter(1);
+        writer.write(change(connection, DeviceConnectionStatus.CONNECTED));
+        assertTrue(deviceConnectionService.batchStarted.await(5, TimeUnit.SECONDS));
+
+        // When
+        writer.write(change(connection, DeviceConnectionStatus.DISCONNECTED));
+        release.countDown();
+        writer.stop();
+
+        // Then
+        assertEquals(Arrays.asList(Arrays.asList(connection.getId() + ":CONNECTED"), Arrays.asList(connection.getId() + ":DISCONNECTED")),
+                     deviceConnectionService.batches);
+        assertEquals(DeviceConnectionStatus.DISCONNECTED, deviceConnectionService.find(SCOPE_ID, connection.getId()).getStatus());
+    }
+
+    @Test
+    public void testFailedBatchDoesNotOverwriteANewerChange()
+        throws Exception
+    {
+        // Given a failing batch in progress
+        DeviceConnection connection = deviceConnectionService.store("client");
+        DeviceConnection other = deviceConnectionService.store("other");
+        CountDownLatch release = deviceConnectionService.blockNextBatch(true);
+        startWriter(1);
+        writer.write(change(connection, DeviceConnectionStatus.CONNECTED));
+        writer.write(change(other, DeviceConnectionStatus.CONNECTED));
+        assertTrue(deviceConnectionService.batchStarted.await(5, TimeUnit.SECONDS));
+
+        // When
+        writer.write(change(connection, DeviceConnectionStatus.DISCONNECTED));
+        release.countDown();
+
+        // Then the failed batch is retried, with the newer change of the connection
+        assertTrue(deviceConnectionService.awaitUpdated(2, 5000));
+        writer.stop();
+        List<String> retried = deviceConnectionService.batches.get(deviceConnectionService.batches.size() - 1);
+        assertTrue(retried.contains(connection.getId() + ":DISCONNECTED"));
+        assertTrue(retried.contains(other.getId() + ":CONNECTED"));
+        assertEquals(DeviceConnectionStatus.DISCONNECTED, deviceConnectionService.find(SCOPE_ID, connection.getId()).getStatus());
+        assertEquals(DeviceConnectionStatus.CONNECTED, deviceConnectionService.find(SCOPE_ID, other.getId()).getStatus());
+    }
+
+    @Test
+    public void testChangeIsWrittenDirectlyIfTheWriterIsStopped()
+        throws Exception
+    {
+        DeviceConnection connection = deviceConnectionService.store("client");
+        writer = newWriter(1);
+
+        writer.write(change(connection, DeviceConnectionStatus.DISCONNECTED));
+
+        assertEquals(Arrays.asList(Arrays.asList(connection.getId() + ":DISCONNECTED")), deviceConnectionService.batches);
+    }
+
+    @Test
+    public void testDeletedConnectionFallsBackToTheConnectionOfTheClientId()
+        throws Exception
+    {
+        // Given a cached id of a deleted connection, the client id connected again meanwhile
+        DeviceConnection deleted = deviceConnectionService.store("client");
+        deviceConnectionService.delete(SCOPE_ID, deleted.getId());
+        DeviceConnection current = deviceConnectionService.store("client");
+        writer = newWriter(1);
+
+        // When
+        writer.write(change(deleted, DeviceConnectionStatus.DISCONNECTED));
+
+        // Then
+        assertEquals(DeviceConnectionStatus.DISCONNECTED, deviceConnectionService.find(SCOPE_ID, current.getId()).getStatus());
+        assertEquals(1, idChanges.size());
+        assertEquals(current.getId(), idChanges.get(0).getId());
+    }
+
+    @Test
+    public void testDeletedConnectionIsCreatedAgain()
+        throws Exception
+    {
+        // Given a cached id of a deleted connection
+        DeviceConnection deleted = deviceConnectionService.store("client");
+        deviceConnectionService.delete(SCOPE_ID, deleted.getId());
+        writer = newWriter(1);
+
+        // When
+        writer.write(change(deleted, DeviceConnectionStatus.MISSING));
+
+        // Then
+        DeviceConnection created = deviceConnectionService.findByClientId(SCOPE_ID, "client");
+        assertEquals(DeviceConnectionStatus.MISSING, created.getStatus());
+        assertEquals("10.0.0.1", created.getClientIp());
+        assertEquals("10.0.1.1", created.getServerIp());
+        assertEquals(1, idChanges.size());
+        assertEquals(created.getId(), idChanges.get(0).getId());
+    }
+
+    private void startWriter(long batchDelay)
+    {
+        writer = newWriter(batchDelay);
+        writer.start();
+    }
+
+    private DeviceConnectionStatusWriter newWriter(long batchDelay)
+    {
+        return new DeviceConnectionStatusWriter(deviceConnectionService, deviceConnectionFactory, idChanges::add, true, 100, 10, batchDelay, 1000L, 10L, 10000L);
+    }
+
+    private DeviceConnection change(DeviceConnection deviceConnection, DeviceConnectionStatus status)
+    {
+        DeviceConnection change = deviceConnectionFactory.newDeviceConnection(SCOPE_ID);
+        change.setId(deviceConnection.getId());
+        change.setClientId(deviceConnection.getClientId());
+        change.setStatus(status);
+        change.setUserId(USER_ID);
+        change.setClientIp("10.0.0.1");
+        change.setServerIp("10.0.1.1");
+        change.setProtocol("MQTT");
+        return change;
+    }
+
+    /**
+     * Device connections kept in memory, recording the batches of status changes
+     */
+    private static class InMemoryDeviceConnectionService implements DeviceConnectionService
+    {
+        private final Map<KapuaId, DeviceConnection> deviceConnections = new LinkedHashMap<>();
+        private final List<List<String>>              batches           = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch                  batchStarted      = new CountDownLatch(1);
+        private long                                  nextId            = 1;
+        private CountDownLatch                        release;
+        private boolean                               failBlocked;
+        private int                                   updatedCount;
+
+        synchronized DeviceConnection store(String clientId)
+        {
+            DeviceConnectionImpl deviceConnection = new DeviceConnectionImpl(SCOPE_ID);
+            deviceConnection.setId(new KapuaEid(BigInteger.valueOf(nextId++)));
+            deviceConnection.setClientId(clientId);
+            deviceConnection.setStatus(DeviceConnectionStatus.CONNECTED);
+            deviceConnection.setUserId(USER_ID);
+            deviceConnection.setProtocol("MQTT");
+            deviceConnections.put(deviceConnection.getId(), deviceConnection);
+            return deviceConnection;
+        }
+
+        /**
+         * Block the next batch until the returned latch is released
+         *
+         * @param fail true if the blocked batch fails once released
+         * @return
+         */
+        CountDownLatch blockNextBatch(boolean fail)
+        {
+            release = new CountDownLatch(1);
+            failBlocked = fail;
+            return release;
+        }
+
+        /**
+         * Wait for the number of changes written (found or not)
+         *
+         * @param count
+         * @param timeout
+         * @return false if the timeout elapsed
+         * @throws InterruptedException
+         */
+        synchronized boolean awaitUpdated(int count, long timeout)
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            long wait;
+            while (updatedCount < count && (wait = deadline - System.currentTimeMillis()) > 0) {
+                wait(wait);
+            }
+            return updatedCount >= count;
+        }
+
+        @Override
+        public List<DeviceConnection> updateStatus(List<DeviceConnection> changes)
+            throws KapuaException
+        {
+            List<String> batch = new ArrayList<>();
+            for (DeviceConnection change : changes) {
+                batch.add(change.getId() + ":" + change.getStatus());
+            }
+            batches.add(batch);
+
+            CountDownLatch blocked = release;
+            if (blocked != null) {
+                release = null;
+                batchStarted.countDown();
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (failBlocked) {
+                    throw KapuaException.internalError("database unavailable");
+                }
+            }
+
+            List<DeviceConnection> updated = new ArrayList<>();
+            synchronized (this) {
+                updatedCount += changes.size();
+                notifyAll();
+                for (DeviceConnection change : changes) {
+                    DeviceConnection deviceConnection = deviceConnections.get(change.getId());
+                    if (deviceConnection != null) {
+                        deviceConnection.setStatus(change.getStatus());
+                        deviceConnection.setClientIp(change.getClientIp());
+                        deviceConnection.setServerIp(change.getServerIp());
+                        deviceConnection.setUserId(change.getUserId());
+                        deviceConnection.setProtocol(change.getProtocol());
+                        updated.add(deviceConnection);
+                    }
+                }
+            }
+            return updated;
+        }
+
+        @Override
+        public synchronized DeviceConnection create(DeviceConnectionCreator creator)
+        {
+            DeviceConnection deviceConnection = store(creator.getClientId());
+            deviceConnection.setClientIp(creator.getClientIp());
+            deviceConnection.setServerIp(creator.getServerIp());
+            return deviceConnection;
+        }
+
+        @Override
+        public synchronized DeviceConnection find(KapuaId scopeId, KapuaId entityId)
+        {
+            return deviceConnections.get(entityId);
+        }
+
+        @Override
+        public synchronized DeviceConnection findByClientId(KapuaId scopeId, String clientId)
+        {
+            for (DeviceConnection deviceConnection : deviceConnections.values()) {
+                if (deviceConnection.getClientId().equals(clientId)) {
+                    return deviceConnection;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized void delete(KapuaId scopeId, KapuaId entityId)
+        {
+            deviceConnections.remove(entityId);
+        }
+
+        @Override
+        public DeviceConnection update(DeviceConnection entity)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KapuaListResult<DeviceConnection> query(KapuaQuery<DeviceConnection> query)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long count(KapuaQuery<DeviceConnection> query)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void connect(DeviceConnectionCreator creator)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void disconnect(KapuaId scopeId, String clientId)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.quota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class AccountIngestQuotaTest
+{
+    private static final long SECONDS = TimeUnit.SECONDS.toNanos(1);
+
+    private Counter            admittedMessages;
+    private Counter            admittedBytes;
+    private Counter            throttledMessages;
+    private AccountIngestQuota quota;
+    private long               now;
+
+    @Before
+    public void setUp()
+    {
+        admittedMessages = new Counter();
+        admittedBytes = new Counter();
+        throttledMessages = new Counter();
+        quota = new AccountIngestQuota(new KapuaEid(BigInteger.ONE), admittedMessages, admittedBytes, throttledMessages);
+        now = System.nanoTime();
+    }
+
+    @Test
+    public void testUnlimited()
+    {
+        quota.update(AccountIngestQuota.UNLIMITED, AccountIngestQuota.UNLIMITED, 2, now);
+
+        assertEquals(10000, admitAll(100, now));
+        assertEquals(10000, admittedMessages.getCount());
+        assertEquals(1000000, admittedBytes.getCount());
+        assertEquals(0, throttledMessages.getCount());
+    }
+
+    @Test
+    public void testMessageRate()
+    {
+        // 5 messages per second, 2 seconds of burst
+        quota.update(5, AccountIngestQuota.UNLIMITED, 2, now);
+
+        assertEquals(10, admitAll(100, now));
+        assertEquals(5, admitAll(100, now + SECONDS));
+        assertEquals(15, admittedMessages.getCount());
+        assertEquals(2, throttledMessages.getCount());
+    }
+
+    @Test
+    public void testByteRate()
+    {
+        // 1000 bytes per second, 1 second of burst
+        quota.update(AccountIngestQuota.UNLIMITED, 1000, 1, now);
+
+        assertTrue(quota.admit(600, now));
+        assertFalse(quota.admit(600, now));
+        assertTrue(quota.admit(400, now));
+        assertEquals(2, admittedMessages.getCount());
+        assertEquals(1000, admittedBytes.getCount());
+        assertEquals(1, throttledMessages.getCount());
+    }
+
+    @Test
+    public void testMessageTokenReleasedOnByteRate()
+    {
+        // a message over the byte rate does not consume the message rate
+        quota.update(2, 1000, 1, now);
+
+        assertTrue(quota.admit(1000, now));
+        assertFalse(quota.admit(10, now));
+        assertTrue(quota.admit(10, now + TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(2, admittedMessages.getCount());
+        assertEquals(1, throttledMessages.getCount());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        quota.update(0, AccountIngestQuota.UNLIMITED, 2, now);
+
+        assertFalse(quota.admit(1, now));
+        assertFalse(quota.admit(1, now + 10 * SECONDS));
+        assertEquals(0, admittedMessages.getCount());
+        assertEquals(2, throttledMessages.getCount());
+    }
+
+    @Test
+    public void testSameLimitsKeepTheBurst()
+    {
+        quota.update(5, AccountIngestQuota.UNLIMITED, 1, now);
+        assertEquals(5, admitAll(1, now));
+
+        // reloading the same limits does not refill the bucket
+        quota.update(5, AccountIngestQuota.UNLIMITED, 1, now);
+        assertEquals(0, admitAll(1, now));
+
+        // new limits do
+        quota.update(10, AccountIngestQuota.UNLIMITED, 1, now);
+        assertEquals(10, admitAll(1, now));
+    }
+
+    @Test
+    public void testExpiration()
+    {
+        quota.update(5, AccountIngestQuota.UNLIMITED, 1, now);
+
+        assertFalse(quota.isExpired(now + 60 * SECONDS, 60 * SECONDS));
+        assertTrue(quota.isExpired(now + 61 * SECONDS, 60 * SECONDS));
+
+        quota.postpone(now + 61 * SECONDS);
+        assertFalse(quota.isExpired(now + 61 * SECONDS, 60 * SECONDS));
+    }
+
+    @Test
+    public void testSingleLoader()
+    {
+        assertTrue(quota.startLoad());
+        assertFalse(quota.startLoad());
+        quota.endLoad();
+        assertTrue(quota.startLoad());
+    }
+
+    private int admitAll(long size, long time)
+    {
+        int admitted = 0;
+        while (admitted < 10000 && quota.admit(size, time)) {
+            admitted++;
+        }
+        return admitted;
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.quota;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testBurst()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 20, now);
+
+        // a new bucket is full
+        assertEquals(20, acquireAll(bucket, now));
+    }
+
+    @Test
+    public void testRefill()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 20, now);
+        acquireAll(bucket, now);
+
+        // one token every 100 ms
+        assertFalse(bucket.tryAcquire(1, now + 99 * MILLIS));
+        assertTrue(bucket.tryAcquire(1, now + 100 * MILLIS));
+        assertFalse(bucket.tryAcquire(1, now + 100 * MILLIS));
+        assertEquals(5, acquireAll(bucket, now + 600 * MILLIS));
+    }
+
+    @Test
+    public void testRefillUpToCapacity()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 20, now);
+        acquireAll(bucket, now);
+
+        // idle for much longer than needed to fill the bucket
+        assertEquals(20, acquireAll(bucket, now + TimeUnit.MINUTES.toNanos(10)));
+    }
+
+    @Test
+    public void testMultipleTokens()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(1000, 1000, now);
+
+        assertTrue(bucket.tryAcquire(600, now));
+        assertFalse(bucket.tryAcquire(600, now));
+        assertTrue(bucket.tryAcquire(400, now));
+        assertTrue(bucket.tryAcquire(600, now + 600 * MILLIS));
+    }
+
+    @Test
+    public void testRequestOverCapacity()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 20, now);
+
+        // served as a request for the whole capacity, so a large message is not rejected forever
+        assertTrue(bucket.tryAcquire(100, now));
+        assertFalse(bucket.tryAcquire(1, now));
+        assertFalse(bucket.tryAcquire(100, now + 1000 * MILLIS));
+        assertTrue(bucket.tryAcquire(100, now + 2000 * MILLIS));
+    }
+
+    @Test
+    public void testRelease()
+    {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 20, now);
+        acquireAll(bucket, now);
+
+        bucket.release(3);
+
+        assertEquals(3, acquireAll(bucket, now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroRate()
+    {
+        new TokenBucket(0, 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity()
+    {
+        new TokenBucket(10, 0);
+    }
+
+    private static int acquireAll(TokenBucket bucket, long now)
+    {
+        int acquired = 0;
+        while (bucket.tryAcquire(1, now)) {
+            acquired++;
+        }
+        return acquired;
+    }
+}
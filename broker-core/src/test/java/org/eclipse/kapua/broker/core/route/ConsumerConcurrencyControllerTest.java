@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.route;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.kapua.broker.core.route.ConsumerConcurrencyController.Decision;
+import org.junit.Test;
+
+public class ConsumerConcurrencyControllerTest
+{
+    @Test
+    public void testInitialConsumersAreBounded()
+    {
+        assertEquals(10, controller(2, 32, 10, 0).getConsumers());
+        assertEquals(8, controller(2, 8, 10, 0).getConsumers());
+        assertEquals(4, controller(4, 8, 1, 0).getConsumers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds()
+    {
+        controller(4, 2, 2, 0);
+    }
+
+    @Test
+    public void testScaleUpWhenTheBacklogDoesNotDrainInTime()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 10, 0);
+
+        // growing backlog: half the consumers are added
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, -10, 500, 20, 0.1, false));
+        assertEquals(15, controller.getConsumers());
+        // draining, but not within the 10 seconds target
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, 50, 750, 20, 0.1, false));
+        assertEquals(22, controller.getConsumers());
+        // up to the maximum
+        controller.decide(1000, 0, 1100, 20, 0.1, false);
+        assertEquals(32, controller.getConsumers());
+        assertEquals(Decision.HOLD, controller.decide(1000, 0, 1600, 20, 0.1, false));
+        assertEquals(32, controller.getConsumers());
+    }
+
+    @Test
+    public void testScaleUpStep()
+    {
+        ConsumerConcurrencyController controller = new ConsumerConcurrencyController(2, 32, 2, 3, 100, 10, 10000, 500, 0.9, 0, 3);
+
+        // the configured step is bigger than half the consumers
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, 0, 100, 20, 0.1, false));
+        assertEquals(5, controller.getConsumers());
+    }
+
+    @Test
+    public void testHoldWhenTheBacklogDrainsInTime()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 10, 0);
+
+        assertEquals(Decision.HOLD, controller.decide(1000, 200, 500, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(50, -10, 500, 20, 0.1, false));
+        assertEquals(10, controller.getConsumers());
+    }
+
+    @Test
+    public void testBackOff()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 20, 0);
+
+        // datastore loaded above the threshold
+        assertEquals(Decision.BACK_OFF, controller.decide(1000, 0, 500, 20, 0.95, false));
+        assertEquals(15, controller.getConsumers());
+        // datastore rejections
+        assertEquals(Decision.BACK_OFF, controller.decide(1000, 0, 500, 20, 0.1, true));
+        assertEquals(11, controller.getConsumers());
+        // processing latency above the limit
+        assertEquals(Decision.BACK_OFF, controller.decide(1000, 0, 500, 600, 0.1, false));
+        assertEquals(8, controller.getConsumers());
+        // down to the minimum
+        for (int i = 0; i < 10; i++) {
+            controller.decide(1000, 0, 500, 20, 1, true);
+        }
+        assertEquals(2, controller.getConsumers());
+        assertEquals(Decision.HOLD, controller.decide(1000, 0, 500, 20, 1, true));
+    }
+
+    @Test
+    public void testBackOffDuringTheCooldown()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 10, 2);
+
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, 0, 500, 20, 0.1, false));
+        assertEquals(15, controller.getConsumers());
+        assertEquals(Decision.BACK_OFF, controller.decide(1000, 0, 500, 20, 0.1, true));
+        assertEquals(11, controller.getConsumers());
+    }
+
+    @Test
+    public void testCooldownHoldsAfterAChange()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 10, 2);
+
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, 0, 500, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(1000, 0, 750, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(1000, 0, 750, 20, 0.1, false));
+        assertEquals(15, controller.getConsumers());
+        assertEquals(Decision.SCALE_UP, controller.decide(1000, 0, 750, 20, 0.1, false));
+        assertEquals(22, controller.getConsumers());
+    }
+
+    @Test
+    public void testScaleDownAfterIdleSamples()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 4, 0);
+
+        // 3 samples below the low watermark, 50 msg/s of 20 ms keep 1 consumer busy
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(Decision.SCALE_DOWN, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(3, controller.getConsumers());
+        // the idle samples are counted again
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(Decision.SCALE_DOWN, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(2, controller.getConsumers());
+        // not below the minimum
+        for (int i = 0; i < 6; i++) {
+            assertEquals(Decision.HOLD, controller.decide(0, 0, 0, 0, 0, false));
+        }
+        assertEquals(2, controller.getConsumers());
+    }
+
+    @Test
+    public void testNoScaleDownOfBusyConsumers()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 4, 0);
+
+        // 150 msg/s of 20 ms keep 3 consumers busy: 3 consumers would be loaded more than 75%
+        for (int i = 0; i < 6; i++) {
+            assertEquals(Decision.HOLD, controller.decide(5, 0, 150, 20, 0.1, false));
+        }
+        assertEquals(4, controller.getConsumers());
+    }
+
+    @Test
+    public void testBacklogAboveTheLowWatermarkResetsTheIdleSamples()
+    {
+        ConsumerConcurrencyController controller = controller(2, 32, 4, 0);
+
+        controller.decide(5, 0, 50, 20, 0.1, false);
+        controller.decide(5, 0, 50, 20, 0.1, false);
+        controller.decide(50, 10, 50, 20, 0.1, false);
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(Decision.HOLD, controller.decide(5, 0, 50, 20, 0.1, false));
+        assertEquals(4, controller.getConsumers());
+        assertEquals(Decision.SCALE_DOWN, controller.decide(5, 0, 50, 20, 0.1, false));
+    }
+
+    /**
+     * Controller with the default settings
+     */
+    private static ConsumerConcurrencyController controller(int minConsumers, int maxConsumers, int initialConsumers, int cooldownSamples)
+    {
+        return new ConsumerConcurrencyController(minConsumers, maxConsumers, initialConsumers, 2, 100, 10, 10000, 500, 0.9, cooldownSamples, 3);
+    }
+}
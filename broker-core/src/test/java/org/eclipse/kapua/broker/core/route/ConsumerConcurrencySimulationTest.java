@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.broker.core.route;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load harness of the {@link ConsumerConcurrencyController}: a fluid model of the main route, sampled as the
+ * {@link AdaptiveConcurrencyRoutePolicy} does, compares the adaptive consumers with the former static 10 consumers.<br>
+ * <br>
+ * Every simulated second the messages arrive at the base rate (plus the burst rate during the burst), every consumer processes
+ * a message every {@link #SERVICE_TIME} milliseconds and the datastore stores at most {@link #DATASTORE_CAPACITY} messages per second:
+ * beyond that the processing time grows with the consumers sharing the datastore and the datastore load is 1.<br>
+ * The model is deterministic, change the constants to reproduce other loads.
+ */
+public class ConsumerConcurrencySimulationTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerConcurrencySimulationTest.class);
+
+    private static final double SERVICE_TIME       = 20;    // ms per message per consumer
+    private static final double DATASTORE_CAPACITY = 1500;  // messages per second
+    private static final double BASE_RATE          = 300;   // messages per second
+    private static final double BURST_RATE         = 1000;  // messages per second on top of the base rate
+    private static final int    BURST_DURATION     = 30;    // seconds
+    private static final int    SAMPLE_INTERVAL    = 5;     // seconds
+    private static final int    DURATION           = 600;   // seconds
+
+    @Test
+    public void testBurstDrainsFasterThanStaticConsumers()
+    {
+        Result adaptive = simulate(new ConsumerConcurrencyController(2, 32, 10, 2, 100, 10, 10000, 500, 0.9, 2, 3));
+        Result fixed = simulate(new ConsumerConcurrencyController(10, 10, 10, 2, 100, 10, 10000, 500, 0.9, 2, 3));
+        logger.info("Burst drained in {}s with adaptive consumers (peak backlog {}, up to {} consumers), {}s with 10 static consumers (peak backlog {})",
+                    new Object[] { adaptive.drainTime, adaptive.peakBacklog, adaptive.peakConsumers, fixed.drainTime, fixed.peakBacklog });
+
+        assertTrue("Adaptive consumers did not drain the burst", adaptive.drainTime > 0);
+        assertTrue("Static consumers did not drain the burst", fixed.drainTime > 0);
+        assertTrue(adaptive.drainTime < fixed.drainTime);
+        assertTrue(adaptive.peakBacklog < fixed.peakBacklog);
+        // back to the base load: the consumers are released
+        assertTrue(adaptive.finalConsumers < adaptive.peakConsumers);
+    }
+
+    @Test
+    public void testSteadyLoadIsServedWithFewerConsumers()
+    {
+        Result adaptive = simulate(new ConsumerConcurrencyController(2, 32, 10, 2, 100, 10, 10000, 500, 0.9, 2, 3), 0);
+
+        // 300 msg/s of 20 ms keep 6 consumers busy, some more are needed to stay below 75% utilization
+        assertTrue(adaptive.peakBacklog < 100);
+        assertTrue(adaptive.finalConsumers <= 10);
+        assertTrue(adaptive.finalConsumers >= 6);
+    }
+
+    private static Result simulate(ConsumerConcurrencyController controller)
+    {
+        return simulate(controller, BURST_RATE);
+    }
+
+    private static Result simulate(ConsumerConcurrencyController controller, double burstRate)
+    {
+        Result result = new Result();
+        double backlog = 0;
+        double sampleBacklog = 0;
+        double sampleProcessed = 0;
+        double sampleBusyTime = 0;
+        double sampleLoad = 0;
+        for (int second = 1; second <= DURATION; second++) {
+            double arrivals = BASE_RATE + (second <= BURST_DURATION ? burstRate : 0);
+            int consumers = controller.getConsumers();
+
+            // the datastore is shared by the consumers: the processing time grows once it is saturated
+            double demand = consumers * 1000 / SERVICE_TIME;
+            double capacity = Math.min(demand, DATASTORE_CAPACITY);
+            double latency = Math.max(SERVICE_TIME, consumers * 1000 / DATASTORE_CAPACITY);
+            double processed = Math.min(backlog + arrivals, capacity);
+            backlog += arrivals - processed;
+
+            sampleProcessed += processed;
+            sampleBusyTime += processed * latency;
+            sampleLoad = Math.max(sampleLoad, processed / DATASTORE_CAPACITY);
+
+            result.peakBacklog = Math.max(result.peakBacklog, (long) backlog);
+            result.peakConsumers = Math.max(result.peakConsumers, consumers);
+            if (second > BURST_DURATION && result.drainTime == 0 && backlog < 10) {
+                result.drainTime = second;
+            }
+
+            if (second % SAMPLE_INTERVAL == 0) {
+                double drainRate = (sampleBacklog - backlog) / SAMPLE_INTERVAL;
+                controller.decide((long) backlog,
+                                  drainRate,
+                                  sampleProcessed / SAMPLE_INTERVAL,
+                                  sampleProcessed > 0 ? sampleBusyTime / sampleProcessed : 0,
+                                  sampleLoad,
+                                  false);
+                sampleBacklog = backlog;
+                sampleProcessed = 0;
+                sampleBusyTime = 0;
+                sampleLoad = 0;
+            }
+        }
+        result.finalConsumers = controller.getConsumers();
+        return result;
+    }
+
+    private static class Result
+    {
+        private int  drainTime;
+        private long peakBacklog;
+        private int  peakConsumers;
+        private int  finalConsumers;
+    }
+}
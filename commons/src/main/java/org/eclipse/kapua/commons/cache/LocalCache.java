@@ -104,4 +104,14 @@ public class LocalCache<K, V> implements Cache<K, V>
             cache.invalidate(k);
         }
     }
+
+    /**
+     * Remove all the values from the cache
+     */
+    public void removeAll()
+    {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
 }
@@ -20,6 +20,7 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.cache.EntityCacheCustomizer;
 import org.eclipse.kapua.commons.setting.system.SystemSetting;
 import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
 import org.slf4j.Logger;
@@ -74,6 +75,7 @@ public abstract class AbstractEntityManagerFactory implements org.eclipse.kapua.
             configOverrides.put("javax.persistence.jdbc.driver", config.getString(SystemSettingKey.DB_JDBC_DRIVER));
 
             configOverrides.put("eclipselink.cache.shared.default", "false"); // This has to be set to false in order to disable the local object cache of EclipseLink.
+            configOverrides.put("eclipselink.session.customizer", EntityCacheCustomizer.class.getName()); // Enables the shared cache for the configured entities only
 
             configOverrides.put("eclipselink.connection-pool.default.url", jdbcConnectionUrlResolver.connectionUrl());
             configOverrides.put("eclipselink.connection-pool.default.user", config.getString(SystemSettingKey.DB_USERNAME));
@@ -85,9 +87,16 @@ public abstract class AbstractEntityManagerFactory implements org.eclipse.kapua.
             configOverrides.put("eclipselink.connection-pool.default.max", config.getString(SystemSettingKey.DB_POOL_SIZE_MAX));
             configOverrides.put("eclipselink.connection-pool.default.wait", config.getString(SystemSettingKey.DB_POOL_BORROW_TIMEOUT));
 
+            int batchSize = config.getInt(SystemSettingKey.DB_JDBC_BATCH_SIZE, 100);
+            if (batchSize > 1) {
+                configOverrides.put("eclipselink.jdbc.batch-writing", "JDBC");
+                configOverrides.put("eclipselink.jdbc.batch-writing.size", Integer.toString(batchSize));
+            }
+
             // Standalone JPA
             entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName,
                     configOverrides);
+            EntityVersionTracker.getInstance().register(entityManagerFactory);
         } catch (Throwable ex) {
             LOG.error("Error creating EntityManagerFactory", ex);
             throw new ExceptionInInitializerError(ex);
@@ -11,14 +11,19 @@
  *******************************************************************************/
 package org.eclipse.kapua.commons.jpa;
 
+import java.util.function.Function;
+
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.cache.EntityCacheCustomizer;
 import org.eclipse.kapua.model.KapuaEntity;
 import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -204,6 +209,28 @@ public class EntityManager
         return javaxPersitenceEntityManager.createNamedQuery(queryName, clazz);
     }
 
+    /**
+     * Return the typed query registered with the given name, registering the query built by the query builder on the first call.<br>
+     * The query results are cached if the entity is in the shared cache (see {@link EntityCacheCustomizer}).
+     * 
+     * @param queryName
+     * @param clazz
+     * @param queryBuilder
+     * @return
+     */
+    public <E> TypedQuery<E> createNamedQuery(String queryName, Class<E> clazz, Function<CriteriaBuilder, CriteriaQuery<E>> queryBuilder)
+    {
+        javax.persistence.EntityManagerFactory entityManagerFactory = javaxPersitenceEntityManager.getEntityManagerFactory();
+        Session session = JpaHelper.getServerSession(entityManagerFactory);
+        if (session.getQuery(queryName) == null) {
+            TypedQuery<E> query = javaxPersitenceEntityManager.createQuery(queryBuilder.apply(javaxPersitenceEntityManager.getCriteriaBuilder()));
+            EntityCacheCustomizer.setQueryResultsCache(session, clazz, query);
+            // registered twice by concurrent first calls: the same query, the last one wins
+            entityManagerFactory.addNamedQuery(queryName, query);
+        }
+        return javaxPersitenceEntityManager.createNamedQuery(queryName, clazz);
+    }
+
     /**
      * Return native query based on provided sql query
      * 
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Version of the entities of a type, by scope, read from the database: the number of entities, their last modification time and the sum of
+ * their optimistic lock versions. Any insert, update or delete changes it, whichever process commits it (i.e. the broker updating the
+ * devices).<br>
+ * The versions let a caller (i.e. the REST conditional requests) tell whether a collection of entities may have changed with a single
+ * aggregate query instead of reading the collection.<br>
+ * <br>
+ * The persistence units are registered on creation (see {@link AbstractEntityManagerFactory}), their entity types are looked up on the first
+ * request of a version.
+ *
+ * @since 1.0
+ */
+public class EntityVersionTracker
+{
+    private static final EntityVersionTracker instance = new EntityVersionTracker();
+
+    private final List<EntityManagerFactory>  entityManagerFactories = new CopyOnWriteArrayList<>();
+    private final Map<String, VersionQuery>   versionQueries         = new ConcurrentHashMap<>();
+
+    private EntityVersionTracker()
+    {
+    }
+
+    /**
+     * Get the tracker instance
+     *
+     * @return
+     */
+    public static EntityVersionTracker getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the version of the entities of the type in the scope
+     *
+     * @param entityName the entity name (i.e. "Device")
+     * @param scopeId
+     * @return the version, or null if the entity type is unknown
+     * @throws KapuaException
+     */
+    public String getVersion(String entityName, KapuaId scopeId)
+        throws KapuaException
+    {
+        VersionQuery versionQuery = getVersionQuery(entityName);
+        return versionQuery != null ? versionQuery.getVersion(scopeId) : null;
+    }
+
+    /**
+     * Return the version of the entities of the type in any scope
+     *
+     * @param entityName the entity name (i.e. "Device")
+     * @return the version, or null if the entity type is unknown
+     * @throws KapuaException
+     */
+    public String getVersion(String entityName)
+        throws KapuaException
+    {
+        VersionQuery versionQuery = getVersionQuery(entityName);
+        return versionQuery != null ? versionQuery.getVersion(null) : null;
+    }
+
+    void register(EntityManagerFactory entityManagerFactory)
+    {
+        entityManagerFactories.add(entityManagerFactory);
+    }
+
+    private VersionQuery getVersionQuery(String entityName)
+    {
+        VersionQuery versionQuery = versionQueries.get(entityName);
+        if (versionQuery == null) {
+            // the metamodel is read lazily: it deploys the persistence unit
+            for (EntityManagerFactory entityManagerFactory : entityManagerFactories) {
+                for (EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+                    if (entityType.getName().equals(entityName)) {
+                        versionQuery = new VersionQuery(entityManagerFactory, entityType);
+                        versionQueries.put(entityName, versionQuery);
+                        return versionQuery;
+                    }
+                }
+            }
+        }
+        return versionQuery;
+    }
+
+    /**
+     * Aggregate query of the version of an entity type
+     */
+    private static class VersionQuery
+    {
+        private final EntityManagerFactory entityManagerFactory;
+        private final String               query;
+        private final boolean              scoped;
+
+        VersionQuery(EntityManagerFactory entityManagerFactory, EntityType<?> entityType)
+        {
+            Set<String> attributes = new HashSet<>();
+            for (Attribute<?, ?> attribute : entityType.getAttributes()) {
+                attributes.add(attribute.getName());
+            }
+
+            // the entities that are never updated have no modification time nor optimistic lock
+            StringBuilder select = new StringBuilder("SELECT COUNT(e), ");
+            select.append(attributes.contains("modifiedOn") ? "MAX(e.modifiedOn)" : "MAX(e.createdOn)");
+            if (attributes.contains("optlock")) {
+                select.append(", SUM(e.optlock)");
+            }
+            select.append(" FROM ").append(entityType.getName()).append(" e");
+
+            this.entityManagerFactory = entityManagerFactory;
+            this.query = select.toString();
+            this.scoped = attributes.contains("scopeId");
+        }
+
+        String getVersion(KapuaId scopeId)
+            throws KapuaException
+        {
+            EntityManager em = entityManagerFactory.createEntityManager();
+            try {
+                TypedQuery<Object[]> versionQuery;
+                if (scopeId != null && scoped) {
+                    versionQuery = em.createQuery(query + " WHERE e.scopeId = :scopeId", Object[].class);
+                    versionQuery.setParameter("scopeId", scopeId instanceof KapuaEid ? scopeId : new KapuaEid(scopeId.getId()));
+                }
+                else {
+                    versionQuery = em.createQuery(query, Object[].class);
+                }
+                Object[] version = versionQuery.getSingleResult();
+
+                StringBuilder value = new StringBuilder();
+                for (Object part : version) {
+                    if (value.length() > 0) {
+                        value.append('-');
+                    }
+                    value.append(part instanceof Date ? ((Date) part).getTime() : part);
+                }
+                return value.toString();
+            }
+            catch (RuntimeException e) {
+                throw KapuaException.internalError(e);
+            }
+            finally {
+                em.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.persistence.Query;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.identitymaps.CacheIdentityMap;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.queries.ModifyAllQuery;
+import org.eclipse.persistence.sessions.IdentityMapAccessor;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entity shared cache configuration.<br>
+ * The EclipseLink shared cache is disabled by default (see {@link org.eclipse.kapua.commons.jpa.AbstractEntityManagerFactory}): this customizer
+ * enables it for the entities listed by {@link SystemSettingKey#DB_CACHE_ENTITIES} only, with a bounded size and a time to live. The named
+ * queries of these entities registered by {@link org.eclipse.kapua.commons.jpa.EntityManager#createNamedQuery(String, Class, java.util.function.Function)}
+ * (i.e. the natural key lookups) cache their results too.<br>
+ * <br>
+ * EclipseLink updates the cache of the persistence unit on commit. The changes committed are also published, after the commit, to the
+ * {@link EntityCacheInvalidationChannel}, so the caches of the other persistence units and of the other nodes invalidate the changed entities
+ * and their cached query results. The time to live bounds the staleness if an invalidation is lost.
+ *
+ * @since 1.0
+ */
+public class EntityCacheCustomizer implements SessionCustomizer
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntityCacheCustomizer.class);
+
+    private static final String PENDING_PROPERTY = EntityCacheCustomizer.class.getName() + ".pending";
+
+    private static EntityCacheInvalidationChannel invalidationChannel;
+
+    @Override
+    public void customize(Session session)
+        throws Exception
+    {
+        SystemSetting setting = SystemSetting.getInstance();
+        Set<String> entityNames = getCachedEntityNames(setting);
+        if (entityNames.isEmpty()) {
+            return;
+        }
+        int size = setting.getInt(SystemSettingKey.DB_CACHE_SIZE, 1000);
+        long ttl = setting.getLong(SystemSettingKey.DB_CACHE_TTL, 300000L);
+
+        Set<String> cachedNames = new HashSet<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            if (entityNames.contains(descriptor.getAlias())) {
+                descriptor.setCacheIsolation(CacheIsolationType.SHARED);
+                descriptor.setIdentityMapClass(CacheIdentityMap.class);
+                descriptor.setIdentityMapSize(size);
+                descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(ttl));
+                cachedNames.add(descriptor.getAlias());
+            }
+        }
+        if (cachedNames.isEmpty()) {
+            return;
+        }
+        // an entity embedding isolated objects (i.e. the ids) would be protected instead of shared
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            if (descriptor.isAggregateDescriptor()) {
+                descriptor.setCacheIsolation(CacheIsolationType.SHARED);
+            }
+        }
+
+        logger.info("Shared cache of the persistence unit {} enabled for the entities {}", session.getName(), cachedNames);
+        InvalidationHandler handler = new InvalidationHandler(session, cachedNames, getInvalidationChannel());
+        session.getEventManager().addListener(handler);
+        handler.channel.subscribe(handler);
+    }
+
+    /**
+     * Return the invalidation channel configured by {@link SystemSettingKey#DB_CACHE_INVALIDATION_CHANNEL} (shared by all the persistence units)
+     *
+     * @return
+     */
+    public static synchronized EntityCacheInvalidationChannel getInvalidationChannel()
+    {
+        if (invalidationChannel == null) {
+            String channelClass = SystemSetting.getInstance().getString(SystemSettingKey.DB_CACHE_INVALIDATION_CHANNEL,
+                                                                        LocalEntityCacheInvalidationChannel.class.getName());
+            try {
+                invalidationChannel = (EntityCacheInvalidationChannel) Class.forName(channelClass).newInstance();
+            }
+            catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Cannot create the entity cache invalidation channel: " + channelClass, e);
+            }
+        }
+        return invalidationChannel;
+    }
+
+    /**
+     * Return true if the entity is in the shared cache of the session
+     *
+     * @param session
+     * @param entityClass
+     * @return
+     */
+    public static boolean isCached(Session session, Class<?> entityClass)
+    {
+        ClassDescriptor descriptor = session.getDescriptor(entityClass);
+        // the isolation of a shared entity referencing isolated entities is lowered to protected, still in the shared cache
+        return descriptor != null && descriptor.getCachePolicy().getCacheIsolation() != CacheIsolationType.ISOLATED;
+    }
+
+    /**
+     * Enable the results cache of the query, if the entity is in the shared cache of the session
+     *
+     * @param session
+     * @param entityClass
+     * @param query
+     */
+    public static void setQueryResultsCache(Session session, Class<?> entityClass, Query query)
+    {
+        if (isCached(session, entityClass)) {
+            SystemSetting setting = SystemSetting.getInstance();
+            query.setHint(QueryHints.QUERY_RESULTS_CACHE, HintValues.TRUE);
+            query.setHint(QueryHints.QUERY_RESULTS_CACHE_SIZE, setting.getString(SystemSettingKey.DB_CACHE_QUERY_SIZE, "1000"));
+            query.setHint(QueryHints.QUERY_RESULTS_CACHE_EXPIRY, setting.getString(SystemSettingKey.DB_CACHE_TTL, "300000"));
+        }
+    }
+
+    private static Set<String> getCachedEntityNames(SystemSetting setting)
+    {
+        List<String> values = setting.getList(String.class, SystemSettingKey.DB_CACHE_ENTITIES);
+        if (values == null) {
+            return Collections.emptySet();
+        }
+        Set<String> entityNames = new HashSet<>();
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                entityNames.add(value.trim());
+            }
+        }
+        return entityNames;
+    }
+
+    /**
+     * Collects the cached entities changed by a unit of work, publishes them after the commit and applies the invalidations of the other caches
+     */
+    private static class InvalidationHandler extends SessionEventAdapter implements EntityCacheInvalidationListener
+    {
+        private final String                         origin = UUID.randomUUID().toString();
+        private final Session                        session;
+        private final Set<String>                    cachedNames;
+        private final EntityCacheInvalidationChannel channel;
+
+        InvalidationHandler(Session session, Set<String> cachedNames, EntityCacheInvalidationChannel channel)
+        {
+            this.session = session;
+            this.cachedNames = cachedNames;
+            this.channel = channel;
+        }
+
+        @Override
+        public void postCalculateUnitOfWorkChangeSet(SessionEvent event)
+        {
+            // called on flush and on commit: the changes flushed are not in the change set of the commit
+            addPending(event.getSession(), (UnitOfWorkChangeSet) event.getProperty("UnitOfWorkChangeSet"));
+        }
+
+        @Override
+        public void postExecuteQuery(SessionEvent event)
+        {
+            // bulk updates and deletes invalidate all the entities of the type
+            if (event.getQuery() instanceof ModifyAllQuery) {
+                ClassDescriptor descriptor = event.getQuery().getDescriptor();
+                if (descriptor != null && cachedNames.contains(descriptor.getAlias())) {
+                    if (event.getSession().isUnitOfWork()) {
+                        getPending(event.getSession()).put(descriptor.getAlias(), null);
+                    }
+                    else {
+                        publish(Collections.singletonMap(descriptor.getAlias(), null));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void postCommitUnitOfWork(SessionEvent event)
+        {
+            // the objects deleted are added to the change set of the commit only
+            Session unitOfWork = event.getSession();
+            addPending(unitOfWork, (UnitOfWorkChangeSet) ((UnitOfWork) unitOfWork).getUnitOfWorkChangeSet());
+
+            @SuppressWarnings("unchecked")
+            Map<String, Set<Serializable>> pending = (Map<String, Set<Serializable>>) unitOfWork.getProperty(PENDING_PROPERTY);
+            if (pending != null) {
+                unitOfWork.removeProperty(PENDING_PROPERTY);
+                publish(pending);
+            }
+        }
+
+        @Override
+        public void postReleaseUnitOfWork(SessionEvent event)
+        {
+            // rolled back or committed: nothing left to publish
+            event.getSession().removeProperty(PENDING_PROPERTY);
+        }
+
+        @Override
+        public void postLogout(SessionEvent event)
+        {
+            channel.unsubscribe(this);
+        }
+
+        @Override
+        public void onInvalidation(EntityCacheInvalidation invalidation)
+        {
+            if (origin.equals(invalidation.getOrigin())) {
+                return;
+            }
+            ClassDescriptor descriptor = session.getDescriptorForAlias(invalidation.getEntityName());
+            if (descriptor == null || !cachedNames.contains(descriptor.getAlias())) {
+                return;
+            }
+
+            Class<?> entityClass = descriptor.getJavaClass();
+            IdentityMapAccessor identityMapAccessor = session.getIdentityMapAccessor();
+            if (invalidation.isAll()) {
+                identityMapAccessor.invalidateClass(entityClass);
+            }
+            else {
+                for (Serializable primaryKey : invalidation.getPrimaryKeys()) {
+                    identityMapAccessor.invalidateObject(primaryKey, entityClass);
+                }
+            }
+            identityMapAccessor.invalidateQueryCache(entityClass);
+        }
+
+        private void addPending(Session unitOfWork, UnitOfWorkChangeSet changeSet)
+        {
+            if (changeSet != null) {
+                addPending(unitOfWork, changeSet.getAllChangeSets().keySet());
+                addPending(unitOfWork, changeSet.getDeletedObjects().keySet());
+            }
+        }
+
+        private void addPending(Session unitOfWork, Collection<ObjectChangeSet> objectChangeSets)
+        {
+            for (ObjectChangeSet objectChangeSet : objectChangeSets) {
+                String entityName = objectChangeSet.getDescriptor().getAlias();
+                if (!cachedNames.contains(entityName)) {
+                    continue;
+                }
+                Map<String, Set<Serializable>> pending = getPending(unitOfWork);
+                if (pending.containsKey(entityName) && pending.get(entityName) == null) {
+                    // all already invalidated
+                    continue;
+                }
+                Object primaryKey = objectChangeSet.getId();
+                if (primaryKey instanceof Serializable) {
+                    pending.computeIfAbsent(entityName, k -> new HashSet<>()).add((Serializable) primaryKey);
+                }
+                else {
+                    pending.put(entityName, null);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Set<Serializable>> getPending(Session unitOfWork)
+        {
+            Map<String, Set<Serializable>> pending = (Map<String, Set<Serializable>>) unitOfWork.getProperty(PENDING_PROPERTY);
+            if (pending == null) {
+                pending = new HashMap<>();
+                unitOfWork.setProperty(PENDING_PROPERTY, pending);
+            }
+            return pending;
+        }
+
+        private void publish(Map<String, Set<Serializable>> pending)
+        {
+            for (Entry<String, Set<Serializable>> entry : pending.entrySet()) {
+                Set<Serializable> primaryKeys = entry.getValue();
+                channel.publish(new EntityCacheInvalidation(origin,
+                                                            entry.getKey(),
+                                                            primaryKeys != null ? primaryKeys : Collections.<Serializable> emptySet()));
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shared cache invalidation of the entities of a type changed by a committed transaction.<br>
+ * The primary keys are the ones of the persistence provider cache (they are {@link Serializable} to be sent to the other nodes).
+ * An invalidation without primary keys invalidates all the cached entities of the type (i.e. after a bulk update).
+ *
+ * @since 1.0
+ */
+public class EntityCacheInvalidation implements Serializable
+{
+    private static final long serialVersionUID = 4517802512417315426L;
+
+    private final String             origin;
+    private final String             entityName;
+    private final List<Serializable> primaryKeys;
+
+    /**
+     * Constructor
+     *
+     * @param origin the identifier of the cache the changes were committed to
+     * @param entityName the entity name
+     * @param primaryKeys the primary keys of the changed entities (empty to invalidate all the entities)
+     */
+    public EntityCacheInvalidation(String origin, String entityName, Collection<? extends Serializable> primaryKeys)
+    {
+        this.origin = origin;
+        this.entityName = entityName;
+        this.primaryKeys = Collections.unmodifiableList(new ArrayList<>(primaryKeys));
+    }
+
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+    public String getEntityName()
+    {
+        return entityName;
+    }
+
+    public List<Serializable> getPrimaryKeys()
+    {
+        return primaryKeys;
+    }
+
+    /**
+     * Return true if all the cached entities of the type are invalidated
+     *
+     * @return
+     */
+    public boolean isAll()
+    {
+        return primaryKeys.isEmpty();
+    }
+}
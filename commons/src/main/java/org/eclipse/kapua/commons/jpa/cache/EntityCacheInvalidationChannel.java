@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa.cache;
+
+/**
+ * Channel delivering the entity shared cache invalidations to all the caches (of this node and of the other nodes sharing the database).<br>
+ * The implementation is configured by {@link org.eclipse.kapua.commons.setting.system.SystemSettingKey#DB_CACHE_INVALIDATION_CHANNEL}
+ * and must have a public no arguments constructor.<br>
+ * The invalidations are published after the commit: a listener receiving an invalidation must not query the database in the calling thread.
+ *
+ * @since 1.0
+ */
+public interface EntityCacheInvalidationChannel
+{
+    /**
+     * Deliver the invalidation to all the subscribed listeners (including the one of the publishing cache, which ignores it)
+     *
+     * @param invalidation
+     */
+    public void publish(EntityCacheInvalidation invalidation);
+
+    /**
+     * Subscribe the listener
+     *
+     * @param listener
+     */
+    public void subscribe(EntityCacheInvalidationListener listener);
+
+    /**
+     * Unsubscribe the listener
+     *
+     * @param listener
+     */
+    public void unsubscribe(EntityCacheInvalidationListener listener);
+}
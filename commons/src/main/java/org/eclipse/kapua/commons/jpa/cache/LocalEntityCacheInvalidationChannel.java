@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In JVM entity cache invalidation channel.<br>
+ * The invalidations are delivered synchronously to the listeners of this JVM only: it fits a single node deployment (or a deployment where
+ * every node owns a different set of cached entities).
+ *
+ * @since 1.0
+ */
+public class LocalEntityCacheInvalidationChannel implements EntityCacheInvalidationChannel
+{
+    private static final Logger logger = LoggerFactory.getLogger(LocalEntityCacheInvalidationChannel.class);
+
+    private final List<EntityCacheInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(EntityCacheInvalidation invalidation)
+    {
+        for (EntityCacheInvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(invalidation);
+            }
+            catch (RuntimeException e) {
+                logger.warn("Cannot invalidate the cached {} entities", invalidation.getEntityName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(EntityCacheInvalidationListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(EntityCacheInvalidationListener listener)
+    {
+        listeners.remove(listener);
+    }
+}
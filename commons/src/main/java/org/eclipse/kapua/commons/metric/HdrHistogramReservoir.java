@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.metric;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * {@link Reservoir} backed by an HdrHistogram.<br>
+ * Recording a value is wait-free and allocation-free, and the quantiles are accurate to 2 significant digits whatever the value range.
+ * Snapshots summarize the values recorded in the current and in the previous time window.
+ *
+ * @since 1.0
+ */
+public class HdrHistogramReservoir implements Reservoir {
+
+	private static final int SIGNIFICANT_DIGITS = 2;
+
+	private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+	private final long windowNanos;
+
+	// guarded by this
+	private Histogram intervalHistogram;
+	private Histogram currentWindow = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram previousWindow = new Histogram(SIGNIFICANT_DIGITS);
+	private long currentWindowStart = System.nanoTime();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param window
+	 * @param unit
+	 */
+	public HdrHistogramReservoir(long window, TimeUnit unit) {
+		windowNanos = unit.toNanos(window);
+	}
+
+	@Override
+	public int size() {
+		return getSnapshot().size();
+	}
+
+	@Override
+	public void update(long value) {
+		recorder.recordValue(value < 0 ? 0 : value);
+	}
+
+	@Override
+	public synchronized Snapshot getSnapshot() {
+		intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+
+		long now = System.nanoTime();
+		if (now - currentWindowStart > windowNanos) {
+			Histogram recycled = previousWindow;
+			recycled.reset();
+			previousWindow = currentWindow;
+			currentWindow = recycled;
+			currentWindowStart = now;
+		}
+		currentWindow.add(intervalHistogram);
+
+		Histogram histogram = currentWindow.copy();
+		histogram.add(previousWindow);
+		return new HdrHistogramSnapshot(histogram);
+	}
+
+	/**
+	 * Immutable snapshot of a histogram
+	 */
+	private static class HdrHistogramSnapshot extends Snapshot {
+
+		private final Histogram histogram;
+
+		private HdrHistogramSnapshot(Histogram histogram) {
+			this.histogram = histogram;
+		}
+
+		@Override
+		public double getValue(double quantile) {
+			return histogram.getValueAtPercentile(quantile * 100.0);
+		}
+
+		/**
+		 * Return one value per distinct recorded value (the histogram does not keep the single values)
+		 */
+		@Override
+		public long[] getValues() {
+			long[] values = new long[16];
+			int size = 0;
+			for (HistogramIterationValue value : histogram.recordedValues()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = histogram.highestEquivalentValue(value.getValueIteratedTo());
+			}
+			return Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public int size() {
+			return (int) Math.min(histogram.getTotalCount(), Integer.MAX_VALUE);
+		}
+
+		@Override
+		public long getMax() {
+			return histogram.getTotalCount() > 0 ? histogram.getMaxValue() : 0;
+		}
+
+		@Override
+		public double getMean() {
+			return histogram.getTotalCount() > 0 ? histogram.getMean() : 0;
+		}
+
+		@Override
+		public long getMin() {
+			return histogram.getTotalCount() > 0 ? histogram.getMinValue() : 0;
+		}
+
+		@Override
+		public double getStdDev() {
+			return histogram.getTotalCount() > 0 ? histogram.getStdDeviation() : 0;
+		}
+
+		@Override
+		public void dump(OutputStream output) {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			for (long value : getValues()) {
+				out.printf("%d%n", value);
+			}
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.metric;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+
+/**
+ * Metric labels.<br>
+ * A label is encoded as a "name=value" part of the metric name (i.e. <code>getCounter("listener", "admission", MetricLabels.label("account", accountId), "messages", "count")</code>),
+ * the {@link MetricsExporter} exports it as a label of the metric instead of a part of its name.<br>
+ * <br>
+ * The number of distinct values of every label is bounded by {@link SystemSettingKey#METRICS_LABEL_VALUES_MAX}: once reached, the new values
+ * are all mapped to {@link #OTHER}, so an unbounded key space (i.e. the accounts) cannot make the number of metrics grow without limits.
+ *
+ * @since 1.0
+ */
+public class MetricLabels {
+
+	/**
+	 * Value reported for the label values exceeding the maximum number of distinct values
+	 */
+	public static final String OTHER = "other";
+
+	static final char SEPARATOR = '=';
+
+	private static final int MAX_VALUES = SystemSetting.getInstance().getInt(SystemSettingKey.METRICS_LABEL_VALUES_MAX, 1000);
+
+	private static final Map<String, Set<String>> valuesByLabel = new ConcurrentHashMap<>();
+
+	private MetricLabels() {
+	}
+
+	/**
+	 * Return the metric name part for the label
+	 * 
+	 * @param name label name
+	 * @param value label value
+	 * @return
+	 */
+	public static String label(String name, String value) {
+		Set<String> values = valuesByLabel.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet());
+		String safeValue = sanitize(value);
+		if (!values.contains(safeValue)) {
+			if (values.size() >= MAX_VALUES) {
+				safeValue = OTHER;
+			}
+			else {
+				values.add(safeValue);
+			}
+		}
+		return name + SEPARATOR + safeValue;
+	}
+
+	/**
+	 * Check if the metric name part is a label
+	 * 
+	 * @param part
+	 * @return
+	 */
+	static boolean isLabel(String part) {
+		return part.indexOf(SEPARATOR) > 0;
+	}
+
+	private static String sanitize(String value) {
+		if (value == null) {
+			return "";
+		}
+		// the dot is the metric name parts separator
+		return value.replace('.', '_');
+	}
+}
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.metric;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exposes the metrics of a {@link MetricRegistry} over http, in the Prometheus text format (version 0.0.4), at the {@link #PATH} path.<br>
+ * <br>
+ * A metric named <code>module.component.name1.name2</code> is exported as <code>kapua_module_name1_name2{component="component"}</code>,
+ * the name parts built by {@link MetricLabels#label(String, String)} are exported as labels too.<br>
+ * Counters are exported as untyped (they can be decremented), meters as counters, gauges as gauges (if numeric or boolean),
+ * histograms and timers as summaries (timer values in seconds).
+ *
+ * @since 1.0
+ */
+public class MetricsExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+	public static final String PATH = "/metrics";
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String PREFIX = "kapua_";
+	private static final double[] QUANTILES = new double[] { 0.5, 0.75, 0.95, 0.99, 0.999 };
+	private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+	private final MetricRegistry metricRegistry;
+
+	private HttpServer server;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param metricRegistry
+	 */
+	public MetricsExporter(MetricRegistry metricRegistry) {
+		this.metricRegistry = metricRegistry;
+	}
+
+	/**
+	 * Start an exporter with the {@link SystemSettingKey#METRICS_EXPORTER_HOST} and {@link SystemSettingKey#METRICS_EXPORTER_PORT} settings,
+	 * if enabled by the {@link SystemSettingKey#METRICS_EXPORTER_ENABLED} setting.<br>
+	 * A failure is only logged, the metrics are not worth stopping the caller.
+	 * 
+	 * @param metricRegistry
+	 * @return the started exporter or null if disabled or not started
+	 */
+	public static MetricsExporter startIfEnabled(MetricRegistry metricRegistry) {
+		SystemSetting setting = SystemSetting.getInstance();
+		if (!setting.getBoolean(SystemSettingKey.METRICS_EXPORTER_ENABLED, false)) {
+			return null;
+		}
+
+		MetricsExporter exporter = new MetricsExporter(metricRegistry);
+		try {
+			exporter.start(setting.getString(SystemSettingKey.METRICS_EXPORTER_HOST, "0.0.0.0"),
+			               setting.getInt(SystemSettingKey.METRICS_EXPORTER_PORT, 9779));
+			return exporter;
+		}
+		catch (IOException e) {
+			logger.error("Cannot start the metrics exporter", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Start serving the metrics
+	 * 
+	 * @param host bind address
+	 * @param port port (0 for an ephemeral port)
+	 * @throws IOException
+	 */
+	public synchronized void start(String host, int port) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Metrics exporter already started");
+		}
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext(PATH, this::handle);
+		server.start();
+		logger.info("Metrics exporter listening on {}:{}{}", new Object[] { host, getPort(), PATH });
+	}
+
+	/**
+	 * Stop serving the metrics
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+
+	/**
+	 * Return the port the exporter is listening to
+	 * 
+	 * @return
+	 */
+	public synchronized int getPort() {
+		return server != null ? server.getAddress().getPort() : -1;
+	}
+
+	/**
+	 * Write all the metrics in text format
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+		// the samples of a metric family must be contiguous
+		Map<String, Family> families = new TreeMap<>();
+		for (Entry<String, Metric> entry : metricRegistry.getMetrics().entrySet()) {
+			MetricName name = MetricName.parse(entry.getKey());
+			Metric metric = entry.getValue();
+			if (metric instanceof Counter) {
+				family(families, name.family, "untyped").sample(name.family, name.labels, null, ((Counter) metric).getCount());
+			}
+			else if (metric instanceof Meter) {
+				String familyName = name.family + "_total";
+				family(families, familyName, "counter").sample(familyName, name.labels, null, ((Meter) metric).getCount());
+			}
+			else if (metric instanceof Timer) {
+				Timer timer = (Timer) metric;
+				String familyName = name.family + "_seconds";
+				summary(family(families, familyName, "summary"), familyName, name.labels, timer.getSnapshot(), SECONDS_PER_NANO, timer.getCount());
+			}
+			else if (metric instanceof Histogram) {
+				Histogram histogram = (Histogram) metric;
+				summary(family(families, name.family, "summary"), name.family, name.labels, histogram.getSnapshot(), 1.0, histogram.getCount());
+			}
+			else if (metric instanceof Gauge) {
+				Object value = ((Gauge<?>) metric).getValue();
+				if (value instanceof Number) {
+					family(families, name.family, "gauge").sample(name.family, name.labels, null, ((Number) value).doubleValue());
+				}
+				else if (value instanceof Boolean) {
+					family(families, name.family, "gauge").sample(name.family, name.labels, null, (Boolean) value ? 1 : 0);
+				}
+			}
+		}
+
+		for (Entry<String, Family> family : families.entrySet()) {
+			writer.append("# TYPE ").append(family.getKey()).append(' ').append(family.getValue().type).append('\n');
+			writer.append(family.getValue().samples);
+		}
+		writer.flush();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream os = exchange.getResponseBody()) {
+				write(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static Family family(Map<String, Family> families, String name, String type) {
+		Family family = families.get(name);
+		if (family == null) {
+			family = new Family(type);
+			families.put(name, family);
+		}
+		else if (!family.type.equals(type)) {
+			// same name for metrics of different types: keep them apart
+			return family(families, name + "_" + type, type);
+		}
+		return family;
+	}
+
+	private static void summary(Family family, String name, String labels, Snapshot snapshot, double scale, long count) {
+		for (double quantile : QUANTILES) {
+			family.sample(name, labels, "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) * scale);
+		}
+		family.sample(name + "_count", labels, null, count);
+	}
+
+	/**
+	 * Samples of a metric family
+	 */
+	private static class Family {
+
+		private final String type;
+		private final StringBuilder samples = new StringBuilder();
+
+		private Family(String type) {
+			this.type = type;
+		}
+
+		private void sample(String name, String labels, String extraLabel, double value) {
+			samples.append(name);
+			if (!labels.isEmpty() || extraLabel != null) {
+				samples.append('{').append(labels);
+				if (extraLabel != null) {
+					samples.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+				}
+				samples.append('}');
+			}
+			samples.append(' ');
+			if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+				samples.append((long) value);
+			}
+			else {
+				samples.append(Double.isNaN(value) ? "NaN" : Double.isInfinite(value) ? (value > 0 ? "+Inf" : "-Inf") : Double.toString(value));
+			}
+			samples.append('\n');
+		}
+	}
+
+	/**
+	 * Metric registry name split in family name and labels
+	 */
+	static class MetricName {
+
+		private final String family;
+		private final String labels;
+
+		private MetricName(String family, String labels) {
+			this.family = family;
+			this.labels = labels;
+		}
+
+		static MetricName parse(String registryName) {
+			String[] parts = registryName.split("\\.");
+			StringBuilder family = new StringBuilder(PREFIX);
+			StringBuilder labels = new StringBuilder();
+			boolean firstName = true;
+			for (int i = 0; i < parts.length; i++) {
+				String part = parts[i];
+				if (part.isEmpty()) {
+					continue;
+				}
+				if (i == 1 && parts.length > 2 && !MetricLabels.isLabel(part)) {
+					appendLabel(labels, "component", part);
+				}
+				else if (MetricLabels.isLabel(part)) {
+					int separator = part.indexOf(MetricLabels.SEPARATOR);
+					appendLabel(labels, part.substring(0, separator), part.substring(separator + 1));
+				}
+				else {
+					if (!firstName) {
+						family.append('_');
+					}
+					appendSanitized(family, part);
+					firstName = false;
+				}
+			}
+			return new MetricName(family.toString(), labels.toString());
+		}
+
+		String getFamily() {
+			return family;
+		}
+
+		String getLabels() {
+			return labels;
+		}
+
+		private static void appendLabel(StringBuilder labels, String name, String value) {
+			if (labels.length() > 0) {
+				labels.append(',');
+			}
+			appendSanitized(labels, name);
+			labels.append("=\"");
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '\\' || c == '"') {
+					labels.append('\\').append(c);
+				}
+				else if (c == '\n') {
+					labels.append("\\n");
+				}
+				else {
+					labels.append(c);
+				}
+			}
+			labels.append('"');
+		}
+
+		private static void appendSanitized(StringBuilder builder, String name) {
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				builder.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' ? c : '_');
+			}
+		}
+	}
+}
@@ -13,8 +13,12 @@
 package org.eclipse.kapua.commons.metric;
 
 import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
 import org.eclipse.kapua.service.metric.MetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,12 +26,16 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
 /**
  * Metric report exporter handler.
  * It provides methods for register/unregister metric in the context
+ * <p>
+ * The returned metrics are meant to be resolved once and kept by the callers (i.e. in a field), the lookup by name is not a hot path operation.
+ * Histograms and timers are backed by a {@link HdrHistogramReservoir}.
  *
  * @since 1.0
  */
@@ -38,12 +46,14 @@ public class MetricsServiceImpl implements MetricsService {
 	public final static String METRICS_NAME_FORMAT = "{0}.{1}.{2}";
 	
 	private final MetricRegistry metricRegistry;
+	private final long histogramWindow;
 
     /**
      * Default metric service constructor
      */
 	public MetricsServiceImpl() {
 		 metricRegistry = new MetricRegistry();
+		 histogramWindow = SystemSetting.getInstance().getLong(SystemSettingKey.METRICS_HISTOGRAM_WINDOW, 60L);
 	}
 	
     @Override
@@ -53,75 +63,75 @@ public class MetricsServiceImpl implements MetricsService {
 	
     @Override
 	public Counter getCounter(String module, String component, String... names) {
-		String name = getMetricName(module, component, names);
-		Counter counter = metricRegistry.getCounters().get(name);
-		if(counter == null) {
-			logger.debug("Creating a Counter: {}", name);
-			counter = metricRegistry.counter(name);
-		}
-		return counter;
+		return getOrRegister(getMetricName(module, component, names), Counter.class, Counter::new);
 	}
 	
     @Override
 	public Histogram getHistogram(String module, String component, String... names) {
-		String name = getMetricName(module, component, names);
-		Histogram histogram = metricRegistry.getHistograms().get(name);
-		if(histogram == null) {
-			logger.debug("Creating a Histogram: {}", name);
-			histogram = metricRegistry.histogram(name);
-		}
-		return histogram;
+		return getOrRegister(getMetricName(module, component, names), Histogram.class,
+		                     () -> new Histogram(new HdrHistogramReservoir(histogramWindow, TimeUnit.SECONDS)));
 	}
 	
     @Override
 	public Timer getTimer(String module, String component, String... names) {
-		String name = getMetricName(module, component, names);
-		Timer timer = metricRegistry.getTimers().get(name);
-		if(timer == null) {
-			logger.debug("Creating a Timer: {}", name);
-			timer = metricRegistry.timer(name);
-		}
-		return timer;
+		return getOrRegister(getMetricName(module, component, names), Timer.class,
+		                     () -> new Timer(new HdrHistogramReservoir(histogramWindow, TimeUnit.SECONDS)));
 	}
 	
     @Override
 	public void registerGauge(Gauge<?> gauge, String module, String component, String... names) throws KapuaException {
 		String name = getMetricName(module, component, names);
-		if (metricRegistry.getGauges().get(name) != null) {
+		if (metricRegistry.getMetrics().get(name) instanceof Gauge) {
 			throw KapuaException.internalError(MessageFormat.format("A metric with the name {0} is already defined!", name));
 		}
 		else {
 			metricRegistry.register(name, gauge);
 		}
 	}
-	
+
     /**
-     * Build the metric name based on module, component and metric names
+     * Return the metric registered with the name, registering a new one if none
      * 
-     * @param module
-     * @param component
-     * @param metricsName
+     * @param name
+     * @param type
+     * @param factory
      * @return
      */
-	private String getMetricName(String module, String component, String... metricsName) {
-		return MessageFormat.format(METRICS_NAME_FORMAT, new Object[]{module, component, convertToDotNotation(metricsName)});
+	private <M extends Metric> M getOrRegister(String name, Class<M> type, Supplier<M> factory) {
+		// the metrics map view is backed by a concurrent map, the lookup does not copy anything
+		Metric metric = metricRegistry.getMetrics().get(name);
+		if (metric == null) {
+			logger.debug("Creating a {}: {}", type.getSimpleName(), name);
+			try {
+				return metricRegistry.register(name, factory.get());
+			}
+			catch (IllegalArgumentException e) {
+				// registered concurrently
+				metric = metricRegistry.getMetrics().get(name);
+			}
+		}
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException(MessageFormat.format("A metric with the name {0} is already defined with a different type!", name));
+		}
+		return type.cast(metric);
 	}
 	
     /**
-     * Convert the metric names to a concatenated dot separated string
+     * Build the metric name based on module, component and metric names
      * 
+     * @param module
+     * @param component
      * @param metricsName
      * @return
      */
-	private String convertToDotNotation(String... metricsName) {
-		StringBuilder builder = new StringBuilder();
-		boolean firstMetricName = true;
-		for(String s : metricsName) {
-			if (!firstMetricName) {
+	private String getMetricName(String module, String component, String... metricsName) {
+		StringBuilder builder = new StringBuilder(64);
+		builder.append(module).append('.').append(component).append('.');
+		for (int i = 0; i < metricsName.length; i++) {
+			if (i > 0) {
 				builder.append('.');
 			}
-			firstMetricName = false;
-		    builder.append(s);
+			builder.append(metricsName[i]);
 		}
 		return builder.toString();
 	}
@@ -12,33 +12,67 @@
 package org.eclipse.kapua.commons.model.id;
 
 import java.math.BigInteger;
-import java.security.SecureRandom;
 
 import org.eclipse.kapua.commons.setting.system.SystemSetting;
 import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Generates random identifier
+ * Generates the entity identifiers, delegating to the {@link IdGeneratorStrategy} set by {@link SystemSettingKey#KAPUA_KEY_GENERATOR}
+ * (by default {@link RandomIdGeneratorStrategy}; {@link TimeOrderedIdGeneratorStrategy} requires the node id to be set)
  *
  * @since 1.0
  * 
  */
 public class IdGenerator
 {
-    private final static SecureRandom secureRandom = new SecureRandom();
-    private static int                ID_SIZE      = SystemSetting.getInstance().getInt(SystemSettingKey.KAPUA_KEY_SIZE);
+    private static final Logger logger = LoggerFactory.getLogger(IdGenerator.class);
+
+    private static final String STRATEGY_RANDOM       = "random";
+    private static final String STRATEGY_TIME_ORDERED = "time_ordered";
+
+    private static final IdGeneratorStrategy strategy = createStrategy(SystemSetting.getInstance().getString(SystemSettingKey.KAPUA_KEY_GENERATOR, STRATEGY_RANDOM));
 
     /**
-     * Generate a {@link BigInteger} random value.<br>
-     * For more detail refer to: {@link SystemSettingKey#KAPUA_KEY_SIZE}
+     * Generate a new identifier
      * 
      * @return
      */
     public static BigInteger generate()
     {
-        byte[] bytes = new byte[ID_SIZE];
-        secureRandom.nextBytes(bytes);
-        return new BigInteger(bytes);
+        return strategy.generate();
+    }
+
+    /**
+     * Return the identifier generation strategy in use
+     * 
+     * @return
+     */
+    public static IdGeneratorStrategy getStrategy()
+    {
+        return strategy;
+    }
+
+    static IdGeneratorStrategy createStrategy(String name)
+    {
+        IdGeneratorStrategy idGeneratorStrategy;
+        if (STRATEGY_RANDOM.equals(name)) {
+            idGeneratorStrategy = new RandomIdGeneratorStrategy();
+        }
+        else if (STRATEGY_TIME_ORDERED.equals(name)) {
+            idGeneratorStrategy = new TimeOrderedIdGeneratorStrategy();
+        }
+        else {
+            try {
+                idGeneratorStrategy = (IdGeneratorStrategy) Class.forName(name).newInstance();
+            }
+            catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Cannot create the entity identifier generation strategy " + name, e);
+            }
+        }
+        logger.info("Entity identifier generation strategy: {}", idGeneratorStrategy.getClass().getName());
+        return idGeneratorStrategy;
     }
 
 }
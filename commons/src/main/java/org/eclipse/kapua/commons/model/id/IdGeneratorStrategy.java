@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *      Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+
+/**
+ * Entity identifier generation strategy used by {@link IdGenerator}.<br>
+ * The implementations must be thread safe and must generate values fitting a signed 64 bit integer (the identifier columns type).
+ *
+ * @since 1.0
+ */
+public interface IdGeneratorStrategy
+{
+    /**
+     * Generate a new identifier
+     * 
+     * @return
+     */
+    public BigInteger generate();
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *      Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+
+/**
+ * Random identifiers of {@link SystemSettingKey#KAPUA_KEY_SIZE} bytes drawn from a {@link SecureRandom}.<br>
+ * Random identifiers may collide: the insert is retried with a new identifier (see {@link SystemSettingKey#KAPUA_INSERT_MAX_RETRY}).
+ *
+ * @since 1.0
+ */
+public class RandomIdGeneratorStrategy implements IdGeneratorStrategy
+{
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final int          idSize;
+
+    public RandomIdGeneratorStrategy()
+    {
+        this(SystemSetting.getInstance().getInt(SystemSettingKey.KAPUA_KEY_SIZE));
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param idSize the identifier size in bytes
+     */
+    public RandomIdGeneratorStrategy(int idSize)
+    {
+        this.idSize = idSize;
+    }
+
+    @Override
+    public BigInteger generate()
+    {
+        byte[] bytes = new byte[idSize];
+        secureRandom.nextBytes(bytes);
+        return new BigInteger(bytes);
+    }
+}
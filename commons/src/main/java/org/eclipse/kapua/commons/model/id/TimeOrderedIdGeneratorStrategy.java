@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *      Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model.id;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+
+/**
+ * Time ordered identifiers, unique per node (Snowflake like).<br>
+ * The identifier is a positive 63 bit value made of the milliseconds since {@link #EPOCH} (41 bits, enough up to 2085), the node id (10 bits)
+ * and a sequence (12 bits, 4096 identifiers per millisecond).<br>
+ * <br>
+ * The identifiers generated by a node are strictly increasing: if the sequence of the current millisecond is exhausted, or the clock goes
+ * back, the next millisecond is used in advance instead of waiting for the clock. So the generation never blocks and new rows are appended
+ * at the end of the primary key indexes.<br>
+ * Nodes writing to the same database must have different node ids ({@link SystemSettingKey#KAPUA_KEY_NODE_ID}): the setting is mandatory,
+ * since a derived node id may collide and silently generate duplicated identifiers on different nodes.
+ *
+ * @since 1.0
+ */
+public class TimeOrderedIdGeneratorStrategy implements IdGeneratorStrategy
+{
+    /**
+     * 2016-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1451606400000L;
+
+    static final int         NODE_ID_BITS  = 10;
+    static final int         SEQUENCE_BITS = 12;
+    static final int         MAX_NODE_ID   = (1 << NODE_ID_BITS) - 1;
+
+    private final long       nodeId;
+    // last timestamp (relative to the epoch) and sequence, as (timestamp << SEQUENCE_BITS | sequence)
+    private final AtomicLong last          = new AtomicLong();
+
+    /**
+     * Constructor using the configured node id
+     * 
+     * @throws IllegalStateException if the node id is not set
+     */
+    public TimeOrderedIdGeneratorStrategy()
+    {
+        this(configuredNodeId());
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param nodeId the node id (0 to 1023)
+     */
+    public TimeOrderedIdGeneratorStrategy(int nodeId)
+    {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("The node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public BigInteger generate()
+    {
+        return BigInteger.valueOf(nextId());
+    }
+
+    /**
+     * Generate a new identifier as long
+     * 
+     * @return
+     */
+    public long nextId()
+    {
+        long now = (currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long current;
+        long next;
+        do {
+            current = last.get();
+            // the sequence overflow moves to the next millisecond
+            next = now > current ? now : current + 1;
+        }
+        while (!last.compareAndSet(current, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    public int getNodeId()
+    {
+        return (int) nodeId;
+    }
+
+    /**
+     * Return the current time in milliseconds
+     * 
+     * @return
+     */
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private static int configuredNodeId()
+    {
+        int nodeId = SystemSetting.getInstance().getInt(SystemSettingKey.KAPUA_KEY_NODE_ID, -1);
+        if (nodeId < 0) {
+            throw new IllegalStateException("The time ordered entity identifiers require a node id unique per node: set " + SystemSettingKey.KAPUA_KEY_NODE_ID.key());
+        }
+        return nodeId;
+    }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.service.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.EntityManager;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.model.KapuaEntity;
+import org.eclipse.kapua.model.batch.KapuaBatchItemResult;
+import org.eclipse.kapua.model.batch.KapuaBatchItemResult.Status;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batch create or update utility.<br>
+ * The items are first checked by the service, which marks the invalid ones as failed ({@link #fail(int, String)}). The remaining items are
+ * written in chunks ({@link SystemSettingKey#KAPUA_BATCH_CHUNK_SIZE}), a transaction per chunk with a single flush, so the inserts and updates
+ * of a chunk are sent in JDBC batches ({@link SystemSettingKey#DB_JDBC_BATCH_SIZE}).<br>
+ * If a chunk fails it is rolled back and its items are written again one at a time, so a single bad item only fails itself.
+ *
+ * @param <I> item type (i.e. the entity creator or the entity to update)
+ * @param <E> entity type
+ *
+ * @since 1.0
+ */
+public class ServiceBatchWriter<I, E extends KapuaEntity>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ServiceBatchWriter.class);
+
+    /**
+     * Writer of a chunk of items
+     *
+     * @param <I>
+     * @param <E>
+     */
+    @FunctionalInterface
+    public interface ChunkWriter<I, E extends KapuaEntity>
+    {
+        /**
+         * Persist (or change) the entities of the items, within the current transaction. The entity manager is flushed by the caller.
+         *
+         * @param em
+         * @param items
+         * @return the entities, in the order of the items
+         * @throws KapuaException
+         */
+        public List<E> write(EntityManager em, List<I> items)
+            throws KapuaException;
+    }
+
+    private final List<I>                items;
+    private final KapuaBatchItemResult[] results;
+    private final List<E>                writtenEntities = new ArrayList<>();
+    private final int                    chunkSize;
+
+    /**
+     * Constructor
+     *
+     * @param items
+     */
+    public ServiceBatchWriter(List<I> items)
+    {
+        this.items = items;
+        this.results = new KapuaBatchItemResult[items.size()];
+        this.chunkSize = Math.max(1, SystemSetting.getInstance().getInt(SystemSettingKey.KAPUA_BATCH_CHUNK_SIZE, 500));
+    }
+
+    /**
+     * Return the items
+     *
+     * @return
+     */
+    public List<I> getItems()
+    {
+        return items;
+    }
+
+    /**
+     * Mark the item as failed: it will not be written
+     *
+     * @param index
+     * @param message
+     */
+    public void fail(int index, String message)
+    {
+        results[index] = new KapuaBatchItemResult(index, Status.FAILED, null, message);
+    }
+
+    /**
+     * Return true if the item has been marked as failed
+     *
+     * @param index
+     * @return
+     */
+    public boolean isFailed(int index)
+    {
+        return results[index] != null && results[index].getStatus() == Status.FAILED;
+    }
+
+    /**
+     * Write the items not marked as failed
+     *
+     * @param entityManagerSession
+     * @param chunkWriter
+     * @return the result of every item
+     * @throws KapuaException
+     */
+    public KapuaBatchResult write(EntityManagerSession entityManagerSession, ChunkWriter<I, E> chunkWriter)
+        throws KapuaException
+    {
+        List<Integer> chunk = new ArrayList<>(chunkSize);
+        for (int i = 0; i < items.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            chunk.add(i);
+            if (chunk.size() == chunkSize) {
+                writeChunk(entityManagerSession, chunkWriter, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(entityManagerSession, chunkWriter, chunk);
+        }
+        return new KapuaBatchResult(Arrays.asList(results));
+    }
+
+    /**
+     * Return the entities written by {@link #write(EntityManagerSession, ChunkWriter)}
+     *
+     * @return
+     */
+    public List<E> getWrittenEntities()
+    {
+        return Collections.unmodifiableList(writtenEntities);
+    }
+
+    private void writeChunk(EntityManagerSession entityManagerSession, ChunkWriter<I, E> chunkWriter, List<Integer> chunk)
+        throws KapuaException
+    {
+        List<I> chunkItems = new ArrayList<>(chunk.size());
+        for (int index : chunk) {
+            chunkItems.add(items.get(index));
+        }
+
+        try {
+            List<E> entities = writeInTransaction(entityManagerSession, chunkWriter, chunkItems);
+            for (int i = 0; i < chunk.size(); i++) {
+                succeeded(chunk.get(i), entities.get(i));
+            }
+        }
+        catch (KapuaException | RuntimeException e) {
+            if (chunk.size() == 1) {
+                results[chunk.get(0)] = new KapuaBatchItemResult(chunk.get(0), Status.FAILED, null, getMessage(e));
+                return;
+            }
+
+            logger.info("Batch chunk of {} items failed ({}), writing them one at a time", chunk.size(), getMessage(e));
+            for (int index : chunk) {
+                try {
+                    List<E> entities = writeInTransaction(entityManagerSession, chunkWriter, Collections.singletonList(items.get(index)));
+                    succeeded(index, entities.get(0));
+                }
+                catch (KapuaException | RuntimeException itemException) {
+                    results[index] = new KapuaBatchItemResult(index, Status.FAILED, null, getMessage(itemException));
+                }
+            }
+        }
+    }
+
+    private List<E> writeInTransaction(EntityManagerSession entityManagerSession, ChunkWriter<I, E> chunkWriter, List<I> chunkItems)
+        throws KapuaException
+    {
+        return entityManagerSession.onEntityManagerResult(em -> {
+            try {
+                em.beginTransaction();
+                List<E> entities = chunkWriter.write(em, chunkItems);
+                em.flush();
+                em.commit();
+                return entities;
+            }
+            catch (KapuaException | RuntimeException e) {
+                em.rollback();
+                throw e;
+            }
+        });
+    }
+
+    private void succeeded(int index, E entity)
+    {
+        results[index] = new KapuaBatchItemResult(index, Status.SUCCEEDED, entity.getId(), null);
+        writtenEntities.add(entity);
+    }
+
+    private static String getMessage(Exception e)
+    {
+        // the persistence exceptions wrap the database error
+        Throwable cause = e;
+        while (cause.getMessage() == null && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+    }
+}
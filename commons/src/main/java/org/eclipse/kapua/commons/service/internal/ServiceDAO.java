@@ -12,11 +12,15 @@
  *******************************************************************************/
 package org.eclipse.kapua.commons.service.internal;
 
+import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityExistsException;
 import javax.persistence.PersistenceException;
@@ -59,6 +63,11 @@ public class ServiceDAO {
 
     private final static String SQL_ERROR_CODE_CONSTRAINT_VIOLATION = "23505";
 
+    /**
+     * Maximum number of values of the IN clauses
+     */
+    private final static int IN_CLAUSE_MAX_SIZE = 500;
+
     /**
      * Create entity utility method.<br>
      * This method checks for the constraint violation and, in this case, it throws a specific exception ({@link KapuaEntityExistsException}).
@@ -181,33 +190,129 @@ public class ServiceDAO {
      * @return
      */
     public static <E extends KapuaEntity> E findByName(EntityManager em, Class<E> clazz, String name) {
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<E> criteriaSelectQuery = cb.createQuery(clazz);
-
-        //
-        // FROM
-        Root<E> userRoot = criteriaSelectQuery.from(clazz);
-
-        //
-        // SELECT
-        criteriaSelectQuery.select(userRoot);
+        return findByField(em, clazz, null, "name", name);
+    }
 
-        // name
-        ParameterExpression<String> pName = cb.parameter(String.class, "name");
-        criteriaSelectQuery.where(cb.equal(userRoot.get("name"), pName));
+    /**
+     * Find entity by a natural key utility method.<br>
+     * The lookup is a named query (registered on the first call), so its results are cached if the entity is in the shared cache.
+     * 
+     * @param em
+     * @param clazz
+     * @param scopeId
+     *            scope id of the entity to find (if null the field value must be unique across the scopes)
+     * @param fieldName
+     *            name of the unique field
+     * @param value
+     *            value of the unique field
+     * @return the entity or null if not found
+     */
+    public static <E extends KapuaEntity> E findByField(EntityManager em, Class<E> clazz, KapuaId scopeId, String fieldName, Object value) {
+        String queryName = clazz.getName() + (scopeId != null ? ".findByScopeIdAnd." : ".findBy.") + fieldName;
+        TypedQuery<E> query = em.createNamedQuery(queryName, clazz, cb -> {
+            CriteriaQuery<E> criteriaSelectQuery = cb.createQuery(clazz);
+
+            //
+            // FROM
+            Root<E> entityRoot = criteriaSelectQuery.from(clazz);
+
+            //
+            // SELECT
+            criteriaSelectQuery.select(entityRoot);
+
+            //
+            // WHERE
+            Predicate fieldPredicate = cb.equal(entityRoot.get(fieldName), cb.parameter(value.getClass(), fieldName));
+            if (scopeId != null) {
+                criteriaSelectQuery.where(cb.and(cb.equal(entityRoot.get("scopeId"), cb.parameter(KapuaId.class, "scopeId")), fieldPredicate));
+            }
+            else {
+                criteriaSelectQuery.where(fieldPredicate);
+            }
+            return criteriaSelectQuery;
+        });
 
         //
         // QUERY!
-        TypedQuery<E> query = em.createQuery(criteriaSelectQuery);
-        query.setParameter(pName.getName(), name);
+        query.setParameter(fieldName, value);
+        if (scopeId != null) {
+            query.setParameter("scopeId", scopeId);
+        }
 
         List<E> result = query.getResultList();
-        E user = null;
+        E entity = null;
         if (result.size() == 1) {
-            user = result.get(0);
+            entity = result.get(0);
+        }
+
+        return entity;
+    }
+
+    /**
+     * Find the values of a field already used by the entities, among the given values, utility method.<br>
+     * The values are looked up by IN queries of at most {@value #IN_CLAUSE_MAX_SIZE} values each (instead of a lookup per value).
+     * 
+     * @param em
+     * @param clazz
+     * @param scopeId
+     *            scope id of the entities (if null the entities of all the scopes are matched)
+     * @param fieldName
+     *            name of the field
+     * @param valueClass
+     * @param values
+     *            values to look up
+     * @return the values found
+     */
+    public static <E extends KapuaEntity, V> Set<V> findFieldValues(EntityManager em, Class<E> clazz, KapuaId scopeId, String fieldName, Class<V> valueClass, Collection<V> values) {
+        Set<V> valuesFound = new HashSet<>();
+        List<V> valueList = new ArrayList<>(values);
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        for (int from = 0; from < valueList.size(); from += IN_CLAUSE_MAX_SIZE) {
+            List<V> chunk = valueList.subList(from, Math.min(from + IN_CLAUSE_MAX_SIZE, valueList.size()));
+            CriteriaQuery<V> criteriaSelectQuery = cb.createQuery(valueClass);
+            Root<E> entityRoot = criteriaSelectQuery.from(clazz);
+            criteriaSelectQuery.select(entityRoot.<V> get(fieldName));
+
+            Predicate fieldPredicate = entityRoot.get(fieldName).in(chunk);
+            if (scopeId != null) {
+                criteriaSelectQuery.where(cb.equal(entityRoot.get("scopeId").get("eid"), scopeId.getId()), fieldPredicate);
+            }
+            else {
+                criteriaSelectQuery.where(fieldPredicate);
+            }
+            valuesFound.addAll(em.createQuery(criteriaSelectQuery).getResultList());
         }
+        return valuesFound;
+    }
 
-        return user;
+    /**
+     * Find the entities by entity ids utility method.<br>
+     * The entities are loaded by IN queries of at most {@value #IN_CLAUSE_MAX_SIZE} ids each (instead of a find per entity).
+     * 
+     * @param em
+     * @param clazz
+     * @param entityIds
+     * @return the entities found, by id value
+     */
+    public static <E extends KapuaEntity> Map<BigInteger, E> findByIds(EntityManager em, Class<E> clazz, Collection<KapuaId> entityIds) {
+        Map<BigInteger, E> entitiesFound = new HashMap<>();
+        List<BigInteger> idList = new ArrayList<>(entityIds.size());
+        for (KapuaId entityId : entityIds) {
+            idList.add(entityId.getId());
+        }
+
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_MAX_SIZE) {
+            List<BigInteger> chunk = idList.subList(from, Math.min(from + IN_CLAUSE_MAX_SIZE, idList.size()));
+            CriteriaQuery<E> criteriaSelectQuery = cb.createQuery(clazz);
+            Root<E> entityRoot = criteriaSelectQuery.from(clazz);
+            criteriaSelectQuery.select(entityRoot);
+            criteriaSelectQuery.where(entityRoot.get("id").get("eid").in(chunk));
+            for (E entity : em.createQuery(criteriaSelectQuery).getResultList()) {
+                entitiesFound.put(entity.getId().getId(), entity);
+            }
+        }
+        return entitiesFound;
     }
 
     /**
@@ -139,6 +139,31 @@ public enum SystemSettingKey implements SettingKey
      * Database pool connection borrow timeout
      */
     DB_POOL_BORROW_TIMEOUT("commons.db.pool.borrow.timeout"),
+    /**
+     * Maximum number of statements sent to the database in a single JDBC batch (batch writing disabled if lower than 2)
+     */
+    DB_JDBC_BATCH_SIZE("commons.db.jdbc.batch.size"),
+
+    /**
+     * Names of the entities kept in the shared cache (comma separated, none if empty)
+     */
+    DB_CACHE_ENTITIES("commons.db.cache.entities"),
+    /**
+     * Maximum number of cached entities, per entity type
+     */
+    DB_CACHE_SIZE("commons.db.cache.size"),
+    /**
+     * Time to live (milliseconds) of the cached entities and query results
+     */
+    DB_CACHE_TTL("commons.db.cache.ttl"),
+    /**
+     * Maximum number of cached results, per query
+     */
+    DB_CACHE_QUERY_SIZE("commons.db.cache.query.size"),
+    /**
+     * Class name of the {@link org.eclipse.kapua.commons.jpa.cache.EntityCacheInvalidationChannel}
+     */
+    DB_CACHE_INVALIDATION_CHANNEL("commons.db.cache.invalidation.channel"),
 
     /**
      * Broker schema (e.g. mqtt, mqtts, ..)
@@ -163,10 +188,57 @@ public enum SystemSettingKey implements SettingKey
      */
     KAPUA_KEY_SIZE("commons.entity.key.size"),
 
+    /**
+     * Entity identifier generation strategy: random, time_ordered or the class name of a {@link org.eclipse.kapua.commons.model.id.IdGeneratorStrategy}
+     */
+    KAPUA_KEY_GENERATOR("commons.entity.key.generator"),
+
+    /**
+     * Node id (0 to 1023) of the time ordered entity identifiers, must be different for every node writing to the same database.<br>
+     * Mandatory with the time_ordered generation strategy.
+     */
+    KAPUA_KEY_NODE_ID("commons.entity.key.node_id"),
+
     /**
      * Maximum allowed retry (due to a {@link EntityExistsException}, so already exists key) on insert operation
      */
-    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry");
+    KAPUA_INSERT_MAX_RETRY("commons.entity.insert.max.retry"),
+
+    /**
+     * Number of entities written in a single transaction by the batch create and update operations
+     */
+    KAPUA_BATCH_CHUNK_SIZE("commons.entity.batch.chunk.size"),
+
+    /**
+     * Number of topics kept parsed by every topic tokenizer (the intern table holds up to twice this number of topics)
+     */
+    TOPIC_INTERN_SIZE("commons.topic.intern.size"),
+
+    /**
+     * Enable the metrics exporter (metrics exposed over http in text format)
+     */
+    METRICS_EXPORTER_ENABLED("metrics.exporter.enabled"),
+    /**
+     * Metrics exporter bind address
+     */
+    METRICS_EXPORTER_HOST("metrics.exporter.host"),
+    /**
+     * Metrics exporter port
+     */
+    METRICS_EXPORTER_PORT("metrics.exporter.port"),
+    /**
+     * Maximum number of distinct values of a metric label (further values are reported as "other")
+     */
+    METRICS_LABEL_VALUES_MAX("metrics.label.values.max"),
+    /**
+     * Time window (seconds) of the values summarized by the histograms and timers
+     */
+    METRICS_HISTOGRAM_WINDOW("metrics.histogram.window"),
+
+    /**
+     * Secret of the REST API collection entity tags, must be the same on all the nodes (a random secret per node is used if not set)
+     */
+    API_ETAG_SECRET("api.etag.secret");
 
     private String key;
 
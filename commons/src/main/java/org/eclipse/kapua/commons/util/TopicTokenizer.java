@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+
+/**
+ * Topic tokenizer backed by a bounded intern table of the recently parsed topics.<br>
+ * The same few thousand topics are received over and over: a topic already in the table is returned without parsing it again and without allocations.
+ * The tokens are interned as well, so the account and client id tokens shared by many topics are held once.<br>
+ * The topics are split as {@link String#split(String)} does (the trailing empty tokens are removed) but without regular expressions.<br>
+ * <br>
+ * The table keeps two generations of at most {@link SystemSettingKey#TOPIC_INTERN_SIZE} topics: when the current generation is full it becomes the old one
+ * (dropping the previous old one) and the old topics seen again are moved to the current one.
+ *
+ * @since 1.0
+ */
+public class TopicTokenizer
+{
+    private static final int                                          internSize = SystemSetting.getInstance().getInt(SystemSettingKey.TOPIC_INTERN_SIZE, 10000);
+    private static final ConcurrentHashMap<Character, TopicTokenizer> instances  = new ConcurrentHashMap<>();
+
+    private final char                     separator;
+    private final InternTable<TopicTokens> topics;
+    private final InternTable<String>      tokens;
+
+    private TopicTokenizer(char separator)
+    {
+        this.separator = separator;
+        topics = new InternTable<>(internSize);
+        tokens = new InternTable<>(internSize);
+    }
+
+    /**
+     * Get the tokenizer of the topics with the given level separator
+     *
+     * @param separator
+     * @return
+     */
+    public static TopicTokenizer getInstance(char separator)
+    {
+        TopicTokenizer tokenizer = instances.get(separator);
+        if (tokenizer == null) {
+            tokenizer = instances.computeIfAbsent(separator, TopicTokenizer::new);
+        }
+        return tokenizer;
+    }
+
+    /**
+     * Return the tokens of the topic
+     *
+     * @param topic
+     * @return the topic tokens or null if the topic is null
+     */
+    public TopicTokens parse(String topic)
+    {
+        return parse(topic, 0);
+    }
+
+    /**
+     * Return the tokens of the topic starting at the given offset of the destination (i.e. a destination name with a fixed prefix).<br>
+     * The destination is not copied if its topic is already in the table.
+     *
+     * @param destination
+     * @param offset
+     * @return the topic tokens or null if the destination is null
+     */
+    public TopicTokens parse(String destination, int offset)
+    {
+        if (destination == null) {
+            return null;
+        }
+
+        TopicTokens topicTokens = topics.get(destination);
+        if (topicTokens == null || topicTokens.getOffset() != offset) {
+            topicTokens = tokenize(destination, offset);
+            topics.put(destination, topicTokens);
+        }
+        return topicTokens;
+    }
+
+    private TopicTokens tokenize(String destination, int offset)
+    {
+        String topic = destination.substring(offset);
+
+        int count = 1;
+        for (int i = topic.indexOf(separator); i >= 0; i = topic.indexOf(separator, i + 1)) {
+            count++;
+        }
+
+        String[] topicTokens = new String[count];
+        int[] tokenStarts = new int[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = topic.indexOf(separator, start);
+            if (end < 0) {
+                end = topic.length();
+            }
+            topicTokens[i] = intern(topic.substring(start, end));
+            tokenStarts[i] = start;
+            start = end + 1;
+        }
+
+        // as String.split: a topic without separators is a single token, otherwise the trailing empty tokens are removed
+        int size = count;
+        if (count > 1) {
+            while (size > 0 && topicTokens[size - 1].isEmpty()) {
+                size--;
+            }
+        }
+        if (size < count) {
+            String[] trimmedTokens = new String[size];
+            System.arraycopy(topicTokens, 0, trimmedTokens, 0, size);
+            topicTokens = trimmedTokens;
+        }
+
+        return new TopicTokens(offset, topic, topicTokens, tokenStarts);
+    }
+
+    private String intern(String token)
+    {
+        String internedToken = tokens.get(token);
+        if (internedToken == null) {
+            tokens.put(token, token);
+            internedToken = token;
+        }
+        return internedToken;
+    }
+
+    /**
+     * Bounded map of the recently used values: lookups do not allocate and do not lock
+     */
+    private static class InternTable<V>
+    {
+        private final int                             maxSize;
+        private volatile ConcurrentHashMap<String, V> current;
+        private volatile ConcurrentHashMap<String, V> old;
+
+        InternTable(int maxSize)
+        {
+            this.maxSize = maxSize;
+            current = new ConcurrentHashMap<>();
+            old = new ConcurrentHashMap<>();
+        }
+
+        V get(String key)
+        {
+            V value = current.get(key);
+            if (value == null) {
+                value = old.get(key);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        }
+
+        void put(String key, V value)
+        {
+            ConcurrentHashMap<String, V> map = current;
+            map.put(key, value);
+            if (map.size() > maxSize) {
+                synchronized (this) {
+                    if (current == map) {
+                        old = map;
+                        current = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+        }
+    }
+}
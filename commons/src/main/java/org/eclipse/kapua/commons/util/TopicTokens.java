@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Topic split in its tokens (the topic levels).<br>
+ * Instances are immutable and shared through the {@link TopicTokenizer} intern table, so the tokens, the token lists and the topic tails
+ * are computed once per topic and not once per message.
+ *
+ * @since 1.0
+ */
+public class TopicTokens
+{
+    private final int                offset;
+    private final String             topic;
+    private final String[]           tokens;
+    private final String[]           tails;
+    private final List<List<String>> tokenLists;
+
+    TopicTokens(int offset, String topic, String[] tokens, int[] tokenStarts)
+    {
+        this.offset = offset;
+        this.topic = topic;
+        this.tokens = tokens;
+
+        tails = new String[tokens.length];
+        tokenLists = new ArrayList<>(tokens.length + 1);
+        List<String> tokenList = Collections.unmodifiableList(Arrays.asList(tokens));
+        for (int i = 0; i < tokens.length; i++) {
+            tails[i] = topic.substring(tokenStarts[i]);
+            tokenLists.add(tokenList.subList(i, tokens.length));
+        }
+        tokenLists.add(Collections.<String> emptyList());
+    }
+
+    /**
+     * Return the offset of the topic in the parsed destination
+     *
+     * @return
+     */
+    int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Return the topic (the parsed destination without the leading offset characters)
+     *
+     * @return
+     */
+    public String getTopic()
+    {
+        return topic;
+    }
+
+    /**
+     * Return the number of tokens
+     *
+     * @return
+     */
+    public int size()
+    {
+        return tokens.length;
+    }
+
+    /**
+     * Return the token at the given index
+     *
+     * @param index
+     * @return
+     */
+    public String get(int index)
+    {
+        return tokens[index];
+    }
+
+    /**
+     * Return the (unmodifiable) list of all the tokens
+     *
+     * @return
+     */
+    public List<String> getTokens()
+    {
+        return tokenLists.get(0);
+    }
+
+    /**
+     * Return the (unmodifiable) list of the tokens starting from the given index
+     *
+     * @param fromIndex
+     * @return
+     */
+    public List<String> getTokens(int fromIndex)
+    {
+        return tokenLists.get(fromIndex);
+    }
+
+    /**
+     * Return the part of the topic starting from the token at the given index (separators included)
+     *
+     * @param fromIndex
+     * @return
+     */
+    public String getTail(int fromIndex)
+    {
+        return tails[fromIndex];
+    }
+
+    /**
+     * Return a copy of the tokens
+     *
+     * @return
+     */
+    public String[] toArray()
+    {
+        return tokens.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return topic;
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.oxm.MediaType;
+
+/**
+ * Pool of the {@link Marshaller}s of a {@link JAXBContext} for a media type.<br>
+ * A marshaller is not thread safe but is expensive to create, so the marshallers are reused: a marshaller is borrowed for a single
+ * serialization and released afterwards. At most max idle marshallers are kept, the others are discarded on release.<br>
+ * The json marshallers are configured as the Jersey MOXy json provider (no root element), so the output does not depend on the provider.
+ *
+ * @since 1.0
+ */
+public class JaxbMarshallerPool
+{
+    private final JAXBContext               context;
+    private final MediaType                 mediaType;
+    private final BlockingQueue<Marshaller> idle;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     * @param mediaType {@link MediaType#APPLICATION_XML} or {@link MediaType#APPLICATION_JSON}
+     * @param maxIdle maximum number of idle marshallers kept
+     */
+    public JaxbMarshallerPool(JAXBContext context, MediaType mediaType, int maxIdle)
+    {
+        this.context = context;
+        this.mediaType = mediaType;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    public JAXBContext getContext()
+    {
+        return context;
+    }
+
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    /**
+     * Borrow a marshaller, to be released (or discarded) when done
+     *
+     * @return
+     * @throws JAXBException
+     */
+    public Marshaller borrow()
+        throws JAXBException
+    {
+        Marshaller marshaller = idle.poll();
+        return marshaller != null ? marshaller : create();
+    }
+
+    /**
+     * Release a borrowed marshaller.<br>
+     * A marshaller that failed must not be released: its state is unknown.
+     *
+     * @param marshaller
+     */
+    public void release(Marshaller marshaller)
+    {
+        idle.offer(marshaller);
+    }
+
+    int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    private Marshaller create()
+        throws JAXBException
+    {
+        Marshaller marshaller = context.createMarshaller();
+        if (mediaType == MediaType.APPLICATION_JSON) {
+            marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON.getMediaType());
+            marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, Boolean.FALSE);
+        }
+        return marshaller;
+    }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.namespace.QName;
+
+import org.eclipse.kapua.model.KapuaEntity;
+import org.eclipse.kapua.model.query.KapuaListResult;
+import org.eclipse.persistence.oxm.MediaType;
+
+/**
+ * Serializer of the entities and of the entity lists through a {@link JaxbMarshallerPool}.<br>
+ * The lists are written element by element: the list envelope is written directly and every element is marshalled on its own, so the
+ * memory used does not depend on the list size and the output is sent while the list is being serialized. The output is the same as
+ * the one of the whole list marshalling.<br>
+ * <br>
+ * An error is thrown to the caller: if the output has already been partially written it is truncated.
+ *
+ * @since 1.0
+ */
+public class JaxbStreamWriter
+{
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final QName  LIST_ITEM       = new QName("item");
+    private static final String XML_LIST_ROOT   = "items";
+    private static final String DEFAULT_NAME    = "##default";
+
+    private final JaxbMarshallerPool    marshallerPool;
+    private final int                   bufferSize;
+    private final Map<Class<?>, String> jsonPrefixes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param marshallerPool
+     * @param bufferSize size of the buffer between the marshaller and the output stream (characters)
+     */
+    public JaxbStreamWriter(JaxbMarshallerPool marshallerPool, int bufferSize)
+    {
+        this.marshallerPool = marshallerPool;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Write the entity
+     *
+     * @param entity
+     * @param os
+     * @throws JAXBException
+     * @throws IOException
+     */
+    public void write(Object entity, OutputStream os)
+        throws JAXBException, IOException
+    {
+        if (entity instanceof KapuaListResult && !((KapuaListResult<?>) entity).isEmpty()) {
+            writeListResult((KapuaListResult<?>) entity, os);
+            return;
+        }
+
+        Marshaller marshaller = marshallerPool.borrow();
+        marshaller.marshal(entity, os);
+        marshallerPool.release(marshaller);
+    }
+
+    /**
+     * Write the list result, element by element
+     *
+     * @param result
+     * @param os
+     * @throws JAXBException
+     * @throws IOException
+     */
+    public void writeListResult(KapuaListResult<?> result, OutputStream os)
+        throws JAXBException, IOException
+    {
+        Writer writer = newWriter(os);
+        Marshaller marshaller = borrow();
+        if (isJson()) {
+            writer.append(jsonPrefix(result.getClass(), marshaller))
+                  .append("\"limitExceeded\":").append(Boolean.toString(result.isLimitExceeded()))
+                  .append(",\"size\":").append(Integer.toString(result.getSize()))
+                  .append(",\"items\":{\"item\":[");
+            writeJsonItems(result.getItems(), true, marshaller, writer);
+            writer.append("]}}");
+        }
+        else {
+            String root = rootElementName(result.getClass(), "result");
+            writer.append(XML_DECLARATION).append('<').append(root).append('>')
+                  .append("<limitExceeded>").append(Boolean.toString(result.isLimitExceeded())).append("</limitExceeded>")
+                  .append("<size>").append(Integer.toString(result.getSize())).append("</size>")
+                  .append("<items>");
+            for (Object item : result.getItems()) {
+                if (item != null) {
+                    marshaller.marshal(newItemElement(item), writer);
+                }
+            }
+            writer.append("</items></").append(root).append('>');
+        }
+        complete(marshaller, writer, os);
+    }
+
+    /**
+     * Write the list, element by element.<br>
+     * The xml list is an <code>items</code> element containing the elements (with their own root element), the json list is an array.
+     *
+     * @param items
+     * @param os
+     * @throws JAXBException
+     * @throws IOException
+     */
+    public void writeList(Collection<?> items, OutputStream os)
+        throws JAXBException, IOException
+    {
+        Writer writer = newWriter(os);
+        Marshaller marshaller = borrow();
+        if (isJson()) {
+            writer.append('[');
+            writeJsonItems(items, false, marshaller, writer);
+            writer.append(']');
+        }
+        else {
+            writer.append(XML_DECLARATION).append('<').append(XML_LIST_ROOT).append('>');
+            for (Object item : items) {
+                if (item != null) {
+                    marshaller.marshal(item, writer);
+                }
+            }
+            writer.append("</").append(XML_LIST_ROOT).append('>');
+        }
+        complete(marshaller, writer, os);
+    }
+
+    private boolean isJson()
+    {
+        return marshallerPool.getMediaType() == MediaType.APPLICATION_JSON;
+    }
+
+    private Writer newWriter(OutputStream os)
+    {
+        // the marshaller may flush after every element: keep the flushes away from the output stream
+        return new BufferedWriter(new OutputStreamWriter(new NonFlushingOutputStream(os), StandardCharsets.UTF_8), bufferSize);
+    }
+
+    private Marshaller borrow()
+        throws JAXBException
+    {
+        Marshaller marshaller = marshallerPool.borrow();
+        if (!isJson()) {
+            // no xml declaration for every element
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        }
+        return marshaller;
+    }
+
+    private void complete(Marshaller marshaller, Writer writer, OutputStream os)
+        throws JAXBException, IOException
+    {
+        writer.flush();
+        os.flush();
+        if (!isJson()) {
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+        }
+        marshallerPool.release(marshaller);
+    }
+
+    /**
+     * Return the beginning of the json list result, up to its first field: the marshaller writes the type of the list result first (if
+     * it is a subtype), so it is taken from the marshalling of an empty list result of the same class.
+     */
+    private String jsonPrefix(Class<?> resultClass, Marshaller marshaller)
+        throws JAXBException
+    {
+        String prefix = jsonPrefixes.get(resultClass);
+        if (prefix == null) {
+            prefix = "{";
+            try {
+                StringWriter emptyResult = new StringWriter();
+                marshaller.marshal(resultClass.newInstance(), emptyResult);
+                int firstField = emptyResult.getBuffer().indexOf("\"limitExceeded\"");
+                if (firstField > 0) {
+                    prefix = emptyResult.getBuffer().substring(0, firstField);
+                }
+            }
+            catch (InstantiationException | IllegalAccessException e) {
+                // no default constructor: no type
+            }
+            jsonPrefixes.put(resultClass, prefix);
+        }
+        return prefix;
+    }
+
+    private static void writeJsonItems(Collection<?> items, boolean listResult, Marshaller marshaller, Writer writer)
+        throws JAXBException, IOException
+    {
+        boolean first = true;
+        for (Object item : items) {
+            if (item == null) {
+                continue;
+            }
+            if (!first) {
+                writer.append(',');
+            }
+            marshaller.marshal(listResult ? newItemElement(item) : item, writer);
+            first = false;
+        }
+    }
+
+    private static JAXBElement<KapuaEntity> newItemElement(Object item)
+    {
+        // declared as the list result items are
+        return new JAXBElement<>(LIST_ITEM, KapuaEntity.class, (KapuaEntity) item);
+    }
+
+    /**
+     * Return the root element name of the first class or interface annotated as root element
+     */
+    private static String rootElementName(Class<?> type, String defaultName)
+    {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            String name = rootElementName(current);
+            if (name != null) {
+                return name;
+            }
+        }
+        return defaultName;
+    }
+
+    private static String rootElementName(Class<?> type)
+    {
+        XmlRootElement rootElement = type.getAnnotation(XmlRootElement.class);
+        if (rootElement != null && !DEFAULT_NAME.equals(rootElement.name())) {
+            return rootElement.name();
+        }
+        for (Class<?> superInterface : type.getInterfaces()) {
+            String name = rootElementName(superInterface);
+            if (name != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static class NonFlushingOutputStream extends FilterOutputStream
+    {
+        NonFlushingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush()
+        {
+            // flushed by the caller
+        }
+
+        @Override
+        public void close()
+        {
+            // the output stream is not owned
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.model.AbstractCommonServiceTest;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.misc.CollisionEntity;
+import org.eclipse.kapua.commons.model.misc.CollisionEntityManagerFactory;
+import org.eclipse.kapua.commons.model.misc.CollisionIdGenerator;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.commons.service.internal.ServiceDAO;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class EntityVersionTrackerTest extends AbstractCommonServiceTest
+{
+    private static final String  ENTITY_NAME = "CollisionEntity";
+    private static final KapuaId SCOPE_ID    = new KapuaEid(BigInteger.valueOf(10));
+    private static final KapuaId OTHER_SCOPE = new KapuaEid(BigInteger.valueOf(11));
+
+    private final EntityVersionTracker tracker = EntityVersionTracker.getInstance();
+
+    @BeforeClass
+    public static void setUpSession()
+    {
+        CollisionEntity.initializeCollisionIdGenerator(new CollisionIdGenerator("0", new BigInteger("200000"), 0));
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, SCOPE_ID, SCOPE_ID, "kapua-sys"));
+    }
+
+    @AfterClass
+    public static void tearDownSession()
+    {
+        KapuaSecurityUtils.clearSession();
+    }
+
+    @Test
+    public void testCommitChangesTheVersionOfTheScope()
+        throws Exception
+    {
+        String version = tracker.getVersion(ENTITY_NAME, SCOPE_ID);
+        String otherVersion = tracker.getVersion(ENTITY_NAME, OTHER_SCOPE);
+        String allVersion = tracker.getVersion(ENTITY_NAME);
+
+        CollisionEntity entity = insert("version-insert");
+
+        String insertVersion = tracker.getVersion(ENTITY_NAME, SCOPE_ID);
+        assertNotEquals(version, insertVersion);
+        assertEquals(otherVersion, tracker.getVersion(ENTITY_NAME, OTHER_SCOPE));
+        assertNotEquals(allVersion, tracker.getVersion(ENTITY_NAME));
+
+        EntityManager em = CollisionEntityManagerFactory.getInstance().createEntityManager();
+        try {
+            em.beginTransaction();
+            ServiceDAO.delete(em, CollisionEntity.class, entity.getId());
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+        assertNotEquals(insertVersion, tracker.getVersion(ENTITY_NAME, SCOPE_ID));
+    }
+
+    @Test
+    public void testUpdateOfAnotherProcessChangesTheVersion()
+        throws Exception
+    {
+        CollisionEntity entity = insert("version-update");
+        String version = tracker.getVersion(ENTITY_NAME, SCOPE_ID);
+
+        // written directly to the database, as another process would
+        EntityManager em = CollisionEntityManagerFactory.getInstance().createEntityManager();
+        try {
+            em.beginTransaction();
+            em.createNativeQuery("UPDATE collision_entity_test SET name = 'version-updated', optlock = optlock + 1 WHERE id = ?")
+              .setParameter(1, entity.getId().getId())
+              .executeUpdate();
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+
+        assertNotEquals(version, tracker.getVersion(ENTITY_NAME, SCOPE_ID));
+    }
+
+    @Test
+    public void testRollbackKeepsTheVersion()
+        throws Exception
+    {
+        String version = tracker.getVersion(ENTITY_NAME, SCOPE_ID);
+
+        EntityManager em = CollisionEntityManagerFactory.getInstance().createEntityManager();
+        try {
+            em.beginTransaction();
+            CollisionEntity entity = new CollisionEntity("version-rollback-field");
+            entity.setScopeId(SCOPE_ID);
+            entity.setName("version-rollback");
+            em.persist(entity);
+            em.flush();
+            em.rollback();
+        }
+        finally {
+            em.close();
+        }
+
+        assertEquals(version, tracker.getVersion(ENTITY_NAME, SCOPE_ID));
+    }
+
+    @Test
+    public void testUnknownEntity()
+        throws Exception
+    {
+        assertNull(tracker.getVersion("UnknownEntity", SCOPE_ID));
+    }
+
+    private static CollisionEntity insert(String name)
+        throws KapuaException
+    {
+        CollisionEntity entity = new CollisionEntity(name + "-field");
+        entity.setScopeId(SCOPE_ID);
+        entity.setName(name);
+
+        EntityManager em = CollisionEntityManagerFactory.getInstance().createEntityManager();
+        try {
+            em.beginTransaction();
+            ServiceDAO.create(em, entity);
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+        return entity;
+    }
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.jpa.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.AbstractEntityManagerFactory;
+import org.eclipse.kapua.commons.jpa.EntityManager;
+import org.eclipse.kapua.commons.jpa.H2JdbcConnectionUrlResolver;
+import org.eclipse.kapua.commons.model.AbstractCommonServiceTest;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.misc.CollisionEntity;
+import org.eclipse.kapua.commons.model.misc.CollisionIdGenerator;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.commons.service.internal.ServiceDAO;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Two persistence units mapping the same table stand for two nodes sharing the database: the changes committed by one node must invalidate
+ * the cache of the other one. The rows changed directly on the database (bypassing the caches) tell whether a read has been served by the cache.
+ *
+ * @since 1.0
+ */
+public class EntityCacheTest extends AbstractCommonServiceTest
+{
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+
+    private static CacheEntityManagerFactory node1;
+    private static CacheEntityManagerFactory node2;
+
+    @BeforeClass
+    public static void setUpFactories()
+        throws KapuaException
+    {
+        CollisionEntity.initializeCollisionIdGenerator(new CollisionIdGenerator("0", new BigInteger("100000"), 0));
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, SCOPE_ID, SCOPE_ID, "kapua-sys"));
+
+        // the test entity is cached by the test settings
+        node1 = new CacheEntityManagerFactory("kapua-commons-cache-unit-test-1");
+        node2 = new CacheEntityManagerFactory("kapua-commons-cache-unit-test-2");
+    }
+
+    @AfterClass
+    public static void tearDownSession()
+    {
+        KapuaSecurityUtils.clearSession();
+    }
+
+    @Test
+    public void testFindIsCached()
+        throws Exception
+    {
+        CollisionEntity entity = insert(node1, "cache-find");
+
+        assertEquals("cache-find", find(node1, entity.getId()).getName());
+        renameOnDatabase(entity.getId(), "cache-find-renamed");
+        assertEquals("cache-find", find(node1, entity.getId()).getName());
+        // not cached yet by the other node
+        assertEquals("cache-find-renamed", find(node2, entity.getId()).getName());
+    }
+
+    @Test
+    public void testUpdateInvalidatesOtherNodes()
+        throws Exception
+    {
+        CollisionEntity entity = insert(node1, "cache-update");
+        assertEquals("cache-update", find(node2, entity.getId()).getName());
+
+        entity.setName("cache-update-changed");
+        update(node1, entity);
+
+        assertEquals("cache-update-changed", find(node2, entity.getId()).getName());
+        assertEquals("cache-update-changed", find(node1, entity.getId()).getName());
+    }
+
+    @Test
+    public void testDeleteInvalidatesOtherNodes()
+        throws Exception
+    {
+        CollisionEntity entity = insert(node1, "cache-delete");
+        assertNotNull(find(node2, entity.getId()));
+
+        EntityManager em = node1.createEntityManager();
+        try {
+            em.beginTransaction();
+            ServiceDAO.delete(em, CollisionEntity.class, entity.getId());
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+
+        assertNull(find(node2, entity.getId()));
+        assertNull(find(node1, entity.getId()));
+    }
+
+    @Test
+    public void testFindByNameIsCached()
+        throws Exception
+    {
+        CollisionEntity entity = insert(node1, "cache-name");
+
+        assertNotNull(findByName(node2, "cache-name"));
+        renameOnDatabase(entity.getId(), "cache-name-renamed");
+        // the query result and the entity are served by the cache
+        assertEquals(entity.getId(), findByName(node2, "cache-name").getId());
+
+        entity.setName("cache-name-changed");
+        update(node1, entity);
+
+        assertNull(findByName(node2, "cache-name"));
+        assertEquals(entity.getId(), findByName(node2, "cache-name-changed").getId());
+    }
+
+    @Test
+    public void testFindByNameMissIsInvalidatedOnInsert()
+        throws Exception
+    {
+        assertNull(findByName(node2, "cache-insert"));
+
+        CollisionEntity entity = insert(node1, "cache-insert");
+
+        assertEquals(entity.getId(), findByName(node2, "cache-insert").getId());
+    }
+
+    @Test
+    public void testInvalidationOfAllEntities()
+        throws Exception
+    {
+        CollisionEntity entity = insert(node1, "cache-all");
+        assertNotNull(find(node2, entity.getId()));
+        renameOnDatabase(entity.getId(), "cache-all-renamed");
+
+        EntityCacheCustomizer.getInvalidationChannel().publish(new EntityCacheInvalidation("test", "CollisionEntity", Collections.emptySet()));
+
+        assertEquals("cache-all-renamed", find(node2, entity.getId()).getName());
+    }
+
+    private static CollisionEntity insert(CacheEntityManagerFactory node, String name)
+        throws KapuaException
+    {
+        CollisionEntity entity = new CollisionEntity(name + "-field");
+        entity.setScopeId(SCOPE_ID);
+        entity.setName(name);
+
+        EntityManager em = node.createEntityManager();
+        try {
+            em.beginTransaction();
+            ServiceDAO.create(em, entity);
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+        return entity;
+    }
+
+    private static void update(CacheEntityManagerFactory node, CollisionEntity entity)
+        throws KapuaException
+    {
+        EntityManager em = node.createEntityManager();
+        try {
+            em.beginTransaction();
+            ServiceDAO.update(em, CollisionEntity.class, entity);
+            em.commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static CollisionEntity find(CacheEntityManagerFactory node, KapuaId id)
+        throws KapuaException
+    {
+        EntityManager em = node.createEntityManager();
+        try {
+            return em.find(CollisionEntity.class, id);
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static CollisionEntity findByName(CacheEntityManagerFactory node, String name)
+        throws KapuaException
+    {
+        EntityManager em = node.createEntityManager();
+        try {
+            return ServiceDAO.findByName(em, CollisionEntity.class, name);
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static void renameOnDatabase(KapuaId id, String name)
+        throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(new H2JdbcConnectionUrlResolver().connectionUrl(), "kapua", "kapua");
+             PreparedStatement statement = connection.prepareStatement("UPDATE collision_entity_test SET name = ? WHERE id = ?")) {
+            statement.setString(1, name);
+            statement.setLong(2, id.getId().longValue());
+            assertEquals(1, statement.executeUpdate());
+        }
+    }
+
+    private static class CacheEntityManagerFactory extends AbstractEntityManagerFactory
+    {
+        CacheEntityManagerFactory(String persistenceUnitName)
+        {
+            super(persistenceUnitName, "kapua-dbpool", Collections.<String, String> emptyMap());
+        }
+    }
+}
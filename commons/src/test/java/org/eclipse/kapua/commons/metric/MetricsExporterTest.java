@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.metric;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Snapshot;
+
+public class MetricsExporterTest {
+
+    @Test
+    public void shouldServeMetricsInTextFormat() throws Exception {
+        // Given
+        MetricsServiceImpl metricsService = new MetricsServiceImpl();
+        metricsService.getCounter("listener", "admission", MetricLabels.label("account", "acme"), "messages", "count").inc(3);
+        metricsService.getCounter("listener", "admission", MetricLabels.label("account", "other.co"), "messages", "count").inc();
+        metricsService.getTimer("listener", "DataStorage", "store", "time").update(2, TimeUnit.MILLISECONDS);
+        MetricsExporter exporter = new MetricsExporter(metricsService.getMetricRegistry());
+        exporter.start("127.0.0.1", 0);
+
+        try {
+            // When
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + exporter.getPort() + MetricsExporter.PATH).openConnection();
+            String body = read(connection.getInputStream());
+
+            // Then
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).startsWith("text/plain");
+            assertThat(body).containsOnlyOnce("# TYPE kapua_listener_messages_count untyped\n");
+            assertThat(body).contains("kapua_listener_messages_count{component=\"admission\",account=\"acme\"} 3\n");
+            assertThat(body).contains("kapua_listener_messages_count{component=\"admission\",account=\"other_co\"} 1\n");
+            assertThat(body).contains("# TYPE kapua_listener_store_time_seconds summary\n");
+            assertThat(body).contains("kapua_listener_store_time_seconds_count{component=\"DataStorage\"} 1\n");
+            assertThat(body).contains("kapua_listener_store_time_seconds{component=\"DataStorage\",quantile=\"0.99\"} 0.002");
+        }
+        finally {
+            exporter.stop();
+        }
+    }
+
+    @Test
+    public void shouldReturnTheSameMetricForTheSameName() {
+        // Given
+        MetricsServiceImpl metricsService = new MetricsServiceImpl();
+
+        // Then
+        assertThat(metricsService.getCounter("a", "b", "c")).isSameAs(metricsService.getCounter("a", "b", "c"));
+        assertThat(metricsService.getTimer("a", "b", "t")).isSameAs(metricsService.getTimer("a", "b", "t"));
+    }
+
+    @Test
+    public void shouldComputeQuantilesFromHdrHistogram() {
+        // Given
+        HdrHistogramReservoir reservoir = new HdrHistogramReservoir(60, TimeUnit.SECONDS);
+
+        // When
+        for (long i = 1; i <= 10000; i++) {
+            reservoir.update(i);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        // Then
+        assertThat(snapshot.size()).isEqualTo(10000);
+        assertThat(snapshot.getMin()).isEqualTo(1);
+        assertThat(snapshot.getMedian()).isBetween(4950.0, 5050.0);
+        assertThat(snapshot.get99thPercentile()).isBetween(9850.0, 9950.0);
+        assertThat(reservoir.getSnapshot().size()).isEqualTo(10000);
+    }
+
+    private static String read(InputStream is) throws Exception {
+        try (InputStream in = is) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.kapua.commons.model.id.IdGenerator;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.id.RandomIdGeneratorStrategy;
+import org.eclipse.kapua.commons.model.id.TimeOrderedIdGeneratorStrategy;
+import org.junit.Test;
+
+public class IdGeneratorStrategyTest
+{
+    private static final BigInteger MAX_ID = BigInteger.valueOf(Long.MAX_VALUE);
+
+    @Test
+    public void testTimeOrderedIsIncreasing()
+    {
+        TimeOrderedIdGeneratorStrategy strategy = new TimeOrderedIdGeneratorStrategy(1);
+        long previous = strategy.nextId();
+        for (int i = 0; i < 100000; i++) {
+            long id = strategy.nextId();
+            assertTrue("The identifiers must be increasing", id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void testTimeOrderedIsUniqueAcrossThreads()
+        throws Exception
+    {
+        TimeOrderedIdGeneratorStrategy strategy = new TimeOrderedIdGeneratorStrategy(2);
+        int threads = 8;
+        int idsPerThread = 50000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit((Callable<long[]>) () -> {
+                    long[] ids = new long[idsPerThread];
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids[j] = strategy.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> ids = new HashSet<>();
+            for (Future<long[]> result : results) {
+                for (long id : result.get()) {
+                    ids.add(id);
+                }
+            }
+            assertEquals("Duplicated identifiers generated", threads * idsPerThread, ids.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeOrderedLayout()
+    {
+        long now = System.currentTimeMillis();
+        TimeOrderedIdGeneratorStrategy strategy = new TimeOrderedIdGeneratorStrategy(1023);
+        long id = strategy.nextId();
+
+        assertTrue("The identifier must be positive", id > 0);
+        assertEquals("Wrong node id", 1023, (id >>> 12) & 1023);
+        long timestamp = (id >>> 22) + TimeOrderedIdGeneratorStrategy.EPOCH;
+        assertTrue("Wrong timestamp", timestamp >= now && timestamp <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void testTimeOrderedDoesNotGoBackWithTheClock()
+    {
+        long[] clock = new long[] { TimeOrderedIdGeneratorStrategy.EPOCH + 1000000 };
+        TimeOrderedIdGeneratorStrategy strategy = new TimeOrderedIdGeneratorStrategy(3) {
+
+            @Override
+            protected long currentTimeMillis()
+            {
+                return clock[0];
+            }
+        };
+
+        // exhaust the sequence of the millisecond: the next identifiers borrow the next milliseconds
+        long previous = strategy.nextId();
+        for (int i = 0; i < 10000; i++) {
+            long id = strategy.nextId();
+            assertTrue("The identifiers must be increasing", id > previous);
+            previous = id;
+        }
+
+        clock[0] -= 5000;
+        assertTrue("The identifiers must be increasing when the clock goes back", strategy.nextId() > previous);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeOrderedInvalidNodeId()
+    {
+        new TimeOrderedIdGeneratorStrategy(1024);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTimeOrderedRequiresNodeId()
+    {
+        new TimeOrderedIdGeneratorStrategy();
+    }
+
+    @Test
+    public void testRandomFitsKapuaEid()
+    {
+        RandomIdGeneratorStrategy strategy = new RandomIdGeneratorStrategy(8);
+        for (int i = 0; i < 1000; i++) {
+            BigInteger id = strategy.generate();
+            assertTrue("The identifier must fit a long", id.bitLength() < 64);
+            assertEquals(id, new KapuaEid(id).getId());
+        }
+    }
+
+    @Test
+    public void testDefaultStrategy()
+    {
+        assertTrue(IdGenerator.getStrategy() instanceof RandomIdGeneratorStrategy);
+        BigInteger id = IdGenerator.generate();
+        assertTrue("The identifier must be positive and fit a long", id.signum() > 0 && id.compareTo(MAX_ID) <= 0);
+    }
+}
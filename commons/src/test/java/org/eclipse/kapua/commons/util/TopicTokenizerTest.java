@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TopicTokenizerTest {
+
+    @Test
+    public void topicsShouldBeSplitAsStringSplit() {
+        // Given
+        TopicTokenizer tokenizer = TopicTokenizer.getInstance('/');
+        String[] topics = { "account/client/a/b", "$EDC/account/client/MQTT/BIRTH", "single", "", "/", "a//b", "/a/b", "a/b/", "a/b//" };
+
+        for (String topic : topics) {
+            // When
+            TopicTokens topicTokens = tokenizer.parse(topic);
+
+            // Then
+            assertThat(topicTokens.toArray()).containsExactly(topic.split("/"));
+            assertThat(topicTokens.getTopic()).isEqualTo(topic);
+        }
+    }
+
+    @Test
+    public void parsedTopicsShouldBeShared() {
+        // Given
+        TopicTokenizer tokenizer = TopicTokenizer.getInstance('/');
+
+        // When
+        TopicTokens topicTokens = tokenizer.parse(new String("account/client-1/sensors/temperature"));
+        TopicTokens otherTopicTokens = tokenizer.parse(new String("account/client-2/sensors/temperature"));
+
+        // Then
+        assertThat(tokenizer.parse(new String("account/client-1/sensors/temperature"))).isSameAs(topicTokens);
+        assertThat(otherTopicTokens.get(0)).isSameAs(topicTokens.get(0));
+        assertThat(topicTokens.getTokens(2)).containsExactly("sensors", "temperature");
+        assertThat(topicTokens.getTail(2)).isEqualTo("sensors/temperature");
+        assertThat(topicTokens.getTokens(4)).isEmpty();
+    }
+
+    @Test
+    public void destinationPrefixShouldBeSkipped() {
+        // Given
+        TopicTokenizer tokenizer = TopicTokenizer.getInstance('.');
+
+        // When
+        TopicTokens topicTokens = tokenizer.parse("VirtualTopic.account.client.a", "VirtualTopic.".length());
+
+        // Then
+        assertThat(topicTokens.getTopic()).isEqualTo("account.client.a");
+        assertThat(topicTokens.getTokens()).containsExactly("account", "client", "a");
+        assertThat(tokenizer.parse("VirtualTopic.account.client.a").getTokens()).containsExactly("VirtualTopic", "account", "client", "a");
+    }
+
+}
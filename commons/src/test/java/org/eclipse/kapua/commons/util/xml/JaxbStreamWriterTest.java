@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.kapua.commons.util.xml.misc.StreamEntity;
+import org.eclipse.kapua.commons.util.xml.misc.StreamEntityImpl;
+import org.eclipse.kapua.commons.util.xml.misc.StreamEntityListResult;
+import org.eclipse.kapua.commons.util.xml.misc.StreamEntityListResultImpl;
+import org.eclipse.kapua.commons.util.xml.misc.StreamEntityXmlRegistry;
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.oxm.MediaType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JaxbStreamWriterTest
+{
+    private static final int   LARGE_SIZE  = 100000;
+    private static final int   BUFFER_SIZE = 8192;
+
+    private static JAXBContext context;
+
+    @BeforeClass
+    public static void setUpContext()
+        throws Exception
+    {
+        context = JAXBContextFactory.createContext(new Class[] { StreamEntity.class, StreamEntityListResult.class, StreamEntityXmlRegistry.class }, null);
+    }
+
+    @Test
+    public void testListResultAsMarshalled()
+        throws Exception
+    {
+        StreamEntityListResult result = newResult(3, null);
+        result.setLimitExceeded(true);
+
+        for (MediaType mediaType : new MediaType[] { MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON }) {
+            JaxbMarshallerPool pool = new JaxbMarshallerPool(context, mediaType, 1);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Marshaller marshaller = pool.borrow();
+            marshaller.marshal(result, expected);
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            new JaxbStreamWriter(pool, BUFFER_SIZE).write(result, streamed);
+
+            assertEquals(mediaType.toString(), expected.toString("UTF-8"), streamed.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testList()
+        throws Exception
+    {
+        List<StreamEntity> items = new ArrayList<>(newResult(2, null).getItems());
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new JaxbStreamWriter(new JaxbMarshallerPool(context, MediaType.APPLICATION_XML, 1), BUFFER_SIZE).writeList(items, xml);
+        String xmlList = xml.toString("UTF-8");
+        assertTrue(xmlList, xmlList.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><items><streamEntity>"));
+        assertTrue(xmlList, xmlList.endsWith("</streamEntity></items>"));
+        assertEquals(xmlList, 2, xmlList.split("<name>entity-").length - 1);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        new JaxbStreamWriter(new JaxbMarshallerPool(context, MediaType.APPLICATION_JSON, 1), BUFFER_SIZE).writeList(items, json);
+        String jsonList = json.toString("UTF-8");
+        assertTrue(jsonList, jsonList.startsWith("[{") && jsonList.endsWith("}]"));
+        assertTrue(jsonList, jsonList.contains("\"name\":\"entity-000000\",\"value\":0},{"));
+        assertTrue(jsonList, jsonList.contains("\"name\":\"entity-000001\""));
+    }
+
+    /**
+     * The output must be written while the elements are marshalled: when an element is marshalled, all the elements before it (but the
+     * buffered ones) must already be in the output stream.
+     */
+    @Test
+    public void testLargeListResultIsStreamed()
+        throws Exception
+    {
+        for (MediaType mediaType : new MediaType[] { MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON }) {
+            CountingOutputStream os = new CountingOutputStream();
+            long[] writtenBefore = new long[LARGE_SIZE];
+            int[] marshalled = new int[1];
+            StreamEntityListResult result = newResult(LARGE_SIZE, () -> writtenBefore[marshalled[0]++] = os.count);
+
+            new JaxbStreamWriter(new JaxbMarshallerPool(context, mediaType, 1), BUFFER_SIZE).write(result, os);
+
+            assertEquals(LARGE_SIZE, marshalled[0]);
+            long elementSize = os.count / LARGE_SIZE;
+            // the buffered characters, at most 3 bytes each in utf-8, plus the list envelope
+            long maxPending = 3L * BUFFER_SIZE + 2 * elementSize + 256;
+            for (int i = 0; i < LARGE_SIZE; i++) {
+                long expectedMin = i * elementSize - maxPending;
+                assertTrue(mediaType + ": element " + i + " marshalled with " + writtenBefore[i] + " bytes written",
+                           writtenBefore[i] >= expectedMin);
+            }
+        }
+    }
+
+    @Test
+    public void testErrorIsThrown()
+        throws Exception
+    {
+        JaxbMarshallerPool pool = new JaxbMarshallerPool(context, MediaType.APPLICATION_XML, 1);
+        int[] marshalled = new int[1];
+        StreamEntityListResult result = newResult(100, () -> {
+            if (++marshalled[0] == 50) {
+                throw new IllegalStateException("Marshalling failure");
+            }
+        });
+
+        try {
+            new JaxbStreamWriter(pool, BUFFER_SIZE).write(result, new ByteArrayOutputStream());
+            fail("The marshalling error must be thrown");
+        }
+        catch (Exception e) {
+            // expected
+        }
+        // a failed marshaller is not reused
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testMarshallerReused()
+        throws Exception
+    {
+        JaxbMarshallerPool pool = new JaxbMarshallerPool(context, MediaType.APPLICATION_XML, 2);
+        JaxbStreamWriter writer = new JaxbStreamWriter(pool, BUFFER_SIZE);
+        writer.write(newResult(2, null), new ByteArrayOutputStream());
+        writer.write(new StreamEntityImpl("single", 1, null), new ByteArrayOutputStream());
+        assertEquals(1, pool.getIdleCount());
+
+        Marshaller marshaller = pool.borrow();
+        pool.release(marshaller);
+        assertSame(marshaller, pool.borrow());
+
+        // the fragment mode used for the list elements must not leak to the next serialization
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        pool.release(marshaller);
+        writer.write(new StreamEntityImpl("single", 1, null), os);
+        assertTrue(new String(os.toByteArray(), StandardCharsets.UTF_8).startsWith("<?xml"));
+    }
+
+    private static StreamEntityListResult newResult(int size, Runnable marshalListener)
+    {
+        StreamEntityListResult result = new StreamEntityListResultImpl();
+        List<StreamEntity> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new StreamEntityImpl(String.format("entity-%06d", i), i, marshalListener));
+        }
+        result.addItems(items);
+        return result;
+    }
+
+    private static class CountingOutputStream extends OutputStream
+    {
+        private volatile long count;
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+        }
+    }
+}
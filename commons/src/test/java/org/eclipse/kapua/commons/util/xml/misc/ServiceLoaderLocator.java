@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml.misc;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+import org.eclipse.kapua.KapuaRuntimeErrorCodes;
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.KapuaObjectFactory;
+import org.eclipse.kapua.service.KapuaService;
+
+/**
+ * Test {@link KapuaLocator} looking up the services and the factories declared in the META-INF/services files (i.e. the
+ * {@link org.eclipse.kapua.model.id.KapuaIdFactory} used by the entity id xml adapter).
+ */
+public class ServiceLoaderLocator extends KapuaLocator
+{
+    @Override
+    public <S extends KapuaService> S getService(Class<S> serviceClass)
+    {
+        return load(serviceClass);
+    }
+
+    @Override
+    public <F extends KapuaObjectFactory> F getFactory(Class<F> factoryClass)
+    {
+        return load(factoryClass);
+    }
+
+    private static <T> T load(Class<T> type)
+    {
+        Iterator<T> iterator = ServiceLoader.load(type).iterator();
+        if (!iterator.hasNext()) {
+            throw new KapuaRuntimeException(KapuaRuntimeErrorCodes.SERVICE_LOCATOR_UNAVAILABLE, type);
+        }
+        return iterator.next();
+    }
+}
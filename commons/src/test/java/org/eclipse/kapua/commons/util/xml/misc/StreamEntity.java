@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml.misc;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import org.eclipse.kapua.model.KapuaEntity;
+
+@XmlRootElement(name = "streamEntity")
+@XmlAccessorType(XmlAccessType.PROPERTY)
+@XmlType(propOrder = { "name", "value" }, factoryClass = StreamEntityXmlRegistry.class, factoryMethod = "newStreamEntity")
+public interface StreamEntity extends KapuaEntity
+{
+    @XmlElement(name = "name")
+    public String getName();
+
+    public void setName(String name);
+
+    @XmlElement(name = "value")
+    public long getValue();
+
+    public void setValue(long value);
+}
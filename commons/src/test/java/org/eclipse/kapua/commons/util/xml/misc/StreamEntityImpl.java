@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml.misc;
+
+import java.util.Date;
+
+import org.eclipse.kapua.model.id.KapuaId;
+
+public class StreamEntityImpl implements StreamEntity
+{
+    private static final long serialVersionUID = 1L;
+
+    private String            name;
+    private long              value;
+
+    /**
+     * Called for every entity marshalled (if set)
+     */
+    private transient Runnable marshalListener;
+
+    public StreamEntityImpl()
+    {
+    }
+
+    public StreamEntityImpl(String name, long value, Runnable marshalListener)
+    {
+        this.name = name;
+        this.value = value;
+        this.marshalListener = marshalListener;
+    }
+
+    @Override
+    public String getName()
+    {
+        if (marshalListener != null) {
+            marshalListener.run();
+        }
+        return name;
+    }
+
+    @Override
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    @Override
+    public long getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public void setValue(long value)
+    {
+        this.value = value;
+    }
+
+    @Override
+    public KapuaId getId()
+    {
+        return null;
+    }
+
+    @Override
+    public void setId(KapuaId id)
+    {
+    }
+
+    @Override
+    public String getType()
+    {
+        return "streamEntity";
+    }
+
+    @Override
+    public KapuaId getScopeId()
+    {
+        return null;
+    }
+
+    @Override
+    public Date getCreatedOn()
+    {
+        return null;
+    }
+
+    @Override
+    public KapuaId getCreatedBy()
+    {
+        return null;
+    }
+}
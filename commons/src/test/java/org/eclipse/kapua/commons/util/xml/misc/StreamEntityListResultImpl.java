@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml.misc;
+
+import org.eclipse.kapua.commons.model.query.KapuaListResultImpl;
+
+public class StreamEntityListResultImpl extends KapuaListResultImpl<StreamEntity> implements StreamEntityListResult
+{
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.commons.util.xml.misc;
+
+import javax.xml.bind.annotation.XmlRegistry;
+
+@XmlRegistry
+public class StreamEntityXmlRegistry
+{
+    public StreamEntity newStreamEntity()
+    {
+        return new StreamEntityImpl();
+    }
+
+    public StreamEntityListResult newStreamEntityListResult()
+    {
+        return new StreamEntityListResultImpl();
+    }
+}
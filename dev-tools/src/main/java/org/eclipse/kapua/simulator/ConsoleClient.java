@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.service.device.call.kura.app.RequestMetrics;
+import org.eclipse.kapua.service.device.call.message.kura.KuraPayload;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Console side of the simulation.<br>
+ * Sends the device management requests (as the Kapua device management services do) and measures the time to the device reply.
+ * If the data monitoring is enabled it also subscribes to the account data topics and measures the end to end telemetry latency,
+ * that is from the device publish to the delivery by the broker to a subscriber.
+ *
+ * @since 1.0
+ */
+public class ConsoleClient implements MqttCallback
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConsoleClient.class);
+
+    private static final String                         EDC        = "$EDC";
+
+    private final FleetSimulator                        simulator;
+    private final String                                clientId;
+    private final MqttAsyncClient                       client;
+    private final MqttConnectOptions                    options;
+
+    private final AtomicLong                            requestIds = new AtomicLong();
+    // request id -> request send time (nanoseconds)
+    private final ConcurrentHashMap<String, Long>       pending    = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param simulator
+     * @param clientId
+     * @param username
+     * @param password
+     * @throws MqttException
+     */
+    ConsoleClient(FleetSimulator simulator, String clientId, String username, String password)
+        throws MqttException
+    {
+        this.simulator = simulator;
+        this.clientId = clientId;
+        this.client = new MqttAsyncClient(simulator.getBrokerUrl(), clientId, new MemoryPersistence());
+        this.client.setCallback(this);
+
+        options = new MqttConnectOptions();
+        options.setUserName(username);
+        options.setPassword(password.toCharArray());
+        options.setCleanSession(true);
+        options.setKeepAliveInterval(simulator.getKeepAlive());
+        options.setConnectionTimeout(simulator.getConnectTimeout());
+        options.setMaxInflight(Math.max(options.getMaxInflight(), 1000));
+    }
+
+    /**
+     * Connect and subscribe to the reply (and the data) topics
+     *
+     * @param monitorData
+     * @throws MqttException
+     */
+    void connect(boolean monitorData)
+        throws MqttException
+    {
+        client.connect(options).waitForCompletion();
+        client.subscribe(EDC + "/" + simulator.getAccount() + "/" + clientId + "/+/REPLY/#", 0).waitForCompletion();
+        if (monitorData) {
+            client.subscribe(simulator.getAccount() + "/#", 0).waitForCompletion();
+        }
+        logger.info("Console {} connected", clientId);
+    }
+
+    /**
+     * Send an EXEC request to the device
+     *
+     * @param device
+     */
+    void sendRequest(VirtualDevice device)
+    {
+        if (!client.isConnected()) {
+            return;
+        }
+        String requestId = clientId + "-" + requestIds.incrementAndGet();
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date());
+        payload.getMetrics().put(RequestMetrics.REQ_METRIC_REQUEST_ID.getValue(), requestId);
+        payload.getMetrics().put(RequestMetrics.REQ_METRIC_REQUESTER_CLIENT_ID.getValue(), clientId);
+        payload.getMetrics().put("command.command", "uptime");
+
+        String topic = EDC + "/" + simulator.getAccount() + "/" + device.getClientId() + "/" + simulator.getAppId() + "/EXEC/command";
+        pending.put(requestId, System.nanoTime());
+        try {
+            client.publish(topic, payload.toByteArray(), 0, false);
+            simulator.getStatistics().requests.increment();
+        }
+        catch (MqttException e) {
+            pending.remove(requestId);
+            simulator.getStatistics().publishFailures.increment();
+        }
+    }
+
+    /**
+     * Drop the requests pending for more than the timeout
+     *
+     * @param timeout (milliseconds)
+     */
+    void expireRequests(long timeout)
+    {
+        long expiredBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeout);
+        Iterator<Entry<String, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() - expiredBefore < 0) {
+                iterator.remove();
+                simulator.getStatistics().requestTimeouts.increment();
+            }
+        }
+    }
+
+    /**
+     * Disconnect
+     */
+    void close()
+    {
+        try {
+            if (client.isConnected()) {
+                client.disconnect().waitForCompletion(1000);
+            }
+            client.close();
+        }
+        catch (MqttException e) {
+            logger.debug("Console {} disconnection failed: {}", clientId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message)
+        throws Exception
+    {
+        if (topic.startsWith(EDC)) {
+            // $EDC/account/clientId/appId/REPLY/requestId
+            String requestId = topic.substring(topic.lastIndexOf('/') + 1);
+            Long sentOn = pending.remove(requestId);
+            if (sentOn != null) {
+                simulator.getStatistics().recordReply(sentOn);
+            }
+            return;
+        }
+
+        KuraPayload payload = new KuraPayload();
+        payload.readFromByteArray(message.getPayload());
+        Object sentOn = payload.getMetrics().get(VirtualDevice.METRIC_SENT_ON);
+        if (sentOn instanceof Long) {
+            simulator.getStatistics().recordData((Long) sentOn);
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause)
+    {
+        logger.warn("Console {} connection lost: {}", clientId, cause != null ? cause.getMessage() : null);
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token)
+    {
+        // nothing to do
+    }
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.activemq.broker.BrokerFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single process Kapua back end for the simulator: an in memory H2 database, an Elasticsearch node standing in for the datastore cluster
+ * and the Kapua broker started from its ActiveMQ configuration (so the devices go through the real mqtt+nio connector, security plugin
+ * and Camel routes).<br>
+ * The database and Elasticsearch settings are passed to the Kapua services as system properties, so the embedded stack must be started
+ * before any Kapua setting is loaded.
+ *
+ * @since 1.0
+ */
+public class EmbeddedKapua
+{
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedKapua.class);
+
+    // same database the H2JdbcConnectionUrlResolver connects to
+    private static final String   DB_URL       = "jdbc:h2:mem:kapua;MODE=MySQL";
+    private static final String   DB_USERNAME  = "kapua";
+    private static final String   DB_PASSWORD  = "kapua";
+
+    // module sql scripts, in dependency order (the same order the integration tests seed the database)
+    private static final String[] SQL_DIRS     = new String[] {
+                                                                "commons/src/main/sql/H2",
+                                                                "service/account/internal/src/main/sql/H2",
+                                                                "service/user/internal/src/main/sql/H2",
+                                                                "service/security/shiro/src/main/sql/H2",
+                                                                "service/device/registry/internal/src/main/sql/H2"
+    };
+
+    private final File            sourceRoot;
+    private final File            dataDir;
+    private final String          brokerConfig;
+    private final String          esCluster;
+    private final int             esPort;
+
+    // the in memory database lives as long as a connection is open
+    private Connection            dbConnection;
+    private Node                  esNode;
+    private BrokerService         broker;
+
+    /**
+     * Constructor
+     *
+     * @param setting
+     */
+    public EmbeddedKapua(SimulatorSetting setting)
+    {
+        sourceRoot = new File(setting.getString(SimulatorSettingKey.EMBEDDED_SOURCE_ROOT, ".")).getAbsoluteFile();
+        dataDir = new File(setting.getString(SimulatorSettingKey.EMBEDDED_DATA_DIR, "target/simulator")).getAbsoluteFile();
+        brokerConfig = setting.getString(SimulatorSettingKey.EMBEDDED_BROKER_CONFIG, "assembly/src/main/resources/conf/broker/activemq.xml");
+        esCluster = setting.getString(SimulatorSettingKey.EMBEDDED_ES_CLUSTER, "kapua-datastore");
+        esPort = setting.getInt(SimulatorSettingKey.EMBEDDED_ES_PORT, 9300);
+    }
+
+    /**
+     * Start the database, Elasticsearch and the broker
+     *
+     * @throws Exception
+     */
+    public void start()
+        throws Exception
+    {
+        configureSystemProperties();
+        startDatabase();
+        startElasticsearch();
+        startBroker();
+    }
+
+    /**
+     * Stop the broker, Elasticsearch and the database
+     */
+    public void stop()
+    {
+        if (broker != null) {
+            try {
+                broker.stop();
+                broker.waitUntilStopped();
+            }
+            catch (Exception e) {
+                logger.warn("Cannot stop the broker", e);
+            }
+        }
+        if (esNode != null) {
+            esNode.close();
+        }
+        if (dbConnection != null) {
+            try {
+                dbConnection.close();
+            }
+            catch (SQLException e) {
+                logger.warn("Cannot close the database", e);
+            }
+        }
+    }
+
+    private void configureSystemProperties()
+        throws IOException
+    {
+        System.setProperty(SystemSettingKey.DB_JDBC_CONNECTION_URL_RESOLVER.key(), "H2");
+        System.setProperty(SystemSettingKey.DB_JDBC_DRIVER.key(), "org.h2.Driver");
+        System.setProperty(SystemSettingKey.DB_USERNAME.key(), DB_USERNAME);
+        System.setProperty(SystemSettingKey.DB_PASSWORD.key(), DB_PASSWORD);
+
+        System.setProperty(DatastoreSettingKey.ELASTICSEARCH_CLUSTER.key(), esCluster);
+        System.setProperty(DatastoreSettingKey.ELASTICSEARCH_NODES.key() + ".01", "127.0.0.1:" + esPort);
+
+        // a single node: the access token secret does not need to be shared, a random one is enough
+        String tokenSecret = KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_SECRET.key();
+        if (System.getProperty(tokenSecret) == null) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            System.setProperty(tokenSecret, Base64.getEncoder().encodeToString(secret));
+        }
+
+        // the broker configuration reads the credentials from ${activemq.conf} and stores the data in ${activemq.data}
+        File confDir = new File(dataDir, "conf");
+        confDir.mkdirs();
+        File credentials = new File(confDir, "credentials.properties");
+        if (!credentials.exists()) {
+            Files.write(credentials.toPath(), Collections.<String> emptyList(), StandardCharsets.UTF_8);
+        }
+        System.setProperty("activemq.conf", confDir.getPath());
+        System.setProperty("activemq.data", new File(dataDir, "activemq").getPath());
+    }
+
+    private void startDatabase()
+        throws SQLException, IOException
+    {
+        logger.info("Creating the in memory database from {}", sourceRoot);
+        dbConnection = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
+
+        List<Path> creates = new ArrayList<>();
+        List<Path> seeds = new ArrayList<>();
+        for (String sqlDir : SQL_DIRS) {
+            creates.addAll(scripts(sqlDir, "_create.sql"));
+            seeds.addAll(scripts(sqlDir, "_seed.sql"));
+        }
+        for (Path script : creates) {
+            runScript(script);
+        }
+        for (Path script : seeds) {
+            runScript(script);
+        }
+    }
+
+    private List<Path> scripts(String sqlDir, String suffix)
+        throws IOException
+    {
+        Path dir = new File(sourceRoot, sqlDir).toPath();
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Sql scripts directory not found: " + dir + " (check simulator.embedded.source_root)");
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    private void runScript(Path script)
+        throws SQLException, IOException
+    {
+        logger.debug("Running {}", script);
+        try (Reader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            RunScript.execute(dbConnection, reader);
+        }
+    }
+
+    private void startElasticsearch()
+    {
+        logger.info("Starting the Elasticsearch node {} on port {}", esCluster, esPort);
+        Settings settings = Settings.settingsBuilder()
+                                    .put("cluster.name", esCluster)
+                                    .put("path.home", new File(dataDir, "elasticsearch").getPath())
+                                    .put("network.host", "127.0.0.1")
+                                    .put("transport.tcp.port", esPort)
+                                    .put("http.enabled", false)
+                                    .put("discovery.zen.ping.multicast.enabled", false)
+                                    .put("index.number_of_shards", 1)
+                                    .put("index.number_of_replicas", 0)
+                                    .build();
+        esNode = NodeBuilder.nodeBuilder().settings(settings).node();
+        esNode.client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+    }
+
+    private void startBroker()
+        throws Exception
+    {
+        File config = new File(sourceRoot, brokerConfig);
+        logger.info("Starting the broker from {}", config);
+        broker = BrokerFactory.createBroker(new URI("xbean:" + config.toURI()));
+        broker.start();
+        broker.waitUntilStarted();
+        logger.info("Broker started, mqtt connector on {}", broker.getConnectorByName("mqtt").getPublishableConnectString());
+    }
+}
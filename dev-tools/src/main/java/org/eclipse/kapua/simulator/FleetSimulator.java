@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MQTT device fleet simulator.<br>
+ * Connects a fleet of {@link VirtualDevice} (at a limited connection rate) to a Kapua broker, drives the telemetry, the device management
+ * requests (through the {@link ConsoleClient}) and the reconnect storms, and prints the {@link FleetStatistics} every report interval and at
+ * the end of the simulation.<br>
+ * The simulation is configured by the {@link SimulatorSetting} (every setting can be overridden by a system property). If the embedded
+ * mode is enabled the Kapua back end is started in process by {@link EmbeddedKapua}.
+ *
+ * @since 1.0
+ */
+public class FleetSimulator
+{
+    private static final Logger logger = LoggerFactory.getLogger(FleetSimulator.class);
+
+    private static final long                 CONNECT_TICK = 100;
+
+    private final SimulatorSetting            setting;
+    private final FleetStatistics             statistics   = new FleetStatistics();
+    private final ScheduledExecutorService    scheduler;
+    private final List<VirtualDevice>         devices      = new ArrayList<>();
+    private final Queue<VirtualDevice>        connectQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong                  connectCredit = new AtomicLong();
+
+    private final String                      brokerUrl;
+    private final String                      account;
+    private final String                      deviceUsername;
+    private final String                      devicePassword;
+    private final int                         keepAlive;
+    private final int                         connectTimeout;
+    private final long                        telemetryInterval;
+    private final int                         metricCount;
+    private final int                         bodySize;
+    private final int                         qos;
+    private final String                      semanticTopic;
+    private final String                      appId;
+    private final long                        replyDelay;
+
+    private ConsoleClient                     console;
+
+    /**
+     * Constructor
+     *
+     * @param setting
+     */
+    public FleetSimulator(SimulatorSetting setting)
+    {
+        this.setting = setting;
+        brokerUrl = setting.getString(SimulatorSettingKey.BROKER_URL, "tcp://localhost:1883");
+        account = setting.getString(SimulatorSettingKey.ACCOUNT, "kapua-sys");
+        deviceUsername = setting.getString(SimulatorSettingKey.DEVICE_USERNAME, "kapua-broker");
+        devicePassword = setting.getString(SimulatorSettingKey.DEVICE_PASSWORD, "kapua-password");
+        keepAlive = setting.getInt(SimulatorSettingKey.DEVICE_KEEP_ALIVE, 60);
+        connectTimeout = setting.getInt(SimulatorSettingKey.DEVICE_CONNECT_TIMEOUT, 30);
+        telemetryInterval = setting.getLong(SimulatorSettingKey.TELEMETRY_INTERVAL, 10000L);
+        metricCount = setting.getInt(SimulatorSettingKey.TELEMETRY_METRICS, 10);
+        bodySize = setting.getInt(SimulatorSettingKey.TELEMETRY_BODY_SIZE, 0);
+        qos = setting.getInt(SimulatorSettingKey.TELEMETRY_QOS, 0);
+        semanticTopic = setting.getString(SimulatorSettingKey.TELEMETRY_SEMANTIC_TOPIC, "sensors/environment");
+        appId = setting.getString(SimulatorSettingKey.MANAGEMENT_APP_ID, "CMD-V1");
+        replyDelay = setting.getLong(SimulatorSettingKey.MANAGEMENT_REPLY_DELAY, 0L);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(setting.getInt(SimulatorSettingKey.SCHEDULER_THREADS, 4), r -> {
+            Thread thread = new Thread(r, "simulator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = executor;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        SimulatorSetting setting = SimulatorSetting.getInstance();
+        EmbeddedKapua embeddedKapua = null;
+        if (setting.getBoolean(SimulatorSettingKey.EMBEDDED_ENABLED, false)) {
+            embeddedKapua = new EmbeddedKapua(setting);
+            embeddedKapua.start();
+        }
+
+        FleetSimulator simulator = new FleetSimulator(setting);
+        CountDownLatch stopped = new CountDownLatch(1);
+        EmbeddedKapua backEnd = embeddedKapua;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            simulator.stop();
+            if (backEnd != null) {
+                backEnd.stop();
+            }
+            stopped.countDown();
+        }, "simulator-shutdown"));
+
+        simulator.start();
+        long duration = setting.getLong(SimulatorSettingKey.DURATION, 300L);
+        if (duration > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+            // the shutdown hook stops the simulation and prints the summary
+            System.exit(0);
+        }
+        stopped.await();
+    }
+
+    /**
+     * Start the simulation
+     *
+     * @throws MqttException
+     */
+    public void start()
+        throws MqttException
+    {
+        int deviceCount = setting.getInt(SimulatorSettingKey.DEVICE_COUNT, 1000);
+        String clientIdPrefix = setting.getString(SimulatorSettingKey.DEVICE_CLIENT_ID_PREFIX, "sim-");
+        logger.info("Starting {} devices on {} (account {})", new Object[] { deviceCount, brokerUrl, account });
+
+        console = new ConsoleClient(this,
+                                    setting.getString(SimulatorSettingKey.CONSOLE_CLIENT_ID, "sim-console"),
+                                    setting.getString(SimulatorSettingKey.CONSOLE_USERNAME, "kapua-sys"),
+                                    setting.getString(SimulatorSettingKey.CONSOLE_PASSWORD, "kapua-password"));
+        console.connect(setting.getBoolean(SimulatorSettingKey.CONSOLE_MONITOR_DATA, true));
+
+        for (int i = 0; i < deviceCount; i++) {
+            VirtualDevice device = new VirtualDevice(this, clientIdPrefix + i);
+            devices.add(device);
+            connectQueue.add(device);
+        }
+
+        long connectRate = Math.max(1, setting.getLong(SimulatorSettingKey.DEVICE_CONNECT_RATE, 100L));
+        scheduler.scheduleAtFixedRate(() -> connectTick(connectRate), 0, CONNECT_TICK, TimeUnit.MILLISECONDS);
+
+        long managementInterval = setting.getLong(SimulatorSettingKey.MANAGEMENT_INTERVAL, 100L);
+        if (managementInterval > 0) {
+            long timeout = setting.getLong(SimulatorSettingKey.MANAGEMENT_TIMEOUT, 30000L);
+            scheduler.scheduleAtFixedRate(this::sendRequest, managementInterval, managementInterval, TimeUnit.MILLISECONDS);
+            scheduler.scheduleAtFixedRate(() -> console.expireRequests(timeout), 1, 1, TimeUnit.SECONDS);
+        }
+
+        long stormInterval = setting.getLong(SimulatorSettingKey.STORM_INTERVAL, 0L);
+        if (stormInterval > 0) {
+            double fraction = setting.getDouble(SimulatorSettingKey.STORM_FRACTION, 0.2d);
+            scheduler.scheduleAtFixedRate(() -> storm(fraction), stormInterval, stormInterval, TimeUnit.SECONDS);
+        }
+
+        long reportInterval = setting.getLong(SimulatorSettingKey.REPORT_INTERVAL, 10L);
+        if (reportInterval > 0) {
+            scheduler.scheduleAtFixedRate(() -> statistics.report(System.out), reportInterval, reportInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop the simulation, disconnect the devices and print the summary
+     */
+    public synchronized void stop()
+    {
+        scheduler.shutdownNow();
+        for (VirtualDevice device : devices) {
+            device.close();
+        }
+        if (console != null) {
+            console.close();
+        }
+        statistics.summary(System.out);
+    }
+
+    /**
+     * Queue the device for a (rate limited) connection
+     *
+     * @param device
+     */
+    void enqueueConnect(VirtualDevice device)
+    {
+        connectQueue.add(device);
+    }
+
+    private void connectTick(long connectRate)
+    {
+        // the credit accumulates the fraction of connection per tick of the low rates
+        long credit = connectCredit.addAndGet(connectRate * CONNECT_TICK);
+        VirtualDevice device;
+        while (credit >= 1000 && (device = connectQueue.poll()) != null) {
+            device.connect();
+            credit = connectCredit.addAndGet(-1000);
+        }
+        if (connectQueue.isEmpty()) {
+            connectCredit.set(0);
+        }
+    }
+
+    private void sendRequest()
+    {
+        VirtualDevice device = devices.get(ThreadLocalRandom.current().nextInt(devices.size()));
+        if (device.isConnected()) {
+            console.sendRequest(device);
+        }
+    }
+
+    private void storm(double fraction)
+    {
+        int dropped = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (VirtualDevice device : devices) {
+            if (device.isConnected() && random.nextDouble() < fraction) {
+                device.drop();
+                dropped++;
+            }
+        }
+        logger.info("Reconnect storm: {} devices dropped", dropped);
+    }
+
+    FleetStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    ScheduledExecutorService getScheduler()
+    {
+        return scheduler;
+    }
+
+    String getBrokerUrl()
+    {
+        return brokerUrl;
+    }
+
+    String getAccount()
+    {
+        return account;
+    }
+
+    String getDeviceUsername()
+    {
+        return deviceUsername;
+    }
+
+    String getDevicePassword()
+    {
+        return devicePassword;
+    }
+
+    int getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    int getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    long getTelemetryInterval()
+    {
+        return telemetryInterval;
+    }
+
+    int getMetricCount()
+    {
+        return metricCount;
+    }
+
+    int getBodySize()
+    {
+        return bodySize;
+    }
+
+    int getQos()
+    {
+        return qos;
+    }
+
+    String getSemanticTopic()
+    {
+        return semanticTopic;
+    }
+
+    String getAppId()
+    {
+        return appId;
+    }
+
+    long getReplyDelay()
+    {
+        return replyDelay;
+    }
+}
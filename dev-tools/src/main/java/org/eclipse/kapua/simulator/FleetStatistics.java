@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counters and latency histograms of a simulation.<br>
+ * The latencies are recorded in microseconds. Every report prints the throughput and the latency percentiles of the last interval,
+ * the summary prints the totals and the percentiles of the whole run.
+ *
+ * @since 1.0
+ */
+public class FleetStatistics
+{
+    private static final int    SIGNIFICANT_DIGITS = 3;
+
+    final AtomicInteger         connected          = new AtomicInteger();
+    final LongAdder             connects           = new LongAdder();
+    final LongAdder             connectFailures    = new LongAdder();
+    final LongAdder             connectionsLost    = new LongAdder();
+    final LongAdder             published          = new LongAdder();
+    final LongAdder             publishedBytes     = new LongAdder();
+    final LongAdder             publishFailures    = new LongAdder();
+    final LongAdder             received           = new LongAdder();
+    final LongAdder             requests           = new LongAdder();
+    final LongAdder             replies            = new LongAdder();
+    final LongAdder             requestTimeouts    = new LongAdder();
+
+    private final Latency       connectLatency     = new Latency("connect");
+    private final Latency       dataLatency        = new Latency("telemetry");
+    private final Latency       managementLatency  = new Latency("management");
+
+    private final long          startedOn          = System.nanoTime();
+    private long                lastReportOn       = startedOn;
+    private long                lastPublished;
+    private long                lastReceived;
+    private long                lastReplies;
+
+    void recordConnect(long startNanos)
+    {
+        connectLatency.record(startNanos);
+    }
+
+    void recordData(long sentNanos)
+    {
+        received.increment();
+        dataLatency.record(sentNanos);
+    }
+
+    void recordReply(long sentNanos)
+    {
+        replies.increment();
+        managementLatency.record(sentNanos);
+    }
+
+    /**
+     * Print the interval report
+     *
+     * @param out
+     */
+    synchronized void report(PrintStream out)
+    {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportOn) / 1e9;
+        long totalPublished = published.sum();
+        long totalReceived = received.sum();
+        long totalReplies = replies.sum();
+
+        out.printf("[%6.0fs] connected %d (connects %d, failed %d, lost %d) | published %.0f msg/s | received %.0f msg/s | replies %.0f/s (timeouts %d)%n",
+                   (now - startedOn) / 1e9,
+                   connected.get(), connects.sum(), connectFailures.sum(), connectionsLost.sum(),
+                   (totalPublished - lastPublished) / seconds,
+                   (totalReceived - lastReceived) / seconds,
+                   (totalReplies - lastReplies) / seconds,
+                   requestTimeouts.sum());
+        connectLatency.reportInterval(out);
+        dataLatency.reportInterval(out);
+        managementLatency.reportInterval(out);
+
+        lastReportOn = now;
+        lastPublished = totalPublished;
+        lastReceived = totalReceived;
+        lastReplies = totalReplies;
+    }
+
+    /**
+     * Print the summary of the whole run, with the full latency distributions
+     *
+     * @param out
+     */
+    synchronized void summary(PrintStream out)
+    {
+        double seconds = (System.nanoTime() - startedOn) / 1e9;
+        out.println("==================================== Summary ====================================");
+        out.printf("duration %.0f s, connects %d, connect failures %d, connections lost %d%n",
+                   seconds, connects.sum(), connectFailures.sum(), connectionsLost.sum());
+        out.printf("published %d messages (%d bytes, %d failed), %.0f msg/s%n",
+                   published.sum(), publishedBytes.sum(), publishFailures.sum(), published.sum() / seconds);
+        out.printf("received %d messages, %.0f msg/s%n", received.sum(), received.sum() / seconds);
+        out.printf("management requests %d, replies %d, timeouts %d%n", requests.sum(), replies.sum(), requestTimeouts.sum());
+        connectLatency.summary(out);
+        dataLatency.summary(out);
+        managementLatency.summary(out);
+    }
+
+    /**
+     * Latency histogram, with an interval view (reset at every report) and a cumulative one
+     */
+    private static class Latency
+    {
+        private final String    name;
+        private final Recorder  recorder   = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram cumulative = new Histogram(SIGNIFICANT_DIGITS);
+        private Histogram       interval;
+
+        Latency(String name)
+        {
+            this.name = name;
+        }
+
+        void record(long startNanos)
+        {
+            recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)));
+        }
+
+        void reportInterval(PrintStream out)
+        {
+            drain();
+            if (interval.getTotalCount() > 0) {
+                out.printf("           %-10s latency ms: %s%n", name, percentiles(interval));
+            }
+        }
+
+        void summary(PrintStream out)
+        {
+            drain();
+            if (cumulative.getTotalCount() == 0) {
+                return;
+            }
+            out.printf("%s latency ms: %s%n", name, percentiles(cumulative));
+            cumulative.outputPercentileDistribution(out, 5, 1000.0);
+        }
+
+        private void drain()
+        {
+            interval = recorder.getIntervalHistogram(interval);
+            cumulative.add(interval);
+        }
+
+        private static String percentiles(Histogram histogram)
+        {
+            return String.format("count %d, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                                 histogram.getTotalCount(),
+                                 histogram.getValueAtPercentile(50) / 1000.0,
+                                 histogram.getValueAtPercentile(90) / 1000.0,
+                                 histogram.getValueAtPercentile(99) / 1000.0,
+                                 histogram.getValueAtPercentile(99.9) / 1000.0,
+                                 histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttPingSender;
+import org.eclipse.paho.client.mqttv3.internal.ClientComms;
+
+/**
+ * Keep alive ping sender running on the simulator scheduler.<br>
+ * The default Paho ping sender starts a timer thread per client, which does not scale to thousands of clients in a single process.
+ *
+ * @since 1.0
+ */
+public class SharedPingSender implements MqttPingSender
+{
+    private final ScheduledExecutorService scheduler;
+
+    private ClientComms                    comms;
+    private ScheduledFuture<?>             pending;
+
+    /**
+     * Constructor
+     *
+     * @param scheduler the scheduler running the keep alive checks
+     */
+    public SharedPingSender(ScheduledExecutorService scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void init(ClientComms comms)
+    {
+        this.comms = comms;
+    }
+
+    @Override
+    public synchronized void start()
+    {
+        schedule(comms.getKeepAlive());
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    @Override
+    public synchronized void schedule(long delayInMilliseconds)
+    {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = scheduler.schedule(() -> comms.checkForActivity(), delayInMilliseconds, TimeUnit.MILLISECONDS);
+    }
+}
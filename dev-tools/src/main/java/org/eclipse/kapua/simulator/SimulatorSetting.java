@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import org.eclipse.kapua.commons.setting.AbstractKapuaSetting;
+
+/**
+ * Device fleet simulator settings.<br>
+ * Every setting can be overridden by a system property with the same name.
+ *
+ * @since 1.0
+ */
+public class SimulatorSetting extends AbstractKapuaSetting<SimulatorSettingKey>
+{
+    private static final String SIMULATOR_CONFIG_RESOURCE = "kapua-simulator-setting.properties";
+
+    private static final SimulatorSetting instance = new SimulatorSetting();
+
+    private SimulatorSetting()
+    {
+        super(SIMULATOR_CONFIG_RESOURCE);
+    }
+
+    public static SimulatorSetting getInstance()
+    {
+        return instance;
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Device fleet simulator setting keys
+ *
+ * @since 1.0
+ */
+public enum SimulatorSettingKey implements SettingKey
+{
+    BROKER_URL("simulator.broker.url"),
+    ACCOUNT("simulator.account"),
+    DURATION("simulator.duration"),
+    REPORT_INTERVAL("simulator.report.interval"),
+    SCHEDULER_THREADS("simulator.scheduler.threads"),
+
+    DEVICE_COUNT("simulator.device.count"),
+    DEVICE_CLIENT_ID_PREFIX("simulator.device.client_id_prefix"),
+    DEVICE_USERNAME("simulator.device.username"),
+    DEVICE_PASSWORD("simulator.device.password"),
+    DEVICE_CONNECT_RATE("simulator.device.connect_rate"),
+    DEVICE_KEEP_ALIVE("simulator.device.keep_alive"),
+    DEVICE_CONNECT_TIMEOUT("simulator.device.connect_timeout"),
+
+    TELEMETRY_INTERVAL("simulator.telemetry.interval"),
+    TELEMETRY_METRICS("simulator.telemetry.metrics"),
+    TELEMETRY_BODY_SIZE("simulator.telemetry.body_size"),
+    TELEMETRY_QOS("simulator.telemetry.qos"),
+    TELEMETRY_SEMANTIC_TOPIC("simulator.telemetry.semantic_topic"),
+
+    MANAGEMENT_INTERVAL("simulator.management.interval"),
+    MANAGEMENT_APP_ID("simulator.management.app_id"),
+    MANAGEMENT_REPLY_DELAY("simulator.management.reply_delay"),
+    MANAGEMENT_TIMEOUT("simulator.management.timeout"),
+
+    CONSOLE_CLIENT_ID("simulator.console.client_id"),
+    CONSOLE_USERNAME("simulator.console.username"),
+    CONSOLE_PASSWORD("simulator.console.password"),
+    CONSOLE_MONITOR_DATA("simulator.console.monitor_data"),
+
+    STORM_INTERVAL("simulator.storm.interval"),
+    STORM_FRACTION("simulator.storm.fraction"),
+
+    EMBEDDED_ENABLED("simulator.embedded.enabled"),
+    EMBEDDED_SOURCE_ROOT("simulator.embedded.source_root"),
+    EMBEDDED_DATA_DIR("simulator.embedded.data_dir"),
+    EMBEDDED_BROKER_CONFIG("simulator.embedded.broker_config"),
+    EMBEDDED_ES_CLUSTER("simulator.embedded.es.cluster"),
+    EMBEDDED_ES_PORT("simulator.embedded.es.port");
+
+    private String key;
+
+    private SimulatorSettingKey(String key)
+    {
+        this.key = key;
+    }
+
+    @Override
+    public String key()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import org.eclipse.kapua.service.device.call.kura.app.RequestMetrics;
+import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
+import org.eclipse.kapua.service.device.call.message.app.response.kura.KuraResponseCode;
+import org.eclipse.kapua.service.device.call.message.kura.KuraPayload;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Virtual Kura gateway.<br>
+ * On every connection the device publishes its BIRTH certificate, subscribes to the requests of its management application and starts
+ * publishing telemetry. The management requests are answered with an accepted response on the requester reply topic, like Kura does.
+ * A lost connection is reestablished after a random back off.<br>
+ * The device socket can be closed under the client ({@link #drop()}) to simulate a network failure: the broker sees the connection
+ * broken without a disconnect and publishes the device LWT.
+ *
+ * @since 1.0
+ */
+public class VirtualDevice implements MqttCallback
+{
+    private static final Logger logger = LoggerFactory.getLogger(VirtualDevice.class);
+
+    /**
+     * Metric carrying the publish time ({@link System#nanoTime()}) used to compute the end to end latency
+     */
+    public static final String  METRIC_SENT_ON     = "sim.sent_on";
+
+    private static final String EDC                = "$EDC";
+    private static final int    RECONNECT_MIN_WAIT = 1000;
+    private static final int    RECONNECT_MAX_WAIT = 5000;
+
+    private final FleetSimulator     simulator;
+    private final String             clientId;
+    private final MqttAsyncClient    client;
+    private final MqttConnectOptions options;
+    private final byte[]             body;
+    private final DeviceSocketFactory socketFactory = new DeviceSocketFactory();
+
+    private volatile boolean         connected;
+    private volatile boolean         connecting;
+    private volatile boolean         closed;
+    private ScheduledFuture<?>       telemetryTask;
+
+    /**
+     * Constructor
+     *
+     * @param simulator
+     * @param clientId
+     * @throws MqttException
+     */
+    VirtualDevice(FleetSimulator simulator, String clientId)
+        throws MqttException
+    {
+        this.simulator = simulator;
+        this.clientId = clientId;
+        this.client = new MqttAsyncClient(simulator.getBrokerUrl(), clientId, new MemoryPersistence(), new SharedPingSender(simulator.getScheduler()));
+        this.client.setCallback(this);
+
+        options = new MqttConnectOptions();
+        options.setUserName(simulator.getDeviceUsername());
+        options.setPassword(simulator.getDevicePassword().toCharArray());
+        options.setCleanSession(true);
+        options.setKeepAliveInterval(simulator.getKeepAlive());
+        options.setConnectionTimeout(simulator.getConnectTimeout());
+        options.setSocketFactory(socketFactory);
+        options.setWill(lifecycleTopic("LWT"), lifecyclePayload().toByteArray(), 0, false);
+
+        body = new byte[simulator.getBodySize()];
+        ThreadLocalRandom.current().nextBytes(body);
+    }
+
+    public String getClientId()
+    {
+        return clientId;
+    }
+
+    public boolean isConnected()
+    {
+        return connected;
+    }
+
+    /**
+     * Connect (asynchronously) to the broker, if not already connected or connecting
+     */
+    void connect()
+    {
+        if (closed || connected || connecting) {
+            return;
+        }
+        connecting = true;
+        long startedOn = System.nanoTime();
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken)
+                {
+                    simulator.getStatistics().recordConnect(startedOn);
+                    onConnected();
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception)
+                {
+                    connecting = false;
+                    simulator.getStatistics().connectFailures.increment();
+                    logger.debug("Device {} connection failed: {}", clientId, exception.getMessage());
+                    scheduleReconnect();
+                }
+            });
+        }
+        catch (MqttException e) {
+            connecting = false;
+            simulator.getStatistics().connectFailures.increment();
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Close the device socket, as for a network failure. The client notices the lost connection and reconnects.
+     */
+    void drop()
+    {
+        if (connected) {
+            socketFactory.closeSocket();
+        }
+    }
+
+    /**
+     * Publish the disconnect message and disconnect
+     */
+    void close()
+    {
+        closed = true;
+        try {
+            if (connected) {
+                onDisconnected();
+                client.publish(lifecycleTopic("DC"), lifecyclePayload().toByteArray(), 0, false).waitForCompletion(1000);
+                client.disconnect().waitForCompletion(1000);
+            }
+            client.close();
+        }
+        catch (MqttException e) {
+            logger.debug("Device {} disconnection failed: {}", clientId, e.getMessage());
+        }
+    }
+
+    private void onConnected()
+    {
+        connecting = false;
+        connected = true;
+        FleetStatistics statistics = simulator.getStatistics();
+        statistics.connects.increment();
+        statistics.connected.incrementAndGet();
+        try {
+            client.subscribe(EDC + "/" + simulator.getAccount() + "/" + clientId + "/" + simulator.getAppId() + "/#", 0);
+            publish(lifecycleTopic("BIRTH"), birthPayload(), 1);
+        }
+        catch (MqttException e) {
+            logger.debug("Device {} birth failed: {}", clientId, e.getMessage());
+        }
+
+        long interval = simulator.getTelemetryInterval();
+        if (interval > 0) {
+            synchronized (this) {
+                telemetryTask = simulator.getScheduler().scheduleAtFixedRate(this::publishTelemetry,
+                                                                             ThreadLocalRandom.current().nextLong(interval),
+                                                                             interval,
+                                                                             TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void onDisconnected()
+    {
+        connected = false;
+        simulator.getStatistics().connected.decrementAndGet();
+        synchronized (this) {
+            if (telemetryTask != null) {
+                telemetryTask.cancel(false);
+                telemetryTask = null;
+            }
+        }
+    }
+
+    private void scheduleReconnect()
+    {
+        if (!closed) {
+            // not rate limited: the reconnections after a storm are what is being simulated
+            simulator.getScheduler().schedule(this::connect,
+                                              ThreadLocalRandom.current().nextInt(RECONNECT_MIN_WAIT, RECONNECT_MAX_WAIT),
+                                              TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publishTelemetry()
+    {
+        if (!connected) {
+            return;
+        }
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date());
+        Map<String, Object> metrics = payload.getMetrics();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < simulator.getMetricCount(); i++) {
+            metrics.put("metric_" + i, random.nextDouble(100));
+        }
+        if (body.length > 0) {
+            payload.setBody(body);
+        }
+        metrics.put(METRIC_SENT_ON, System.nanoTime());
+        try {
+            publish(simulator.getAccount() + "/" + clientId + "/" + simulator.getSemanticTopic(), payload, simulator.getQos());
+        }
+        catch (MqttException e) {
+            simulator.getStatistics().publishFailures.increment();
+        }
+    }
+
+    private void publish(String topic, KuraPayload payload, int qos)
+        throws MqttException
+    {
+        byte[] bytes = payload.toByteArray();
+        FleetStatistics statistics = simulator.getStatistics();
+        client.publish(topic, bytes, qos, false, null, new IMqttActionListener() {
+
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken)
+            {
+                statistics.published.increment();
+                statistics.publishedBytes.add(bytes.length);
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception)
+            {
+                statistics.publishFailures.increment();
+            }
+        });
+    }
+
+    @Override
+    public void connectionLost(Throwable cause)
+    {
+        logger.debug("Device {} connection lost: {}", clientId, cause != null ? cause.getMessage() : null);
+        simulator.getStatistics().connectionsLost.increment();
+        onDisconnected();
+        scheduleReconnect();
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message)
+        throws Exception
+    {
+        // $EDC/account/clientId/appId/method/resources
+        String[] parts = topic.split("/");
+        if (parts.length < 5) {
+            return;
+        }
+        KuraPayload request = new KuraPayload();
+        request.readFromByteArray(message.getPayload());
+        Object requestId = request.getMetrics().get(RequestMetrics.REQ_METRIC_REQUEST_ID.getValue());
+        Object requesterClientId = request.getMetrics().get(RequestMetrics.REQ_METRIC_REQUESTER_CLIENT_ID.getValue());
+        if (requestId == null || requesterClientId == null) {
+            return;
+        }
+
+        String replyTopic = EDC + "/" + simulator.getAccount() + "/" + requesterClientId + "/" + parts[3] + "/REPLY/" + requestId;
+        KuraPayload response = new KuraPayload();
+        response.setTimestamp(new Date());
+        response.getMetrics().put(ResponseMetrics.RESP_METRIC_EXIT_CODE.getValue(), KuraResponseCode.ACCEPTED.getCode());
+
+        long replyDelay = simulator.getReplyDelay();
+        if (replyDelay > 0) {
+            simulator.getScheduler().schedule(() -> reply(replyTopic, response), replyDelay, TimeUnit.MILLISECONDS);
+        }
+        else {
+            reply(replyTopic, response);
+        }
+    }
+
+    private void reply(String replyTopic, KuraPayload response)
+    {
+        try {
+            publish(replyTopic, response, 0);
+        }
+        catch (MqttException e) {
+            simulator.getStatistics().publishFailures.increment();
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token)
+    {
+        // counted by the publish listeners
+    }
+
+    private String lifecycleTopic(String lifecycle)
+    {
+        return EDC + "/" + simulator.getAccount() + "/" + clientId + "/MQTT/" + lifecycle;
+    }
+
+    private KuraPayload lifecyclePayload()
+    {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date());
+        payload.getMetrics().put("display_name", clientId);
+        return payload;
+    }
+
+    private KuraPayload birthPayload()
+    {
+        KuraPayload payload = lifecyclePayload();
+        Map<String, Object> metrics = payload.getMetrics();
+        metrics.put("uptime", "0");
+        metrics.put("model_name", "Kapua Simulator");
+        metrics.put("model_id", "kapua-simulator");
+        metrics.put("serial_number", clientId);
+        metrics.put("firmware_version", "1.0");
+        metrics.put("os", "Linux");
+        metrics.put("os_version", System.getProperty("os.version"));
+        metrics.put("jvm_name", System.getProperty("java.vm.name"));
+        metrics.put("jvm_version", System.getProperty("java.version"));
+        metrics.put("kura_version", "KURA_2.1.0");
+        metrics.put("connection_interface", "eth0");
+        metrics.put("connection_ip", "127.0.0.1");
+        metrics.put("application_ids", simulator.getAppId());
+        return payload;
+    }
+
+    /**
+     * Socket factory keeping the last socket created, to close it from outside the client
+     */
+    private static class DeviceSocketFactory extends SocketFactory
+    {
+        private volatile Socket socket;
+
+        @Override
+        public Socket createSocket()
+            throws IOException
+        {
+            socket = new Socket();
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port)
+            throws IOException
+        {
+            socket = new Socket(host, port);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException
+        {
+            socket = new Socket(host, port, localHost, localPort);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port)
+            throws IOException
+        {
+            socket = new Socket(host, port);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException
+        {
+            socket = new Socket(address, port, localAddress, localPort);
+            return socket;
+        }
+
+        void closeSocket()
+        {
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                }
+                catch (IOException e) {
+                    logger.debug("Cannot close the device socket: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.eclipse.kapua.commons.util.xml.JaxbMarshallerPool;
+import org.eclipse.kapua.commons.util.xml.JaxbStreamWriter;
+
+/**
+ * Base of the JAXB body writers, for both the xml and the json media types.<br>
+ * The marshallers are pooled and the output is written through a {@link JaxbStreamWriter}: the entity size is not known in advance,
+ * so a large response is sent with chunked transfer encoding. A serialization error is thrown to the container: a 500 response if
+ * nothing has been sent yet, otherwise the response is aborted.
+ *
+ * @param <T> written entity type
+ */
+public abstract class AbstractJaxbBodyWriter<T> implements MessageBodyWriter<T> {
+
+	private static final int MARSHALLER_POOL_MAX_IDLE = 32;
+	private static final int WRITER_BUFFER_SIZE = 8192;
+
+	@Context
+	Providers providers;
+
+	private volatile JaxbStreamWriter xmlWriter;
+	private volatile JaxbStreamWriter jsonWriter;
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) 
+	{
+		return MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType) || MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+	}
+
+	@Override
+	public long getSize(T t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		// unknown: written while serializing
+		return -1;
+	}
+
+	@Override
+	public void writeTo(T t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException, WebApplicationException 
+	{
+		JaxbStreamWriter writer = getStreamWriter(mediaType);
+		try {
+			write(writer, t, entityStream);
+		} catch (JAXBException | RuntimeException e) {
+			throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Write the entity
+	 *
+	 * @param writer the stream writer for the response media type
+	 * @param t
+	 * @param entityStream
+	 * @throws JAXBException
+	 * @throws IOException
+	 */
+	protected abstract void write(JaxbStreamWriter writer, T t, OutputStream entityStream)
+			throws JAXBException, IOException;
+
+	private JaxbStreamWriter getStreamWriter(MediaType mediaType)
+	{
+		boolean json = MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+		JaxbStreamWriter writer = json ? jsonWriter : xmlWriter;
+		if (writer == null) {
+			// the context is the same for all the requests: a concurrent first request just creates another pool
+			writer = new JaxbStreamWriter(new JaxbMarshallerPool(getContext(),
+																 json ? org.eclipse.persistence.oxm.MediaType.APPLICATION_JSON
+																	  : org.eclipse.persistence.oxm.MediaType.APPLICATION_XML,
+																 MARSHALLER_POOL_MAX_IDLE),
+										  WRITER_BUFFER_SIZE);
+			if (json) {
+				jsonWriter = writer;
+			} else {
+				xmlWriter = writer;
+			}
+		}
+		return writer;
+	}
+
+	private JAXBContext getContext()
+	{
+		if (providers == null) {
+			throw new WebApplicationException("Unable to find any provider.", Response.Status.INTERNAL_SERVER_ERROR);
+		}
+
+		ContextResolver<JAXBContext> cr = providers.getContextResolver(JAXBContext.class,
+																	   MediaType.APPLICATION_XML_TYPE);
+		JAXBContext jaxbContext = cr != null ? cr.getContext(JAXBContext.class) : null;
+		if (jaxbContext == null) {
+			throw new WebApplicationException("Unable to get a JAXBContext.", Response.Status.INTERNAL_SERVER_ERROR);
+		}
+		return jaxbContext;
+	}
+}
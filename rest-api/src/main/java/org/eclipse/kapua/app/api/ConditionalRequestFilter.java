@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.jpa.EntityVersionTracker;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Conditional GET support.<br>
+ * The successful GET responses carry the ETag of the returned entity or list ({@link EntityTags}) and, if the tag matches the If-None-Match
+ * request header, they are turned into a 304 response before the entity is serialized.<br>
+ * The ETag of a {@link VersionedCollection} is taken from the version of its entities, read from the database with an aggregate query before
+ * running the collection query: a request matching it is answered 304 without calling the resource method at all. If the version cannot be
+ * read the response gets the ETag of the returned list instead.
+ *
+ * @since 1.0
+ */
+@Provider
+public class ConditionalRequestFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConditionalRequestFilter.class);
+
+    private static final String TAG_PROPERTY = ConditionalRequestFilter.class.getName() + ".tag";
+
+    @Context
+    private ResourceInfo        resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext)
+        throws IOException
+    {
+        if (!HttpMethod.GET.equals(requestContext.getMethod())) {
+            return;
+        }
+        Method method = resourceInfo.getResourceMethod();
+        VersionedCollection collection = method != null ? method.getAnnotation(VersionedCollection.class) : null;
+        KapuaSession session = KapuaSecurityUtils.getSession();
+        if (collection == null || session == null) {
+            return;
+        }
+
+        EntityVersionTracker tracker = EntityVersionTracker.getInstance();
+        String version;
+        try {
+            version = collection.scoped() ? tracker.getVersion(collection.value(), session.getScopeId()) : tracker.getVersion(collection.value());
+        }
+        catch (KapuaException e) {
+            logger.warn("Cannot read the version of the {} collection: {}", collection.value(), e.getMessage());
+            return;
+        }
+        if (version == null) {
+            return;
+        }
+        // the tag is for the user and the representation requested
+        EntityTag tag = EntityTags.ofCollection(collection.value(),
+                                                session.getScopeId() != null ? session.getScopeId().toCompactId() : null,
+                                                session.getUserId() != null ? session.getUserId().toCompactId() : null,
+                                                version,
+                                                requestContext.getUriInfo().getRequestUri(),
+                                                requestContext.getHeaderString(HttpHeaders.ACCEPT));
+        requestContext.setProperty(TAG_PROPERTY, tag);
+
+        Response.ResponseBuilder notModified = requestContext.getRequest().evaluatePreconditions(tag);
+        if (notModified != null) {
+            requestContext.abortWith(notModified.build());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+        throws IOException
+    {
+        if (!HttpMethod.GET.equals(requestContext.getMethod()) || responseContext.getStatus() != Response.Status.OK.getStatusCode()) {
+            return;
+        }
+        EntityTag tag = (EntityTag) requestContext.getProperty(TAG_PROPERTY);
+        if (tag == null) {
+            tag = EntityTags.of(responseContext.getEntity());
+        }
+        if (tag == null) {
+            return;
+        }
+
+        responseContext.getHeaders().putSingle(HttpHeaders.ETAG, tag);
+        Response.ResponseBuilder notModified = requestContext.getRequest().evaluatePreconditions(tag);
+        if (notModified != null) {
+            Response response = notModified.build();
+            responseContext.setStatus(response.getStatus());
+            responseContext.setEntity(null);
+        }
+    }
+}
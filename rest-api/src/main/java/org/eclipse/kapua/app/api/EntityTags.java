@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.eclipse.kapua.commons.setting.system.SystemSetting;
+import org.eclipse.kapua.commons.setting.system.SystemSettingKey;
+import org.eclipse.kapua.model.KapuaEntity;
+import org.eclipse.kapua.model.KapuaUpdatableEntity;
+import org.eclipse.kapua.model.query.KapuaListResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entity tags of the REST resources.<br>
+ * The tag of an entity is strong and made of its id and version (optlock and modification time), so it can be used by the If-Match
+ * updates. The tag of a list result is weak and digests the tags of its entities. The tag of a versioned collection is weak and opaque:
+ * it digests the collection version with a secret ({@link SystemSettingKey#API_ETAG_SECRET}, shared by all the nodes), so it cannot be
+ * forged to probe a collection without reading it.
+ *
+ * @since 1.0
+ */
+public class EntityTags
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntityTags.class);
+
+    private static final byte[] SECRET = secret(SystemSetting.getInstance().getString(SystemSettingKey.API_ETAG_SECRET));
+
+    private EntityTags()
+    {
+    }
+
+    /**
+     * Return the tag of the entity or of the list result, or null if the object has no tag
+     *
+     * @param object
+     * @return
+     */
+    public static EntityTag of(Object object)
+    {
+        if (object instanceof KapuaEntity) {
+            return new EntityTag(getValue((KapuaEntity) object));
+        }
+        if (object instanceof KapuaListResult) {
+            MessageDigest digest = newDigest();
+            for (KapuaEntity entity : ((KapuaListResult<?>) object).getItems()) {
+                digest.update(getValue(entity).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ',');
+            }
+            return new EntityTag(encode(digest.digest()), true);
+        }
+        return null;
+    }
+
+    /**
+     * Return the tag of a versioned collection
+     *
+     * @param parts the values identifying the collection version (i.e. the entity name, the scope and the version) and the request
+     * @return
+     */
+    public static EntityTag ofCollection(Object... parts)
+    {
+        MessageDigest digest = newDigest();
+        digest.update(SECRET);
+        for (Object part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return new EntityTag(encode(digest.digest()), true);
+    }
+
+    /**
+     * Return true if the If-Match header matches the tag (strong comparison)
+     *
+     * @param ifMatch the header value: "*" or a comma separated list of tags
+     * @param tag
+     * @return
+     */
+    public static boolean matches(String ifMatch, EntityTag tag)
+    {
+        for (String value : ifMatch.split(",")) {
+            value = value.trim();
+            if ("*".equals(value)) {
+                return true;
+            }
+            if (value.isEmpty()) {
+                continue;
+            }
+            EntityTag matchingTag;
+            try {
+                matchingTag = EntityTag.valueOf(value);
+            }
+            catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (!matchingTag.isWeak() && !tag.isWeak() && matchingTag.getValue().equals(tag.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the secret bytes of the configured secret, or a random secret if not configured
+     *
+     * @param configuredSecret
+     * @return
+     */
+    static byte[] secret(String configuredSecret)
+    {
+        if (configuredSecret != null && !configuredSecret.trim().isEmpty()) {
+            return configuredSecret.trim().getBytes(StandardCharsets.UTF_8);
+        }
+
+        logger.warn("{} not set: the collection entity tags of this node will differ from the ones of the other nodes", SystemSettingKey.API_ETAG_SECRET.key());
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    private static String getValue(KapuaEntity entity)
+    {
+        String id = entity.getId() != null ? entity.getId().toCompactId() : "";
+        if (entity instanceof KapuaUpdatableEntity) {
+            KapuaUpdatableEntity updatableEntity = (KapuaUpdatableEntity) entity;
+            long modifiedOn = updatableEntity.getModifiedOn() != null ? updatableEntity.getModifiedOn().getTime() : 0;
+            return id + "." + updatableEntity.getOptlock() + "." + modifiedOn;
+        }
+        // not updatable
+        return id;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] bytes)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
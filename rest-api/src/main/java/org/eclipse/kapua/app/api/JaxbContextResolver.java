@@ -17,7 +17,13 @@ import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
 import javax.xml.bind.JAXBContext;
 
+import org.eclipse.kapua.app.api.v1.resources.model.AccessTokenBean;
 import org.eclipse.kapua.app.api.v1.resources.model.ErrorBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValueBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValueQueryBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValuesBean;
+import org.eclipse.kapua.model.batch.KapuaBatchItemResult;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.config.metatype.KapuaTad;
 import org.eclipse.kapua.model.config.metatype.KapuaTicon;
 import org.eclipse.kapua.model.config.metatype.KapuaTocd;
@@ -33,6 +39,9 @@ import org.eclipse.kapua.service.device.call.kura.model.snapshot.KuraSnapshotIds
 import org.eclipse.kapua.service.device.management.command.DeviceCommandInput;
 import org.eclipse.kapua.service.device.management.command.DeviceCommandOutput;
 import org.eclipse.kapua.service.device.management.command.DeviceCommandXmlRegistry;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperation;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperationListResult;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult;
 import org.eclipse.kapua.service.device.management.configuration.DeviceComponentConfiguration;
 import org.eclipse.kapua.service.device.management.configuration.DeviceConfiguration;
 import org.eclipse.kapua.service.device.management.configuration.DeviceConfigurationXmlRegistry;
@@ -75,6 +84,10 @@ public class JaxbContextResolver implements ContextResolver<JAXBContext> {
         try {
             jaxbContext = JAXBContextFactory.createContext(new Class[] {
                     ErrorBean.class,
+                    AccessTokenBean.class,
+                    MetricValueBean.class,
+                    MetricValuesBean.class,
+                    MetricValueQueryBean.class,
                     Account.class,
                     AccountCreator.class,
                     AccountListResult.class,
@@ -115,7 +128,12 @@ public class JaxbContextResolver implements ContextResolver<JAXBContext> {
                     KapuaTicon.class,
                     KapuaToption.class,
                     DeviceConnectionSummary.class,
-                    DeviceConnectionXmlRegistry.class
+                    DeviceConnectionXmlRegistry.class,
+                    DeviceBulkOperation.class,
+                    DeviceBulkOperationListResult.class,
+                    DeviceBulkResult.class,
+                    KapuaBatchResult.class,
+                    KapuaBatchItemResult.class
             }, null);
         } catch (Exception e) {
             throw new RuntimeException(e);
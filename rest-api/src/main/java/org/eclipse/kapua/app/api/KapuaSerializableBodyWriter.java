@@ -13,63 +13,25 @@ package org.eclipse.kapua.app.api;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Type;
 
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.MultivaluedMap;
-import javax.ws.rs.ext.ContextResolver;
-import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
-import javax.ws.rs.ext.Providers;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 
 import org.eclipse.kapua.KapuaSerializable;
+import org.eclipse.kapua.commons.util.xml.JaxbStreamWriter;
 
 @Provider
-@Produces(MediaType.APPLICATION_XML)
-public class KapuaSerializableBodyWriter implements MessageBodyWriter<KapuaSerializable> {
-
-	@Context
-	Providers providers;
-
-	@Override
-	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) 
-	{
-		//TODO any ode here to do more significant check on the types ?
-		return true;
-	}
+@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+public class KapuaSerializableBodyWriter extends AbstractJaxbBodyWriter<KapuaSerializable> {
 
 	@Override
-	public long getSize(KapuaSerializable t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) 
+	protected void write(JaxbStreamWriter writer, KapuaSerializable t, OutputStream entityStream)
+			throws JAXBException, IOException
 	{
-		return 0;
-	}
-
-	@Override
-	public void writeTo(KapuaSerializable t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
-			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
-			throws IOException, WebApplicationException 
-	{
-		try {
-			if (providers == null)
-				new WebApplicationException("Unable to find any provider.");
-
-			ContextResolver<JAXBContext> cr = providers.getContextResolver(JAXBContext.class,
-																		   MediaType.APPLICATION_XML_TYPE);
-			JAXBContext jaxbContext = cr.getContext(JAXBContext.class);
-			if (jaxbContext == null)
-				new WebApplicationException("Unable to get a JAXBContext.");
-
-			// serialize the entity myBean to the entity output stream
-			jaxbContext.createMarshaller().marshal(t, entityStream);
-		} catch (JAXBException e) {
-			new WebApplicationException(e);
-		}
+		// the list results are serialized element by element
+		writer.write(t, entityStream);
 	}
 
 }
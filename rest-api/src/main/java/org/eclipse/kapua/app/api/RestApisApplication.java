@@ -17,7 +17,10 @@ import javax.ws.rs.core.MediaType;
 import javax.xml.bind.JAXBException;
 
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsExporter;
 import org.eclipse.kapua.commons.util.xml.XmlUtil;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.metric.MetricsService;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.ServerProperties;
@@ -45,18 +48,24 @@ public class RestApisApplication extends ResourceConfig {
 		register(RestApiJAXBContextProvider.class);
 		register(KapuaSerializableBodyWriter.class);
 		register(ListBodyWriter.class);
+		register(ConditionalRequestFilter.class);
 		// Hook the swagger-ui
 //		registerClasses(ApiListingResource.class,
 //						SwaggerSerializers.class);
 
 		register(new ContainerLifecycleListener() {
 
+			private MetricsExporter metricsExporter;
+
 			@Override
 			public void onStartup(Container container) {
 				ServiceLocator serviceLocator = container.getApplicationHandler().getServiceLocator();
 
 				RestApiJAXBContextProvider provider = serviceLocator.createAndInitialize(RestApiJAXBContextProvider.class);
  				XmlUtil.setContextProvider(provider);
+
+				// expose the rest api metrics (if enabled)
+				metricsExporter = MetricsExporter.startIfEnabled(KapuaLocator.getInstance().getService(MetricsService.class).getMetricRegistry());
 			}
 
 			@Override
@@ -66,7 +75,9 @@ public class RestApisApplication extends ResourceConfig {
 
 			@Override
 			public void onShutdown(Container container) {
-				//Nothing todo
+				if (metricsExporter != null) {
+					metricsExporter.stop();
+				}
 			}
 
 		});
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.eclipse.kapua.commons.jpa.EntityVersionTracker;
+
+/**
+ * Marks a resource method returning a collection of the entities of a type, so its ETag is taken from the version of the entities
+ * ({@link EntityVersionTracker}) and a conditional GET is answered before running the query (see {@link ConditionalRequestFilter}).
+ *
+ * @since 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface VersionedCollection
+{
+    /**
+     * The entity name (i.e. "Device")
+     *
+     * @return
+     */
+    String value();
+
+    /**
+     * True if the collection holds the entities of the scope of the session only, false if it may hold the entities of any scope
+     * (i.e. the child accounts)
+     *
+     * @return
+     */
+    boolean scoped() default true;
+}
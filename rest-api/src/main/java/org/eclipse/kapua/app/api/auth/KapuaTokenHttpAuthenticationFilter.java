@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.auth;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.web.filter.authc.BasicHttpAuthenticationFilter;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.service.authentication.AccessToken;
+import org.eclipse.kapua.service.authentication.shiro.token.AccessTokenAuthenticationToken;
+
+/**
+ * Http authentication filter accepting a bearer access token (<code>Authorization: Bearer &lt;token&gt;</code>) or the basic credentials.<br>
+ * A bearer token is verified without any database access and the Kapua session is bound to the request thread from the token itself.
+ *
+ * @since 1.0
+ */
+public class KapuaTokenHttpAuthenticationFilter extends BasicHttpAuthenticationFilter
+{
+    private static final String BEARER_SCHEME = "Bearer";
+
+    @Override
+    protected boolean isLoginAttempt(String authzHeader)
+    {
+        return isBearer(authzHeader) || super.isLoginAttempt(authzHeader);
+    }
+
+    @Override
+    protected AuthenticationToken createToken(ServletRequest request, ServletResponse response)
+    {
+        String authzHeader = getAuthzHeader(request);
+        if (isBearer(authzHeader)) {
+            return new AccessTokenAuthenticationToken(authzHeader.substring(BEARER_SCHEME.length()).trim());
+        }
+        return super.createToken(request, response);
+    }
+
+    @Override
+    protected boolean onLoginSuccess(AuthenticationToken token, Subject subject, ServletRequest request, ServletResponse response)
+        throws Exception
+    {
+        AccessToken accessToken = subject.getPrincipals().oneByType(AccessToken.class);
+        if (accessToken != null) {
+            // cleared by the KapuaSessionAuthFilter at the end of the request
+            KapuaSecurityUtils.setSession(new KapuaSession(accessToken,
+                                                           accessToken.getScopeId(),
+                                                           accessToken.getUserScopeId(),
+                                                           accessToken.getUserId(),
+                                                           (String) subject.getPrincipal()));
+        }
+        return super.onLoginSuccess(token, subject, request, response);
+    }
+
+    private static boolean isBearer(String authzHeader)
+    {
+        return authzHeader != null && authzHeader.regionMatches(true, 0, BEARER_SCHEME + " ", 0, BEARER_SCHEME.length() + 1);
+    }
+}
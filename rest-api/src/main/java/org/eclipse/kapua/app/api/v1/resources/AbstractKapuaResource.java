@@ -14,7 +14,11 @@ package org.eclipse.kapua.app.api.v1.resources;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaOptimisticLockingException;
+import org.eclipse.kapua.app.api.EntityTags;
 import org.eclipse.kapua.app.api.v1.resources.model.ErrorBean;
+import org.eclipse.kapua.model.KapuaUpdatableEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,10 +35,54 @@ public abstract class AbstractKapuaResource
         return entity;
     }
 
+    /**
+     * Finder of the current version of an entity
+     *
+     * @param <E>
+     */
+    @FunctionalInterface
+    protected interface EntityFinder<E extends KapuaUpdatableEntity> {
+
+        public E find() throws KapuaException;
+    }
+
+    /**
+     * Checks the If-Match header of an update against the tag of the current version of the entity.<br>
+     * The optlock of the entity to update is set to the one of the current version, so the update fails on an entity changed meanwhile
+     * (if the service merges the entity as given).
+     *
+     * @param ifMatch the If-Match header (the check is skipped if null)
+     * @param entity the entity to update
+     * @param currentEntityFinder finder of the current version of the entity
+     * @throws KapuaException
+     */
+    protected <E extends KapuaUpdatableEntity> void checkIfMatch(String ifMatch, E entity, EntityFinder<E> currentEntityFinder)
+            throws KapuaException {
+        if (ifMatch == null) {
+            return;
+        }
+        E currentEntity = currentEntityFinder.find();
+        if (currentEntity == null) {
+            // reported by the update
+            return;
+        }
+        if (!EntityTags.matches(ifMatch, EntityTags.of(currentEntity))) {
+            throw newWebApplicationException(Response.Status.PRECONDITION_FAILED, "The entity has been changed");
+        }
+        entity.setOptlock(currentEntity.getOptlock());
+    }
+
     protected void handleException(Throwable t) {
 
         WebApplicationException wae = null;
         
+        if (t instanceof WebApplicationException) {
+            throw (WebApplicationException) t;
+        }
+        if (t instanceof KapuaOptimisticLockingException) {
+            throw newWebApplicationException(t, Response.Status.PRECONDITION_FAILED);
+        }
+
         
         // TODO manage exceptions
         // ...
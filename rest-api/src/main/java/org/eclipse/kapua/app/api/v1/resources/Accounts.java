@@ -15,15 +15,18 @@ package org.eclipse.kapua.app.api.v1.resources;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.eclipse.kapua.app.api.VersionedCollection;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.commons.security.KapuaSession;
@@ -59,6 +62,7 @@ public class Accounts extends AbstractKapuaResource
             responseContainer = "AccountListResult")
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @VersionedCollection(value = "Account", scoped = false)
     public AccountListResult getAccounts() {
 
         AccountListResult accountsResult = accountFactory.newAccountListResult();
@@ -325,6 +329,7 @@ public class Accounts extends AbstractKapuaResource
      * Updates an account based on the information provided in Account parameter.
      *
      * @param account Provides the information to update the account.
+     * @param ifMatch The optional ETag of the account version to update: the update fails (412) if the account has been changed.
      * @return The updated created Account object.
      */
 	@ApiOperation(value = "Update an Account",
@@ -335,9 +340,14 @@ public class Accounts extends AbstractKapuaResource
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
     public Account updateAccount(
             @ApiParam(value = "Provides the information to update the account", required = true) 
-            Account account) {
+            Account account,
+
+            @ApiParam(value = "The ETag of the account version to update", required = false)
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
         try {
             ((AccountImpl)account).setScopeId(KapuaSecurityUtils.getSession().getScopeId());
+            Account updatingAccount = account;
+            checkIfMatch(ifMatch, account, () -> accountService.find(updatingAccount.getId()));
             account = accountService.update(account);
         } catch (Throwable t) {
             handleException(t);
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.kapua.app.api.v1.resources.model.AccessTokenBean;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.authentication.AccessToken;
+import org.eclipse.kapua.service.authentication.AuthenticationService;
+import org.eclipse.kapua.service.authentication.UsernamePasswordTokenFactory;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+@Api("Authentication")
+@Path("/authentication")
+public class Authentication extends AbstractKapuaResource {
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final AuthenticationService authenticationService = locator.getService(AuthenticationService.class);
+    private final UsernamePasswordTokenFactory credentialsFactory = locator.getFactory(UsernamePasswordTokenFactory.class);
+
+    /**
+     * Authenticates the user with username and password and returns an access token and a refresh token.
+     * The access token is then sent as "Authorization: Bearer &lt;tokenId&gt;" header.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The access token.
+     */
+    @ApiOperation(value = "Login with username and password",
+            notes = "Authenticates the user with username and password and returns an access token and a refresh token.",
+            response = AccessTokenBean.class)
+    @POST
+    @Path("user")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    public AccessTokenBean login(
+            @ApiParam(value = "The username", required = true)
+            @FormParam("username") String username,
+            @ApiParam(value = "The password", required = true)
+            @FormParam("password") String password) {
+        AccessTokenBean accessToken = null;
+        try {
+            AccessToken token = authenticationService.login(credentialsFactory.newInstance(username, password != null ? password.toCharArray() : new char[0]));
+            accessToken = new AccessTokenBean(token);
+        } catch (Throwable t) {
+            handleAuthenticationException(t);
+        } finally {
+            // the token is stateless: nothing is kept by the login
+            logout();
+        }
+        return accessToken;
+    }
+
+    /**
+     * Returns a new access token and a new refresh token for the refresh token.
+     * The refresh token can be used only once.
+     *
+     * @param refreshToken The refresh token.
+     * @return The new access token.
+     */
+    @ApiOperation(value = "Refresh the access token",
+            notes = "Returns a new access token and a new refresh token for the refresh token. The refresh token can be used only once.",
+            response = AccessTokenBean.class)
+    @POST
+    @Path("refresh")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    public AccessTokenBean refresh(
+            @ApiParam(value = "The refresh token", required = true)
+            @FormParam("refreshToken") String refreshToken) {
+        AccessTokenBean accessToken = null;
+        try {
+            accessToken = new AccessTokenBean(authenticationService.refreshToken(refreshToken));
+        } catch (Throwable t) {
+            handleAuthenticationException(t);
+        }
+        return accessToken;
+    }
+
+    /**
+     * Revokes the access token of the request and its refresh token.
+     *
+     * @return HTTP 200 if the token has been revoked.
+     */
+    @ApiOperation(value = "Logout",
+            notes = "Revokes the access token of the request and its refresh token.")
+    @POST
+    @Path("logout")
+    public Response revoke() {
+        try {
+            AccessToken accessToken = KapuaSecurityUtils.getSession().getAccessToken();
+            if (accessToken == null || accessToken.getTokenId() == null) {
+                throw newWebApplicationException(Response.Status.BAD_REQUEST, "The request is not authenticated by an access token");
+            }
+            authenticationService.revokeToken(accessToken.getTokenId());
+        } catch (Throwable t) {
+            handleAuthenticationException(t);
+        }
+        return Response.ok().build();
+    }
+
+    private void handleAuthenticationException(Throwable t) {
+        if (t instanceof KapuaAuthenticationException) {
+            throw newWebApplicationException(t, Response.Status.UNAUTHORIZED);
+        }
+        if (t instanceof WebApplicationException) {
+            throw (WebApplicationException) t;
+        }
+        handleException(t);
+    }
+
+    private void logout() {
+        try {
+            authenticationService.logout();
+        } catch (Throwable t) {
+            // the session is discarded anyway at the end of the request
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.app.api.v1.resources.MessageStreamWriter.Format;
+import org.eclipse.kapua.app.api.v1.resources.model.ErrorBean;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.DatastoreObjectFactory;
+import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+@Api("Data")
+@Path("/data/messages")
+public class DataMessages extends AbstractKapuaResource {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(DataMessages.class);
+
+    private static final int WRITER_BUFFER_SIZE = 8192;
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final MessageStoreService messageStoreService = locator.getService(MessageStoreService.class);
+    private final DatastoreObjectFactory datastoreObjectFactory = locator.getFactory(DatastoreObjectFactory.class);
+
+    /**
+     * Streams all the messages of the account of the currently connected user matching the given filters.
+     * <p>
+     * The messages are written to the response as soon as they are read from the message store, one message per line,
+     * so the export of an arbitrary long time range needs a bounded amount of memory.
+     * The store is read in pages and the next page is read only once the previous one has been written to the client.
+     *
+     * @param format
+     *            The output format: ndjson (newline delimited JSON, the default) or csv.
+     * @param clientId
+     *            The client ID of the device which published the messages.
+     * @param topic
+     *            The semantic topic (the topic without the account and client ID parts) of the messages.
+     * @param startDate
+     *            Start date of the requested date range. The parameter is expressed as a long counting the number of milliseconds since
+     *            January 1, 1970, 00:00:00 GMT. Alternatively, the date can be expressed as a string following the ISO 8601 format.
+     * @param endDate
+     *            End date of the requested date range, expressed as the start date.
+     * @param fetch
+     *            The message parts to be exported.
+     * @param sort
+     *            The sort direction of the message timestamps.
+     * @return The stream of the messages.
+     */
+    @GET
+    @Path("export")
+    @Produces({ MessageStreamWriter.NDJSON_MEDIA_TYPE, MessageStreamWriter.CSV_MEDIA_TYPE })
+    @ApiOperation(value = "Exports the stored messages",
+    notes = "Streams all the messages matching the given filters as newline delimited JSON or as CSV. " +
+            "Unlike the paged queries, the whole result is written in a single response regardless of its size.")
+    public Response exportMessages(
+            @ApiParam(value = "The output format: ndjson or csv", required = false, allowableValues = "ndjson,csv")
+            @QueryParam("format") @DefaultValue("ndjson") String format,
+
+            @ApiParam(value = "The client ID of the device which published the messages", required = false)
+            @QueryParam("clientId") String clientId,
+
+            @ApiParam(value = "The semantic topic of the messages", required = false)
+            @QueryParam("topic") String topic,
+
+            @ApiParam(value = "Start date of the requested date range. The parameter is expressed as a long counting the number of milliseconds since "
+                    + "January 1, 1970, 00:00:00 GMT. Alternatively, the date can be expressed as a string following the ISO 8601 format.", required = false)
+            @QueryParam("startDate") String startDate,
+
+            @ApiParam(value = "End date of the requested date range. The parameter is expressed as a long counting the number of milliseconds since "
+                    + "January 1, 1970, 00:00:00 GMT. Alternatively, the date can be expressed as a string following the ISO 8601 format.", required = false)
+            @QueryParam("endDate") String endDate,
+
+            @ApiParam(value = "The message parts to be exported", required = false, allowableValues = "METADATA,METADATA_HEADERS,METADATA_HEADERS_PAYLOAD")
+            @QueryParam("fetch") @DefaultValue("METADATA_HEADERS_PAYLOAD") String fetch,
+
+            @ApiParam(value = "The sort direction of the message timestamps", required = false, allowableValues = "ASC,DESC")
+            @QueryParam("sort") @DefaultValue("ASC") String sort) {
+
+        KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+        Format outputFormat = parseEnum(Format.class, "format", format);
+        MessageQuery query = newExportQuery(clientId, topic, startDate, endDate,
+                                            parseEnum(MessageFetchStyle.class, "fetch", fetch),
+                                            parseEnum(SortDirection.class, "sort", sort));
+
+        StreamingOutput output = os -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+            MessageStreamWriter messageWriter = new MessageStreamWriter(writer, outputFormat);
+            try {
+                messageWriter.writeHeader();
+                long count = messageStoreService.stream(scopeId, query, messageWriter);
+                messageWriter.flush();
+                s_logger.debug("Exported {} messages for scope {}", count, scopeId);
+            }
+            catch (KapuaException e) {
+                // the response is already committed: the only option left is to abort it
+                if (e.getCause() instanceof IOException) {
+                    s_logger.debug("Message export aborted by the client: {}", e.getCause().getMessage());
+                    throw (IOException) e.getCause();
+                }
+                s_logger.error("Message export failed", e);
+                throw new WebApplicationException(e);
+            }
+        };
+
+        return Response.ok(output, outputFormat.getMediaType()).build();
+    }
+
+    private MessageQuery newExportQuery(String clientId, String topic, String startDate, String endDate, MessageFetchStyle fetchStyle, SortDirection sort) {
+        AndPredicateImpl andPredicate = new AndPredicateImpl();
+        if (clientId != null) {
+            andPredicate.addPredicate(new TermPredicateImpl(EsMessageField.ASSET, clientId));
+        }
+        if (topic != null) {
+            andPredicate.addPredicate(new TermPredicateImpl(EsMessageField.SEMANTIC_TOPIC, topic));
+        }
+        if (startDate != null || endDate != null) {
+            Date start = parseDate("startDate", startDate);
+            Date end = parseDate("endDate", endDate);
+            if (start != null && end != null && start.after(end)) {
+                throw newBadRequestException("startDate must not be after endDate");
+            }
+            andPredicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, start, end));
+        }
+
+        MessageQuery query = datastoreObjectFactory.newStorableMessageQuery();
+        query.setPredicate(andPredicate);
+        query.setFetchStyle(fetchStyle);
+        query.setSort(sort);
+        return query;
+    }
+
+    private Date parseDate(String name, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value.matches("[0-9]+")) {
+                return new Date(Long.parseLong(value));
+            }
+            return DateTime.parse(value).toDate();
+        }
+        catch (IllegalArgumentException e) {
+            throw newBadRequestException(String.format("Invalid %s: %s", name, value));
+        }
+    }
+
+    private <E extends Enum<E>> E parseEnum(Class<E> enumClass, String name, String value) {
+        try {
+            return Enum.valueOf(enumClass, value.toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            throw newBadRequestException(String.format("Invalid %s: %s", name, value));
+        }
+    }
+
+    private WebApplicationException newBadRequestException(String message) {
+        // the error is returned as JSON whatever the requested export format is
+        Response response = Response.status(Response.Status.BAD_REQUEST)
+                                    .type(MediaType.APPLICATION_JSON_TYPE)
+                                    .entity(new ErrorBean(Response.Status.BAD_REQUEST, message))
+                                    .build();
+        return new WebApplicationException(response);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValueBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValueQueryBean;
+import org.eclipse.kapua.app.api.v1.resources.model.MetricValuesBean;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.MetricInfoStoreService;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaTopic;
+import org.eclipse.kapua.service.datastore.model.MetricInfo;
+import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+@Api("Data")
+@Path("/data/metrics")
+public class DataMetrics extends AbstractKapuaResource {
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final MetricInfoStoreService metricInfoStoreService = locator.getService(MetricInfoStoreService.class);
+
+    /**
+     * Returns the latest values of the metrics of the given devices of the account of the currently connected user.
+     * <p>
+     * The latest values are kept up to date as the messages are stored, so the lookup does not read the stored messages.
+     *
+     * @param clientIds
+     *            The client IDs of the devices.
+     * @param metricNames
+     *            The metric names. All the metrics of the devices are returned if none is given.
+     * @return The latest metric values found.
+     */
+    @GET
+    @Path("latest")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Gets the latest metric values",
+    notes = "Returns the latest value of the given metrics (or of all the metrics) of the given devices.",
+    response = MetricValuesBean.class)
+    public MetricValuesBean getLatestValues(
+            @ApiParam(value = "The client IDs of the devices", required = true)
+            @QueryParam("clientId") List<String> clientIds,
+
+            @ApiParam(value = "The metric names", required = false)
+            @QueryParam("name") List<String> metricNames) {
+        return findLatestValues(clientIds, metricNames);
+    }
+
+    /**
+     * Returns the latest values of the metrics of the given devices, as {@link #getLatestValues(List, List)} does.
+     * <p>
+     * The devices and the metrics are given in the request body, so a lookup is not bounded by the URI length.
+     *
+     * @param query
+     *            The client IDs of the devices and the metric names.
+     * @return The latest metric values found.
+     */
+    @POST
+    @Path("latest")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Looks up the latest metric values",
+    notes = "Returns the latest value of the given metrics (or of all the metrics) of the given devices, both given in the request body.",
+    response = MetricValuesBean.class)
+    public MetricValuesBean postLatestValues(
+            @ApiParam(value = "The client IDs of the devices and the metric names", required = true)
+            MetricValueQueryBean query) {
+        return findLatestValues(query != null ? query.getClientIds() : null, query != null ? query.getMetricNames() : null);
+    }
+
+    private MetricValuesBean findLatestValues(List<String> clientIds, List<String> metricNames) {
+        if (clientIds == null || clientIds.isEmpty()) {
+            throw newWebApplicationException(Response.Status.BAD_REQUEST, "At least one clientId is required");
+        }
+
+        MetricValuesBean metricValues = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            MetricInfoListResult result = metricInfoStoreService.findLastValues(scopeId, clientIds, metricNames);
+
+            metricValues = new MetricValuesBean(result.getNextKey() != null);
+            for (MetricInfo metricInfo : result) {
+                metricValues.add(new MetricValueBean(new KapuaTopic(metricInfo.getFullTopicName()).getAsset(), metricInfo));
+            }
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(metricValues);
+    }
+}
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.ExecutionException;
+import org.apache.shiro.subject.Subject;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.model.query.FieldSortCriteria;
+import org.eclipse.kapua.commons.model.query.FieldSortCriteria.SortOrder;
+import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
+import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.query.predicate.KapuaAndPredicate;
+import org.eclipse.kapua.service.device.management.command.DeviceCommandInput;
+import org.eclipse.kapua.service.device.management.command.DeviceCommandManagementService;
+import org.eclipse.kapua.service.device.management.command.DeviceCommandOutput;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperation;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperationListResult;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperationManager;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkTask;
+import org.eclipse.kapua.service.device.management.configuration.DeviceConfiguration;
+import org.eclipse.kapua.service.device.management.configuration.DeviceConfigurationManagementService;
+import org.eclipse.kapua.service.device.management.packages.DevicePackageManagementService;
+import org.eclipse.kapua.service.device.management.packages.model.download.DevicePackageDownloadRequest;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceFactory;
+import org.eclipse.kapua.service.device.registry.DeviceListResult;
+import org.eclipse.kapua.service.device.registry.DevicePredicates;
+import org.eclipse.kapua.service.device.registry.DeviceQuery;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.device.registry.DeviceStatus;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Bulk device management operations.<br>
+ * The target devices are the listed device ids or, if no device id is listed, the devices matching the client ids and status filters.
+ * The operation runs in background: its progress is returned by the get operation.
+ */
+@Api("Devices")
+@Path("/devices/bulk")
+public class DeviceBulkOperations extends AbstractKapuaResource {
+
+    private static final int DEVICE_QUERY_PAGE_SIZE = 500;
+
+    private final KapuaLocator locator = KapuaLocator.getInstance();
+    private final DeviceRegistryService registryService = locator.getService(DeviceRegistryService.class);
+    private final DeviceFactory deviceFactory = locator.getFactory(DeviceFactory.class);
+    private final DeviceCommandManagementService commandService = locator.getService(DeviceCommandManagementService.class);
+    private final DeviceConfigurationManagementService configurationService = locator.getService(DeviceConfigurationManagementService.class);
+    private final DevicePackageManagementService packageService = locator.getService(DevicePackageManagementService.class);
+    private final DeviceBulkOperationManager bulkOperationManager = DeviceBulkOperationManager.getInstance();
+
+    /**
+     * Returns the bulk operations of the current scope (without the device results).
+     *
+     * @return The list of the bulk operations.
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Get the bulk operations list",
+    notes = "Returns the bulk operations of the current scope, without the device results.",
+    response = DeviceBulkOperationListResult.class)
+    public DeviceBulkOperationListResult getOperations() {
+        DeviceBulkOperationListResult operations = null;
+        try {
+            operations = bulkOperationManager.query(KapuaSecurityUtils.getSession().getScopeId());
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return operations;
+    }
+
+    /**
+     * Returns the progress of a bulk operation.
+     *
+     * @param operationId The id of the requested bulk operation.
+     * @param results If true the result of every device is returned too.
+     * @return The bulk operation progress.
+     */
+    @GET
+    @Path("{operationId}")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Get a bulk operation",
+    notes = "Returns the progress of the bulk operation, optionally with the result of every device.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation getOperation(
+            @ApiParam(value = "The id of the requested bulk operation", required = true)
+            @PathParam("operationId") String operationId,
+
+            @ApiParam(value = "If true the result of every device is returned too", required = false)
+            @QueryParam("results") @DefaultValue("true") boolean results) {
+        DeviceBulkOperation operation = null;
+        try {
+            operation = bulkOperationManager.find(KapuaSecurityUtils.getSession().getScopeId(), operationId, results);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(operation);
+    }
+
+    /**
+     * Cancels a bulk operation: the pending devices are not processed, the device requests in progress complete.
+     *
+     * @param operationId The id of the bulk operation to be canceled.
+     * @return The bulk operation progress.
+     */
+    @DELETE
+    @Path("{operationId}")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Cancel a bulk operation",
+    notes = "Cancels the bulk operation: the pending devices are not processed, the device requests in progress complete.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation cancelOperation(
+            @ApiParam(value = "The id of the bulk operation to be canceled", required = true)
+            @PathParam("operationId") String operationId) {
+        DeviceBulkOperation operation = null;
+        try {
+            operation = bulkOperationManager.cancel(KapuaSecurityUtils.getSession().getScopeId(), operationId);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(operation);
+    }
+
+    /**
+     * Executes again the failed and canceled devices of a completed bulk operation.
+     * Only the user who started the operation can retry it.
+     *
+     * @param operationId The id of the bulk operation to be retried.
+     * @return The bulk operation progress.
+     */
+    @POST
+    @Path("{operationId}/retry")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @ApiOperation(value = "Retry a bulk operation",
+    notes = "Executes again the failed and canceled devices of a completed bulk operation. Only the user who started the operation can retry it.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation retryOperation(
+            @ApiParam(value = "The id of the bulk operation to be retried", required = true)
+            @PathParam("operationId") String operationId) {
+        DeviceBulkOperation operation = null;
+        try {
+            operation = bulkOperationManager.retry(KapuaSecurityUtils.getSession().getScopeId(), operationId);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(operation);
+    }
+
+    /**
+     * Executes a command on the target devices.
+     *
+     * @param commandInput The input command.
+     * @return The bulk operation progress.
+     */
+    @POST
+    @Path("command")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Executes a command on many devices",
+    notes = "Starts a bulk operation executing the remote command on the target devices.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation sendCommand(
+            @ApiParam(value = "The input command", required = true)
+            DeviceCommandInput commandInput,
+
+            @ApiParam(value = "The ids of the target devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "The client ids of the target devices (used if no device id is set)", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The status of the target devices (used if no device id is set)", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The maximum number of devices processed concurrently", required = false)
+            @QueryParam("parallelism") Integer parallelism,
+
+            @ApiParam(value = "The maximum number of attempts for every device", required = false)
+            @QueryParam("maxAttempts") Integer maxAttempts,
+
+            @ApiParam(value = "The timeout of the command execution", required = false)
+            @QueryParam("timeout") Long timeout) {
+        return submit("command", deviceId, clientId, status, parallelism, maxAttempts, (scopeId, id) -> {
+            DeviceCommandOutput commandOutput = commandService.exec(scopeId, id, commandInput, timeout);
+            return "exit code " + commandOutput.getExitCode();
+        });
+    }
+
+    /**
+     * Updates the configuration of the target devices.
+     *
+     * @param deviceConfiguration The configuration to be applied.
+     * @return The bulk operation progress.
+     */
+    @POST
+    @Path("configurations")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Updates the configuration of many devices",
+    notes = "Starts a bulk operation applying the configuration to the target devices.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation updateConfigurations(
+            @ApiParam(value = "The configuration to be applied", required = true)
+            DeviceConfiguration deviceConfiguration,
+
+            @ApiParam(value = "The ids of the target devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "The client ids of the target devices (used if no device id is set)", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The status of the target devices (used if no device id is set)", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The maximum number of devices processed concurrently", required = false)
+            @QueryParam("parallelism") Integer parallelism,
+
+            @ApiParam(value = "The maximum number of attempts for every device", required = false)
+            @QueryParam("maxAttempts") Integer maxAttempts,
+
+            @ApiParam(value = "The timeout of the configuration update", required = false)
+            @QueryParam("timeout") Long timeout) {
+        return submit("configurations", deviceId, clientId, status, parallelism, maxAttempts, (scopeId, id) -> {
+            configurationService.put(scopeId, id, deviceConfiguration, timeout);
+            return null;
+        });
+    }
+
+    /**
+     * Installs a deployment package on the target devices.
+     *
+     * @param request Mandatory object with all the informations needed to download a package.
+     * @return The bulk operation progress.
+     */
+    @POST
+    @Path("packages")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Installs a package on many devices",
+    notes = "Starts a bulk operation installing the deployment package on the target devices.",
+    response = DeviceBulkOperation.class)
+    public DeviceBulkOperation installPackage(
+            @ApiParam(value = "Mandatory object with all the informations needed to download a package", required = true)
+            DevicePackageDownloadRequest request,
+
+            @ApiParam(value = "The ids of the target devices", required = false)
+            @QueryParam("deviceId") List<String> deviceId,
+
+            @ApiParam(value = "The client ids of the target devices (used if no device id is set)", required = false)
+            @QueryParam("clientId") List<String> clientId,
+
+            @ApiParam(value = "The status of the target devices (used if no device id is set)", required = false)
+            @QueryParam("status") String status,
+
+            @ApiParam(value = "The maximum number of devices processed concurrently", required = false)
+            @QueryParam("parallelism") Integer parallelism,
+
+            @ApiParam(value = "The maximum number of attempts for every device", required = false)
+            @QueryParam("maxAttempts") Integer maxAttempts) {
+        return submit("packages", deviceId, clientId, status, parallelism, maxAttempts, (scopeId, id) -> {
+            packageService.downloadExec(scopeId, id, request, null);
+            return null;
+        });
+    }
+
+    private DeviceBulkOperation submit(String name,
+                                       List<String> deviceId,
+                                       List<String> clientId,
+                                       String status,
+                                       Integer parallelism,
+                                       Integer maxAttempts,
+                                       DeviceBulkTask task) {
+        DeviceBulkOperation operation = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            List<KapuaId> deviceIds = findTargets(scopeId, deviceId, clientId, status);
+            operation = bulkOperationManager.submit(scopeId, name, deviceIds, parallelism, maxAttempts, asSubject(task));
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return operation;
+    }
+
+    /**
+     * Resolve the target devices: the listed ids or the devices matching the filters
+     */
+    private List<KapuaId> findTargets(KapuaId scopeId, List<String> deviceId, List<String> clientId, String status)
+        throws KapuaException {
+        List<KapuaId> deviceIds = new ArrayList<>();
+        if (deviceId != null && !deviceId.isEmpty()) {
+            for (String id : deviceId) {
+                deviceIds.add(KapuaEid.parseCompactId(id));
+            }
+            return deviceIds;
+        }
+
+        KapuaAndPredicate andPredicate = new AndPredicate();
+        if (clientId != null && !clientId.isEmpty()) {
+            andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.CLIENT_ID, clientId.toArray(new String[] {})));
+        }
+        if (status != null) {
+            try {
+                andPredicate = andPredicate.and(new AttributePredicate<>(DevicePredicates.STATUS, DeviceStatus.valueOf(status)));
+            } catch (IllegalArgumentException iae) {
+                throw new KapuaIllegalArgumentException("status", status);
+            }
+        }
+
+        DeviceQuery query = deviceFactory.newQuery(scopeId);
+        query.setPredicate(andPredicate);
+        // client ids are unique in the scope: stable pages
+        query.setSortCriteria(new FieldSortCriteria(DevicePredicates.CLIENT_ID, SortOrder.ASCENDING));
+        query.setLimit(DEVICE_QUERY_PAGE_SIZE);
+        for (int offset = 0;; offset += DEVICE_QUERY_PAGE_SIZE) {
+            query.setOffset(offset);
+            DeviceListResult page = (DeviceListResult) registryService.query(query);
+            for (Device device : page.getItems()) {
+                deviceIds.add(device.getId());
+            }
+            if (page.getSize() < DEVICE_QUERY_PAGE_SIZE) {
+                return deviceIds;
+            }
+        }
+    }
+
+    /**
+     * The device requests run on the bulk operation threads: execute them as the subject of the request
+     */
+    private static DeviceBulkTask asSubject(DeviceBulkTask task) {
+        Subject subject = SecurityUtils.getSubject();
+        return (scopeId, deviceId) -> {
+            try {
+                return subject.execute(() -> task.execute(scopeId, deviceId));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof KapuaException) {
+                    throw (KapuaException) e.getCause();
+                }
+                throw KapuaException.internalError(e.getCause());
+            }
+        };
+    }
+}
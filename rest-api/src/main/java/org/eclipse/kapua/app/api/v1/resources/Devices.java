@@ -15,6 +15,7 @@ package org.eclipse.kapua.app.api.v1.resources;
 import java.util.List;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -22,6 +23,7 @@ import org.eclipse.kapua.model.query.predicate.KapuaAttributePredicate;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.app.api.VersionedCollection;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.model.query.EntityFetchStyle;
 import org.eclipse.kapua.commons.model.query.FieldSortCriteria;
@@ -30,6 +32,7 @@ import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaFetchStyle;
 import org.eclipse.kapua.model.query.KapuaSortCriteria;
@@ -102,6 +105,7 @@ public class Devices extends AbstractKapuaResource {
     notes = "Returns the list of all the Devices visible to the currently connected user.",
     response = Device.class,
     responseContainer = "List")
+    @VersionedCollection("Device")
     public DeviceListResult getDevices() {
         DeviceListResult devicesResult = deviceFactory.newDeviceListResult();
         try {
@@ -171,6 +175,8 @@ public class Devices extends AbstractKapuaResource {
      *
      * @param device
      *            Provides the information to update the device.
+     * @param ifMatch
+     *            The optional ETag of the device version to update: the update fails (412) if the device has been changed.
      * @return The updated Device object.
      */
     @PUT
@@ -181,9 +187,14 @@ public class Devices extends AbstractKapuaResource {
     response = Device.class)
     public Device updateDevice(
             @ApiParam(value = "Provides the information to update the device", required = true) 
-            Device device) {
+            Device device,
+
+            @ApiParam(value = "The ETag of the Device version to update", required = false)
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
         try {
             ((DeviceImpl) device).setScopeId(KapuaSecurityUtils.getSession().getScopeId());
+            Device updatingDevice = device;
+            checkIfMatch(ifMatch, device, () -> registryService.find(updatingDevice.getScopeId(), updatingDevice.getId()));
             device = registryService.update(device);
         } catch (Throwable t) {
             handleException(t);
@@ -191,6 +202,68 @@ public class Devices extends AbstractKapuaResource {
         return returnNotNullEntity(device);
     }
 
+    /**
+     * Creates many devices in a single request.
+     * The devices are created in chunks and every device is created or rejected on its own.
+     *
+     * @param deviceCreators
+     *            Provides the information for the new devices to be created.
+     * @return The result of every device, in the order of the creators.
+     */
+    @POST
+    @Path("batch")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Creates many Devices",
+    notes = "Creates the Devices based on the information provided in the DeviceCreator list and returns the result of every Device.",
+    response = KapuaBatchResult.class)
+    public KapuaBatchResult postDevices(
+            @ApiParam(value = "Provides the information for the new Devices to be created", required = true) 
+            List<DeviceCreator> deviceCreators) {
+        KapuaBatchResult result = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            for (DeviceCreator deviceCreator : deviceCreators) {
+                deviceCreator.setScopeId(scopeId);
+            }
+            result = registryService.createAll(deviceCreators);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(result);
+    }
+
+    /**
+     * Updates many devices in a single request.
+     * The devices are updated in chunks and every device is updated or rejected on its own.
+     *
+     * @param devices
+     *            Provides the information to update the devices.
+     * @return The result of every device, in the order of the devices.
+     */
+    @PUT
+    @Path("batch")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @ApiOperation(value = "Updates many Devices",
+    notes = "Updates the Devices based on the information provided in the Device list and returns the result of every Device.",
+    response = KapuaBatchResult.class)
+    public KapuaBatchResult updateDevices(
+            @ApiParam(value = "Provides the information to update the Devices", required = true) 
+            List<Device> devices) {
+        KapuaBatchResult result = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            for (Device device : devices) {
+                ((DeviceImpl) device).setScopeId(scopeId);
+            }
+            result = registryService.updateAll(devices);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(result);
+    }
+
     /**
      * Deletes a device based on the id provided in deviceId parameter.
      *
@@ -276,6 +349,8 @@ public class Devices extends AbstractKapuaResource {
      *            The id of the device
      * @param componentId
      *            An optional id of the component to get the configuration for
+     * @param refresh
+     *            Read the configuration from the device instead of returning the last known configuration
      * @return The requested configurations
      */
 
@@ -294,12 +369,15 @@ public class Devices extends AbstractKapuaResource {
             @PathParam("deviceId") String deviceId,
             
             @ApiParam(value = "An optional id of the component to get the configuration for", required = false) 
-            @QueryParam("componentId") String componentId) {
+            @QueryParam("componentId") String componentId,
+            
+            @ApiParam(value = "Read the configuration from the device instead of returning the last known configuration", required = false, defaultValue = "false") 
+            @QueryParam("refresh") @DefaultValue("false") boolean refresh) {
         DeviceConfiguration deviceConfiguration = null;
         try {
             KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
             KapuaId id = KapuaEid.parseCompactId(deviceId);
-            deviceConfiguration = configurationService.get(scopeId, id, null, componentId, null);
+            deviceConfiguration = configurationService.get(scopeId, id, null, componentId, refresh, null);
         } catch (Throwable t) {
             handleException(t);
         }
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.ws.rs.core.MediaType;
+
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.eclipse.kapua.service.datastore.model.MessageStreamHandler;
+import org.eclipse.kapua.service.datastore.model.Payload;
+import org.eclipse.kapua.service.datastore.model.Position;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Writes the streamed messages to a character stream, one message per line, as newline delimited JSON or as CSV.<br>
+ * Nothing is buffered besides the underlying writer buffer: every message is written as soon as it is received,
+ * so a slow reader blocks the writer (and, through it, the message stream) instead of filling up the memory.
+ *
+ * @since 1.0
+ */
+class MessageStreamWriter implements MessageStreamHandler
+{
+    static final String     NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    static final String     CSV_MEDIA_TYPE    = "text/csv";
+
+    private static final String[] CSV_HEADER = new String[] { "id", "timestamp", "receivedOn", "topic", "collectedOn",
+                                                              "latitude", "longitude", "altitude", "metrics", "body" };
+
+    /**
+     * Output format
+     */
+    enum Format
+    {
+        NDJSON(NDJSON_MEDIA_TYPE), CSV(CSV_MEDIA_TYPE);
+
+        private final String mediaType;
+
+        private Format(String mediaType)
+        {
+            this.mediaType = mediaType;
+        }
+
+        MediaType getMediaType()
+        {
+            return MediaType.valueOf(mediaType);
+        }
+    }
+
+    private final Writer        writer;
+    private final Format        format;
+    private final StringBuilder line = new StringBuilder(256);
+
+    MessageStreamWriter(Writer writer, Format format)
+    {
+        this.writer = writer;
+        this.format = format;
+    }
+
+    /**
+     * Write the stream header (if any for the format)
+     *
+     * @throws IOException
+     */
+    void writeHeader()
+        throws IOException
+    {
+        if (format == Format.CSV) {
+            line.setLength(0);
+            for (int i = 0; i < CSV_HEADER.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(CSV_HEADER[i]);
+            }
+            writer.append(line).append('\n');
+        }
+    }
+
+    @Override
+    public void handle(Message message)
+        throws IOException
+    {
+        line.setLength(0);
+        if (format == Format.CSV) {
+            appendCsv(message);
+        }
+        else {
+            appendJson(message);
+        }
+        writer.append(line).append('\n');
+    }
+
+    /**
+     * Flush the underlying writer
+     *
+     * @throws IOException
+     */
+    void flush()
+        throws IOException
+    {
+        writer.flush();
+    }
+
+    private void appendJson(Message message)
+    {
+        line.append('{');
+        appendJsonField("id", message.getId() != null ? message.getId().toString() : null, true);
+        appendJsonField("timestamp", formatDate(message.getTimestamp()), false);
+        appendJsonField("receivedOn", formatDate(message.getReceivedOn()), false);
+        appendJsonField("topic", message.getTopic(), false);
+
+        Payload payload = message.getPayload();
+        if (payload != null) {
+            appendJsonField("collectedOn", formatDate(payload.getCollectedOn()), false);
+
+            Position position = payload.getPosition();
+            if (position != null) {
+                line.append(",\"position\":{");
+                appendJsonValue("latitude", position.getLatitude(), true);
+                appendJsonValue("longitude", position.getLongitude(), false);
+                appendJsonValue("altitude", position.getAltitude(), false);
+                line.append('}');
+            }
+
+            if (payload.getMetrics() != null) {
+                line.append(",\"metrics\":");
+                appendJsonMetrics(payload.getMetrics());
+            }
+
+            if (payload.getBody() != null) {
+                appendJsonField("body", Base64.getEncoder().encodeToString(payload.getBody()), false);
+            }
+        }
+        line.append('}');
+    }
+
+    private void appendCsv(Message message)
+    {
+        Payload payload = message.getPayload();
+        Position position = payload != null ? payload.getPosition() : null;
+
+        appendCsvValue(message.getId() != null ? message.getId().toString() : null, true);
+        appendCsvValue(formatDate(message.getTimestamp()), false);
+        appendCsvValue(formatDate(message.getReceivedOn()), false);
+        appendCsvValue(message.getTopic(), false);
+        appendCsvValue(payload != null ? formatDate(payload.getCollectedOn()) : null, false);
+        appendCsvValue(position != null ? position.getLatitude() : null, false);
+        appendCsvValue(position != null ? position.getLongitude() : null, false);
+        appendCsvValue(position != null ? position.getAltitude() : null, false);
+
+        String metrics = null;
+        if (payload != null && payload.getMetrics() != null) {
+            int start = line.length();
+            appendJsonMetrics(payload.getMetrics());
+            metrics = line.substring(start);
+            line.setLength(start);
+        }
+        appendCsvValue(metrics, false);
+        appendCsvValue(payload != null && payload.getBody() != null ? Base64.getEncoder().encodeToString(payload.getBody()) : null, false);
+    }
+
+    private void appendJsonMetrics(Map<String, Object> metrics)
+    {
+        line.append('{');
+        boolean first = true;
+        for (Entry<String, Object> metric : metrics.entrySet()) {
+            appendJsonValue(metric.getKey(), metric.getValue(), first);
+            first = false;
+        }
+        line.append('}');
+    }
+
+    private void appendJsonField(String name, String value, boolean first)
+    {
+        if (value != null) {
+            appendJsonValue(name, value, first);
+        }
+    }
+
+    private void appendJsonValue(String name, Object value, boolean first)
+    {
+        if (!first) {
+            line.append(',');
+        }
+        appendJsonString(name);
+        line.append(':');
+
+        if (value == null) {
+            line.append("null");
+        }
+        else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            line.append(value);
+        }
+        else if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue()) && !Double.isInfinite(((Number) value).doubleValue())) {
+            line.append(value);
+        }
+        else if (value instanceof byte[]) {
+            appendJsonString(Base64.getEncoder().encodeToString((byte[]) value));
+        }
+        else if (value instanceof Date) {
+            appendJsonString(formatDate((Date) value));
+        }
+        else {
+            appendJsonString(value.toString());
+        }
+    }
+
+    private void appendJsonString(String value)
+    {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                line.append("\\\"");
+                break;
+            case '\\':
+                line.append("\\\\");
+                break;
+            case '\n':
+                line.append("\\n");
+                break;
+            case '\r':
+                line.append("\\r");
+                break;
+            case '\t':
+                line.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    line.append(c);
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private void appendCsvValue(Object value, boolean first)
+    {
+        if (!first) {
+            line.append(',');
+        }
+        if (value == null) {
+            return;
+        }
+
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            line.append(text);
+            return;
+        }
+
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static String formatDate(Date date)
+    {
+        return date != null ? new DateTime(date, DateTimeZone.UTC).toString() : null;
+    }
+}
@@ -12,21 +12,27 @@
  *******************************************************************************/
 package org.eclipse.kapua.app.api.v1.resources;
 
+import java.util.List;
+
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.eclipse.kapua.app.api.VersionedCollection;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.user.User;
 import org.eclipse.kapua.service.user.UserCreator;
@@ -60,6 +66,7 @@ public class Users extends AbstractKapuaResource {
             responseContainer = "UserListResult")
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @VersionedCollection("User")
     public UserListResult getUsers() {
         UserListResult userResult = userFactory.newUserListResult();
         try {
@@ -180,6 +187,8 @@ public class Users extends AbstractKapuaResource {
      *
      * @param user
      *            The modified User whose attributed need to be updated.
+     * @param ifMatch
+     *            The optional ETag of the User version to update: the update fails (412) if the User has been changed.
      * @return The updated user.
      */
     @ApiOperation(value = "Update an User",
@@ -190,10 +199,14 @@ public class Users extends AbstractKapuaResource {
     @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
     public User putUser(
             @ApiParam(value = "The modified User whose attributed need to be updated", required = true)
-            User user) {
+            User user,
+
+            @ApiParam(value = "The ETag of the User version to update", required = false)
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
         User userUpdated = null;
         try {
             ((UserImpl)user).setScopeId(KapuaSecurityUtils.getSession().getScopeId());
+            checkIfMatch(ifMatch, user, () -> userService.find(user.getScopeId(), user.getId()));
             userUpdated = userService.update(user);
         } catch (Throwable t) {
             handleException(t);
@@ -201,6 +214,68 @@ public class Users extends AbstractKapuaResource {
         return returnNotNullEntity(userUpdated);
     }
 
+    /**
+     * Creates many Users in a single request.
+     * The Users are created in chunks and every User is created or rejected on its own.
+     *
+     * @param userCreators
+     *            Provides the information for the new Users to be created.
+     * @return The result of every User, in the order of the creators.
+     */
+    @ApiOperation(value = "Create many Users",
+            notes = "Creates the Users based on the information provided in the UserCreator list and returns the result of every User.",
+            response = KapuaBatchResult.class)
+    @POST
+    @Path("batch")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public KapuaBatchResult postUsers(
+            @ApiParam(value = "Provides the information for the new Users to be created", required = true)
+            List<UserCreator> userCreators) {
+        KapuaBatchResult result = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            for (UserCreator userCreator : userCreators) {
+                userCreator.setScopeId(scopeId);
+            }
+            result = userService.createAll(userCreators);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(result);
+    }
+
+    /**
+     * Updates many Users in a single request.
+     * The Users are updated in chunks and every User is updated or rejected on its own.
+     *
+     * @param users
+     *            The modified Users whose attributes need to be updated.
+     * @return The result of every User, in the order of the Users.
+     */
+    @ApiOperation(value = "Update many Users",
+            notes = "Updates the Users based on the information provided in the User list and returns the result of every User.",
+            response = KapuaBatchResult.class)
+    @PUT
+    @Path("batch")
+    @Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+    public KapuaBatchResult putUsers(
+            @ApiParam(value = "The modified Users whose attributes need to be updated", required = true)
+            List<User> users) {
+        KapuaBatchResult result = null;
+        try {
+            KapuaId scopeId = KapuaSecurityUtils.getSession().getScopeId();
+            for (User user : users) {
+                ((UserImpl) user).setScopeId(scopeId);
+            }
+            result = userService.updateAll(users);
+        } catch (Throwable t) {
+            handleException(t);
+        }
+        return returnNotNullEntity(result);
+    }
+
     /**
      * Deletes the User specified by the "userId" path parameter.
      *
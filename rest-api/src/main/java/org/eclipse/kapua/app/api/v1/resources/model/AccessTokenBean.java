@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.authentication.AccessToken;
+
+@XmlRootElement(name = "accessToken")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class AccessTokenBean 
+{
+    @XmlElement(name="tokenId")
+    private String tokenId;
+
+    @XmlElement(name="refreshToken")
+    private String refreshToken;
+
+    @XmlElement(name="expiresOn")
+    private Date   expiresOn;
+
+    @XmlElement(name="userId")
+    private String userId;
+
+    @XmlElement(name="scopeId")
+    private String scopeId;
+
+    public AccessTokenBean() {
+    }
+
+    public AccessTokenBean(AccessToken accessToken) {
+        this.tokenId      = accessToken.getTokenId();
+        this.refreshToken = accessToken.getRefreshToken();
+        this.expiresOn    = accessToken.getExpiresOn();
+        this.userId       = accessToken.getUserId() != null ? accessToken.getUserId().toCompactId() : null;
+        this.scopeId      = accessToken.getScopeId() != null ? accessToken.getScopeId().toCompactId() : null;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.Base64;
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.eclipse.kapua.service.datastore.model.MetricInfo;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Latest value of a metric of a device.<br>
+ * The value is written as a string, to be parsed according to the type.
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "metricValue")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class MetricValueBean 
+{
+    @XmlElement(name="clientId")
+    private String clientId;
+
+    @XmlElement(name="name")
+    private String name;
+
+    @XmlElement(name="type")
+    private String type;
+
+    @XmlElement(name="value")
+    private String value;
+
+    @XmlElement(name="timestamp")
+    private Date   timestamp;
+
+    @XmlElement(name="topic")
+    private String topic;
+
+    @XmlElement(name="messageId")
+    private String messageId;
+
+    public MetricValueBean() {
+    }
+
+    public MetricValueBean(String clientId, MetricInfo metricInfo) {
+        this.clientId  = clientId;
+        this.name      = metricInfo.getName();
+        this.type      = metricInfo.getType();
+        this.value     = toString(metricInfo.getValue(Object.class));
+        this.timestamp = metricInfo.getLastMessageTimestamp();
+        this.topic     = metricInfo.getFullTopicName();
+        this.messageId = metricInfo.getLastMessageId() != null ? metricInfo.getLastMessageId().toString() : null;
+    }
+
+    private static String toString(Object value) {
+        if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        if (value instanceof Date) {
+            return new DateTime(value, DateTimeZone.UTC).toString();
+        }
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Devices and metrics of a latest metric values lookup
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "metricValueQuery")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class MetricValueQueryBean 
+{
+    @XmlElement(name="clientIds")
+    private List<String> clientIds = new ArrayList<>();
+
+    @XmlElement(name="metricNames")
+    private List<String> metricNames = new ArrayList<>();
+
+    public MetricValueQueryBean() {
+    }
+
+    public List<String> getClientIds() {
+        return clientIds;
+    }
+
+    public void setClientIds(List<String> clientIds) {
+        this.clientIds = clientIds;
+    }
+
+    public List<String> getMetricNames() {
+        return metricNames;
+    }
+
+    public void setMetricNames(List<String> metricNames) {
+        this.metricNames = metricNames;
+    }
+}
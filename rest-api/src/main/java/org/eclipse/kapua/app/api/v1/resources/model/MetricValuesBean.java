@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Latest metric values of a lookup
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "metricValues")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class MetricValuesBean 
+{
+    @XmlElementWrapper(name="items")
+    @XmlElement(name="item")
+    private List<MetricValueBean> items = new ArrayList<>();
+
+    @XmlElement(name="limitExceeded")
+    private boolean limitExceeded;
+
+    public MetricValuesBean() {
+    }
+
+    public MetricValuesBean(boolean limitExceeded) {
+        this.limitExceeded = limitExceeded;
+    }
+
+    public void add(MetricValueBean item) {
+        items.add(item);
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EntityTagsTest
+{
+    @Test
+    public void testConfiguredSecretIsShared()
+    {
+        // two nodes (or a restarted node) with the same setting use the same secret
+        assertArrayEquals(EntityTags.secret("shared-secret"), EntityTags.secret(" shared-secret "));
+    }
+
+    @Test
+    public void testRandomSecretWhenNotConfigured()
+    {
+        byte[] secret = EntityTags.secret("");
+        assertEquals(16, secret.length);
+        assertFalse(Arrays.equals(secret, EntityTags.secret(null)));
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.app.api.v1.resources;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.app.api.v1.resources.MessageStreamWriter.Format;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.Message;
+import org.junit.Test;
+
+public class MessageStreamWriterTest
+{
+    private static final String EPOCH = "1970-01-01T00:00:00.000Z";
+
+    @Test
+    public void testJsonEscaping()
+        throws Exception
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("quote\"", "a\"b");
+        metrics.put("backslash", "a\\b");
+        metrics.put("newline", "a\nb\r\n");
+        metrics.put("control", "a\tb\u0001");
+        metrics.put("comma", "a,b");
+
+        String written = write(Format.NDJSON, message("acme/device/\"app\"", metrics));
+
+        assertEquals("{\"id\":\"id-1\",\"timestamp\":\"" + EPOCH + "\",\"topic\":\"acme/device/\\\"app\\\"\",\"collectedOn\":\"" + EPOCH + "\"," +
+                     "\"metrics\":{\"quote\\\"\":\"a\\\"b\",\"backslash\":\"a\\\\b\",\"newline\":\"a\\nb\\r\\n\",\"control\":\"a\\tb\\u0001\",\"comma\":\"a,b\"}}\n",
+                     written);
+    }
+
+    @Test
+    public void testJsonValues()
+        throws Exception
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("null", null);
+        metrics.put("integer", 1);
+        metrics.put("long", 2L);
+        metrics.put("double", 1.5d);
+        metrics.put("nan", Double.NaN);
+        metrics.put("infinite", Float.POSITIVE_INFINITY);
+        metrics.put("boolean", true);
+        metrics.put("bytes", "a,b".getBytes(StandardCharsets.UTF_8));
+        metrics.put("date", new Date(0));
+
+        String written = write(Format.NDJSON, message("acme/device/app", metrics));
+
+        assertEquals("{\"id\":\"id-1\",\"timestamp\":\"" + EPOCH + "\",\"topic\":\"acme/device/app\",\"collectedOn\":\"" + EPOCH + "\"," +
+                     "\"metrics\":{\"null\":null,\"integer\":1,\"long\":2,\"double\":1.5,\"nan\":\"NaN\",\"infinite\":\"Infinity\",\"boolean\":true," +
+                     "\"bytes\":\"YSxi\",\"date\":\"" + EPOCH + "\"}}\n",
+                     written);
+    }
+
+    @Test
+    public void testJsonNulls()
+        throws Exception
+    {
+        // only the fields with a value are written
+        String written = write(Format.NDJSON, new MessageImpl());
+
+        assertEquals("{}\n", written);
+    }
+
+    @Test
+    public void testJsonPositionAndBody()
+        throws Exception
+    {
+        MessageImpl message = message("acme/device/app", new LinkedHashMap<>());
+        PositionImpl position = new PositionImpl();
+        position.setLatitude(45.5);
+        position.setLongitude(-9.25);
+        ((PayloadImpl) message.getPayload()).setPosition(position);
+        ((PayloadImpl) message.getPayload()).setBody("body\n\"".getBytes(StandardCharsets.UTF_8));
+
+        String written = write(Format.NDJSON, message);
+
+        assertEquals("{\"id\":\"id-1\",\"timestamp\":\"" + EPOCH + "\",\"topic\":\"acme/device/app\",\"collectedOn\":\"" + EPOCH + "\"," +
+                     "\"position\":{\"latitude\":45.5,\"longitude\":-9.25,\"altitude\":0.0},\"metrics\":{},\"body\":\"Ym9keQoi\"}\n",
+                     written);
+    }
+
+    @Test
+    public void testCsvEscaping()
+        throws Exception
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("value", "a\"b");
+
+        String written = write(Format.CSV,
+                               message("acme/device/app,1", new LinkedHashMap<>()),
+                               message("acme/device/\"app\"", new LinkedHashMap<>()),
+                               message("acme/device/app\n2", new LinkedHashMap<>()),
+                               message("acme/device/app", metrics));
+
+        assertEquals("id,timestamp,receivedOn,topic,collectedOn,latitude,longitude,altitude,metrics,body\n" +
+                     "id-1," + EPOCH + ",,\"acme/device/app,1\"," + EPOCH + ",,,,{},\n" +
+                     "id-1," + EPOCH + ",,\"acme/device/\"\"app\"\"\"," + EPOCH + ",,,,{},\n" +
+                     "id-1," + EPOCH + ",,\"acme/device/app\n2\"," + EPOCH + ",,,,{},\n" +
+                     "id-1," + EPOCH + ",,acme/device/app," + EPOCH + ",,,,\"{\"\"value\"\":\"\"a\\\"\"b\"\"}\",\n",
+                     written);
+    }
+
+    @Test
+    public void testCsvNulls()
+        throws Exception
+    {
+        // every column is written, empty if there is no value
+        String written = write(Format.CSV, new MessageImpl());
+
+        assertEquals("id,timestamp,receivedOn,topic,collectedOn,latitude,longitude,altitude,metrics,body\n" +
+                     ",,,,,,,,,\n",
+                     written);
+    }
+
+    @Test
+    public void testCsvPositionAndBody()
+        throws Exception
+    {
+        MessageImpl message = message("acme/device/app", new LinkedHashMap<>());
+        PositionImpl position = new PositionImpl();
+        position.setLatitude(45.5);
+        position.setLongitude(-9.25);
+        position.setAltitude(100);
+        ((PayloadImpl) message.getPayload()).setPosition(position);
+        ((PayloadImpl) message.getPayload()).setBody(new byte[] { (byte) 0xfb, (byte) 0xff });
+
+        String written = write(Format.CSV, message);
+
+        assertEquals("id,timestamp,receivedOn,topic,collectedOn,latitude,longitude,altitude,metrics,body\n" +
+                     "id-1," + EPOCH + ",,acme/device/app," + EPOCH + ",45.5,-9.25,100.0,{},+/8=\n",
+                     written);
+    }
+
+    private static MessageImpl message(String topic, Map<String, Object> metrics)
+    {
+        MessageImpl message = new MessageImpl(new StorableIdImpl("id-1"), new Date(0), topic);
+        PayloadImpl payload = new PayloadImpl();
+        payload.setCollectedOn(new Date(0));
+        payload.setMetrics(metrics);
+        message.setPayload(payload);
+        return message;
+    }
+
+    private static String write(Format format, Message... messages)
+        throws Exception
+    {
+        StringWriter out = new StringWriter();
+        MessageStreamWriter writer = new MessageStreamWriter(out, format);
+        writer.writeHeader();
+        for (Message message : messages) {
+            writer.handle(message);
+        }
+        writer.flush();
+        return out.toString();
+    }
+}
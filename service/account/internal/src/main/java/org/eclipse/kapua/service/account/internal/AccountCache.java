@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.account.internal;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.internal.setting.KapuaAccountSetting;
+import org.eclipse.kapua.service.account.internal.setting.KapuaAccountSettingKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory materialized view of the account hierarchy.<br>
+ * Accounts are indexed by id and by name, and each cached account keeps the ordered list of its ancestors (parsed once from the parent account path),
+ * so ancestor and descendant checks cost O(depth) and do not touch the database.<br>
+ * The result of the recursive child accounts lookup is cached per account and dropped whenever an account is created or deleted below it.<br>
+ * <br>
+ * Cached accounts are detached copies: callers always get a fresh instance and can freely modify it.<br>
+ * Entries expire after {@link KapuaAccountSettingKeys#ACCOUNT_CACHE_EXPIRE_AFTER} seconds to bound the staleness of changes made by other nodes.<br>
+ * <br>
+ * Every invalidation bumps the cache generation. Callers loading an account from the database read the generation before the load
+ * and pass it to {@link #put(Account, long)}, so a value loaded before a concurrent update or delete is never cached after its invalidation.
+ *
+ * @since 1.0
+ *
+ */
+public class AccountCache
+{
+    private static final Logger       logger   = LoggerFactory.getLogger(AccountCache.class);
+
+    private static final AccountCache instance = new AccountCache();
+
+    private final ConcurrentHashMap<BigInteger, Node>             accountsById;
+    private final ConcurrentHashMap<String, BigInteger>           accountIdsByName;
+    private final ConcurrentHashMap<BigInteger, ChildAccountList> childAccountsById;
+
+    private final AtomicLong generation;
+
+    private final int  sizeMax;
+    private final long expireAfterNanos;
+
+    private AccountCache()
+    {
+        KapuaAccountSetting config = KapuaAccountSetting.getInstance();
+        sizeMax = config.getInt(KapuaAccountSettingKeys.ACCOUNT_CACHE_SIZE_MAXIMUM, 10000);
+        expireAfterNanos = TimeUnit.SECONDS.toNanos(config.getInt(KapuaAccountSettingKeys.ACCOUNT_CACHE_EXPIRE_AFTER, 600));
+
+        accountsById = new ConcurrentHashMap<>();
+        accountIdsByName = new ConcurrentHashMap<>();
+        childAccountsById = new ConcurrentHashMap<>();
+        generation = new AtomicLong();
+    }
+
+    /**
+     * Get the account cache instance
+     *
+     * @return
+     */
+    public static AccountCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return a copy of the cached account with the given identifier or null if the account is not cached
+     *
+     * @param accountId
+     * @return
+     */
+    public Account get(KapuaId accountId)
+    {
+        Node node = getNode(accountId.getId());
+        return node != null ? new AccountImpl(node.account) : null;
+    }
+
+    /**
+     * Return a copy of the cached account with the given name or null if the account is not cached
+     *
+     * @param name
+     * @return
+     */
+    public Account getByName(String name)
+    {
+        BigInteger accountId = accountIdsByName.get(name);
+        if (accountId == null) {
+            return null;
+        }
+
+        Node node = getNode(accountId);
+        if (node == null || !node.account.getName().equals(name)) {
+            accountIdsByName.remove(name, accountId);
+            return null;
+        }
+        return new AccountImpl(node.account);
+    }
+
+    /**
+     * Return the cached list of all the accounts under the given account (at any depth) or null if not cached
+     *
+     * @param accountId
+     * @return
+     */
+    public List<Account> getChildAccountsRecursive(KapuaId accountId)
+    {
+        ChildAccountList childAccountList = childAccountsById.get(accountId.getId());
+        if (childAccountList == null) {
+            return null;
+        }
+        if (childAccountList.isExpired(expireAfterNanos)) {
+            childAccountsById.remove(accountId.getId(), childAccountList);
+            return null;
+        }
+
+        List<Account> childAccounts = new ArrayList<>(childAccountList.accounts.size());
+        for (AccountImpl account : childAccountList.accounts) {
+            childAccounts.add(new AccountImpl(account));
+        }
+        return childAccounts;
+    }
+
+    /**
+     * Return the current cache generation.<br>
+     * The generation must be read before loading the entries to cache and passed to the guarded put methods.
+     *
+     * @return
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Put (or replace) the given account in the cache
+     *
+     * @param account
+     */
+    public void put(Account account)
+    {
+        if (account == null || account.getId() == null) {
+            return;
+        }
+
+        ensureCapacity();
+
+        Node node = new Node(new AccountImpl((AccountImpl) account));
+        Node oldNode = accountsById.put(node.id, node);
+        if (oldNode != null && !oldNode.account.getName().equals(node.account.getName())) {
+            accountIdsByName.remove(oldNode.account.getName(), oldNode.id);
+        }
+        accountIdsByName.put(node.account.getName(), node.id);
+    }
+
+    /**
+     * Put the given account in the cache only if no invalidation happened since the given generation was read
+     *
+     * @param account
+     * @param loadGeneration
+     *            the cache generation read before the account was loaded
+     */
+    public void put(Account account, long loadGeneration)
+    {
+        if (account == null || account.getId() == null || generation.get() != loadGeneration) {
+            return;
+        }
+
+        put(account);
+
+        // an invalidation may have run between the check and the put
+        if (generation.get() != loadGeneration) {
+            Node node = accountsById.remove(account.getId().getId());
+            if (node != null) {
+                accountIdsByName.remove(node.account.getName(), node.id);
+            }
+        }
+    }
+
+    /**
+     * Put the list of all the accounts under the given account (at any depth) in the cache
+     *
+     * @param accountId
+     * @param childAccounts
+     */
+    public void putChildAccountsRecursive(KapuaId accountId, List<Account> childAccounts)
+    {
+        List<AccountImpl> accounts = new ArrayList<>(childAccounts.size());
+        for (Account childAccount : childAccounts) {
+            accounts.add(new AccountImpl((AccountImpl) childAccount));
+        }
+
+        ensureCapacity();
+        childAccountsById.put(accountId.getId(), new ChildAccountList(Collections.unmodifiableList(accounts)));
+    }
+
+    /**
+     * Put the list of all the accounts under the given account in the cache only if no invalidation happened since the given generation was read
+     *
+     * @param accountId
+     * @param childAccounts
+     * @param loadGeneration
+     *            the cache generation read before the child accounts were loaded
+     */
+    public void putChildAccountsRecursive(KapuaId accountId, List<Account> childAccounts, long loadGeneration)
+    {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+
+        putChildAccountsRecursive(accountId, childAccounts);
+
+        // an invalidation may have run between the check and the put
+        if (generation.get() != loadGeneration) {
+            childAccountsById.remove(accountId.getId());
+        }
+    }
+
+    /**
+     * Check if the account identified by accountId is a descendant (at any depth) of the account identified by ancestorId.<br>
+     * The check walks the ancestors of the cached account, so its cost is bounded by the depth of the account tree.
+     *
+     * @param accountId
+     * @param ancestorId
+     * @return true if accountId is under ancestorId, false if it is not, null if the account is not cached
+     */
+    public Boolean isDescendantOf(KapuaId accountId, KapuaId ancestorId)
+    {
+        Node node = getNode(accountId.getId());
+        if (node == null) {
+            return null;
+        }
+
+        BigInteger ancestor = ancestorId.getId();
+        for (BigInteger pathElement : node.ancestorIds) {
+            if (pathElement.equals(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the given account from the cache.<br>
+     * The recursive child accounts lists of the account and of all its ancestors are removed as well.
+     *
+     * @param account
+     */
+    public void invalidate(Account account)
+    {
+        generation.incrementAndGet();
+
+        BigInteger accountId = account.getId().getId();
+
+        Node node = accountsById.remove(accountId);
+        if (node != null) {
+            accountIdsByName.remove(node.account.getName(), accountId);
+            for (BigInteger ancestorId : node.ancestorIds) {
+                childAccountsById.remove(ancestorId);
+            }
+        }
+        accountIdsByName.remove(account.getName(), accountId);
+        childAccountsById.remove(accountId);
+
+        // the account may be unknown to this cache but still listed as child of an ancestor
+        if (account.getParentAccountPath() != null) {
+            for (BigInteger ancestorId : parsePath(account.getParentAccountPath())) {
+                childAccountsById.remove(ancestorId);
+            }
+        }
+        if (account.getScopeId() != null) {
+            childAccountsById.remove(account.getScopeId().getId());
+        }
+    }
+
+    /**
+     * Remove all the entries from the cache
+     */
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        clear();
+    }
+
+    private Node getNode(BigInteger accountId)
+    {
+        Node node = accountsById.get(accountId);
+        if (node != null && node.isExpired(expireAfterNanos)) {
+            accountsById.remove(accountId, node);
+            accountIdsByName.remove(node.account.getName(), accountId);
+            return null;
+        }
+        return node;
+    }
+
+    private void ensureCapacity()
+    {
+        // The hierarchy indexes must stay consistent with each other, so rather than evicting single entries the whole cache is reset.
+        if (accountsById.size() >= sizeMax || childAccountsById.size() >= sizeMax) {
+            logger.debug("Account cache full ({} entries). Resetting it.", sizeMax);
+            // a reset does not make any loaded value stale, so the generation is left unchanged
+            clear();
+        }
+    }
+
+    private void clear()
+    {
+        accountsById.clear();
+        accountIdsByName.clear();
+        childAccountsById.clear();
+    }
+
+    /**
+     * Parse the parent account path (i.e. /1/23/456) into the list of the account ancestors identifiers (the account itself excluded)
+     */
+    private static List<BigInteger> parsePath(String parentAccountPath)
+    {
+        List<BigInteger> ancestorIds = new ArrayList<>();
+        int start = 0;
+        int length = parentAccountPath.length();
+        while (start < length) {
+            int end = parentAccountPath.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                ancestorIds.add(new BigInteger(parentAccountPath.substring(start, end)));
+            }
+            start = end + 1;
+        }
+        return ancestorIds;
+    }
+
+    private static class Node
+    {
+        private final BigInteger       id;
+        private final AccountImpl      account;
+        private final List<BigInteger> ancestorIds;
+        private final long             loadedOn;
+
+        private Node(AccountImpl account)
+        {
+            this.id = account.getId().getId();
+            this.account = account;
+            this.loadedOn = System.nanoTime();
+
+            List<BigInteger> pathIds = account.getParentAccountPath() != null ? parsePath(account.getParentAccountPath()) : new ArrayList<>();
+            pathIds.remove(id);
+            this.ancestorIds = pathIds;
+        }
+
+        private boolean isExpired(long expireAfterNanos)
+        {
+            return System.nanoTime() - loadedOn > expireAfterNanos;
+        }
+    }
+
+    private static class ChildAccountList
+    {
+        private final List<AccountImpl> accounts;
+        private final long              loadedOn;
+
+        private ChildAccountList(List<AccountImpl> accounts)
+        {
+            this.accounts = accounts;
+            this.loadedOn = System.nanoTime();
+        }
+
+        private boolean isExpired(long expireAfterNanos)
+        {
+            return System.nanoTime() - loadedOn > expireAfterNanos;
+        }
+    }
+}
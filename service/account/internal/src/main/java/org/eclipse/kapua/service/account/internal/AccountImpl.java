@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.account.internal;
 
+import java.util.Date;
+
 import javax.persistence.AttributeOverride;
 import javax.persistence.AttributeOverrides;
 import javax.persistence.Basic;
@@ -84,6 +86,29 @@ public class AccountImpl extends AbstractKapuaNamedEntity implements Account
         this.parentAccountPath = "";
     }
 
+    /**
+     * Copy constructor.<br>
+     * The returned instance is detached from any persistence context and shares no mutable state with the provided account.
+     * 
+     * @param account
+     */
+    public AccountImpl(AccountImpl account)
+    {
+        super();
+        this.id = account.id;
+        this.scopeId = account.scopeId;
+        this.createdOn = account.createdOn != null ? new Date(account.createdOn.getTime()) : null;
+        this.createdBy = account.createdBy;
+        this.modifiedOn = account.modifiedOn != null ? new Date(account.modifiedOn.getTime()) : null;
+        this.modifiedBy = account.modifiedBy;
+        this.optlock = account.optlock;
+        this.attributes = account.attributes;
+        this.properties = account.properties;
+        this.name = account.name;
+        this.organization = account.organization != null ? new OrganizationImpl(account.organization) : null;
+        this.parentAccountPath = account.parentAccountPath;
+    }
+
     @Override
     public Organization getOrganization()
     {
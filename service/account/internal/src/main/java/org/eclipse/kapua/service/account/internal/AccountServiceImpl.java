@@ -94,6 +94,8 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
             AccountDAO.update(em, account);
             em.commit();
 
+            AccountCache.getInstance().invalidate(account);
+
             //
             // reload the latest version of the entity
             // to make sure we get all the latest info/version
@@ -143,6 +145,8 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
             AccountDAO.update(em, account);
             em.commit();
 
+            AccountCache.getInstance().invalidate(account);
+
             return find(account.getScopeId(), account.getId());
         });
     }
@@ -191,6 +195,8 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
             em.beginTransaction();
             AccountDAO.delete(em, accountId);
             em.commit();
+
+            AccountCache.getInstance().invalidate(accountx);
         });
     }
 
@@ -246,18 +252,26 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
         // Argument Validation
         ArgumentValidator.notEmptyOrNull(name, "name");
 
-        return entityManagerSession.onEntityManagerResult(em -> {
-            Account account = AccountDAO.findByName(em, name);
-            // Check Access
-            if (account != null) {
-                KapuaLocator locator = KapuaLocator.getInstance();
-                AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
-                PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
-                authorizationService.checkPermission(permissionFactory.newPermission(AccountDomain.ACCOUNT, Actions.read, account.getId()));
-            }
+        AccountCache accountCache = AccountCache.getInstance();
+        Account account = accountCache.getByName(name);
+        if (account == null) {
+            long generation = accountCache.getGeneration();
+            account = entityManagerSession.onEntityManagerResult(em -> {
+                return AccountDAO.findByName(em, name);
+            });
+            accountCache.put(account, generation);
+        }
 
-            return account;
-        });
+        //
+        // Check Access
+        if (account != null) {
+            KapuaLocator locator = KapuaLocator.getInstance();
+            AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+            PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+            authorizationService.checkPermission(permissionFactory.newPermission(AccountDomain.ACCOUNT, Actions.read, account.getId()));
+        }
+
+        return account;
     }
 
     @Override
@@ -284,16 +298,22 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(AccountDomain.ACCOUNT, Actions.read, account.getId()));
 
-        return entityManagerSession.onEntityManagerResult(em -> {
-            AccountListResult result = null;
-            TypedQuery<Account> q;
-            q = em.createNamedQuery("Account.findChildAccountsRecursive", Account.class);
-            q.setParameter("parentAccountPath", "\\" + account.getParentAccountPath() + "/%");
-
-            result = new AccountListResultImpl();
-            result.addItems(q.getResultList());
-            return result;
-        });
+        AccountCache accountCache = AccountCache.getInstance();
+        List<Account> childAccounts = accountCache.getChildAccountsRecursive(id);
+        if (childAccounts == null) {
+            long generation = accountCache.getGeneration();
+            childAccounts = entityManagerSession.onEntityManagerResult(em -> {
+                TypedQuery<Account> q;
+                q = em.createNamedQuery("Account.findChildAccountsRecursive", Account.class);
+                q.setParameter("parentAccountPath", "\\" + account.getParentAccountPath() + "/%");
+                return q.getResultList();
+            });
+            accountCache.putChildAccountsRecursive(id, childAccounts, generation);
+        }
+
+        AccountListResult result = new AccountListResultImpl();
+        result.addItems(childAccounts);
+        return result;
     }
 
     @Override
@@ -335,7 +355,8 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
     }
 
     /**
-     * Find an account without authorization.
+     * Find an account without authorization.<br>
+     * The account is looked up in the {@link AccountCache} first and loaded from the database only on cache miss.
      * 
      * @param accountId
      * @return
@@ -349,9 +370,16 @@ public class AccountServiceImpl extends AbstractKapuaConfigurableService impleme
         // Argument Validation
         ArgumentValidator.notNull(accountId, "accountId");
 
-        return entityManagerSession.onEntityManagerResult(em -> {
-            return AccountDAO.find(em, accountId);
-        });
+        AccountCache accountCache = AccountCache.getInstance();
+        Account account = accountCache.get(accountId);
+        if (account == null) {
+            long generation = accountCache.getGeneration();
+            account = entityManagerSession.onEntityManagerResult(em -> {
+                return AccountDAO.find(em, accountId);
+            });
+            accountCache.put(account, generation);
+        }
+        return account;
     }
 
     private List<Account> findChildAccountsTrusted(KapuaId accountId)
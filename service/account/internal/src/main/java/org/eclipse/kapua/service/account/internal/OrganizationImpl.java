@@ -47,6 +47,25 @@ public class OrganizationImpl implements Organization, Serializable {
     public OrganizationImpl() {
     }
 
+    /**
+     * Copy constructor
+     * 
+     * @param organization
+     */
+    public OrganizationImpl(OrganizationImpl organization) {
+        this.name = organization.getName();
+        this.personName = organization.getPersonName();
+        this.email = organization.getEmail();
+        this.phoneNumber = organization.getPhoneNumber();
+        this.addressLine1 = organization.getAddressLine1();
+        this.addressLine2 = organization.getAddressLine2();
+        this.addressLine3 = organization.addressLine3;
+        this.zipPostCode = organization.getZipPostCode();
+        this.city = organization.getCity();
+        this.stateProvinceCounty = organization.getStateProvinceCounty();
+        this.country = organization.getCountry();
+    }
+
     @Override
     public String getName() {
         return name;
@@ -25,7 +25,16 @@ public enum KapuaAccountSettingKeys implements SettingKey
     /**
      * The key value in the configuration resources.
      */
-    ACCOUNT_KEY("account.key");
+    ACCOUNT_KEY("account.key"),
+
+    /**
+     * Maximum number of accounts kept in the account hierarchy cache
+     */
+    ACCOUNT_CACHE_SIZE_MAXIMUM("account.cache.size.maximum"),
+    /**
+     * Time to live (in seconds) of the account hierarchy cache entries
+     */
+    ACCOUNT_CACHE_EXPIRE_AFTER("account.cache.expire.after");
 	
 	private String key;
 	
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.account.internal;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.account.Account;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountCacheTest
+{
+    private AccountImpl root;
+    private AccountImpl child;
+    private AccountImpl grandChild;
+
+    @Before
+    public void setUp()
+    {
+        AccountCache.getInstance().invalidateAll();
+
+        root = newAccount(1, 1, "kapua-sys", "/1");
+        child = newAccount(23, 1, "child", "/1/23");
+        grandChild = newAccount(456, 23, "grand-child", "/1/23/456");
+    }
+
+    @Test
+    public void testFindByIdAndName()
+    {
+        AccountCache accountCache = AccountCache.getInstance();
+        assertNull(accountCache.get(child.getId()));
+
+        accountCache.put(child);
+
+        Account cached = accountCache.get(child.getId());
+        assertNotNull(cached);
+        assertNotSame(child, cached);
+        assertEquals(child.getName(), cached.getName());
+        assertEquals(child.getParentAccountPath(), cached.getParentAccountPath());
+        assertEquals(child.getId(), accountCache.getByName("child").getId());
+
+        // cached copies are not shared with the callers
+        cached.getOrganization().setName("changed");
+        assertEquals("child-org", accountCache.get(child.getId()).getOrganization().getName());
+    }
+
+    @Test
+    public void testIsDescendantOf()
+    {
+        AccountCache accountCache = AccountCache.getInstance();
+        assertNull(accountCache.isDescendantOf(grandChild.getId(), root.getId()));
+
+        accountCache.put(root);
+        accountCache.put(child);
+        accountCache.put(grandChild);
+
+        assertTrue(accountCache.isDescendantOf(grandChild.getId(), root.getId()));
+        assertTrue(accountCache.isDescendantOf(grandChild.getId(), child.getId()));
+        assertTrue(accountCache.isDescendantOf(child.getId(), root.getId()));
+        assertFalse(accountCache.isDescendantOf(root.getId(), child.getId()));
+        assertFalse(accountCache.isDescendantOf(child.getId(), grandChild.getId()));
+        assertFalse(accountCache.isDescendantOf(child.getId(), child.getId()));
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        AccountCache accountCache = AccountCache.getInstance();
+        accountCache.put(root);
+        accountCache.put(child);
+        accountCache.putChildAccountsRecursive(root.getId(), Arrays.asList(child));
+        accountCache.putChildAccountsRecursive(child.getId(), Arrays.asList());
+
+        List<Account> childAccounts = accountCache.getChildAccountsRecursive(root.getId());
+        assertEquals(1, childAccounts.size());
+
+        // a new account under child must drop the cached child lists of all its ancestors
+        accountCache.invalidate(grandChild);
+        assertNull(accountCache.getChildAccountsRecursive(root.getId()));
+        assertNull(accountCache.getChildAccountsRecursive(child.getId()));
+        assertNotNull(accountCache.get(child.getId()));
+
+        accountCache.invalidate(child);
+        assertNull(accountCache.get(child.getId()));
+        assertNull(accountCache.getByName("child"));
+        assertNotNull(accountCache.get(root.getId()));
+    }
+
+    @Test
+    public void testPutAfterInvalidationIsSkipped()
+    {
+        AccountCache accountCache = AccountCache.getInstance();
+
+        // generation read before the load, then the account is updated by another thread
+        long generation = accountCache.getGeneration();
+        accountCache.invalidate(child);
+
+        accountCache.put(child, generation);
+        accountCache.putChildAccountsRecursive(root.getId(), Arrays.asList(child), generation);
+        assertNull(accountCache.get(child.getId()));
+        assertNull(accountCache.getByName("child"));
+        assertNull(accountCache.getChildAccountsRecursive(root.getId()));
+
+        generation = accountCache.getGeneration();
+        accountCache.put(child, generation);
+        accountCache.putChildAccountsRecursive(root.getId(), Arrays.asList(child), generation);
+        assertNotNull(accountCache.get(child.getId()));
+        assertNotNull(accountCache.getChildAccountsRecursive(root.getId()));
+    }
+
+    private static AccountImpl newAccount(long id, long scopeId, String name, String parentAccountPath)
+    {
+        OrganizationImpl organization = new OrganizationImpl();
+        organization.setName(name + "-org");
+
+        AccountImpl account = new AccountImpl(new KapuaEid(BigInteger.valueOf(scopeId)), name);
+        account.setId(new KapuaEid(BigInteger.valueOf(id)));
+        account.setOrganization(organization);
+        account.setParentAccountPath(parentAccountPath);
+        return account;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.model.batch;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+
+import org.eclipse.kapua.KapuaSerializable;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.id.KapuaIdAdapter;
+
+/**
+ * Result of a batch operation for a single item
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "batchItemResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = { "index", "status", "entityId", "message" })
+public class KapuaBatchItemResult implements KapuaSerializable
+{
+    /**
+     * Item result status
+     */
+    public enum Status
+    {
+        /**
+         * The item has been written
+         */
+        SUCCEEDED,
+        /**
+         * The item has not been written
+         */
+        FAILED
+    }
+
+    @XmlElement(name = "index")
+    private int     index;
+
+    @XmlElement(name = "status")
+    private Status  status;
+
+    @XmlElement(name = "entityId")
+    @XmlJavaTypeAdapter(KapuaIdAdapter.class)
+    private KapuaId entityId;
+
+    @XmlElement(name = "message")
+    private String  message;
+
+    public KapuaBatchItemResult()
+    {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param index the position of the item in the batch (zero based)
+     * @param status
+     * @param entityId the id of the created or updated entity (null if failed)
+     * @param message the failure reason (null if succeeded)
+     */
+    public KapuaBatchItemResult(int index, Status status, KapuaId entityId, String message)
+    {
+        this.index = index;
+        this.status = status;
+        this.entityId = entityId;
+        this.message = message;
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public void setIndex(int index)
+    {
+        this.index = index;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus(Status status)
+    {
+        this.status = status;
+    }
+
+    public KapuaId getEntityId()
+    {
+        return entityId;
+    }
+
+    public void setEntityId(KapuaId entityId)
+    {
+        this.entityId = entityId;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    public void setMessage(String message)
+    {
+        this.message = message;
+    }
+}
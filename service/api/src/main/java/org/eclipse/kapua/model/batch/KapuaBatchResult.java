@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.model.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import org.eclipse.kapua.KapuaSerializable;
+import org.eclipse.kapua.model.batch.KapuaBatchItemResult.Status;
+
+/**
+ * Result of a batch create or update: the result of every item, in the order of the items.
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "batchResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = { "succeededCount", "failedCount", "items" })
+public class KapuaBatchResult implements KapuaSerializable
+{
+    @XmlElement(name = "succeededCount")
+    private int                        succeededCount;
+
+    @XmlElement(name = "failedCount")
+    private int                        failedCount;
+
+    @XmlElementWrapper(name = "items")
+    @XmlElement(name = "item")
+    private List<KapuaBatchItemResult> items = new ArrayList<>();
+
+    public KapuaBatchResult()
+    {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param items the item results, in the order of the items
+     */
+    public KapuaBatchResult(List<KapuaBatchItemResult> items)
+    {
+        for (KapuaBatchItemResult item : items) {
+            addItem(item);
+        }
+    }
+
+    /**
+     * Add the result of the next item
+     *
+     * @param item
+     */
+    public void addItem(KapuaBatchItemResult item)
+    {
+        items.add(item);
+        if (item.getStatus() == Status.SUCCEEDED) {
+            succeededCount++;
+        }
+        else {
+            failedCount++;
+        }
+    }
+
+    public int getSucceededCount()
+    {
+        return succeededCount;
+    }
+
+    public int getFailedCount()
+    {
+        return failedCount;
+    }
+
+    public List<KapuaBatchItemResult> getItems()
+    {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Return the result of the item at the given position (zero based)
+     *
+     * @param index
+     * @return
+     */
+    public KapuaBatchItemResult getItem(int index)
+    {
+        return items.get(index);
+    }
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore;
+
+import org.eclipse.kapua.service.KapuaService;
+
+/**
+ * Load of the datastore as seen by the clients of this process.<br>
+ * It lets the producers of the data (i.e. the broker routes) adapt their rate to the datastore capacity.
+ *
+ * @since 1.0
+ */
+public interface DatastoreLoadService extends KapuaService
+{
+    /**
+     * Return the load of the ingest requests, from 0 (idle) to 1 (saturated)
+     *
+     * @return
+     */
+    public double getIngestLoad();
+
+    /**
+     * Return the number of ingest requests rejected since the start of the process
+     *
+     * @return
+     */
+    public long getIngestRejectedCount();
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.KapuaService;
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+
+/**
+ * Datastore quotas of the accounts, as set in their service plan.<br>
+ * It lets the producers of the data (i.e. the broker routes) hold back the messages of an account over its quota before they reach the
+ * datastore.
+ *
+ * @since 1.0
+ */
+public interface DatastoreQuotaService extends KapuaService
+{
+    /**
+     * Return the ingest quota of the account
+     *
+     * @param scopeId
+     * @return
+     * @throws KapuaException
+     */
+    public IngestQuota getIngestQuota(KapuaId scopeId)
+        throws KapuaException;
+}
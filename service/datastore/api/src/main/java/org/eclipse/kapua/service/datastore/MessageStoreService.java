@@ -19,6 +19,7 @@ import org.eclipse.kapua.service.config.KapuaConfigurableService;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MessageStreamHandler;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
@@ -47,4 +48,18 @@ public interface MessageStoreService extends KapuaService,
 
     void delete(KapuaId scopeId, MessageQuery query)
         throws KapuaException;
+
+    /**
+     * Stream all the messages matching the query to the handler, using the query predicate, sort and fetch style.<br>
+     * Offset and limit are ignored: the messages are read from the store in pages of bounded size,
+     * so the memory needed does not depend on the number of matching messages.
+     *
+     * @param scopeId
+     * @param query
+     * @param handler
+     * @return the number of streamed messages
+     * @throws KapuaException
+     */
+    long stream(KapuaId scopeId, MessageQuery query, MessageStreamHandler handler)
+        throws KapuaException;
 }
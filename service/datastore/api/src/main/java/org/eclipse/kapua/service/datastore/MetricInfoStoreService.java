@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore;
 
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaService;
@@ -48,4 +50,18 @@ public interface MetricInfoStoreService extends KapuaService,
 
     public void delete(KapuaId scopeId, MetricInfoQuery query)
         throws KapuaException;
+
+    /**
+     * Find the latest values of the metrics of the devices.<br>
+     * The latest values are kept up to date by the store of the messages, so the lookup cost does not depend on the stored messages.
+     * The returned {@link MetricInfo} carry the value, the topic, the id and the timestamp of the newest message publishing the metric.
+     *
+     * @param scopeId
+     * @param clientIds the client ids of the devices
+     * @param metricNames the metric names, or null (or empty) for all the metrics of the devices
+     * @return the latest values found. The next key is set if the values found are more than the maximum returned.
+     * @throws KapuaException
+     */
+    public MetricInfoListResult findLastValues(KapuaId scopeId, List<String> clientIds, List<String> metricNames)
+        throws KapuaException;
 }
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+/**
+ * Maximum rate of the data messages accepted for an account
+ *
+ * @since 1.0
+ */
+public interface IngestQuota
+{
+    /**
+     * Rate value meaning no limit
+     */
+    public static final long UNLIMITED = -1;
+
+    /**
+     * Rate value meaning nothing is accepted
+     */
+    public static final long DISABLED = 0;
+
+    /**
+     * Get the maximum number of data messages per second ({@link #UNLIMITED} if not limited)
+     *
+     * @return
+     */
+    public long getMessageRate();
+
+    /**
+     * Get the maximum number of data message bytes per second ({@link #UNLIMITED} if not limited)
+     *
+     * @return
+     */
+    public long getByteRate();
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.model;
+
+/**
+ * Callback receiving the messages streamed by {@link org.eclipse.kapua.service.datastore.MessageStoreService#stream}.<br>
+ * Messages are handed over one by one, in the query sort order, by the thread that called the stream method.
+ * The next page of messages is fetched from the store only once all the messages of the current page have been handled,
+ * so a slow handler (i.e. one writing to a slow HTTP client) slows down the fetching instead of piling up messages in memory.
+ *
+ * @since 1.0
+ */
+public interface MessageStreamHandler
+{
+    /**
+     * Handle the next message.<br>
+     * Throwing an exception stops the stream and releases the resources held by the store.
+     *
+     * @param message
+     * @throws Exception
+     */
+    public void handle(Message message)
+        throws Exception;
+}
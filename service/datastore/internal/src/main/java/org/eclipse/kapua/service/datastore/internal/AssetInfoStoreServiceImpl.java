@@ -116,6 +116,8 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsAssetDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                       .deleteById(id.toString());
+
+            DatastoreCacheManager.getInstance().removeAsset(EsUtils.getActualKapuaIndexName(scopeName, 0), id.toString());
         }
         catch (Exception exc) {
             // TODO manage exeception
@@ -262,6 +264,8 @@ public class AssetInfoStoreServiceImpl extends AbstractKapuaConfigurableService
                       .instance(everyIndex, EsSchema.ASSET_TYPE_NAME)
                       .deleteByQuery(query);
 
+            DatastoreCacheManager.getInstance().invalidateMetadataRegistry(EsUtils.getActualKapuaIndexName(scopeName, 0));
+
             return;
         }
         catch (Exception exc) {
@@ -12,46 +12,159 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal;
 
-import org.eclipse.kapua.commons.cache.LocalCache;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Holds the metadata registries ({@link MetadataRegistry}) of the accounts, indexed by the account metadata index name.<br>
+ * A registry is seeded from its metadata index in background the first time it is requested, so the ingest threads never wait for the seed
+ * (until the seed completes the metadata documents are just upserted). A failed seed is retried after the retry interval.<br>
+ * A registry older than the time to live is replaced by a new one seeded in background, so the metadata documents deleted by other nodes
+ * are not kept registered forever. The deletions done by this node are applied to the registry at once.
+ *
+ * @since 1.0
+ */
 public class DatastoreCacheManager
 {
+    private static final Logger logger = LoggerFactory.getLogger(DatastoreCacheManager.class);
+
     private static DatastoreCacheManager instance = new DatastoreCacheManager();
-    
-    private final LocalCache<String, Boolean> topicsCache;
-    private final LocalCache<String, Boolean> metricsCache;
-    private final LocalCache<String, Boolean> assetsCache;
+
+    private final ConcurrentHashMap<String, MetadataRegistry> metadataRegistries;
+    private final Set<String>                                 refreshingRegistries;
+    private final ExecutorService                             seedExecutor;
+
+    private final int  expectedSize;
+    private final int  seedPageSize;
+    private final long seedRetryInterval;
+    private final long expireAfter;
 
     private DatastoreCacheManager()
     {
         DatastoreSettings config = DatastoreSettings.getInstance();
-        int expireAfter = config.getInt(DatastoreSettingKey.CONFIG_CACHE_LOCAL_EXPIRE_AFTER);
-        int sizeMax = config.getInt(DatastoreSettingKey.CONFIG_CACHE_LOCAL_SIZE_MAXIMUM);
+        expectedSize = config.getInt(DatastoreSettingKey.CONFIG_METADATA_REGISTRY_EXPECTED_SIZE, 1000);
+        seedPageSize = config.getInt(DatastoreSettingKey.CONFIG_METADATA_REGISTRY_SEED_PAGE_SIZE, 1000);
+        seedRetryInterval = config.getLong(DatastoreSettingKey.CONFIG_METADATA_REGISTRY_SEED_RETRY_INTERVAL, 30000L);
+        expireAfter = config.getLong(DatastoreSettingKey.CONFIG_METADATA_REGISTRY_EXPIRE_AFTER, 3600000L);
 
-        // TODO set expiration to happen frequently because the reset cache method will not get
-        // called from service clients any more
-        // TODO wrap the caches into a Statically accessible method
-        topicsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
-        metricsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
-        assetsCache = new LocalCache<String, Boolean>(sizeMax, expireAfter, false);
+        metadataRegistries = new ConcurrentHashMap<String, MetadataRegistry>();
+        refreshingRegistries = ConcurrentHashMap.newKeySet();
+        seedExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "kapua-metadata-registry-seed");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public static DatastoreCacheManager getInstance()
     {
         return instance;
     }
-    
-    public LocalCache<String, Boolean> getTopicsCache(){
-       return topicsCache;
+
+    /**
+     * Return the metadata registry of the account owning the given metadata index.<br>
+     * The seed (or the refresh, if the registry is expired) is started in background if needed: the registry returned may not be seeded yet.
+     *
+     * @param kapuaIndexName
+     * @return
+     */
+    public MetadataRegistry getMetadataRegistry(String kapuaIndexName)
+    {
+        MetadataRegistry registry = metadataRegistries.computeIfAbsent(kapuaIndexName, name -> new MetadataRegistry(name, expectedSize));
+        long now = System.currentTimeMillis();
+        if (registry.isSeedDue(now, seedRetryInterval)) {
+            seed(registry);
+        }
+        else if (registry.isSeeded() && now - registry.getSeededOn() > expireAfter) {
+            refresh(kapuaIndexName, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Remove a deleted metric from the metadata registry of the account owning the given metadata index (if any)
+     *
+     * @param kapuaIndexName
+     * @param metricId
+     */
+    public void removeMetric(String kapuaIndexName, String metricId)
+    {
+        MetadataRegistry registry = metadataRegistries.get(kapuaIndexName);
+        if (registry != null) {
+            registry.removeMetric(metricId);
+        }
+    }
+
+    /**
+     * Remove a deleted asset from the metadata registry of the account owning the given metadata index (if any)
+     *
+     * @param kapuaIndexName
+     * @param assetId
+     */
+    public void removeAsset(String kapuaIndexName, String assetId)
+    {
+        MetadataRegistry registry = metadataRegistries.get(kapuaIndexName);
+        if (registry != null) {
+            registry.removeAsset(assetId);
+        }
+    }
+
+    /**
+     * Drop the metadata registry of the account owning the given metadata index (i.e. after a delete by query).<br>
+     * The registry is seeded again from the metadata index the next time it is requested.
+     *
+     * @param kapuaIndexName
+     */
+    public void invalidateMetadataRegistry(String kapuaIndexName)
+    {
+        metadataRegistries.remove(kapuaIndexName);
     }
-    
-    public LocalCache<String, Boolean> getMetricsCache(){
-       return metricsCache;
+
+    private void seed(MetadataRegistry registry)
+    {
+        if (!registry.startSeeding()) {
+            return;
+        }
+        seedExecutor.execute(() -> {
+            try {
+                registry.seed(EsClient.getIngestClient(), seedPageSize);
+            }
+            catch (Exception e) {
+                // the client cannot be created: the seed is retried after the retry interval
+                registry.seedFailed();
+                logger.warn("Cannot seed the metadata registry: {}", e.getMessage());
+            }
+        });
     }
-    
-    public LocalCache<String, Boolean> getAssetsCache(){
-       return assetsCache;
+
+    private void refresh(String kapuaIndexName, MetadataRegistry expired)
+    {
+        if (!refreshingRegistries.add(kapuaIndexName)) {
+            return;
+        }
+        // the expired registry keeps being used until the new one is seeded
+        seedExecutor.execute(() -> {
+            try {
+                MetadataRegistry fresh = new MetadataRegistry(kapuaIndexName, Math.max(expectedSize, expired.size()));
+                fresh.startSeeding();
+                if (fresh.seed(EsClient.getIngestClient(), seedPageSize)) {
+                    metadataRegistries.replace(kapuaIndexName, expired, fresh);
+                }
+            }
+            catch (Exception e) {
+                logger.warn("Cannot refresh the metadata registry for {}: {}", kapuaIndexName, e.getMessage());
+            }
+            finally {
+                refreshingRegistries.remove(kapuaIndexName);
+            }
+        });
     }
 }
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import org.eclipse.kapua.service.datastore.DatastoreLoadService;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+
+/**
+ * Datastore load service implementation, reading the load of the Elasticsearch ingest client
+ *
+ * @since 1.0
+ */
+public class DatastoreLoadServiceImpl implements DatastoreLoadService
+{
+    @Override
+    public double getIngestLoad()
+    {
+        return EsClient.getIngestLoad();
+    }
+
+    @Override
+    public long getIngestRejectedCount()
+    {
+        return EsClient.getIngestRejectedCount();
+    }
+}
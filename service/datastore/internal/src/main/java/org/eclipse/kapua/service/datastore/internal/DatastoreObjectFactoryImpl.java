@@ -17,6 +17,7 @@ import org.eclipse.kapua.service.datastore.internal.model.MessageCreatorImpl;
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
 import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
 import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
 import org.eclipse.kapua.service.datastore.model.AssetInfo;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
@@ -39,7 +40,7 @@ public class DatastoreObjectFactoryImpl implements DatastoreObjectFactory
     @Override
     public MessageQuery newStorableMessageQuery()
     {
-        return null;
+        return new MessageQueryImpl();
     }
 
     @Override
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.datastore.DatastoreQuotaService;
+import org.eclipse.kapua.service.datastore.MessageStoreService;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.eclipse.kapua.service.datastore.internal.model.IngestQuotaImpl;
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+
+/**
+ * Datastore quota service implementation, reading the quotas from the {@link MessageStoreService} configuration of the account
+ * (see {@link LocalServicePlan})
+ *
+ * @since 1.0
+ */
+public class DatastoreQuotaServiceImpl implements DatastoreQuotaService
+{
+    @Override
+    public IngestQuota getIngestQuota(KapuaId scopeId)
+        throws KapuaException
+    {
+        MessageStoreService messageStoreService = KapuaLocator.getInstance().getService(MessageStoreService.class);
+        LocalServicePlan plan = new LocalServicePlan(messageStoreService.getConfigValues(scopeId));
+        return new IngestQuotaImpl(plan.getRxMessageRate(), plan.getRxByteRate());
+    }
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of primitive long values backed by an open addressing (linear probing) table.<br>
+ * Every entry costs a single long slot (the table is kept at most half full), with no per entry object.<br>
+ * <br>
+ * Lookups never lock: they read the current table through a volatile reference and the slots through an {@link AtomicLongArray}.
+ * Updates (add, remove, clear) are serialized among themselves. A lookup running concurrently with an update may not see the update yet.<br>
+ * The two values reserved as slot markers (0 and {@link Long#MIN_VALUE}) are kept in dedicated flags instead of the table.
+ *
+ * @since 1.0
+ */
+public class LongHashSet
+{
+    private static final long  EMPTY            = 0L;
+    private static final long  REMOVED          = Long.MIN_VALUE;
+    private static final int   MIN_CAPACITY     = 16;
+
+    private volatile AtomicLongArray table;
+    private volatile boolean         containsEmpty;
+    private volatile boolean         containsRemoved;
+
+    // guarded by this
+    private int                size;
+    private int                used;            // live entries plus removed markers
+
+    /**
+     * Create an empty set
+     *
+     * @param expectedSize
+     */
+    public LongHashSet(int expectedSize)
+    {
+        table = new AtomicLongArray(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Check if the value is in the set
+     *
+     * @param value
+     * @return
+     */
+    public boolean contains(long value)
+    {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        if (value == REMOVED) {
+            return containsRemoved;
+        }
+        long key = value;
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        for (int i = index(key, mask);; i = (i + 1) & mask) {
+            long slot = t.get(i);
+            if (slot == key) {
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Add the value to the set
+     *
+     * @param value
+     * @return true if the value was not in the set
+     */
+    public synchronized boolean add(long value)
+    {
+        if (value == EMPTY || value == REMOVED) {
+            if (contains(value)) {
+                return false;
+            }
+            setReserved(value, true);
+            size++;
+            return true;
+        }
+        long key = value;
+        if (contains(value)) {
+            return false;
+        }
+
+        if ((used + 1) * 2 > table.length()) {
+            // grow only if the table is really filled with live entries, otherwise just drop the removed markers
+            resize(size * 4 > table.length() ? table.length() * 2 : table.length());
+        }
+
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        int i = index(key, mask);
+        for (;; i = (i + 1) & mask) {
+            long slot = t.get(i);
+            if (slot == EMPTY || slot == REMOVED) {
+                if (slot == EMPTY) {
+                    used++;
+                }
+                break;
+            }
+        }
+        t.set(i, key);
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove the value from the set
+     *
+     * @param value
+     * @return true if the value was in the set
+     */
+    public synchronized boolean remove(long value)
+    {
+        if (value == EMPTY || value == REMOVED) {
+            if (!contains(value)) {
+                return false;
+            }
+            setReserved(value, false);
+            size--;
+            return true;
+        }
+        long key = value;
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        for (int i = index(key, mask);; i = (i + 1) & mask) {
+            long slot = t.get(i);
+            if (slot == key) {
+                // keep the probe chain of the following entries intact
+                t.set(i, REMOVED);
+                size--;
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Remove all the values from the set
+     */
+    public synchronized void clear()
+    {
+        table = new AtomicLongArray(MIN_CAPACITY);
+        containsEmpty = false;
+        containsRemoved = false;
+        size = 0;
+        used = 0;
+    }
+
+    /**
+     * Return the number of values in the set
+     *
+     * @return
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return the number of slots of the backing table
+     *
+     * @return
+     */
+    public int capacity()
+    {
+        return table.length();
+    }
+
+    private void resize(int capacity)
+    {
+        // the reserved values are not in the table
+        int tableSize = size - (containsEmpty ? 1 : 0) - (containsRemoved ? 1 : 0);
+        AtomicLongArray oldTable = table;
+        AtomicLongArray newTable = new AtomicLongArray(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldTable.length(); j++) {
+            long key = oldTable.get(j);
+            if (key == EMPTY || key == REMOVED) {
+                continue;
+            }
+            int i = index(key, mask);
+            while (newTable.get(i) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            newTable.set(i, key);
+        }
+        // the new table is fully populated before being published to the readers
+        table = newTable;
+        used = tableSize;
+    }
+
+    private void setReserved(long value, boolean contained)
+    {
+        if (value == EMPTY) {
+            containsEmpty = contained;
+        }
+        else {
+            containsRemoved = contained;
+        }
+    }
+
+    private static int index(long key, int mask)
+    {
+        // the keys are usually already hashes, just spread the high bits on the low ones
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -23,7 +23,6 @@ import java.util.UUID;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.commons.cache.LocalCache;
 import org.eclipse.kapua.commons.configuration.AbstractKapuaConfigurableService;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
 import org.eclipse.kapua.commons.util.KapuaDateUtils;
@@ -48,6 +47,7 @@ import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePl
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsAssetDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMessageDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricValueDAO;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTopicDAO;
 import org.eclipse.kapua.service.datastore.internal.model.DataIndexBy;
 import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
@@ -64,6 +64,7 @@ import org.eclipse.kapua.service.datastore.model.AssetInfoListResult;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageCreator;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MessageStreamHandler;
 import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.TopicInfoListResult;
@@ -74,6 +75,7 @@ import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -101,6 +103,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
     private final int            maxTopicDepth;
 
     private final Object         metadataUpdateSync;
+    private final boolean        metricValueEnabled;
 
     public MessageStoreServiceImpl(AccountService accountService, AuthorizationService authorizationService,
                                       PermissionFactory permissionFactory, EsSchema esSchema,
@@ -113,6 +116,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         this.esSchema = esSchema;
         this.maxTopicDepth = maxTopicDepth;
         this.metadataUpdateSync = metadataUpdateSync;
+        this.metricValueEnabled = DatastoreSettings.getInstance().getBoolean(DatastoreSettingKey.CONFIG_METRIC_VALUE_ENABLED, true);
     }
 
 
@@ -401,6 +405,49 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         }
     }
 
+    @Override
+    public long stream(KapuaId scopeId, MessageQuery query, MessageStreamHandler handler)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(query, "query");
+        ArgumentValidator.notNull(handler, "handler");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the stream
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return 0;
+        }
+
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        int pageSize = config.getInt(DatastoreSettingKey.ELASTICSEARCH_STREAM_PAGE_SIZE, 500);
+        long keepAlive = config.getLong(DatastoreSettingKey.ELASTICSEARCH_STREAM_KEEP_ALIVE, EsUtils.getScrollTimeout());
+
+        try {
+            String everyIndex = EsUtils.getAnyIndexName(scopeName);
+            return EsMessageDAO.connection(EsClient.getcurrent())
+                               .instance(everyIndex, EsSchema.MESSAGE_TYPE_NAME)
+                               .stream(query, pageSize, keepAlive, handler);
+        }
+        catch (KapuaException exc) {
+            throw exc;
+        }
+        catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
     private void checkDataAccess(KapuaId scopeId, Actions action)
         throws KapuaException
     {
@@ -473,24 +520,32 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
         String metricTypeName = schemaMetadata.getMetricTypeName();
         String assetTypeName = schemaMetadata.getAssetTypeName();
 
-        // Save message (the big one)
-        // TODO check response
-        EsMessageDAO.connection(EsClient.getcurrent())
-                    .instance(indexName, messageTypeName)
-                    .upsert(docBuilder.getMessageId(), docBuilder.getMessage());
+        MetadataRegistry metadataRegistry = DatastoreCacheManager.getInstance().getMetadataRegistry(kapuaIndexName);
+
+        // Save message (the big one) and the latest metric values
+        List<EsMetricDocumentBuilder> esMetricValues = metricValueEnabled ? docBuilder.getMetricValues() : null;
+        if (esMetricValues == null || esMetricValues.isEmpty()) {
+            // TODO check response
+            EsMessageDAO.connection(EsClient.getIngestClient())
+                        .instance(indexName, messageTypeName)
+                        .upsert(docBuilder.getMessageId(), docBuilder.getMessage());
+        }
+        else {
+            this.updateMessageAndMetricValues(indexName, messageTypeName, kapuaIndexName, schemaMetadata.getMetricValueTypeName(), docBuilder, esMetricValues);
+        }
 
         // Save topic. Look up topic in the cache, and cache it if it doesn't exist
-        if (!DatastoreCacheManager.getInstance().getTopicsCache().get(docBuilder.getTopicId())) {
+        if (!metadataRegistry.containsTopic(docBuilder.getTopicId())) {
 
             // The code is safe even without the synchronized block
             // Synchronize in order to let the first thread complete its update
             // then the others of the same type will find the cache updated and skip
             // the update.
             synchronized (this.metadataUpdateSync) {
-                if (!DatastoreCacheManager.getInstance().getTopicsCache().get(docBuilder.getTopicId())) {
+                if (!metadataRegistry.containsTopic(docBuilder.getTopicId())) {
                     UpdateResponse response = null;
                     try {
-                        response = EsTopicDAO.connection(EsClient.getcurrent())
+                        response = EsTopicDAO.connection(EsClient.getIngestClient())
                                              .instance(kapuaIndexName, topicTypeName)
                                              .upsert(docBuilder.getTopicId(), docBuilder.getTopicBuilder());
                         logger.debug(String.format("Upsert on topic succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, response.getId()));
@@ -499,23 +554,23 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                         logger.trace(String.format("Upsert failed because topic already exists [%s, %s]", docBuilder.getTopicId(), exc.getMessage()));
                     }
                     // Update cache if topic update is completed successfully
-                    DatastoreCacheManager.getInstance().getTopicsCache().put(docBuilder.getTopicId(), true);
+                    metadataRegistry.addTopic(docBuilder.getTopicId());
                 }
             }
         }
 
         // Save topic metrics
-        EsMetricDAO.connection(EsClient.getcurrent())
+        EsMetricDAO.connection(EsClient.getIngestClient())
                    .instance(kapuaIndexName, metricTypeName);
 
         BulkRequest bulkRequest = new BulkRequest();
         List<EsMetricDocumentBuilder> esTopicMetrics = docBuilder.getTopicMetrics();
         if (esTopicMetrics != null) {
             for (EsMetricDocumentBuilder esTopicMetric : esTopicMetrics) {
-                if (DatastoreCacheManager.getInstance().getMetricsCache().get(esTopicMetric.getId()))
+                if (metadataRegistry.containsMetric(esTopicMetric.getId()))
                     continue;
                 // this.esTopicMetricDAO.upsert(esTopicMetric);
-                bulkRequest.add(EsMetricDAO.connection(EsClient.getcurrent())
+                bulkRequest.add(EsMetricDAO.connection(EsClient.getIngestClient())
                                            .instance(kapuaIndexName, metricTypeName)
                                            .getUpsertRequest(esTopicMetric));
             }
@@ -528,7 +583,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
             // then the others of the same type will find the cache updated and skip
             // the update.
             synchronized (this.metadataUpdateSync) {
-                BulkResponse response = EsMetricDAO.connection(EsClient.getcurrent())
+                BulkResponse response = EsMetricDAO.connection(EsClient.getIngestClient())
                                                    .bulk(bulkRequest);
 
                 BulkItemResponse[] itemResponses = response.getItems();
@@ -543,28 +598,25 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
 
                         logger.debug(String.format("Upsert on topic metric succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, topicMetricId));
 
-                        if (DatastoreCacheManager.getInstance().getMetricsCache().get(topicMetricId))
-                            continue;
-
                         // Update cache if topic metric update is completed successfully
-                        DatastoreCacheManager.getInstance().getMetricsCache().put(topicMetricId, true);
+                        metadataRegistry.addMetric(topicMetricId);
                     }
                 }
             }
         }
 
         // Save asset
-        if (!DatastoreCacheManager.getInstance().getAssetsCache().get(docBuilder.getAssetId())) {
+        if (!metadataRegistry.containsAsset(docBuilder.getAssetId())) {
 
             // The code is safe even without the synchronized block
             // Synchronize in order to let the first thread complete its update
             // then the others of the same type will find the cache updated and skip
             // the update.
             synchronized (this.metadataUpdateSync) {
-                if (!DatastoreCacheManager.getInstance().getAssetsCache().get(docBuilder.getAssetId())) {
+                if (!metadataRegistry.containsAsset(docBuilder.getAssetId())) {
                     UpdateResponse response = null;
                     try {
-                        response = EsAssetDAO.connection(EsClient.getcurrent())
+                        response = EsAssetDAO.connection(EsClient.getIngestClient())
                                              .instance(kapuaIndexName, assetTypeName)
                                              .upsert(docBuilder.getAssetId(), docBuilder.getAssetBuilder());
                         logger.debug(String.format("Upsert on asset succesfully executed [%s.%s, %s]", kapuaIndexName, topicTypeName, response.getId()));
@@ -573,12 +625,54 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                         logger.trace(String.format("Upsert failed because asset already exists [%s, %s]", docBuilder.getAssetId(), exc.getMessage()));
                     }
                     // Update cache if asset update is completed successfully
-                    DatastoreCacheManager.getInstance().getAssetsCache().put(docBuilder.getAssetId(), true);
+                    metadataRegistry.addAsset(docBuilder.getAssetId());
                 }
             }
         }
     }
 
+    /**
+     * Save the message and the latest values of its metrics with a single bulk request, so storing the values does not cost another round
+     * trip on the ingest path.
+     */
+    private void updateMessageAndMetricValues(String indexName, String messageTypeName, String kapuaIndexName, String metricValueTypeName,
+                                              EsDocumentBuilder docBuilder, List<EsMetricDocumentBuilder> esMetricValues)
+        throws UnknownHostException, EsDatastoreException
+    {
+        BulkRequest bulkRequest = new BulkRequest();
+        bulkRequest.add(EsMessageDAO.connection(EsClient.getIngestClient())
+                                    .instance(indexName, messageTypeName)
+                                    .getUpsertReq(docBuilder.getMessageId(), docBuilder.getMessage()));
+
+        // No lock: the concurrent stores of the values of the same metric are ordered by the versions
+        EsMetricValueDAO metricValueDAO = EsMetricValueDAO.connection(EsClient.getIngestClient())
+                                                          .instance(kapuaIndexName, metricValueTypeName);
+        long timestamp = docBuilder.getMessageTimestamp().getTime();
+        for (EsMetricDocumentBuilder esMetricValue : esMetricValues) {
+            bulkRequest.add(metricValueDAO.getIndexRequest(esMetricValue, timestamp));
+        }
+
+        BulkResponse response = metricValueDAO.bulk(bulkRequest);
+        if (!response.hasFailures())
+            return;
+
+        BulkItemResponse[] itemResponses = response.getItems();
+        if (itemResponses[0].isFailed()) {
+            throw new EsDatastoreException(String.format("Message upsert failed [%s.%s, %s, %s]", indexName, messageTypeName, docBuilder.getMessageId(), itemResponses[0].getFailureMessage()));
+        }
+
+        for (int i = 1; i < itemResponses.length; i++) {
+            BulkItemResponse bulkItemResponse = itemResponses[i];
+            if (!bulkItemResponse.isFailed())
+                continue;
+            if (bulkItemResponse.getFailure().getStatus() == RestStatus.CONFLICT) {
+                logger.trace(String.format("Metric value not updated because a newer value is stored [%s]", bulkItemResponse.getId()));
+                continue;
+            }
+            logger.warn(String.format("Metric value update failed [%s.%s, %s, %s]", kapuaIndexName, metricValueTypeName, bulkItemResponse.getId(), bulkItemResponse.getFailureMessage()));
+        }
+    }
+
     private void resetCache(String accountName, String topic)
         throws Exception
     {
@@ -605,6 +699,7 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
 
         // Find all topics
         String everyIndex = EsUtils.getAnyIndexName(accountName);
+        MetadataRegistry metadataRegistry = DatastoreCacheManager.getInstance().getMetadataRegistry(EsUtils.getActualKapuaIndexName(accountName, 0));
 
         int pageSize = 1000;
         int offset = 0;
@@ -625,13 +720,11 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                       .query(metricQuery);
 
             totalHits = metrics.size();
-            LocalCache<String, Boolean> metricsCache = DatastoreCacheManager.getInstance().getMetricsCache();
             long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
             for (int i = 0; i < toBeProcessed; i++) {
                 String id = metrics.get(i).getId().toString();
-                if (metricsCache.get(id))
-                    metricsCache.remove(id);
+                metadataRegistry.removeMetric(id);
             }
 
             if (totalHits > pageSize)
@@ -664,13 +757,11 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                    .query(topicQuery);
 
             totalHits = topics.size();
-            LocalCache<String, Boolean> topicsCache = DatastoreCacheManager.getInstance().getTopicsCache();
             long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
             for (int i = 0; i < toBeProcessed; i++) {
-                String id = topics.get(0).getId().toString();
-                if (topicsCache.get(id))
-                    topicsCache.remove(id);
+                String id = topics.get(i).getId().toString();
+                metadataRegistry.removeTopic(id);
             }
             if (totalHits > pageSize)
                 offset += (pageSize + 1);
@@ -704,13 +795,11 @@ public class MessageStoreServiceImpl extends AbstractKapuaConfigurableService im
                                                        .query(assetQuery);
 
                 totalHits = assets.size();
-                LocalCache<String, Boolean> assetsCache = DatastoreCacheManager.getInstance().getAssetsCache();
                 long toBeProcessed = totalHits > pageSize ? pageSize : totalHits;
 
                 for (int i = 0; i < toBeProcessed; i++) {
                     String id = assets.get(i).getId().toString();
-                    if (assetsCache.get(id))
-                        assetsCache.remove(id);
+                    metadataRegistry.removeAsset(id);
                 }
                 if (totalHits > pageSize)
                     offset += (pageSize + 1);
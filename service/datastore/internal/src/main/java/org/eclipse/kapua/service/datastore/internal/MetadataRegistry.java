@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsTypeDAO;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Registry of the topic, metric and asset metadata documents already stored in the metadata index of an account.<br>
+ * Only a 64 bit hash of every document identifier is kept (see {@link LongHashSet}), so the memory needed is a few bytes per document
+ * and does not depend on the identifier length.<br>
+ * The registry is seeded with the identifiers of the documents already stored in the metadata index and then updated as new documents are
+ * stored, so a metadata document is upserted only the first time it is seen.<br>
+ * The entries do not expire one by one: the whole registry is replaced by a freshly seeded one when it gets older than the configured time to
+ * live (see {@link DatastoreCacheManager}), so the documents deleted by other nodes are eventually forgotten.
+ *
+ * @since 1.0
+ */
+public class MetadataRegistry
+{
+    private static final Logger       logger       = LoggerFactory.getLogger(MetadataRegistry.class);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final String      kapuaIndexName;
+    private final LongHashSet topics;
+    private final LongHashSet metrics;
+    private final LongHashSet assets;
+
+    private final AtomicBoolean seeding = new AtomicBoolean();
+    private volatile boolean    seeded;
+    private volatile long       seededOn;
+    private volatile long       lastSeedFailure;
+
+    /**
+     * Constructor
+     *
+     * @param kapuaIndexName the account metadata index name
+     * @param expectedSize
+     */
+    public MetadataRegistry(String kapuaIndexName, int expectedSize)
+    {
+        this.kapuaIndexName = kapuaIndexName;
+        this.topics = new LongHashSet(expectedSize);
+        this.metrics = new LongHashSet(expectedSize);
+        this.assets = new LongHashSet(expectedSize);
+    }
+
+    public boolean containsTopic(String topicId)
+    {
+        return topics.contains(hash(topicId));
+    }
+
+    public void addTopic(String topicId)
+    {
+        topics.add(hash(topicId));
+    }
+
+    public void removeTopic(String topicId)
+    {
+        topics.remove(hash(topicId));
+    }
+
+    public boolean containsMetric(String metricId)
+    {
+        return metrics.contains(hash(metricId));
+    }
+
+    public void addMetric(String metricId)
+    {
+        metrics.add(hash(metricId));
+    }
+
+    public void removeMetric(String metricId)
+    {
+        metrics.remove(hash(metricId));
+    }
+
+    public boolean containsAsset(String assetId)
+    {
+        return assets.contains(hash(assetId));
+    }
+
+    public void addAsset(String assetId)
+    {
+        assets.add(hash(assetId));
+    }
+
+    public void removeAsset(String assetId)
+    {
+        assets.remove(hash(assetId));
+    }
+
+    /**
+     * Return the number of registered documents
+     *
+     * @return
+     */
+    public int size()
+    {
+        return topics.size() + metrics.size() + assets.size();
+    }
+
+    /**
+     * Check if the registry has already been seeded
+     *
+     * @return
+     */
+    public boolean isSeeded()
+    {
+        return seeded;
+    }
+
+    /**
+     * Return the time the registry was seeded at, or 0 if it has not been seeded yet
+     *
+     * @return
+     */
+    public long getSeededOn()
+    {
+        return seededOn;
+    }
+
+    /**
+     * Check if a seed should be started: the registry is not seeded, no seed is running and the last failed seed (if any) is older than
+     * the retry interval
+     *
+     * @param now
+     * @param retryInterval
+     * @return
+     */
+    public boolean isSeedDue(long now, long retryInterval)
+    {
+        return !seeded && !seeding.get() && now - lastSeedFailure >= retryInterval;
+    }
+
+    /**
+     * Mark the seed as started
+     *
+     * @return false if a seed is already running
+     */
+    public boolean startSeeding()
+    {
+        return seeding.compareAndSet(false, true);
+    }
+
+    /**
+     * Mark the seed started by {@link #startSeeding()} as failed before it could run
+     */
+    public void seedFailed()
+    {
+        lastSeedFailure = System.currentTimeMillis();
+        seeding.set(false);
+    }
+
+    /**
+     * Load the identifiers of the topic, metric and asset documents stored in the account metadata index.<br>
+     * A missing metadata index seeds an empty registry. If the load fails for any other reason the registry is not marked as seeded,
+     * so the seed is retried: in the meanwhile the documents not registered are just upserted once more.<br>
+     * The seed must have been started by {@link #startSeeding()}.
+     *
+     * @param client
+     * @param pageSize
+     * @return true if the registry has been seeded
+     */
+    public boolean seed(Client client, int pageSize)
+    {
+        long start = System.currentTimeMillis();
+        try {
+            try {
+                EsTypeDAO.connection(client).instance(kapuaIndexName, EsSchema.TOPIC_TYPE_NAME).scrollIds(pageSize, id -> addTopic(id));
+                EsTypeDAO.connection(client).instance(kapuaIndexName, EsSchema.METRIC_TYPE_NAME).scrollIds(pageSize, id -> addMetric(id));
+                EsTypeDAO.connection(client).instance(kapuaIndexName, EsSchema.ASSET_TYPE_NAME).scrollIds(pageSize, id -> addAsset(id));
+                logger.info("Metadata registry for {} seeded with {} documents in {} ms", new Object[] { kapuaIndexName, size(), System.currentTimeMillis() - start });
+            }
+            catch (IndexNotFoundException e) {
+                logger.debug("Metadata registry for {} seeded empty: the metadata index does not exist yet", kapuaIndexName);
+            }
+            seededOn = System.currentTimeMillis();
+            seeded = true;
+            return true;
+        }
+        catch (Exception e) {
+            lastSeedFailure = System.currentTimeMillis();
+            logger.warn("Cannot seed the metadata registry for {}, the seed will be retried: {}", kapuaIndexName, e.getMessage());
+            return false;
+        }
+        finally {
+            seeding.set(false);
+        }
+    }
+
+    static long hash(String id)
+    {
+        return HASH_FUNCTION.hashString(id, StandardCharsets.UTF_8).asLong();
+    }
+}
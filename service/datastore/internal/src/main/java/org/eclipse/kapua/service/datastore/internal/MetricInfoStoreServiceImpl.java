@@ -13,6 +13,9 @@
 package org.eclipse.kapua.service.datastore.internal;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.configuration.AbstractKapuaConfigurableService;
@@ -31,15 +34,20 @@ import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.LocalServicePlan;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricDAO;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricValueDAO;
 import org.eclipse.kapua.service.datastore.internal.model.MetricInfoListResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.IdsPredicateImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MetricInfoQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
 import org.eclipse.kapua.service.datastore.model.MetricInfo;
 import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
 import org.eclipse.kapua.service.datastore.model.StorableId;
 import org.eclipse.kapua.service.datastore.model.query.MetricInfoQuery;
+import org.elasticsearch.index.IndexNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -116,6 +124,8 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsMetricDAO.connection(EsClient.getcurrent())
                        .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                        .deleteById(id.toString());
+
+            DatastoreCacheManager.getInstance().removeMetric(EsUtils.getActualKapuaIndexName(scopeName, 0), id.toString());
         }
         catch (Exception exc) {
             // TODO manage exeception
@@ -262,6 +272,8 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
                        .instance(everyIndex, EsSchema.METRIC_TYPE_NAME)
                        .deleteByQuery(query);
 
+            DatastoreCacheManager.getInstance().invalidateMetadataRegistry(EsUtils.getActualKapuaIndexName(scopeName, 0));
+
             return;
         }
         catch (Exception exc) {
@@ -271,6 +283,59 @@ public class MetricInfoStoreServiceImpl extends AbstractKapuaConfigurableService
         }
     }
 
+    @Override
+    public MetricInfoListResult findLastValues(KapuaId scopeId, List<String> clientIds, List<String> metricNames)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notEmptyOrNull(clientIds, "clientIds");
+        //
+        // Check Access
+        this.checkDataAccess(scopeId, Actions.read);
+
+        //
+        // Do the find
+        AccountInfo accountInfo = getAccountServicePlan(scopeId);
+        String scopeName = accountInfo.getAccount().getName();
+        LocalServicePlan accountServicePlan = accountInfo.getServicePlan();
+        long ttl = accountServicePlan.getDataTimeToLive() * DAY_MILLIS;
+
+        if (!accountServicePlan.getDataStorageEnabled() || ttl == LocalServicePlan.DISABLED) {
+            logger.debug("Storage not enabled for account {}, returning empty result", scopeName);
+            return new MetricInfoListResultImpl();
+        }
+
+        int maxResults = DatastoreSettings.getInstance().getInt(DatastoreSettingKey.CONFIG_METRIC_VALUE_MAX_RESULTS, 10000);
+        try {
+            EsMetricValueDAO metricValueDAO = EsMetricValueDAO.connection(EsClient.getcurrent())
+                                                              .instance(EsUtils.getActualKapuaIndexName(scopeName, 0), EsSchema.METRIC_VALUE_TYPE_NAME);
+
+            Set<String> uniqueClientIds = new LinkedHashSet<String>(clientIds);
+            Set<String> uniqueMetricNames = metricNames != null ? new LinkedHashSet<String>(metricNames) : null;
+            if (uniqueMetricNames == null || uniqueMetricNames.isEmpty() || (long) uniqueClientIds.size() * uniqueMetricNames.size() > maxResults) {
+                return metricValueDAO.query(uniqueClientIds, uniqueMetricNames, maxResults);
+            }
+
+            // Every value is looked up by id
+            List<String> ids = new ArrayList<String>(uniqueClientIds.size() * uniqueMetricNames.size());
+            for (String clientId : uniqueClientIds) {
+                for (String metricName : uniqueMetricNames) {
+                    ids.add(EsDocumentBuilder.getMetricValueKey(scopeName, clientId, metricName));
+                }
+            }
+            return metricValueDAO.find(ids);
+        }
+        catch (IndexNotFoundException exc) {
+            // nothing stored yet
+            return new MetricInfoListResultImpl();
+        }
+        catch (Exception exc) {
+            throw KapuaException.internalError(exc);
+        }
+    }
+
     private void checkDataAccess(KapuaId scopeId, Actions action)
         throws KapuaException
     {
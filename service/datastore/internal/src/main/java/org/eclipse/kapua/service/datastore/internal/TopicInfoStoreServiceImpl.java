@@ -139,6 +139,9 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
             EsTopicDAO.connection(EsClient.getcurrent())
                       .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                       .deleteById(id.toString());
+
+            // the metrics of the topics are deleted as well
+            DatastoreCacheManager.getInstance().invalidateMetadataRegistry(EsUtils.getActualKapuaIndexName(scopeName, 0));
         }
         catch (Exception exc) {
             // TODO manage exeception
@@ -310,6 +313,9 @@ public class TopicInfoStoreServiceImpl extends AbstractKapuaConfigurableService
                       .instance(everyIndex, EsSchema.TOPIC_TYPE_NAME)
                       .deleteByQuery(query);
 
+            // the metrics of the topics are deleted as well
+            DatastoreCacheManager.getInstance().invalidateMetadataRegistry(EsUtils.getActualKapuaIndexName(scopeName, 0));
+
             return;
         }
         catch (Exception exc) {
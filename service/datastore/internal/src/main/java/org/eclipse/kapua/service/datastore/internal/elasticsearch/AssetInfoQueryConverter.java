@@ -39,4 +39,10 @@ public class AssetInfoQueryConverter extends AbstractStorableQueryConverter<Asse
                              EsSchema.ASSET_TIMESTAMP,
                              EsSchema.ASSET_ACCOUNT};
     }
+
+    @Override
+    protected String getSortField()
+    {
+        return EsSchema.ASSET_TIMESTAMP;
+    }
 }
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+
+/**
+ * Elasticsearch client bounding the number of in-flight requests sent through the wrapped {@link TransportClient}.<br>
+ * Every request (admin requests included) needs a permit before being sent to the cluster and releases it once the response (or the failure) is received.
+ * If no permit is available within the acquire timeout the request fails with an {@link EsRejectedExecutionException}.<br>
+ * <br>
+ * The client also exports request latency, errors, rejections and in-flight requests metrics, and the connection status of every configured node.
+ *
+ * @since 1.0
+ */
+public class EsBoundedClient extends FilterClient
+{
+    private static final Logger s_logger = LoggerFactory.getLogger(EsBoundedClient.class);
+
+    private static final String METRIC_MODULE_NAME    = "datastore";
+    private static final String METRIC_COMPONENT_NAME = "client";
+
+    private final String          name;
+    private final TransportClient transportClient;
+    private final Semaphore       permits;
+    private final int             maxConcurrentRequests;
+    private final long            acquireTimeout;
+
+    private final Timer   metricRequestTime;
+    private final Counter metricRequestError;
+    private final Counter metricRequestRejected;
+
+    /**
+     * Constructor
+     *
+     * @param name client name (used as metric name prefix)
+     * @param transportClient wrapped client
+     * @param maxConcurrentRequests maximum number of in-flight requests
+     * @param acquireTimeout maximum time (in milliseconds) a request waits for a free slot
+     * @param metricsService
+     */
+    public EsBoundedClient(String name, TransportClient transportClient, int maxConcurrentRequests, long acquireTimeout, MetricsService metricsService)
+    {
+        super(transportClient);
+        this.name = name;
+        this.transportClient = transportClient;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.acquireTimeout = acquireTimeout;
+
+        metricRequestTime = metricsService.getTimer(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, name, "request", "time", "s");
+        metricRequestError = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, name, "request", "error", "count");
+        metricRequestRejected = metricsService.getCounter(METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, name, "request", "rejected", "count");
+
+        registerGauge(metricsService, (Gauge<Integer>) () -> maxConcurrentRequests - permits.availablePermits(), name, "request", "inflight");
+        registerGauge(metricsService, (Gauge<Integer>) () -> transportClient.connectedNodes().size(), name, "nodes", "connected");
+        for (TransportAddress address : transportClient.transportAddresses()) {
+            registerGauge(metricsService, (Gauge<Integer>) () -> isConnected(address) ? 1 : 0, name, "node", toMetricName(address), "connected");
+        }
+    }
+
+    /**
+     * Return the wrapped transport client
+     *
+     * @return
+     */
+    public TransportClient getTransportClient()
+    {
+        return transportClient;
+    }
+
+    /**
+     * Return the client name
+     *
+     * @return
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Return the fraction of the in-flight requests slots in use, from 0 (idle) to 1 (saturated)
+     *
+     * @return
+     */
+    public double getLoad()
+    {
+        return (double) (maxConcurrentRequests - permits.availablePermits()) / maxConcurrentRequests;
+    }
+
+    /**
+     * Return the number of requests rejected since the client creation because no slot was available
+     *
+     * @return
+     */
+    public long getRejectedCount()
+    {
+        return metricRequestRejected.getCount();
+    }
+
+    /**
+     * Check if at least one connection to the node listening to the given address is open
+     *
+     * @param address
+     * @return
+     */
+    public boolean isConnected(TransportAddress address)
+    {
+        List<DiscoveryNode> connectedNodes = transportClient.connectedNodes();
+        for (DiscoveryNode connectedNode : connectedNodes) {
+            if (address.equals(connectedNode.address())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(Action<Request, Response, RequestBuilder> action,
+                                                                                                                                                                         Request request,
+                                                                                                                                                                         ActionListener<Response> listener)
+    {
+        try {
+            if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+                metricRequestRejected.inc();
+                listener.onFailure(new EsRejectedExecutionException(String.format("No free slot available on client %s within %d ms", name, acquireTimeout)));
+                return;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.onFailure(e);
+            return;
+        }
+
+        Timer.Context timerContext = metricRequestTime.time();
+        try {
+            super.doExecute(action, request, new ActionListener<Response>() {
+
+                @Override
+                public void onResponse(Response response)
+                {
+                    release(timerContext);
+                    listener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable e)
+                {
+                    metricRequestError.inc();
+                    release(timerContext);
+                    listener.onFailure(e);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            metricRequestError.inc();
+            release(timerContext);
+            throw e;
+        }
+    }
+
+    private void release(Timer.Context timerContext)
+    {
+        timerContext.stop();
+        permits.release();
+    }
+
+    private static void registerGauge(MetricsService metricsService, Gauge<?> gauge, String... names)
+    {
+        try {
+            metricsService.registerGauge(gauge, METRIC_MODULE_NAME, METRIC_COMPONENT_NAME, names);
+        }
+        catch (KapuaException e) {
+            // the client has already been created once (i.e. after a close)
+            s_logger.debug("Cannot register gauge: {}", e.getMessage());
+        }
+    }
+
+    private static String toMetricName(TransportAddress address)
+    {
+        return address.toString().replaceAll("[^A-Za-z0-9]+", "_");
+    }
+}
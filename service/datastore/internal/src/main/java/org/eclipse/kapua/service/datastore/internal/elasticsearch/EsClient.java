@@ -12,63 +12,200 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
 import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.eclipse.kapua.service.metric.MetricsService;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
+/**
+ * Elasticsearch client manager.<br>
+ * Two clients are available, both connected to all the configured nodes ({@link DatastoreSettingKey#ELASTICSEARCH_NODES}):
+ * <ul>
+ * <li>the query client ({@link #getcurrent()}) for searches, counts and deletes</li>
+ * <li>the ingest client ({@link #getIngestClient()}) for the message store path (documents upserts and schema updates)</li>
+ * </ul>
+ * Each client bounds its own number of in-flight requests (see {@link EsBoundedClient}) so heavy queries cannot starve the ingest path.<br>
+ * Requests are balanced round robin among the connected nodes and failed over to the next node on connection errors,
+ * while disconnected nodes are automatically reconnected by the transport client nodes sampler.
+ * If sniffing is enabled the other nodes of the cluster are discovered and used as well.
+ */
 public class EsClient {
-	
-	@SuppressWarnings("unused")
+
 	private static final Logger   s_logger = LoggerFactory.getLogger(EsClient.class);
-			
-	private static Client client;
-	
+
 	private static final int DEFAULT_PORT = 9300;
 
+	private static final String QUERY_CLIENT_NAME = "query";
+	private static final String INGEST_CLIENT_NAME = "ingest";
+
+	private static final Object lock = new Object();
+
+	private static volatile EsBoundedClient queryClient;
+	private static volatile EsBoundedClient ingestClient;
+
+	/**
+	 * Get the query client
+	 *
+	 * @return
+	 * @throws UnknownHostException
+	 * @throws EsDatastoreException
+	 */
 	public static Client getcurrent() throws UnknownHostException, EsDatastoreException {
-		// TODO read hostname and port from configurations
+		EsBoundedClient client = queryClient;
 		if (client == null) {
-			DatastoreSettings config = DatastoreSettings.getInstance();
-			String esHost = System.getenv("ELASTICSEARCH_SERVICE_HOST");
-			int esPort = DEFAULT_PORT;
+			synchronized (lock) {
+				if (queryClient == null) {
+					queryClient = newClient(QUERY_CLIENT_NAME, DatastoreSettingKey.ELASTICSEARCH_CLIENT_QUERY_MAX_CONCURRENT_REQUESTS);
+				}
+				client = queryClient;
+			}
+		}
+		return client;
+	}
 
-			if(esHost == null) {
-				Map<String, String> map = config.getMap(String.class, DatastoreSettingKey.ELASTICSEARCH_NODES, "[0-9]+");
-				String[] esNodes = new String[]{};
-				if (map != null)
-					esNodes = map.values().toArray(new String[]{});
-
-				if (esNodes == null || esNodes.length == 0)
-					throw new EsDatastoreException("No elasticsearch nodes found");
-
-				String[] nodeParts = getNodeParts(esNodes[0]);
-
-				if (nodeParts.length > 0)
-					esHost = nodeParts[0];
-				if (nodeParts.length > 1) {
-					try {
-						Integer.parseInt(nodeParts[1]);
-					} catch (NumberFormatException e) {
-						throw new EsDatastoreException("Could not parse port: " + nodeParts[1]);
-					}
+	/**
+	 * Get the ingest client
+	 *
+	 * @return
+	 * @throws UnknownHostException
+	 * @throws EsDatastoreException
+	 */
+	public static Client getIngestClient() throws UnknownHostException, EsDatastoreException {
+		EsBoundedClient client = ingestClient;
+		if (client == null) {
+			synchronized (lock) {
+				if (ingestClient == null) {
+					ingestClient = newClient(INGEST_CLIENT_NAME, DatastoreSettingKey.ELASTICSEARCH_CLIENT_INGEST_MAX_CONCURRENT_REQUESTS);
 				}
+				client = ingestClient;
 			}
-			client = EsUtils.getEsClient(esHost, esPort, config.getString(DatastoreSettingKey.ELASTICSEARCH_CLUSTER));
 		}
 		return client;
 	}
-	
+
+	/**
+	 * Return the load of the ingest client (see {@link EsBoundedClient#getLoad()}), 0 if the client has not been created yet
+	 *
+	 * @return
+	 */
+	public static double getIngestLoad() {
+		EsBoundedClient client = ingestClient;
+		return client != null ? client.getLoad() : 0;
+	}
+
+	/**
+	 * Return the requests rejected by the ingest client (see {@link EsBoundedClient#getRejectedCount()}), 0 if the client has not been created yet
+	 *
+	 * @return
+	 */
+	public static long getIngestRejectedCount() {
+		EsBoundedClient client = ingestClient;
+		return client != null ? client.getRejectedCount() : 0;
+	}
+
+	/**
+	 * Close the clients (if any). The next client request will create new clients.
+	 */
+	public static void close() {
+		synchronized (lock) {
+			if (queryClient != null) {
+				queryClient.close();
+				queryClient = null;
+			}
+			if (ingestClient != null) {
+				ingestClient.close();
+				ingestClient = null;
+			}
+		}
+	}
+
+	private static EsBoundedClient newClient(String name, DatastoreSettingKey maxConcurrentRequestsKey) throws UnknownHostException, EsDatastoreException {
+		DatastoreSettings config = DatastoreSettings.getInstance();
+		List<InetSocketTransportAddress> addresses = getNodeAddresses();
+
+		Settings settings = Settings.settingsBuilder()
+				.put("cluster.name", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLUSTER))
+				.put("client.transport.sniff", config.getBoolean(DatastoreSettingKey.ELASTICSEARCH_CLIENT_SNIFF, false))
+				.put("client.transport.ping_timeout", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLIENT_PING_TIMEOUT, "5s"))
+				.put("client.transport.nodes_sampler_interval", config.getString(DatastoreSettingKey.ELASTICSEARCH_CLIENT_NODES_SAMPLER_INTERVAL, "5s"))
+				.build();
+
+		TransportClient transportClient = TransportClient.builder().settings(settings).build();
+		for (InetSocketTransportAddress address : addresses) {
+			transportClient.addTransportAddress(address);
+		}
+
+		int maxConcurrentRequests = config.getInt(maxConcurrentRequestsKey, 16);
+		long acquireTimeout = config.getLong(DatastoreSettingKey.ELASTICSEARCH_CLIENT_ACQUIRE_TIMEOUT, 30000L);
+		s_logger.info("Elasticsearch {} client created [nodes: {}, max concurrent requests: {}]", new Object[] { name, addresses, maxConcurrentRequests });
+
+		MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+		return new EsBoundedClient(name, transportClient, maxConcurrentRequests, acquireTimeout, metricsService);
+	}
+
+	/**
+	 * Return the addresses of all the configured nodes.<br>
+	 * If the ELASTICSEARCH_SERVICE_HOST environment variable is set, it (and the optional ELASTICSEARCH_SERVICE_PORT) takes precedence over the configured nodes.
+	 *
+	 * @return
+	 * @throws UnknownHostException
+	 * @throws EsDatastoreException
+	 */
+	public static List<InetSocketTransportAddress> getNodeAddresses() throws UnknownHostException, EsDatastoreException {
+		List<String> esNodes = new ArrayList<String>();
+
+		String esHost = System.getenv("ELASTICSEARCH_SERVICE_HOST");
+		if (esHost != null) {
+			String esPort = System.getenv("ELASTICSEARCH_SERVICE_PORT");
+			esNodes.add(esPort != null ? esHost + ":" + esPort : esHost);
+		}
+		else {
+			DatastoreSettings config = DatastoreSettings.getInstance();
+			Map<String, String> map = config.getMap(String.class, DatastoreSettingKey.ELASTICSEARCH_NODES, "[0-9]+");
+			if (map != null)
+				esNodes.addAll(new TreeMap<String, String>(map).values());
+		}
+
+		if (esNodes.isEmpty())
+			throw new EsDatastoreException("No elasticsearch nodes found");
+
+		List<InetSocketTransportAddress> addresses = new ArrayList<InetSocketTransportAddress>(esNodes.size());
+		for (String esNode : esNodes) {
+			String[] nodeParts = getNodeParts(esNode.trim());
+			if (nodeParts.length == 0 || nodeParts[0].isEmpty())
+				throw new EsDatastoreException("Could not parse node: " + esNode);
+
+			int esPort = DEFAULT_PORT;
+			if (nodeParts.length > 1) {
+				try {
+					esPort = Integer.parseInt(nodeParts[1]);
+				} catch (NumberFormatException e) {
+					throw new EsDatastoreException("Could not parse port: " + nodeParts[1]);
+				}
+			}
+			addresses.add(new InetSocketTransportAddress(InetAddress.getByName(nodeParts[0]), esPort));
+		}
+		return addresses;
+	}
+
 	private static String[] getNodeParts(String node)
 	{
 	    if (node==null)
 	        return new String[] {};
-	    
+
 	    String[] split = node.split(":");
 	    return split;
 	}
@@ -44,11 +44,13 @@ public class EsDocumentBuilder
 
     private String                messageId;
     private XContentBuilder       messageBuilder;
+    private Date                  messageTimestamp;
 
     private String                topicId;
     private XContentBuilder       topicBuilder;
     
     private List<EsMetricDocumentBuilder>   metricBuilders;
+    private List<EsMetricDocumentBuilder>   metricValueBuilders;
     
     private String                assetId;
     private XContentBuilder       assetBuilder;
@@ -60,15 +62,17 @@ public class EsDocumentBuilder
 
         messageId = null;
         messageBuilder = null;
+        messageTimestamp = null;
         topicId = null;
         topicBuilder = null;
         metricBuilders = null;
+        metricValueBuilders = null;
         assetId = null;
         assetBuilder = null;
         messageMetrics = null;
     }
 
-    private String getHashCode(String aString)
+    private static String getHashCode(String aString)
     {
         byte[] hashCode = Hashing.sha256()
                                  .hashString(aString, StandardCharsets.UTF_8)
@@ -80,20 +84,34 @@ public class EsDocumentBuilder
 
     private String getTopicKey(String topicFullName)
     {
-        return this.getHashCode(topicFullName);
+        return getHashCode(topicFullName);
+    }
+
+    /**
+     * Return the id of the latest value document of the metric of the asset
+     *
+     * @param accountName
+     * @param assetName
+     * @param metricName the metric name as published by the device
+     * @return
+     */
+    public static String getMetricValueKey(String accountName, String assetName, String metricName)
+    {
+        String metricValueFullName = String.format("%s/%s/%s", accountName, assetName, metricName);
+        return getHashCode(metricValueFullName);
     }
 
     private String getAssetKey(String accountName, String assetName)
     {
         String assetFullName = String.format("%s/%s", accountName, assetName);
-        String assetHashCode = this.getHashCode(assetFullName);
+        String assetHashCode = getHashCode(assetFullName);
         return assetHashCode;
     }
 
     private String getTopicMetricKey(String topicFullName, String metricMappedName)
     {
         String topicMetricFullName = String.format("%s/%s", topicFullName, metricMappedName);
-        String topicMetricHashCode = this.getHashCode(topicMetricFullName);
+        String topicMetricHashCode = getHashCode(topicMetricFullName);
         return topicMetricHashCode;
     }
 
@@ -147,9 +165,28 @@ public class EsDocumentBuilder
         return builder;
     }
 
+    private XContentBuilder getMetricValueBuilder(String account, String asset, String topic, String metricName, Object value, Date msgTimestamp, String msgId)
+        throws IOException
+    {
+
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+                                                 .startObject()
+                                                     .field(EsSchema.METRIC_VALUE_ACCOUNT, account)
+                                                     .field(EsSchema.METRIC_VALUE_ASSET, asset)
+                                                     .field(EsSchema.METRIC_VALUE_SEM_TOPIC, topic)
+                                                     .field(EsSchema.METRIC_VALUE_NAME, metricName)
+                                                     .field(EsSchema.METRIC_VALUE_TYPE, EsUtils.getEsTypeFromValue(value))
+                                                     .field(EsSchema.METRIC_VALUE_VALUE, EsUtils.convertToString(value))
+                                                     .field(EsSchema.METRIC_VALUE_TIMESTAMP, msgTimestamp.getTime())
+                                                     .field(EsSchema.METRIC_VALUE_MSG_ID, msgId)
+                                                 .endObject();
+
+        return builder;
+    }
+
     private XContentBuilder getMessageBuilder(String accountName,
                                               Message message, String asset, String topicFull,
-                                              String semTopic, String[] topicParts, String messageId,
+                                              String semTopic, List<String> topicParts, String messageId,
                                               Date indexedOn, Date receivedOn)
         throws IOException, ParseException
     {
@@ -195,6 +232,7 @@ public class EsDocumentBuilder
 
         Map<String, EsMetric> metricMappings = new HashMap<String, EsMetric>();
         List<EsMetricDocumentBuilder> metricBuilders = new ArrayList<EsMetricDocumentBuilder>();
+        List<EsMetricDocumentBuilder> metricValueBuilders = new ArrayList<EsMetricDocumentBuilder>();
 
         Map<String, Object> kapuaMetrics = payload.getMetrics();
         if (kapuaMetrics != null) {
@@ -229,6 +267,11 @@ public class EsDocumentBuilder
                 // TODO retrieve the uuid field
                 metricBuilder.setContent(this.getMetricBuilder(accountName, asset, semTopic, mappedName, metricValue, indexedOn, messageId));
                 metricBuilders.add(metricBuilder);
+
+                EsMetricDocumentBuilder metricValueBuilder = new EsMetricDocumentBuilder();
+                metricValueBuilder.setId(getMetricValueKey(accountName, asset, kapuaMetricName));
+                metricValueBuilder.setContent(this.getMetricValueBuilder(accountName, asset, semTopic, kapuaMetricName, metricValue, indexedOn, messageId));
+                metricValueBuilders.add(metricValueBuilder);
             }
             messageBuilder.field(EsSchema.MESSAGE_MTR, metrics);
         }
@@ -237,6 +280,7 @@ public class EsDocumentBuilder
 
         this.setMessageMetrics(metricMappings);
         this.setMetricBuilders(metricBuilders);
+        this.setMetricValueBuilders(metricValueBuilders);
         return messageBuilder;
     }
 
@@ -309,14 +353,14 @@ public class EsDocumentBuilder
     {
 
         assert accountName != null : "Account name must be supplied.";
-        assert messageBuilder != null : "Message must be supplied.";
+        assert message != null : "Message must be supplied.";
         assert messageId != null : "Message ID must be supplied.";
 
         String topicFull = message.getTopic();
         KapuaTopic kapuaTopic = new KapuaTopic(topicFull);
         String asset = kapuaTopic.getAsset();
         String semTopic = kapuaTopic.getSemanticTopic();
-        String[] topicParts = kapuaTopic.getTopicParts();
+        List<String> topicParts = kapuaTopic.getTopicTokens().getTokens();
 
         String topicId = this.getTopicKey(topicFull);
         this.setTopicId(topicId);
@@ -333,6 +377,7 @@ public class EsDocumentBuilder
 
         this.setMessageId(messageId.toString());
         this.setMessageBuilder(messageBuilder);
+        this.setMessageTimestamp(indexedOn);
         return this;
     }
 
@@ -356,6 +401,21 @@ public class EsDocumentBuilder
         this.messageBuilder = esMessage;
     }
 
+    /**
+     * Return the timestamp the message is indexed on
+     *
+     * @return
+     */
+    public Date getMessageTimestamp()
+    {
+        return messageTimestamp;
+    }
+
+    private void setMessageTimestamp(Date messageTimestamp)
+    {
+        this.messageTimestamp = messageTimestamp;
+    }
+
     public String getTopicId()
     {
         return topicId;
@@ -386,6 +446,21 @@ public class EsDocumentBuilder
         this.metricBuilders = metricBuilders;
     }
 
+    /**
+     * Return the latest value documents of the message metrics (null if the message has no payload)
+     *
+     * @return
+     */
+    public List<EsMetricDocumentBuilder> getMetricValues()
+    {
+        return metricValueBuilders;
+    }
+
+    private void setMetricValueBuilders(List<EsMetricDocumentBuilder> metricValueBuilders)
+    {
+        this.metricValueBuilders = metricValueBuilders;
+    }
+
     public String getAssetId()
     {
         return assetId;
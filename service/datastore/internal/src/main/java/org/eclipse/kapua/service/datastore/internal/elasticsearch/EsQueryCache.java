@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Short lived cache of the metadata (topics, metrics and assets) search responses.<br>
+ * The responses are indexed by the searched index and type and by the search source (query, sort, paging and fields), so equal searches share the same entry.<br>
+ * The whole cache is dropped when this node writes or deletes metadata; entries expire after {@link DatastoreSettingKey#CONFIG_QUERY_CACHE_EXPIRE_AFTER} seconds
+ * to bound the staleness of the metadata stored by the other nodes.
+ *
+ * @since 1.0
+ */
+public class EsQueryCache
+{
+    private static final EsQueryCache instance = new EsQueryCache();
+
+    private final boolean                             enabled;
+    private final LocalCache<String, SearchResponse> responses;
+
+    private EsQueryCache()
+    {
+        DatastoreSettings config = DatastoreSettings.getInstance();
+        enabled = config.getBoolean(DatastoreSettingKey.CONFIG_QUERY_CACHE_ENABLED, false);
+        responses = new LocalCache<>(config.getInt(DatastoreSettingKey.CONFIG_QUERY_CACHE_SIZE_MAXIMUM, 1000),
+                                     config.getInt(DatastoreSettingKey.CONFIG_QUERY_CACHE_EXPIRE_AFTER, 5),
+                                     null);
+    }
+
+    /**
+     * Get the query cache instance
+     *
+     * @return
+     */
+    public static EsQueryCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the cached response of the search or execute the search (caching its response) if not cached.<br>
+     * If the cache is disabled the search is always executed.
+     *
+     * @param indexName
+     * @param typeName
+     * @param builder
+     * @param timeout
+     * @return
+     */
+    public SearchResponse search(String indexName, String typeName, SearchRequestBuilder builder, TimeValue timeout)
+    {
+        if (!enabled)
+            return builder.get(timeout);
+
+        String key = String.format("%s/%s/%s", indexName, typeName, builder.toString());
+        SearchResponse response = responses.get(key);
+        if (response == null) {
+            response = builder.get(timeout);
+            responses.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Drop all the cached responses
+     */
+    public void invalidateAll()
+    {
+        responses.removeAll();
+    }
+}
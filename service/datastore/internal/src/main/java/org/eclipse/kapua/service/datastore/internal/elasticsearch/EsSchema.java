@@ -97,6 +97,16 @@ public class EsSchema
     public final static String  METRIC_MTR_MSG_ID           = "message_id";
     public final static String  METRIC_MTR_MSG_ID_FULL      = "metric.message_id";
 
+    public final static String  METRIC_VALUE_TYPE_NAME      = "metric_value";
+    public final static String  METRIC_VALUE_ACCOUNT        = "account";
+    public final static String  METRIC_VALUE_ASSET          = "asset";
+    public final static String  METRIC_VALUE_SEM_TOPIC      = "sem_topic";
+    public final static String  METRIC_VALUE_NAME           = "name";
+    public final static String  METRIC_VALUE_TYPE           = "type";
+    public final static String  METRIC_VALUE_VALUE          = "value";
+    public final static String  METRIC_VALUE_TIMESTAMP      = "timestamp";
+    public final static String  METRIC_VALUE_MSG_ID         = "message_id";
+
     public final static String  ASSET_TYPE_NAME             = "asset";
     public final static String  ASSET_NAME                  = "asset_name";
     public final static String  ASSET_ACCOUNT               = "account";
@@ -127,6 +137,7 @@ public class EsSchema
         private String                topicTypeName;
         private String                metricTypeName;
         private String                assetTypeName;
+        private String                metricValueTypeName;
         private String                indexName;
         private String                kapuaIndexName;
         //
@@ -148,6 +159,7 @@ public class EsSchema
             topicTypeName = TOPIC_TYPE_NAME;
             metricTypeName = METRIC_TYPE_NAME;
             assetTypeName = ASSET_TYPE_NAME;
+            metricValueTypeName = METRIC_VALUE_TYPE_NAME;
 
             messageMappingsCache = new HashMap<String, EsMetric>(100);
         }
@@ -181,6 +193,11 @@ public class EsSchema
         {
             return this.assetTypeName;
         }
+
+        public String getMetricValueTypeName()
+        {
+            return this.metricValueTypeName;
+        }
     }
 
     private Map<String, Metadata> schemaCache;
@@ -346,6 +363,62 @@ public class EsSchema
         return builder;
     }
 
+    /**
+     * The latest value of every metric of every asset of the account, one document per asset and metric name.<br>
+     * The value is kept as a string (to hold any metric type) and is not indexed: the documents are looked up by id or by asset and name only.
+     */
+    XContentBuilder getMetricValueTypeBuilder(boolean allEnable, boolean sourceEnable)
+        throws IOException
+    {
+        XContentBuilder builder = XContentFactory.jsonBuilder()
+         .startObject()
+             .startObject(METRIC_VALUE_TYPE_NAME)
+                 .startObject("_source")
+                     .field("enabled", sourceEnable)
+                 .endObject()
+                 .startObject("_all")
+                     .field("enabled", allEnable)
+                 .endObject()
+                 .field("dynamic", false)
+                 .startObject("properties")
+                     .startObject(METRIC_VALUE_ACCOUNT)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(METRIC_VALUE_ASSET)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(METRIC_VALUE_SEM_TOPIC)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(METRIC_VALUE_NAME)
+                         .field("type", "string")
+                         .field("index", "not_analyzed")
+                     .endObject()
+                     .startObject(METRIC_VALUE_TYPE)
+                         .field("type", "string")
+                         .field("index", "no")
+                     .endObject()
+                     .startObject(METRIC_VALUE_VALUE)
+                         .field("type", "string")
+                         .field("index", "no")
+                     .endObject()
+                     .startObject(METRIC_VALUE_TIMESTAMP)
+                         .field("type", "date")
+                     .endObject()
+                     .startObject(METRIC_VALUE_MSG_ID)
+                         .field("type", "string")
+                         .field("index", "no")
+                     .endObject()
+                 .endObject() // End Of Properties
+             .endObject() // End of type
+         .endObject();
+
+        return builder;
+    }
+
     private XContentBuilder getTopicTypeBuilder(boolean allEnable, boolean sourceEnable)
         throws IOException
     {
@@ -547,7 +620,7 @@ public class EsSchema
         throws IOException, EsDatastoreException
     {
 
-        Client esClient = EsClient.getcurrent();
+        Client esClient = EsClient.getIngestClient();
 
         // Check message type mapping
         GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
@@ -566,7 +639,7 @@ public class EsSchema
         throws IOException, EsDatastoreException
     {
 
-        Client esClient = EsClient.getcurrent();
+        Client esClient = EsClient.getIngestClient();
 
         // Check message type mapping
         GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
@@ -585,7 +658,7 @@ public class EsSchema
         throws IOException, EsDatastoreException
     {
 
-        Client esClient = EsClient.getcurrent();
+        Client esClient = EsClient.getIngestClient();
 
         // Check message type mapping
         GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
@@ -604,7 +677,7 @@ public class EsSchema
         throws IOException, EsDatastoreException
     {
 
-        Client esClient = EsClient.getcurrent();
+        Client esClient = EsClient.getIngestClient();
 
         // Check message type mapping
         GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
@@ -618,12 +691,31 @@ public class EsSchema
             s_logger.trace("Asset mapping created: " + builder.string());
         }
     }
+
+    private void initMetricValueMappings(String indexName, boolean allEnable, boolean sourceEnable)
+        throws IOException, EsDatastoreException
+    {
+
+        Client esClient = EsClient.getIngestClient();
+
+        // Check metric value type mapping
+        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
+        GetMappingsResponse mappingsResponse = esClient.admin().indices().getMappings(mappingsRequest).actionGet();
+        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = mappingsResponse.getMappings();
+        ImmutableOpenMap<String, MappingMetaData> map = mappings.get(indexName);
+        MappingMetaData metadata = map.get(METRIC_VALUE_TYPE_NAME);
+        if (metadata == null) {
+            XContentBuilder builder = this.getMetricValueTypeBuilder(allEnable, sourceEnable);
+            esClient.admin().indices().preparePutMapping(indexName).setType(METRIC_VALUE_TYPE_NAME).setSource(builder).execute().actionGet();
+            s_logger.trace("Metric_value mapping created: " + builder.string());
+        }
+    }
 //
 //    private void initAssetTopicMappings(String indexName, boolean allEnable, boolean sourceEnable)
 //        throws IOException, EsDatastoreException
 //    {
 //
-//        Client esClient = EsClient.getcurrent();
+//        Client esClient = EsClient.getIngestClient();
 //
 //        // Check message type mapping
 //        GetMappingsRequest mappingsRequest = new GetMappingsRequest().indices(indexName);
@@ -691,7 +783,7 @@ public class EsSchema
             currentMetadata = new Metadata();
 
             IndicesExistsResponse existsResponse = null;
-            Client esClient = EsClient.getcurrent();
+            Client esClient = EsClient.getIngestClient();
 
             // Check existence of the data index
             existsResponse = esClient.admin().indices()
@@ -736,6 +828,9 @@ public class EsSchema
                 this.initAssetMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
             }
 
+            // The metadata index may predate the metric values
+            this.initMetricValueMappings(newKapuaMetadataIdx, enableAllField, enableSourceField);
+
             currentMetadata.indexName = newIndex;
             currentMetadata.kapuaIndexName = newKapuaMetadataIdx;
             s_logger.info("Leaving updating metadata");
@@ -780,7 +875,7 @@ public class EsSchema
         }
 
         s_logger.trace("Sending dynamic message mappings: " + builder.string());
-        Client esClient = EsClient.getcurrent();
+        Client esClient = EsClient.getIngestClient();
         esClient.admin().indices().preparePutMapping(currentMetadata.indexName)
                 .setType(MESSAGE_TYPE_NAME)
                 .setSource(builder)
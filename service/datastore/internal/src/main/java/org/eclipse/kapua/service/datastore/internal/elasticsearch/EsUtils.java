@@ -332,6 +332,21 @@ public class EsUtils {
         throw new IllegalArgumentException(String.format("Unknown type [%s]", esType));
     }
 
+	/**
+	 * Convert a metric value to the string parsed back by {@link #convertToKapuaObject(String, String)}
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static String convertToString(Object value) {
+		if (value instanceof Date) {
+			SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+			simpleDateFormat.setTimeZone(KapuaDateUtils.getKapuaTimeZone());
+			return simpleDateFormat.format((Date) value);
+		}
+		return value == null ? null : String.valueOf(value);
+	}
+
 	public static Object convertToKapuaObject(String type, String value) throws ParseException {
 		
 		if (type.equals("string"))
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
+import org.eclipse.kapua.commons.util.TopicTokenizer;
+import org.eclipse.kapua.commons.util.TopicTokens;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,11 +36,13 @@ public class KapuaTopic {
 	public static final String EDC_ACCOUNT = "$EDC";
 	public static final String ALERT_TOPIC = "ALERT";
 
+	private static final TopicTokenizer topicTokenizer = TopicTokenizer.getInstance(TOPIC_SEPARATOR.charAt(0));
+
 	private String m_account;
 	private String m_asset;
 	private String m_semanticTopic;
 	private String m_fullTopic;
-	private String[] m_topicParts;
+	private TopicTokens m_topicTokens;
 
     public KapuaTopic(String accountName, String asset, String semTopic) throws KapuaInvalidTopicException
     {
@@ -59,15 +63,16 @@ public class KapuaTopic {
             return;
         }
 		
-		m_topicParts = fullTopic.split(TOPIC_SEPARATOR);
+		// the same topics are received over and over: they are parsed once and shared
+		m_topicTokens = topicTokenizer.parse(fullTopic);
 		
-		if (m_topicParts.length == 0) {
+		if (m_topicTokens.size() == 0) {
 			return;
 		}
 		
 		int accountIndex = 0;
-		if (m_topicParts[0].startsWith("$")) {
-			if (EDC_ACCOUNT.equals(m_topicParts[0])) {
+		if (m_topicTokens.get(0).startsWith("$")) {
+			if (EDC_ACCOUNT.equals(m_topicTokens.get(0))) {
 				accountIndex = 1;
 			} else {
 				return;
@@ -75,40 +80,38 @@ public class KapuaTopic {
 		}
 		
 		// Either a data topic or a control ($EDC) topic
-		if ((m_topicParts.length - accountIndex) < 2) {
+		if ((m_topicTokens.size() - accountIndex) < 2) {
 			// Special case: The topic is too small
 			String account = null;
-			if (m_topicParts.length > accountIndex) {
-				account = m_topicParts[accountIndex]; 
+			if (m_topicTokens.size() > accountIndex) {
+				account = m_topicTokens.get(accountIndex); 
 			}
 			throw new KapuaInvalidTopicException(account, fullTopic);
 		}
 		
 		// Account and asset parts exist
-		m_account = m_topicParts[accountIndex];
-		m_asset   = m_topicParts[accountIndex + 1];
+		m_account = m_topicTokens.get(accountIndex);
+		m_asset   = m_topicTokens.get(accountIndex + 1);
 		
-		if ((m_topicParts.length - accountIndex) == 2) {
+		if ((m_topicTokens.size() - accountIndex) == 2) {
 			// Special case: The topic does not have a semantic part
 			throw new KapuaInvalidTopicException(m_account, fullTopic);
 		}
 		
-		// Semantic topic exists at offset
-		int offset = accountIndex * (EDC_ACCOUNT.length() + 1);
-		
-		m_semanticTopic = fullTopic.substring(offset+m_account.length()+m_asset.length()+2);		
+		// Semantic topic starts after the account and asset parts
+		m_semanticTopic = m_topicTokens.getTail(accountIndex + 2);
 	}
 
 	public boolean isSystemTopic() {
-		return SYS_ACCOUNT.equals(m_topicParts[0]);
+		return SYS_ACCOUNT.equals(m_topicTokens.get(0));
 	}
 	
 	public boolean isKapuaTopic() {
-		return EDC_ACCOUNT.equals(m_topicParts[0]);
+		return EDC_ACCOUNT.equals(m_topicTokens.get(0));
 	}
 	
 	public boolean isAlertTopic() {
-		return ALERT_TOPIC.equals(m_topicParts[2]);
+		return ALERT_TOPIC.equals(m_topicTokens.get(2));
 	}
     
     public boolean isAnyAccount() {
@@ -165,7 +168,16 @@ public class KapuaTopic {
 	}
 	
 	public String[] getTopicParts() {
-		return m_topicParts;
+		return m_topicTokens != null ? m_topicTokens.toArray() : null;
+	}
+
+	/**
+	 * Return the (shared) tokens of the topic
+	 * 
+	 * @return the topic tokens or null if the topic is null or the multi level wildcard
+	 */
+	public TopicTokens getTopicTokens() {
+		return m_topicTokens;
 	}
 
 	@Override
@@ -31,14 +31,36 @@ public class LocalServicePlan
      */
     public static final int DISABLED = 0;
 
+    /**
+     * Service configuration key of the maximum rate of data messages per second accepted for the account
+     */
+    public static final String RX_MESSAGE_RATE = "rxMessageRate";
+
+    /**
+     * Service configuration key of the maximum rate of data message bytes per second accepted for the account
+     */
+    public static final String RX_BYTE_RATE = "rxByteRate";
+
     private Date expirationDate = null;
     private boolean dataStorageEnabled = true;
     private int dataTimeToLive = 90;
     private DataIndexBy dataIndexBy = DataIndexBy.SERVER_TIMESTAMP;
     private MetricsIndexBy metricsIndexBy = MetricsIndexBy.TIMESTAMP;
+    private long rxMessageRate = UNLIMITED;
+    private long rxByteRate = UNLIMITED;
     
     public LocalServicePlan(Map<String, Object> values)
     {
+        if (values != null) {
+            rxMessageRate = getRate(values, RX_MESSAGE_RATE);
+            rxByteRate = getRate(values, RX_BYTE_RATE);
+        }
+    }
+
+    private static long getRate(Map<String, Object> values, String key)
+    {
+        Object value = values.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : UNLIMITED;
     }
 
     public Date getExpirationDate()
@@ -90,4 +112,34 @@ public class LocalServicePlan
     {
         this.metricsIndexBy = metricsIndexBy;
     }
+
+    /**
+     * Get the maximum number of data messages per second accepted for the account ({@link #UNLIMITED} if not limited)
+     *
+     * @return
+     */
+    public long getRxMessageRate()
+    {
+        return rxMessageRate;
+    }
+
+    public void setRxMessageRate(long rxMessageRate)
+    {
+        this.rxMessageRate = rxMessageRate;
+    }
+
+    /**
+     * Get the maximum number of data message bytes per second accepted for the account ({@link #UNLIMITED} if not limited)
+     *
+     * @return
+     */
+    public long getRxByteRate()
+    {
+        return rxByteRate;
+    }
+
+    public void setRxByteRate(long rxByteRate)
+    {
+        this.rxByteRate = rxByteRate;
+    }
 }
@@ -64,9 +64,15 @@ public class MessageQueryConverter extends AbstractStorableQueryConverter<Messag
     @Override
     protected String[] getFields()
     {
-        return new String[] {EsMessageField.ACCOUNT.toString(),
-                             EsMessageField.ASSET.toString(),
-                             EsMessageField.SEMANTIC_TOPIC.toString(),
-                             EsMessageField.TIMESTAMP.toString()};
+        return new String[] {EsMessageField.ACCOUNT.field(),
+                             EsMessageField.ASSET.field(),
+                             EsMessageField.SEMANTIC_TOPIC.field(),
+                             EsMessageField.TIMESTAMP.field()};
+    }
+
+    @Override
+    protected String getSortField()
+    {
+        return EsSchema.MESSAGE_TIMESTAMP;
     }
 }
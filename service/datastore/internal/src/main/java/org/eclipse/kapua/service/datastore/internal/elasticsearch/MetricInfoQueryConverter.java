@@ -42,4 +42,9 @@ public class MetricInfoQueryConverter extends AbstractStorableQueryConverter<Met
                              EsSchema.METRIC_MTR_MSG_ID_FULL};
     }
 
+    @Override
+    protected String getSortField()
+    {
+        return EsSchema.METRIC_MTR_TIMESTAMP_FULL;
+    }
 }
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.model.MetricInfoImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.MetricInfo;
+
+/**
+ * Builds the {@link MetricInfo} of a latest metric value document
+ *
+ * @since 1.0
+ */
+public class MetricValueInfoBuilder
+{
+
+    private MetricInfo metricInfo;
+
+    public MetricValueInfoBuilder build(String id, Map<String, Object> source)
+        throws Exception
+    {
+        String scope = (String) source.get(EsSchema.METRIC_VALUE_ACCOUNT);
+        String asset = (String) source.get(EsSchema.METRIC_VALUE_ASSET);
+        String semTopic = (String) source.get(EsSchema.METRIC_VALUE_SEM_TOPIC);
+        String name = (String) source.get(EsSchema.METRIC_VALUE_NAME);
+        String type = EsUtils.convertToKapuaType((String) source.get(EsSchema.METRIC_VALUE_TYPE));
+        String value = (String) source.get(EsSchema.METRIC_VALUE_VALUE);
+        Number timestamp = (Number) source.get(EsSchema.METRIC_VALUE_TIMESTAMP);
+        String lastMsgId = (String) source.get(EsSchema.METRIC_VALUE_MSG_ID);
+
+        KapuaTopic topic = new KapuaTopic(scope, asset, semTopic);
+
+        MetricInfo finalMetricInfo = new MetricInfoImpl(scope, new StorableIdImpl(id));
+        finalMetricInfo.setFullTopicName(topic.getFullTopic());
+        finalMetricInfo.setName(name);
+        finalMetricInfo.setType(type);
+        finalMetricInfo.setValue(EsUtils.convertToKapuaObject(type, value));
+        finalMetricInfo.setLastMessageId(new StorableIdImpl(lastMsgId));
+        finalMetricInfo.setLastMessageTimestamp(new Date(timestamp.longValue()));
+
+        this.metricInfo = finalMetricInfo;
+        return this;
+    }
+
+    public MetricInfo getKapuaMetricInfo()
+    {
+        return this.metricInfo;
+    }
+}
@@ -29,42 +29,69 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.index.query.TermQueryBuilder;
 
+/**
+ * Convert the datastore predicates to Elasticsearch queries.<br>
+ * The predicates are plain yes/no conditions, so they are converted to filter context clauses: Elasticsearch skips the relevance scoring
+ * and can cache the clauses (the results are sorted by timestamp, see {@link org.eclipse.kapua.service.datastore.internal.model.query.AbstractStorableQueryConverter}).
+ *
+ * @since 1.0
+ */
 public class PredicateConverter
 {
+    /**
+     * Convert the predicate to a constant score (not scoring) query
+     *
+     * @param predicate
+     * @return
+     * @throws KapuaException
+     */
     public QueryBuilder toElasticsearchQuery(StorablePredicate predicate)
         throws KapuaException
+    {
+        return QueryBuilders.constantScoreQuery(this.toElasticsearchFilter(predicate));
+    }
+
+    /**
+     * Convert the predicate to a query to be used in filter context
+     *
+     * @param predicate
+     * @return
+     * @throws KapuaException
+     */
+    public QueryBuilder toElasticsearchFilter(StorablePredicate predicate)
+        throws KapuaException
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
 
         if (predicate instanceof AndPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchFilter((AndPredicate) predicate);
 
         if (predicate instanceof IdsPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchFilter((IdsPredicate) predicate);
 
         if (predicate instanceof TopicMatchPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchFilter((TopicMatchPredicate) predicate);
 
         if (predicate instanceof RangePredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchFilter((RangePredicate) predicate);
 
         if (predicate instanceof TermPredicate)
-            return toElasticsearchQuery(predicate);
+            return toElasticsearchFilter((TermPredicate) predicate);
 
         throw KapuaException.internalError(String.format("Unknown predicate type %s", this.getClass().getName()));
     }
     
-    public QueryBuilder toElasticsearchQuery(AndPredicate predicate) throws KapuaException 
+    public QueryBuilder toElasticsearchFilter(AndPredicate predicate) throws KapuaException 
     {
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
         for (StorablePredicate subPredicate:predicate.getPredicates())
-            boolQuery.must(this.toElasticsearchQuery(subPredicate));
+            boolQuery.filter(this.toElasticsearchFilter(subPredicate));
 
         return boolQuery;
     }
     
-    public QueryBuilder toElasticsearchQuery(IdsPredicate predicate) throws KapuaException 
+    public QueryBuilder toElasticsearchFilter(IdsPredicate predicate) throws KapuaException 
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
@@ -79,7 +106,7 @@ public class PredicateConverter
         return idsQuery;
     }
     
-    public QueryBuilder toElasticsearchQuery(TopicMatchPredicate predicate) throws KapuaException
+    public QueryBuilder toElasticsearchFilter(TopicMatchPredicate predicate) throws KapuaException
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
@@ -100,23 +127,23 @@ public class PredicateConverter
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
         
         if (kapuaTopic.isAnyAccount())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ACCOUNT.toString(), kapuaTopic.getAccount()));
+            boolQuery.filter(QueryBuilders.termQuery(EsMessageField.ACCOUNT.field(), kapuaTopic.getAccount()));
 
         if (kapuaTopic.isAnyAsset())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.ASSET.toString(), kapuaTopic.getAsset()));
+            boolQuery.filter(QueryBuilders.termQuery(EsMessageField.ASSET.field(), kapuaTopic.getAsset()));
 
         if (kapuaTopic.isAnySubtopic())
-            boolQuery.must(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.toString(), kapuaTopic.getSemanticTopic()));
+            boolQuery.filter(QueryBuilders.termQuery(EsMessageField.SEMANTIC_TOPIC.field(), kapuaTopic.getSemanticTopic()));
 
         return boolQuery;
     }
     
-    public QueryBuilder toElasticsearchQuery(RangePredicate predicate) throws KapuaException 
+    public QueryBuilder toElasticsearchFilter(RangePredicate predicate) throws KapuaException 
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().toString());
+        RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(predicate.getField().field());
         if (predicate.getMinValue() != null)
             rangeQuery.from(predicate.getMinValue());
         if (predicate.getMaxValue() != null)
@@ -125,12 +152,12 @@ public class PredicateConverter
         return rangeQuery;
     }
     
-    public QueryBuilder toElasticsearchQuery(TermPredicate predicate) throws KapuaException 
+    public QueryBuilder toElasticsearchFilter(TermPredicate predicate) throws KapuaException 
     {
         if (predicate == null)
             throw KapuaException.internalError(String.format("Predicate parameter is undefined"));
        
-        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().toString(), predicate.getValue());
+        TermQueryBuilder termQuery = QueryBuilders.termQuery(predicate.getField().field(), predicate.getValue());
        
         return termQuery;
     }
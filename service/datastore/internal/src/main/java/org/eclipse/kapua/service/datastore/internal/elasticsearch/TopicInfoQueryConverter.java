@@ -41,4 +41,9 @@ public class TopicInfoQueryConverter extends AbstractStorableQueryConverter<Topi
                              EsSchema.TOPIC_ACCOUNT};
     }
 
+    @Override
+    protected String getSortField()
+    {
+        return EsSchema.TOPIC_TIMESTAMP;
+    }
 }
@@ -20,6 +20,7 @@ import java.util.List;
 
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsQueryCache;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.AssetInfoBuilder;
@@ -121,23 +122,31 @@ public class EsAssetDAO
     public UpdateResponse upsert(AssetInfo assetInfo) throws IOException
     {
         EsDocumentBuilder assetInfoBuilder = new EsDocumentBuilder().build(assetInfo.getScope(), assetInfo);
-        return this.esTypeDAO.upsert(assetInfoBuilder.getAssetId(), assetInfoBuilder.getAssetBuilder());
+        UpdateResponse response = this.esTypeDAO.upsert(assetInfoBuilder.getAssetId(), assetInfoBuilder.getAssetBuilder());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse upsert(String id, XContentBuilder esAsset)
     {
-        return this.esTypeDAO.upsert(id, esAsset);
+        UpdateResponse response = this.esTypeDAO.upsert(id, esAsset);
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse update(AssetInfo assetInfo) throws IOException
     {
         EsDocumentBuilder assetInfoBuilder = new EsDocumentBuilder().build(assetInfo.getScope(), assetInfo);
-        return this.esTypeDAO.upsert(assetInfoBuilder.getAssetId(), assetInfoBuilder.getAssetBuilder());
+        UpdateResponse response = this.esTypeDAO.upsert(assetInfoBuilder.getAssetId(), assetInfoBuilder.getAssetBuilder());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse update(String id, XContentBuilder esAsset)
     {
-        return this.esTypeDAO.update(id, esAsset);
+        UpdateResponse response = this.esTypeDAO.update(id, esAsset);
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public void deleteById(String id)
@@ -148,12 +157,14 @@ public class EsAssetDAO
                  .setType(esTypeDAO.getTypeName())
                  .setId(id)
                  .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        EsQueryCache.getInstance().invalidateAll();
     }
 
     public void deleteByQuery(AssetInfoQuery query) throws KapuaException
     {
         PredicateConverter pc = new PredicateConverter();
         this.esTypeDAO.deleteByQuery(pc.toElasticsearchQuery(query.getPredicate()));
+        EsQueryCache.getInstance().invalidateAll();
     }
 //
 //    public void deleteByAccount(long start, long end)
@@ -176,7 +187,7 @@ public class EsAssetDAO
         
         AssetInfoQueryConverter aic = new AssetInfoQueryConverter();
         SearchRequestBuilder builder = aic.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
         
         if (searchHits == null || searchHits.getTotalHits() == 0)
@@ -212,8 +223,8 @@ public class EsAssetDAO
         throws Exception
     {
         AssetInfoQueryConverter converter = new AssetInfoQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchRequestBuilder builder = converter.toCountRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
 
         if (searchHits == null)
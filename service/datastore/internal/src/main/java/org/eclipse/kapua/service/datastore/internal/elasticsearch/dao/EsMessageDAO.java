@@ -27,9 +27,13 @@ import org.eclipse.kapua.service.datastore.internal.model.MessageListResultImpl;
 import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
 import org.eclipse.kapua.service.datastore.model.Message;
 import org.eclipse.kapua.service.datastore.model.MessageListResult;
+import org.eclipse.kapua.service.datastore.model.MessageStreamHandler;
 import org.eclipse.kapua.service.datastore.model.query.MessageQuery;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
@@ -37,9 +41,12 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class EsMessageDAO
 {
+    private static final Logger s_logger = LoggerFactory.getLogger(EsMessageDAO.class);
 
     private EsTypeDAO esTypeDAO;
 
@@ -273,11 +280,76 @@ public class EsMessageDAO
         return result;
     }
 
+    /**
+     * Scroll through all the messages matching the query, handing them over to the handler in the query sort order (by timestamp).<br>
+     * At most one page of messages is held in memory and the next page is requested only once the current page has been handled.
+     * The scroll context is released when the stream ends, also on failure.
+     *
+     * @param query
+     * @param pageSize number of messages fetched per scroll request
+     * @param keepAlive time (in milliseconds) the scroll context is kept alive between two requests
+     * @param handler
+     * @return the number of streamed messages
+     * @throws Exception
+     */
+    public long stream(MessageQuery query, int pageSize, long keepAlive, MessageStreamHandler handler)
+        throws Exception
+    {
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue scrollTimeout = TimeValue.timeValueMillis(keepAlive);
+
+        // every request goes through the client of the dao (the converter builds the request only)
+        MessageQueryConverter converter = new MessageQueryConverter();
+        SearchRequest searchRequest = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query)
+                                               .setFrom(0)
+                                               .setSize(pageSize)
+                                               .setScroll(scrollTimeout)
+                                               .request();
+        SearchResponse scrollResponse = esTypeDAO.getClient().search(searchRequest).actionGet(queryTimeout);
+
+        long count = 0;
+        String scrollId = scrollResponse.getScrollId();
+        MessageBuilder msgBuilder = new MessageBuilder();
+        try {
+            // Scroll until no hits are returned
+            while (scrollResponse.getHits().getHits().length > 0) {
+                for (SearchHit searchHit : scrollResponse.getHits().getHits()) {
+                    handler.handle(msgBuilder.build(searchHit, query.getFetchStyle()).getMessage());
+                    count++;
+                }
+
+                scrollResponse = esTypeDAO.getClient().searchScroll(new SearchScrollRequest(scrollId).scroll(scrollTimeout))
+                                          .actionGet(queryTimeout);
+                scrollId = scrollResponse.getScrollId();
+            }
+        }
+        finally {
+            clearScroll(scrollId, queryTimeout);
+        }
+        return count;
+    }
+
+    private void clearScroll(String scrollId, TimeValue timeout)
+    {
+        if (scrollId == null)
+            return;
+
+        try {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            esTypeDAO.getClient().clearScroll(clearScrollRequest).actionGet(timeout);
+        }
+        catch (Exception e) {
+            // the scroll context is released anyway by the cluster once the keep alive expires
+            s_logger.warn("Cannot clear scroll {}: {}", scrollId, e.getMessage());
+        }
+    }
+
     public long count(MessageQuery query)
         throws Exception
     {
         MessageQueryConverter converter = new MessageQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchRequestBuilder builder = converter.toCountRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
         SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
 
@@ -22,6 +22,7 @@ import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsQueryCache;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaInvalidTopicException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricInfoBuilder;
@@ -90,12 +91,16 @@ public class EsMetricDAO
     {
         EsDocumentBuilder docBuilder = new EsDocumentBuilder().build(metricInfo.getScope(), metricInfo);
         List<EsMetricDocumentBuilder> metricInfos = docBuilder.getTopicMetrics();
-        return esTypeDAO.upsert(metricInfos.get(0).getId(), metricInfos.get(0).getContent());
+        UpdateResponse response = esTypeDAO.upsert(metricInfos.get(0).getId(), metricInfos.get(0).getContent());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse upsert(EsMetricDocumentBuilder esTopicMetric)
     {
-        return esTypeDAO.upsert(esTopicMetric.getId(), esTopicMetric.getContent());
+        UpdateResponse response = esTypeDAO.upsert(esTopicMetric.getId(), esTopicMetric.getContent());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 //
 //    public void deleteByQuery(BoolQueryBuilder boolQuery)
@@ -160,6 +165,7 @@ public class EsMetricDAO
                  .setType(esTypeDAO.getTypeName())
                  .setId(id)
                  .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        EsQueryCache.getInstance().invalidateAll();
     }
 
     public void deleteByQuery(MetricInfoQuery query) throws KapuaException
@@ -167,6 +173,7 @@ public class EsMetricDAO
         StorablePredicate predicate = query.getPredicate();
         PredicateConverter pc = new PredicateConverter();
         this.esTypeDAO.deleteByQuery(pc.toElasticsearchQuery(predicate));
+        EsQueryCache.getInstance().invalidateAll();
     }
 //
 //    public void deleteByTopic(String asset,
@@ -212,7 +219,9 @@ public class EsMetricDAO
 
     public BulkResponse bulk(BulkRequest aBulkRequest)
     {
-        return this.esTypeDAO.bulk(aBulkRequest);
+        BulkResponse response = this.esTypeDAO.bulk(aBulkRequest);
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public MetricInfoListResult query(MetricInfoQuery query) throws Exception
@@ -224,7 +233,7 @@ public class EsMetricDAO
         
         MetricInfoQueryConverter mic = new MetricInfoQueryConverter();
         SearchRequestBuilder builder = mic.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), localQuery);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
         
         if (searchHits == null || searchHits.getTotalHits() == 0)
@@ -260,8 +269,8 @@ public class EsMetricDAO
         throws Exception
     {
         MetricInfoQueryConverter converter = new MetricInfoQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchRequestBuilder builder = converter.toCountRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
 
         if (searchHits == null)
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.kapua.commons.util.KapuaDateUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMetricDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.MetricValueInfoBuilder;
+import org.eclipse.kapua.service.datastore.internal.model.MetricInfoListResultImpl;
+import org.eclipse.kapua.service.datastore.model.MetricInfo;
+import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.SortOrder;
+
+/**
+ * Latest metric values DAO.<br>
+ * The value documents are indexed with the message timestamp as external version (external_gte), so a value is replaced in place by the
+ * values of the newer messages and of the messages with the same timestamp only: the value of an older message (i.e. stored late) is
+ * rejected with a version conflict.<br>
+ * The version is capped to the ingest time, so a device with a clock in the future cannot pin its values: its following messages replace
+ * them as soon as they are stored.
+ *
+ * @since 1.0
+ */
+public class EsMetricValueDAO
+{
+
+    private EsTypeDAO esTypeDAO;
+
+    private EsMetricValueDAO()
+    {
+    }
+
+    public static EsMetricValueDAO connection(Client client)
+        throws UnknownHostException
+    {
+        EsMetricValueDAO metricValueDAO = new EsMetricValueDAO();
+        metricValueDAO.esTypeDAO = EsTypeDAO.connection(client);
+        return metricValueDAO;
+    }
+
+    public EsMetricValueDAO instance(String indexName, String typeName)
+    {
+        this.esTypeDAO.instance(indexName, typeName);
+        return this;
+    }
+
+    /**
+     * Return the request replacing the latest value if it is not newer than the timestamp
+     *
+     * @param esMetricValue
+     * @param timestamp the message timestamp
+     * @return
+     */
+    public IndexRequest getIndexRequest(EsMetricDocumentBuilder esMetricValue, long timestamp)
+    {
+        long ingestTime = KapuaDateUtils.getKapuaSysDate().getTime();
+        IndexRequest idxRequest = new IndexRequest(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), esMetricValue.getId());
+        return idxRequest.source(esMetricValue.getContent())
+                         .versionType(VersionType.EXTERNAL_GTE)
+                         .version(Math.min(timestamp, ingestTime));
+    }
+
+    public BulkResponse bulk(BulkRequest aBulkRequest)
+    {
+        return this.esTypeDAO.bulk(aBulkRequest);
+    }
+
+    /**
+     * Get the latest values by id (real time, the index refresh is not waited for)
+     *
+     * @param ids
+     * @return the values found, in the order of the ids
+     * @throws Exception
+     */
+    public MetricInfoListResult find(Collection<String> ids)
+        throws Exception
+    {
+        if (ids.isEmpty())
+            return new MetricInfoListResultImpl();
+
+        MultiGetRequestBuilder builder = esTypeDAO.getClient().prepareMultiGet();
+        for (String id : ids) {
+            builder.add(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), id);
+        }
+        MultiGetResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+
+        List<MetricInfo> metricInfos = new ArrayList<MetricInfo>();
+        MetricValueInfoBuilder metricValueInfoBuilder = new MetricValueInfoBuilder();
+        for (MultiGetItemResponse itemResponse : response.getResponses()) {
+            if (itemResponse.isFailed() || !itemResponse.getResponse().isExists())
+                continue;
+            metricInfos.add(metricValueInfoBuilder.build(itemResponse.getId(), itemResponse.getResponse().getSourceAsMap()).getKapuaMetricInfo());
+        }
+
+        MetricInfoListResult result = new MetricInfoListResultImpl(null, metricInfos.size());
+        result.addAll(metricInfos);
+        return result;
+    }
+
+    /**
+     * Query the latest values of the assets
+     *
+     * @param assets
+     * @param metricNames the metric names, or null (or empty) for all the metrics
+     * @param limit
+     * @return the values sorted by asset and metric name. The next key is set if more than limit values match.
+     * @throws Exception
+     */
+    public MetricInfoListResult query(Collection<String> assets, Collection<String> metricNames, int limit)
+        throws Exception
+    {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                                              .filter(QueryBuilders.termsQuery(EsSchema.METRIC_VALUE_ASSET, assets));
+        if (metricNames != null && !metricNames.isEmpty())
+            query.filter(QueryBuilders.termsQuery(EsSchema.METRIC_VALUE_NAME, metricNames));
+
+        // not cached: the values change with every message
+        SearchResponse response = esTypeDAO.getClient().prepareSearch(esTypeDAO.getIndexName())
+                                           .setTypes(esTypeDAO.getTypeName())
+                                           .setQuery(query)
+                                           .addSort(EsSchema.METRIC_VALUE_ASSET, SortOrder.ASC)
+                                           .addSort(EsSchema.METRIC_VALUE_NAME, SortOrder.ASC)
+                                           .setSize(limit)
+                                           .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchHits searchHits = response.getHits();
+
+        if (searchHits == null || searchHits.getTotalHits() == 0)
+            return new MetricInfoListResultImpl();
+
+        List<MetricInfo> metricInfos = new ArrayList<MetricInfo>();
+        MetricValueInfoBuilder metricValueInfoBuilder = new MetricValueInfoBuilder();
+        for (SearchHit searchHit : searchHits.getHits()) {
+            metricInfos.add(metricValueInfoBuilder.build(searchHit.getId(), searchHit.getSource()).getKapuaMetricInfo());
+        }
+
+        Object nextKey = null;
+        if (searchHits.getTotalHits() > limit) {
+            nextKey = limit;
+        }
+
+        MetricInfoListResult result = new MetricInfoListResultImpl(nextKey, (int) searchHits.getTotalHits());
+        result.addAll(metricInfos);
+        return result;
+    }
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsQueryCache;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaInvalidTopicException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
@@ -86,23 +87,31 @@ public class EsTopicDAO
     public UpdateResponse upsert(TopicInfo topicInfo) throws IOException, KapuaInvalidTopicException
     {
         EsDocumentBuilder documentBuilder = new EsDocumentBuilder().build(topicInfo.getScope(), topicInfo);
-        return this.esTypeDAO.upsert(documentBuilder.getTopicId(), documentBuilder.getTopicBuilder());
+        UpdateResponse response = this.esTypeDAO.upsert(documentBuilder.getTopicId(), documentBuilder.getTopicBuilder());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse upsert(String id, XContentBuilder esAsset)
     {
-        return this.esTypeDAO.upsert(id, esAsset);
+        UpdateResponse response = this.esTypeDAO.upsert(id, esAsset);
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse update(TopicInfo topicInfo) throws IOException, KapuaInvalidTopicException
     {
         EsDocumentBuilder documentBuilder = new EsDocumentBuilder().build(topicInfo.getScope(), topicInfo);
-        return this.esTypeDAO.update(documentBuilder.getTopicId(), documentBuilder.getTopicBuilder());
+        UpdateResponse response = this.esTypeDAO.update(documentBuilder.getTopicId(), documentBuilder.getTopicBuilder());
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public UpdateResponse update(String id, XContentBuilder esAsset)
     {
-        return this.esTypeDAO.update(id, esAsset);
+        UpdateResponse response = this.esTypeDAO.update(id, esAsset);
+        EsQueryCache.getInstance().invalidateAll();
+        return response;
     }
 
     public void deleteById(String id)
@@ -113,6 +122,7 @@ public class EsTopicDAO
                  .setType(esTypeDAO.getTypeName())
                  .setId(id)
                  .get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        EsQueryCache.getInstance().invalidateAll();
     }
 
     public void deleteByQuery(TopicInfoQuery query) throws KapuaException
@@ -120,6 +130,7 @@ public class EsTopicDAO
         StorablePredicate predicate = query.getPredicate();
         PredicateConverter pc = new PredicateConverter();
         this.esTypeDAO.deleteByQuery(pc.toElasticsearchQuery(predicate));
+        EsQueryCache.getInstance().invalidateAll();
     }
 //
 //    public BoolQueryBuilder getQueryBtTopic(String account,
@@ -256,7 +267,7 @@ public class EsTopicDAO
         
         TopicInfoQueryConverter tic = new TopicInfoQueryConverter();
         SearchRequestBuilder builder = tic.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
         
         if (searchHits == null || searchHits.getTotalHits() == 0)
@@ -292,8 +303,8 @@ public class EsTopicDAO
         throws Exception
     {
         TopicInfoQueryConverter converter = new TopicInfoQueryConverter();
-        SearchRequestBuilder builder = converter.toSearchRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
-        SearchResponse response = builder.get(TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
+        SearchRequestBuilder builder = converter.toCountRequestBuilder(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), query);
+        SearchResponse response = EsQueryCache.getInstance().search(esTypeDAO.getIndexName(), esTypeDAO.getTypeName(), builder, TimeValue.timeValueMillis(EsUtils.getQueryTimeout()));
         SearchHits searchHits = response.getHits();
 
         if (searchHits == null)
@@ -13,6 +13,7 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
@@ -215,6 +216,39 @@ public class EsTypeDAO
         }
     }
 
+    /**
+     * Scroll through the identifiers of all the documents of the type, without fetching the documents source
+     *
+     * @param pageSize number of identifiers fetched per scroll request
+     * @param idConsumer
+     */
+    public void scrollIds(int pageSize, Consumer<String> idConsumer)
+    {
+
+        TimeValue queryTimeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue scrollTimeout = TimeValue.timeValueMillis(EsUtils.getScrollTimeout());
+
+        SearchResponse scrollResponse = this.client.prepareSearch(this.getIndexName())
+                                                   .setTypes(this.getTypeName())
+                                                   .setFetchSource(false)
+                                                   .addSort("_doc", SortOrder.ASC)
+                                                   .setScroll(scrollTimeout)
+                                                   .setSize(pageSize)
+                                                   .get(queryTimeout);
+
+        // Scroll until no hits are returned
+        while (scrollResponse.getHits().getHits().length > 0) {
+            for (SearchHit hit : scrollResponse.getHits().hits()) {
+                idConsumer.accept(hit.id());
+            }
+
+            scrollResponse = this.client.prepareSearchScroll(scrollResponse.getScrollId())
+                                        .setScroll(scrollTimeout)
+                                        .execute()
+                                        .actionGet(queryTimeout);
+        }
+    }
+
     public BulkResponse bulk(BulkRequest bulkRequest)
     {
 
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.model;
+
+import org.eclipse.kapua.service.datastore.model.IngestQuota;
+
+public class IngestQuotaImpl implements IngestQuota
+{
+    private final long messageRate;
+    private final long byteRate;
+
+    public IngestQuotaImpl(long messageRate, long byteRate)
+    {
+        this.messageRate = messageRate;
+        this.byteRate = byteRate;
+    }
+
+    @Override
+    public long getMessageRate()
+    {
+        return messageRate;
+    }
+
+    @Override
+    public long getByteRate()
+    {
+        return byteRate;
+    }
+}
@@ -20,8 +20,11 @@ import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreExc
 import org.eclipse.kapua.service.datastore.internal.elasticsearch.PredicateConverter;
 import org.eclipse.kapua.service.datastore.model.Storable;
 import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.eclipse.kapua.service.datastore.model.query.SortDirection;
 import org.eclipse.kapua.service.datastore.model.query.StorableQuery;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 
 public abstract class AbstractStorableQueryConverter<S extends Storable, Q extends StorableQuery<S>>
 {
@@ -49,7 +52,11 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
         searchReqBuilder.setTypes(type)
                         .setQuery(pc.toElasticsearchQuery(query.getPredicate()))
                         .setFrom(query.getOffset())
-                        .setSize(query.getLimit());
+                        .setSize(query.getLimit())
+                        // the query is not scoring: sort by timestamp (unmapped on a still empty index)
+                        .addSort(SortBuilders.fieldSort(this.getSortField())
+                                             .order(SortDirection.ASC.equals(query.getSort()) ? SortOrder.ASC : SortOrder.DESC)
+                                             .unmappedType("date"));
         
         String[] includes = this.getIncludes(query.getFetchStyle());
         String[] excludes = this.getExcludes(query.getFetchStyle());
@@ -68,4 +75,11 @@ public abstract class AbstractStorableQueryConverter<S extends Storable, Q exten
     protected abstract String[] getExcludes(MessageFetchStyle fetchStyle);
     
     protected abstract String[] getFields();
+
+    /**
+     * Return the (date) field the search results are sorted by
+     *
+     * @return
+     */
+    protected abstract String getSortField();
 }
@@ -22,9 +22,24 @@ public enum DatastoreSettingKey implements SettingKey
     ELASTICSEARCH_CLUSTER("datastore.elasticsearch.cluster"),
     ELASTICSEARCH_TOPIC_MAX_DEPTH("datastore.elasticsearch.topic.max.depth"),
     ELASTICSEARCH_IDX_REFRESH_INTERVAL("datastore.elasticsearch.index.refresh_interval"),
+    ELASTICSEARCH_CLIENT_SNIFF("datastore.elasticsearch.client.sniff"),
+    ELASTICSEARCH_CLIENT_PING_TIMEOUT("datastore.elasticsearch.client.ping_timeout"),
+    ELASTICSEARCH_CLIENT_NODES_SAMPLER_INTERVAL("datastore.elasticsearch.client.nodes_sampler_interval"),
+    ELASTICSEARCH_CLIENT_ACQUIRE_TIMEOUT("datastore.elasticsearch.client.acquire_timeout"),
+    ELASTICSEARCH_CLIENT_INGEST_MAX_CONCURRENT_REQUESTS("datastore.elasticsearch.client.ingest.max_concurrent_requests"),
+    ELASTICSEARCH_CLIENT_QUERY_MAX_CONCURRENT_REQUESTS("datastore.elasticsearch.client.query.max_concurrent_requests"),
+    ELASTICSEARCH_STREAM_PAGE_SIZE("datastore.elasticsearch.stream.page_size"),
+    ELASTICSEARCH_STREAM_KEEP_ALIVE("datastore.elasticsearch.stream.keep_alive"),
 
-    CONFIG_CACHE_LOCAL_EXPIRE_AFTER("datastore.cache.local.expire.after"),
-    CONFIG_CACHE_LOCAL_SIZE_MAXIMUM("datastore.cache.local.size.maximum"),
+    CONFIG_METADATA_REGISTRY_EXPECTED_SIZE("datastore.metadata.registry.expected_size"),
+    CONFIG_METADATA_REGISTRY_SEED_PAGE_SIZE("datastore.metadata.registry.seed.page_size"),
+    CONFIG_METADATA_REGISTRY_SEED_RETRY_INTERVAL("datastore.metadata.registry.seed.retry_interval"),
+    CONFIG_METADATA_REGISTRY_EXPIRE_AFTER("datastore.metadata.registry.expire_after"),
+    CONFIG_QUERY_CACHE_ENABLED("datastore.query.cache.enabled"),
+    CONFIG_QUERY_CACHE_SIZE_MAXIMUM("datastore.query.cache.size.maximum"),
+    CONFIG_QUERY_CACHE_EXPIRE_AFTER("datastore.query.cache.expire_after"),
+    CONFIG_METRIC_VALUE_ENABLED("datastore.metric.value.enabled"),
+    CONFIG_METRIC_VALUE_MAX_RESULTS("datastore.metric.value.max_results"),
     CONFIG_TOPIC_MAX_DEPTH("datastore.elasticsearch.topic.max.depth"),
     CONFIG_DATA_STORAGE_ENABLE_TIMING_PROFILE("datastore.enableTimingProfile"),
     CONFIG_DATA_STORAGE_TIMING_PROFILE_THRESHOLD("datastore.timingProfileThreshold");
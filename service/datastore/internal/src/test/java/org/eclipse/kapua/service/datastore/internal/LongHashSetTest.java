@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void addedValuesShouldBeFoundUntilRemoved() {
+        // Given
+        LongHashSet set = new LongHashSet(4);
+
+        // When
+        for (long i = -1000; i < 1000; i++) {
+            assertThat(set.add(i * 7919)).isTrue();
+        }
+        assertThat(set.add(7919)).isFalse();
+
+        // Then
+        assertThat(set.size()).isEqualTo(2000);
+        assertThat(set.contains(0)).isTrue();
+        assertThat(set.contains(7919 * 500)).isTrue();
+        assertThat(set.contains(3)).isFalse();
+
+        assertThat(set.remove(7919 * 500)).isTrue();
+        assertThat(set.remove(7919 * 500)).isFalse();
+        assertThat(set.contains(7919 * 500)).isFalse();
+        assertThat(set.contains(7919 * 501)).isTrue();
+        assertThat(set.size()).isEqualTo(1999);
+    }
+
+    @Test
+    public void reservedValuesShouldBeStored() {
+        // Given
+        LongHashSet set = new LongHashSet(16);
+
+        // When
+        set.add(0L);
+        set.add(Long.MIN_VALUE);
+
+        // Then
+        assertThat(set.contains(0L)).isTrue();
+        assertThat(set.contains(Long.MIN_VALUE)).isTrue();
+        assertThat(set.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void reservedValuesShouldNotCollideWithTheirNeighbours() {
+        // Given
+        LongHashSet set = new LongHashSet(16);
+
+        // When
+        set.add(0L);
+        set.add(Long.MIN_VALUE);
+
+        // Then
+        assertThat(set.contains(1L)).isFalse();
+        assertThat(set.contains(Long.MIN_VALUE + 1)).isFalse();
+        assertThat(set.add(1L)).isTrue();
+        assertThat(set.add(Long.MIN_VALUE + 1)).isTrue();
+        assertThat(set.size()).isEqualTo(4);
+
+        assertThat(set.remove(0L)).isTrue();
+        assertThat(set.remove(0L)).isFalse();
+        assertThat(set.contains(0L)).isFalse();
+        assertThat(set.contains(1L)).isTrue();
+        assertThat(set.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void removedSlotsShouldBeReclaimedWithoutGrowing() {
+        // Given
+        LongHashSet set = new LongHashSet(64);
+        int capacity = set.capacity();
+
+        // When
+        for (long i = 0; i < 100000; i++) {
+            set.add(i);
+            set.remove(i);
+        }
+
+        // Then
+        assertThat(set.size()).isEqualTo(0);
+        assertThat(set.capacity()).isEqualTo(capacity);
+    }
+
+    @Test
+    public void metadataIdentifiersShouldBeHashedConsistently() {
+        // Given
+        MetadataRegistry registry = new MetadataRegistry(".kapua-sys", 16);
+
+        // When
+        registry.addTopic("topic-id");
+        registry.addMetric("metric-id");
+
+        // Then
+        assertThat(registry.containsTopic("topic-id")).isTrue();
+        assertThat(registry.containsMetric("topic-id")).isFalse();
+        assertThat(registry.containsMetric("metric-id")).isTrue();
+        assertThat(registry.containsAsset("metric-id")).isFalse();
+
+        registry.removeTopic("topic-id");
+        assertThat(registry.containsTopic("topic-id")).isFalse();
+        assertThat(registry.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetadataRegistryTest {
+
+    private static final String INDEX = ".kapua-sys";
+
+    private Node   node;
+    private Client client;
+
+    @Before
+    public void startNode() throws Exception {
+        Settings settings = Settings.settingsBuilder()
+                .put("path.home", Files.createTempDirectory("kapua-metadata-registry").toString())
+                .put("http.enabled", false)
+                .build();
+        node = NodeBuilder.nodeBuilder().local(true).settings(settings).node();
+        client = node.client();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+    }
+
+    @After
+    public void stopNode() {
+        node.close();
+    }
+
+    @Test
+    public void seedShouldLoadTheStoredDocuments() throws Exception {
+        // Given
+        client.prepareIndex(INDEX, EsSchema.TOPIC_TYPE_NAME, "topic-id").setSource("{}").get();
+        client.prepareIndex(INDEX, EsSchema.METRIC_TYPE_NAME, "metric-id").setSource("{}").get();
+        client.prepareIndex(INDEX, EsSchema.ASSET_TYPE_NAME, "asset-id").setSource("{}").get();
+        client.admin().indices().prepareRefresh(INDEX).get();
+        MetadataRegistry registry = new MetadataRegistry(INDEX, 16);
+
+        // When
+        assertThat(registry.startSeeding()).isTrue();
+        boolean seeded = registry.seed(client, 1);
+
+        // Then
+        assertThat(seeded).isTrue();
+        assertThat(registry.isSeeded()).isTrue();
+        assertThat(registry.getSeededOn()).isGreaterThan(0);
+        assertThat(registry.containsTopic("topic-id")).isTrue();
+        assertThat(registry.containsMetric("metric-id")).isTrue();
+        assertThat(registry.containsAsset("asset-id")).isTrue();
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void missingIndexShouldSeedAnEmptyRegistry() throws Exception {
+        // Given
+        MetadataRegistry registry = new MetadataRegistry(INDEX, 16);
+
+        // When
+        registry.startSeeding();
+        boolean seeded = registry.seed(client, 100);
+
+        // Then
+        assertThat(seeded).isTrue();
+        assertThat(registry.size()).isEqualTo(0);
+        assertThat(registry.isSeedDue(System.currentTimeMillis(), 0)).isFalse();
+    }
+
+    @Test
+    public void failedSeedShouldBeRetried() throws Exception {
+        // Given
+        MetadataRegistry registry = new MetadataRegistry(INDEX, 16);
+        Client unavailableClient = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[] { Client.class }, (proxy, method, args) -> {
+            throw new NoNodeAvailableException("unavailable");
+        });
+
+        // When
+        assertThat(registry.isSeedDue(System.currentTimeMillis(), 60000)).isTrue();
+        registry.startSeeding();
+        assertThat(registry.startSeeding()).isFalse();
+        boolean seeded = registry.seed(unavailableClient, 100);
+
+        // Then
+        assertThat(seeded).isFalse();
+        assertThat(registry.isSeeded()).isFalse();
+        long now = System.currentTimeMillis();
+        assertThat(registry.isSeedDue(now, 60000)).isFalse();
+        assertThat(registry.isSeedDue(now + 60000, 60000)).isTrue();
+        assertThat(registry.startSeeding()).isTrue();
+    }
+}
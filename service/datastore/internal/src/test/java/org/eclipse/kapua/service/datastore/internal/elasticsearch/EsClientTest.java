@@ -10,9 +10,11 @@
 package org.eclipse.kapua.service.datastore.internal.elasticsearch;
 
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.junit.Test;
 
 import java.net.UnknownHostException;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -21,11 +23,33 @@ public class EsClientTest {
     @Test
     public void elascticSearchClientShouldDefaultToLocalhost() throws EsDatastoreException, UnknownHostException {
         // When
-        TransportClient client = (TransportClient) EsClient.getcurrent();
+        TransportClient client = ((EsBoundedClient) EsClient.getcurrent()).getTransportClient();
 
         // Then
         String host = client.listedNodes().get(0).address().getHost();
         assertThat(host).isEqualTo("127.0.0.1");
     }
 
+    @Test
+    public void ingestAndQueryClientsShouldBeSeparated() throws EsDatastoreException, UnknownHostException {
+        // When
+        EsBoundedClient queryClient = (EsBoundedClient) EsClient.getcurrent();
+        EsBoundedClient ingestClient = (EsBoundedClient) EsClient.getIngestClient();
+
+        // Then
+        assertThat(ingestClient).isNotSameAs(queryClient);
+        assertThat(ingestClient.getTransportClient()).isNotSameAs(queryClient.getTransportClient());
+        assertThat(ingestClient.getTransportClient().transportAddresses()).isEqualTo(queryClient.getTransportClient().transportAddresses());
+    }
+
+    @Test
+    public void nodeAddressesShouldDefaultToTransportPort() throws EsDatastoreException, UnknownHostException {
+        // When
+        List<InetSocketTransportAddress> addresses = EsClient.getNodeAddresses();
+
+        // Then
+        assertThat(addresses).hasSize(1);
+        assertThat(addresses.get(0).getPort()).isEqualTo(9300);
+    }
+
 }
\ No newline at end of file
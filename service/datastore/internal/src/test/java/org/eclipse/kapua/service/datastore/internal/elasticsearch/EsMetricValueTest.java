@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.dao.EsMetricValueDAO;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.eclipse.kapua.service.datastore.model.MetricInfo;
+import org.eclipse.kapua.service.datastore.model.MetricInfoListResult;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EsMetricValueTest
+{
+    private static final String ACCOUNT = "kapua-sys";
+    private static final String INDEX   = ".kapua-sys";
+
+    private Path             dataDir;
+    private Node             node;
+    private Client           client;
+    private EsMetricValueDAO metricValueDAO;
+
+    @Before
+    public void startNode()
+        throws Exception
+    {
+        dataDir = Files.createTempDirectory("kapua-metric-value");
+        Settings settings = Settings.settingsBuilder()
+                                    .put("path.home", dataDir.toString())
+                                    .put("http.enabled", false)
+                                    .build();
+        node = NodeBuilder.nodeBuilder().local(true).settings(settings).node();
+        client = node.client();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+
+        client.admin().indices().prepareCreate(INDEX)
+              .addMapping(EsSchema.METRIC_VALUE_TYPE_NAME, new EsSchema().getMetricValueTypeBuilder(false, true))
+              .get();
+        metricValueDAO = EsMetricValueDAO.connection(client).instance(INDEX, EsSchema.METRIC_VALUE_TYPE_NAME);
+    }
+
+    @After
+    public void stopNode()
+    {
+        node.close();
+    }
+
+    @Test
+    public void newerValuesShouldReplaceOlderValuesOnly()
+        throws Exception
+    {
+        // Given
+        store("message-1", "device-1", 2000, "temperature", 21.5d);
+
+        // When a newer and then an older (late) message are stored
+        store("message-2", "device-1", 3000, "temperature", 22.5d);
+        BulkResponse late = store("message-3", "device-1", 1000, "temperature", 20.5d);
+
+        // Then
+        assertThat(late.getItems()[0].isFailed()).isTrue();
+        assertThat(late.getItems()[0].getFailure().getStatus()).isEqualTo(RestStatus.CONFLICT);
+
+        MetricInfoListResult values = metricValueDAO.find(Collections.singletonList(EsDocumentBuilder.getMetricValueKey(ACCOUNT, "device-1", "temperature")));
+        assertThat(values).hasSize(1);
+        MetricInfo value = values.get(0);
+        assertThat(value.getName()).isEqualTo("temperature");
+        assertThat(value.getType()).isEqualTo("double");
+        assertThat(value.getValue(Double.class)).isEqualTo(22.5d);
+        assertThat(value.getLastMessageId().toString()).isEqualTo("message-2");
+        assertThat(value.getLastMessageTimestamp()).isEqualTo(new Date(3000));
+        assertThat(value.getFullTopicName()).isEqualTo("kapua-sys/device-1/sensors/room");
+    }
+
+    @Test
+    public void valuesWithTheSameTimestampShouldReplaceEachOther()
+        throws Exception
+    {
+        // Given
+        store("message-1", "device-1", 2000, "temperature", 21.5d);
+
+        // When
+        BulkResponse sameTimestamp = store("message-2", "device-1", 2000, "temperature", 22.5d);
+
+        // Then
+        assertThat(sameTimestamp.hasFailures()).isFalse();
+        MetricInfoListResult values = metricValueDAO.find(Collections.singletonList(EsDocumentBuilder.getMetricValueKey(ACCOUNT, "device-1", "temperature")));
+        assertThat(values.get(0).getValue(Double.class)).isEqualTo(22.5d);
+    }
+
+    @Test
+    public void valuesFromTheFutureShouldNotBePinned()
+        throws Exception
+    {
+        // Given a device with a clock one day ahead
+        long now = System.currentTimeMillis();
+        store("message-1", "device-1", now + 86400000L, "temperature", 21.5d);
+
+        // When the device clock is fixed
+        Thread.sleep(5);
+        BulkResponse fixed = store("message-2", "device-1", System.currentTimeMillis(), "temperature", 22.5d);
+
+        // Then
+        assertThat(fixed.hasFailures()).isFalse();
+        MetricInfoListResult values = metricValueDAO.find(Collections.singletonList(EsDocumentBuilder.getMetricValueKey(ACCOUNT, "device-1", "temperature")));
+        assertThat(values.get(0).getValue(Double.class)).isEqualTo(22.5d);
+        assertThat(values.get(0).getLastMessageId().toString()).isEqualTo("message-2");
+    }
+
+    @Test
+    public void findShouldSkipTheMissingValues()
+        throws Exception
+    {
+        // Given
+        store("message-1", "device-1", 1000, "counter", 7);
+
+        // When
+        MetricInfoListResult values = metricValueDAO.find(Arrays.asList(EsDocumentBuilder.getMetricValueKey(ACCOUNT, "device-1", "counter"),
+                                                                        EsDocumentBuilder.getMetricValueKey(ACCOUNT, "device-2", "counter")));
+
+        // Then
+        assertThat(values).hasSize(1);
+        assertThat(values.get(0).getValue(Integer.class)).isEqualTo(7);
+    }
+
+    @Test
+    public void queryShouldReturnTheValuesOfTheDevices()
+        throws Exception
+    {
+        // Given
+        store("message-1", "device-1", 1000, "counter", 7);
+        store("message-2", "device-1", 1000, "label", "room");
+        store("message-3", "device-2", 1000, "counter", 8);
+        store("message-4", "device-3", 1000, "counter", 9);
+        client.admin().indices().prepareRefresh(INDEX).get();
+
+        // When
+        MetricInfoListResult values = metricValueDAO.query(Arrays.asList("device-1", "device-2"), null, 10);
+        MetricInfoListResult counters = metricValueDAO.query(Arrays.asList("device-1", "device-2"), Collections.singletonList("counter"), 10);
+        MetricInfoListResult limited = metricValueDAO.query(Arrays.asList("device-1", "device-2"), null, 2);
+
+        // Then
+        assertThat(values).extracting(MetricInfo::getName).containsExactly("counter", "label", "counter");
+        assertThat(values.get(1).getValue(String.class)).isEqualTo("room");
+        assertThat(values.getNextKey()).isNull();
+        assertThat(counters).extracting(MetricInfo::getFullTopicName).containsExactly("kapua-sys/device-1/sensors/room", "kapua-sys/device-2/sensors/room");
+        assertThat(limited).hasSize(2);
+        assertThat(limited.getNextKey()).isEqualTo(2);
+        assertThat(limited.getTotalCount()).isEqualTo(3);
+    }
+
+    private BulkResponse store(String messageId, String asset, long timestamp, String metricName, Object metricValue)
+        throws Exception
+    {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put(metricName, metricValue);
+        PayloadImpl payload = new PayloadImpl();
+        payload.setMetrics(metrics);
+        StorableIdImpl id = new StorableIdImpl(messageId);
+        Date indexedOn = new Date(timestamp);
+        MessageImpl message = new MessageImpl(id, indexedOn, String.format("%s/%s/sensors/room", ACCOUNT, asset));
+        message.setPayload(payload);
+
+        EsDocumentBuilder docBuilder = new EsDocumentBuilder().build(ACCOUNT, id, message, indexedOn, indexedOn);
+        BulkRequest bulkRequest = new BulkRequest();
+        for (EsMetricDocumentBuilder esMetricValue : docBuilder.getMetricValues()) {
+            bulkRequest.add(metricValueDAO.getIndexRequest(esMetricValue, docBuilder.getMessageTimestamp().getTime()));
+        }
+        return metricValueDAO.bulk(bulkRequest);
+    }
+}
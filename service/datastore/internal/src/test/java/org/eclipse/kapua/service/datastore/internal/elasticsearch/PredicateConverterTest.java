@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.service.datastore.internal.model.query.AndPredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.RangePredicateImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.junit.Test;
+
+public class PredicateConverterTest {
+
+    @Test
+    public void predicatesShouldBeConvertedToNotScoringFilters() throws KapuaException {
+        // Given
+        AndPredicateImpl predicate = new AndPredicateImpl();
+        predicate.addPredicate(new TermPredicateImpl(EsMessageField.ASSET, "asset-1"));
+        predicate.addPredicate(new RangePredicateImpl(EsMessageField.TIMESTAMP, 1000L, 2000L));
+
+        // When
+        String query = new PredicateConverter().toElasticsearchQuery(predicate).toString();
+
+        // Then
+        assertThat(query).contains("\"constant_score\"")
+                         .contains("\"filter\"")
+                         .contains("\"asset-1\"")
+                         .doesNotContain("\"must\"");
+    }
+
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.internal.elasticsearch.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsMessageField;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.model.query.MessageQueryImpl;
+import org.eclipse.kapua.service.datastore.internal.model.query.TermPredicateImpl;
+import org.eclipse.kapua.service.datastore.model.query.MessageFetchStyle;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Streams the messages of a scroll answered by a mocked client, page by page
+ */
+public class EsMessageDAOTest
+{
+    private Client              client;
+    private List<String>        streamed;
+    private int                 messageCount;
+
+    @Before
+    public void setUp()
+    {
+        client = mock(Client.class);
+        streamed = new ArrayList<>();
+        messageCount = 0;
+        clearScrollReturns();
+    }
+
+    @Test
+    public void testStreamPagesAcrossBatches()
+        throws Exception
+    {
+        // Given 5 messages in pages of 2, the scroll id changing between pages
+        searchReturns(page("scroll-1", 2));
+        scrollReturns(page("scroll-2", 2), page("scroll-3", 1), page("scroll-4", 0));
+
+        // When
+        long count = stream(2);
+
+        // Then
+        assertEquals(5, count);
+        assertEquals(Arrays.asList("message-0", "message-1", "message-2", "message-3", "message-4"), streamed);
+
+        ArgumentCaptor<SearchRequest> searchRequest = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(client).search(searchRequest.capture());
+        assertEquals(TimeValue.timeValueMillis(60000), searchRequest.getValue().scroll().keepAlive());
+
+        ArgumentCaptor<SearchScrollRequest> scrollRequests = ArgumentCaptor.forClass(SearchScrollRequest.class);
+        verify(client, times(3)).searchScroll(scrollRequests.capture());
+        List<String> scrollIds = new ArrayList<>();
+        for (SearchScrollRequest scrollRequest : scrollRequests.getAllValues()) {
+            scrollIds.add(scrollRequest.scrollId());
+            assertEquals(TimeValue.timeValueMillis(60000), scrollRequest.scroll().keepAlive());
+        }
+        assertEquals(Arrays.asList("scroll-1", "scroll-2", "scroll-3"), scrollIds);
+
+        assertScrollCleared("scroll-4");
+    }
+
+    @Test
+    public void testStreamEmpty()
+        throws Exception
+    {
+        searchReturns(page("scroll-1", 0));
+
+        assertEquals(0, stream(2));
+
+        verify(client, never()).searchScroll(any(SearchScrollRequest.class));
+        assertScrollCleared("scroll-1");
+    }
+
+    @Test
+    public void testScrollClearedOnHandlerFailure()
+        throws Exception
+    {
+        // Given a handler failing on the first message of the second page (i.e. the client went away)
+        searchReturns(page("scroll-1", 2));
+        scrollReturns(page("scroll-2", 2), page("scroll-3", 0));
+
+        // When
+        try {
+            EsMessageDAO.connection(client)
+                        .instance("index", "message")
+                        .stream(query(), 2, 60000L, message -> {
+                            if (streamed.size() == 2) {
+                                throw new IOException("Broken pipe");
+                            }
+                            streamed.add(message.getId().toString());
+                        });
+            fail("Handler failure not thrown");
+        }
+        catch (IOException e) {
+            // expected
+        }
+
+        // Then
+        assertEquals(Arrays.asList("message-0", "message-1"), streamed);
+        verify(client, times(1)).searchScroll(any(SearchScrollRequest.class));
+        assertScrollCleared("scroll-2");
+    }
+
+    @Test
+    public void testScrollClearedOnScrollFailure()
+        throws Exception
+    {
+        searchReturns(page("scroll-1", 2));
+        @SuppressWarnings("unchecked")
+        ActionFuture<SearchResponse> future = mock(ActionFuture.class);
+        when(future.actionGet(any(TimeValue.class))).thenThrow(new ElasticsearchException("Scroll expired"));
+        when(client.searchScroll(any(SearchScrollRequest.class))).thenReturn(future);
+
+        try {
+            stream(2);
+            fail("Scroll failure not thrown");
+        }
+        catch (ElasticsearchException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList("message-0", "message-1"), streamed);
+        assertScrollCleared("scroll-1");
+    }
+
+    @Test
+    public void testClearFailureIsIgnored()
+        throws Exception
+    {
+        // the scroll context expires anyway after the keep alive
+        searchReturns(page("scroll-1", 1));
+        scrollReturns(page("scroll-2", 0));
+        @SuppressWarnings("unchecked")
+        ActionFuture<ClearScrollResponse> future = mock(ActionFuture.class);
+        when(future.actionGet(any(TimeValue.class))).thenThrow(new ElasticsearchException("No node available"));
+        when(client.clearScroll(any(ClearScrollRequest.class))).thenReturn(future);
+
+        assertEquals(1, stream(2));
+        assertScrollCleared("scroll-2");
+    }
+
+    private long stream(int pageSize)
+        throws Exception
+    {
+        return EsMessageDAO.connection(client)
+                           .instance("index", "message")
+                           .stream(query(), pageSize, 60000L, message -> streamed.add(message.getId().toString()));
+    }
+
+    private static MessageQueryImpl query()
+    {
+        MessageQueryImpl query = new MessageQueryImpl();
+        query.setPredicate(new TermPredicateImpl(EsMessageField.ASSET, "asset-1"));
+        query.setFetchStyle(MessageFetchStyle.METADATA);
+        return query;
+    }
+
+    private void assertScrollCleared(String scrollId)
+    {
+        ArgumentCaptor<ClearScrollRequest> clearScrollRequest = ArgumentCaptor.forClass(ClearScrollRequest.class);
+        verify(client).clearScroll(clearScrollRequest.capture());
+        assertEquals(Arrays.asList(scrollId), clearScrollRequest.getValue().getScrollIds());
+    }
+
+    private void searchReturns(SearchResponse response)
+    {
+        ActionFuture<SearchResponse> future = future(response);
+        when(client.search(any(SearchRequest.class))).thenReturn(future);
+    }
+
+    private void scrollReturns(SearchResponse first, SearchResponse... next)
+    {
+        @SuppressWarnings("unchecked")
+        ActionFuture<SearchResponse>[] futures = new ActionFuture[next.length];
+        for (int i = 0; i < next.length; i++) {
+            futures[i] = future(next[i]);
+        }
+        ActionFuture<SearchResponse> future = future(first);
+        when(client.searchScroll(any(SearchScrollRequest.class))).thenReturn(future, futures);
+    }
+
+    private void clearScrollReturns()
+    {
+        ActionFuture<ClearScrollResponse> future = future(mock(ClearScrollResponse.class));
+        when(client.clearScroll(any(ClearScrollRequest.class))).thenReturn(future);
+    }
+
+    private static <T> ActionFuture<T> future(T response)
+    {
+        @SuppressWarnings("unchecked")
+        ActionFuture<T> future = mock(ActionFuture.class);
+        when(future.actionGet(any(TimeValue.class))).thenReturn(response);
+        return future;
+    }
+
+    /**
+     * A page of the scroll with the next messages
+     */
+    private SearchResponse page(String scrollId, int size)
+    {
+        SearchHit[] hits = new SearchHit[size];
+        for (int i = 0; i < size; i++) {
+            hits[i] = hit("message-" + messageCount++);
+        }
+        SearchHits searchHits = mock(SearchHits.class);
+        when(searchHits.getHits()).thenReturn(hits);
+
+        SearchResponse response = mock(SearchResponse.class);
+        when(response.getScrollId()).thenReturn(scrollId);
+        when(response.getHits()).thenReturn(searchHits);
+        return response;
+    }
+
+    private static SearchHit hit(String id)
+    {
+        Map<String, SearchHitField> fields = new HashMap<>();
+        fields.put(EsSchema.MESSAGE_ACCOUNT, field("acme"));
+        fields.put(EsSchema.MESSAGE_AS_NAME, field("asset-1"));
+        fields.put(EsSchema.MESSAGE_SEM_TOPIC, field("app/data"));
+
+        SearchHit hit = mock(SearchHit.class);
+        when(hit.getId()).thenReturn(id);
+        when(hit.getFields()).thenReturn(fields);
+        return hit;
+    }
+
+    private static SearchHitField field(Object value)
+    {
+        SearchHitField field = mock(SearchHitField.class);
+        when(field.getValue()).thenReturn(value);
+        return field;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Transformation of the documents copied by the reindex.<br>
+ * Implementations are called concurrently by the slices.
+ *
+ * @since 1.0
+ */
+public interface EsDocumentTransformer
+{
+    /**
+     * Return the source of the target document
+     *
+     * @param searchHit the source document (same type and id of the target document)
+     * @return
+     * @throws Exception
+     */
+    public BytesReference transform(SearchHit searchHit)
+        throws Exception;
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.KapuaTopic;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PositionImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * Document transformer rebuilding the message documents with the current {@link EsDocumentBuilder}, so the copied messages
+ * get the document layout of the messages stored from now on.<br>
+ * The message is restored from the source document (topic, timestamps, position, metrics with their types and body) and built again.
+ * The documents of the other types (the metadata) are copied as they are.
+ *
+ * @since 1.0
+ */
+public class EsMessageDocumentTransformer implements EsDocumentTransformer
+{
+
+    @Override
+    public BytesReference transform(SearchHit searchHit)
+        throws Exception
+    {
+        if (!EsSchema.MESSAGE_TYPE_NAME.equals(searchHit.getType())) {
+            return searchHit.getSourceRef();
+        }
+
+        Map<String, Object> source = searchHit.getSource();
+        String account = (String) source.get(EsSchema.MESSAGE_ACCOUNT);
+        KapuaTopic kapuaTopic = new KapuaTopic(account,
+                                               (String) source.get(EsSchema.MESSAGE_AS_NAME),
+                                               (String) source.get(EsSchema.MESSAGE_SEM_TOPIC));
+
+        StorableIdImpl messageId = new StorableIdImpl(searchHit.getId());
+        Date timestamp = toDate(source.get(EsSchema.MESSAGE_TIMESTAMP));
+        Date receivedOn = toDate(source.get(EsSchema.MESSAGE_RECEIVED_ON));
+
+        MessageImpl message = new MessageImpl(messageId, timestamp, kapuaTopic.getFullTopic());
+        message.setReceivedOn(receivedOn);
+        message.setPayload(toPayload(source));
+
+        // the document builder keeps the state of the last built document
+        EsDocumentBuilder documentBuilder = new EsDocumentBuilder();
+        return documentBuilder.build(account, messageId, message, timestamp, receivedOn)
+                              .getMessage()
+                              .bytes();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PayloadImpl toPayload(Map<String, Object> source)
+        throws ParseException, IOException
+    {
+        PayloadImpl payload = new PayloadImpl();
+        payload.setCollectedOn(toDate(source.get(EsSchema.MESSAGE_COLLECTED_ON)));
+
+        Map<String, Object> positionMap = (Map<String, Object>) source.get(EsSchema.MESSAGE_POS);
+        if (positionMap != null) {
+            PositionImpl position = new PositionImpl();
+            Map<String, Object> locationMap = (Map<String, Object>) positionMap.get(EsSchema.MESSAGE_POS_LOCATION);
+            if (locationMap != null) {
+                position.setLatitude(toDouble(locationMap.get("lat")));
+                position.setLongitude(toDouble(locationMap.get("lon")));
+            }
+            position.setAltitude(toDouble(positionMap.get(EsSchema.MESSAGE_POS_ALT)));
+            position.setPrecision(toDouble(positionMap.get(EsSchema.MESSAGE_POS_PRECISION)));
+            position.setHeading(toDouble(positionMap.get(EsSchema.MESSAGE_POS_HEADING)));
+            position.setSpeed(toDouble(positionMap.get(EsSchema.MESSAGE_POS_SPEED)));
+            position.setTimestamp(toDate(positionMap.get(EsSchema.MESSAGE_POS_TIMESTAMP)));
+            position.setSatellites((int) toDouble(positionMap.get(EsSchema.MESSAGE_POS_SATELLITES)));
+            position.setStatus((int) toDouble(positionMap.get(EsSchema.MESSAGE_POS_STATUS)));
+            payload.setPosition(position);
+        }
+
+        Map<String, Object> metricsMap = (Map<String, Object>) source.get(EsSchema.MESSAGE_MTR);
+        if (metricsMap != null) {
+            Map<String, Object> metrics = new HashMap<>();
+            for (Map.Entry<String, Object> metric : metricsMap.entrySet()) {
+                // every metric is stored as an object with a single field named after the value type
+                Map<String, Object> typedValue = (Map<String, Object>) metric.getValue();
+                for (Map.Entry<String, Object> value : typedValue.entrySet()) {
+                    if (value.getValue() != null) {
+                        metrics.put(EsUtils.restoreMetricName(metric.getKey()), toMetricValue(value.getKey(), value.getValue()));
+                    }
+                }
+            }
+            payload.setMetrics(metrics);
+        }
+
+        Object body = source.get(EsSchema.MESSAGE_BODY);
+        if (body instanceof String) {
+            payload.setBody(Base64.decode((String) body));
+        }
+        return payload;
+    }
+
+    private static Object toMetricValue(String esTypeAcronym, Object value)
+        throws ParseException, IOException
+    {
+        switch (esTypeAcronym) {
+            case EsUtils.ES_TYPE_SHORT_INTEGER:
+                return ((Number) value).intValue();
+            case EsUtils.ES_TYPE_SHORT_LONG:
+                return ((Number) value).longValue();
+            case EsUtils.ES_TYPE_SHORT_FLOAT:
+                return ((Number) value).floatValue();
+            case EsUtils.ES_TYPE_SHORT_DOUBLE:
+                return ((Number) value).doubleValue();
+            case EsUtils.ES_TYPE_SHORT_DATE:
+                return toDate(value);
+            case EsUtils.ES_TYPE_SHORT_BINARY:
+                return toBinary(value);
+            default:
+                // strings and booleans are restored as they are
+                return value;
+        }
+    }
+
+    private static Byte[] toBinary(Object value)
+        throws IOException
+    {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            Byte[] bytes = new Byte[list.size()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = ((Number) list.get(i)).byteValue();
+            }
+            return bytes;
+        }
+
+        byte[] decodedBytes = Base64.decode(value.toString());
+        Byte[] bytes = new Byte[decodedBytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = decodedBytes[i];
+        }
+        return bytes;
+    }
+
+    private static Date toDate(Object value)
+        throws ParseException
+    {
+        return value != null ? (Date) EsUtils.convertToKapuaObject(EsUtils.ES_TYPE_DATE, value.toString()) : null;
+    }
+
+    private static double toDouble(Object value)
+    {
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+}
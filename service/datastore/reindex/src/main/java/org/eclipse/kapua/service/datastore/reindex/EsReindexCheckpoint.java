@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a reindex: the completed slices with the number of documents they copied.<br>
+ * The progress is saved to the checkpoint file every time a slice completes (written to a temporary file and then moved over the checkpoint file,
+ * so a crash never leaves a partial checkpoint). A slice is either completed or copied again from the start: the copies are idempotent
+ * since the documents keep their ids.
+ *
+ * @since 1.0
+ */
+public class EsReindexCheckpoint
+{
+    private final Path       file;
+    private final Properties completedSlices = new Properties();
+
+    /**
+     * Constructor: the progress is loaded from the checkpoint file, if any
+     *
+     * @param file
+     * @throws IOException
+     */
+    public EsReindexCheckpoint(Path file)
+        throws IOException
+    {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream is = Files.newInputStream(file)) {
+                completedSlices.load(is);
+            }
+        }
+    }
+
+    /**
+     * Return true if the slice has been completed
+     *
+     * @param slice
+     * @return
+     */
+    public synchronized boolean isCompleted(String slice)
+    {
+        return completedSlices.containsKey(slice);
+    }
+
+    /**
+     * Return the number of documents copied by the completed slice (0 if not completed)
+     *
+     * @param slice
+     * @return
+     */
+    public synchronized long getCount(String slice)
+    {
+        String count = completedSlices.getProperty(slice);
+        return count != null ? Long.parseLong(count) : 0;
+    }
+
+    /**
+     * Record the slice as completed and save the checkpoint
+     *
+     * @param slice
+     * @param count number of documents copied by the slice
+     * @throws IOException
+     */
+    public synchronized void complete(String slice, long count)
+        throws IOException
+    {
+        completedSlices.setProperty(slice, Long.toString(count));
+
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmpFile)) {
+            completedSlices.store(os, "Kapua datastore reindex checkpoint");
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Datastore reindex tool setting keys
+ *
+ * @since 1.0
+ */
+public enum EsReindexSettingKey implements SettingKey
+{
+    /**
+     * Comma separated names (or wildcard patterns) of the indices to copy
+     */
+    SOURCE_INDICES("datastore.reindex.source.indices"),
+
+    /**
+     * Suffix appended to the source index name to get the target index name
+     */
+    TARGET_SUFFIX("datastore.reindex.target.suffix"),
+
+    /**
+     * Number of index slices (shards) copied concurrently
+     */
+    PARALLELISM("datastore.reindex.parallelism"),
+
+    /**
+     * Number of documents read by every scroll request and written by every bulk request
+     */
+    BATCH_SIZE("datastore.reindex.batch_size"),
+
+    /**
+     * Maximum number of documents copied per second by all the slices (0 for no limit)
+     */
+    MAX_DOCS_PER_SECOND("datastore.reindex.max_docs_per_second"),
+
+    /**
+     * Time the scroll contexts are kept alive between two requests (milliseconds)
+     */
+    SCROLL_KEEP_ALIVE("datastore.reindex.scroll.keep_alive"),
+
+    /**
+     * File recording the completed slices
+     */
+    CHECKPOINT_FILE("datastore.reindex.checkpoint.file"),
+
+    /**
+     * Rebuild the message documents with the current document builder
+     */
+    TRANSFORM("datastore.reindex.transform");
+
+    private String key;
+
+    private EsReindexSettingKey(String key)
+    {
+        this.key = key;
+    }
+
+    @Override
+    public String key()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import org.eclipse.kapua.commons.setting.AbstractKapuaSetting;
+
+/**
+ * Datastore reindex tool settings.<br>
+ * Every setting can be overridden by the system property with the same name.
+ *
+ * @since 1.0
+ */
+public class EsReindexSettings extends AbstractKapuaSetting<EsReindexSettingKey>
+{
+    private static final String REINDEX_CONFIG_RESOURCE = "kapua-datastore-reindex-setting.properties";
+
+    private static final EsReindexSettings instance = new EsReindexSettings();
+
+    private EsReindexSettings()
+    {
+        super(REINDEX_CONFIG_RESOURCE);
+    }
+
+    /**
+     * Get the reindex settings instance
+     *
+     * @return
+     */
+    public static EsReindexSettings getInstance()
+    {
+        return instance;
+    }
+}
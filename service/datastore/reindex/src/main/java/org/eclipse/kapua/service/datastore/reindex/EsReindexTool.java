@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import java.nio.file.Paths;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsClient;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettingKey;
+import org.eclipse.kapua.service.datastore.internal.setting.DatastoreSettings;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line reindex of the datastore indices.<br>
+ * The indices to copy are the command line arguments (index names or wildcard patterns) or, if none, the {@link EsReindexSettingKey#SOURCE_INDICES} setting.
+ * The cluster is the one configured for the datastore ({@link DatastoreSettingKey#ELASTICSEARCH_CLUSTER} and {@link DatastoreSettingKey#ELASTICSEARCH_NODES}).<br>
+ * Running the tool again after a failure resumes the reindex from the checkpoint file.
+ *
+ * @since 1.0
+ */
+public class EsReindexTool
+{
+    private static final Logger s_logger = LoggerFactory.getLogger(EsReindexTool.class);
+
+    private EsReindexTool()
+    {
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        EsReindexSettings config = EsReindexSettings.getInstance();
+        String[] sourceIndices = args;
+        if (sourceIndices.length == 0) {
+            String configuredIndices = config.getString(EsReindexSettingKey.SOURCE_INDICES, "");
+            sourceIndices = configuredIndices.trim().isEmpty() ? new String[0] : configuredIndices.trim().split("\\s*,\\s*");
+        }
+        if (sourceIndices.length == 0) {
+            s_logger.error("No source indices: pass them as arguments or set {}", EsReindexSettingKey.SOURCE_INDICES.key());
+            System.exit(1);
+        }
+
+        Settings settings = Settings.settingsBuilder()
+                                    .put("cluster.name", DatastoreSettings.getInstance().getString(DatastoreSettingKey.ELASTICSEARCH_CLUSTER))
+                                    .build();
+        try (TransportClient client = TransportClient.builder().settings(settings).build()) {
+            for (InetSocketTransportAddress address : EsClient.getNodeAddresses()) {
+                client.addTransportAddress(address);
+            }
+
+            EsReindexCheckpoint checkpoint = new EsReindexCheckpoint(Paths.get(config.getString(EsReindexSettingKey.CHECKPOINT_FILE, "kapua-datastore-reindex.checkpoint")));
+            long count = new EsReindexer(client, checkpoint).reindex(sourceIndices);
+            s_logger.info("{} documents reindexed", count);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDatastoreException;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsUtils;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Offline copy of datastore indices (i.e. the weekly message indices and the account metadata indices) to new indices.<br>
+ * Every shard of a source index is a slice, scrolled in parallel with the other slices (up to the parallelism) and written to the target index
+ * with bulk requests. The documents keep their type and id.<br>
+ * The copy is throttled to at most the configured documents per second (overall) and the completed slices are recorded in the {@link EsReindexCheckpoint},
+ * so a reindex interrupted by a crash is resumed by running it again: the completed slices are skipped and the other ones are copied again.<br>
+ * A missing target index is created with the settings (shards and replicas) and the mappings of the source index; an existing target index is used as is.
+ *
+ * @since 1.0
+ */
+public class EsReindexer
+{
+    private static final Logger s_logger = LoggerFactory.getLogger(EsReindexer.class);
+
+    private final Client                client;
+    private final EsReindexCheckpoint   checkpoint;
+
+    private String                      targetSuffix;
+    private int                         parallelism;
+    private int                         batchSize;
+    private double                      maxDocsPerSecond;
+    private long                        scrollKeepAlive;
+    private EsDocumentTransformer       transformer;
+
+    /**
+     * Constructor: the reindex options are initialized from the {@link EsReindexSettings}
+     *
+     * @param client
+     * @param checkpoint
+     */
+    public EsReindexer(Client client, EsReindexCheckpoint checkpoint)
+    {
+        this.client = client;
+        this.checkpoint = checkpoint;
+
+        EsReindexSettings config = EsReindexSettings.getInstance();
+        targetSuffix = config.getString(EsReindexSettingKey.TARGET_SUFFIX, "-reindex");
+        parallelism = config.getInt(EsReindexSettingKey.PARALLELISM, 4);
+        batchSize = config.getInt(EsReindexSettingKey.BATCH_SIZE, 500);
+        maxDocsPerSecond = config.getDouble(EsReindexSettingKey.MAX_DOCS_PER_SECOND, 0d);
+        scrollKeepAlive = config.getLong(EsReindexSettingKey.SCROLL_KEEP_ALIVE, 60000L);
+        if (config.getBoolean(EsReindexSettingKey.TRANSFORM, false)) {
+            transformer = new EsMessageDocumentTransformer();
+        }
+    }
+
+    public void setTargetSuffix(String targetSuffix)
+    {
+        this.targetSuffix = targetSuffix;
+    }
+
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the maximum number of documents copied per second (0 for no limit)
+     *
+     * @param maxDocsPerSecond
+     */
+    public void setMaxDocsPerSecond(double maxDocsPerSecond)
+    {
+        this.maxDocsPerSecond = maxDocsPerSecond;
+    }
+
+    /**
+     * Set the time (in milliseconds) the scroll contexts are kept alive between two requests
+     *
+     * @param scrollKeepAlive
+     */
+    public void setScrollKeepAlive(long scrollKeepAlive)
+    {
+        this.scrollKeepAlive = scrollKeepAlive;
+    }
+
+    /**
+     * Set the transformer of the copied documents (null to copy the documents as they are)
+     *
+     * @param transformer
+     */
+    public void setTransformer(EsDocumentTransformer transformer)
+    {
+        this.transformer = transformer;
+    }
+
+    /**
+     * Return the name of the target index of the source index
+     *
+     * @param sourceIndex
+     * @return
+     */
+    public String getTargetIndex(String sourceIndex)
+    {
+        return sourceIndex + targetSuffix;
+    }
+
+    /**
+     * Copy the indices matching the given names or wildcard patterns (the target indices themselves are excluded)
+     *
+     * @param sourceIndices
+     * @return the number of documents of the target indices copied by this and by the previous (checkpointed) runs
+     * @throws EsDatastoreException if no index matches or a slice cannot be copied
+     * @throws IOException if the source mappings cannot be read or the checkpoint cannot be saved
+     * @throws InterruptedException
+     */
+    public long reindex(String... sourceIndices)
+        throws EsDatastoreException, IOException, InterruptedException
+    {
+        TimeValue timeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        GetIndexResponse indexResponse = client.admin().indices().prepareGetIndex().setIndices(sourceIndices).get(timeout);
+
+        Map<String, List<Slice>> slicesByIndex = new LinkedHashMap<>();
+        String[] indices = indexResponse.getIndices();
+        Arrays.sort(indices);
+        for (String index : indices) {
+            if (index.endsWith(targetSuffix)) {
+                continue;
+            }
+
+            createTargetIndex(indexResponse, index, timeout);
+
+            int shards = indexResponse.getSettings().get(index).getAsInt(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1);
+            List<Slice> slices = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                slices.add(new Slice(index, getTargetIndex(index), shard));
+            }
+            slicesByIndex.put(index, slices);
+        }
+        if (slicesByIndex.isEmpty()) {
+            throw new EsDatastoreException("No indices to reindex: " + Arrays.toString(sourceIndices));
+        }
+
+        long count = 0;
+        RateLimiter rateLimiter = maxDocsPerSecond > 0 ? RateLimiter.create(maxDocsPerSecond) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Map<Slice, Future<Long>> futures = new LinkedHashMap<>();
+            for (List<Slice> slices : slicesByIndex.values()) {
+                for (Slice slice : slices) {
+                    if (checkpoint.isCompleted(slice.getName())) {
+                        s_logger.info("Slice {} already copied, skipped", slice.getName());
+                        count += checkpoint.getCount(slice.getName());
+                    }
+                    else {
+                        futures.put(slice, executor.submit(() -> copy(slice, rateLimiter)));
+                    }
+                }
+            }
+
+            for (Map.Entry<Slice, Future<Long>> future : futures.entrySet()) {
+                try {
+                    count += future.getValue().get();
+                }
+                catch (ExecutionException e) {
+                    s_logger.error("Cannot copy slice " + future.getKey().getName(), e.getCause());
+                    throw new EsDatastoreException(String.format("Cannot copy slice %s: %s", future.getKey().getName(), e.getCause().getMessage()));
+                }
+            }
+        }
+        finally {
+            // stop the other slices on failure
+            executor.shutdownNow();
+        }
+
+        for (String index : slicesByIndex.keySet()) {
+            client.admin().indices().prepareRefresh(getTargetIndex(index)).get(timeout);
+        }
+        s_logger.info("Reindex completed: {} indices, {} documents", slicesByIndex.size(), count);
+        return count;
+    }
+
+    private void createTargetIndex(GetIndexResponse indexResponse, String index, TimeValue timeout)
+        throws IOException
+    {
+        String targetIndex = getTargetIndex(index);
+        if (client.admin().indices().exists(new IndicesExistsRequest(targetIndex)).actionGet(timeout).isExists()) {
+            return;
+        }
+
+        Settings sourceSettings = indexResponse.getSettings().get(index);
+        CreateIndexRequestBuilder createRequest = client.admin().indices().prepareCreate(targetIndex)
+                                                        .setSettings(Settings.settingsBuilder()
+                                                                             .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, sourceSettings.get(IndexMetaData.SETTING_NUMBER_OF_SHARDS))
+                                                                             .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, sourceSettings.get(IndexMetaData.SETTING_NUMBER_OF_REPLICAS)));
+
+        ImmutableOpenMap<String, MappingMetaData> mappings = indexResponse.getMappings().get(index);
+        if (mappings != null) {
+            for (ObjectObjectCursor<String, MappingMetaData> mapping : mappings) {
+                createRequest.addMapping(mapping.key, mapping.value.sourceAsMap());
+            }
+        }
+        createRequest.get(timeout);
+        s_logger.info("Target index {} created", targetIndex);
+    }
+
+    private long copy(Slice slice, RateLimiter rateLimiter)
+        throws Exception
+    {
+        TimeValue timeout = TimeValue.timeValueMillis(EsUtils.getQueryTimeout());
+        TimeValue keepAlive = TimeValue.timeValueMillis(scrollKeepAlive);
+
+        // the scroll reads a single shard, in index order (no scoring, no sorting)
+        SearchResponse scrollResponse = client.prepareSearch(slice.sourceIndex)
+                                              .setPreference("_shards:" + slice.shard)
+                                              .setQuery(QueryBuilders.matchAllQuery())
+                                              .addSort(SortBuilders.fieldSort("_doc"))
+                                              .setSize(batchSize)
+                                              .setScroll(keepAlive)
+                                              .get(timeout);
+
+        long count = 0;
+        String scrollId = scrollResponse.getScrollId();
+        try {
+            SearchHit[] searchHits = scrollResponse.getHits().getHits();
+            while (searchHits.length > 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Slice " + slice.getName() + " interrupted");
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire(searchHits.length);
+                }
+
+                BulkRequestBuilder bulkRequest = client.prepareBulk();
+                for (SearchHit searchHit : searchHits) {
+                    bulkRequest.add(client.prepareIndex(slice.targetIndex, searchHit.getType(), searchHit.getId())
+                                          .setSource(transformer != null ? transformer.transform(searchHit) : searchHit.getSourceRef()));
+                }
+                BulkResponse bulkResponse = bulkRequest.get(timeout);
+                if (bulkResponse.hasFailures()) {
+                    throw new EsDatastoreException(bulkResponse.buildFailureMessage());
+                }
+                count += searchHits.length;
+
+                scrollResponse = client.prepareSearchScroll(scrollId)
+                                       .setScroll(keepAlive)
+                                       .get(timeout);
+                scrollId = scrollResponse.getScrollId();
+                searchHits = scrollResponse.getHits().getHits();
+            }
+        }
+        finally {
+            clearScroll(scrollId, timeout);
+        }
+
+        checkpoint.complete(slice.getName(), count);
+        s_logger.info("Slice {} copied: {} documents", slice.getName(), count);
+        return count;
+    }
+
+    private void clearScroll(String scrollId, TimeValue timeout)
+    {
+        if (scrollId == null)
+            return;
+
+        try {
+            client.prepareClearScroll()
+                  .addScrollId(scrollId)
+                  .get(timeout);
+        }
+        catch (Exception e) {
+            // the scroll context is released anyway by the cluster once the keep alive expires
+            s_logger.warn("Cannot clear scroll {}: {}", scrollId, e.getMessage());
+        }
+    }
+
+    /**
+     * Shard of a source index copied to the target index
+     */
+    private static class Slice
+    {
+        private final String sourceIndex;
+        private final String targetIndex;
+        private final int    shard;
+
+        Slice(String sourceIndex, String targetIndex, int shard)
+        {
+            this.sourceIndex = sourceIndex;
+            this.targetIndex = targetIndex;
+            this.shard = shard;
+        }
+
+        String getName()
+        {
+            return sourceIndex + "/" + shard;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.datastore.reindex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsDocumentBuilder;
+import org.eclipse.kapua.service.datastore.internal.elasticsearch.EsSchema;
+import org.eclipse.kapua.service.datastore.internal.model.MessageImpl;
+import org.eclipse.kapua.service.datastore.internal.model.PayloadImpl;
+import org.eclipse.kapua.service.datastore.internal.model.StorableIdImpl;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EsReindexerTest
+{
+    private Path   dataDir;
+    private Node   node;
+    private Client client;
+
+    @Before
+    public void startNode()
+        throws Exception
+    {
+        dataDir = Files.createTempDirectory("kapua-reindex");
+        Settings settings = Settings.settingsBuilder()
+                                    .put("path.home", dataDir.toString())
+                                    .put("http.enabled", false)
+                                    .build();
+        node = NodeBuilder.nodeBuilder().local(true).settings(settings).node();
+        client = node.client();
+        client.admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+    }
+
+    @After
+    public void stopNode()
+    {
+        node.close();
+    }
+
+    @Test
+    public void reindexShouldCopyAllTheShards()
+        throws Exception
+    {
+        // Given
+        createIndex("kapua-data-1", 3, 100);
+        createIndex("kapua-data-2", 2, 50);
+        EsReindexer reindexer = newReindexer();
+        reindexer.setParallelism(3);
+        reindexer.setBatchSize(7);
+
+        // When
+        long count = reindexer.reindex("kapua-data-*");
+
+        // Then
+        assertThat(count).isEqualTo(150);
+        assertThat(countDocuments("kapua-data-1-reindex")).isEqualTo(100);
+        assertThat(countDocuments("kapua-data-2-reindex")).isEqualTo(50);
+        assertThat(client.admin().indices().prepareGetSettings("kapua-data-1-reindex").get().getSetting("kapua-data-1-reindex", "index.number_of_shards")).isEqualTo("3");
+        GetResponse document = client.prepareGet("kapua-data-1-reindex", "doc", "42").get();
+        assertThat(document.getSource()).containsEntry("value", 42);
+    }
+
+    @Test
+    public void reindexShouldSkipTheCompletedSlices()
+        throws Exception
+    {
+        // Given
+        createIndex("kapua-data-1", 2, 40);
+        EsReindexCheckpoint checkpoint = new EsReindexCheckpoint(dataDir.resolve("reindex.checkpoint"));
+        checkpoint.complete("kapua-data-1/0", 25);
+
+        // When
+        long count = new EsReindexer(client, checkpoint).reindex("kapua-data-1");
+
+        // Then the completed shard is not copied again, while its count is still reported
+        long shard1Count = new EsReindexCheckpoint(dataDir.resolve("reindex.checkpoint")).getCount("kapua-data-1/1");
+        assertThat(count).isEqualTo(25 + shard1Count);
+        assertThat(countDocuments("kapua-data-1-reindex")).isEqualTo(shard1Count);
+        assertThat(new EsReindexCheckpoint(dataDir.resolve("reindex.checkpoint")).isCompleted("kapua-data-1/1")).isTrue();
+    }
+
+    @Test
+    public void transformShouldKeepTheMessageMetrics()
+        throws Exception
+    {
+        // Given
+        Date timestamp = new Date();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("temperature", 21.5d);
+        metrics.put("counter", 7);
+        metrics.put("label", "room");
+        PayloadImpl payload = new PayloadImpl();
+        payload.setMetrics(metrics);
+        StorableIdImpl messageId = new StorableIdImpl("message-1");
+        MessageImpl message = new MessageImpl(messageId, timestamp, "kapua-sys/device-1/sensors/room");
+        message.setReceivedOn(timestamp);
+        message.setPayload(payload);
+
+        client.admin().indices().prepareCreate("kapua-data-1").get();
+        client.prepareIndex("kapua-data-1", EsSchema.MESSAGE_TYPE_NAME, messageId.toString())
+              .setSource(new EsDocumentBuilder().build("kapua-sys", messageId, message, timestamp, timestamp).getMessage())
+              .get();
+        client.admin().indices().prepareRefresh("kapua-data-1").get();
+
+        EsReindexer reindexer = newReindexer();
+        reindexer.setTransformer(new EsMessageDocumentTransformer());
+
+        // When
+        reindexer.reindex("kapua-data-1");
+
+        // Then
+        GetResponse source = client.prepareGet("kapua-data-1", EsSchema.MESSAGE_TYPE_NAME, "message-1").get();
+        GetResponse target = client.prepareGet("kapua-data-1-reindex", EsSchema.MESSAGE_TYPE_NAME, "message-1").get();
+        assertThat(target.getSource().get(EsSchema.MESSAGE_MTR)).isEqualTo(source.getSource().get(EsSchema.MESSAGE_MTR));
+        assertThat(target.getSource().get(EsSchema.MESSAGE_SEM_TOPIC)).isEqualTo("sensors/room");
+    }
+
+    private EsReindexer newReindexer()
+        throws Exception
+    {
+        return new EsReindexer(client, new EsReindexCheckpoint(dataDir.resolve("reindex.checkpoint")));
+    }
+
+    private void createIndex(String index, int shards, int documents)
+    {
+        client.admin().indices().prepareCreate(index)
+              .setSettings(Settings.settingsBuilder()
+                                   .put("index.number_of_shards", shards)
+                                   .put("index.number_of_replicas", 0))
+              .get();
+
+        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (int i = 0; i < documents; i++) {
+            bulkRequest.add(client.prepareIndex(index, "doc", Integer.toString(i)).setSource("value", i));
+        }
+        bulkRequest.get();
+        client.admin().indices().prepareRefresh(index).get();
+    }
+
+    private long countDocuments(String index)
+    {
+        return client.prepareSearch(index).setSize(0).get().getHits().getTotalHits();
+    }
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.command;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.util.SystemUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountCreator;
+import org.eclipse.kapua.service.account.AccountFactory;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.authentication.AuthenticationService;
+import org.eclipse.kapua.service.authentication.UsernamePasswordTokenFactory;
+import org.eclipse.kapua.service.authentication.credential.CredentialFactory;
+import org.eclipse.kapua.service.authentication.credential.CredentialService;
+import org.eclipse.kapua.service.authentication.credential.CredentialType;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.authorization.user.permission.UserPermissionCreator;
+import org.eclipse.kapua.service.authorization.user.permission.UserPermissionFactory;
+import org.eclipse.kapua.service.authorization.user.permission.UserPermissionService;
+import org.eclipse.kapua.service.device.call.kura.app.CommandMetrics;
+import org.eclipse.kapua.service.device.call.kura.app.ResponseMetrics;
+import org.eclipse.kapua.service.device.call.message.app.request.kura.KuraRequestChannel;
+import org.eclipse.kapua.service.device.call.message.app.request.kura.KuraRequestMessage;
+import org.eclipse.kapua.service.device.call.message.app.request.kura.KuraRequestPayload;
+import org.eclipse.kapua.service.device.call.message.app.response.kura.KuraResponseChannel;
+import org.eclipse.kapua.service.device.call.message.app.response.kura.KuraResponseMessage;
+import org.eclipse.kapua.service.device.call.message.app.response.kura.KuraResponsePayload;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperation;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkOperationManager;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.device.registry.lifecycle.DeviceLifecycleDomain;
+import org.eclipse.kapua.service.user.User;
+import org.eclipse.kapua.service.user.UserFactory;
+import org.eclipse.kapua.service.user.UserService;
+import org.eclipse.kapua.translator.Translator;
+import org.eclipse.kapua.transport.message.mqtt.MqttMessage;
+import org.eclipse.kapua.transport.message.mqtt.MqttPayload;
+import org.eclipse.kapua.transport.message.mqtt.MqttTopic;
+import org.eclipse.kapua.transport.utils.ClientIdGenerator;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Bulk command on a fleet of simulated Kura devices connected to the broker (it must be running, as for {@link DeviceCommandManagementServiceTest}).<br>
+ * The simulated devices answer with a random latency and some of them drop the first request, so their command succeeds at the second attempt.
+ */
+@Ignore
+public class DeviceBulkCommandTest extends Assert {
+
+    private static final int DEVICES = 20;
+
+    protected static Random random = new Random();
+    protected static KapuaLocator locator = KapuaLocator.getInstance();
+
+    private Account account;
+    private User user;
+    private List<MqttClient> mqttClients = new ArrayList<>();
+
+    @Before
+    public void setUpTest()
+            throws Exception {
+        AuthenticationService authenticationService = locator.getService(AuthenticationService.class);
+        UsernamePasswordTokenFactory credentialsFactory = locator.getFactory(UsernamePasswordTokenFactory.class);
+        authenticationService.login(credentialsFactory.newInstance("kapua-sys", "kapua-password".toCharArray()));
+
+        //
+        // Account, user, permission and credentials creation
+        String accountName = String.format("test-acct-%d", (new Date()).getTime());
+        AccountService accountService = locator.getService(AccountService.class);
+        AccountFactory accountFactory = locator.getFactory(AccountFactory.class);
+        AccountCreator accountCreator = accountFactory.newAccountCreator(KapuaSecurityUtils.getSession().getScopeId(), accountName);
+        accountCreator.setAccountPassword("!bV0123456789");
+        accountCreator.setOrganizationName(accountName);
+        accountCreator.setOrganizationEmail(accountName + "@m.com");
+        account = accountService.create(accountCreator);
+
+        UserService userService = locator.getService(UserService.class);
+        UserFactory userFactory = locator.getFactory(UserFactory.class);
+        user = userService.create(userFactory.newCreator(account.getId(), String.format("test-usr-%d", (new Date()).getTime())));
+
+        UserPermissionService userPermissionService = locator.getService(UserPermissionService.class);
+        UserPermissionCreator userPermissionCreator = locator.getFactory(UserPermissionFactory.class).newCreator(account.getId());
+        userPermissionCreator.setUserId(user.getId());
+        userPermissionCreator.setPermission(locator.getFactory(PermissionFactory.class).newPermission(DeviceLifecycleDomain.DEVICE_LIFECYCLE,
+                Actions.connect,
+                account.getId()));
+        userPermissionService.create(userPermissionCreator);
+
+        CredentialService credentialService = locator.getService(CredentialService.class);
+        credentialService.create(locator.getFactory(CredentialFactory.class).newCreator(account.getId(),
+                user.getId(),
+                CredentialType.PASSWORD,
+                "kapua-password"));
+
+        //
+        // Simulated devices: every fifth device drops the first request
+        MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
+        mqttConnectOptions.setUserName(user.getName());
+        mqttConnectOptions.setPassword("kapua-password".toCharArray());
+        for (int i = 0; i < DEVICES; i++) {
+            MqttClient mqttClient = new MqttClient(SystemUtils.getBrokerURI().toString(),
+                    ClientIdGenerator.getInstance().next("testBulkCommand"));
+            mqttClient.setCallback(new SimulatedKuraCallback(mqttClient, i % 5 == 0 ? 1 : 0));
+            mqttClient.connect(mqttConnectOptions);
+            mqttClients.add(mqttClient);
+        }
+    }
+
+    @After
+    public void tearDownTest()
+            throws Exception {
+        for (MqttClient mqttClient : mqttClients) {
+            if (mqttClient.isConnected()) {
+                mqttClient.disconnect();
+            }
+        }
+        locator.getService(AuthenticationService.class).logout();
+    }
+
+    @Test
+    public void testBulkCommandExecution()
+            throws Exception {
+        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
+        List<KapuaId> deviceIds = new ArrayList<>();
+        for (MqttClient mqttClient : mqttClients) {
+            deviceIds.add(deviceRegistryService.findByClientId(account.getId(), mqttClient.getClientId()).getId());
+        }
+
+        DeviceCommandManagementService deviceCommandManagementService = locator.getService(DeviceCommandManagementService.class);
+        DeviceCommandInput commandInput = locator.getFactory(DeviceCommandFactory.class).newCommandInput();
+        commandInput.setCommand("ls");
+
+        // the device requests run on the bulk operation threads
+        Subject subject = SecurityUtils.getSubject();
+        DeviceBulkOperationManager manager = DeviceBulkOperationManager.getInstance();
+        DeviceBulkOperation operation = manager.submit(account.getId(), "command", deviceIds, 5, 2,
+                (scopeId, deviceId) -> subject.execute(() -> deviceCommandManagementService.exec(scopeId, deviceId, commandInput, 2000L).getStdout()));
+
+        operation = manager.awaitCompletion(account.getId(), operation.getId(), 120000);
+        assertEquals(DeviceBulkOperation.Status.COMPLETED, operation.getStatus());
+        assertEquals(DEVICES, operation.getSucceededCount());
+        int retried = 0;
+        for (DeviceBulkResult result : operation.getResults()) {
+            assertEquals("ok", result.getMessage());
+            if (result.getAttempts() > 1) {
+                retried++;
+            }
+        }
+        assertEquals(DEVICES / 5, retried);
+    }
+
+    /**
+     * Kura command responder answering with a random latency, after dropping the configured number of requests
+     */
+    private class SimulatedKuraCallback implements MqttCallback {
+
+        private MqttClient mqttClient;
+        private int toBeDropped;
+        private Set<String> dropped = ConcurrentHashMap.newKeySet();
+
+        public SimulatedKuraCallback(MqttClient mqttClient, int toBeDropped) {
+            this.mqttClient = mqttClient;
+            this.toBeDropped = toBeDropped;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+
+        }
+
+        @Override
+        public void messageArrived(String topic, org.eclipse.paho.client.mqttv3.MqttMessage message)
+                throws Exception {
+            //
+            // Mqtt --> Kura
+            Translator<MqttMessage, KuraRequestMessage> tMqttReqKura = Translator.getTranslatorFor(MqttMessage.class,
+                    KuraRequestMessage.class);
+            KuraRequestMessage kuraRequestMessage = tMqttReqKura.translate(new MqttMessage(new MqttTopic(topic),
+                    new Date(),
+                    new MqttPayload(message.getPayload())));
+
+            KuraRequestChannel kuraRequestChannel = kuraRequestMessage.getChannel();
+            KuraRequestPayload kuraRequestPayload = kuraRequestMessage.getPayload();
+            if (dropped.size() < toBeDropped) {
+                dropped.add(kuraRequestPayload.getRequestId());
+                return;
+            }
+
+            //
+            // Kura --> Mqtt, answered by another thread so the paho callback thread is not blocked by the latency
+            KuraResponseChannel kuraResponseChannel = new KuraResponseChannel(kuraRequestChannel.getMessageClassification(),
+                    kuraRequestChannel.getScope(),
+                    kuraRequestPayload.getRequesterClientId());
+            kuraResponseChannel.setAppId(kuraRequestChannel.getAppId());
+            kuraResponseChannel.setReplyPart("REPLY");
+            kuraResponseChannel.setRequestId(kuraRequestPayload.getRequestId());
+
+            KuraResponsePayload kuraResponsePayload = new KuraResponsePayload();
+            kuraResponsePayload.getMetrics().put(ResponseMetrics.RESP_METRIC_EXIT_CODE.getValue(), 200);
+            kuraResponsePayload.getMetrics().put(CommandMetrics.APP_METRIC_STDOUT.getValue(), "ok");
+
+            KuraResponseMessage kuraResponseMessage = new KuraResponseMessage(kuraResponseChannel,
+                    new Date(),
+                    kuraResponsePayload);
+
+            Translator<KuraResponseMessage, MqttMessage> tKuraResMqtt = Translator.getTranslatorFor(KuraResponseMessage.class,
+                    MqttMessage.class);
+            MqttMessage mqttMessage = tKuraResMqtt.translate(kuraResponseMessage);
+            long latency = random.nextInt(200);
+            new Thread(() -> {
+                try {
+                    Thread.sleep(latency);
+                    mqttClient.publish(mqttMessage.getRequestTopic().getTopic(),
+                            new org.eclipse.paho.client.mqttv3.MqttMessage(mqttMessage.getPayload().getBody()));
+                } catch (Exception e) {
+                    // the request times out
+                }
+            }).start();
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+
+        }
+    }
+}
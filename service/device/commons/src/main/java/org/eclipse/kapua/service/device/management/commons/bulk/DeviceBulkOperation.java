@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Progress of a bulk operation.<br>
+ * It is a snapshot taken by the {@link DeviceBulkOperationManager}: it is not updated while the operation goes on.
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "deviceBulkOperation")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = { "id", "scopeId", "name", "status", "parallelism", "maxAttempts", "createdOn", "completedOn",
+                       "deviceCount", "pendingCount", "runningCount", "succeededCount", "failedCount", "canceledCount", "results" })
+public class DeviceBulkOperation
+{
+    /**
+     * Operation status
+     */
+    public enum Status
+    {
+        /**
+         * Some device is pending or running
+         */
+        RUNNING,
+        /**
+         * All the devices have been processed
+         */
+        COMPLETED,
+        /**
+         * Canceled before all the devices have been processed
+         */
+        CANCELED
+    }
+
+    @XmlElement(name = "id")
+    private String                 id;
+
+    @XmlElement(name = "scopeId")
+    private String                 scopeId;
+
+    @XmlElement(name = "name")
+    private String                 name;
+
+    @XmlElement(name = "status")
+    private Status                 status;
+
+    @XmlElement(name = "parallelism")
+    private int                    parallelism;
+
+    @XmlElement(name = "maxAttempts")
+    private int                    maxAttempts;
+
+    @XmlElement(name = "createdOn")
+    private Date                   createdOn;
+
+    @XmlElement(name = "completedOn")
+    private Date                   completedOn;
+
+    @XmlElement(name = "deviceCount")
+    private int                    deviceCount;
+
+    @XmlElement(name = "pendingCount")
+    private int                    pendingCount;
+
+    @XmlElement(name = "runningCount")
+    private int                    runningCount;
+
+    @XmlElement(name = "succeededCount")
+    private int                    succeededCount;
+
+    @XmlElement(name = "failedCount")
+    private int                    failedCount;
+
+    @XmlElement(name = "canceledCount")
+    private int                    canceledCount;
+
+    @XmlElementWrapper(name = "results")
+    @XmlElement(name = "result")
+    private List<DeviceBulkResult> results;
+
+    public DeviceBulkOperation()
+    {
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    public String getScopeId()
+    {
+        return scopeId;
+    }
+
+    public void setScopeId(String scopeId)
+    {
+        this.scopeId = scopeId;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus(Status status)
+    {
+        this.status = status;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Date getCreatedOn()
+    {
+        return createdOn;
+    }
+
+    public void setCreatedOn(Date createdOn)
+    {
+        this.createdOn = createdOn;
+    }
+
+    public Date getCompletedOn()
+    {
+        return completedOn;
+    }
+
+    public void setCompletedOn(Date completedOn)
+    {
+        this.completedOn = completedOn;
+    }
+
+    public int getDeviceCount()
+    {
+        return deviceCount;
+    }
+
+    public void setDeviceCount(int deviceCount)
+    {
+        this.deviceCount = deviceCount;
+    }
+
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    public void setPendingCount(int pendingCount)
+    {
+        this.pendingCount = pendingCount;
+    }
+
+    public int getRunningCount()
+    {
+        return runningCount;
+    }
+
+    public void setRunningCount(int runningCount)
+    {
+        this.runningCount = runningCount;
+    }
+
+    public int getSucceededCount()
+    {
+        return succeededCount;
+    }
+
+    public void setSucceededCount(int succeededCount)
+    {
+        this.succeededCount = succeededCount;
+    }
+
+    public int getFailedCount()
+    {
+        return failedCount;
+    }
+
+    public void setFailedCount(int failedCount)
+    {
+        this.failedCount = failedCount;
+    }
+
+    public int getCanceledCount()
+    {
+        return canceledCount;
+    }
+
+    public void setCanceledCount(int canceledCount)
+    {
+        this.canceledCount = canceledCount;
+    }
+
+    /**
+     * Get the device results (null if the snapshot has been taken without the results)
+     *
+     * @return
+     */
+    public List<DeviceBulkResult> getResults()
+    {
+        return results;
+    }
+
+    public void setResults(List<DeviceBulkResult> results)
+    {
+        this.results = results;
+    }
+
+    /**
+     * Add a device result, updating the counters
+     *
+     * @param result
+     * @param addToResults if false only the counters are updated
+     */
+    void addResult(DeviceBulkResult result, boolean addToResults)
+    {
+        deviceCount++;
+        switch (result.getStatus()) {
+            case PENDING:
+                pendingCount++;
+                break;
+            case RUNNING:
+                runningCount++;
+                break;
+            case SUCCEEDED:
+                succeededCount++;
+                break;
+            case FAILED:
+                failedCount++;
+                break;
+            case CANCELED:
+                canceledCount++;
+                break;
+        }
+        if (addToResults) {
+            if (results == null) {
+                results = new ArrayList<>();
+            }
+            results.add(new DeviceBulkResult(result));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Bulk operations list
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "deviceBulkOperations")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class DeviceBulkOperationListResult
+{
+    @XmlElement(name = "deviceBulkOperation")
+    private List<DeviceBulkOperation> items = new ArrayList<>();
+
+    public DeviceBulkOperationListResult()
+    {
+    }
+
+    public DeviceBulkOperationListResult(List<DeviceBulkOperation> items)
+    {
+        this.items = items;
+    }
+
+    public List<DeviceBulkOperation> getItems()
+    {
+        return items;
+    }
+
+    public void setItems(List<DeviceBulkOperation> items)
+    {
+        this.items = items;
+    }
+}
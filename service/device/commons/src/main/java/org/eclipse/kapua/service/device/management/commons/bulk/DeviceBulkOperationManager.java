@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalAccessException;
+import org.eclipse.kapua.KapuaIllegalArgumentException;
+import org.eclipse.kapua.KapuaIllegalNullArgumentException;
+import org.eclipse.kapua.KapuaIllegalStateException;
+import org.eclipse.kapua.KapuaUnauthenticatedException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.commons.util.ArgumentValidator;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.management.commons.DeviceManagementDomain;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult.Status;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSetting;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSettingKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor of the bulk device management operations.<br>
+ * A bulk operation executes a {@link DeviceBulkTask} for every device of a list. The device requests of all the operations are executed by a
+ * shared, bounded pool of threads and every operation has at most its parallelism devices in progress. A worker processes one device and then
+ * goes back to the tail of the pool queue, so the concurrent operations share the pool fairly.<br>
+ * <br>
+ * A failed device request is retried up to the operation attempts, unless the failure cannot be fixed by a retry (device not found, illegal
+ * argument, access denied). A canceled operation does not start new device requests: the requests in progress complete, the pending
+ * devices are marked as canceled. The failed and the canceled devices of a completed operation can be retried.<br>
+ * <br>
+ * The device requests are executed with the {@link KapuaSession} of the submitter, so only the submitter can retry an operation. Reading
+ * the operations requires the device management read permission, canceling and retrying them the write permission. The operations are kept
+ * in memory (they are lost on a restart) and are discarded after the retention time from their completion.
+ *
+ * @since 1.0
+ */
+public class DeviceBulkOperationManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeviceBulkOperationManager.class);
+
+    private static final DeviceBulkOperationManager instance;
+
+    static {
+        DeviceManagementSetting setting = DeviceManagementSetting.getInstance();
+        instance = new DeviceBulkOperationManager(setting.getInt(DeviceManagementSettingKey.BULK_MAX_THREADS, 20),
+                                                  setting.getInt(DeviceManagementSettingKey.BULK_DEFAULT_PARALLELISM, 10),
+                                                  setting.getInt(DeviceManagementSettingKey.BULK_MAX_PARALLELISM, 50),
+                                                  setting.getInt(DeviceManagementSettingKey.BULK_MAX_DEVICES, 10000),
+                                                  setting.getInt(DeviceManagementSettingKey.BULK_MAX_ATTEMPTS, 3),
+                                                  setting.getLong(DeviceManagementSettingKey.BULK_RETRY_DELAY, 2000L),
+                                                  setting.getLong(DeviceManagementSettingKey.BULK_RETENTION, 3600000L));
+    }
+
+    private final int                          defaultParallelism;
+    private final int                          maxParallelism;
+    private final int                          maxDevices;
+    private final int                          defaultMaxAttempts;
+    private final long                         retryDelay;
+    private final long                         retention;
+
+    private final ThreadPoolExecutor           executor;
+    private final Map<String, BulkOperation>   operations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param maxThreads
+     * @param defaultParallelism
+     * @param maxParallelism
+     * @param maxDevices
+     * @param defaultMaxAttempts
+     * @param retryDelay
+     * @param retention
+     */
+    DeviceBulkOperationManager(int maxThreads,
+                               int defaultParallelism,
+                               int maxParallelism,
+                               int maxDevices,
+                               int defaultMaxAttempts,
+                               long retryDelay,
+                               long retention)
+    {
+        this.defaultParallelism = defaultParallelism;
+        this.maxParallelism = maxParallelism;
+        this.maxDevices = maxDevices;
+        this.defaultMaxAttempts = defaultMaxAttempts;
+        this.retryDelay = retryDelay;
+        this.retention = retention;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "kapua-device-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get a singleton instance of {@link DeviceBulkOperationManager}
+     *
+     * @return
+     */
+    public static DeviceBulkOperationManager getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Start a bulk operation
+     *
+     * @param scopeId
+     * @param name optional operation name (i.e. the request type)
+     * @param deviceIds the target devices (the duplicates are ignored)
+     * @param parallelism the maximum number of devices processed concurrently (the default if null or not positive)
+     * @param maxAttempts the number of attempts of a device request (the default if null or not positive)
+     * @param task the device request
+     * @return the operation progress
+     * @throws KapuaException if the arguments are not valid
+     */
+    public DeviceBulkOperation submit(KapuaId scopeId, String name, Collection<KapuaId> deviceIds, Integer parallelism, Integer maxAttempts, DeviceBulkTask task)
+        throws KapuaException
+    {
+        ArgumentValidator.notNull(scopeId, "scopeId");
+        ArgumentValidator.notNull(deviceIds, "deviceIds");
+        ArgumentValidator.notNull(task, "task");
+
+        LinkedHashSet<KapuaId> targets = new LinkedHashSet<>(deviceIds);
+        if (targets.size() > maxDevices) {
+            throw new KapuaIllegalArgumentException("deviceIds", "more than " + maxDevices + " devices");
+        }
+        int operationParallelism = parallelism != null && parallelism > 0 ? Math.min(parallelism, maxParallelism) : defaultParallelism;
+        int operationMaxAttempts = maxAttempts != null && maxAttempts > 0 ? maxAttempts : defaultMaxAttempts;
+
+        purge();
+
+        BulkOperation operation = new BulkOperation(UUID.randomUUID().toString(),
+                                                    scopeId,
+                                                    name,
+                                                    operationParallelism,
+                                                    operationMaxAttempts,
+                                                    task,
+                                                    KapuaSecurityUtils.getSession(),
+                                                    targets.toArray(new KapuaId[targets.size()]));
+        operations.put(operation.id, operation);
+        logger.info("Bulk operation {} ({}) started on {} devices", new Object[] { operation.id, name, targets.size() });
+
+        int[] indexes = new int[operation.deviceIds.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        start(operation, indexes);
+        return operation.snapshot(false);
+    }
+
+    /**
+     * Find the bulk operation
+     *
+     * @param scopeId
+     * @param operationId
+     * @param withResults if true the device results are returned too
+     * @return the operation progress or null if not found
+     * @throws KapuaException if the current user cannot read the device management of the scope
+     */
+    public DeviceBulkOperation find(KapuaId scopeId, String operationId, boolean withResults)
+        throws KapuaException
+    {
+        checkPermission(Actions.read, scopeId);
+        BulkOperation operation = lookup(scopeId, operationId);
+        return operation != null ? operation.snapshot(withResults) : null;
+    }
+
+    /**
+     * Find the bulk operations of the scope (without the device results)
+     *
+     * @param scopeId
+     * @return
+     * @throws KapuaException if the current user cannot read the device management of the scope
+     */
+    public DeviceBulkOperationListResult query(KapuaId scopeId)
+        throws KapuaException
+    {
+        checkPermission(Actions.read, scopeId);
+        purge();
+        List<DeviceBulkOperation> result = new ArrayList<>();
+        for (BulkOperation operation : operations.values()) {
+            if (operation.scopeId.equals(scopeId)) {
+                result.add(operation.snapshot(false));
+            }
+        }
+        result.sort((o1, o2) -> o1.getCreatedOn().compareTo(o2.getCreatedOn()));
+        return new DeviceBulkOperationListResult(result);
+    }
+
+    /**
+     * Cancel the bulk operation.<br>
+     * The pending devices are canceled, the device requests in progress complete.
+     *
+     * @param scopeId
+     * @param operationId
+     * @return the operation progress or null if not found
+     * @throws KapuaException if the current user cannot write the device management of the scope
+     */
+    public DeviceBulkOperation cancel(KapuaId scopeId, String operationId)
+        throws KapuaException
+    {
+        checkPermission(Actions.write, scopeId);
+        BulkOperation operation = lookup(scopeId, operationId);
+        if (operation == null) {
+            return null;
+        }
+        if (operation.cancel()) {
+            logger.info("Bulk operation {} canceled", operationId);
+        }
+        return operation.snapshot(false);
+    }
+
+    /**
+     * Execute again the device requests failed or canceled of a completed bulk operation.<br>
+     * The requests are executed again with the session of the submitter, so the current user must be the submitter.
+     *
+     * @param scopeId
+     * @param operationId
+     * @return the operation progress or null if not found
+     * @throws KapuaIllegalStateException if the operation is still running
+     * @throws KapuaException if the current user cannot write the device management of the scope or is not the submitter
+     */
+    public DeviceBulkOperation retry(KapuaId scopeId, String operationId)
+        throws KapuaException
+    {
+        checkPermission(Actions.write, scopeId);
+        BulkOperation operation = lookup(scopeId, operationId);
+        if (operation == null) {
+            return null;
+        }
+        if (!isSubmitter(operation, KapuaSecurityUtils.getSession())) {
+            throw new KapuaIllegalAccessException("retry of the bulk operation " + operationId + " of another user");
+        }
+        int[] indexes = operation.reset();
+        logger.info("Bulk operation {} retried on {} devices", operationId, indexes.length);
+        start(operation, indexes);
+        return operation.snapshot(false);
+    }
+
+    /**
+     * Wait for the bulk operation to complete
+     *
+     * @param scopeId
+     * @param operationId
+     * @param timeout maximum wait (milliseconds)
+     * @return the operation progress (with the device results) or null if not found
+     * @throws KapuaException if the current user cannot read the device management of the scope
+     * @throws InterruptedException
+     */
+    public DeviceBulkOperation awaitCompletion(KapuaId scopeId, String operationId, long timeout)
+        throws KapuaException, InterruptedException
+    {
+        checkPermission(Actions.read, scopeId);
+        BulkOperation operation = lookup(scopeId, operationId);
+        if (operation == null) {
+            return null;
+        }
+        operation.awaitCompletion(timeout);
+        return operation.snapshot(true);
+    }
+
+    private static void checkPermission(Actions action, KapuaId scopeId)
+        throws KapuaException
+    {
+        ArgumentValidator.notNull(scopeId, "scopeId");
+
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        authorizationService.checkPermission(permissionFactory.newPermission(DeviceManagementDomain.DEVICE_MANAGEMENT, action, scopeId));
+    }
+
+    private static boolean isSubmitter(BulkOperation operation, KapuaSession session)
+    {
+        if (operation.session == null) {
+            // submitted without a session (i.e. by a trusted internal caller)
+            return session == null;
+        }
+        return session != null && operation.session.getUserId() != null && operation.session.getUserId().equals(session.getUserId());
+    }
+
+    private BulkOperation lookup(KapuaId scopeId, String operationId)
+    {
+        if (scopeId == null || operationId == null) {
+            return null;
+        }
+        BulkOperation operation = operations.get(operationId);
+        return operation != null && operation.scopeId.equals(scopeId) ? operation : null;
+    }
+
+    /**
+     * Discard the operations completed since more than the retention time
+     */
+    private void purge()
+    {
+        long limit = System.currentTimeMillis() - retention;
+        Iterator<BulkOperation> iterator = operations.values().iterator();
+        while (iterator.hasNext()) {
+            Date completedOn = iterator.next().getCompletedOn();
+            if (completedOn != null && completedOn.getTime() < limit) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void start(BulkOperation operation, int[] indexes)
+    {
+        int workers = operation.start(indexes);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(() -> runWorker(operation));
+        }
+    }
+
+    /**
+     * Process the next pending device of the operation, then queue again the worker
+     */
+    private void runWorker(BulkOperation operation)
+    {
+        int index = operation.claim();
+        if (index < 0) {
+            operation.workerDone();
+            return;
+        }
+        KapuaSecurityUtils.setSession(operation.session);
+        try {
+            process(operation, index);
+        }
+        finally {
+            KapuaSecurityUtils.clearSession();
+        }
+        executor.execute(() -> runWorker(operation));
+    }
+
+    private void process(BulkOperation operation, int index)
+    {
+        KapuaId deviceId = operation.deviceIds[index];
+        for (int attempt = 1;; attempt++) {
+            operation.attempt(index, attempt);
+            try {
+                String message = operation.task.execute(operation.scopeId, deviceId);
+                operation.complete(index, Status.SUCCEEDED, message);
+                return;
+            }
+            catch (Throwable t) {
+                String message = t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+                if (attempt >= operation.maxAttempts || !isRetryable(t)) {
+                    logger.debug("Bulk operation {}: device {} failed at attempt {}: {}", new Object[] { operation.id, deviceId, attempt, message });
+                    operation.complete(index, Status.FAILED, message);
+                    return;
+                }
+                if (!operation.pause(retryDelay)) {
+                    operation.complete(index, Status.CANCELED, message);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean isRetryable(Throwable t)
+    {
+        return t instanceof Exception &&
+               !(t instanceof KapuaEntityNotFoundException ||
+                 t instanceof KapuaIllegalArgumentException ||
+                 t instanceof KapuaIllegalNullArgumentException ||
+                 t instanceof KapuaIllegalAccessException ||
+                 t instanceof KapuaUnauthenticatedException);
+    }
+
+    /**
+     * Bulk operation state
+     */
+    private static class BulkOperation
+    {
+        private final String                      id;
+        private final KapuaId                     scopeId;
+        private final String                      name;
+        private final int                         parallelism;
+        private final int                         maxAttempts;
+        private final DeviceBulkTask              task;
+        private final KapuaSession                session;
+        private final Date                        createdOn;
+        private final KapuaId[]                   deviceIds;
+
+        // guarded by this
+        private final DeviceBulkResult[]          results;
+        private DeviceBulkOperation.Status        status;
+        private Date                              completedOn;
+        private int[]                             round;
+        private int                               next;
+        private int                               activeWorkers;
+        private boolean                           cancelRequested;
+
+        BulkOperation(String id, KapuaId scopeId, String name, int parallelism, int maxAttempts, DeviceBulkTask task, KapuaSession session, KapuaId[] deviceIds)
+        {
+            this.id = id;
+            this.scopeId = scopeId;
+            this.name = name;
+            this.parallelism = parallelism;
+            this.maxAttempts = maxAttempts;
+            this.task = task;
+            this.session = session;
+            this.createdOn = new Date();
+            this.deviceIds = deviceIds;
+
+            results = new DeviceBulkResult[deviceIds.length];
+            for (int i = 0; i < deviceIds.length; i++) {
+                results[i] = new DeviceBulkResult(deviceIds[i].toCompactId());
+            }
+        }
+
+        /**
+         * Start a round on the devices
+         *
+         * @param indexes
+         * @return the number of workers to be started
+         */
+        synchronized int start(int[] indexes)
+        {
+            round = indexes;
+            next = 0;
+            cancelRequested = false;
+            activeWorkers = Math.min(parallelism, indexes.length);
+            if (activeWorkers == 0) {
+                status = DeviceBulkOperation.Status.COMPLETED;
+                completedOn = new Date();
+            }
+            else {
+                status = DeviceBulkOperation.Status.RUNNING;
+                completedOn = null;
+            }
+            return activeWorkers;
+        }
+
+        /**
+         * Reset the failed and canceled devices to pending
+         *
+         * @return the indexes of the devices reset
+         */
+        synchronized int[] reset()
+        {
+            if (status == DeviceBulkOperation.Status.RUNNING) {
+                throw new KapuaIllegalStateException("The bulk operation " + id + " is still running");
+            }
+            int[] indexes = new int[results.length];
+            int count = 0;
+            for (int i = 0; i < results.length; i++) {
+                Status resultStatus = results[i].getStatus();
+                if (resultStatus == Status.FAILED || resultStatus == Status.CANCELED) {
+                    DeviceBulkResult result = new DeviceBulkResult(results[i].getDeviceId());
+                    results[i] = result;
+                    indexes[count++] = i;
+                }
+            }
+            int[] reset = new int[count];
+            System.arraycopy(indexes, 0, reset, 0, count);
+            return reset;
+        }
+
+        /**
+         * Take the next pending device
+         *
+         * @return the device index or -1 if there are no more pending devices
+         */
+        synchronized int claim()
+        {
+            while (!cancelRequested && next < round.length) {
+                int index = round[next++];
+                if (results[index].getStatus() == Status.PENDING) {
+                    results[index].setStatus(Status.RUNNING);
+                    results[index].setStartedOn(new Date());
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        synchronized void attempt(int index, int attempt)
+        {
+            results[index].setAttempts(attempt);
+        }
+
+        synchronized void complete(int index, Status resultStatus, String message)
+        {
+            results[index].setStatus(resultStatus);
+            results[index].setMessage(message);
+            results[index].setCompletedOn(new Date());
+        }
+
+        synchronized void workerDone()
+        {
+            if (--activeWorkers == 0) {
+                status = cancelRequested ? DeviceBulkOperation.Status.CANCELED : DeviceBulkOperation.Status.COMPLETED;
+                completedOn = new Date();
+                notifyAll();
+            }
+        }
+
+        /**
+         * Cancel the pending devices
+         *
+         * @return false if the operation is not running
+         */
+        synchronized boolean cancel()
+        {
+            if (status != DeviceBulkOperation.Status.RUNNING || cancelRequested) {
+                return false;
+            }
+            cancelRequested = true;
+            Date now = new Date();
+            for (DeviceBulkResult result : results) {
+                if (result.getStatus() == Status.PENDING) {
+                    result.setStatus(Status.CANCELED);
+                    result.setCompletedOn(now);
+                }
+            }
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Wait for the retry delay
+         *
+         * @param delay
+         * @return false if the operation has been canceled meanwhile
+         */
+        synchronized boolean pause(long delay)
+        {
+            long deadline = System.currentTimeMillis() + delay;
+            long wait;
+            while (!cancelRequested && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(wait);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return !cancelRequested;
+        }
+
+        synchronized void awaitCompletion(long timeout)
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            long wait;
+            while (status == DeviceBulkOperation.Status.RUNNING && (wait = deadline - System.currentTimeMillis()) > 0) {
+                wait(wait);
+            }
+        }
+
+        synchronized Date getCompletedOn()
+        {
+            return completedOn;
+        }
+
+        synchronized DeviceBulkOperation snapshot(boolean withResults)
+        {
+            DeviceBulkOperation operation = new DeviceBulkOperation();
+            operation.setId(id);
+            operation.setScopeId(scopeId.toCompactId());
+            operation.setName(name);
+            operation.setStatus(status);
+            operation.setParallelism(parallelism);
+            operation.setMaxAttempts(maxAttempts);
+            operation.setCreatedOn(createdOn);
+            operation.setCompletedOn(completedOn);
+            for (DeviceBulkResult result : results) {
+                operation.addResult(result, withResults);
+            }
+            return operation;
+        }
+    }
+}
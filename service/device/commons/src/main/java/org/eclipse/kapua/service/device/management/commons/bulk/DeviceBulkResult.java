@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Result of a bulk operation for a single device
+ *
+ * @since 1.0
+ */
+@XmlRootElement(name = "deviceBulkResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = { "deviceId", "status", "attempts", "message", "startedOn", "completedOn" })
+public class DeviceBulkResult
+{
+    /**
+     * Device result status
+     */
+    public enum Status
+    {
+        /**
+         * Waiting to be processed
+         */
+        PENDING,
+        /**
+         * Request in progress (or waiting for a retry)
+         */
+        RUNNING,
+        /**
+         * Request succeeded
+         */
+        SUCCEEDED,
+        /**
+         * Request failed at the last attempt
+         */
+        FAILED,
+        /**
+         * Not processed because the operation has been canceled
+         */
+        CANCELED
+    }
+
+    @XmlElement(name = "deviceId")
+    private String deviceId;
+
+    @XmlElement(name = "status")
+    private Status status;
+
+    @XmlElement(name = "attempts")
+    private int    attempts;
+
+    @XmlElement(name = "message")
+    private String message;
+
+    @XmlElement(name = "startedOn")
+    private Date   startedOn;
+
+    @XmlElement(name = "completedOn")
+    private Date   completedOn;
+
+    public DeviceBulkResult()
+    {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param deviceId the device id (in the compact form)
+     */
+    public DeviceBulkResult(String deviceId)
+    {
+        this.deviceId = deviceId;
+        this.status = Status.PENDING;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param result
+     */
+    public DeviceBulkResult(DeviceBulkResult result)
+    {
+        this.deviceId = result.deviceId;
+        this.status = result.status;
+        this.attempts = result.attempts;
+        this.message = result.message;
+        this.startedOn = result.startedOn;
+        this.completedOn = result.completedOn;
+    }
+
+    public String getDeviceId()
+    {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId)
+    {
+        this.deviceId = deviceId;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus(Status status)
+    {
+        this.status = status;
+    }
+
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts)
+    {
+        this.attempts = attempts;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    public void setMessage(String message)
+    {
+        this.message = message;
+    }
+
+    public Date getStartedOn()
+    {
+        return startedOn;
+    }
+
+    public void setStartedOn(Date startedOn)
+    {
+        this.startedOn = startedOn;
+    }
+
+    public Date getCompletedOn()
+    {
+        return completedOn;
+    }
+
+    public void setCompletedOn(Date completedOn)
+    {
+        this.completedOn = completedOn;
+    }
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Device request executed by a bulk operation for every device of the operation
+ *
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface DeviceBulkTask
+{
+    /**
+     * Execute the request on the device
+     *
+     * @param scopeId
+     * @param deviceId
+     * @return an optional message stored in the device result (i.e. the command output)
+     * @throws KapuaException if the request fails
+     */
+    public String execute(KapuaId scopeId, KapuaId deviceId)
+        throws KapuaException;
+}
@@ -31,7 +31,62 @@ public enum DeviceManagementSettingKey implements SettingKey
     /**
      * Request timeout
      */
-    REQUEST_TIMEOUT("request.timeout");
+    REQUEST_TIMEOUT("request.timeout"),
+
+    /**
+     * Bulk operations: maximum number of threads executing the device requests (shared by all the operations)
+     */
+    BULK_MAX_THREADS("bulk.max_threads"),
+
+    /**
+     * Bulk operations: number of devices of an operation processed concurrently, if not set by the request
+     */
+    BULK_DEFAULT_PARALLELISM("bulk.default_parallelism"),
+
+    /**
+     * Bulk operations: maximum number of devices of an operation processed concurrently
+     */
+    BULK_MAX_PARALLELISM("bulk.max_parallelism"),
+
+    /**
+     * Bulk operations: maximum number of devices of an operation
+     */
+    BULK_MAX_DEVICES("bulk.max_devices"),
+
+    /**
+     * Bulk operations: number of attempts of a device request, if not set by the request
+     */
+    BULK_MAX_ATTEMPTS("bulk.max_attempts"),
+
+    /**
+     * Bulk operations: delay between the attempts of a device request (milliseconds)
+     */
+    BULK_RETRY_DELAY("bulk.retry_delay"),
+
+    /**
+     * Bulk operations: time a completed operation is kept for the progress queries (milliseconds)
+     */
+    BULK_RETENTION("bulk.retention"),
+
+    /**
+     * Configuration cache: keep the last known configuration of the devices
+     */
+    CONFIGURATION_CACHE_ENABLED("configuration.cache.enabled"),
+
+    /**
+     * Configuration cache: maximum number of cached device configurations
+     */
+    CONFIGURATION_CACHE_SIZE_MAXIMUM("configuration.cache.size.maximum"),
+
+    /**
+     * Configuration cache: time a device configuration is kept (seconds)
+     */
+    CONFIGURATION_CACHE_EXPIRE_AFTER("configuration.cache.expire_after"),
+
+    /**
+     * Configuration cache: maximum age of a device configuration the updates are compared with (seconds)
+     */
+    CONFIGURATION_CACHE_DELTA_MAX_AGE("configuration.cache.delta.max_age");
 
     private String key;
 
@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.commons.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaIllegalAccessException;
+import org.eclipse.kapua.KapuaIllegalStateException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.management.commons.bulk.DeviceBulkResult.Status;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The device requests are simulated by tasks answering with a latency, failing or blocking like an unreachable device.
+ */
+public class DeviceBulkOperationManagerTest
+{
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.ONE);
+    private static final long    TIMEOUT  = 30000;
+
+    private AuthorizationService authorizationService;
+    private PermissionFactory    permissionFactory;
+
+    @Before
+    public void setUp()
+    {
+        authorizationService = mock(AuthorizationService.class);
+        permissionFactory = mock(PermissionFactory.class);
+        when(permissionFactory.newPermission(anyString(), any(Actions.class), any(KapuaId.class))).thenReturn(mock(Permission.class));
+
+        MockedLocator locator = (MockedLocator) KapuaLocator.getInstance();
+        locator.setMockedService(AuthorizationService.class, authorizationService);
+        locator.setMockedFactory(PermissionFactory.class, permissionFactory);
+    }
+
+    @After
+    public void tearDown()
+    {
+        KapuaSecurityUtils.clearSession();
+    }
+
+    private static DeviceBulkOperationManager newManager()
+    {
+        return new DeviceBulkOperationManager(8, 4, 16, 1000, 3, 10, 60000);
+    }
+
+    private static List<KapuaId> newDeviceIds(int count)
+    {
+        List<KapuaId> deviceIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            deviceIds.add(new KapuaEid(BigInteger.valueOf(1000 + i)));
+        }
+        return deviceIds;
+    }
+
+    @Test
+    public void testParallelismIsBounded()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(60), 5, null, (scopeId, deviceId) -> {
+            int current = running.incrementAndGet();
+            maxRunning.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(5);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return "ok " + deviceId.toCompactId();
+        });
+        assertEquals(60, operation.getDeviceCount());
+        assertEquals(5, operation.getParallelism());
+        assertNull(operation.getResults());
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(DeviceBulkOperation.Status.COMPLETED, operation.getStatus());
+        assertEquals(60, operation.getSucceededCount());
+        assertEquals(60, operation.getResults().size());
+        assertTrue("The parallelism must be bounded: " + maxRunning.get(), maxRunning.get() <= 5);
+        for (DeviceBulkResult result : operation.getResults()) {
+            assertEquals(Status.SUCCEEDED, result.getStatus());
+            assertEquals("ok " + result.getDeviceId(), result.getMessage());
+            assertEquals(1, result.getAttempts());
+        }
+    }
+
+    @Test
+    public void testDuplicatedDevicesAreProcessedOnce()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        List<KapuaId> deviceIds = newDeviceIds(10);
+        deviceIds.addAll(newDeviceIds(10));
+        AtomicInteger calls = new AtomicInteger();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", deviceIds, null, null, (scopeId, deviceId) -> {
+            calls.incrementAndGet();
+            return null;
+        });
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(10, operation.getDeviceCount());
+        assertEquals(10, calls.get());
+    }
+
+    @Test
+    public void testTransientFailuresAreRetried()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        Map<KapuaId, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(20), null, 3, (scopeId, deviceId) -> {
+            // the odd devices answer at the third attempt
+            int attempt = attempts.computeIfAbsent(deviceId, id -> new AtomicInteger()).incrementAndGet();
+            if (deviceId.getId().testBit(0) && attempt < 3) {
+                throw KapuaException.internalError("timeout");
+            }
+            return null;
+        });
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(20, operation.getSucceededCount());
+        for (DeviceBulkResult result : operation.getResults()) {
+            boolean odd = KapuaEid.parseCompactId(result.getDeviceId()).getId().testBit(0);
+            assertEquals(odd ? 3 : 1, result.getAttempts());
+        }
+    }
+
+    @Test
+    public void testFailedDevicesCanBeRetried()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        AtomicBoolean reachable = new AtomicBoolean(false);
+        AtomicInteger calls = new AtomicInteger();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(10), null, 2, (scopeId, deviceId) -> {
+            calls.incrementAndGet();
+            if (deviceId.getId().intValue() < 1005 && !reachable.get()) {
+                throw KapuaException.internalError("device not connected");
+            }
+            return null;
+        });
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(DeviceBulkOperation.Status.COMPLETED, operation.getStatus());
+        assertEquals(5, operation.getSucceededCount());
+        assertEquals(5, operation.getFailedCount());
+        assertEquals(15, calls.get());
+
+        reachable.set(true);
+        operation = manager.retry(SCOPE_ID, operation.getId());
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(DeviceBulkOperation.Status.COMPLETED, operation.getStatus());
+        assertEquals(10, operation.getSucceededCount());
+        assertEquals(20, calls.get());
+    }
+
+    @Test
+    public void testPermanentFailuresAreNotRetried()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(3), null, 5, (scopeId, deviceId) -> {
+            throw new KapuaEntityNotFoundException("device", deviceId);
+        });
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(3, operation.getFailedCount());
+        for (DeviceBulkResult result : operation.getResults()) {
+            assertEquals(1, result.getAttempts());
+            assertNotNull(result.getMessage());
+        }
+    }
+
+    @Test
+    public void testCancel()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(20), 2, null, (scopeId, deviceId) -> {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        try {
+            manager.retry(SCOPE_ID, operation.getId());
+            throw new AssertionError("A running operation cannot be retried");
+        }
+        catch (KapuaIllegalStateException e) {
+            // expected
+        }
+
+        operation = manager.cancel(SCOPE_ID, operation.getId());
+        assertEquals(2, operation.getRunningCount());
+        assertEquals(18, operation.getCanceledCount());
+        release.countDown();
+
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(DeviceBulkOperation.Status.CANCELED, operation.getStatus());
+        assertEquals(2, operation.getSucceededCount());
+        assertEquals(18, operation.getCanceledCount());
+        assertNotNull(operation.getCompletedOn());
+    }
+
+    @Test
+    public void testOperationsAreScoped()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(1), null, null, (scopeId, deviceId) -> null);
+        KapuaId otherScopeId = new KapuaEid(BigInteger.valueOf(2));
+
+        assertNull(manager.find(otherScopeId, operation.getId(), true));
+        assertNull(manager.cancel(otherScopeId, operation.getId()));
+        assertEquals(0, manager.query(otherScopeId).getItems().size());
+        assertNotNull(manager.find(SCOPE_ID, operation.getId(), false));
+        assertEquals(1, manager.query(SCOPE_ID).getItems().size());
+    }
+
+    @Test
+    public void testPermissionsAreChecked()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(1), null, null, (scopeId, deviceId) -> null);
+        manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+
+        Permission writePermission = mock(Permission.class);
+        when(permissionFactory.newPermission(anyString(), eq(Actions.write), any(KapuaId.class))).thenReturn(writePermission);
+        doThrow(new KapuaIllegalAccessException("write")).when(authorizationService).checkPermission(writePermission);
+
+        // read allowed, write denied
+        assertNotNull(manager.find(SCOPE_ID, operation.getId(), false));
+        assertEquals(1, manager.query(SCOPE_ID).getItems().size());
+        for (String action : new String[] { "cancel", "retry" }) {
+            try {
+                if ("cancel".equals(action)) {
+                    manager.cancel(SCOPE_ID, operation.getId());
+                }
+                else {
+                    manager.retry(SCOPE_ID, operation.getId());
+                }
+                throw new AssertionError("The " + action + " must require the write permission");
+            }
+            catch (KapuaIllegalAccessException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyTheSubmitterCanRetry()
+        throws Exception
+    {
+        DeviceBulkOperationManager manager = newManager();
+        KapuaId submitterId = new KapuaEid(BigInteger.valueOf(10));
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, SCOPE_ID, submitterId, "submitter"));
+        DeviceBulkOperation operation = manager.submit(SCOPE_ID, "test", newDeviceIds(2), null, 1, (scopeId, deviceId) -> {
+            throw KapuaException.internalError("device not connected");
+        });
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(2, operation.getFailedCount());
+
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, SCOPE_ID, new KapuaEid(BigInteger.valueOf(11)), "other"));
+        try {
+            manager.retry(SCOPE_ID, operation.getId());
+            throw new AssertionError("Another user must not retry the operation");
+        }
+        catch (KapuaIllegalAccessException e) {
+            // expected
+        }
+
+        KapuaSecurityUtils.setSession(new KapuaSession(null, SCOPE_ID, SCOPE_ID, submitterId, "submitter"));
+        operation = manager.retry(SCOPE_ID, operation.getId());
+        operation = manager.awaitCompletion(SCOPE_ID, operation.getId(), TIMEOUT);
+        assertEquals(2, operation.getFailedCount());
+    }
+}
@@ -43,6 +43,27 @@ public interface DeviceConfigurationManagementService extends KapuaService
                                    Long timeout)
         throws KapuaException;
 
+    /**
+     * Get the device configuration for the given device identifier and configuration identifier.<br>
+     * Unless a refresh is requested, the last known configuration of the device is returned if still valid (the device had no events since it was read).
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param configurationId
+     * @param configurationComponentPid
+     * @param refresh if true the configuration is always read from the device
+     * @param timeout timeout waiting for the device response
+     * @return
+     * @throws KapuaException
+     */
+    public DeviceConfiguration get(KapuaId scopeId,
+                                   KapuaId deviceId,
+                                   String configurationId,
+                                   String configurationComponentPid,
+                                   boolean refresh,
+                                   Long timeout)
+        throws KapuaException;
+
     /**
      * Put the provided configuration to the device identified by the provided device identifier
      * 
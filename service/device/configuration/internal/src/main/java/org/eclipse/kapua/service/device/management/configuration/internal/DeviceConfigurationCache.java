@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.configuration.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.commons.model.query.predicate.AndPredicate;
+import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.model.query.predicate.KapuaAttributePredicate;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSetting;
+import org.eclipse.kapua.service.device.management.commons.setting.DeviceManagementSettingKey;
+import org.eclipse.kapua.service.device.management.configuration.DeviceComponentConfiguration;
+import org.eclipse.kapua.service.device.management.configuration.DeviceConfiguration;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventFactory;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventPredicates;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventQuery;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+
+/**
+ * Last known configuration of the devices.<br>
+ * The configuration read from a device is kept together with the time the device sent it: a cached configuration is valid until the device has a newer event
+ * (birth, disconnection, configuration write, package install...) so the events stored by any node invalidate it. Configurations also expire after
+ * {@link DeviceManagementSettingKey#CONFIGURATION_CACHE_EXPIRE_AFTER} seconds, to bound the staleness of the changes made on the device without events.
+ * The configuration updates are compared only with the configurations read in the last {@link DeviceManagementSettingKey#CONFIGURATION_CACHE_DELTA_MAX_AGE}
+ * seconds: a delta computed against an older configuration could skip a component changed on the device in the meantime.<br>
+ * The cached configurations are never handed out: the callers get copies.
+ *
+ * @since 1.0
+ */
+public class DeviceConfigurationCache
+{
+    private static final DeviceConfigurationCache instance = new DeviceConfigurationCache();
+
+    private final boolean                                 enabled;
+    private final long                                    deltaMaxAgeNanos;
+    private final LocalCache<String, CachedConfiguration> configurations;
+
+    private DeviceConfigurationCache()
+    {
+        this(DeviceManagementSetting.getInstance().getBoolean(DeviceManagementSettingKey.CONFIGURATION_CACHE_ENABLED, true),
+             DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.CONFIGURATION_CACHE_SIZE_MAXIMUM, 10000),
+             DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.CONFIGURATION_CACHE_EXPIRE_AFTER, 600),
+             DeviceManagementSetting.getInstance().getInt(DeviceManagementSettingKey.CONFIGURATION_CACHE_DELTA_MAX_AGE, 60));
+    }
+
+    /**
+     * Create a cache with the given settings
+     *
+     * @param enabled
+     * @param sizeMaximum
+     * @param expireAfter seconds
+     * @param deltaMaxAge seconds
+     */
+    DeviceConfigurationCache(boolean enabled, int sizeMaximum, int expireAfter, int deltaMaxAge)
+    {
+        this.enabled = enabled;
+        this.deltaMaxAgeNanos = TimeUnit.SECONDS.toNanos(deltaMaxAge);
+        this.configurations = new LocalCache<>(sizeMaximum, expireAfter, null);
+    }
+
+    /**
+     * Get the device configuration cache instance
+     *
+     * @return
+     */
+    public static DeviceConfigurationCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return true if the configurations are cached
+     *
+     * @return
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Return a copy of the cached configuration of the device (only the given component if the component id is not null)
+     *
+     * @param scopeId
+     * @param deviceId
+     * @param componentId
+     * @return the configuration or null if not cached or if the device had events after the configuration was read
+     * @throws KapuaException
+     */
+    public DeviceConfiguration get(KapuaId scopeId, KapuaId deviceId, String componentId)
+        throws KapuaException
+    {
+        CachedConfiguration cachedConfiguration = getValid(scopeId, deviceId);
+        return cachedConfiguration != null ? copy(cachedConfiguration.configuration, componentId) : null;
+    }
+
+    /**
+     * Return the components of the requested configuration that are different from the cached configuration of the device
+     *
+     * @param scopeId
+     * @param deviceId
+     * @param requestedComponents
+     * @return the changed components or null if the configuration of the device is not cached or too old (so all the components must be sent)
+     * @throws KapuaException
+     */
+    public List<DeviceComponentConfiguration> getChangedComponents(KapuaId scopeId, KapuaId deviceId, List<? extends DeviceComponentConfiguration> requestedComponents)
+        throws KapuaException
+    {
+        CachedConfiguration cachedConfiguration = getValid(scopeId, deviceId);
+        if (cachedConfiguration == null || System.nanoTime() - cachedConfiguration.cachedOn > deltaMaxAgeNanos) {
+            return null;
+        }
+        return changedComponents(cachedConfiguration.configuration, requestedComponents);
+    }
+
+    /**
+     * Cache the whole configuration read from the device
+     *
+     * @param scopeId
+     * @param deviceId
+     * @param configuration
+     * @param receivedOn the time the device response was received
+     */
+    public void put(KapuaId scopeId, KapuaId deviceId, DeviceConfiguration configuration, Date receivedOn)
+    {
+        if (enabled && configuration != null && receivedOn != null) {
+            configurations.put(getKey(scopeId, deviceId), new CachedConfiguration(copy(configuration, null), receivedOn));
+        }
+    }
+
+    /**
+     * Drop the cached configuration of the device
+     *
+     * @param scopeId
+     * @param deviceId
+     */
+    public void invalidate(KapuaId scopeId, KapuaId deviceId)
+    {
+        configurations.remove(getKey(scopeId, deviceId));
+    }
+
+    private CachedConfiguration getValid(KapuaId scopeId, KapuaId deviceId)
+        throws KapuaException
+    {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = getKey(scopeId, deviceId);
+        CachedConfiguration cachedConfiguration = configurations.get(key);
+        if (cachedConfiguration == null) {
+            return null;
+        }
+
+        if (hasEventsAfter(scopeId, deviceId, cachedConfiguration.receivedOn)) {
+            configurations.remove(key);
+            return null;
+        }
+        return cachedConfiguration;
+    }
+
+    private static boolean hasEventsAfter(KapuaId scopeId, KapuaId deviceId, Date receivedOn)
+        throws KapuaException
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
+        DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
+
+        DeviceEventQuery query = deviceEventFactory.newQuery(scopeId);
+        query.setPredicate(new AndPredicate().and(new AttributePredicate<>(DeviceEventPredicates.DEVICE_ID, deviceId))
+                                             .and(new AttributePredicate<>(DeviceEventPredicates.RECEIVED_ON, receivedOn, KapuaAttributePredicate.Operator.GREATER_THAN)));
+
+        // the caller may manage the device without being allowed to read its events
+        long count;
+        try {
+            count = KapuaSecurityUtils.doPriviledge(() -> deviceEventService.count(query));
+        }
+        catch (KapuaException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw KapuaException.internalError(e);
+        }
+        return count > 0;
+    }
+
+    private static String getKey(KapuaId scopeId, KapuaId deviceId)
+    {
+        return new StringBuilder().append(scopeId.getId())
+                                  .append('/')
+                                  .append(deviceId.getId())
+                                  .toString();
+    }
+
+    /**
+     * Return a copy of the configuration (only the given component if the component id is not null)
+     *
+     * @param configuration
+     * @param componentId
+     * @return
+     */
+    static DeviceConfigurationImpl copy(DeviceConfiguration configuration, String componentId)
+    {
+        DeviceConfigurationImpl configurationCopy = new DeviceConfigurationImpl();
+        for (DeviceComponentConfiguration component : configuration.getComponentConfigurations()) {
+            if (componentId == null || componentId.equals(component.getId())) {
+                DeviceComponentConfigurationImpl componentCopy = new DeviceComponentConfigurationImpl(component.getId());
+                componentCopy.setName(component.getName());
+                componentCopy.setDefinition(component.getDefinition());
+                if (component.getProperties() != null) {
+                    componentCopy.setProperties(new HashMap<>(component.getProperties()));
+                }
+                configurationCopy.getComponentConfigurations().add(componentCopy);
+            }
+        }
+        return configurationCopy;
+    }
+
+    /**
+     * Return the requested components whose properties are different from the ones of the same component of the configuration (new components included)
+     *
+     * @param configuration
+     * @param requestedComponents
+     * @return
+     */
+    static List<DeviceComponentConfiguration> changedComponents(DeviceConfiguration configuration, List<? extends DeviceComponentConfiguration> requestedComponents)
+    {
+        Map<String, DeviceComponentConfiguration> components = new HashMap<>();
+        for (DeviceComponentConfiguration component : configuration.getComponentConfigurations()) {
+            components.put(component.getId(), component);
+        }
+
+        List<DeviceComponentConfiguration> changedComponents = new ArrayList<>();
+        for (DeviceComponentConfiguration requestedComponent : requestedComponents) {
+            DeviceComponentConfiguration component = components.get(requestedComponent.getId());
+            if (component == null || !sameProperties(component.getProperties(), requestedComponent.getProperties())) {
+                changedComponents.add(requestedComponent);
+            }
+        }
+        return changedComponents;
+    }
+
+    private static boolean sameProperties(Map<String, Object> properties, Map<String, Object> otherProperties)
+    {
+        if (properties == null || otherProperties == null) {
+            return properties == otherProperties;
+        }
+        if (properties.size() != otherProperties.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            // multi valued properties are arrays
+            if (!otherProperties.containsKey(property.getKey()) || !Objects.deepEquals(property.getValue(), otherProperties.get(property.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CachedConfiguration
+    {
+        private final DeviceConfiguration configuration;
+        private final Date                receivedOn;
+        private final long                cachedOn = System.nanoTime();
+
+        CachedConfiguration(DeviceConfiguration configuration, Date receivedOn)
+        {
+            this.configuration = configuration;
+            this.receivedOn = receivedOn;
+        }
+    }
+}
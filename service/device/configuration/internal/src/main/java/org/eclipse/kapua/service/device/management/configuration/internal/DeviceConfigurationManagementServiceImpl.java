@@ -13,7 +13,9 @@
 package org.eclipse.kapua.service.device.management.configuration.internal;
 
 import java.io.StringWriter;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.stream.FactoryConfigurationError;
@@ -44,6 +46,7 @@ import org.eclipse.kapua.service.device.management.configuration.message.interna
 import org.eclipse.kapua.service.device.management.configuration.message.internal.ConfigurationRequestPayload;
 import org.eclipse.kapua.service.device.management.configuration.message.internal.ConfigurationResponseMessage;
 import org.eclipse.kapua.service.device.management.configuration.message.internal.ConfigurationResponsePayload;
+import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventCreator;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventFactory;
 import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
@@ -57,10 +60,16 @@ import org.xml.sax.SAXException;
  */
 public class DeviceConfigurationManagementServiceImpl implements DeviceConfigurationManagementService {
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     public DeviceConfiguration get(KapuaId scopeId, KapuaId deviceId, String configurationId, String configurationComponentPid, Long timeout)
             throws KapuaException {
+        return get(scopeId, deviceId, configurationId, configurationComponentPid, false, timeout);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public DeviceConfiguration get(KapuaId scopeId, KapuaId deviceId, String configurationId, String configurationComponentPid, boolean refresh, Long timeout)
+            throws KapuaException {
         //
         // Argument Validation
         ArgumentValidator.notNull(scopeId, "scopeId");
@@ -73,6 +82,16 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceManagementDomain.DEVICE_MANAGEMENT, Actions.read, scopeId));
 
+        //
+        // Check the last known configuration
+        DeviceConfigurationCache deviceConfigurationCache = DeviceConfigurationCache.getInstance();
+        if (!refresh && configurationId == null) {
+            DeviceConfiguration cachedConfiguration = deviceConfigurationCache.get(scopeId, deviceId, configurationComponentPid);
+            if (cachedConfiguration != null && !cachedConfiguration.getComponentConfigurations().isEmpty()) {
+                return cachedConfiguration;
+            }
+        }
+
         //
         // Prepare the request
         ConfigurationRequestChannel configurationRequestChannel = new ConfigurationRequestChannel();
@@ -135,6 +154,12 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
 
         deviceEventService.create(deviceEventCreator);
 
+        //
+        // Keep the whole configuration (the following events of the device invalidate it)
+        if (configurationId == null && configurationComponentPid == null && KapuaResponseCode.ACCEPTED.equals(responseMessage.getResponseCode())) {
+            deviceConfigurationCache.put(scopeId, deviceId, deviceConfiguration, responseMessage.getReceivedOn());
+        }
+
         return deviceConfiguration;
     }
 
@@ -156,6 +181,15 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceManagementDomain.DEVICE_MANAGEMENT, Actions.write, scopeId));
 
+        //
+        // Skip the request if the component is not changed from the last known configuration (the write is still recorded)
+        DeviceConfigurationCache deviceConfigurationCache = DeviceConfigurationCache.getInstance();
+        List<DeviceComponentConfiguration> changedComponents = deviceConfigurationCache.getChangedComponents(scopeId, deviceId, Collections.singletonList(deviceComponentConfiguration));
+        if (changedComponents != null && changedComponents.isEmpty()) {
+            createUnchangedEvent(scopeId, deviceId, Collections.singletonList(deviceComponentConfiguration));
+            return;
+        }
+
         //
         // Prepare the request
         ConfigurationRequestChannel configurationRequestChannel = new ConfigurationRequestChannel();
@@ -193,9 +227,15 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
         //
-        // Do put
+        // Do put (the device configuration is no longer known, even if the request fails)
         DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        ConfigurationResponseMessage responseMessage;
+        try {
+            responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        }
+        finally {
+            deviceConfigurationCache.invalidate(scopeId, deviceId);
+        }
 
         //
         // Create event
@@ -244,6 +284,22 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceManagementDomain.DEVICE_MANAGEMENT, Actions.write, scopeId));
 
+        //
+        // Send only the components changed from the last known configuration
+        DeviceConfigurationCache deviceConfigurationCache = DeviceConfigurationCache.getInstance();
+        List<DeviceComponentConfiguration> changedComponents = deviceConfigurationCache.getChangedComponents(scopeId, deviceId, deviceConfiguration.getComponentConfigurations());
+        DeviceConfiguration requestConfiguration = deviceConfiguration;
+        if (changedComponents != null) {
+            if (changedComponents.isEmpty()) {
+                createUnchangedEvent(scopeId, deviceId, deviceConfiguration.getComponentConfigurations());
+                return;
+            }
+
+            DeviceConfigurationFactory deviceConfigurationFactory = locator.getFactory(DeviceConfigurationFactory.class);
+            requestConfiguration = deviceConfigurationFactory.newConfigurationInstance();
+            requestConfiguration.getComponentConfigurations().addAll(changedComponents);
+        }
+
         //
         // Prepare the request
         ConfigurationRequestChannel configurationRequestChannel = new ConfigurationRequestChannel();
@@ -258,7 +314,7 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
             String charEncoding = deviceManagementConfig.getString(DeviceManagementSettingKey.CHAR_ENCODING);
 
             StringWriter sw = new StringWriter();
-            XmlUtil.marshal(deviceConfiguration, sw);
+            XmlUtil.marshal(requestConfiguration, sw);
             byte[] requestBody = sw.toString().getBytes(charEncoding);
 
             configurationRequestPayload.setBody(requestBody);
@@ -274,9 +330,15 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
         configurationRequestMessage.setChannel(configurationRequestChannel);
 
         //
-        // Do put
+        // Do put (the device configuration is no longer known, even if the request fails)
         DeviceCallExecutor deviceApplicationCall = new DeviceCallExecutor(configurationRequestMessage, timeout);
-        ConfigurationResponseMessage responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        ConfigurationResponseMessage responseMessage;
+        try {
+            responseMessage = (ConfigurationResponseMessage) deviceApplicationCall.send();
+        }
+        finally {
+            deviceConfigurationCache.invalidate(scopeId, deviceId);
+        }
 
         //
         // Create event
@@ -292,4 +354,31 @@ public class DeviceConfigurationManagementServiceImpl implements DeviceConfigura
 
         deviceEventService.create(deviceEventCreator);
     }
+
+    /**
+     * Record a configuration write not sent to the device since no component is changed from the last known configuration
+     * 
+     * @param scopeId
+     * @param deviceId
+     * @param components the requested components
+     * @throws KapuaException
+     */
+    private static void createUnchangedEvent(KapuaId scopeId, KapuaId deviceId, List<? extends DeviceComponentConfiguration> components)
+            throws KapuaException {
+        StringBuilder eventMessage = new StringBuilder("Configuration unchanged, not sent to the device:");
+        for (DeviceComponentConfiguration component : components) {
+            eventMessage.append(' ').append(component.getId());
+        }
+
+        KapuaLocator locator = KapuaLocator.getInstance();
+        DeviceEventService deviceEventService = locator.getService(DeviceEventService.class);
+        DeviceEventFactory deviceEventFactory = locator.getFactory(DeviceEventFactory.class);
+
+        DeviceEventCreator deviceEventCreator = deviceEventFactory.newCreator(scopeId, deviceId, new Date(), DeviceConfigurationAppProperties.APP_NAME.getValue());
+        deviceEventCreator.setAction(KapuaMethod.WRITE);
+        deviceEventCreator.setResponseCode(KapuaResponseCode.ACCEPTED);
+        deviceEventCreator.setEventMessage(eventMessage.toString());
+
+        deviceEventService.create(deviceEventCreator);
+    }
 }
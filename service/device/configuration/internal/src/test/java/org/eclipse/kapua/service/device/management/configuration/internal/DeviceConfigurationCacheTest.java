@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.configuration.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.device.management.configuration.DeviceComponentConfiguration;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventFactory;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventQuery;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeviceConfigurationCacheTest
+{
+    private static final KapuaId SCOPE_ID  = new KapuaEid(BigInteger.valueOf(10));
+    private static final KapuaId DEVICE_ID = new KapuaEid(BigInteger.valueOf(20));
+
+    private DeviceEventService   deviceEventService;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        deviceEventService = mock(DeviceEventService.class);
+        DeviceEventFactory deviceEventFactory = mock(DeviceEventFactory.class);
+        DeviceEventQuery deviceEventQuery = mock(DeviceEventQuery.class);
+        when(deviceEventFactory.newQuery(any(KapuaId.class))).thenReturn(deviceEventQuery);
+
+        MockedLocator locator = (MockedLocator) KapuaLocator.getInstance();
+        locator.setMockedService(DeviceEventService.class, deviceEventService);
+        locator.setMockedFactory(DeviceEventFactory.class, deviceEventFactory);
+    }
+
+    @Test
+    public void recentConfigurationShouldGiveDelta()
+        throws Exception
+    {
+        DeviceConfigurationCache cache = new DeviceConfigurationCache(true, 10, 600, 60);
+        DeviceConfigurationImpl configuration = newConfiguration();
+        cache.put(SCOPE_ID, DEVICE_ID, configuration, new Date());
+
+        List<DeviceComponentConfiguration> changedComponents = cache.getChangedComponents(SCOPE_ID, DEVICE_ID, configuration.getComponentConfigurations());
+
+        assertNotNull(changedComponents);
+        assertTrue(changedComponents.isEmpty());
+    }
+
+    @Test
+    public void oldConfigurationShouldGiveNoDelta()
+        throws Exception
+    {
+        DeviceConfigurationCache cache = new DeviceConfigurationCache(true, 10, 600, 0);
+        DeviceConfigurationImpl configuration = newConfiguration();
+        cache.put(SCOPE_ID, DEVICE_ID, configuration, new Date());
+        Thread.sleep(5);
+
+        // the whole configuration is sent, the reads still use the cached one
+        assertNull(cache.getChangedComponents(SCOPE_ID, DEVICE_ID, configuration.getComponentConfigurations()));
+        assertEquals(1, cache.get(SCOPE_ID, DEVICE_ID, null).getComponentConfigurations().size());
+    }
+
+    @Test
+    public void deviceEventShouldInvalidate()
+        throws Exception
+    {
+        DeviceConfigurationCache cache = new DeviceConfigurationCache(true, 10, 600, 60);
+        DeviceConfigurationImpl configuration = newConfiguration();
+        cache.put(SCOPE_ID, DEVICE_ID, configuration, new Date());
+        when(deviceEventService.count(any(DeviceEventQuery.class))).thenReturn(1L);
+
+        assertNull(cache.getChangedComponents(SCOPE_ID, DEVICE_ID, configuration.getComponentConfigurations()));
+
+        when(deviceEventService.count(any(DeviceEventQuery.class))).thenReturn(0L);
+        assertNull(cache.get(SCOPE_ID, DEVICE_ID, null));
+    }
+
+    @Test
+    public void onlyChangedComponentsShouldBeSent()
+    {
+        DeviceConfigurationImpl cachedConfiguration = new DeviceConfigurationImpl();
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.clock.ClockService", "enabled", true));
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.net.admin.FirewallConfigurationService", "ports", new String[] { "22", "80" }));
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.web.Console", "port", 8080));
+
+        List<DeviceComponentConfigurationImpl> requestedComponents = Arrays.asList(newComponent("org.eclipse.kura.clock.ClockService", "enabled", true),
+                                                                                   newComponent("org.eclipse.kura.net.admin.FirewallConfigurationService", "ports", new String[] { "22", "80" }),
+                                                                                   newComponent("org.eclipse.kura.web.Console", "port", 8443),
+                                                                                   newComponent("org.eclipse.kura.cloud.CloudService", "topic.context.account-name", "kapua-sys"));
+
+        List<DeviceComponentConfiguration> changedComponents = DeviceConfigurationCache.changedComponents(cachedConfiguration, requestedComponents);
+
+        assertEquals(2, changedComponents.size());
+        assertEquals("org.eclipse.kura.web.Console", changedComponents.get(0).getId());
+        assertEquals("org.eclipse.kura.cloud.CloudService", changedComponents.get(1).getId());
+    }
+
+    @Test
+    public void unchangedConfigurationShouldHaveNoDelta()
+    {
+        DeviceConfigurationImpl cachedConfiguration = new DeviceConfigurationImpl();
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.clock.ClockService", "enabled", true));
+
+        DeviceConfigurationImpl requestedConfiguration = DeviceConfigurationCache.copy(cachedConfiguration, null);
+
+        assertTrue(DeviceConfigurationCache.changedComponents(cachedConfiguration, requestedConfiguration.getComponentConfigurations()).isEmpty());
+    }
+
+    @Test
+    public void copiesShouldNotShareProperties()
+    {
+        DeviceConfigurationImpl cachedConfiguration = new DeviceConfigurationImpl();
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.clock.ClockService", "enabled", true));
+        cachedConfiguration.getComponentConfigurations().add(newComponent("org.eclipse.kura.web.Console", "port", 8080));
+
+        DeviceConfigurationImpl copy = DeviceConfigurationCache.copy(cachedConfiguration, "org.eclipse.kura.web.Console");
+        copy.getComponentConfigurations().get(0).getProperties().put("port", 8443);
+
+        assertEquals(1, copy.getComponentConfigurations().size());
+        assertNotSame(cachedConfiguration.getComponentConfigurations().get(1), copy.getComponentConfigurations().get(0));
+        assertEquals(8080, cachedConfiguration.getComponentConfigurations().get(1).getProperties().get("port"));
+    }
+
+    private static DeviceConfigurationImpl newConfiguration()
+    {
+        DeviceConfigurationImpl configuration = new DeviceConfigurationImpl();
+        configuration.getComponentConfigurations().add(newComponent("org.eclipse.kura.clock.ClockService", "enabled", true));
+        return configuration;
+    }
+
+    private static DeviceComponentConfigurationImpl newComponent(String id, String propertyName, Object propertyValue)
+    {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(propertyName, propertyValue);
+
+        DeviceComponentConfigurationImpl component = new DeviceComponentConfigurationImpl(id);
+        component.setName(id);
+        component.setProperties(properties);
+        return component;
+    }
+}
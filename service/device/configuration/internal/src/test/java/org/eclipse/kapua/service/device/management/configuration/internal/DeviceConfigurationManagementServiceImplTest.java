@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.management.configuration.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.management.KapuaMethod;
+import org.eclipse.kapua.service.device.management.response.KapuaResponseCode;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventCreator;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventFactory;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventQuery;
+import org.eclipse.kapua.service.device.registry.event.DeviceEventService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The configuration writes not sent to the device are recorded as device events
+ */
+public class DeviceConfigurationManagementServiceImplTest
+{
+    private static final KapuaId SCOPE_ID = new KapuaEid(BigInteger.valueOf(10));
+
+    private DeviceEventService   deviceEventService;
+    private DeviceEventCreator   deviceEventCreator;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        PermissionFactory permissionFactory = mock(PermissionFactory.class);
+        when(permissionFactory.newPermission(anyString(), any(Actions.class), any(KapuaId.class))).thenReturn(mock(Permission.class));
+
+        deviceEventService = mock(DeviceEventService.class);
+        deviceEventCreator = mock(DeviceEventCreator.class);
+        DeviceEventFactory deviceEventFactory = mock(DeviceEventFactory.class);
+        when(deviceEventFactory.newQuery(any(KapuaId.class))).thenReturn(mock(DeviceEventQuery.class));
+        when(deviceEventFactory.newCreator(any(KapuaId.class), any(KapuaId.class), any(Date.class), anyString())).thenReturn(deviceEventCreator);
+
+        MockedLocator locator = (MockedLocator) KapuaLocator.getInstance();
+        locator.setMockedService(AuthorizationService.class, mock(AuthorizationService.class));
+        locator.setMockedFactory(PermissionFactory.class, permissionFactory);
+        locator.setMockedService(DeviceEventService.class, deviceEventService);
+        locator.setMockedFactory(DeviceEventFactory.class, deviceEventFactory);
+    }
+
+    @Test
+    public void unchangedConfigurationWriteShouldBeRecorded()
+        throws Exception
+    {
+        KapuaId deviceId = new KapuaEid(BigInteger.valueOf(20));
+        DeviceConfigurationImpl configuration = newConfiguration();
+        DeviceConfigurationCache.getInstance().put(SCOPE_ID, deviceId, configuration, new Date());
+
+        // no device call: it would fail without a transport
+        new DeviceConfigurationManagementServiceImpl().put(SCOPE_ID, deviceId, DeviceConfigurationCache.copy(configuration, null), 1000L);
+
+        verifyUnchangedEvent();
+    }
+
+    @Test
+    public void unchangedComponentWriteShouldBeRecorded()
+        throws Exception
+    {
+        KapuaId deviceId = new KapuaEid(BigInteger.valueOf(21));
+        DeviceConfigurationImpl configuration = newConfiguration();
+        DeviceConfigurationCache.getInstance().put(SCOPE_ID, deviceId, configuration, new Date());
+
+        new DeviceConfigurationManagementServiceImpl().put(SCOPE_ID, deviceId, DeviceConfigurationCache.copy(configuration, null).getComponentConfigurations().get(0), 1000L);
+
+        verifyUnchangedEvent();
+    }
+
+    private void verifyUnchangedEvent()
+        throws Exception
+    {
+        verify(deviceEventCreator).setAction(KapuaMethod.WRITE);
+        verify(deviceEventCreator).setResponseCode(KapuaResponseCode.ACCEPTED);
+        verify(deviceEventCreator).setEventMessage("Configuration unchanged, not sent to the device: org.eclipse.kura.clock.ClockService");
+        verify(deviceEventService).create(deviceEventCreator);
+    }
+
+    private static DeviceConfigurationImpl newConfiguration()
+    {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("enabled", true);
+
+        DeviceComponentConfigurationImpl component = new DeviceComponentConfigurationImpl("org.eclipse.kura.clock.ClockService");
+        component.setName("org.eclipse.kura.clock.ClockService");
+        component.setProperties(properties);
+
+        DeviceConfigurationImpl configuration = new DeviceConfigurationImpl();
+        configuration.getComponentConfigurations().add(component);
+        return configuration;
+    }
+}
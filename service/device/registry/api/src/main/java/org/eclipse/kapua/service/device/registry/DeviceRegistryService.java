@@ -12,7 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry;
 
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaEntityService;
 import org.eclipse.kapua.service.KapuaUpdatableEntityService;
@@ -36,4 +39,27 @@ public interface DeviceRegistryService extends KapuaEntityService<Device, Device
      */
     public Device findByClientId(KapuaId scopeId, String clientId)
         throws KapuaException;
+
+    /**
+     * Creates a device for every creator.<br>
+     * The write permission is checked once per scope (the whole batch is rejected if not granted) and the client identifiers are checked
+     * for uniqueness (within the batch and against the existing devices) before writing. The devices are inserted in chunks, a transaction per chunk.
+     * 
+     * @param deviceCreators
+     * @return the result of every creator, in the order of the creators
+     * @throws KapuaException
+     */
+    public KapuaBatchResult createAll(List<DeviceCreator> deviceCreators)
+        throws KapuaException;
+
+    /**
+     * Updates every device, as {@link #update(Device)} does.<br>
+     * The write permission is checked once per scope (the whole batch is rejected if not granted). The devices are updated in chunks, a transaction per chunk.
+     * 
+     * @param devices
+     * @return the result of every device, in the order of the devices
+     * @throws KapuaException
+     */
+    public KapuaBatchResult updateAll(List<Device> devices)
+        throws KapuaException;
 }
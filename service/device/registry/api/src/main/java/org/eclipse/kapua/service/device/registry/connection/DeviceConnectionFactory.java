@@ -32,6 +32,14 @@ public interface DeviceConnectionFactory extends KapuaObjectFactory
      */
     public DeviceConnectionCreator newCreator(KapuaId scopeId);
 
+    /**
+     * Creates a new device connection, to carry the status changes of {@link DeviceConnectionService#updateStatus(java.util.List)}
+     * 
+     * @param scopeId
+     * @return
+     */
+    public DeviceConnection newDeviceConnection(KapuaId scopeId);
+
     /**
      * Creates a new device connection query for the specified scope identifier
      * 
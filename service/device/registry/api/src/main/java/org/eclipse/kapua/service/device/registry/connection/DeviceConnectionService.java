@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection;
 
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.KapuaEntityService;
@@ -39,6 +41,19 @@ public interface DeviceConnectionService extends KapuaEntityService<DeviceConnec
     public DeviceConnection findByClientId(KapuaId scopeId, String clientId)
         throws KapuaException;
 
+    /**
+     * Update the status, client ip, server ip, user id and protocol of a batch of device connections (identified by scope id and id) in a single
+     * transaction.<br>
+     * Every device connection is written with its own values, the updates are sent to the database in batches.
+     * The device connections not found are skipped.
+     * 
+     * @param deviceConnections
+     * @return the device connections updated
+     * @throws KapuaException
+     */
+    public List<DeviceConnection> updateStatus(List<DeviceConnection> deviceConnections)
+        throws KapuaException;
+
     /**
      * Updated the status of provided device connection to connected;
      * if a device connection for the provided clientId is not found,
@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.common;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
 import org.eclipse.kapua.model.id.KapuaId;
@@ -54,15 +58,44 @@ public final class DeviceValidation {
      * @throws KapuaException
      */
     public DeviceCreator validateCreatePreconditions(DeviceCreator deviceCreator) throws KapuaException {
-        ArgumentValidator.notNull(deviceCreator, "deviceCreator");
-        ArgumentValidator.notNull(deviceCreator.getScopeId(), "deviceCreator.scopeId");
-        ArgumentValidator.notEmptyOrNull(deviceCreator.getClientId(), "deviceCreator.clientId");
+        validateCreateArguments(deviceCreator);
 
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceDomain.DEVICE, Actions.write, deviceCreator.getScopeId()));
 
         return deviceCreator;
     }
 
+    /**
+     * Validates the device batch create precondition: the write permission is checked once for every scope of the creators.<br>
+     * The single creators are validated by {@link #validateCreateArguments(DeviceCreator)}.
+     * 
+     * @param deviceCreators
+     * @throws KapuaException
+     */
+    public void validateCreateAllPreconditions(List<DeviceCreator> deviceCreators) throws KapuaException {
+        ArgumentValidator.notNull(deviceCreators, "deviceCreators");
+
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (DeviceCreator deviceCreator : deviceCreators) {
+            if (deviceCreator != null && deviceCreator.getScopeId() != null) {
+                scopeIds.add(deviceCreator.getScopeId());
+            }
+        }
+        checkWritePermission(scopeIds);
+    }
+
+    /**
+     * Validates the device creator arguments
+     * 
+     * @param deviceCreator
+     * @throws KapuaException
+     */
+    public void validateCreateArguments(DeviceCreator deviceCreator) throws KapuaException {
+        ArgumentValidator.notNull(deviceCreator, "deviceCreator");
+        ArgumentValidator.notNull(deviceCreator.getScopeId(), "deviceCreator.scopeId");
+        ArgumentValidator.notEmptyOrNull(deviceCreator.getClientId(), "deviceCreator.clientId");
+    }
+
     /**
      * Validates the device updates precondition
      * 
@@ -71,15 +104,44 @@ public final class DeviceValidation {
      * @throws KapuaException
      */
     public Device validateUpdatePreconditions(Device device) throws KapuaException {
-        ArgumentValidator.notNull(device, "device");
-        ArgumentValidator.notNull(device.getId(), "device.id");
-        ArgumentValidator.notNull(device.getScopeId(), "v.scopeId");
+        validateUpdateArguments(device);
 
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceDomain.DEVICE, Actions.write, device.getScopeId()));
 
         return device;
     }
 
+    /**
+     * Validates the device batch update precondition: the write permission is checked once for every scope of the devices.<br>
+     * The single devices are validated by {@link #validateUpdateArguments(Device)}.
+     * 
+     * @param devices
+     * @throws KapuaException
+     */
+    public void validateUpdateAllPreconditions(List<Device> devices) throws KapuaException {
+        ArgumentValidator.notNull(devices, "devices");
+
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (Device device : devices) {
+            if (device != null && device.getScopeId() != null) {
+                scopeIds.add(device.getScopeId());
+            }
+        }
+        checkWritePermission(scopeIds);
+    }
+
+    /**
+     * Validates the device update arguments
+     * 
+     * @param device
+     * @throws KapuaException
+     */
+    public void validateUpdateArguments(Device device) throws KapuaException {
+        ArgumentValidator.notNull(device, "device");
+        ArgumentValidator.notNull(device.getId(), "device.id");
+        ArgumentValidator.notNull(device.getScopeId(), "v.scopeId");
+    }
+
     /**
      * Validates the find device precondition
      * 
@@ -148,4 +210,9 @@ public final class DeviceValidation {
         authorizationService.checkPermission(permissionFactory.newPermission(DeviceDomain.DEVICE, Actions.read, scopeId));
     }
 
+    private void checkWritePermission(Set<KapuaId> scopeIds) throws KapuaException {
+        for (KapuaId scopeId : scopeIds) {
+            authorizationService.checkPermission(permissionFactory.newPermission(DeviceDomain.DEVICE, Actions.write, scopeId));
+        }
+    }
 }
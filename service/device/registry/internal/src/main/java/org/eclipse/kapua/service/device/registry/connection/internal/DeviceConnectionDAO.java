@@ -12,6 +12,11 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection.internal;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
 import org.eclipse.kapua.commons.jpa.EntityManager;
@@ -66,6 +71,39 @@ public class DeviceConnectionDAO extends ServiceDAO
         return ServiceDAO.update(em, DeviceConnectionImpl.class, deviceConnectionImpl);
     }
 
+    /**
+     * Update the status, client ip, server ip, user id and protocol of the provided device connections (identified by scope id and id).<br>
+     * The stored device connections are loaded by IN queries and written on commit, each with its own values: the updates are sent to the
+     * database in JDBC batches instead of a statement per device connection. Must be called within a transaction.
+     * 
+     * @param em
+     * @param deviceConnections
+     * @return the device connections updated (the device connections not found are skipped)
+     */
+    public static List<DeviceConnection> updateStatus(EntityManager em, List<DeviceConnection> deviceConnections)
+    {
+        List<KapuaId> deviceConnectionIds = new ArrayList<>(deviceConnections.size());
+        for (DeviceConnection deviceConnection : deviceConnections) {
+            deviceConnectionIds.add(deviceConnection.getId());
+        }
+        Map<BigInteger, DeviceConnectionImpl> storedDeviceConnections = ServiceDAO.findByIds(em, DeviceConnectionImpl.class, deviceConnectionIds);
+
+        List<DeviceConnection> updated = new ArrayList<>(storedDeviceConnections.size());
+        for (DeviceConnection deviceConnection : deviceConnections) {
+            DeviceConnectionImpl storedDeviceConnection = storedDeviceConnections.get(deviceConnection.getId().getId());
+            if (storedDeviceConnection == null || !storedDeviceConnection.getScopeId().getId().equals(deviceConnection.getScopeId().getId())) {
+                continue;
+            }
+            storedDeviceConnection.setStatus(deviceConnection.getStatus());
+            storedDeviceConnection.setClientIp(deviceConnection.getClientIp());
+            storedDeviceConnection.setServerIp(deviceConnection.getServerIp());
+            storedDeviceConnection.setUserId(deviceConnection.getUserId());
+            storedDeviceConnection.setProtocol(deviceConnection.getProtocol());
+            updated.add(storedDeviceConnection);
+        }
+        return updated;
+    }
+
     /**
      * Find the device connection by device connection identifier
      * 
@@ -78,6 +116,19 @@ public class DeviceConnectionDAO extends ServiceDAO
         return em.find(DeviceConnectionImpl.class, deviceConnectionId);
     }
 
+    /**
+     * Find the device connection by scope identifier and client identifier
+     * 
+     * @param em
+     * @param scopeId
+     * @param clientId
+     * @return
+     */
+    public static DeviceConnection findByClientId(EntityManager em, KapuaId scopeId, String clientId)
+    {
+        return ServiceDAO.findByField(em, DeviceConnectionImpl.class, scopeId, "clientId", clientId);
+    }
+
     /**
      * Return the device connection list matching the provided query
      * 
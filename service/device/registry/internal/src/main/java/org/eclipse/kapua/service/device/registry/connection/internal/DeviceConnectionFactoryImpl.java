@@ -13,6 +13,7 @@
 package org.eclipse.kapua.service.device.registry.connection.internal;
 
 import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionFactory;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionQuery;
@@ -33,6 +34,12 @@ public class DeviceConnectionFactoryImpl implements DeviceConnectionFactory
         return new DeviceConnectionCreatorImpl(scopeId);
     }
 
+    @Override
+    public DeviceConnection newDeviceConnection(KapuaId scopeId)
+    {
+        return new DeviceConnectionImpl(scopeId);
+    }
+
     @Override
     public DeviceConnectionQuery newQuery(KapuaId scopeId)
     {
@@ -12,22 +12,24 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.connection.internal;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.commons.service.internal.AbstractKapuaService;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
 import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
-import org.eclipse.kapua.model.query.predicate.KapuaPredicate;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
 import org.eclipse.kapua.service.authorization.permission.Actions;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionListResult;
-import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionPredicates;
 import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
 import org.eclipse.kapua.service.device.registry.internal.DeviceEntityManagerFactory;
 
@@ -100,6 +102,43 @@ public class DeviceConnectionServiceImpl extends AbstractKapuaService implements
         });
     }
 
+    @Override
+    public List<DeviceConnection> updateStatus(List<DeviceConnection> deviceConnections)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(deviceConnections, "deviceConnections");
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (DeviceConnection deviceConnection : deviceConnections) {
+            ArgumentValidator.notNull(deviceConnection.getId(), "deviceConnection.id");
+            ArgumentValidator.notNull(deviceConnection.getScopeId(), "deviceConnection.scopeId");
+            ArgumentValidator.notNull(deviceConnection.getStatus(), "deviceConnection.status");
+            ArgumentValidator.notNull(deviceConnection.getUserId(), "deviceConnection.userId");
+            ArgumentValidator.notEmptyOrNull(deviceConnection.getProtocol(), "deviceConnection.protocol");
+            scopeIds.add(deviceConnection.getScopeId());
+        }
+        if (deviceConnections.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        //
+        // Check Access
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        for (KapuaId scopeId : scopeIds) {
+            authorizationService.checkPermission(permissionFactory.newPermission(DeviceConnectionDomain.DEVICE_CONNECTION, Actions.write, scopeId));
+        }
+
+        return entityManagerSession.onEntityManagerResult(em -> {
+            em.beginTransaction();
+            List<DeviceConnection> updated = DeviceConnectionDAO.updateStatus(em, deviceConnections);
+            em.commit();
+            return updated;
+        });
+    }
+
     @Override
     public DeviceConnection find(KapuaId scopeId, KapuaId entityId)
         throws KapuaException
@@ -131,20 +170,15 @@ public class DeviceConnectionServiceImpl extends AbstractKapuaService implements
         ArgumentValidator.notEmptyOrNull(clientId, "clientId");
 
         //
-        // Build query
-        DeviceConnectionQueryImpl query = new DeviceConnectionQueryImpl(scopeId);
-        KapuaPredicate predicate = new AttributePredicate<String>(DeviceConnectionPredicates.CLIENT_ID, clientId);
-        query.setPredicate(predicate);
-
-        //
-        // Query and parse result
-        DeviceConnection device = null;
-        DeviceConnectionListResult result = query(query);
-        if (result.getSize() == 1) {
-            device = result.getItem(0);
-        }
+        // Check Access
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        authorizationService.checkPermission(permissionFactory.newPermission(DeviceConnectionDomain.DEVICE_CONNECTION, Actions.read, scopeId));
 
-        return device;
+        return entityManagerSession.onEntityManagerResult(em -> {
+            return DeviceConnectionDAO.findByClientId(em, scopeId, clientId);
+        });
     }
 
     @Override
@@ -12,6 +12,13 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.internal;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.jpa.EntityManager;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
@@ -38,6 +45,27 @@ public class DeviceDAO extends ServiceDAO {
      * @return
      */
     public static Device create(EntityManager em, DeviceCreator deviceCreator) {
+        return ServiceDAO.create(em, newDevice(deviceCreator));
+    }
+
+    /**
+     * Persists a new Device for every creator, without flushing: the inserts are sent by the next flush (in JDBC batches)
+     * 
+     * @param em
+     * @param deviceCreators
+     * @return the new devices, in the order of the creators
+     */
+    public static List<Device> persist(EntityManager em, List<DeviceCreator> deviceCreators) {
+        List<Device> devices = new ArrayList<>(deviceCreators.size());
+        for (DeviceCreator deviceCreator : deviceCreators) {
+            Device device = newDevice(deviceCreator);
+            em.persist(device);
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static Device newDevice(DeviceCreator deviceCreator) {
         Device device = new DeviceImpl(deviceCreator.getScopeId());
 
         device.setClientId(deviceCreator.getClientId());
@@ -69,7 +97,7 @@ public class DeviceDAO extends ServiceDAO {
         // issue #57
         device.setConnectionId(deviceCreator.getConnectionId());
 
-        return ServiceDAO.create(em, device);
+        return device;
     }
 
     /**
@@ -95,6 +123,41 @@ public class DeviceDAO extends ServiceDAO {
         return em.find(DeviceImpl.class, deviceId);
     }
 
+    /**
+     * Finds the device by scope identifier and client identifier
+     * 
+     * @param em
+     * @param scopeId
+     * @param clientId
+     * @return
+     */
+    public static Device findByClientId(EntityManager em, KapuaId scopeId, String clientId) {
+        return ServiceDAO.findByField(em, DeviceImpl.class, scopeId, "clientId", clientId);
+    }
+
+    /**
+     * Returns the client identifiers, among the provided ones, already used by the devices of the scope
+     * 
+     * @param em
+     * @param scopeId
+     * @param clientIds
+     * @return
+     */
+    public static Set<String> findClientIds(EntityManager em, KapuaId scopeId, Collection<String> clientIds) {
+        return ServiceDAO.findFieldValues(em, DeviceImpl.class, scopeId, "clientId", String.class, clientIds);
+    }
+
+    /**
+     * Finds the devices by device identifiers
+     * 
+     * @param em
+     * @param deviceIds
+     * @return the devices found, by device identifier value
+     */
+    public static Map<BigInteger, DeviceImpl> findByIds(EntityManager em, Collection<KapuaId> deviceIds) {
+        return ServiceDAO.findByIds(em, DeviceImpl.class, deviceIds);
+    }
+
     /**
      * Returns the device list matching the provided query
      * 
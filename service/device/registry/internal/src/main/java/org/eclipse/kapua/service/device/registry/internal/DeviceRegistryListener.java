@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Eurotech - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.internal;
+
+import org.eclipse.kapua.model.id.KapuaId;
+
+/**
+ * Listener notified by the {@link DeviceRegistryServiceImpl} every time a device is created, updated or deleted.<br>
+ * It allows the components caching device information (i.e. the client id to device id mapping) to drop their stale entries.
+ * 
+ * @since 1.0
+ *
+ */
+public interface DeviceRegistryListener {
+
+    /**
+     * Called after the device with the given client id has been created, updated or deleted (once the transaction is committed)
+     * 
+     * @param scopeId
+     * @param clientId
+     */
+    public void deviceChanged(KapuaId scopeId, String clientId);
+
+}
@@ -11,22 +11,30 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.device.registry.internal;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.jpa.EntityManagerSession;
-import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
+import org.eclipse.kapua.commons.service.internal.ServiceBatchWriter;
 import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
-import org.eclipse.kapua.model.query.predicate.KapuaPredicate;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
 import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
 import org.eclipse.kapua.service.device.registry.Device;
 import org.eclipse.kapua.service.device.registry.DeviceCreator;
 import org.eclipse.kapua.service.device.registry.DeviceListResult;
-import org.eclipse.kapua.service.device.registry.DevicePredicates;
 import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 import org.eclipse.kapua.service.device.registry.common.DeviceValidation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Device registry service implementation.
@@ -36,6 +44,11 @@ import org.eclipse.kapua.service.device.registry.common.DeviceValidation;
  */
 public class DeviceRegistryServiceImpl implements DeviceRegistryService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRegistryServiceImpl.class);
+
+    // Shared by all the service instances, the listeners are process wide caches
+    private static final List<DeviceRegistryListener> listeners = new CopyOnWriteArrayList<>();
+
     // Collaborator members
     private final AuthorizationService authorizationService;
     private final PermissionFactory permissionFactory;
@@ -77,47 +90,26 @@ public class DeviceRegistryServiceImpl implements DeviceRegistryService {
     public Device create(DeviceCreator deviceCreator) throws KapuaException {
         deviceValidation.validateCreatePreconditions(deviceCreator);
 
-        return entityManagerSession.onEntityManagerInsert(entityManager -> {
+        Device device = entityManagerSession.onEntityManagerInsert(entityManager -> {
             entityManager.beginTransaction();
-            Device device = DeviceDAO.create(entityManager, deviceCreator);
+            Device newDevice = DeviceDAO.create(entityManager, deviceCreator);
             entityManager.commit();
-            return DeviceDAO.find(entityManager, device.getId());
+            return DeviceDAO.find(entityManager, newDevice.getId());
         });
+        fireDeviceChanged(device.getScopeId(), device.getClientId());
+        return device;
     }
 
     @Override
     public Device update(Device device) throws KapuaException {
         deviceValidation.validateUpdatePreconditions(device);
-        return entityManagerSession.onEntityManagerResult(entityManager -> {
+        Device updatedDevice = entityManagerSession.onEntityManagerResult(entityManager -> {
             Device currentDevice = DeviceDAO.find(entityManager, device.getId());
             if (currentDevice == null) {
                 throw new KapuaEntityNotFoundException(Device.TYPE, device.getId());
             }
 
-            currentDevice.setStatus(device.getStatus());
-            currentDevice.setDisplayName(device.getDisplayName());
-            currentDevice.setLastEventOn(device.getLastEventOn());
-            currentDevice.setLastEventType(device.getLastEventType());
-            currentDevice.setSerialNumber(device.getSerialNumber());
-            currentDevice.setModelId(device.getModelId());
-            currentDevice.setImei(device.getImei());
-            currentDevice.setImsi(device.getImsi());
-            currentDevice.setIccid(device.getIccid());
-            currentDevice.setBiosVersion(device.getBiosVersion());
-            currentDevice.setFirmwareVersion(device.getFirmwareVersion());
-            currentDevice.setOsVersion(device.getOsVersion());
-            currentDevice.setJvmVersion(device.getJvmVersion());
-            currentDevice.setOsgiFrameworkVersion(device.getOsgiFrameworkVersion());
-            currentDevice.setApplicationFrameworkVersion(device.getApplicationFrameworkVersion());
-            currentDevice.setApplicationIdentifiers(device.getApplicationIdentifiers());
-            currentDevice.setAcceptEncoding(device.getAcceptEncoding());
-            currentDevice.setCustomAttribute1(device.getCustomAttribute1());
-            currentDevice.setCustomAttribute2(device.getCustomAttribute2());
-            currentDevice.setCustomAttribute3(device.getCustomAttribute3());
-            currentDevice.setCustomAttribute4(device.getCustomAttribute4());
-            currentDevice.setCustomAttribute5(device.getCustomAttribute5());
-            currentDevice.setCredentialsMode(device.getCredentialsMode());
-            currentDevice.setPreferredUserId(device.getPreferredUserId());
+            copyUpdatableFields(device, currentDevice);
 
             // Update
             entityManager.beginTransaction();
@@ -126,6 +118,83 @@ public class DeviceRegistryServiceImpl implements DeviceRegistryService {
 
             return DeviceDAO.find(entityManager, device.getId());
         });
+        fireDeviceChanged(updatedDevice.getScopeId(), updatedDevice.getClientId());
+        return updatedDevice;
+    }
+
+    @Override
+    public KapuaBatchResult createAll(List<DeviceCreator> deviceCreators) throws KapuaException {
+        deviceValidation.validateCreateAllPreconditions(deviceCreators);
+
+        // Client ids must be unique in the scope: within the batch first, then against the stored devices with a single lookup per scope
+        ServiceBatchWriter<DeviceCreator, Device> batchWriter = new ServiceBatchWriter<>(deviceCreators);
+        Map<KapuaId, Map<String, Integer>> clientIdsByScope = new HashMap<>();
+        for (int i = 0; i < deviceCreators.size(); i++) {
+            DeviceCreator deviceCreator = deviceCreators.get(i);
+            try {
+                deviceValidation.validateCreateArguments(deviceCreator);
+            } catch (KapuaException e) {
+                batchWriter.fail(i, e.getMessage());
+                continue;
+            }
+
+            Map<String, Integer> clientIds = clientIdsByScope.computeIfAbsent(deviceCreator.getScopeId(), k -> new HashMap<>());
+            Integer firstIndex = clientIds.putIfAbsent(deviceCreator.getClientId(), i);
+            if (firstIndex != null) {
+                batchWriter.fail(i, "Duplicate clientId " + deviceCreator.getClientId() + " (same as item " + firstIndex + ")");
+            }
+        }
+        entityManagerSession.onEntityManagerAction(entityManager -> {
+            for (Map.Entry<KapuaId, Map<String, Integer>> clientIds : clientIdsByScope.entrySet()) {
+                for (String clientId : DeviceDAO.findClientIds(entityManager, clientIds.getKey(), clientIds.getValue().keySet())) {
+                    batchWriter.fail(clientIds.getValue().get(clientId), "A device with clientId " + clientId + " already exists");
+                }
+            }
+        });
+
+        KapuaBatchResult result = batchWriter.write(entityManagerSession, DeviceDAO::persist);
+        for (Device device : batchWriter.getWrittenEntities()) {
+            fireDeviceChanged(device.getScopeId(), device.getClientId());
+        }
+        return result;
+    }
+
+    @Override
+    public KapuaBatchResult updateAll(List<Device> devices) throws KapuaException {
+        deviceValidation.validateUpdateAllPreconditions(devices);
+
+        ServiceBatchWriter<Device, Device> batchWriter = new ServiceBatchWriter<>(devices);
+        for (int i = 0; i < devices.size(); i++) {
+            try {
+                deviceValidation.validateUpdateArguments(devices.get(i));
+            } catch (KapuaException e) {
+                batchWriter.fail(i, e.getMessage());
+            }
+        }
+
+        KapuaBatchResult result = batchWriter.write(entityManagerSession, (entityManager, chunkDevices) -> {
+            List<KapuaId> deviceIds = new ArrayList<>(chunkDevices.size());
+            for (Device device : chunkDevices) {
+                deviceIds.add(device.getId());
+            }
+
+            // The devices are changed in the persistence context: the updates are sent by the flush
+            Map<BigInteger, DeviceImpl> currentDevices = DeviceDAO.findByIds(entityManager, deviceIds);
+            List<Device> updatedDevices = new ArrayList<>(chunkDevices.size());
+            for (Device device : chunkDevices) {
+                Device currentDevice = currentDevices.get(device.getId().getId());
+                if (currentDevice == null || !currentDevice.getScopeId().getId().equals(device.getScopeId().getId())) {
+                    throw new KapuaEntityNotFoundException(Device.TYPE, device.getId());
+                }
+                copyUpdatableFields(device, currentDevice);
+                updatedDevices.add(currentDevice);
+            }
+            return updatedDevices;
+        });
+        for (Device device : batchWriter.getWrittenEntities()) {
+            fireDeviceChanged(device.getScopeId(), device.getClientId());
+        }
+        return result;
     }
 
     @Override
@@ -149,34 +218,79 @@ public class DeviceRegistryServiceImpl implements DeviceRegistryService {
     @Override
     public void delete(KapuaId scopeId, KapuaId deviceId) throws KapuaException {
         deviceValidation.validateDeletePreconditions(scopeId, deviceId);
-        entityManagerSession.onEntityManagerAction(entityManager -> {
-            if (DeviceDAO.find(entityManager, deviceId) == null) {
+        Device device = entityManagerSession.onEntityManagerResult(entityManager -> {
+            Device currentDevice = DeviceDAO.find(entityManager, deviceId);
+            if (currentDevice == null) {
                 throw new KapuaEntityNotFoundException(Device.TYPE, deviceId);
             }
 
             entityManager.beginTransaction();
             DeviceDAO.delete(entityManager, deviceId);
             entityManager.commit();
+            return currentDevice;
         });
+        fireDeviceChanged(device.getScopeId(), device.getClientId());
     }
 
     @Override
     public Device findByClientId(KapuaId scopeId, String clientId) throws KapuaException {
         deviceValidation.validateFindByClientIdPreconditions(scopeId, clientId);
 
-        DeviceQueryImpl query = new DeviceQueryImpl(scopeId);
-        KapuaPredicate predicate = new AttributePredicate<String>(DevicePredicates.CLIENT_ID, clientId);
-        query.setPredicate(predicate);
+        return entityManagerSession.onEntityManagerResult(entityManager -> DeviceDAO.findByClientId(entityManager, scopeId, clientId));
+    }
 
-        //
-        // Query and parse result
-        Device device = null;
-        DeviceListResult result = query(query);
-        if (result.getSize() == 1) {
-            device = result.getItem(0);
-        }
+    /**
+     * Register a listener notified on every device change
+     * 
+     * @param listener
+     */
+    public static void addListener(DeviceRegistryListener listener) {
+        listeners.add(listener);
+    }
 
-        return device;
+    /**
+     * Unregister a listener
+     * 
+     * @param listener
+     */
+    public static void removeListener(DeviceRegistryListener listener) {
+        listeners.remove(listener);
     }
 
+    private static void copyUpdatableFields(Device device, Device currentDevice) {
+        currentDevice.setStatus(device.getStatus());
+        currentDevice.setDisplayName(device.getDisplayName());
+        currentDevice.setLastEventOn(device.getLastEventOn());
+        currentDevice.setLastEventType(device.getLastEventType());
+        currentDevice.setSerialNumber(device.getSerialNumber());
+        currentDevice.setModelId(device.getModelId());
+        currentDevice.setImei(device.getImei());
+        currentDevice.setImsi(device.getImsi());
+        currentDevice.setIccid(device.getIccid());
+        currentDevice.setBiosVersion(device.getBiosVersion());
+        currentDevice.setFirmwareVersion(device.getFirmwareVersion());
+        currentDevice.setOsVersion(device.getOsVersion());
+        currentDevice.setJvmVersion(device.getJvmVersion());
+        currentDevice.setOsgiFrameworkVersion(device.getOsgiFrameworkVersion());
+        currentDevice.setApplicationFrameworkVersion(device.getApplicationFrameworkVersion());
+        currentDevice.setApplicationIdentifiers(device.getApplicationIdentifiers());
+        currentDevice.setAcceptEncoding(device.getAcceptEncoding());
+        currentDevice.setCustomAttribute1(device.getCustomAttribute1());
+        currentDevice.setCustomAttribute2(device.getCustomAttribute2());
+        currentDevice.setCustomAttribute3(device.getCustomAttribute3());
+        currentDevice.setCustomAttribute4(device.getCustomAttribute4());
+        currentDevice.setCustomAttribute5(device.getCustomAttribute5());
+        currentDevice.setCredentialsMode(device.getCredentialsMode());
+        currentDevice.setPreferredUserId(device.getPreferredUserId());
+    }
+
+    private static void fireDeviceChanged(KapuaId scopeId, String clientId) {
+        for (DeviceRegistryListener listener : listeners) {
+            try {
+                listener.deviceChanged(scopeId, clientId);
+            } catch (RuntimeException e) {
+                logger.warn("Device registry listener {} failed: {}", listener, e.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.device.registry.connection.internal;
+
+import static java.math.BigInteger.ONE;
+import static org.eclipse.kapua.commons.security.KapuaSecurityUtils.doPriviledge;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnection;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionCreator;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionService;
+import org.eclipse.kapua.service.device.registry.connection.DeviceConnectionStatus;
+import org.eclipse.kapua.service.device.registry.internal.DeviceEntityManagerFactory;
+import org.eclipse.kapua.test.KapuaTest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DeviceConnectionServiceTest extends KapuaTest {
+
+    DeviceConnectionService deviceConnectionService = KapuaLocator.getInstance().getService(DeviceConnectionService.class);
+
+    DeviceConnectionFactoryImpl deviceConnectionFactory = new DeviceConnectionFactoryImpl();
+
+    public static String DEFAULT_FILTER = "dvc_*.sql";
+    public static String DROP_FILTER = "dvc_*_drop.sql";
+
+    // Data fixtures
+
+    KapuaEid scope = new KapuaEid(BigInteger.valueOf(random.nextLong()));
+
+    // Database fixtures
+
+    @BeforeClass
+    public static void beforeClass() throws KapuaException {
+        enableH2Connection();
+        scriptSession(DeviceEntityManagerFactory.instance(), DEFAULT_FILTER);
+    }
+
+    @AfterClass
+    public static void afterClass() throws KapuaException {
+        scriptSession(DeviceEntityManagerFactory.instance(), DROP_FILTER);
+    }
+
+    // Tests
+
+    @Test
+    public void shouldUpdateStatusOfAllConnections() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            DeviceConnection first = deviceConnectionService.create(newCreator("first"));
+            DeviceConnection second = deviceConnectionService.create(newCreator("second"));
+            DeviceConnection third = deviceConnectionService.create(newCreator("third"));
+
+            // When
+            List<DeviceConnection> updated = deviceConnectionService.updateStatus(Arrays.asList(
+                    newStatus(first, DeviceConnectionStatus.DISCONNECTED, "10.0.0.1"),
+                    newStatus(second, DeviceConnectionStatus.CONNECTED, "10.0.0.3"),
+                    newStatus(third, DeviceConnectionStatus.MISSING, "10.0.0.2")));
+
+            // Then
+            Assertions.assertThat(updated).extracting("id").containsExactly(first.getId(), second.getId(), third.getId());
+            DeviceConnection firstFound = deviceConnectionService.find(scope, first.getId());
+            Assertions.assertThat(firstFound.getStatus()).isEqualTo(DeviceConnectionStatus.DISCONNECTED);
+            Assertions.assertThat(firstFound.getClientIp()).isEqualTo("10.0.0.1");
+            Assertions.assertThat(firstFound.getServerIp()).isEqualTo("10.0.1.1");
+            Assertions.assertThat(firstFound.getOptlock()).isEqualTo(first.getOptlock() + 1);
+            DeviceConnection secondFound = deviceConnectionService.find(scope, second.getId());
+            Assertions.assertThat(secondFound.getStatus()).isEqualTo(DeviceConnectionStatus.CONNECTED);
+            Assertions.assertThat(secondFound.getClientIp()).isEqualTo("10.0.0.3");
+            DeviceConnection thirdFound = deviceConnectionService.find(scope, third.getId());
+            Assertions.assertThat(thirdFound.getStatus()).isEqualTo(DeviceConnectionStatus.MISSING);
+            Assertions.assertThat(thirdFound.getClientIp()).isEqualTo("10.0.0.2");
+            return null;
+        });
+    }
+
+    @Test
+    public void shouldSkipMissingConnections() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            DeviceConnectionImpl missing = new DeviceConnectionImpl(scope);
+            missing.setId(new KapuaEid(BigInteger.valueOf(random.nextLong())));
+            missing.setStatus(DeviceConnectionStatus.DISCONNECTED);
+            missing.setUserId(new KapuaEid(ONE));
+            missing.setProtocol("MQTT");
+
+            DeviceConnection found = deviceConnectionService.create(newCreator("found"));
+
+            // When
+            List<DeviceConnection> updated = deviceConnectionService.updateStatus(Arrays.asList(missing,
+                    newStatus(found, DeviceConnectionStatus.DISCONNECTED, "10.0.0.1")));
+
+            // Then
+            Assertions.assertThat(updated).extracting("id").containsExactly(found.getId());
+            return null;
+        });
+    }
+
+    private DeviceConnectionCreator newCreator(String clientId) {
+        DeviceConnectionCreator deviceConnectionCreator = deviceConnectionFactory.newCreator(scope);
+        deviceConnectionCreator.setClientId(clientId);
+        deviceConnectionCreator.setUserId(new KapuaEid(ONE));
+        deviceConnectionCreator.setProtocol("MQTT");
+        deviceConnectionCreator.setClientIp("127.0.0.1");
+        return deviceConnectionCreator;
+    }
+
+    private DeviceConnection newStatus(DeviceConnection deviceConnection, DeviceConnectionStatus status, String clientIp) {
+        DeviceConnection newStatus = deviceConnectionFactory.newDeviceConnection(deviceConnection.getScopeId());
+        newStatus.setId(deviceConnection.getId());
+        newStatus.setStatus(status);
+        newStatus.setClientIp(clientIp);
+        newStatus.setServerIp("10.0.1.1");
+        newStatus.setUserId(deviceConnection.getUserId());
+        newStatus.setProtocol(deviceConnection.getProtocol());
+        return newStatus;
+    }
+
+}
@@ -17,6 +17,8 @@ import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.model.query.predicate.AttributePredicate;
 import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.batch.KapuaBatchItemResult.Status;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.service.device.registry.*;
 import org.eclipse.kapua.test.KapuaTest;
 import org.junit.AfterClass;
@@ -25,6 +27,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static java.util.UUID.randomUUID;
 import static org.eclipse.kapua.commons.model.query.predicate.AttributePredicate.attributeIsEqualTo;
@@ -191,4 +196,98 @@ public class DeviceRegistryServiceTest extends KapuaTest {
         });
     }
 
+    @Test
+    public void shouldNotifyListenersOnDeviceChanges() throws Exception {
+        List<String> changes = new ArrayList<>();
+        DeviceRegistryListener listener = (scopeId, changedClientId) -> {
+            if (clientId.equals(changedClientId)) {
+                changes.add(scopeId.getId() + "/" + changedClientId);
+            }
+        };
+        DeviceRegistryServiceImpl.addListener(listener);
+        try {
+            doPriviledge(() -> {
+                // Given
+                Device device = deviceRegistryService.create(deviceCreator);
+                device.setBiosVersion("foo");
+
+                // When
+                deviceRegistryService.update(device);
+                deviceRegistryService.delete(device.getScopeId(), device.getId());
+
+                // Then
+                Assertions.assertThat(changes).hasSize(3).containsOnly(scope.getId() + "/" + clientId);
+                return null;
+            });
+        } finally {
+            DeviceRegistryServiceImpl.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void shouldCreateAllDevices() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            List<DeviceCreator> deviceCreators = new ArrayList<>();
+            for (int i = 0; i < 1200; i++) {
+                deviceCreators.add(new DeviceFactoryImpl().newCreator(scope, clientId + "-" + i));
+            }
+
+            // When
+            KapuaBatchResult result = deviceRegistryService.createAll(deviceCreators);
+
+            // Then
+            Assertions.assertThat(result.getSucceededCount()).isEqualTo(1200);
+            Assertions.assertThat(result.getFailedCount()).isEqualTo(0);
+            Device deviceFound = deviceRegistryService.findByClientId(scope, clientId + "-1100");
+            Assertions.assertThat(deviceFound.getId()).isEqualTo(result.getItem(1100).getEntityId());
+            return null;
+        });
+    }
+
+    @Test
+    public void shouldReportDuplicateClientIdsOnCreateAll() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            deviceRegistryService.create(deviceCreator);
+            List<DeviceCreator> deviceCreators = new ArrayList<>();
+            deviceCreators.add(new DeviceFactoryImpl().newCreator(scope, clientId));
+            deviceCreators.add(new DeviceFactoryImpl().newCreator(scope, clientId + "-new"));
+            deviceCreators.add(new DeviceFactoryImpl().newCreator(scope, clientId + "-new"));
+            deviceCreators.add(new DeviceFactoryImpl().newCreator(scope, null));
+
+            // When
+            KapuaBatchResult result = deviceRegistryService.createAll(deviceCreators);
+
+            // Then
+            Assertions.assertThat(result.getSucceededCount()).isEqualTo(1);
+            Assertions.assertThat(result.getItem(0).getStatus()).isEqualTo(Status.FAILED);
+            Assertions.assertThat(result.getItem(1).getStatus()).isEqualTo(Status.SUCCEEDED);
+            Assertions.assertThat(result.getItem(2).getStatus()).isEqualTo(Status.FAILED);
+            Assertions.assertThat(result.getItem(3).getStatus()).isEqualTo(Status.FAILED);
+            return null;
+        });
+    }
+
+    @Test
+    public void shouldUpdateAllDevices() throws Exception {
+        doPriviledge(() -> {
+            // Given
+            Device device = deviceRegistryService.create(deviceCreator);
+            device.setBiosVersion("foo");
+            Device missingDevice = new DeviceImpl(scope);
+            ((DeviceImpl) missingDevice).setId(new KapuaEid(BigInteger.valueOf(random.nextLong()).abs()));
+
+            // When
+            KapuaBatchResult result = deviceRegistryService.updateAll(Arrays.asList(device, missingDevice));
+
+            // Then
+            Assertions.assertThat(result.getItem(0).getStatus()).isEqualTo(Status.SUCCEEDED);
+            Assertions.assertThat(result.getItem(1).getStatus()).isEqualTo(Status.FAILED);
+            Device deviceFound = deviceRegistryService.find(scope, device.getId());
+            Assertions.assertThat(deviceFound.getBiosVersion()).isEqualTo("foo");
+            return null;
+        });
+    }
+
 }
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.authentication;
 
+import java.util.Date;
+
 import org.eclipse.kapua.model.KapuaEntity;
 import org.eclipse.kapua.model.id.KapuaId;
 
@@ -53,4 +55,19 @@ public interface AccessToken extends KapuaEntity
      */
 	public KapuaId getUserId();
 
+    /**
+     * Return the token expiration date (null if the token does not expire)
+     * 
+     * @return
+     */
+    public Date getExpiresOn();
+
+    /**
+     * Return the refresh token, to be used to get a new access token before the refresh token expiration.<br>
+     * It is set only on the token returned by the login.
+     * 
+     * @return
+     */
+    public String getRefreshToken();
+
 }
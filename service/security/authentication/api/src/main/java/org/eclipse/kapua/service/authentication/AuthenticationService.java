@@ -53,4 +53,24 @@ public interface AuthenticationService extends KapuaService
     public AccessToken getToken(String tokenId) 
     	throws KapuaException;
 
+    /**
+     * Issue a new {@link AccessToken} (and a new refresh token) for the provided refresh token.<br>
+     * The refresh token can be used only once.
+     * 
+     * @param refreshToken
+     * @return
+     * @throws KapuaException if the refresh token is not valid, is expired or has already been used
+     */
+    public AccessToken refreshToken(String refreshToken)
+        throws KapuaException;
+
+    /**
+     * Revoke the {@link AccessToken} identified by the provided token identifier, together with its refresh token
+     * 
+     * @param tokenId
+     * @throws KapuaException if the token identifier is not valid
+     */
+    public void revokeToken(String tokenId)
+        throws KapuaException;
+
 }
@@ -31,6 +31,8 @@ public class AccessTokenImpl extends AbstractKapuaEntity implements AccessToken
 	private String tokenId;
 	private KapuaId userId;
 	private KapuaId userScopeId;
+	private Date expiresOn;
+	private String refreshToken;
 	
     /**
      * Constructor
@@ -50,6 +52,22 @@ public class AccessTokenImpl extends AbstractKapuaEntity implements AccessToken
 		createdBy = id;
 	}
 
+    /**
+     * Constructor
+     * 
+     * @param userId user identifier
+     * @param scopeId scope identifier
+     * @param userScopeId user acts on a different scope identifier (on which he has the right)
+     * @param tokenId token identifier
+     * @param expiresOn token expiration date
+     * @param refreshToken refresh token (may be null)
+     */
+	public AccessTokenImpl(KapuaEid userId, KapuaEid scopeId, KapuaEid userScopeId, String tokenId, Date expiresOn, String refreshToken) {
+		this(userId, scopeId, userScopeId, tokenId);
+		this.expiresOn = expiresOn;
+		this.refreshToken = refreshToken;
+	}
+
 	@Override
 	public KapuaId getId() {
 		return id;
@@ -84,5 +102,15 @@ public class AccessTokenImpl extends AbstractKapuaEntity implements AccessToken
 	public KapuaId getUserId() {
 		return userId;
 	}
+
+    @Override
+	public Date getExpiresOn() {
+		return expiresOn;
+	}
+
+    @Override
+	public String getRefreshToken() {
+		return refreshToken;
+	}
 	
 }
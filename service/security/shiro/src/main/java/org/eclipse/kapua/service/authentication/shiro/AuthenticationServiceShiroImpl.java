@@ -30,15 +30,22 @@ import org.apache.shiro.session.Session;
 import org.apache.shiro.session.mgt.AbstractSessionManager;
 import org.apache.shiro.session.mgt.AbstractValidatingSessionManager;
 import org.apache.shiro.subject.Subject;
-import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaRuntimeException;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
 import org.eclipse.kapua.commons.security.KapuaSession;
+import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.service.authentication.AccessToken;
 import org.eclipse.kapua.service.authentication.AccessTokenImpl;
 import org.eclipse.kapua.service.authentication.AuthenticationCredentials;
 import org.eclipse.kapua.service.authentication.AuthenticationService;
+import org.eclipse.kapua.service.authentication.credential.CredentialService;
+import org.eclipse.kapua.service.authentication.shiro.token.AccessTokenAuthenticatingRealm;
+import org.eclipse.kapua.service.authentication.shiro.token.AccessTokenManager;
+import org.eclipse.kapua.service.authentication.shiro.token.RefreshTokenUserCheck;
+import org.eclipse.kapua.service.authentication.shiro.token.TokenClaims;
+import org.eclipse.kapua.service.user.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -54,6 +61,9 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService
 
     private static Logger logger = LoggerFactory.getLogger(AuthenticationServiceShiroImpl.class);
 
+    // true if the signed access tokens are enabled (signature secret configured and valid)
+    private static boolean signedTokens;
+
     static {
         // org.apache.shiro.config.Ini
         // org.apache.shiro.config.IniSecurityManagerFactory
@@ -66,6 +76,18 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService
         Collection<Realm> realms = new ArrayList<Realm>();
         try {
             realms.add(new org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticatingRealm());
+            if (AccessTokenManager.isEnabled()) {
+                try {
+                    realms.add(new AccessTokenAuthenticatingRealm());
+                    signedTokens = true;
+                }
+                catch (KapuaRuntimeException e) {
+                    logger.error("Signed access tokens disabled: {}", e.getMessage());
+                }
+            }
+            else {
+                logger.info("Signed access tokens disabled: authentication.token.secret is not configured");
+            }
             realms.add(new org.eclipse.kapua.service.authorization.shiro.KapuaAuthorizingRealm());
         }
         catch (KapuaException e) {
@@ -137,8 +159,13 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService
                 KapuaEid userId = (KapuaEid) shiroSession.getAttribute("userId");
 
                 // create the access token
-                String generatedTokenKey = generateToken();
-                AccessToken accessToken = new AccessTokenImpl(userId, scopeId, userScopeId, generatedTokenKey);
+                AccessToken accessToken;
+                if (signedTokens) {
+                    accessToken = AccessTokenManager.getInstance().issue(userId, scopeId, userScopeId, usernamePasswordToken.getUsername());
+                }
+                else {
+                    accessToken = new AccessTokenImpl(userId, scopeId, userScopeId, generateToken());
+                }
 
                 KapuaSession kapuaSession = new KapuaSession(accessToken,
                                                              scopeId,
@@ -204,15 +231,37 @@ public class AuthenticationServiceShiroImpl implements AuthenticationService
         return UUID.randomUUID().toString();
     }
 
+    private static AccessTokenManager getTokenManager()
+        throws KapuaException
+    {
+        if (!signedTokens) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.TOKENS_DISABLED);
+        }
+        return AccessTokenManager.getInstance();
+    }
+
     @Override
     public AccessToken getToken(String tokenId) throws KapuaException
     {
-        // KapuaSession kapuaSession = sessionMap.get(tokenId);
-        // if (kapuaSession!=null) {
-        // return kapuaSession.getAccessToken();
-        // }
-        // TODO choose the appropriate exception
-        throw new KapuaException(KapuaErrorCodes.ENTITY_NOT_FOUND);
+        TokenClaims claims = getTokenManager().verify(tokenId);
+        return claims.toAccessToken(tokenId);
+    }
+
+    @Override
+    public AccessToken refreshToken(String refreshToken)
+        throws KapuaException
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        RefreshTokenUserCheck userCheck = new RefreshTokenUserCheck(locator.getService(UserService.class),
+                                                                    locator.getService(CredentialService.class));
+        return getTokenManager().refresh(refreshToken, userCheck);
+    }
+
+    @Override
+    public void revokeToken(String tokenId)
+        throws KapuaException
+    {
+        getTokenManager().revoke(tokenId);
     }
 
 }
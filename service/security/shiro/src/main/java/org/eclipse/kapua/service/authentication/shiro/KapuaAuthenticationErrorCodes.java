@@ -57,5 +57,21 @@ public enum KapuaAuthenticationErrorCodes implements KapuaErrorCode
     /**
      * Credential crypt error
      */
-    CREDENTIAL_CRYPT_ERROR
+    CREDENTIAL_CRYPT_ERROR,
+    /**
+     * Malformed access token or invalid signature
+     */
+    INVALID_TOKEN,
+    /**
+     * Expired access token
+     */
+    EXPIRED_TOKEN,
+    /**
+     * Revoked access token
+     */
+    REVOKED_TOKEN,
+    /**
+     * Signed access tokens not enabled (signature secret not configured)
+     */
+    TOKENS_DISABLED
 }
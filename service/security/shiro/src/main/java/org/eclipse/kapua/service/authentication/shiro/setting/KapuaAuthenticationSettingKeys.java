@@ -22,7 +22,19 @@ import org.eclipse.kapua.commons.setting.SettingKey;
  */
 public enum KapuaAuthenticationSettingKeys implements SettingKey
 {
-	AUTHENTICATION_KEY("authentication.key");
+	AUTHENTICATION_KEY("authentication.key"),
+	/**
+	 * Secret of the access tokens signature (base64). If empty the signed access tokens are disabled
+	 */
+	AUTHENTICATION_TOKEN_SECRET("authentication.token.secret"),
+	/**
+	 * Access token time to live (milliseconds)
+	 */
+	AUTHENTICATION_TOKEN_ACCESS_TTL("authentication.token.access.ttl"),
+	/**
+	 * Refresh token time to live (milliseconds)
+	 */
+	AUTHENTICATION_TOKEN_REFRESH_TTL("authentication.token.refresh.ttl");
 	
 	private String key;
 	
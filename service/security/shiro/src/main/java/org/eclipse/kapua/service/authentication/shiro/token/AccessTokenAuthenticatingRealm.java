@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.ExpiredCredentialsException;
+import org.apache.shiro.authc.IncorrectCredentialsException;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authc.credential.AllowAllCredentialsMatcher;
+import org.apache.shiro.realm.AuthenticatingRealm;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.eclipse.kapua.service.authentication.AccessToken;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationErrorCodes;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+
+/**
+ * Apache Shiro {@link AuthenticatingRealm} of the bearer access tokens.<br>
+ * The token is verified by the {@link AccessTokenManager} (signature, expiration and revocation) without any database access. The primary
+ * principal is the username (as for the username and password logins, so the authorizing realm is the same), the {@link AccessToken} is the
+ * second principal.<br>
+ * The realm does not use the Shiro session: a request authenticated by token is stateless.
+ *
+ * @since 1.0
+ */
+public class AccessTokenAuthenticatingRealm extends AuthenticatingRealm
+{
+    /**
+     * Realm name
+     */
+    public static final String REALM_NAME = "accessTokenAuthenticatingRealm";
+
+    /**
+     * Constructor.<br>
+     * The token manager is initialized here, so a token secret not valid is reported at startup (when the realms are created) instead of at
+     * the first login. The realm is created only if the signed tokens are enabled ({@link AccessTokenManager#isEnabled()}).
+     */
+    public AccessTokenAuthenticatingRealm()
+    {
+        AccessTokenManager.getInstance();
+        setName(REALM_NAME);
+        // the token is the credential, checked when getting the info
+        setCredentialsMatcher(new AllowAllCredentialsMatcher());
+    }
+
+    @Override
+    protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken authenticationToken)
+        throws AuthenticationException
+    {
+        String token = ((AccessTokenAuthenticationToken) authenticationToken).getToken();
+
+        TokenClaims claims;
+        try {
+            claims = AccessTokenManager.getInstance().verify(token);
+        }
+        catch (KapuaAuthenticationException e) {
+            if (e.getCode() == KapuaAuthenticationErrorCodes.EXPIRED_TOKEN) {
+                throw new ExpiredCredentialsException(e.getMessage());
+            }
+            throw new IncorrectCredentialsException(e.getMessage());
+        }
+
+        SimplePrincipalCollection principals = new SimplePrincipalCollection(claims.getUsername(), getName());
+        principals.add(claims.toAccessToken(token), getName());
+        return new SimpleAuthenticationInfo(principals, token);
+    }
+
+    @Override
+    public boolean supports(AuthenticationToken authenticationToken)
+    {
+        return (authenticationToken instanceof AccessTokenAuthenticationToken);
+    }
+}
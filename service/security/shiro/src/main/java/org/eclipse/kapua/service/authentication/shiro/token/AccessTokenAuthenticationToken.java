@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import org.apache.shiro.authc.AuthenticationToken;
+
+/**
+ * Shiro {@link AuthenticationToken} of a bearer access token (issued by the {@link AccessTokenManager}).
+ *
+ * @since 1.0
+ */
+public class AccessTokenAuthenticationToken implements AuthenticationToken
+{
+    private static final long serialVersionUID = 3285640195871120382L;
+
+    private final String      token;
+
+    /**
+     * Constructor
+     *
+     * @param token the access token
+     */
+    public AccessTokenAuthenticationToken(String token)
+    {
+        this.token = token;
+    }
+
+    public String getToken()
+    {
+        return token;
+    }
+
+    @Override
+    public Object getPrincipal()
+    {
+        return token;
+    }
+
+    @Override
+    public Object getCredentials()
+    {
+        return token;
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.kapua.KapuaErrorCodes;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.authentication.AccessTokenImpl;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationErrorCodes;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSetting;
+import org.eclipse.kapua.service.authentication.shiro.setting.KapuaAuthenticationSettingKeys;
+
+/**
+ * Issuer and verifier of the signed access and refresh tokens.<br>
+ * A token is <code>base64url(claims).base64url(HMAC-SHA256(claims))</code>, where the claims are the token type, the login session id,
+ * the user, scope and user scope ids, the username, the issue time and the expiration. The signature secret
+ * (<code>authentication.token.secret</code>) must be configured with the same value on all the nodes to enable the signed tokens (see
+ * {@link #isEnabled()}).<br>
+ * An access token is verified by its signature and expiration only, plus a lookup in the {@link TokenRevocationList}: no password hashing
+ * nor database access.<br>
+ * <br>
+ * The access and refresh tokens issued by a login share the login session id, so revoking a token revokes the whole session. A refresh
+ * revokes the session of the refresh token and issues the tokens of a new session (a refresh token can be used only once), after the
+ * {@link RefreshCheck} has verified the user is still allowed to log in.<br>
+ * The revocation list is kept in memory by every node: a revocation (logout or refresh) is not seen by the other nodes. There the access
+ * tokens time to live bounds how long a revoked access token is still accepted, and a refresh token already used on another node can be
+ * used once more (the user check still applies).
+ *
+ * @since 1.0
+ */
+public class AccessTokenManager
+{
+    private static final String             HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte               VERSION        = 2;
+    static final char                       TYPE_ACCESS    = 'a';
+    static final char                       TYPE_REFRESH   = 'r';
+
+    private static final int                MIN_SECRET_LENGTH = 32;
+
+    private static AccessTokenManager       instance;
+
+    /**
+     * Check of the user of a refresh token, done before the tokens of the new session are issued
+     *
+     * @since 1.0
+     */
+    @FunctionalInterface
+    public interface RefreshCheck
+    {
+        /**
+         * Check the user of the refresh token is still allowed to log in
+         *
+         * @param claims the refresh token claims
+         * @throws KapuaException if the user is not allowed to log in anymore
+         */
+        public void check(TokenClaims claims)
+            throws KapuaException;
+    }
+
+    private final SecretKeySpec             key;
+    private final long                      accessTtl;
+    private final long                      refreshTtl;
+    private final TokenRevocationList       revocationList = new TokenRevocationList();
+    private final SecureRandom              random         = new SecureRandom();
+    private final ThreadLocal<Mac>          macs;
+
+    /**
+     * Constructor
+     *
+     * @param secret the signature secret
+     * @param accessTtl access tokens time to live (milliseconds)
+     * @param refreshTtl refresh tokens time to live (milliseconds)
+     */
+    public AccessTokenManager(byte[] secret, long accessTtl, long refreshTtl)
+    {
+        this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.accessTtl = accessTtl;
+        this.refreshTtl = refreshTtl;
+        // Mac instances are not thread safe
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialize the access token signature", e);
+            }
+        });
+    }
+
+    /**
+     * Check if the signed tokens are enabled, that is if the signature secret is configured.<br>
+     * Without the secret the nodes keep the opaque login tokens and the bearer tokens are not accepted.
+     *
+     * @return
+     */
+    public static boolean isEnabled()
+    {
+        return isConfigured(KapuaAuthenticationSetting.getInstance().getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_SECRET, ""));
+    }
+
+    static boolean isConfigured(String secret)
+    {
+        return secret != null && !secret.trim().isEmpty();
+    }
+
+    /**
+     * Return the access token manager instance (singleton)
+     *
+     * @return
+     * @throws KapuaRuntimeException if the signature secret is not configured or not valid
+     */
+    public static synchronized AccessTokenManager getInstance()
+    {
+        if (instance == null) {
+            KapuaAuthenticationSetting setting = KapuaAuthenticationSetting.getInstance();
+            instance = new AccessTokenManager(decodeSecret(setting.getString(KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_SECRET, "")),
+                                              setting.getLong(KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_ACCESS_TTL, 1800000L),
+                                              setting.getLong(KapuaAuthenticationSettingKeys.AUTHENTICATION_TOKEN_REFRESH_TTL, 86400000L));
+        }
+        return instance;
+    }
+
+    /**
+     * Decode the configured (base64) signature secret.<br>
+     * There is no fallback to a generated secret: the tokens issued by a node must be accepted by all the other nodes.
+     *
+     * @param secret
+     * @return
+     * @throws KapuaRuntimeException if the secret is missing, not base64 or shorter than 256 bits
+     */
+    static byte[] decodeSecret(String secret)
+    {
+        if (!isConfigured(secret)) {
+            throw new KapuaRuntimeException(KapuaErrorCodes.INTERNAL_ERROR, null,
+                                            "authentication.token.secret is not configured: set it to the same base64 secret on all the nodes");
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(secret.trim());
+        }
+        catch (IllegalArgumentException e) {
+            throw new KapuaRuntimeException(KapuaErrorCodes.INTERNAL_ERROR, e, "authentication.token.secret is not a base64 value");
+        }
+        if (key.length < MIN_SECRET_LENGTH) {
+            throw new KapuaRuntimeException(KapuaErrorCodes.INTERNAL_ERROR, null,
+                                            "authentication.token.secret must be at least " + MIN_SECRET_LENGTH + " bytes long");
+        }
+        return key;
+    }
+
+    /**
+     * Issue the access and refresh tokens of a new login session
+     *
+     * @param userId
+     * @param scopeId
+     * @param userScopeId
+     * @param username
+     * @return the access token, carrying the refresh token
+     */
+    public AccessTokenImpl issue(KapuaEid userId, KapuaEid scopeId, KapuaEid userScopeId, String username)
+    {
+        byte[] sessionBytes = new byte[16];
+        random.nextBytes(sessionBytes);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(sessionBytes);
+
+        long now = System.currentTimeMillis();
+        TokenClaims accessClaims = new TokenClaims(TYPE_ACCESS, sessionId, userId, scopeId, userScopeId, username, now, now + accessTtl);
+        TokenClaims refreshClaims = new TokenClaims(TYPE_REFRESH, sessionId, userId, scopeId, userScopeId, username, now, now + refreshTtl);
+        return new AccessTokenImpl(userId, scopeId, userScopeId, encode(accessClaims), new Date(accessClaims.getExpiresOn()), encode(refreshClaims));
+    }
+
+    /**
+     * Verify the access token
+     *
+     * @param token
+     * @return the token claims
+     * @throws KapuaAuthenticationException if the token is not valid, expired or revoked
+     */
+    public TokenClaims verify(String token)
+        throws KapuaAuthenticationException
+    {
+        return decode(token, TYPE_ACCESS);
+    }
+
+    /**
+     * Issue the tokens of a new login session for the refresh token, revoking its session
+     *
+     * @param refreshToken
+     * @param check the check of the user, done before the session is revoked
+     * @return the new access token, carrying the new refresh token
+     * @throws KapuaAuthenticationException if the refresh token is not valid, expired or revoked (i.e. already used)
+     * @throws KapuaException if the check rejects the user
+     */
+    public AccessTokenImpl refresh(String refreshToken, RefreshCheck check)
+        throws KapuaException
+    {
+        TokenClaims claims = decode(refreshToken, TYPE_REFRESH);
+        check.check(claims);
+        if (!revocationList.revoke(claims.getSessionId(), claims.getExpiresOn())) {
+            // concurrently refreshed
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.REVOKED_TOKEN);
+        }
+        return issue(claims.getUserId(), claims.getScopeId(), claims.getUserScopeId(), claims.getUsername());
+    }
+
+    /**
+     * Revoke the login session of the access or refresh token
+     *
+     * @param token
+     * @throws KapuaAuthenticationException if the token is not valid
+     */
+    public void revoke(String token)
+        throws KapuaAuthenticationException
+    {
+        TokenClaims claims = parse(token);
+        // the refresh token of the session may expire later than the given token
+        revocationList.revoke(claims.getSessionId(), System.currentTimeMillis() + refreshTtl);
+    }
+
+
+    private TokenClaims decode(String token, char expectedType)
+        throws KapuaAuthenticationException
+    {
+        TokenClaims claims = parse(token);
+        if (claims.getType() != expectedType) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+        }
+        if (claims.getExpiresOn() < System.currentTimeMillis()) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.EXPIRED_TOKEN);
+        }
+        if (revocationList.isRevoked(claims.getSessionId())) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.REVOKED_TOKEN);
+        }
+        return claims;
+    }
+
+    /**
+     * Check the signature and read the claims
+     */
+    private TokenClaims parse(String token)
+        throws KapuaAuthenticationException
+    {
+        int separator = token != null ? token.indexOf('.') : -1;
+        if (separator < 0) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+        }
+        try {
+            byte[] body = Base64.getUrlDecoder().decode(token.substring(0, separator));
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, sign(body))) {
+                throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            if (in.readByte() != VERSION) {
+                throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+            }
+            char type = in.readChar();
+            String sessionId = in.readUTF();
+            KapuaEid userId = readId(in);
+            KapuaEid scopeId = readId(in);
+            KapuaEid userScopeId = readId(in);
+            String username = in.readUTF();
+            long issuedOn = in.readLong();
+            long expiresOn = in.readLong();
+            return new TokenClaims(type, sessionId, userId, scopeId, userScopeId, username, issuedOn, expiresOn);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_TOKEN, e);
+        }
+    }
+
+    private String encode(TokenClaims claims)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeChar(claims.getType());
+            out.writeUTF(claims.getSessionId());
+            writeId(out, claims.getUserId());
+            writeId(out, claims.getScopeId());
+            writeId(out, claims.getUserScopeId());
+            out.writeUTF(claims.getUsername() != null ? claims.getUsername() : "");
+            out.writeLong(claims.getIssuedOn());
+            out.writeLong(claims.getExpiresOn());
+        }
+        catch (IOException e) {
+            // not thrown by a byte array stream
+            throw new IllegalStateException(e);
+        }
+        byte[] body = bytes.toByteArray();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(body) + "." + encoder.encodeToString(sign(body));
+    }
+
+    private byte[] sign(byte[] body)
+    {
+        return macs.get().doFinal(body);
+    }
+
+    private static void writeId(DataOutputStream out, KapuaEid id)
+        throws IOException
+    {
+        out.writeUTF(id != null ? id.toCompactId() : "");
+    }
+
+    private static KapuaEid readId(DataInputStream in)
+        throws IOException
+    {
+        String compactId = in.readUTF();
+        return compactId.isEmpty() ? null : KapuaEid.parseCompactId(compactId);
+    }
+}
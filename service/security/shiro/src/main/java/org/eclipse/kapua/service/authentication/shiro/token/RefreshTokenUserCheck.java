@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.security.KapuaSecurityUtils;
+import org.eclipse.kapua.model.KapuaUpdatableEntity;
+import org.eclipse.kapua.service.authentication.credential.Credential;
+import org.eclipse.kapua.service.authentication.credential.CredentialListResult;
+import org.eclipse.kapua.service.authentication.credential.CredentialService;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationErrorCodes;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+import org.eclipse.kapua.service.user.User;
+import org.eclipse.kapua.service.user.UserService;
+import org.eclipse.kapua.service.user.UserStatus;
+
+/**
+ * {@link AccessTokenManager.RefreshCheck} loading the user of the refresh token: the refresh is rejected if the user has been deleted or
+ * disabled, or if the user credentials have been created or changed since the token was issued.
+ *
+ * @since 1.0
+ */
+public class RefreshTokenUserCheck implements AccessTokenManager.RefreshCheck
+{
+    private final UserService       userService;
+    private final CredentialService credentialService;
+
+    /**
+     * Constructor
+     *
+     * @param userService
+     * @param credentialService
+     */
+    public RefreshTokenUserCheck(UserService userService, CredentialService credentialService)
+    {
+        this.userService = userService;
+        this.credentialService = credentialService;
+    }
+
+    @Override
+    public void check(TokenClaims claims)
+        throws KapuaException
+    {
+        User user = doPrivileged(() -> userService.find(claims.getUserScopeId(), claims.getUserId()));
+        if (user == null) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_USERNAME, claims.getUsername());
+        }
+        if (UserStatus.DISABLED.equals(user.getStatus())) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.DISABLED_USERNAME, claims.getUsername());
+        }
+
+        CredentialListResult credentials = doPrivileged(() -> credentialService.findByUserId(user.getScopeId(), user.getId()));
+        if (credentials == null || credentials.isEmpty()) {
+            throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_CREDENTIALS, claims.getUsername());
+        }
+        for (Credential credential : credentials.getItems()) {
+            if (isChangedAfter(credential, claims.getIssuedOn())) {
+                throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.INVALID_CREDENTIALS, claims.getUsername());
+            }
+        }
+    }
+
+    private static boolean isChangedAfter(Credential credential, long issuedOn)
+    {
+        Date changedOn = credential.getCreatedOn();
+        if (credential instanceof KapuaUpdatableEntity && ((KapuaUpdatableEntity) credential).getModifiedOn() != null) {
+            changedOn = ((KapuaUpdatableEntity) credential).getModifiedOn();
+        }
+        return changedOn != null && changedOn.getTime() > issuedOn;
+    }
+
+    private static <T> T doPrivileged(Callable<T> lookup)
+        throws KapuaException
+    {
+        try {
+            return KapuaSecurityUtils.doPriviledge(lookup);
+        }
+        catch (KapuaException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw KapuaException.internalError(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import java.util.Date;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.authentication.AccessTokenImpl;
+
+/**
+ * Content of a verified access or refresh token
+ *
+ * @since 1.0
+ */
+public class TokenClaims
+{
+    private final char     type;
+    private final String   sessionId;
+    private final KapuaEid userId;
+    private final KapuaEid scopeId;
+    private final KapuaEid userScopeId;
+    private final String   username;
+    private final long     issuedOn;
+    private final long     expiresOn;
+
+    TokenClaims(char type, String sessionId, KapuaEid userId, KapuaEid scopeId, KapuaEid userScopeId, String username, long issuedOn, long expiresOn)
+    {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.scopeId = scopeId;
+        this.userScopeId = userScopeId;
+        this.username = username;
+        this.issuedOn = issuedOn;
+        this.expiresOn = expiresOn;
+    }
+
+    char getType()
+    {
+        return type;
+    }
+
+    /**
+     * Return the login session identifier, shared by the access and refresh tokens issued by the same login
+     *
+     * @return
+     */
+    public String getSessionId()
+    {
+        return sessionId;
+    }
+
+    public KapuaEid getUserId()
+    {
+        return userId;
+    }
+
+    public KapuaEid getScopeId()
+    {
+        return scopeId;
+    }
+
+    public KapuaEid getUserScopeId()
+    {
+        return userScopeId;
+    }
+
+    public String getUsername()
+    {
+        return username;
+    }
+
+    /**
+     * Return the time the token was issued at
+     *
+     * @return
+     */
+    public long getIssuedOn()
+    {
+        return issuedOn;
+    }
+
+    public long getExpiresOn()
+    {
+        return expiresOn;
+    }
+
+    /**
+     * Build the access token
+     *
+     * @param tokenId the signed token
+     * @return
+     */
+    public AccessTokenImpl toAccessToken(String tokenId)
+    {
+        return new AccessTokenImpl(userId, scopeId, userScopeId, tokenId, new Date(expiresOn), null);
+    }
+}
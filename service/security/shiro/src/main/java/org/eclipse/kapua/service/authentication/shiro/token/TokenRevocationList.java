@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In memory set of the revoked login sessions.<br>
+ * A session is kept until its tokens expire, then it is discarded by the periodic purge (run by the revocations).
+ *
+ * @since 1.0
+ */
+public class TokenRevocationList
+{
+    private static final long       PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, Long> revoked        = new ConcurrentHashMap<>();
+    private volatile long           lastPurge      = System.currentTimeMillis();
+
+    /**
+     * Revoke the session
+     *
+     * @param sessionId
+     * @param expiresOn the expiration of the last token of the session
+     * @return false if the session was already revoked
+     */
+    public boolean revoke(String sessionId, long expiresOn)
+    {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge > PURGE_INTERVAL) {
+            lastPurge = now;
+            purge(now);
+        }
+        return revoked.putIfAbsent(sessionId, expiresOn) == null;
+    }
+
+    public boolean isRevoked(String sessionId)
+    {
+        return revoked.containsKey(sessionId);
+    }
+
+    public int size()
+    {
+        return revoked.size();
+    }
+
+    private void purge(long now)
+    {
+        Iterator<Long> iterator = revoked.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() < now) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.KapuaErrorCodes;
+import org.eclipse.kapua.KapuaRuntimeException;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.service.authentication.AccessToken;
+import org.eclipse.kapua.service.authentication.AccessTokenImpl;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationErrorCodes;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+import org.junit.Test;
+
+public class AccessTokenManagerTest
+{
+    private static final KapuaEid USER_ID  = new KapuaEid(BigInteger.valueOf(42));
+    private static final KapuaEid SCOPE_ID = new KapuaEid(BigInteger.ONE);
+
+    private static final AccessTokenManager.RefreshCheck ALLOW = claims -> {
+    };
+
+    private static AccessTokenManager newManager(long accessTtl, long refreshTtl)
+    {
+        return new AccessTokenManager("0123456789abcdef0123456789abcdef".getBytes(), accessTtl, refreshTtl);
+    }
+
+    @Test
+    public void testIssueAndVerify()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        AccessTokenImpl issued = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+        assertNotNull(issued.getRefreshToken());
+
+        TokenClaims claims = manager.verify(issued.getTokenId());
+        assertEquals("kapua-sys", claims.getUsername());
+        assertEquals(USER_ID, claims.getUserId());
+        assertEquals(SCOPE_ID, claims.getScopeId());
+        assertEquals(issued.getExpiresOn().getTime(), claims.getExpiresOn());
+
+        AccessToken accessToken = claims.toAccessToken(issued.getTokenId());
+        assertEquals(issued.getTokenId(), accessToken.getTokenId());
+        assertEquals(USER_ID, accessToken.getUserId());
+    }
+
+    @Test
+    public void testTamperedToken()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        String token = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys").getTokenId();
+        String forged = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "other").getTokenId();
+
+        // claims of a token with the signature of another one
+        assertRejected(manager, token.substring(0, token.indexOf('.')) + forged.substring(forged.indexOf('.')), KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+        assertRejected(manager, "not a token", KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+        // signed by another secret
+        AccessTokenManager other = new AccessTokenManager("fedcba9876543210fedcba9876543210".getBytes(), 60000, 120000);
+        assertRejected(manager, other.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys").getTokenId(), KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+    }
+
+    @Test
+    public void testRefreshTokenIsNotAnAccessToken()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        assertRejected(manager, manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys").getRefreshToken(), KapuaAuthenticationErrorCodes.INVALID_TOKEN);
+    }
+
+    @Test
+    public void testExpiredToken()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(-1, 120000);
+        assertRejected(manager, manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys").getTokenId(), KapuaAuthenticationErrorCodes.EXPIRED_TOKEN);
+    }
+
+    @Test
+    public void testRevoke()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        AccessTokenImpl issued = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+        AccessTokenImpl other = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+
+        manager.revoke(issued.getTokenId());
+
+        assertRejected(manager, issued.getTokenId(), KapuaAuthenticationErrorCodes.REVOKED_TOKEN);
+        try {
+            manager.refresh(issued.getRefreshToken(), ALLOW);
+            fail("The refresh token of a revoked session must be rejected");
+        }
+        catch (KapuaAuthenticationException e) {
+            assertEquals(KapuaAuthenticationErrorCodes.REVOKED_TOKEN, e.getCode());
+        }
+        // other sessions are not affected
+        manager.verify(other.getTokenId());
+    }
+
+    @Test
+    public void testRefreshRotation()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        AccessTokenImpl issued = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+
+        AccessTokenImpl refreshed = manager.refresh(issued.getRefreshToken(), ALLOW);
+        assertFalse(issued.getTokenId().equals(refreshed.getTokenId()));
+        assertEquals("kapua-sys", manager.verify(refreshed.getTokenId()).getUsername());
+
+        // the old session is revoked and its refresh token cannot be used again
+        assertRejected(manager, issued.getTokenId(), KapuaAuthenticationErrorCodes.REVOKED_TOKEN);
+        try {
+            manager.refresh(issued.getRefreshToken(), ALLOW);
+            fail("A refresh token must be used only once");
+        }
+        catch (KapuaAuthenticationException e) {
+            assertEquals(KapuaAuthenticationErrorCodes.REVOKED_TOKEN, e.getCode());
+        }
+        manager.refresh(refreshed.getRefreshToken(), ALLOW);
+    }
+
+    @Test
+    public void testRefreshRejectedByTheUserCheck()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        AccessTokenImpl issued = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+
+        try {
+            manager.refresh(issued.getRefreshToken(), claims -> {
+                assertEquals(USER_ID, claims.getUserId());
+                throw new KapuaAuthenticationException(KapuaAuthenticationErrorCodes.DISABLED_USERNAME, claims.getUsername());
+            });
+            fail("The refresh of a rejected user must fail");
+        }
+        catch (KapuaAuthenticationException e) {
+            assertEquals(KapuaAuthenticationErrorCodes.DISABLED_USERNAME, e.getCode());
+        }
+        // no new session is issued, the rejected session is left as is
+        manager.verify(issued.getTokenId());
+    }
+
+    @Test
+    public void testIssuedOn()
+        throws Exception
+    {
+        AccessTokenManager manager = newManager(60000, 120000);
+        long before = System.currentTimeMillis();
+        AccessTokenImpl issued = manager.issue(USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys");
+
+        TokenClaims claims = manager.verify(issued.getTokenId());
+        assertTrue(claims.getIssuedOn() >= before && claims.getIssuedOn() <= System.currentTimeMillis());
+        assertEquals(claims.getIssuedOn() + 60000, claims.getExpiresOn());
+    }
+
+    @Test
+    public void testSecretIsRequired()
+    {
+        for (String secret : new String[] { null, " ", "not base64!", "c2hvcnQ=" }) {
+            try {
+                AccessTokenManager.decodeSecret(secret);
+                fail("Secret accepted: " + secret);
+            }
+            catch (KapuaRuntimeException e) {
+                assertEquals(KapuaErrorCodes.INTERNAL_ERROR, e.getCode());
+            }
+        }
+        assertEquals(33, AccessTokenManager.decodeSecret("a2FwdWEtdGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LTAx").length);
+    }
+
+    @Test
+    public void testTokensDisabledWithoutSecret()
+    {
+        assertFalse(AccessTokenManager.isConfigured(null));
+        assertFalse(AccessTokenManager.isConfigured(" "));
+        assertTrue(AccessTokenManager.isConfigured("a2FwdWEtdGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LTAx"));
+        // the test environment configures the secret
+        assertTrue(AccessTokenManager.isEnabled());
+    }
+
+    private static void assertRejected(AccessTokenManager manager, String token, KapuaAuthenticationErrorCodes expected)
+    {
+        try {
+            manager.verify(token);
+            fail("Token accepted: " + token);
+        }
+        catch (KapuaAuthenticationException e) {
+            assertEquals(expected, e.getCode());
+        }
+    }
+}
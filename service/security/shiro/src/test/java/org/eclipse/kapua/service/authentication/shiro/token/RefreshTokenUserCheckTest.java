@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.service.authentication.shiro.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.model.KapuaUpdatableEntity;
+import org.eclipse.kapua.service.authentication.credential.Credential;
+import org.eclipse.kapua.service.authentication.credential.CredentialListResult;
+import org.eclipse.kapua.service.authentication.credential.CredentialService;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationErrorCodes;
+import org.eclipse.kapua.service.authentication.shiro.KapuaAuthenticationException;
+import org.eclipse.kapua.service.user.User;
+import org.eclipse.kapua.service.user.UserService;
+import org.eclipse.kapua.service.user.UserStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RefreshTokenUserCheckTest
+{
+    private static final KapuaEid USER_ID   = new KapuaEid(BigInteger.valueOf(42));
+    private static final KapuaEid SCOPE_ID  = new KapuaEid(BigInteger.ONE);
+    private static final long     ISSUED_ON = 1000000L;
+
+    private UserService           userService;
+    private CredentialService     credentialService;
+    private User                  user;
+    private RefreshTokenUserCheck check;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        userService = mock(UserService.class);
+        credentialService = mock(CredentialService.class);
+        user = mock(User.class);
+        when(user.getId()).thenReturn(USER_ID);
+        when(user.getScopeId()).thenReturn(SCOPE_ID);
+        when(user.getStatus()).thenReturn(UserStatus.ENABLED);
+        when(userService.find(SCOPE_ID, USER_ID)).thenReturn(user);
+        check = new RefreshTokenUserCheck(userService, credentialService);
+    }
+
+    @Test
+    public void testUnchangedUserIsAllowed()
+        throws Exception
+    {
+        givenCredentials(credential(ISSUED_ON - 1, null));
+
+        check.check(claims());
+    }
+
+    @Test
+    public void testDeletedUserIsRejected()
+        throws Exception
+    {
+        when(userService.find(SCOPE_ID, USER_ID)).thenReturn(null);
+
+        assertRejected(KapuaAuthenticationErrorCodes.INVALID_USERNAME);
+    }
+
+    @Test
+    public void testDisabledUserIsRejected()
+        throws Exception
+    {
+        when(user.getStatus()).thenReturn(UserStatus.DISABLED);
+        givenCredentials(credential(ISSUED_ON - 1, null));
+
+        assertRejected(KapuaAuthenticationErrorCodes.DISABLED_USERNAME);
+    }
+
+    @Test
+    public void testChangedCredentialsAreRejected()
+        throws Exception
+    {
+        // updated after the token was issued
+        givenCredentials(credential(ISSUED_ON - 1, ISSUED_ON + 1));
+        assertRejected(KapuaAuthenticationErrorCodes.INVALID_CREDENTIALS);
+
+        // created after the token was issued
+        givenCredentials(credential(ISSUED_ON - 1, null), credential(ISSUED_ON + 1, null));
+        assertRejected(KapuaAuthenticationErrorCodes.INVALID_CREDENTIALS);
+
+        // deleted
+        givenCredentials();
+        assertRejected(KapuaAuthenticationErrorCodes.INVALID_CREDENTIALS);
+    }
+
+    private void assertRejected(KapuaAuthenticationErrorCodes expected)
+    {
+        try {
+            check.check(claims());
+            fail("Refresh accepted");
+        }
+        catch (KapuaAuthenticationException e) {
+            assertEquals(expected, e.getCode());
+        }
+        catch (Exception e) {
+            fail("Unexpected exception: " + e);
+        }
+    }
+
+    private void givenCredentials(Credential... credentials)
+        throws Exception
+    {
+        CredentialListResult result = mock(CredentialListResult.class);
+        when(result.isEmpty()).thenReturn(credentials.length == 0);
+        when(result.getItems()).thenReturn(credentials.length == 0 ? Collections.emptyList() : Arrays.asList(credentials));
+        when(credentialService.findByUserId(SCOPE_ID, USER_ID)).thenReturn(result);
+    }
+
+    private static Credential credential(long createdOn, Long modifiedOn)
+    {
+        Credential credential = mock(Credential.class, withSettings().extraInterfaces(KapuaUpdatableEntity.class));
+        when(credential.getCreatedOn()).thenReturn(new Date(createdOn));
+        when(((KapuaUpdatableEntity) credential).getModifiedOn()).thenReturn(modifiedOn != null ? new Date(modifiedOn) : null);
+        return credential;
+    }
+
+    private static TokenClaims claims()
+    {
+        return new TokenClaims(AccessTokenManager.TYPE_REFRESH, "session", USER_ID, SCOPE_ID, SCOPE_ID, "kapua-sys", ISSUED_ON, ISSUED_ON + 60000);
+    }
+}
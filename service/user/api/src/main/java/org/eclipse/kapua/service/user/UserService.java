@@ -12,7 +12,10 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.user;
 
+import java.util.List;
+
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.service.KapuaEntityService;
@@ -57,6 +60,29 @@ public interface UserService extends KapuaEntityService<User, UserCreator>,
     public User update(User user)
         throws KapuaException;
 
+    /**
+     * Creates an user for every creator.<br>
+     * The write permission is checked once per scope (the whole batch is rejected if not granted) and the names are checked
+     * for uniqueness (within the batch and against the existing users) before writing. The users are inserted in chunks, a transaction per chunk.
+     *
+     * @param userCreators
+     * @return the result of every creator, in the order of the creators
+     * @throws KapuaException
+     */
+    public KapuaBatchResult createAll(List<UserCreator> userCreators)
+        throws KapuaException;
+
+    /**
+     * Updates every user, as {@link #update(User)} does.<br>
+     * The write permission is checked once per scope (the whole batch is rejected if not granted). The users are updated in chunks, a transaction per chunk.
+     *
+     * @param users
+     * @return the result of every user, in the order of the users
+     * @throws KapuaException
+     */
+    public KapuaBatchResult updateAll(List<User> users)
+        throws KapuaException;
+
     /**
      * Delete the supplied User.
      *
@@ -12,6 +12,13 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.user.internal;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.service.internal.ServiceDAO;
 import org.eclipse.kapua.commons.jpa.EntityManager;
@@ -40,6 +47,29 @@ public class UserDAO extends ServiceDAO
      */
     public static User create(EntityManager em, UserCreator userCreator)
         throws KapuaException
+    {
+        return ServiceDAO.create(em, newUser(userCreator));
+    }
+
+    /**
+     * Persists a new User for every creator, without flushing: the inserts are sent by the next flush (in JDBC batches)
+     * 
+     * @param em
+     * @param userCreators
+     * @return the new users, in the order of the creators
+     */
+    public static List<User> persist(EntityManager em, List<UserCreator> userCreators)
+    {
+        List<User> users = new ArrayList<>(userCreators.size());
+        for (UserCreator userCreator : userCreators) {
+            User user = newUser(userCreator);
+            em.persist(user);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static User newUser(UserCreator userCreator)
     {
         //
         // Create User
@@ -50,7 +80,7 @@ public class UserDAO extends ServiceDAO
         userImpl.setEmail(userCreator.getEmail());
         userImpl.setPhoneNumber(userCreator.getPhoneNumber());
 
-        return ServiceDAO.create(em, userImpl);
+        return userImpl;
     }
 
     /**
@@ -71,6 +101,27 @@ public class UserDAO extends ServiceDAO
         return ServiceDAO.update(em, UserImpl.class, userImpl);
     }
 
+    /**
+     * Merges the provided users, without flushing: the updates are sent by the next flush (in JDBC batches).<br>
+     * The users must exist (see {@link #findByIds(EntityManager, Collection)}).
+     * 
+     * @param em
+     * @param users
+     * @param currentUsers the stored users, by user identifier value
+     * @return the provided users
+     */
+    public static List<User> merge(EntityManager em, List<User> users, Map<BigInteger, UserImpl> currentUsers)
+    {
+        for (User user : users) {
+            UserImpl userImpl = (UserImpl) user;
+            UserImpl currentUser = currentUsers.get(user.getId().getId());
+            userImpl.setCreatedOn(currentUser.getCreatedOn());
+            userImpl.setCreatedBy(currentUser.getCreatedBy());
+            em.merge(userImpl);
+        }
+        return users;
+    }
+
     /**
      * Deletes the user by user identifier
      * 
@@ -106,6 +157,30 @@ public class UserDAO extends ServiceDAO
         return ServiceDAO.findByName(em, UserImpl.class, name);
     }
 
+    /**
+     * Returns the names, among the provided ones, already used by the users (of any scope)
+     * 
+     * @param em
+     * @param names
+     * @return
+     */
+    public static Set<String> findNames(EntityManager em, Collection<String> names)
+    {
+        return ServiceDAO.findFieldValues(em, UserImpl.class, null, "name", String.class, names);
+    }
+
+    /**
+     * Finds the users by user identifiers
+     * 
+     * @param em
+     * @param userIds
+     * @return the users found, by user identifier value
+     */
+    public static Map<BigInteger, UserImpl> findByIds(EntityManager em, Collection<KapuaId> userIds)
+    {
+        return ServiceDAO.findByIds(em, UserImpl.class, userIds);
+    }
+
     /**
      * Returns the user list matching the provided query
      * 
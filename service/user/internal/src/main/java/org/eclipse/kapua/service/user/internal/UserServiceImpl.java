@@ -12,12 +12,22 @@
  *******************************************************************************/
 package org.eclipse.kapua.service.user.internal;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.kapua.KapuaEntityNotFoundException;
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.KapuaIllegalArgumentException;
 import org.eclipse.kapua.commons.configuration.AbstractKapuaConfigurableService;
+import org.eclipse.kapua.commons.service.internal.ServiceBatchWriter;
 import org.eclipse.kapua.commons.util.ArgumentValidator;
 import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
 import org.eclipse.kapua.service.authorization.AuthorizationService;
@@ -54,12 +64,7 @@ public class UserServiceImpl extends AbstractKapuaConfigurableService implements
     {
         //
         // Argument Validation
-        ArgumentValidator.notNull(userCreator.getScopeId().getId(), "scopeId");
-        ArgumentValidator.notEmptyOrNull(userCreator.getName(), "name");
-        // ArgumentValidator.notEmptyOrNull(userCreator.getRawPassword(), "rawPassword");
-        ArgumentValidator.match(userCreator.getName(), ArgumentValidator.NAME_REGEXP, "name");
-        // ArgumentValidator.match(userCreator.getRawPassword(), ArgumentValidator.PASSWORD_REGEXP, "rawPassword");
-        ArgumentValidator.match(userCreator.getEmail(), ArgumentValidator.EMAIL_REGEXP, "email");
+        validateCreateArguments(userCreator);
 
         //
         // Check Access
@@ -81,13 +86,7 @@ public class UserServiceImpl extends AbstractKapuaConfigurableService implements
         throws KapuaException
     {
         // Validation of the fields
-        ArgumentValidator.notNull(user.getId().getId(), "id");
-        ArgumentValidator.notNull(user.getScopeId().getId(), "accountId");
-        ArgumentValidator.notEmptyOrNull(user.getName(), "name");
-        ArgumentValidator.match(user.getName(), ArgumentValidator.NAME_REGEXP, "name");
-        // ArgumentValidator.match(user.getRawPassword(), ArgumentValidator.PASSWORD_REGEXP, "rawPassword");
-        ArgumentValidator.match(user.getEmail(), ArgumentValidator.EMAIL_REGEXP, "email");
-        validateSystemUser(user.getName());
+        validateUpdateArguments(user);
 
         //
         // Check Access
@@ -109,6 +108,94 @@ public class UserServiceImpl extends AbstractKapuaConfigurableService implements
         });
     }
 
+    @Override
+    public KapuaBatchResult createAll(List<UserCreator> userCreators)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(userCreators, "userCreators");
+        ServiceBatchWriter<UserCreator, User> batchWriter = new ServiceBatchWriter<>(userCreators);
+        Set<KapuaId> scopeIds = new HashSet<>();
+        Map<String, Integer> names = new HashMap<>();
+        for (int i = 0; i < userCreators.size(); i++) {
+            UserCreator userCreator = userCreators.get(i);
+            try {
+                ArgumentValidator.notNull(userCreator, "userCreator");
+                validateCreateArguments(userCreator);
+            }
+            catch (KapuaException e) {
+                batchWriter.fail(i, e.getMessage());
+                continue;
+            }
+
+            // names are unique across the scopes
+            scopeIds.add(userCreator.getScopeId());
+            Integer firstIndex = names.putIfAbsent(userCreator.getName(), i);
+            if (firstIndex != null) {
+                batchWriter.fail(i, "Duplicate name " + userCreator.getName() + " (same as item " + firstIndex + ")");
+            }
+        }
+
+        //
+        // Check Access
+        checkWritePermission(scopeIds);
+
+        //
+        // Check the names against the stored users with a single lookup
+        entityManagerSession.onEntityManagerAction(em -> {
+            for (String name : UserDAO.findNames(em, names.keySet())) {
+                batchWriter.fail(names.get(name), "An user with name " + name + " already exists");
+            }
+        });
+
+        return batchWriter.write(entityManagerSession, UserDAO::persist);
+    }
+
+    @Override
+    public KapuaBatchResult updateAll(List<User> users)
+        throws KapuaException
+    {
+        //
+        // Argument Validation
+        ArgumentValidator.notNull(users, "users");
+        ServiceBatchWriter<User, User> batchWriter = new ServiceBatchWriter<>(users);
+        Set<KapuaId> scopeIds = new HashSet<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            try {
+                ArgumentValidator.notNull(user, "user");
+                validateUpdateArguments(user);
+                scopeIds.add(user.getScopeId());
+            }
+            catch (KapuaException e) {
+                batchWriter.fail(i, e.getMessage());
+            }
+        }
+
+        //
+        // Check Access
+        checkWritePermission(scopeIds);
+
+        //
+        // Do update
+        return batchWriter.write(entityManagerSession, (em, chunkUsers) -> {
+            List<KapuaId> userIds = new ArrayList<>(chunkUsers.size());
+            for (User user : chunkUsers) {
+                userIds.add(user.getId());
+            }
+
+            Map<BigInteger, UserImpl> currentUsers = UserDAO.findByIds(em, userIds);
+            for (User user : chunkUsers) {
+                User currentUser = currentUsers.get(user.getId().getId());
+                if (currentUser == null || !currentUser.getScopeId().getId().equals(user.getScopeId().getId())) {
+                    throw new KapuaEntityNotFoundException(User.TYPE, user.getId());
+                }
+            }
+            return UserDAO.merge(em, chunkUsers, currentUsers);
+        });
+    }
+
     @Override
     public void delete(KapuaId scopeId, KapuaId userId) throws KapuaException {
         // Validation of the fields
@@ -232,6 +319,42 @@ public class UserServiceImpl extends AbstractKapuaConfigurableService implements
     //
     // -----------------------------------------------------------------------------------------
 
+    private void validateCreateArguments(UserCreator userCreator)
+        throws KapuaException
+    {
+        ArgumentValidator.notNull(userCreator.getScopeId(), "scopeId");
+        ArgumentValidator.notNull(userCreator.getScopeId().getId(), "scopeId");
+        ArgumentValidator.notEmptyOrNull(userCreator.getName(), "name");
+        // ArgumentValidator.notEmptyOrNull(userCreator.getRawPassword(), "rawPassword");
+        ArgumentValidator.match(userCreator.getName(), ArgumentValidator.NAME_REGEXP, "name");
+        // ArgumentValidator.match(userCreator.getRawPassword(), ArgumentValidator.PASSWORD_REGEXP, "rawPassword");
+        ArgumentValidator.match(userCreator.getEmail(), ArgumentValidator.EMAIL_REGEXP, "email");
+    }
+
+    private void validateUpdateArguments(User user)
+        throws KapuaException
+    {
+        ArgumentValidator.notNull(user.getId(), "id");
+        ArgumentValidator.notNull(user.getId().getId(), "id");
+        ArgumentValidator.notNull(user.getScopeId(), "accountId");
+        ArgumentValidator.notNull(user.getScopeId().getId(), "accountId");
+        ArgumentValidator.notEmptyOrNull(user.getName(), "name");
+        ArgumentValidator.match(user.getName(), ArgumentValidator.NAME_REGEXP, "name");
+        // ArgumentValidator.match(user.getRawPassword(), ArgumentValidator.PASSWORD_REGEXP, "rawPassword");
+        ArgumentValidator.match(user.getEmail(), ArgumentValidator.EMAIL_REGEXP, "email");
+        validateSystemUser(user.getName());
+    }
+
+    private void checkWritePermission(Set<KapuaId> scopeIds)
+        throws KapuaException
+    {
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        for (KapuaId scopeId : scopeIds) {
+            authorizationService.checkPermission(permissionFactory.newPermission(UserDomain.USER, Actions.write, scopeId));
+        }
+    }
+
     private void validateSystemUser(String name)
         throws KapuaException
     {
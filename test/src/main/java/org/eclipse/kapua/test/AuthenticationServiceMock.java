@@ -66,4 +66,17 @@ public class AuthenticationServiceMock implements AuthenticationService
         return null;
     }
 
+    @Override
+    public AccessToken refreshToken(String refreshToken)
+        throws KapuaException
+    {
+        return null;
+    }
+
+    @Override
+    public void revokeToken(String tokenId)
+        throws KapuaException
+    {
+    }
+
 }
@@ -36,6 +36,13 @@ public class KapuaTest extends Assert {
 
     private static boolean isInitialized;
 
+    static {
+        // the access tokens issued by the login must be signed: set before the services are created
+        if (System.getProperty("authentication.token.secret") == null) {
+            System.setProperty("authentication.token.secret", "a2FwdWEtdGVzdC1hY2Nlc3MtdG9rZW4tc2VjcmV0LTAx");
+        }
+    }
+
     protected static Random random = new Random();
     protected static KapuaLocator locator = KapuaLocator.getInstance();
 
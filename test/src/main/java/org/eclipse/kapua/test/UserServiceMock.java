@@ -15,11 +15,13 @@ package org.eclipse.kapua.test;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.kapua.KapuaException;
 import org.eclipse.kapua.commons.model.id.KapuaEid;
 import org.eclipse.kapua.locator.guice.TestService;
+import org.eclipse.kapua.model.batch.KapuaBatchResult;
 import org.eclipse.kapua.model.config.metatype.KapuaTocd;
 import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.model.query.KapuaQuery;
@@ -75,6 +77,20 @@ public class UserServiceMock implements UserService
         return userMock;
     }
 
+    @Override
+    public KapuaBatchResult createAll(List<UserCreator> userCreators)
+        throws KapuaException
+    {
+        throw KapuaException.internalError("Not implemented");
+    }
+
+    @Override
+    public KapuaBatchResult updateAll(List<User> users)
+        throws KapuaException
+    {
+        throw KapuaException.internalError("Not implemented");
+    }
+
     @Override
     public void delete(KapuaId scopeId, KapuaId userId) throws KapuaException {
         if (!users.containsKey(userId))
@@ -15,20 +15,16 @@ package org.eclipse.kapua.translator.kura.kapua;
 import java.util.HashMap;
 
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.data.KapuaDataChannel;
 import org.eclipse.kapua.message.device.data.KapuaDataMessage;
 import org.eclipse.kapua.message.device.data.KapuaDataPayload;
 import org.eclipse.kapua.message.internal.device.data.KapuaDataChannelImpl;
 import org.eclipse.kapua.message.internal.device.data.KapuaDataMessageImpl;
 import org.eclipse.kapua.message.internal.device.data.KapuaDataPayloadImpl;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.kura.KuraChannel;
 import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataMessage;
 import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataPayload;
-import org.eclipse.kapua.service.device.registry.Device;
-import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 import org.eclipse.kapua.translator.Translator;
 
 /**
@@ -54,17 +50,13 @@ public class TranslatorDataKuraKapua extends Translator<KuraDataMessage, KapuaDa
 
         //
         // Kapua message
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraDataMessage.getChannel().getScope());
-
-        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
-        Device device = deviceRegistryService.findByClientId(account.getId(),
-                                                             kuraDataMessage.getChannel().getClientId());
+        TranslatorKuraKapuaResolver resolver = TranslatorKuraKapuaResolver.getInstance();
+        KapuaId scopeId = resolver.getScopeId(kuraDataMessage.getChannel().getScope());
+        KapuaId deviceId = resolver.getDeviceId(scopeId, kuraDataMessage.getChannel().getClientId());
 
         KapuaDataMessage kapuaDataMessage = new KapuaDataMessageImpl();
-        kapuaDataMessage.setScopeId(account.getId());
-        kapuaDataMessage.setDeviceId(device != null ? device.getId() : null);
+        kapuaDataMessage.setScopeId(scopeId);
+        kapuaDataMessage.setDeviceId(deviceId);
         kapuaDataMessage.setClientId(kuraDataMessage.getChannel().getClientId());
         kapuaDataMessage.setChannel(kapuaDataChannel);
         kapuaDataMessage.setPayload(kapuaDataPayload);
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator.kura.kapua;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.cache.LocalCache;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.account.internal.AccountDomain;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.device.registry.internal.DeviceDomain;
+import org.eclipse.kapua.service.device.registry.internal.DeviceRegistryListener;
+import org.eclipse.kapua.service.device.registry.internal.DeviceRegistryServiceImpl;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.translator.kura.kapua.setting.TranslatorKuraKapuaSetting;
+import org.eclipse.kapua.translator.kura.kapua.setting.TranslatorKuraKapuaSettingKeys;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Resolves the account and device identifiers of the incoming Kura messages (account name to account id and client id to device id).<br>
+ * The mappings are cached, so translating the messages of a known device does not hit the database. Clients not registered as devices
+ * are cached too. The device entries are dropped on every device change notified by the {@link DeviceRegistryServiceImpl}
+ * and all the entries expire after the configured time, to bound the staleness of the changes made by other nodes.<br>
+ * The cache does not bypass the access control: a hit checks the same read permission as the account and device registry services.
+ * 
+ * @since 1.0
+ *
+ */
+public class TranslatorKuraKapuaResolver implements DeviceRegistryListener
+{
+    private static final String METRIC_COMPONENT_NAME = "translator";
+
+    private static final TranslatorKuraKapuaResolver instance = new TranslatorKuraKapuaResolver();
+
+    private final LocalCache<String, KapuaId>              accountIds;
+    private final LocalCache<DeviceKey, Optional<KapuaId>> deviceIds;
+
+    // incremented on every device change, to avoid caching a lookup which raced with the change
+    private final AtomicLong deviceChanges = new AtomicLong();
+
+    private final Counter metricAccountHit;
+    private final Counter metricAccountMiss;
+    private final Counter metricDeviceHit;
+    private final Counter metricDeviceMiss;
+    private final Counter metricDeviceInvalidation;
+
+    private TranslatorKuraKapuaResolver()
+    {
+        this(TranslatorKuraKapuaSetting.getInstance().getInt(TranslatorKuraKapuaSettingKeys.RESOLVER_ACCOUNT_CACHE_SIZE_MAXIMUM, 1000),
+             TranslatorKuraKapuaSetting.getInstance().getInt(TranslatorKuraKapuaSettingKeys.RESOLVER_ACCOUNT_CACHE_EXPIRE_AFTER, 600),
+             TranslatorKuraKapuaSetting.getInstance().getInt(TranslatorKuraKapuaSettingKeys.RESOLVER_DEVICE_CACHE_SIZE_MAXIMUM, 100000),
+             TranslatorKuraKapuaSetting.getInstance().getInt(TranslatorKuraKapuaSettingKeys.RESOLVER_DEVICE_CACHE_EXPIRE_AFTER, 300));
+        DeviceRegistryServiceImpl.addListener(this);
+    }
+
+    /**
+     * Create a resolver with the given cache settings, not registered as device registry listener
+     * 
+     * @param accountCacheSize
+     * @param accountCacheExpireAfter seconds
+     * @param deviceCacheSize
+     * @param deviceCacheExpireAfter seconds
+     */
+    TranslatorKuraKapuaResolver(int accountCacheSize, int accountCacheExpireAfter, int deviceCacheSize, int deviceCacheExpireAfter)
+    {
+        accountIds = new LocalCache<>(accountCacheSize, accountCacheExpireAfter, null);
+        deviceIds = new LocalCache<>(deviceCacheSize, deviceCacheExpireAfter, null);
+
+        MetricsService metricsService = KapuaLocator.getInstance().getService(MetricsService.class);
+        metricAccountHit = metricsService.getCounter(METRIC_COMPONENT_NAME, "resolver", "account", "hit", "count");
+        metricAccountMiss = metricsService.getCounter(METRIC_COMPONENT_NAME, "resolver", "account", "miss", "count");
+        metricDeviceHit = metricsService.getCounter(METRIC_COMPONENT_NAME, "resolver", "device", "hit", "count");
+        metricDeviceMiss = metricsService.getCounter(METRIC_COMPONENT_NAME, "resolver", "device", "miss", "count");
+        metricDeviceInvalidation = metricsService.getCounter(METRIC_COMPONENT_NAME, "resolver", "device", "invalidation", "count");
+    }
+
+    /**
+     * Get the resolver instance
+     * 
+     * @return
+     */
+    public static TranslatorKuraKapuaResolver getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Return the identifier of the account with the given name
+     * 
+     * @param accountName
+     * @return
+     * @throws KapuaEntityNotFoundException if the account does not exist
+     * @throws KapuaException
+     */
+    public KapuaId getScopeId(String accountName)
+        throws KapuaException
+    {
+        KapuaId scopeId = accountIds.get(accountName);
+        if (scopeId != null) {
+            metricAccountHit.inc();
+            checkReadPermission(AccountDomain.ACCOUNT, scopeId);
+            return scopeId;
+        }
+
+        metricAccountMiss.inc();
+        AccountService accountService = KapuaLocator.getInstance().getService(AccountService.class);
+        Account account = accountService.findByName(accountName);
+        if (account == null) {
+            throw new KapuaEntityNotFoundException(Account.TYPE, accountName);
+        }
+        accountIds.put(accountName, account.getId());
+        return account.getId();
+    }
+
+    /**
+     * Return the identifier of the device with the given client id or null if the client is not registered as a device
+     * 
+     * @param scopeId
+     * @param clientId
+     * @return
+     * @throws KapuaException
+     */
+    public KapuaId getDeviceId(KapuaId scopeId, String clientId)
+        throws KapuaException
+    {
+        DeviceKey key = new DeviceKey(scopeId, clientId);
+        Optional<KapuaId> deviceId = deviceIds.get(key);
+        if (deviceId != null) {
+            metricDeviceHit.inc();
+            checkReadPermission(DeviceDomain.DEVICE, scopeId);
+            return deviceId.orElse(null);
+        }
+
+        metricDeviceMiss.inc();
+        long changes = deviceChanges.get();
+        DeviceRegistryService deviceRegistryService = KapuaLocator.getInstance().getService(DeviceRegistryService.class);
+        Device device = deviceRegistryService.findByClientId(scopeId, clientId);
+        deviceId = Optional.ofNullable(device != null ? device.getId() : null);
+        if (changes == deviceChanges.get()) {
+            deviceIds.put(key, deviceId);
+        }
+        return deviceId.orElse(null);
+    }
+
+    @Override
+    public void deviceChanged(KapuaId scopeId, String clientId)
+    {
+        deviceChanges.incrementAndGet();
+        deviceIds.remove(new DeviceKey(scopeId, clientId));
+        metricDeviceInvalidation.inc();
+    }
+
+    /**
+     * Check the permission the services check on a lookup, since a cache hit skips them
+     */
+    private static void checkReadPermission(String domain, KapuaId targetScopeId)
+        throws KapuaException
+    {
+        KapuaLocator locator = KapuaLocator.getInstance();
+        AuthorizationService authorizationService = locator.getService(AuthorizationService.class);
+        PermissionFactory permissionFactory = locator.getFactory(PermissionFactory.class);
+        authorizationService.checkPermission(permissionFactory.newPermission(domain, Actions.read, targetScopeId));
+    }
+
+    private static final class DeviceKey
+    {
+        private final KapuaId scopeId;
+        private final String  clientId;
+
+        private DeviceKey(KapuaId scopeId, String clientId)
+        {
+            this.scopeId = scopeId;
+            this.clientId = clientId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * scopeId.getId().hashCode() + clientId.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DeviceKey)) {
+                return false;
+            }
+            DeviceKey other = (DeviceKey) obj;
+            return scopeId.getId().equals(other.scopeId.getId()) && clientId.equals(other.clientId);
+        }
+    }
+}
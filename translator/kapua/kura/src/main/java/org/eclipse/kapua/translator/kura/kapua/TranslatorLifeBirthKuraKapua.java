@@ -13,20 +13,16 @@
 package org.eclipse.kapua.translator.kura.kapua;
 
 import org.eclipse.kapua.KapuaException;
-import org.eclipse.kapua.locator.KapuaLocator;
 import org.eclipse.kapua.message.device.lifecycle.KapuaBirthChannel;
 import org.eclipse.kapua.message.device.lifecycle.KapuaBirthMessage;
 import org.eclipse.kapua.message.device.lifecycle.KapuaBirthPayload;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaBirthChannelImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaBirthMessageImpl;
 import org.eclipse.kapua.message.internal.device.lifecycle.KapuaBirthPayloadImpl;
-import org.eclipse.kapua.service.account.Account;
-import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.model.id.KapuaId;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraBirthChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraBirthMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraBirthPayload;
-import org.eclipse.kapua.service.device.registry.Device;
-import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
 import org.eclipse.kapua.translator.Translator;
 
 /**
@@ -45,16 +41,13 @@ public class TranslatorLifeBirthKuraKapua extends Translator<KuraBirthMessage, K
         kapuaBirthMessage.setChannel(translate(kuraBirthMessage.getChannel()));
         kapuaBirthMessage.setPayload(translate(kuraBirthMessage.getPayload()));
 
-        KapuaLocator locator = KapuaLocator.getInstance();
-        AccountService accountService = locator.getService(AccountService.class);
-        Account account = accountService.findByName(kuraBirthMessage.getChannel().getScope());
+        TranslatorKuraKapuaResolver resolver = TranslatorKuraKapuaResolver.getInstance();
+        KapuaId scopeId = resolver.getScopeId(kuraBirthMessage.getChannel().getScope());
+        KapuaId deviceId = resolver.getDeviceId(scopeId, kuraBirthMessage.getChannel().getClientId());
 
-        DeviceRegistryService deviceRegistryService = locator.getService(DeviceRegistryService.class);
-        Device device = deviceRegistryService.findByClientId(account.getId(), kuraBirthMessage.getChannel().getClientId());
-
-        kapuaBirthMessage.setScopeId(account.getId());
-        if (device != null) {
-            kapuaBirthMessage.setDeviceId(device.getId());
+        kapuaBirthMessage.setScopeId(scopeId);
+        if (deviceId != null) {
+            kapuaBirthMessage.setDeviceId(deviceId);
         }
         else {
             kapuaBirthMessage.setClientId(kuraBirthMessage.getChannel().getClientId());
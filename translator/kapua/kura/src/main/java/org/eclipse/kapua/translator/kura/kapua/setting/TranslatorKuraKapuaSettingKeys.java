@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator.kura.kapua.setting;
+
+import org.eclipse.kapua.commons.setting.SettingKey;
+
+/**
+ * Kura to Kapua translator setting keys
+ *
+ * @since 1.0
+ */
+public enum TranslatorKuraKapuaSettingKeys implements SettingKey
+{
+    RESOLVER_ACCOUNT_CACHE_SIZE_MAXIMUM("translator.resolver.account.cache.size.maximum"),
+    RESOLVER_ACCOUNT_CACHE_EXPIRE_AFTER("translator.resolver.account.cache.expire.after"),
+    RESOLVER_DEVICE_CACHE_SIZE_MAXIMUM("translator.resolver.device.cache.size.maximum"),
+    RESOLVER_DEVICE_CACHE_EXPIRE_AFTER("translator.resolver.device.cache.expire.after");
+
+    private String key;
+
+    private TranslatorKuraKapuaSettingKeys(String key)
+    {
+        this.key = key;
+    }
+
+    @Override
+    public String key()
+    {
+        return key;
+    }
+}
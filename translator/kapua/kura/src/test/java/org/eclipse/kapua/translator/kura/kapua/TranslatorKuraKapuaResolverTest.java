@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2011, 2016 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.kapua.translator.kura.kapua;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+
+import org.eclipse.kapua.KapuaEntityNotFoundException;
+import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.metric.MetricsServiceImpl;
+import org.eclipse.kapua.commons.model.id.KapuaEid;
+import org.eclipse.kapua.locator.KapuaLocator;
+import org.eclipse.kapua.model.id.KapuaId;
+import org.eclipse.kapua.service.account.Account;
+import org.eclipse.kapua.service.account.AccountService;
+import org.eclipse.kapua.service.account.internal.AccountDomain;
+import org.eclipse.kapua.service.authorization.AuthorizationService;
+import org.eclipse.kapua.service.authorization.permission.Actions;
+import org.eclipse.kapua.service.authorization.permission.Permission;
+import org.eclipse.kapua.service.authorization.permission.PermissionFactory;
+import org.eclipse.kapua.service.device.registry.Device;
+import org.eclipse.kapua.service.device.registry.DeviceRegistryService;
+import org.eclipse.kapua.service.device.registry.internal.DeviceDomain;
+import org.eclipse.kapua.service.metric.MetricsService;
+import org.eclipse.kapua.test.MockedLocator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TranslatorKuraKapuaResolverTest
+{
+    private static final KapuaId         SCOPE_ID  = new KapuaEid(BigInteger.valueOf(10));
+    private static final KapuaId         DEVICE_ID = new KapuaEid(BigInteger.valueOf(20));
+
+    private AccountService               accountService;
+    private DeviceRegistryService        deviceRegistryService;
+    private AuthorizationService         authorizationService;
+    private PermissionFactory            permissionFactory;
+    private TranslatorKuraKapuaResolver  resolver;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        // the resolver instance takes its metrics on class initialization
+        ((MockedLocator) KapuaLocator.getInstance()).setMockedService(MetricsService.class, new MetricsServiceImpl());
+    }
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        accountService = mock(AccountService.class);
+        deviceRegistryService = mock(DeviceRegistryService.class);
+        authorizationService = mock(AuthorizationService.class);
+        permissionFactory = mock(PermissionFactory.class);
+        when(permissionFactory.newPermission(anyString(), any(Actions.class), any(KapuaId.class))).thenReturn(mock(Permission.class));
+
+        MockedLocator locator = (MockedLocator) KapuaLocator.getInstance();
+        locator.setMockedService(AccountService.class, accountService);
+        locator.setMockedService(DeviceRegistryService.class, deviceRegistryService);
+        locator.setMockedService(AuthorizationService.class, authorizationService);
+        locator.setMockedFactory(PermissionFactory.class, permissionFactory);
+
+        Account account = mock(Account.class);
+        when(account.getId()).thenReturn(SCOPE_ID);
+        when(accountService.findByName("acme")).thenReturn(account);
+        Device device = mock(Device.class);
+        when(device.getId()).thenReturn(DEVICE_ID);
+        when(deviceRegistryService.findByClientId(SCOPE_ID, "device-1")).thenReturn(device);
+
+        resolver = new TranslatorKuraKapuaResolver(10, 600, 10, 300);
+    }
+
+    @Test
+    public void testAccountCached()
+        throws Exception
+    {
+        assertEquals(SCOPE_ID, resolver.getScopeId("acme"));
+        assertEquals(SCOPE_ID, resolver.getScopeId("acme"));
+
+        verify(accountService, times(1)).findByName("acme");
+        // the service checks the permission on a miss, the resolver on a hit
+        verify(permissionFactory).newPermission(AccountDomain.ACCOUNT, Actions.read, SCOPE_ID);
+        verify(authorizationService).checkPermission(any(Permission.class));
+    }
+
+    @Test
+    public void testAccountHitNotPermitted()
+        throws Exception
+    {
+        resolver.getScopeId("acme");
+        doThrow(KapuaException.internalError("not permitted")).when(authorizationService).checkPermission(any(Permission.class));
+
+        try {
+            resolver.getScopeId("acme");
+            fail("Account resolved without the read permission");
+        }
+        catch (KapuaException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAccountNotFoundNotCached()
+        throws Exception
+    {
+        for (int i = 0; i < 2; i++) {
+            try {
+                resolver.getScopeId("unknown");
+                fail("Unknown account resolved");
+            }
+            catch (KapuaEntityNotFoundException e) {
+                // expected
+            }
+        }
+        verify(accountService, times(2)).findByName("unknown");
+    }
+
+    @Test
+    public void testDeviceCached()
+        throws Exception
+    {
+        assertEquals(DEVICE_ID, resolver.getDeviceId(SCOPE_ID, "device-1"));
+        assertEquals(DEVICE_ID, resolver.getDeviceId(new KapuaEid(BigInteger.valueOf(10)), "device-1"));
+
+        verify(deviceRegistryService, times(1)).findByClientId(SCOPE_ID, "device-1");
+        verify(permissionFactory).newPermission(DeviceDomain.DEVICE, Actions.read, SCOPE_ID);
+        verify(authorizationService).checkPermission(any(Permission.class));
+    }
+
+    @Test
+    public void testDeviceHitNotPermitted()
+        throws Exception
+    {
+        resolver.getDeviceId(SCOPE_ID, "device-1");
+        doThrow(KapuaException.internalError("not permitted")).when(authorizationService).checkPermission(any(Permission.class));
+
+        try {
+            resolver.getDeviceId(SCOPE_ID, "device-1");
+            fail("Device resolved without the read permission");
+        }
+        catch (KapuaException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnregisteredClientCached()
+        throws Exception
+    {
+        assertNull(resolver.getDeviceId(SCOPE_ID, "device-2"));
+        assertNull(resolver.getDeviceId(SCOPE_ID, "device-2"));
+
+        verify(deviceRegistryService, times(1)).findByClientId(SCOPE_ID, "device-2");
+    }
+
+    @Test
+    public void testDeviceChangeInvalidates()
+        throws Exception
+    {
+        assertNull(resolver.getDeviceId(SCOPE_ID, "device-2"));
+
+        // the client registers as a device
+        Device device = mock(Device.class);
+        when(device.getId()).thenReturn(DEVICE_ID);
+        when(deviceRegistryService.findByClientId(SCOPE_ID, "device-2")).thenReturn(device);
+        resolver.deviceChanged(SCOPE_ID, "device-2");
+
+        assertEquals(DEVICE_ID, resolver.getDeviceId(SCOPE_ID, "device-2"));
+        verify(deviceRegistryService, times(2)).findByClientId(SCOPE_ID, "device-2");
+    }
+
+    @Test
+    public void testLookupRacingChangeNotCached()
+        throws Exception
+    {
+        // a device change committed while the lookup runs
+        reset(deviceRegistryService);
+        when(deviceRegistryService.findByClientId(SCOPE_ID, "device-1")).thenAnswer(invocation -> {
+            resolver.deviceChanged(SCOPE_ID, "device-1");
+            return null;
+        });
+
+        assertNull(resolver.getDeviceId(SCOPE_ID, "device-1"));
+        assertNull(resolver.getDeviceId(SCOPE_ID, "device-1"));
+
+        verify(deviceRegistryService, times(2)).findByClientId(SCOPE_ID, "device-1");
+    }
+}
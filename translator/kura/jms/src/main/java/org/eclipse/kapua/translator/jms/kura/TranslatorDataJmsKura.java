@@ -12,9 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.translator.jms.kura;
 
-import java.util.Arrays;
-
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.TopicTokens;
 import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataChannel;
 import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataMessage;
 import org.eclipse.kapua.service.device.call.message.kura.data.KuraDataPayload;
@@ -44,11 +43,11 @@ public class TranslatorDataJmsKura extends Translator<JmsMessage, KuraDataMessag
     private KuraDataChannel translate(JmsTopic jmsTopic)
         throws KapuaException
     {
-        String[] mqttTopicTokens = jmsTopic.getSplittedTopic();
+        TopicTokens topicTokens = jmsTopic.getTopicTokens();
         KuraDataChannel kuraDataChannel = new KuraDataChannel();
-        kuraDataChannel.setScope(mqttTopicTokens[0]);
-        kuraDataChannel.setClientId(mqttTopicTokens[1]);
-        kuraDataChannel.setSemanticChannelParts(Arrays.asList(mqttTopicTokens).subList(2, mqttTopicTokens.length));
+        kuraDataChannel.setScope(topicTokens.get(0));
+        kuraDataChannel.setClientId(topicTokens.get(1));
+        kuraDataChannel.setSemanticChannelParts(topicTokens.getTokens(2));
         return kuraDataChannel;
     }
 
@@ -14,6 +14,7 @@ package org.eclipse.kapua.translator.jms.kura;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.TopicTokens;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraDisconnectChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraDisconnectMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraDisconnectPayload;
@@ -41,14 +42,14 @@ public class TranslatorLifeDisconnectJmsKura extends Translator<JmsMessage, Kura
     private KuraDisconnectChannel translate(JmsTopic jmsTopic)
         throws KapuaException
     {
-        String[] topicTokens = jmsTopic.getSplittedTopic();
+        TopicTokens topicTokens = jmsTopic.getTopicTokens();
         // we shouldn't never get a shorter topic here (because that means we have issues on camel routing)
         // TODO check exception type
-        if (topicTokens == null || topicTokens.length < 3) {
+        if (topicTokens == null || topicTokens.size() < 3) {
             throw new KapuaException(KapuaErrorCodes.INTERNAL_ERROR);
         }
-        return new KuraDisconnectChannel(topicTokens[1],
-                                         topicTokens[2]);
+        return new KuraDisconnectChannel(topicTokens.get(1),
+                                         topicTokens.get(2));
     }
 
     private KuraDisconnectPayload translate(byte[] jmsBody)
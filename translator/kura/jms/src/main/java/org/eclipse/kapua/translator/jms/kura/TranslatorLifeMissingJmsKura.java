@@ -14,6 +14,7 @@ package org.eclipse.kapua.translator.jms.kura;
 
 import org.eclipse.kapua.KapuaErrorCodes;
 import org.eclipse.kapua.KapuaException;
+import org.eclipse.kapua.commons.util.TopicTokens;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingChannel;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingMessage;
 import org.eclipse.kapua.service.device.call.message.kura.lifecycle.KuraMissingPayload;
@@ -41,14 +42,14 @@ public class TranslatorLifeMissingJmsKura extends Translator<JmsMessage, KuraMis
     private KuraMissingChannel translate(JmsTopic jmsTopic)
         throws KapuaException
     {
-        String[] topicTokens = jmsTopic.getSplittedTopic();
+        TopicTokens topicTokens = jmsTopic.getTopicTokens();
         // we shouldn't never get a shorter topic here (because that means we have issues on camel routing)
         // TODO check exception type
-        if (topicTokens == null || topicTokens.length < 3) {
+        if (topicTokens == null || topicTokens.size() < 3) {
             throw new KapuaException(KapuaErrorCodes.INTERNAL_ERROR);
         }
-        return new KuraMissingChannel(topicTokens[1],
-                                      topicTokens[2]);
+        return new KuraMissingChannel(topicTokens.get(1),
+                                      topicTokens.get(2));
     }
 
     private KuraMissingPayload translate(byte[] jmsBody)
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.kapua.transport.message.jms;
 
+import org.eclipse.kapua.commons.util.TopicTokenizer;
+import org.eclipse.kapua.commons.util.TopicTokens;
 import org.eclipse.kapua.transport.jms.setting.JmsClientSetting;
 import org.eclipse.kapua.transport.jms.setting.JmsClientSettingKeys;
 import org.eclipse.kapua.transport.message.TransportChannel;
@@ -30,6 +32,13 @@ public class JmsTopic implements TransportChannel {
      */
     private final static String topicSeparator = JmsClientSetting.getInstance().getString(JmsClientSettingKeys.TRANSPORT_TOPIC_SEPARATOR);
 
+    /**
+     * The tokenizer of the topics with the configured topic separator
+     * 
+     * @since 1.0.0
+     */
+    private final static TopicTokenizer topicTokenizer = TopicTokenizer.getInstance(topicSeparator.charAt(0));
+
     /**
      * The full topic.
      * 
@@ -104,6 +113,19 @@ public class JmsTopic implements TransportChannel {
         if (topic == null) {
             return null;
         }
-        return topic.split("\\" + topicSeparator);
+        return getTopicTokens().toArray();
+    }
+
+    /**
+     * Gets the topic tokens (split by the topic separator configured in {@link JmsClientSetting}.{@link JmsClientSettingKeys#TRANSPORT_TOPIC_SEPARATOR}).
+     * <p>
+     * The tokens are shared by all the topics equal to this one: they are parsed once and then served from the {@link TopicTokenizer} intern table.
+     * </p>
+     * 
+     * @return The topic tokens or {@code null} if full topic has been set to {@code null}
+     * @since 1.0.0
+     */
+    public TopicTokens getTopicTokens() {
+        return topicTokenizer.parse(topic);
     }
 }
\ No newline at end of file